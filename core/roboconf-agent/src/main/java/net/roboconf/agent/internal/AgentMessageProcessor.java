@@ -27,6 +27,7 @@ package net.roboconf.agent.internal;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -38,11 +39,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 import net.roboconf.agent.internal.lifecycle.AbstractLifeCycleManager;
+import net.roboconf.agent.internal.misc.AgentConstants;
 import net.roboconf.agent.internal.misc.AgentUtils;
+import net.roboconf.agent.internal.misc.BlobCache;
 import net.roboconf.core.Constants;
 import net.roboconf.core.model.beans.ApplicationTemplate;
 import net.roboconf.core.model.beans.Component;
@@ -58,14 +63,17 @@ import net.roboconf.messaging.api.AbstractMessageProcessor;
 import net.roboconf.messaging.api.MessagingConstants;
 import net.roboconf.messaging.api.business.IAgentClient;
 import net.roboconf.messaging.api.business.ListenerCommand;
+import net.roboconf.messaging.api.codec.CompressingCodec;
 import net.roboconf.messaging.api.messages.Message;
 import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdAddImport;
 import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdRemoveImport;
 import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdRequestImport;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceChanged;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMachineDown;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMissingBlobs;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdAddInstance;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeBinding;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeInstanceState;
@@ -73,6 +81,7 @@ import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeLogLevel
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdGatherLogs;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdRemoveInstance;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdResynchronize;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendBlobs;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendInstances;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSetScopedInstance;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdUpdateProbeConfiguration;
@@ -129,6 +138,36 @@ public class AgentMessageProcessor extends AbstractMessageProcessor<IAgentClient
 	 */
 	final Map<String,Collection<Import>> applicationNameToExternalExports = new HashMap<> ();
 
+	/**
+	 * The delay after which missing blobs are requested again (in milliseconds).
+	 */
+	static final long BLOB_REQUEST_TIMEOUT = 30000;
+
+	/**
+	 * The local cache for recipes and scripts (identified by their digest).
+	 */
+	BlobCache blobCache = new BlobCache( new File( Constants.WORK_DIRECTORY_AGENT, AgentConstants.BLOB_CACHE_DIRECTORY ));
+
+	/**
+	 * Messages that wait for missing blobs.
+	 * <p>
+	 * As long as this list is not empty, all the received messages are appended to it.
+	 * This preserves the processing order. They are processed once the DM has sent the blobs.
+	 * </p>
+	 */
+	final List<Message> messagesAwaitingBlobs = new ArrayList<> ();
+	final Set<String> requestedDigests = new HashSet<> ();
+	int pendingBlobRequests = 0;
+	long lastBlobRequestTime = 0;
+
+	/**
+	 * A timer that checks unanswered blob requests.
+	 * <p>
+	 * Created when blobs are requested, and canceled once messages do not wait anymore.
+	 * </p>
+	 */
+	private Timer blobRequestsTimer;
+
 
 
 	/**
@@ -170,65 +209,86 @@ public class AgentMessageProcessor extends AbstractMessageProcessor<IAgentClient
 		this.logger.fine( "A message of type " + message.getClass().getSimpleName() + " was received and is about to be processed." );
 		this.messageUnderProcessing.set( true );
 		try {
-			if( message instanceof MsgCmdSetScopedInstance )
-				processMsgSetScopedInstance((MsgCmdSetScopedInstance) message );
+			// Messages with manifests may have to wait for missing blobs
+			Message resolvedMessage;
+			if( message instanceof MsgCmdSendBlobs )
+				processMsgSendBlobs((MsgCmdSendBlobs) message );
 
-			else if( message instanceof MsgCmdRemoveInstance )
-				processMsgRemoveInstance((MsgCmdRemoveInstance) message );
+			else if( message instanceof MsgCheckBlobRequests )
+				checkBlobRequests();
 
-			else if( message instanceof MsgCmdAddInstance )
-				processMsgAddInstance((MsgCmdAddInstance) message );
+			else if(( resolvedMessage = resolveBlobs( message )) != null )
+				dispatchMessage( resolvedMessage );
 
-			else if( message instanceof MsgCmdChangeInstanceState )
-				processMsgChangeInstanceState((MsgCmdChangeInstanceState) message );
+		} catch( IOException e ) {
+			this.logger.severe( "A problem occurred with the messaging. " + e.getMessage());
+			Utils.logException( this.logger, e );
 
-			else if( message instanceof MsgCmdAddImport )
-				processMsgAddImport((MsgCmdAddImport) message );
+		} catch( PluginException e ) {
+			this.logger.severe( "A problem occurred with a plug-in. " + e.getMessage());
+			Utils.logException( this.logger, e );
 
-			else if( message instanceof MsgCmdRemoveImport )
-				processMsgRemoveImport((MsgCmdRemoveImport) message, true );
+		} finally {
+			this.messageUnderProcessing.set( false );
+		}
 
-			else if( message instanceof MsgCmdRequestImport )
-				processMsgRequestImport((MsgCmdRequestImport) message );
+		// A reset request was received while we were processing a message
+		checkReset();
+	}
 
-			else if( message instanceof MsgCmdSendInstances )
-				processMsgSendInstances((MsgCmdSendInstances) message );
 
-			else if( message instanceof MsgCmdResynchronize )
-				processMsgResynchronize((MsgCmdResynchronize) message );
+	/**
+	 * Invokes the right method to process a message.
+	 * @param message a message
+	 * @throws IOException if an error occurred with the messaging
+	 * @throws PluginException if an error occurred with a plug-in
+	 */
+	private void dispatchMessage( Message message ) throws IOException, PluginException {
 
-			else if( message instanceof MsgEcho )
-				processMsgEcho((MsgEcho) message );
+		if( message instanceof MsgCmdSetScopedInstance )
+			processMsgSetScopedInstance((MsgCmdSetScopedInstance) message );
 
-			else if( message instanceof MsgCmdChangeBinding )
-				processMsgChangeBinding((MsgCmdChangeBinding) message );
+		else if( message instanceof MsgCmdRemoveInstance )
+			processMsgRemoveInstance((MsgCmdRemoveInstance) message );
 
-			else if( message instanceof MsgCmdUpdateProbeConfiguration )
-				processUpdateProbeConfiguration((MsgCmdUpdateProbeConfiguration) message );
+		else if( message instanceof MsgCmdAddInstance )
+			processMsgAddInstance((MsgCmdAddInstance) message );
 
-			else if( message instanceof MsgCmdChangeLogLevel )
-				processChangeLogLevel((MsgCmdChangeLogLevel) message );
+		else if( message instanceof MsgCmdChangeInstanceState )
+			processMsgChangeInstanceState((MsgCmdChangeInstanceState) message );
 
-			else if( message instanceof MsgCmdGatherLogs )
-				processGatherLogs((MsgCmdGatherLogs) message );
+		else if( message instanceof MsgCmdAddImport )
+			processMsgAddImport((MsgCmdAddImport) message );
 
-			else
-				this.logger.warning( getName() + " got an undetermined message to process. " + message.getClass().getName());
+		else if( message instanceof MsgCmdRemoveImport )
+			processMsgRemoveImport((MsgCmdRemoveImport) message, true );
 
-		} catch( IOException e ) {
-			this.logger.severe( "A problem occurred with the messaging. " + e.getMessage());
-			Utils.logException( this.logger, e );
+		else if( message instanceof MsgCmdRequestImport )
+			processMsgRequestImport((MsgCmdRequestImport) message );
 
-		} catch( PluginException e ) {
-			this.logger.severe( "A problem occurred with a plug-in. " + e.getMessage());
-			Utils.logException( this.logger, e );
+		else if( message instanceof MsgCmdSendInstances )
+			processMsgSendInstances((MsgCmdSendInstances) message );
 
-		} finally {
-			this.messageUnderProcessing.set( false );
-		}
+		else if( message instanceof MsgCmdResynchronize )
+			processMsgResynchronize((MsgCmdResynchronize) message );
 
-		// A reset request was received while we were processing a message
-		checkReset();
+		else if( message instanceof MsgEcho )
+			processMsgEcho((MsgEcho) message );
+
+		else if( message instanceof MsgCmdChangeBinding )
+			processMsgChangeBinding((MsgCmdChangeBinding) message );
+
+		else if( message instanceof MsgCmdUpdateProbeConfiguration )
+			processUpdateProbeConfiguration((MsgCmdUpdateProbeConfiguration) message );
+
+		else if( message instanceof MsgCmdChangeLogLevel )
+			processChangeLogLevel((MsgCmdChangeLogLevel) message );
+
+		else if( message instanceof MsgCmdGatherLogs )
+			processGatherLogs((MsgCmdGatherLogs) message );
+
+		else
+			this.logger.warning( getName() + " got an undetermined message to process. " + message.getClass().getName());
 	}
 
 
@@ -317,6 +377,7 @@ public class AgentMessageProcessor extends AbstractMessageProcessor<IAgentClient
 		this.scopedInstance = null;
 		this.applicationBindings.clear();
 		this.applicationNameToExternalExports.clear();
+		clearBlobRequests();
 		this.reset = false;
 
 		// Send the message while we still have a message client
@@ -370,9 +431,70 @@ public class AgentMessageProcessor extends AbstractMessageProcessor<IAgentClient
 	 */
 	private void processGatherLogs( MsgCmdGatherLogs message ) throws IOException {
 
-		Map<String,byte[]> logFiles = AgentUtils.collectLogs( this.agent.karafData );
-		MsgNotifLogs msg = new MsgNotifLogs( this.agent.getApplicationName(), this.agent.getScopedInstancePath(), logFiles );
-		this.messagingClient.sendMessageToTheDm( msg );
+		// Send the whole files at once
+		if( message.getChunkSize() <= 0 ) {
+			Map<String,byte[]> logFiles = AgentUtils.collectLogs( this.agent.karafData );
+			MsgNotifLogs msg = new MsgNotifLogs( this.agent.getApplicationName(), this.agent.getScopedInstancePath(), logFiles );
+			this.messagingClient.sendMessageToTheDm( msg );
+			return;
+		}
+
+		// Or stream them, the most recent logs first.
+		// When there is a limit, only the end of the files is sent.
+		long budget = message.getMaxBytes() > 0 ? message.getMaxBytes() : Long.MAX_VALUE;
+		CompressingCodec compressor = message.isCompressed() ? new CompressingCodec( null, 1 ) : null;
+		for( File logFile : AgentUtils.findLogFiles( this.agent.karafData, message.getSinceTimestamp())) {
+			if( budget <= 0 )
+				break;
+
+			long length = logFile.length();
+			long start = Math.max( 0, length - budget );
+			budget -= length - start;
+			sendLogChunks( logFile, start, length, message.getChunkSize(), compressor );
+		}
+	}
+
+
+	/**
+	 * Sends a part of a log file as chunks.
+	 * <p>
+	 * Only one chunk is loaded in memory at a time.
+	 * </p>
+	 *
+	 * @param logFile the log file
+	 * @param start the position of the first byte to send
+	 * @param end the position after the last byte to send
+	 * @param chunkSize the maximum size of a chunk
+	 * @param compressor a codec to compress chunks (null to not compress them)
+	 * @throws IOException if something went wrong
+	 */
+	private void sendLogChunks( File logFile, long start, long end, int chunkSize, CompressingCodec compressor )
+	throws IOException {
+
+		try( RandomAccessFile raf = new RandomAccessFile( logFile, "r" )) {
+			raf.seek( start );
+
+			long offset = 0, total = end - start;
+			do {
+				byte[] content = new byte[ (int) Math.min( chunkSize, total - offset )];
+				raf.readFully( content );
+
+				// Compression is skipped when it is not worth it
+				byte[] sentContent = compressor == null ? content : compressor.compress( content );
+				MsgNotifLogChunk msg = new MsgNotifLogChunk(
+						this.agent.getApplicationName(),
+						this.agent.getScopedInstancePath(),
+						logFile.getName(),
+						offset,
+						sentContent,
+						sentContent != content,
+						offset + content.length >= total );
+
+				this.messagingClient.sendMessageToTheDm( msg );
+				offset += content.length;
+
+			} while( offset < total );
+		}
 	}
 
 
@@ -601,6 +723,225 @@ public class AgentMessageProcessor extends AbstractMessageProcessor<IAgentClient
 	}
 
 
+	/**
+	 * Resolves the manifest a message may carry, using the local blob cache.
+	 * <p>
+	 * If blobs are missing, they are requested to the DM and the message is kept
+	 * until they are received. This is also the case if other messages are already waiting.
+	 * </p>
+	 *
+	 * @param message a message
+	 * @return the message to process (with all the resources), or null if it must wait
+	 * @throws IOException if an error occurred with the messaging or with the cache
+	 */
+	Message resolveBlobs( Message message ) throws IOException {
+
+		Set<String> missingDigests = new HashSet<> ();
+		Message result = resolveManifest( message, missingDigests );
+		if( ! missingDigests.isEmpty() || ! this.messagesAwaitingBlobs.isEmpty()) {
+			this.logger.fine( "Message " + message.getClass().getSimpleName() + " will be processed once missing blobs have been received." );
+			this.messagesAwaitingBlobs.add( message );
+			requestBlobs( missingDigests );
+			result = null;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Stores blobs sent by the DM and processes the messages that were waiting for them.
+	 * @param msg the message to process
+	 * @throws IOException if an error occurred with the cache
+	 */
+	void processMsgSendBlobs( MsgCmdSendBlobs msg ) throws IOException {
+
+		for( Map.Entry<String,byte[]> entry : msg.getDigestToContent().entrySet()) {
+			if( this.blobCache.store( entry.getKey(), entry.getValue()))
+				this.requestedDigests.remove( entry.getKey());
+		}
+
+		// Wait for other answers, unless we have everything we asked for
+		if( this.pendingBlobRequests > 0 )
+			this.pendingBlobRequests --;
+
+		if( this.pendingBlobRequests > 0 && ! this.requestedDigests.isEmpty())
+			return;
+
+		processMessagesAwaitingBlobs();
+	}
+
+
+	/**
+	 * Checks whether the messages waiting for blobs can be processed.
+	 * <p>
+	 * It is invoked when a blob request may have timed out. Blobs may have been
+	 * stored in the cache in the meantime (e.g. by another agent). Otherwise, if the DM
+	 * did not answer for too long, all the missing blobs are requested again.
+	 * </p>
+	 *
+	 * @throws IOException if an error occurred with the messaging or with the cache
+	 */
+	void checkBlobRequests() throws IOException {
+
+		if( this.messagesAwaitingBlobs.isEmpty())
+			return;
+
+		Set<String> missingDigests = new HashSet<> ();
+		for( Message waitingMessage : this.messagesAwaitingBlobs )
+			resolveManifest( waitingMessage, missingDigests );
+
+		if( missingDigests.isEmpty()) {
+			processMessagesAwaitingBlobs();
+
+		} else {
+			this.requestedDigests.retainAll( missingDigests );
+			requestBlobs( missingDigests );
+		}
+	}
+
+
+	/**
+	 * Processes the messages that were waiting for blobs.
+	 * <p>
+	 * Those whose blobs are still missing are dropped.
+	 * </p>
+	 *
+	 * @throws IOException if an error occurred with the cache
+	 */
+	private void processMessagesAwaitingBlobs() throws IOException {
+
+		List<Message> messagesToProcess = new ArrayList<>( this.messagesAwaitingBlobs );
+		clearBlobRequests();
+		for( Message waitingMessage : messagesToProcess ) {
+
+			Set<String> missingDigests = new HashSet<> ();
+			Message resolvedMessage = resolveManifest( waitingMessage, missingDigests );
+			if( ! missingDigests.isEmpty()) {
+				this.logger.severe( "The DM could not send " + missingDigests.size() + " blob(s). Message " + waitingMessage.getClass().getSimpleName() + " is dropped." );
+				continue;
+			}
+
+			try {
+				dispatchMessage( resolvedMessage );
+
+			} catch( IOException | PluginException e ) {
+				this.logger.severe( "A message that was waiting for blobs could not be processed. " + e.getMessage());
+				Utils.logException( this.logger, e );
+			}
+		}
+	}
+
+
+	/**
+	 * Resolves the manifest a message may carry.
+	 * @param message a message
+	 * @param missingDigests a non-null set, completed with the digests that are not in the cache
+	 * @return a message with all the resources (the same message if it does not carry any manifest)
+	 * @throws IOException if an error occurred with the cache
+	 */
+	private Message resolveManifest( Message message, Set<String> missingDigests ) throws IOException {
+
+		Message result = message;
+		if( message instanceof MsgCmdChangeInstanceState
+				&& ((MsgCmdChangeInstanceState) message).getFileNameToDigest() != null ) {
+
+			MsgCmdChangeInstanceState msg = (MsgCmdChangeInstanceState) message;
+			Map<String,byte[]> resources = this.blobCache.resolve( msg.getFileNameToDigest(), msg.getFileNameToFileContent(), missingDigests );
+			result = new MsgCmdChangeInstanceState( msg.getInstancePath(), msg.getNewState(), resources );
+
+		} else if( message instanceof MsgCmdSetScopedInstance
+				&& ! ((MsgCmdSetScopedInstance) message).getScriptDigests().isEmpty()) {
+
+			MsgCmdSetScopedInstance msg = (MsgCmdSetScopedInstance) message;
+			Map<String,byte[]> scripts = this.blobCache.resolve( msg.getScriptDigests(), msg.getscriptResources(), missingDigests );
+			result = new MsgCmdSetScopedInstance( msg.getScopedInstance(), msg.getExternalExports(), msg.getApplicationBindings(), scripts );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Requests missing blobs to the DM.
+	 * <p>
+	 * If a previous request remained unanswered for too long, all the
+	 * missing blobs are requested again. A check is scheduled for every request,
+	 * so that this also happens when no other message is received.
+	 * </p>
+	 *
+	 * @param missingDigests the digests that were found missing
+	 * @throws IOException if an error occurred with the messaging
+	 */
+	private void requestBlobs( Set<String> missingDigests ) throws IOException {
+
+		Set<String> digestsToRequest = new HashSet<>( missingDigests );
+		digestsToRequest.removeAll( this.requestedDigests );
+		this.requestedDigests.addAll( missingDigests );
+
+		long now = System.currentTimeMillis();
+		if( now - this.lastBlobRequestTime >= BLOB_REQUEST_TIMEOUT
+				&& ! this.requestedDigests.isEmpty()) {
+			digestsToRequest.addAll( this.requestedDigests );
+			this.pendingBlobRequests = 0;
+		}
+
+		if( ! digestsToRequest.isEmpty()) {
+			this.logger.fine( "Requesting " + digestsToRequest.size() + " missing blob(s) to the DM." );
+			this.messagingClient.sendMessageToTheDm( new MsgNotifMissingBlobs(
+					this.agent.getApplicationName(),
+					this.agent.getScopedInstancePath(),
+					digestsToRequest ));
+
+			this.pendingBlobRequests ++;
+			this.lastBlobRequestTime = now;
+			scheduleBlobRequestsCheck();
+		}
+	}
+
+
+	/**
+	 * Schedules a check of the blob requests, once they may have timed out.
+	 */
+	private synchronized void scheduleBlobRequestsCheck() {
+
+		if( this.blobRequestsTimer == null )
+			this.blobRequestsTimer = new Timer( "Roboconf Agent - Blob Requests", true );
+
+		this.blobRequestsTimer.schedule( new TimerTask() {
+			@Override
+			public void run() {
+				storeMessage( new MsgCheckBlobRequests());
+			}
+
+		}, BLOB_REQUEST_TIMEOUT );
+	}
+
+
+	/**
+	 * Cancels the scheduled checks of the blob requests.
+	 */
+	private synchronized void cancelBlobRequestsChecks() {
+
+		if( this.blobRequestsTimer != null ) {
+			this.blobRequestsTimer.cancel();
+			this.blobRequestsTimer = null;
+		}
+	}
+
+
+	/**
+	 * Forgets the messages that were waiting for blobs.
+	 */
+	private void clearBlobRequests() {
+		this.messagesAwaitingBlobs.clear();
+		this.requestedDigests.clear();
+		this.pendingBlobRequests = 0;
+		this.lastBlobRequestTime = 0;
+		cancelBlobRequestsChecks();
+	}
+
+
 	/**
 	 * Removes an instance to the local model.
 	 * @param msg the message to process
@@ -894,4 +1235,27 @@ public class AgentMessageProcessor extends AbstractMessageProcessor<IAgentClient
 				.changeInstanceState( childInstance, plugin, InstanceStatus.DEPLOYED_STARTED, null );
 		}
 	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.messaging.api.AbstractMessageProcessor
+	 * #stopProcessor()
+	 */
+	@Override
+	public void stopProcessor() {
+		super.stopProcessor();
+		cancelBlobRequestsChecks();
+	}
+
+
+	/**
+	 * A local message, stored when a blob request may have timed out.
+	 * <p>
+	 * It is never sent. It only guarantees the check is made by the processing thread.
+	 * </p>
+	 */
+	static final class MsgCheckBlobRequests extends Message {
+		private static final long serialVersionUID = 5912364108356239470L;
+	}
 }
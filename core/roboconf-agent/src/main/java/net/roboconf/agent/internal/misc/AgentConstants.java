@@ -39,4 +39,6 @@ public interface AgentConstants {
 	String KARAF_LOGS_DIRECTORY = "log";
 
 	String DEFAULT_NETWORK_INTERFACE = "rbcf-default-network";
+
+	String BLOB_CACHE_DIRECTORY = "blobs";
 }
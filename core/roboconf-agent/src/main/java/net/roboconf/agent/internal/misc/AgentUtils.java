@@ -32,6 +32,10 @@ import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
@@ -44,6 +48,7 @@ import net.roboconf.core.model.beans.Instance;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.utils.ProgramUtils;
 import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.utils.BlobUtils;
 
 /**
  * @author Noël - LIG
@@ -96,6 +101,10 @@ public final class AgentUtils {
 
 	/**
 	 * Copies the resources of an instance on the disk.
+	 * <p>
+	 * Files that already exist with the same content are not rewritten.
+	 * </p>
+	 *
 	 * @param instance an instance
 	 * @param fileNameToFileContent the files to write down (key = relative file location, value = file's content)
 	 * @throws IOException if the copy encountered a problem
@@ -110,8 +119,10 @@ public final class AgentUtils {
 			for( Map.Entry<String,byte[]> entry : fileNameToFileContent.entrySet()) {
 
 				File f = new File( dir, entry.getKey());
-				Utils.createDirectory( f.getParentFile());
+				if( hasContent( f, entry.getValue()))
+					continue;
 
+				Utils.createDirectory( f.getParentFile());
 				ByteArrayInputStream in = new ByteArrayInputStream( entry.getValue());
 				Utils.copyStream( in, f );
 			}
@@ -119,6 +130,22 @@ public final class AgentUtils {
 	}
 
 
+	/**
+	 * Determines whether a file exists with a given content.
+	 * @param f a file
+	 * @param content the expected content
+	 * @return true if the file exists and has this content, false otherwise
+	 * @throws IOException if the file could not be read
+	 */
+	static boolean hasContent( File f, byte[] content ) throws IOException {
+
+		// Compare the sizes first, it is cheap
+		return f.isFile()
+				&& f.length() == content.length
+				&& Arrays.equals( content, BlobUtils.readContent( f ));
+	}
+
+
 	/**
 	 * Executes a script resource on a given instance.
 	 * @param scriptsDir the scripts directory
@@ -206,6 +233,42 @@ public final class AgentUtils {
 	}
 
 
+	/**
+	 * Finds the log files to send to the DM.
+	 * <p>
+	 * Rotated log files (e.g. <code>karaf.log.1</code>) are included.
+	 * </p>
+	 *
+	 * @param karafData the Karaf's data directory
+	 * @param sinceTimestamp only files modified after this time stamp are kept (0 or less for all)
+	 * @return a non-null list of files, the most recently modified first
+	 */
+	public static List<File> findLogFiles( String karafData, long sinceTimestamp ) {
+
+		List<File> result = new ArrayList<> ();
+		if( ! Utils.isEmptyOrWhitespaces( karafData )) {
+
+			File logDirectory = new File( karafData, AgentConstants.KARAF_LOGS_DIRECTORY );
+			File[] files = logDirectory.listFiles();
+			for( File f : files == null ? new File[ 0 ] : files ) {
+				if( f.isFile()
+						&& ( f.getName().startsWith( "karaf.log" ) || f.getName().startsWith( "roboconf.log" ))
+						&& f.lastModified() > sinceTimestamp )
+					result.add( f );
+			}
+		}
+
+		Collections.sort( result, new Comparator<File>() {
+			@Override
+			public int compare( File f1, File f2 ) {
+				return Long.compare( f2.lastModified(), f1.lastModified());
+			}
+		});
+
+		return result;
+	}
+
+
 	/**
 	 * Finds the IP address of the current machine.
 	 * @param networkInterface the network interface to use
@@ -0,0 +1,261 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal.misc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.utils.BlobUtils;
+
+/**
+ * A local cache for blobs (resources identified by the digest of their content).
+ * <p>
+ * Blobs are stored as files whose name is their digest. Since their content is determined
+ * by their name, the cache can be shared by several agents running in the same JVM.
+ * </p>
+ * <p>
+ * The size of the cache is bounded. When a new blob makes it exceed its maximum size,
+ * the least recently used blobs are removed. They will be requested again if necessary.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class BlobCache {
+
+	/**
+	 * The default maximum size of the cache (in bytes).
+	 */
+	public static final long DEFAULT_MAX_SIZE = 256 * 1024 * 1024;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final File directory;
+	private final long maxSize;
+
+
+	/**
+	 * Constructor.
+	 * @param directory the directory where blobs are stored
+	 */
+	public BlobCache( File directory ) {
+		this( directory, DEFAULT_MAX_SIZE );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param directory the directory where blobs are stored
+	 * @param maxSize the maximum size of the cache (in bytes)
+	 */
+	public BlobCache( File directory, long maxSize ) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+
+	/**
+	 * Stores a blob.
+	 * <p>
+	 * Blobs whose content does not match the digest are ignored.
+	 * </p>
+	 *
+	 * @param digest the digest
+	 * @param content the content
+	 * @return true if the blob was stored, false otherwise
+	 * @throws IOException if the blob could not be written
+	 */
+	public boolean store( String digest, byte[] content ) throws IOException {
+
+		boolean result = false;
+		if( ! BlobUtils.isValidDigest( digest )
+				|| ! digest.equals( BlobUtils.computeDigest( content ))) {
+			this.logger.warning( "A blob was received with an invalid digest: " + digest + ". It is ignored." );
+
+		} else {
+			// Write a temporary file first, so that a blob is never read partially
+			result = true;
+			File target = new File( this.directory, digest );
+			if( ! target.exists()) {
+				Utils.createDirectory( this.directory );
+				File tmp = new File( this.directory, digest + "." + UUID.randomUUID() + ".tmp" );
+				Utils.copyStream( new ByteArrayInputStream( content ), tmp );
+				if( ! tmp.renameTo( target ) && ! target.exists()) {
+					Utils.deleteFilesRecursivelyAndQuietly( tmp );
+					throw new IOException( "Blob " + digest + " could not be stored in " + this.directory );
+				}
+
+				Utils.deleteFilesRecursivelyAndQuietly( tmp );
+				evict( target );
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Reads a blob.
+	 * @param digest the digest
+	 * @return the content, or null if the blob is not in the cache (or if it was corrupted)
+	 */
+	public byte[] read( String digest ) {
+
+		byte[] result = null;
+		File f = new File( this.directory, digest );
+		if( BlobUtils.isValidDigest( digest ) && f.isFile()) {
+			try {
+				result = BlobUtils.readContent( f );
+				if( ! digest.equals( BlobUtils.computeDigest( result ))) {
+					this.logger.warning( "Blob " + digest + " was corrupted. It is removed from the cache." );
+					Utils.deleteFilesRecursivelyAndQuietly( f );
+					result = null;
+
+				} else {
+					// Keep track of the last access, for eviction
+					f.setLastModified( System.currentTimeMillis());
+				}
+
+			} catch( IOException e ) {
+				Utils.logException( this.logger, e );
+				result = null;
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Resolves a manifest.
+	 * <p>
+	 * Received resources are first stored in the cache (and ignored if they do not match their digest).
+	 * Then, every file of the manifest is searched in the received resources or in the cache.
+	 * </p>
+	 *
+	 * @param fileNameToDigest the manifest (key = file name, value = digest)
+	 * @param fileNameToFileContent the received resources (key = file name, value = content), may be null
+	 * @param missingDigests a non-null set, completed with the digests that could not be found
+	 * @return a map with all the resources (key = file name, value = content), only complete if no digest is missing
+	 * @throws IOException if received resources could not be stored
+	 */
+	public Map<String,byte[]> resolve(
+			Map<String,String> fileNameToDigest,
+			Map<String,byte[]> fileNameToFileContent,
+			Set<String> missingDigests )
+	throws IOException {
+
+		// Store everything we received
+		Map<String,byte[]> digestToContent = new HashMap<> ();
+		if( fileNameToFileContent != null ) {
+			for( Map.Entry<String,String> entry : fileNameToDigest.entrySet()) {
+				byte[] content = fileNameToFileContent.get( entry.getKey());
+				if( content != null && store( entry.getValue(), content ))
+					digestToContent.put( entry.getValue(), content );
+			}
+		}
+
+		// Then, resolve the manifest
+		Map<String,byte[]> result = new HashMap<> ();
+		for( Map.Entry<String,String> entry : fileNameToDigest.entrySet()) {
+
+			byte[] content = digestToContent.get( entry.getValue());
+			if( content == null
+					&& ( content = read( entry.getValue())) != null )
+				digestToContent.put( entry.getValue(), content );
+
+			if( content == null )
+				missingDigests.add( entry.getValue());
+			else
+				result.put( entry.getKey(), content );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Removes the least recently used blobs until the cache does not exceed its maximum size.
+	 * @param newBlob the blob that was just stored (never removed)
+	 */
+	void evict( File newBlob ) {
+
+		File[] files = this.directory.listFiles();
+		if( files == null )
+			return;
+
+		long size = 0;
+		for( File f : files )
+			size += f.length();
+
+		if( size <= this.maxSize )
+			return;
+
+		Arrays.sort( files, new Comparator<File>() {
+			@Override
+			public int compare( File f1, File f2 ) {
+				return Long.compare( f1.lastModified(), f2.lastModified());
+			}
+		});
+
+		for( int i=0; i<files.length && size > this.maxSize; i++ ) {
+
+			// Temporary files are being written by other agents
+			if( files[ i ].equals( newBlob )
+					|| ! BlobUtils.isValidDigest( files[ i ].getName()))
+				continue;
+
+			long length = files[ i ].length();
+			if( files[ i ].delete()) {
+				size -= length;
+				this.logger.fine( "Blob " + files[ i ].getName() + " was removed from the cache." );
+			}
+		}
+	}
+
+
+	/**
+	 * @return the directory
+	 */
+	public File getDirectory() {
+		return this.directory;
+	}
+
+
+	/**
+	 * @return the maximum size of the cache (in bytes)
+	 */
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.roboconf.agent.internal.misc.BlobCache;
+import net.roboconf.agent.internal.test.AgentTestUtils;
+import net.roboconf.core.Constants;
+import net.roboconf.core.internal.tests.TestApplicationTemplate;
+import net.roboconf.core.model.beans.Instance.InstanceStatus;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.factory.MessagingClientFactoryRegistry;
+import net.roboconf.messaging.api.internal.client.test.TestClient;
+import net.roboconf.messaging.api.internal.client.test.TestClientFactory;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMissingBlobs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeInstanceState;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendBlobs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSetScopedInstance;
+import net.roboconf.messaging.api.utils.BlobUtils;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class AgentMessageProcessorBlobsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Agent agent;
+	private AgentMessageProcessor processor;
+	private TestClient client;
+	private TestApplicationTemplate app;
+
+
+	@Before
+	public void initializeAgent() throws Exception {
+
+		final MessagingClientFactoryRegistry registry = new MessagingClientFactoryRegistry();
+		registry.addMessagingClientFactory( new TestClientFactory());
+		this.agent = new Agent();
+
+		this.agent.setMessagingType( MessagingConstants.FACTORY_TEST );
+		this.agent.start();
+
+		this.agent.getMessagingClient().setRegistry( registry );
+		this.agent.reconfigure();
+
+		Thread.sleep( 200 );
+		this.client = AgentTestUtils.getInternalClient( this.agent.getMessagingClient());
+		this.client.clearMessages();
+
+		this.processor = (AgentMessageProcessor) this.agent.getMessagingClient().getMessageProcessor();
+		this.processor.blobCache = new BlobCache( this.folder.newFolder());
+
+		this.app = new TestApplicationTemplate();
+		this.processor.processMessage( new MsgCmdSetScopedInstance( this.app.getTomcatVm()));
+		Assert.assertEquals( this.app.getTomcatVm(), this.processor.scopedInstance );
+	}
+
+
+	@After
+	public void stopAgent() throws Exception {
+		this.agent.stop();
+		Utils.deleteFilesRecursively( new File( Constants.WORK_DIRECTORY_AGENT ));
+	}
+
+
+	@Test
+	public void testBlobsAreCachedAndRequestedWhenMissing() throws Exception {
+
+		byte[] recipe = "recipe".getBytes( StandardCharsets.UTF_8 );
+		Map<String,byte[]> content = new HashMap<> ();
+		content.put( "recipe.txt", recipe );
+		Map<String,String> manifest = BlobUtils.computeDigests( content );
+		String digest = manifest.get( "recipe.txt" );
+
+		// The content is sent along with the manifest: it is stored in the cache
+		this.processor.processMessage( new MsgCmdChangeInstanceState( "/tomcat-vm/tomcat-server", InstanceStatus.DEPLOYED_STOPPED, content, manifest ));
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, this.app.getTomcat().getStatus());
+		Assert.assertArrayEquals( recipe, this.processor.blobCache.read( digest ));
+		Assert.assertEquals( 0, findMissingBlobsRequests().size());
+
+		// Only the manifest is sent: the cache is used
+		this.processor.processMessage( new MsgCmdChangeInstanceState( this.app.getTomcat(), InstanceStatus.NOT_DEPLOYED ));
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, this.app.getTomcat().getStatus());
+
+		this.processor.processMessage( new MsgCmdChangeInstanceState( "/tomcat-vm/tomcat-server", InstanceStatus.DEPLOYED_STARTED, null, manifest ));
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, this.app.getTomcat().getStatus());
+		Assert.assertEquals( 0, findMissingBlobsRequests().size());
+
+		File recipeFile = new File( InstanceHelpers.findInstanceDirectoryOnAgent( this.app.getTomcat()), "recipe.txt" );
+		Assert.assertEquals( "recipe", Utils.readFileContent( recipeFile ));
+
+		// The cache was cleared: the blob is requested and messages wait for it
+		this.processor.blobCache = new BlobCache( this.folder.newFolder());
+		this.processor.processMessage( new MsgCmdChangeInstanceState( this.app.getTomcat(), InstanceStatus.NOT_DEPLOYED ));
+		this.processor.processMessage( new MsgCmdChangeInstanceState( "/tomcat-vm/tomcat-server", InstanceStatus.DEPLOYED_STOPPED, null, manifest ));
+		this.processor.processMessage( new MsgCmdChangeInstanceState( this.app.getWar(), InstanceStatus.DEPLOYED_STARTED ));
+
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, this.app.getTomcat().getStatus());
+		Assert.assertEquals( 2, this.processor.messagesAwaitingBlobs.size());
+
+		List<MsgNotifMissingBlobs> requests = findMissingBlobsRequests();
+		Assert.assertEquals( 1, requests.size());
+		Assert.assertEquals( this.agent.getScopedInstancePath(), requests.get( 0 ).getScopedInstancePath());
+		Assert.assertEquals( 1, requests.get( 0 ).getDigests().size());
+		Assert.assertTrue( requests.get( 0 ).getDigests().contains( digest ));
+
+		// Once the DM answers, messages are processed in order
+		Map<String,byte[]> blobs = new HashMap<> ();
+		blobs.put( digest, recipe );
+		this.processor.processMessage( new MsgCmdSendBlobs( blobs ));
+
+		Assert.assertEquals( 0, this.processor.messagesAwaitingBlobs.size());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, this.app.getTomcat().getStatus());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, this.app.getWar().getStatus());
+		Assert.assertArrayEquals( recipe, this.processor.blobCache.read( digest ));
+	}
+
+
+	@Test
+	public void testMessagesAreDroppedWhenTheDmCannotSendBlobs() throws Exception {
+
+		Map<String,String> manifest = new HashMap<> ();
+		manifest.put( "recipe.txt", BlobUtils.computeDigest( new byte[ 5 ]));
+
+		this.processor.processMessage( new MsgCmdChangeInstanceState( "/tomcat-vm/tomcat-server", InstanceStatus.DEPLOYED_STARTED, null, manifest ));
+		Assert.assertEquals( 1, this.processor.messagesAwaitingBlobs.size());
+		Assert.assertEquals( 1, findMissingBlobsRequests().size());
+
+		this.processor.processMessage( new MsgCmdSendBlobs( null ));
+		Assert.assertEquals( 0, this.processor.messagesAwaitingBlobs.size());
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, this.app.getTomcat().getStatus());
+
+		// Messages are not blocked anymore
+		this.processor.processMessage( new MsgCmdChangeInstanceState( this.app.getTomcat(), InstanceStatus.DEPLOYED_STOPPED ));
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, this.app.getTomcat().getStatus());
+	}
+
+
+	@Test
+	public void testMissingBlobsAreRequestedAgain() throws Exception {
+
+		Map<String,String> manifest1 = new HashMap<> ();
+		manifest1.put( "recipe.txt", BlobUtils.computeDigest( new byte[ 1 ]));
+
+		Map<String,String> manifest2 = new HashMap<> ();
+		manifest2.put( "recipe.txt", BlobUtils.computeDigest( new byte[ 2 ]));
+
+		// Only new digests are requested...
+		this.processor.processMessage( new MsgCmdChangeInstanceState( "/tomcat-vm/tomcat-server", InstanceStatus.DEPLOYED_STOPPED, null, manifest1 ));
+		this.processor.processMessage( new MsgCmdChangeInstanceState( "/tomcat-vm/tomcat-server", InstanceStatus.DEPLOYED_STOPPED, null, manifest1 ));
+		this.processor.processMessage( new MsgCmdChangeInstanceState( "/tomcat-vm/tomcat-server", InstanceStatus.DEPLOYED_STARTED, null, manifest2 ));
+
+		List<MsgNotifMissingBlobs> requests = findMissingBlobsRequests();
+		Assert.assertEquals( 2, requests.size());
+		Assert.assertEquals( new HashSet<>( manifest1.values()), requests.get( 0 ).getDigests());
+		Assert.assertEquals( new HashSet<>( manifest2.values()), requests.get( 1 ).getDigests());
+		Assert.assertEquals( 2, this.processor.pendingBlobRequests );
+
+		// ... unless the DM did not answer for a long time
+		this.processor.lastBlobRequestTime -= AgentMessageProcessor.BLOB_REQUEST_TIMEOUT + 1;
+		this.processor.processMessage( new MsgCmdChangeInstanceState( this.app.getTomcat(), InstanceStatus.NOT_DEPLOYED ));
+
+		requests = findMissingBlobsRequests();
+		Assert.assertEquals( 3, requests.size());
+		Assert.assertEquals( 2, requests.get( 2 ).getDigests().size());
+		Assert.assertEquals( 1, this.processor.pendingBlobRequests );
+		Assert.assertEquals( 4, this.processor.messagesAwaitingBlobs.size());
+	}
+
+
+	@Test
+	public void testPendingMessagesAreCheckedWhenRequestsTimeOut() throws Exception {
+
+		byte[] recipe = "recipe".getBytes( StandardCharsets.UTF_8 );
+		Map<String,String> manifest = new HashMap<> ();
+		manifest.put( "recipe.txt", BlobUtils.computeDigest( recipe ));
+
+		this.processor.processMessage( new MsgCmdChangeInstanceState( "/tomcat-vm/tomcat-server", InstanceStatus.DEPLOYED_STOPPED, null, manifest ));
+		Assert.assertEquals( 1, this.processor.messagesAwaitingBlobs.size());
+		Assert.assertEquals( 1, findMissingBlobsRequests().size());
+
+		// Checks before the time out do nothing
+		this.processor.processMessage( new AgentMessageProcessor.MsgCheckBlobRequests());
+		Assert.assertEquals( 1, this.processor.messagesAwaitingBlobs.size());
+		Assert.assertEquals( 1, findMissingBlobsRequests().size());
+
+		// After it, missing blobs are requested again, even if no other message was received
+		this.processor.lastBlobRequestTime -= AgentMessageProcessor.BLOB_REQUEST_TIMEOUT;
+		this.processor.processMessage( new AgentMessageProcessor.MsgCheckBlobRequests());
+		Assert.assertEquals( 1, this.processor.messagesAwaitingBlobs.size());
+		Assert.assertEquals( 2, findMissingBlobsRequests().size());
+		Assert.assertEquals( new HashSet<>( manifest.values()), findMissingBlobsRequests().get( 1 ).getDigests());
+
+		// If the blobs were cached in the meantime, waiting messages are processed
+		Assert.assertTrue( this.processor.blobCache.store( manifest.get( "recipe.txt" ), recipe ));
+		this.processor.processMessage( new AgentMessageProcessor.MsgCheckBlobRequests());
+		Assert.assertEquals( 0, this.processor.messagesAwaitingBlobs.size());
+		Assert.assertEquals( 0, this.processor.requestedDigests.size());
+		Assert.assertEquals( 2, findMissingBlobsRequests().size());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, this.app.getTomcat().getStatus());
+	}
+
+
+	private List<MsgNotifMissingBlobs> findMissingBlobsRequests() {
+
+		List<MsgNotifMissingBlobs> result = new ArrayList<> ();
+		for( Message msg : this.client.messagesForTheDm ) {
+			if( msg instanceof MsgNotifMissingBlobs )
+				result.add((MsgNotifMissingBlobs) msg );
+		}
+
+		return result;
+	}
+}
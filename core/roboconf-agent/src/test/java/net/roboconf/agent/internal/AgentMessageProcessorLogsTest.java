@@ -26,6 +26,7 @@
 package net.roboconf.agent.internal;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 
 import org.junit.After;
@@ -39,10 +40,12 @@ import net.roboconf.agent.internal.misc.AgentConstants;
 import net.roboconf.agent.internal.test.AgentTestUtils;
 import net.roboconf.core.utils.Utils;
 import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.codec.CompressingCodec;
 import net.roboconf.messaging.api.factory.MessagingClientFactoryRegistry;
 import net.roboconf.messaging.api.internal.client.test.TestClient;
 import net.roboconf.messaging.api.internal.client.test.TestClientFactory;
 import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeLogLevel;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdGatherLogs;
@@ -125,4 +128,99 @@ public class AgentMessageProcessorLogsTest {
 		Assert.assertEquals( 1, ((MsgNotifLogs) sentMsg).getLogFiles().size());
 		Assert.assertTrue(((MsgNotifLogs) sentMsg).getLogFiles().containsKey( "karaf.log" ));
 	}
+
+
+	@Test
+	public void testGatherLogs_chunks() throws Exception {
+
+		File karafData = new File( this.agent.karafData );
+		File logFile = new File( karafData, AgentConstants.KARAF_LOGS_DIRECTORY + "/karaf.log" );
+		Assert.assertTrue( logFile.getParentFile().mkdir());
+		Utils.writeStringInto( "0123456789", logFile );
+
+		File emptyLogFile = new File( karafData, AgentConstants.KARAF_LOGS_DIRECTORY + "/roboconf.log" );
+		Assert.assertTrue( emptyLogFile.createNewFile());
+		Assert.assertEquals( 0, this.client.messagesForTheDm.size());
+
+		AgentMessageProcessor processor = (AgentMessageProcessor) this.agent.getMessagingClient().getMessageProcessor();
+		processor.processMessage( new MsgCmdGatherLogs( 4, 0, 0, false ));
+
+		// 3 chunks for the first file, 1 for the empty one
+		Assert.assertEquals( 4, this.client.messagesForTheDm.size());
+		StringBuilder sb = new StringBuilder();
+		for( Message sentMsg : this.client.messagesForTheDm ) {
+			Assert.assertEquals( MsgNotifLogChunk.class, sentMsg.getClass());
+			MsgNotifLogChunk chunk = (MsgNotifLogChunk) sentMsg;
+			Assert.assertFalse( chunk.isCompressed());
+
+			if( "karaf.log".equals( chunk.getFileName())) {
+				Assert.assertEquals( sb.length(), chunk.getOffset());
+				Assert.assertEquals( chunk.getOffset() == 8, chunk.isLastChunk());
+				sb.append( new String( chunk.getContent(), StandardCharsets.UTF_8 ));
+
+			} else {
+				Assert.assertEquals( "roboconf.log", chunk.getFileName());
+				Assert.assertEquals( 0, chunk.getContent().length );
+				Assert.assertTrue( chunk.isLastChunk());
+			}
+		}
+
+		Assert.assertEquals( "0123456789", sb.toString());
+	}
+
+
+	@Test
+	public void testGatherLogs_chunks_tailAndSince() throws Exception {
+
+		File karafData = new File( this.agent.karafData );
+		File logFile = new File( karafData, AgentConstants.KARAF_LOGS_DIRECTORY + "/karaf.log" );
+		Assert.assertTrue( logFile.getParentFile().mkdir());
+		Utils.writeStringInto( "0123456789", logFile );
+
+		File oldLogFile = new File( karafData, AgentConstants.KARAF_LOGS_DIRECTORY + "/karaf.log.1" );
+		Utils.writeStringInto( "old logs", oldLogFile );
+		Assert.assertTrue( oldLogFile.setLastModified( 10000 ));
+
+		// Only the end of the file is sent
+		AgentMessageProcessor processor = (AgentMessageProcessor) this.agent.getMessagingClient().getMessageProcessor();
+		processor.processMessage( new MsgCmdGatherLogs( 1024, 4, 20000, false ));
+
+		Assert.assertEquals( 1, this.client.messagesForTheDm.size());
+		MsgNotifLogChunk chunk = (MsgNotifLogChunk) this.client.messagesForTheDm.get( 0 );
+		Assert.assertEquals( "karaf.log", chunk.getFileName());
+		Assert.assertEquals( "6789", new String( chunk.getContent(), StandardCharsets.UTF_8 ));
+		Assert.assertTrue( chunk.isLastChunk());
+
+		// Without time restriction, rotated files are sent too (if the limit allows it)
+		this.client.messagesForTheDm.clear();
+		processor.processMessage( new MsgCmdGatherLogs( 1024, 12, 0, false ));
+
+		Assert.assertEquals( 2, this.client.messagesForTheDm.size());
+		chunk = (MsgNotifLogChunk) this.client.messagesForTheDm.get( 1 );
+		Assert.assertEquals( "karaf.log.1", chunk.getFileName());
+		Assert.assertEquals( "gs", new String( chunk.getContent(), StandardCharsets.UTF_8 ));
+	}
+
+
+	@Test
+	public void testGatherLogs_chunks_compressed() throws Exception {
+
+		File karafData = new File( this.agent.karafData );
+		File logFile = new File( karafData, AgentConstants.KARAF_LOGS_DIRECTORY + "/roboconf.log" );
+		Assert.assertTrue( logFile.getParentFile().mkdir());
+
+		StringBuilder sb = new StringBuilder();
+		for( int i=0; i<1000; i++ )
+			sb.append( "INFO - Everything is fine.\n" );
+
+		Utils.writeStringInto( sb.toString(), logFile );
+		AgentMessageProcessor processor = (AgentMessageProcessor) this.agent.getMessagingClient().getMessageProcessor();
+		processor.processMessage( new MsgCmdGatherLogs( MsgCmdGatherLogs.DEFAULT_CHUNK_SIZE, 0, 0, true ));
+
+		Assert.assertEquals( 1, this.client.messagesForTheDm.size());
+		MsgNotifLogChunk chunk = (MsgNotifLogChunk) this.client.messagesForTheDm.get( 0 );
+		Assert.assertTrue( chunk.isCompressed());
+		Assert.assertTrue( chunk.getContent().length < logFile.length());
+		Assert.assertEquals( sb.toString(), new String( CompressingCodec.decompress( chunk.getContent()), StandardCharsets.UTF_8 ));
+	}
 }
@@ -111,6 +111,38 @@ public class AgentUtilsTest {
 	}
 
 
+	@Test
+	public void testInstanceResources_unchangedFilesAreNotRewritten() throws Exception {
+
+		TestApplicationTemplate app = new TestApplicationTemplate();
+		File dir = InstanceHelpers.findInstanceDirectoryOnAgent( app.getTomcat());
+		Utils.deleteFilesRecursively( dir );
+
+		Map<String,byte[]> fileNameToFileContent = new HashMap<> ();
+		fileNameToFileContent.put( "f1.txt", "hello".getBytes( "UTF-8" ));
+		fileNameToFileContent.put( "f2.txt", "world".getBytes( "UTF-8" ));
+		AgentUtils.copyInstanceResources( app.getTomcat(), fileNameToFileContent );
+
+		File f1 = new File( dir, "f1.txt" );
+		File f2 = new File( dir, "f2.txt" );
+		long past = System.currentTimeMillis() - 100000;
+		Assert.assertTrue( f1.setLastModified( past ));
+		Assert.assertTrue( f2.setLastModified( past ));
+		Assert.assertTrue( AgentUtils.hasContent( f1, "hello".getBytes( "UTF-8" )));
+		Assert.assertFalse( AgentUtils.hasContent( f1, "hellO".getBytes( "UTF-8" )));
+		Assert.assertFalse( AgentUtils.hasContent( f1, "hello!".getBytes( "UTF-8" )));
+		Assert.assertFalse( AgentUtils.hasContent( new File( dir, "inexisting" ), new byte[ 0 ]));
+
+		// Only the modified file is written again
+		fileNameToFileContent.put( "f2.txt", "World".getBytes( "UTF-8" ));
+		AgentUtils.copyInstanceResources( app.getTomcat(), fileNameToFileContent );
+
+		Assert.assertEquals( past / 1000, f1.lastModified() / 1000 );
+		Assert.assertNotEquals( past / 1000, f2.lastModified() / 1000 );
+		Assert.assertEquals( "World", Utils.readFileContent( f2 ));
+	}
+
+
 	@Test
 	public void testInstanceResources_noResources() throws Exception {
 
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal.misc;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.utils.BlobUtils;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class BlobCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BlobCache cache;
+
+
+	@Before
+	public void createCache() throws Exception {
+		this.cache = new BlobCache( new File( this.folder.newFolder(), "blobs" ));
+	}
+
+
+	@Test
+	public void testStoreAndRead() throws Exception {
+
+		byte[] content = "some content".getBytes( StandardCharsets.UTF_8 );
+		String digest = BlobUtils.computeDigest( content );
+		Assert.assertNull( this.cache.read( digest ));
+
+		Assert.assertTrue( this.cache.store( digest, content ));
+		Assert.assertArrayEquals( content, this.cache.read( digest ));
+		Assert.assertEquals( 1, this.cache.getDirectory().listFiles().length );
+
+		// Storing twice is harmless
+		Assert.assertTrue( this.cache.store( digest, content ));
+		Assert.assertEquals( 1, this.cache.getDirectory().listFiles().length );
+	}
+
+
+	@Test
+	public void testStore_invalidDigests() throws Exception {
+
+		byte[] content = "some content".getBytes( StandardCharsets.UTF_8 );
+		Assert.assertFalse( this.cache.store( BlobUtils.computeDigest( new byte[ 1 ]), content ));
+		Assert.assertFalse( this.cache.store( "../../oops", content ));
+		Assert.assertFalse( this.cache.getDirectory().exists());
+
+		Assert.assertNull( this.cache.read( "../../oops" ));
+	}
+
+
+	@Test
+	public void testRead_corruptedBlob() throws Exception {
+
+		byte[] content = "some content".getBytes( StandardCharsets.UTF_8 );
+		String digest = BlobUtils.computeDigest( content );
+		Assert.assertTrue( this.cache.store( digest, content ));
+
+		File f = new File( this.cache.getDirectory(), digest );
+		Utils.writeStringInto( "corrupted", f );
+		Assert.assertNull( this.cache.read( digest ));
+		Assert.assertFalse( f.exists());
+	}
+
+
+	@Test
+	public void testResolve() throws Exception {
+
+		byte[] c1 = "c1".getBytes( StandardCharsets.UTF_8 );
+		byte[] c2 = "c2".getBytes( StandardCharsets.UTF_8 );
+		byte[] c3 = "c3".getBytes( StandardCharsets.UTF_8 );
+
+		Map<String,byte[]> all = new HashMap<> ();
+		all.put( "f1", c1 );
+		all.put( "dir/f2", c2 );
+		all.put( "f3", c3 );
+		Map<String,String> manifest = BlobUtils.computeDigests( all );
+
+		// Some content is received, another one is already cached, the last one is missing
+		Assert.assertTrue( this.cache.store( manifest.get( "dir/f2" ), c2 ));
+		Map<String,byte[]> received = new HashMap<> ();
+		received.put( "f1", c1 );
+
+		Set<String> missingDigests = new HashSet<> ();
+		Map<String,byte[]> resolved = this.cache.resolve( manifest, received, missingDigests );
+		Assert.assertEquals( 2, resolved.size());
+		Assert.assertArrayEquals( c1, resolved.get( "f1" ));
+		Assert.assertArrayEquals( c2, resolved.get( "dir/f2" ));
+		Assert.assertEquals( 1, missingDigests.size());
+		Assert.assertTrue( missingDigests.contains( manifest.get( "f3" )));
+
+		// Received content was cached
+		missingDigests.clear();
+		Assert.assertTrue( this.cache.store( manifest.get( "f3" ), c3 ));
+		resolved = this.cache.resolve( manifest, null, missingDigests );
+		Assert.assertEquals( 3, resolved.size());
+		Assert.assertEquals( 0, missingDigests.size());
+	}
+
+
+	@Test
+	public void testResolve_receivedContentIsStoredFirst() throws Exception {
+
+		byte[] c1 = "c1".getBytes( StandardCharsets.UTF_8 );
+		Map<String,String> manifest = new HashMap<> ();
+		manifest.put( "f1", BlobUtils.computeDigest( c1 ));
+		manifest.put( "f2", BlobUtils.computeDigest( c1 ));
+
+		// Two files share a same digest, only one is received
+		Map<String,byte[]> received = new HashMap<> ();
+		received.put( "f2", c1 );
+
+		Set<String> missingDigests = new HashSet<> ();
+		Map<String,byte[]> resolved = this.cache.resolve( manifest, received, missingDigests );
+		Assert.assertEquals( 0, missingDigests.size());
+		Assert.assertArrayEquals( c1, resolved.get( "f1" ));
+		Assert.assertArrayEquals( c1, resolved.get( "f2" ));
+
+		// Received content that does not match its digest is not used
+		received.put( "f2", "corrupted".getBytes( StandardCharsets.UTF_8 ));
+		manifest.remove( "f1" );
+		Utils.deleteFilesRecursively( this.cache.getDirectory());
+
+		resolved = this.cache.resolve( manifest, received, missingDigests );
+		Assert.assertEquals( 0, resolved.size());
+		Assert.assertEquals( 1, missingDigests.size());
+	}
+
+
+	@Test
+	public void testStore_eviction() throws Exception {
+
+		this.cache = new BlobCache( this.cache.getDirectory(), 10 );
+		Assert.assertEquals( 10, this.cache.getMaxSize());
+
+		byte[] c1 = "content 1".getBytes( StandardCharsets.UTF_8 );
+		byte[] c2 = "content 2".getBytes( StandardCharsets.UTF_8 );
+		String d1 = BlobUtils.computeDigest( c1 );
+		String d2 = BlobUtils.computeDigest( c2 );
+
+		// The least recently used blob is removed
+		Assert.assertTrue( this.cache.store( d1, c1 ));
+		new File( this.cache.getDirectory(), d1 ).setLastModified( System.currentTimeMillis() - 10000 );
+		Assert.assertTrue( this.cache.store( d2, c2 ));
+
+		Assert.assertNull( this.cache.read( d1 ));
+		Assert.assertArrayEquals( c2, this.cache.read( d2 ));
+
+		// A blob is never removed right after it was stored, even if it is too big
+		byte[] big = new byte[ 50 ];
+		String bigDigest = BlobUtils.computeDigest( big );
+		Assert.assertTrue( this.cache.store( bigDigest, big ));
+
+		Assert.assertNull( this.cache.read( d2 ));
+		Assert.assertArrayEquals( big, this.cache.read( bigDigest ));
+	}
+}
@@ -26,10 +26,11 @@
 package net.roboconf.core.dsl.converters;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -83,12 +84,12 @@ public class FromInstances {
 		BlockInstanceOf rootBlock = new BlockInstanceOf( file );
 		instanceToBlock.put( rootInstance, rootBlock );
 
-		List<Instance> toProcess = new ArrayList<> ();
+		Deque<Instance> toProcess = new ArrayDeque<> ();
 		toProcess.add( rootInstance );
 		while( ! toProcess.isEmpty()) {
 
 			// Process the current instance
-			Instance instance = toProcess.remove( 0 );
+			Instance instance = toProcess.poll();
 			BlockInstanceOf currentBlock = instanceToBlock.get( instance );
 			currentBlock.setName( instance.getComponent().getName());
 
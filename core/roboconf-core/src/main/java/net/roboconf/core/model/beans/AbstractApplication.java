@@ -26,9 +26,22 @@
 package net.roboconf.core.model.beans;
 
 import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.utils.Utils;
 
 /**
@@ -36,7 +49,14 @@ import net.roboconf.core.utils.Utils;
  */
 public abstract class AbstractApplication {
 
-	protected final Collection<Instance> rootInstances = new CopyOnWriteArraySet<> ();
+	private final AtomicLong rootInstancesVersion = new AtomicLong();
+	protected final Collection<Instance> rootInstances = new TrackedInstanceSet( this.rootInstancesVersion );
+	private final ConcurrentMap<String,Instance> instancePathIndex = new ConcurrentHashMap<> ();
+
+	// Scoped instances are searched very often (e.g. by periodic tasks in the DM).
+	// The registry is refreshed only for the trees of instances whose structure has changed.
+	private volatile ScopedInstancesRegistry scopedInstancesRegistry;
+	private volatile RootInstancesRegistry rootInstancesRegistry;
 	protected String name, displayName, description;
 	protected File directory;
 
@@ -48,6 +68,80 @@ public abstract class AbstractApplication {
 		return this.rootInstances;
 	}
 
+	/**
+	 * @return the index of the instances (key = instance path, never null)
+	 * <p>
+	 * This index is maintained by {@link net.roboconf.core.model.helpers.InstanceHelpers}.
+	 * Since instances can be modified directly, it must be considered as a cache:
+	 * entries must be verified when they are read.
+	 * </p>
+	 */
+	public ConcurrentMap<String,Instance> getInstancePathIndex() {
+		return this.instancePathIndex;
+	}
+
+	/**
+	 * Determines whether an instance is one of the root instances of this application.
+	 * <p>
+	 * Instances are compared by identity: a removed instance may have the same path
+	 * as the one that replaced it. The identity set of root instances is cached until
+	 * root instances are added or removed.
+	 * </p>
+	 *
+	 * @param instance an instance
+	 * @return true if it is one of the root instances of this application, false otherwise
+	 */
+	public boolean isRootInstance( Instance instance ) {
+
+		// Read the version BEFORE browsing the instances.
+		long version = this.rootInstancesVersion.get();
+		RootInstancesRegistry registry = this.rootInstancesRegistry;
+		if( registry == null || registry.version != version ) {
+			registry = new RootInstancesRegistry( version, this.rootInstances );
+			this.rootInstancesRegistry = registry;
+		}
+
+		return registry.rootInstances.contains( instance );
+	}
+
+	/**
+	 * Finds the scoped instances of this application.
+	 * <p>
+	 * The result is cached until instances are added, removed or associated with another component.
+	 * Only the trees of instances that changed are browsed again. Instances are listed root instance
+	 * by root instance, in the order of a breadth-first traversal of their tree.
+	 * </p>
+	 *
+	 * @return a non-null and unmodifiable list of scoped instances
+	 * @see net.roboconf.core.model.helpers.InstanceHelpers#findAllScopedInstances(AbstractApplication)
+	 */
+	public List<Instance> findScopedInstances() {
+
+		// Read the version BEFORE browsing the instances.
+		// Changes that occur meanwhile will be taken into account on the next invocation.
+		long version = this.rootInstancesVersion.get();
+		ScopedInstancesRegistry registry = this.scopedInstancesRegistry;
+		if( registry == null || registry.version != version || ! registry.isUpToDate()) {
+
+			List<ScopedInstancesOfTree> trees = new ArrayList<> ();
+			List<Instance> scopedInstances = new ArrayList<> ();
+			for( Instance rootInstance : this.rootInstances ) {
+
+				ScopedInstancesOfTree tree = registry == null ? null : registry.rootInstanceToTree.get( rootInstance );
+				if( tree == null || ! tree.isUpToDate())
+					tree = new ScopedInstancesOfTree( rootInstance );
+
+				trees.add( tree );
+				scopedInstances.addAll( tree.scopedInstances );
+			}
+
+			registry = new ScopedInstancesRegistry( version, trees, Collections.unmodifiableList( scopedInstances ));
+			this.scopedInstancesRegistry = registry;
+		}
+
+		return registry.scopedInstances;
+	}
+
 	/**
 	 * @return the name
 	 */
@@ -121,4 +215,123 @@ public abstract class AbstractApplication {
 	public String toString() {
 		return this.name;
 	}
+
+
+	/**
+	 * An immutable bean that stores root instances, compared by identity.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class RootInstancesRegistry {
+
+		final long version;
+		final Set<Instance> rootInstances = Collections.newSetFromMap( new IdentityHashMap<Instance,Boolean> ());
+
+
+		/**
+		 * Constructor.
+		 * @param version the version of the root instances
+		 * @param rootInstances the root instances
+		 */
+		RootInstancesRegistry( long version, Collection<Instance> rootInstances ) {
+			this.version = version;
+			this.rootInstances.addAll( rootInstances );
+		}
+	}
+
+
+	/**
+	 * An immutable bean that stores scoped instances.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class ScopedInstancesRegistry {
+
+		final long version;
+		final Map<Instance,ScopedInstancesOfTree> rootInstanceToTree = new IdentityHashMap<> ();
+		final List<Instance> scopedInstances;
+
+
+		/**
+		 * Constructor.
+		 * @param version the version of the root instances
+		 * @param trees the scoped instances of every tree
+		 * @param scopedInstances all the scoped instances
+		 */
+		ScopedInstancesRegistry( long version, List<ScopedInstancesOfTree> trees, List<Instance> scopedInstances ) {
+			this.version = version;
+			this.scopedInstances = scopedInstances;
+			for( ScopedInstancesOfTree tree : trees )
+				this.rootInstanceToTree.put( tree.rootInstance, tree );
+		}
+
+
+		/**
+		 * @return true if no tree has changed, false otherwise
+		 */
+		boolean isUpToDate() {
+
+			boolean result = true;
+			for( Iterator<ScopedInstancesOfTree> it = this.rootInstanceToTree.values().iterator(); it.hasNext() && result; )
+				result = it.next().isUpToDate();
+
+			return result;
+		}
+	}
+
+
+	/**
+	 * An immutable bean that stores the scoped instances of a tree.
+	 * <p>
+	 * Whether an instance is scoped depends on the installer of its component.
+	 * So, the installers of the components found in the tree are stored too.
+	 * </p>
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class ScopedInstancesOfTree {
+
+		final Instance rootInstance;
+		final long version;
+		final Map<Component,String> componentToInstaller = new IdentityHashMap<> ();
+		final List<Instance> scopedInstances = new ArrayList<> ();
+
+
+		/**
+		 * Constructor.
+		 * @param rootInstance the root instance of the tree
+		 */
+		ScopedInstancesOfTree( Instance rootInstance ) {
+
+			this.rootInstance = rootInstance;
+			this.version = rootInstance.getStructureVersion();
+
+			Deque<Instance> toProcess = new ArrayDeque<> ();
+			toProcess.add( rootInstance );
+			while( ! toProcess.isEmpty()) {
+				Instance current = toProcess.poll();
+				toProcess.addAll( current.getChildren());
+
+				Component component = current.getComponent();
+				if( component != null )
+					this.componentToInstaller.put( component, component.getInstallerName());
+
+				if( InstanceHelpers.isTarget( current ))
+					this.scopedInstances.add( current );
+			}
+		}
+
+
+		/**
+		 * @return true if the tree has not changed, false otherwise
+		 */
+		boolean isUpToDate() {
+
+			boolean result = this.rootInstance.getStructureVersion() == this.version;
+			for( Iterator<Map.Entry<Component,String>> it = this.componentToInstaller.entrySet().iterator(); it.hasNext() && result; ) {
+				Map.Entry<Component,String> entry = it.next();
+				result = Objects.equals( entry.getKey().getInstallerName(), entry.getValue());
+			}
+
+			return result;
+		}
+	}
 }
@@ -25,16 +25,19 @@
 
 package net.roboconf.core.model.beans;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
-import java.util.concurrent.CopyOnWriteArraySet;
 
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.utils.RoboconfFlexMap;
+import net.roboconf.core.utils.Utils;
 
 /**
  * An instance object represents a running component instance.
@@ -122,7 +125,8 @@ public class Instance implements Serializable {
 	private String name;
 	private Component component;
 	private Instance parent;
-	private final Collection<Instance> children = new CopyOnWriteArraySet<> ();
+	// Not final: children are tracked again after deserialization
+	private Collection<Instance> children = new TrackedInstanceSet( this );
 	private InstanceStatus status = InstanceStatus.NOT_DEPLOYED;
 
 	public final Collection<String> channels = new HashSet<> ();
@@ -136,6 +140,14 @@ public class Instance implements Serializable {
 	// The prefix is a component or a facet name.
 	private final Map<String,Collection<Import>> variablePrefixToImports = new TreeMap<> ();
 
+	// Paths are used very often (e.g. by hashCode and equals), so we cache them.
+	// A cached path remains valid as long as the name, the parent and the parent's path
+	// do not change. Renaming or moving an ancestor thus invalidates the whole sub-tree.
+	private transient volatile CachedPath cachedPath;
+
+	// Only meaningful for root instances: it changes with the structure of the whole tree.
+	private transient volatile long structureVersion;
+
 
 	/**
 	 * Constructor.
@@ -192,6 +204,7 @@ public class Instance implements Serializable {
 	 */
 	public void setComponent( Component component ) {
 		this.component = component;
+		structureChanged();
 	}
 
 	/**
@@ -215,15 +228,66 @@ public class Instance implements Serializable {
 		return this.children;
 	}
 
+	/**
+	 * @return the path of this instance (never null)
+	 * @see InstanceHelpers#computeInstancePath(Instance)
+	 */
+	public String getPath() {
+
+		Instance currentParent = this.parent;
+		String currentName = this.name;
+		String parentPath = currentParent == null ? "" : currentParent.getPath();
+
+		// Parent paths are compared by reference: they are cached too
+		CachedPath cache = this.cachedPath;
+		if( cache == null
+				|| cache.parent != currentParent
+				|| cache.parentPath != parentPath
+				|| ! Objects.equals( cache.name, currentName )) {
+
+			String path = parentPath + "/" + ( Utils.isEmptyOrWhitespaces( currentName ) ? "" : currentName );
+			cache = new CachedPath( currentName, currentParent, parentPath, path );
+			this.cachedPath = cache;
+		}
+
+		return cache.path;
+	}
+
+	/**
+	 * @return the version of the structure of the tree, if this instance is a root instance
+	 * <p>
+	 * It changes when an instance is added to or removed from the tree,
+	 * or when an instance of the tree is associated with another component.
+	 * </p>
+	 */
+	long getStructureVersion() {
+		return this.structureVersion;
+	}
+
+	/**
+	 * Indicates the structure of the tree this instance belongs to has changed.
+	 */
+	void structureChanged() {
+
+		Instance root = this;
+		while( root.parent != null )
+			root = root.parent;
+
+		synchronized( root ) {
+			root.structureVersion ++;
+		}
+	}
+
 	@Override
 	public int hashCode() {
-		return InstanceHelpers.computeInstancePath( this ).hashCode();
+		return getPath().hashCode();
 	}
 
 	@Override
 	public boolean equals( Object obj ) {
-		return obj instanceof Instance
-				&& InstanceHelpers.haveSamePath( this, (Instance) obj);
+		return this == obj
+				|| ( obj instanceof Instance
+				&& InstanceHelpers.haveSamePath( this, (Instance) obj));
 	}
 
 	@Override
@@ -245,7 +309,7 @@ public class Instance implements Serializable {
 	 * Sets the component in a chain approach.
 	 */
 	public Instance component( Component component ) {
-		this.component = component;
+		setComponent( component );
 		return this;
 	}
 
@@ -368,4 +432,36 @@ public class Instance implements Serializable {
 			return this.stable;
 		}
 	}
+
+
+	private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.children = new TrackedInstanceSet( this, this.children );
+	}
+
+
+	/**
+	 * An immutable bean to cache the path of an instance.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static final class CachedPath {
+
+		final String name, parentPath, path;
+		final Instance parent;
+
+
+		/**
+		 * Constructor.
+		 * @param name the instance name
+		 * @param parent the parent instance
+		 * @param parentPath the parent's path
+		 * @param path the instance's path
+		 */
+		CachedPath( String name, Instance parent, String parentPath, String path ) {
+			this.name = name;
+			this.parent = parent;
+			this.parentPath = parentPath;
+			this.path = path;
+		}
+	}
 }
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.roboconf.core.model.beans;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A set of instances that reports its modifications.
+ * <p>
+ * It is used for root instances and children instances, so that caches
+ * built from the structure of instances (e.g. the registry of scoped instances)
+ * can determine whether they are still up-to-date, even when instances are
+ * added or removed directly.
+ * </p>
+ * <p>
+ * Modifications of children are reported to the root instance of their owner
+ * (see {@link Instance#structureChanged()}). Modifications of root instances
+ * increment a counter held by the application.
+ * </p>
+ * <p>
+ * This class is never serialized: a {@link CopyOnWriteArraySet} is written instead,
+ * so that the serialized form of instances does not change.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+final class TrackedInstanceSet extends CopyOnWriteArraySet<Instance> {
+
+	private static final long serialVersionUID = 3219483216754836171L;
+
+	private final transient Instance owner;
+	private final transient AtomicLong version;
+
+
+	/**
+	 * Constructor for children instances.
+	 * @param owner the instance whose children are stored in this set (not null)
+	 */
+	TrackedInstanceSet( Instance owner ) {
+		this.owner = owner;
+		this.version = null;
+	}
+
+
+	/**
+	 * Constructor for children instances.
+	 * @param owner the instance whose children are stored in this set (not null)
+	 * @param children the children to store
+	 */
+	TrackedInstanceSet( Instance owner, Collection<Instance> children ) {
+		super( children );
+		this.owner = owner;
+		this.version = null;
+	}
+
+
+	/**
+	 * Constructor for root instances.
+	 * @param version the counter to increment on every modification (not null)
+	 */
+	TrackedInstanceSet( AtomicLong version ) {
+		this.owner = null;
+		this.version = version;
+	}
+
+
+	@Override
+	public boolean add( Instance e ) {
+		return changed( super.add( e ));
+	}
+
+
+	@Override
+	public boolean addAll( Collection<? extends Instance> c ) {
+		return changed( super.addAll( c ));
+	}
+
+
+	@Override
+	public boolean remove( Object o ) {
+		return changed( super.remove( o ));
+	}
+
+
+	@Override
+	public boolean removeAll( Collection<?> c ) {
+		return changed( super.removeAll( c ));
+	}
+
+
+	@Override
+	public boolean retainAll( Collection<?> c ) {
+		return changed( super.retainAll( c ));
+	}
+
+
+	@Override
+	public void clear() {
+		super.clear();
+		changed( true );
+	}
+
+
+	private boolean changed( boolean modified ) {
+
+		if( ! modified )
+			return false;
+
+		if( this.owner != null )
+			this.owner.structureChanged();
+		else
+			this.version.incrementAndGet();
+
+		return true;
+	}
+
+
+	private Object writeReplace() {
+		return new CopyOnWriteArraySet<>( this );
+	}
+}
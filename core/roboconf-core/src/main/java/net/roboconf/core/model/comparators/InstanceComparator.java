@@ -40,13 +40,31 @@ public class InstanceComparator implements Serializable, Comparator<Instance> {
 
 	@Override
 	public int compare( Instance o1, Instance o2 ) {
+		return comparePaths(
+				InstanceHelpers.computeInstancePath( o1 ),
+				InstanceHelpers.computeInstancePath( o2 ));
+	}
+
+
+	/**
+	 * Compares two instance paths.
+	 * <p>
+	 * Paths are compared segment by segment. Therefore, sorting instances
+	 * by path is equivalent to a depth-first traversal where siblings are sorted by name.
+	 * </p>
+	 *
+	 * @param path1 an instance path (not null)
+	 * @param path2 an instance path (not null)
+	 * @return the same values than {@link #compare(Instance, Instance)}
+	 */
+	public static int comparePaths( String path1, String path2 ) {
 
-		// Find the instance paths...
-		String[] p1 = InstanceHelpers.computeInstancePath( o1 ).substring( 1 ).split( "/" );
-		String[] p2 = InstanceHelpers.computeInstancePath( o2 ).substring( 1 ).split( "/" );
+		// Find the path segments...
+		String[] p1 = path1.substring( 1 ).split( "/" );
+		String[] p2 = path2.substring( 1 ).split( "/" );
 		int segmentsToCompare = Math.min( p1.length, p2.length );
 
-		// ...  and compare their segments
+		// ...  and compare them
 		String[] isBefore = null;
 		for( int i=0; i<segmentsToCompare && isBefore == null; i++ ) {
 			int comparison = p1[ i ].compareTo( p2[ i ]);
@@ -26,9 +26,11 @@
 package net.roboconf.core.model.helpers;
 
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -37,6 +39,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,8 +48,6 @@ import net.roboconf.core.errors.RoboconfErrorHelpers;
 import net.roboconf.core.model.ModelError;
 import net.roboconf.core.model.RuntimeModelValidator;
 import net.roboconf.core.model.beans.AbstractApplication;
-import net.roboconf.core.model.beans.Application;
-import net.roboconf.core.model.beans.ApplicationTemplate;
 import net.roboconf.core.model.beans.Instance;
 import net.roboconf.core.utils.DockerAndScriptUtils;
 import net.roboconf.core.utils.Utils;
@@ -76,17 +77,8 @@ public final class InstanceHelpers {
 	 * @return a string (not null)
 	 */
 	public static String computeInstancePath( Instance inst ) {
-
-		StringBuilder sb = new StringBuilder();
-		for( Instance current = inst; current != null; current = current.getParent()) {
-			StringBuilder currentSb = new StringBuilder( "/" );
-			if( ! Utils.isEmptyOrWhitespaces( current.getName()))
-				currentSb.append( current.getName());
-
-			sb.insert( 0, currentSb.toString());
-		}
-
-		return sb.toString();
+		// Paths are cached by instances
+		return inst == null ? "" : inst.getPath();
 	}
 
 
@@ -138,12 +130,12 @@ public final class InstanceHelpers {
 	public static List<Instance> buildHierarchicalList( Instance inst ) {
 
 		List<Instance> instanceList = new ArrayList<> ();
-		List<Instance> todo = new ArrayList<> ();
+		Deque<Instance> todo = new ArrayDeque<> ();
 		if( inst != null )
 			todo.add( inst );
 
 		while( ! todo.isEmpty()) {
-			Instance current = todo.remove( 0 );
+			Instance current = todo.poll();
 			instanceList.add( current );
 			todo.addAll( current.getChildren());
 		}
@@ -246,16 +238,102 @@ public final class InstanceHelpers {
 
 	/**
 	 * Finds an instance by name.
+	 * <p>
+	 * Lookups go through the application's index of instances.
+	 * When the index does not know the path, or when it is outdated, the instance tree is browsed.
+	 * An indexed instance is outdated if its path changed or if it is not part of the application anymore.
+	 * </p>
+	 *
 	 * @param application the application
 	 * @param instancePath the instance path
 	 * @return an instance, or null if it was not found
 	 */
 	public static Instance findInstanceByPath( AbstractApplication application, String instancePath ) {
 
-		Collection<Instance> currentList = new ArrayList<> ();
-		if( application != null )
-			currentList.addAll( application.getRootInstances());
+		Instance result = null;
+		if( application != null && instancePath != null ) {
+
+			// The model may have been modified without the helpers: verify the index
+			ConcurrentMap<String,Instance> index = application.getInstancePathIndex();
+			result = index.get( instancePath );
+			if( result != null
+					&& ( ! instancePath.equals( computeInstancePath( result ))
+							|| ! application.isRootInstance( findRootInstance( result )))) {
+				index.remove( instancePath, result );
+				result = null;
+			}
+
+			// Only "canonical" paths are indexed
+			if( result == null ) {
+				result = findInstanceByPath( application.getRootInstances(), instancePath );
+				if( result != null && instancePath.equals( computeInstancePath( result )))
+					index.put( instancePath, result );
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Finds an instance by name.
+	 * @param rootInstance a root instance
+	 * @param instancePath the instance path
+	 * @return an instance, or null if it was not found
+	 */
+	public static Instance findInstanceByPath( Instance rootInstance, String instancePath ) {
+
+		Collection<Instance> rootInstances = new ArrayList<> ();
+		if( rootInstance != null )
+			rootInstances.add( rootInstance );
+
+		return findInstanceByPath( rootInstances, instancePath );
+	}
+
+
+	/**
+	 * Removes an instance from an application.
+	 * <p>
+	 * The instance is detached from its parent (or from the root instances) and
+	 * it is removed, along with its children, from the application's index.
+	 * </p>
+	 *
+	 * @param application the application (not null)
+	 * @param instance the instance to remove (not null)
+	 */
+	public static void removeInstance( AbstractApplication application, Instance instance ) {
+
+		unindexInstances( application, instance );
+		if( instance.getParent() == null )
+			application.getRootInstances().remove( instance );
+		else
+			instance.getParent().getChildren().remove( instance );
+	}
+
+
+	/**
+	 * Renames an instance and updates the application's index.
+	 * @param application the application (not null)
+	 * @param instance the instance to rename (not null)
+	 * @param newName the new name
+	 */
+	public static void renameInstance( AbstractApplication application, Instance instance, String newName ) {
+
+		unindexInstances( application, instance );
+		instance.setName( newName );
+		indexInstances( application, instance );
+	}
+
 
+	/**
+	 * Browses an instance tree to find an instance.
+	 * @param rootInstances the root instances
+	 * @param instancePath the instance path
+	 * @return an instance, or null if it was not found
+	 */
+	private static Instance findInstanceByPath( Collection<Instance> rootInstances, String instancePath ) {
+
+		Collection<Instance> currentList = rootInstances;
 		List<String> instanceNames = new ArrayList<> ();
 		if( instancePath != null )
 			instanceNames.addAll( Arrays.asList( instancePath.split( "/" )));
@@ -289,18 +367,24 @@ public final class InstanceHelpers {
 
 
 	/**
-	 * Finds an instance by name.
-	 * @param rootInstance a root instance
-	 * @param instancePath the instance path
-	 * @return an instance, or null if it was not found
+	 * Adds an instance and its children to the application's index.
+	 * @param application the application (not null)
+	 * @param instance an instance (not null)
 	 */
-	public static Instance findInstanceByPath( Instance rootInstance, String instancePath ) {
+	private static void indexInstances( AbstractApplication application, Instance instance ) {
+		for( Instance inst : buildHierarchicalList( instance ))
+			application.getInstancePathIndex().put( computeInstancePath( inst ), inst );
+	}
 
-		Application tempApplication = new Application( new ApplicationTemplate());
-		if( rootInstance != null )
-			tempApplication.getRootInstances().add( rootInstance );
 
-		return findInstanceByPath( tempApplication, instancePath );
+	/**
+	 * Removes an instance and its children from the application's index.
+	 * @param application the application (not null)
+	 * @param instance an instance (not null)
+	 */
+	private static void unindexInstances( AbstractApplication application, Instance instance ) {
+		for( Instance inst : buildHierarchicalList( instance ))
+			application.getInstancePathIndex().remove( computeInstancePath( inst ), inst );
 	}
 
 
@@ -355,22 +439,15 @@ public final class InstanceHelpers {
 
 	/**
 	 * Finds all the scoped instances from an application.
+	 * <p>
+	 * Callers that only read the result should prefer {@link AbstractApplication#findScopedInstances()},
+	 * which does not copy the application's registry of scoped instances.
+	 * </p>
+	 *
 	 * @return a non-null list
 	 */
 	public static List<Instance> findAllScopedInstances( AbstractApplication app ) {
-
-		List<Instance> instanceList = new ArrayList<> ();
-		List<Instance> todo = new ArrayList<> ();
-		todo.addAll( app.getRootInstances());
-
-		while( ! todo.isEmpty()) {
-			Instance current = todo.remove( 0 );
-			todo.addAll( current.getChildren());
-			if( isTarget( current ))
-				instanceList.add( current );
-		}
-
-		return instanceList;
+		return new ArrayList<>( app.findScopedInstances());
 	}
 
 
@@ -430,6 +507,7 @@ public final class InstanceHelpers {
 					&& ComponentHelpers.findAllAncestors( childInstance.getComponent()).isEmpty()) {
 
 				application.getRootInstances().add( childInstance );
+				indexInstances( application, childInstance );
 				success = true;
 				// No validation here, but maybe we should...
 			}
@@ -448,6 +526,7 @@ public final class InstanceHelpers {
 					childInstance.setParent( null );
 
 				} else {
+					indexInstances( application, childInstance );
 					success = true;
 				}
 			}
@@ -516,11 +595,11 @@ public final class InstanceHelpers {
 	public static Instance replicateInstance( Instance instance ) {
 
 		Map<Instance,Instance> instanceToDuplicate = new HashMap<> ();
-		List<Instance> toProcess = new ArrayList<> ();
+		Deque<Instance> toProcess = new ArrayDeque<> ();
 		toProcess.add( instance );
 
 		while( ! toProcess.isEmpty()) {
-			Instance current = toProcess.remove( 0 );
+			Instance current = toProcess.poll();
 
 			Instance copy = new Instance();
 			copy.name( current.getName());
@@ -562,11 +641,11 @@ public final class InstanceHelpers {
 	 */
 	public static void removeOffScopeInstances( Instance scopedInstance ) {
 
-		List<Instance> todo = new ArrayList<> ();
+		Deque<Instance> todo = new ArrayDeque<> ();
 		todo.addAll( scopedInstance.getChildren());
 
 		while( ! todo.isEmpty()) {
-			Instance current = todo.remove( 0 );
+			Instance current = todo.poll();
 			if( isTarget( current ))
 				current.getParent().getChildren().remove( current );
 			else
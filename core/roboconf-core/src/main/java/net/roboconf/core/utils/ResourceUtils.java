@@ -61,15 +61,38 @@ public final class ResourceUtils {
 	 */
 	public static Map<String,byte[]> storeInstanceResources( File applicationFilesDirectory, Instance instance ) throws IOException {
 
-		// Recipes
 		Map<String,byte[]> result = new HashMap<> ();
+		for( Map.Entry<String,File> entry : findInstanceResourceFiles( applicationFilesDirectory, instance ).entrySet())
+			result.put( entry.getKey(), readBytes( entry.getValue()));
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the instance resources, without reading them.
+	 * <p>
+	 * The keys are the same than those of {@link #storeInstanceResources(File, Instance)}.
+	 * </p>
+	 *
+	 * @param applicationFilesDirectory the application's directory
+	 * @param instance an instance (not null)
+	 * @return a non-null map (key = the file location, relative to the instance's directory, value = file)
+	 */
+	public static Map<String,File> findInstanceResourceFiles( File applicationFilesDirectory, Instance instance ) {
+
+		// Recipes
+		Map<String,File> result = new HashMap<> ();
 		File instanceResourcesDirectory = findInstanceResourcesDirectory( applicationFilesDirectory, instance );
 		if( instanceResourcesDirectory.exists()
-				&& instanceResourcesDirectory.isDirectory())
-			result.putAll( Utils.storeDirectoryResourcesAsBytes( instanceResourcesDirectory ));
+				&& instanceResourcesDirectory.isDirectory()) {
+
+			for( File file : Utils.listAllFiles( instanceResourcesDirectory, false ))
+				result.put( Utils.computeFileRelativeLocation( instanceResourcesDirectory, file ), file );
+		}
 
 		// Probe files
-		result.putAll( storeInstanceProbeResources( applicationFilesDirectory, instance ));
+		result.putAll( findInstanceProbeFiles( applicationFilesDirectory, instance ));
 
 		return result;
 	}
@@ -84,24 +107,9 @@ public final class ResourceUtils {
 	 */
 	public static Map<String,byte[]> storeInstanceProbeResources( File applicationFilesDirectory, Instance instance ) throws IOException {
 
-		// Measure files (are not located with recipes, so no trouble with component inheritance).
-		// There can also be a properties file to inject values.
-		String[] exts = {
-				Constants.FILE_EXT_MEASURES,
-				Constants.FILE_EXT_MEASURES + ".properties"
-		};
-
 		Map<String,byte[]> result = new HashMap<> ();
-		for( String ext : exts ) {
-			String fileName = instance.getComponent().getName() + ext;
-			File autonomicMeasureFile = new File( applicationFilesDirectory, Constants.PROJECT_DIR_PROBES + "/" + fileName );
-			if( ! autonomicMeasureFile.exists())
-				break;
-
-			ByteArrayOutputStream os = new ByteArrayOutputStream();
-			Utils.copyStream( autonomicMeasureFile, os );
-			result.put( autonomicMeasureFile.getName(), os.toByteArray());
-		}
+		for( Map.Entry<String,File> entry : findInstanceProbeFiles( applicationFilesDirectory, instance ).entrySet())
+			result.put( entry.getKey(), readBytes( entry.getValue()));
 
 		return result;
 	}
@@ -176,4 +184,41 @@ public final class ResourceUtils {
 
 		return result;
 	}
+
+
+	/**
+	 * Finds the instance's files related to probes.
+	 * @param applicationFilesDirectory the application's directory
+	 * @param instance an instance (not null)
+	 * @return a non-null map (key = the file name, value = file)
+	 */
+	private static Map<String,File> findInstanceProbeFiles( File applicationFilesDirectory, Instance instance ) {
+
+		// Measure files (are not located with recipes, so no trouble with component inheritance).
+		// There can also be a properties file to inject values.
+		String[] exts = {
+				Constants.FILE_EXT_MEASURES,
+				Constants.FILE_EXT_MEASURES + ".properties"
+		};
+
+		Map<String,File> result = new HashMap<> ();
+		for( String ext : exts ) {
+			String fileName = instance.getComponent().getName() + ext;
+			File autonomicMeasureFile = new File( applicationFilesDirectory, Constants.PROJECT_DIR_PROBES + "/" + fileName );
+			if( ! autonomicMeasureFile.exists())
+				break;
+
+			result.put( autonomicMeasureFile.getName(), autonomicMeasureFile );
+		}
+
+		return result;
+	}
+
+
+	private static byte[] readBytes( File file ) throws IOException {
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Utils.copyStream( file, os );
+		return os.toByteArray();
+	}
 }
@@ -25,12 +25,23 @@
 
 package net.roboconf.core.model.beans;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import net.roboconf.core.Constants;
 import net.roboconf.core.internal.tests.TestApplication;
 import net.roboconf.core.internal.tests.TestApplicationTemplate;
 import net.roboconf.core.model.helpers.InstanceHelpers;
@@ -322,4 +333,147 @@ public class ApplicationTest {
 		Assert.assertEquals( "aeu eea", app.getName());
 		Assert.assertEquals( "âêû éèà", app.getDisplayName());
 	}
+
+
+	@Test
+	public void testFindScopedInstances_cachedAndRefreshed() {
+
+		TestApplication app = new TestApplication();
+		List<Instance> scopedInstances = app.findScopedInstances();
+		Assert.assertEquals( Arrays.asList( app.getMySqlVm(), app.getTomcatVm()), sort( scopedInstances ));
+
+		// Nothing changed => same list
+		Assert.assertSame( scopedInstances, app.findScopedInstances());
+
+		// Add a scoped instance directly in the model
+		Instance newVm = new Instance( "new-vm" ).component( app.getMySqlVm().getComponent());
+		app.getRootInstances().add( newVm );
+
+		List<Instance> newScopedInstances = app.findScopedInstances();
+		Assert.assertNotSame( scopedInstances, newScopedInstances );
+		Assert.assertEquals( 3, newScopedInstances.size());
+		Assert.assertTrue( newScopedInstances.contains( newVm ));
+
+		// Add a nested scoped instance
+		Instance container = new Instance( "container" ).component( app.getMySqlVm().getComponent());
+		InstanceHelpers.insertChild( newVm, container );
+		Assert.assertEquals( 4, app.findScopedInstances().size());
+
+		// Breadth-first order: root instances come before their children
+		newScopedInstances = app.findScopedInstances();
+		Assert.assertEquals( container, newScopedInstances.get( newScopedInstances.size() - 1 ));
+
+		// Remove it
+		newVm.getChildren().remove( container );
+		Assert.assertEquals( 3, app.findScopedInstances().size());
+
+		// Change the component
+		newVm.setComponent( app.getTomcat().getComponent());
+		Assert.assertEquals( 2, app.findScopedInstances().size());
+
+		// Change the installer
+		app.getTomcat().getComponent().setInstallerName( Constants.TARGET_INSTALLER );
+		Assert.assertEquals( 4, app.findScopedInstances().size());
+
+		// The result cannot be modified
+		try {
+			app.findScopedInstances().clear();
+			Assert.fail( "The list should not be modifiable." );
+
+		} catch( UnsupportedOperationException e ) {
+			// nothing
+		}
+
+		// The helper returns a modifiable copy
+		List<Instance> copy = InstanceHelpers.findAllScopedInstances( app );
+		copy.clear();
+		Assert.assertEquals( 4, app.findScopedInstances().size());
+	}
+
+
+	@Test
+	public void testFindScopedInstances_applicationsAreIndependent() {
+
+		TestApplication app1 = new TestApplication();
+		TestApplication app2 = new TestApplication();
+		List<Instance> scopedInstances1 = app1.findScopedInstances();
+		List<Instance> scopedInstances2 = app2.findScopedInstances();
+
+		// Modifying an application does not invalidate the registry of another one
+		InstanceHelpers.insertChild( app1.getMySqlVm(), new Instance( "container" ).component( app1.getMySqlVm().getComponent()));
+		Assert.assertNotSame( scopedInstances1, app1.findScopedInstances());
+		Assert.assertEquals( 3, app1.findScopedInstances().size());
+		Assert.assertSame( scopedInstances2, app2.findScopedInstances());
+
+		app1.getRootInstances().clear();
+		Assert.assertEquals( 0, app1.findScopedInstances().size());
+		Assert.assertSame( scopedInstances2, app2.findScopedInstances());
+	}
+
+
+	@Test
+	public void testFindScopedInstances_deserializedInstances() throws Exception {
+
+		TestApplication app = new TestApplication();
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try( ObjectOutputStream out = new ObjectOutputStream( os )) {
+			out.writeObject( app.getMySqlVm());
+		}
+
+		// The serialized form of children did not change
+		String serialized = new String( os.toByteArray(), StandardCharsets.ISO_8859_1 );
+		Assert.assertTrue( serialized.contains( CopyOnWriteArraySet.class.getName()));
+		Assert.assertFalse( serialized.contains( TrackedInstanceSet.class.getSimpleName()));
+
+		Instance vmCopy;
+		try( ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( os.toByteArray()))) {
+			vmCopy = (Instance) in.readObject();
+		}
+
+		app.getRootInstances().remove( app.getMySqlVm());
+		app.getRootInstances().add( vmCopy );
+		Assert.assertEquals( 2, app.findScopedInstances().size());
+
+		// Children of deserialized instances are still tracked
+		Instance container = new Instance( "container" ).component( vmCopy.getComponent());
+		vmCopy.getChildren().add( container );
+		container.setParent( vmCopy );
+		Assert.assertEquals( 3, app.findScopedInstances().size());
+	}
+
+
+	private static List<Instance> sort( List<Instance> instances ) {
+
+		List<Instance> result = new ArrayList<>( instances );
+		Collections.sort( result, new Comparator<Instance>() {
+			@Override
+			public int compare( Instance o1, Instance o2 ) {
+				return o1.getName().compareTo( o2.getName());
+			}
+		});
+
+		return result;
+	}
+
+
+	@Test
+	public void testIsRootInstance() {
+
+		TestApplication app = new TestApplication();
+		Assert.assertTrue( app.isRootInstance( app.getTomcatVm()));
+		Assert.assertTrue( app.isRootInstance( app.getMySqlVm()));
+		Assert.assertFalse( app.isRootInstance( app.getTomcat()));
+		Assert.assertFalse( app.isRootInstance( null ));
+
+		// Instances are compared by identity
+		Instance copy = new Instance( app.getTomcatVm().getName()).component( app.getTomcatVm().getComponent());
+		Assert.assertFalse( app.isRootInstance( copy ));
+
+		// Modifications are taken into account
+		app.getRootInstances().remove( app.getTomcatVm());
+		Assert.assertFalse( app.isRootInstance( app.getTomcatVm()));
+
+		app.getRootInstances().add( copy );
+		Assert.assertTrue( app.isRootInstance( copy ));
+	}
 }
@@ -25,11 +25,24 @@
 
 package net.roboconf.core.model.beans;
 
-import org.junit.Assert;
-import net.roboconf.core.model.beans.Instance.InstanceStatus;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import net.roboconf.core.model.beans.Instance.InstanceStatus;
+import net.roboconf.core.utils.Utils;
+
 /**
  * @author Vincent Zurczak - Linagora
  */
@@ -77,4 +90,169 @@ public class InstanceTest {
 		Assert.assertEquals( hop, hop );
 		Assert.assertEquals( hop, new Instance ("hop" ));
 	}
+
+
+	@Test
+	public void testGetPath_invalidation() throws Exception {
+
+		Instance root = new Instance( "root" );
+		Instance middle = new Instance( "middle" ).parent( root );
+		Instance leaf = new Instance( "leaf" ).parent( middle );
+
+		String path = leaf.getPath();
+		Assert.assertEquals( "/root/middle/leaf", path );
+		Assert.assertSame( path, leaf.getPath());
+
+		// Renaming an ancestor
+		root.setName( "root2" );
+		Assert.assertEquals( "/root2/middle/leaf", leaf.getPath());
+		Assert.assertEquals( "/root2/middle", middle.getPath());
+
+		// Moving an ancestor
+		Instance otherRoot = new Instance( "other" );
+		middle.setParent( otherRoot );
+		Assert.assertEquals( "/other/middle/leaf", leaf.getPath());
+
+		middle.setParent( null );
+		Assert.assertEquals( "/middle/leaf", leaf.getPath());
+
+		// Renaming the instance itself
+		leaf.name( "" );
+		Assert.assertEquals( "/middle/", leaf.getPath());
+		leaf.name( null );
+		Assert.assertEquals( "/middle/", leaf.getPath());
+
+		// Paths are not serialized
+		leaf.name( "leaf" );
+		Assert.assertEquals( "/middle/leaf", leaf.getPath());
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try( ObjectOutputStream out = new ObjectOutputStream( os )) {
+			out.writeObject( leaf );
+		}
+
+		try( ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( os.toByteArray()))) {
+			Instance copy = (Instance) in.readObject();
+			Assert.assertEquals( "/middle/leaf", copy.getPath());
+			Assert.assertEquals( leaf, copy );
+
+			copy.getParent().setName( "new" );
+			Assert.assertEquals( "/new/leaf", copy.getPath());
+			Assert.assertEquals( "/middle/leaf", leaf.getPath());
+		}
+	}
+
+
+	@Test
+	public void testHashCode_changesWithThePath() {
+
+		Instance root = new Instance( "root" );
+		Instance child = new Instance( "child" ).parent( root );
+		Assert.assertEquals( "/root/child".hashCode(), child.hashCode());
+
+		root.setName( "root2" );
+		Assert.assertEquals( "/root2/child".hashCode(), child.hashCode());
+		Assert.assertEquals( new Instance( "child" ).parent( new Instance( "root2" )), child );
+	}
+
+
+	/**
+	 * A (basic) benchmark for paths, hash codes and maps of instances.
+	 * <p>
+	 * Paths used to be built again on every invocation of hashCode and equals.
+	 * The previous implementation is kept here as a reference.
+	 * </p>
+	 */
+	@Test
+	public void testPaths_benchmark() {
+
+		// A deep tree
+		List<Instance> instances = new ArrayList<> ();
+		for( int i=0; i<500; i++ ) {
+			Instance current = new Instance( "root-" + i );
+			instances.add( current );
+			for( int j=0; j<9; j++ ) {
+				current = new Instance( "instance-" + j ).parent( current );
+				instances.add( current );
+			}
+		}
+
+		// Warm up
+		for( int i=0; i<3; i++ ) {
+			measureLegacyPaths( instances );
+			measureCachedPaths( instances );
+			measureMapOperations( instances );
+		}
+
+		long legacy = measureLegacyPaths( instances );
+		long cached = measureCachedPaths( instances );
+		long maps = measureMapOperations( instances );
+
+		Logger.getLogger( getClass().getName()).info(
+				"Paths for 5,000 instances (depth = 10): " + legacy / 1000 + " µs (built), "
+				+ cached / 1000 + " µs (cached). Map operations: " + maps / 1000 + " µs." );
+
+		// Measures are only logged, cached paths must match the built ones
+		for( Instance inst : instances ) {
+			Assert.assertEquals( buildLegacyPath( inst ), inst.getPath());
+			Assert.assertEquals( buildLegacyPath( inst ).hashCode(), inst.hashCode());
+		}
+	}
+
+
+	private static long measureLegacyPaths( List<Instance> instances ) {
+
+		long start = System.nanoTime();
+		int total = 0;
+		for( Instance inst : instances )
+			total += buildLegacyPath( inst ).hashCode();
+
+		Assert.assertTrue( total != 0 || instances.isEmpty());
+		return System.nanoTime() - start;
+	}
+
+
+	private static long measureCachedPaths( List<Instance> instances ) {
+
+		long start = System.nanoTime();
+		int total = 0;
+		for( Instance inst : instances )
+			total += inst.hashCode();
+
+		Assert.assertTrue( total != 0 || instances.isEmpty());
+		return System.nanoTime() - start;
+	}
+
+
+	private static long measureMapOperations( List<Instance> instances ) {
+
+		long start = System.nanoTime();
+		Map<Instance,String> map = new HashMap<> ();
+		Set<Instance> set = new HashSet<> ();
+		for( Instance inst : instances ) {
+			map.put( inst, inst.getName());
+			set.add( inst );
+		}
+
+		for( Instance inst : instances ) {
+			Assert.assertNotNull( map.get( inst ));
+			Assert.assertTrue( set.contains( inst ));
+		}
+
+		return System.nanoTime() - start;
+	}
+
+
+	private static String buildLegacyPath( Instance inst ) {
+
+		StringBuilder sb = new StringBuilder();
+		for( Instance current = inst; current != null; current = current.getParent()) {
+			StringBuilder currentSb = new StringBuilder( "/" );
+			if( ! Utils.isEmptyOrWhitespaces( current.getName()))
+				currentSb.append( current.getName());
+
+			sb.insert( 0, currentSb.toString());
+		}
+
+		return sb.toString();
+	}
 }
@@ -174,4 +174,19 @@ public class InstanceComparatorTest {
 		Assert.assertEquals( inst1, instances.get( 2 ));
 		Assert.assertEquals( inst4, instances.get( 3 ));
 	}
+
+
+	@Test
+	public void testComparePaths() {
+
+		Assert.assertEquals( 0, InstanceComparator.comparePaths( "/vm", "/vm" ));
+		Assert.assertTrue( InstanceComparator.comparePaths( "/vm", "/vm/server" ) < 0 );
+		Assert.assertTrue( InstanceComparator.comparePaths( "/vm/server", "/vm" ) > 0 );
+		Assert.assertTrue( InstanceComparator.comparePaths( "/vm/server", "/vm2" ) < 0 );
+		Assert.assertTrue( InstanceComparator.comparePaths( "/vm2", "/vm/server" ) > 0 );
+
+		// Segments are compared, not the whole paths
+		Assert.assertTrue( "/vm/server".compareTo( "/vm server" ) > 0 );
+		Assert.assertTrue( InstanceComparator.comparePaths( "/vm/server", "/vm server" ) < 0 );
+	}
 }
@@ -36,6 +36,7 @@ import org.junit.Test;
 
 import net.roboconf.core.Constants;
 import net.roboconf.core.errors.RoboconfErrorHelpers;
+import net.roboconf.core.internal.tests.TestApplication;
 import net.roboconf.core.internal.tests.TestUtils;
 import net.roboconf.core.model.RuntimeModelIo;
 import net.roboconf.core.model.RuntimeModelIo.ApplicationLoadResult;
@@ -379,6 +380,124 @@ public class InstanceHelpersTest {
 	}
 
 
+	@Test
+	public void testFindInstanceByPath_index() {
+
+		TestApplication app = new TestApplication();
+		app.getInstancePathIndex().clear();
+		String tomcatPath = InstanceHelpers.computeInstancePath( app.getTomcat());
+		Assert.assertEquals( 0, app.getInstancePathIndex().size());
+
+		// Found instances are indexed
+		Assert.assertEquals( app.getTomcat(), InstanceHelpers.findInstanceByPath( app, tomcatPath ));
+		Assert.assertSame( app.getTomcat(), app.getInstancePathIndex().get( tomcatPath ));
+
+		// Non-canonical paths are not
+		Assert.assertEquals( app.getTomcatVm(), InstanceHelpers.findInstanceByPath( app, app.getTomcatVm().getName()));
+		Assert.assertEquals( 1, app.getInstancePathIndex().size());
+
+		// Outdated entries are detected
+		app.getTomcatVm().setName( "renamed" );
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, tomcatPath ));
+		Assert.assertEquals( 0, app.getInstancePathIndex().size());
+
+		String newTomcatPath = InstanceHelpers.computeInstancePath( app.getTomcat());
+		Assert.assertEquals( "/renamed/tomcat-server", newTomcatPath );
+		Assert.assertEquals( app.getTomcat(), InstanceHelpers.findInstanceByPath( app, newTomcatPath ));
+	}
+
+
+	@Test
+	public void testFindInstanceByPath_indexedInstanceWasRemovedDirectly() {
+
+		TestApplication app = new TestApplication();
+		app.getInstancePathIndex().clear();
+		String tomcatPath = InstanceHelpers.computeInstancePath( app.getTomcat());
+		Assert.assertSame( app.getTomcat(), InstanceHelpers.findInstanceByPath( app, tomcatPath ));
+
+		// The root instance is replaced without the helpers: same paths, but other instances
+		Instance newVm = new Instance( app.getTomcatVm().getName()).component( app.getTomcatVm().getComponent());
+		Instance newTomcat = new Instance( app.getTomcat().getName()).component( app.getTomcat().getComponent());
+		InstanceHelpers.insertChild( newVm, newTomcat );
+
+		app.getRootInstances().remove( app.getTomcatVm());
+		app.getRootInstances().add( newVm );
+
+		Assert.assertSame( newTomcat, InstanceHelpers.findInstanceByPath( app, tomcatPath ));
+		Assert.assertSame( newTomcat, app.getInstancePathIndex().get( tomcatPath ));
+
+		// The root instance is removed
+		app.getRootInstances().remove( newVm );
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, tomcatPath ));
+		Assert.assertNull( app.getInstancePathIndex().get( tomcatPath ));
+	}
+
+
+	@Test
+	public void testRemoveInstance() {
+
+		TestApplication app = new TestApplication();
+		app.getInstancePathIndex().clear();
+		String warPath = InstanceHelpers.computeInstancePath( app.getWar());
+		String tomcatPath = InstanceHelpers.computeInstancePath( app.getTomcat());
+
+		Assert.assertEquals( app.getWar(), InstanceHelpers.findInstanceByPath( app, warPath ));
+		Assert.assertEquals( app.getTomcat(), InstanceHelpers.findInstanceByPath( app, tomcatPath ));
+		Assert.assertEquals( 2, app.getInstancePathIndex().size());
+
+		// Children are removed from the index too
+		InstanceHelpers.removeInstance( app, app.getTomcat());
+		Assert.assertEquals( 0, app.getInstancePathIndex().size());
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, warPath ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, tomcatPath ));
+		Assert.assertFalse( app.getTomcatVm().getChildren().contains( app.getTomcat()));
+
+		// Root instances
+		String vmPath = InstanceHelpers.computeInstancePath( app.getMySqlVm());
+		Assert.assertEquals( app.getMySqlVm(), InstanceHelpers.findInstanceByPath( app, vmPath ));
+		InstanceHelpers.removeInstance( app, app.getMySqlVm());
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, vmPath ));
+		Assert.assertEquals( 1, app.getRootInstances().size());
+	}
+
+
+	@Test
+	public void testRenameInstance() {
+
+		TestApplication app = new TestApplication();
+		app.getInstancePathIndex().clear();
+		String warPath = InstanceHelpers.computeInstancePath( app.getWar());
+		Assert.assertEquals( app.getWar(), InstanceHelpers.findInstanceByPath( app, warPath ));
+
+		InstanceHelpers.renameInstance( app, app.getTomcat(), "tomcat-2" );
+		Assert.assertNull( app.getInstancePathIndex().get( warPath ));
+
+		String newWarPath = InstanceHelpers.computeInstancePath( app.getWar());
+		Assert.assertSame( app.getWar(), app.getInstancePathIndex().get( newWarPath ));
+		Assert.assertSame( app.getTomcat(), app.getInstancePathIndex().get( "/tomcat-vm/tomcat-2" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, warPath ));
+		Assert.assertEquals( app.getWar(), InstanceHelpers.findInstanceByPath( app, newWarPath ));
+	}
+
+
+	@Test
+	public void testFindInstanceByPath_wideApplication() {
+
+		// Lookups should not depend on the number of siblings
+		Application app = new Application( new ApplicationTemplate());
+		Component vmComponent = new Component( "vm" ).installerName( Constants.TARGET_INSTALLER );
+		for( int i=0; i<20000; i++ )
+			app.getRootInstances().add( new Instance( "vm-" + i ).component( vmComponent ));
+
+		for( int i=0; i<20000; i++ )
+			Assert.assertNotNull( InstanceHelpers.findInstanceByPath( app, "/vm-" + i ));
+
+		Assert.assertEquals( 20000, app.getInstancePathIndex().size());
+		for( int i=0; i<20000; i++ )
+			Assert.assertNotNull( InstanceHelpers.findInstanceByPath( app, "/vm-" + i ));
+	}
+
+
 	@Test
 	public void testTryToInsertChildInstance() throws Exception {
 
@@ -168,6 +168,34 @@ public class ResourceUtilsTest {
 	}
 
 
+	@Test
+	public void testFindInstanceResourceFiles() throws Exception {
+
+		final File appDir = this.folder.newFolder();
+		final String componentName = "my-component";
+		final File componentDirectory = new File( appDir, Constants.PROJECT_DIR_GRAPH + File.separator + componentName );
+		Assert.assertTrue( new File( componentDirectory, "sub" ).mkdirs());
+
+		Instance instance = new Instance( "whatever" ).component( new Component( componentName ));
+		Assert.assertEquals( 0, ResourceUtils.findInstanceResourceFiles( appDir, instance ).size());
+
+		File recipeFile = new File( componentDirectory, "sub/recipe.txt" );
+		Utils.writeStringInto( "recipe", recipeFile );
+
+		File autonomicDir = new File( appDir, Constants.PROJECT_DIR_PROBES );
+		Assert.assertTrue( autonomicDir.mkdir());
+		File measuresFile = new File( autonomicDir, componentName + Constants.FILE_EXT_MEASURES );
+		Assert.assertTrue( measuresFile.createNewFile());
+
+		// The keys are the same than when resources are stored
+		Map<String,File> files = ResourceUtils.findInstanceResourceFiles( appDir, instance );
+		Assert.assertEquals( ResourceUtils.storeInstanceResources( appDir, instance ).keySet(), files.keySet());
+		Assert.assertEquals( 2, files.size());
+		Assert.assertEquals( recipeFile, files.get( "sub/recipe.txt" ));
+		Assert.assertEquals( measuresFile, files.get( measuresFile.getName()));
+	}
+
+
 	@Test
 	public void testFindScopedInstancesDirectories() throws Exception {
 
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.rest.commons.beans;
+
+/**
+ * A bean that describes latencies for a given message type and a given stage.
+ * <p>
+ * Values are expressed in microseconds.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class MessagingLatency {
+
+	private final String messageType, stage;
+	private final long count, p50, p95, p99, max;
+
+
+	/**
+	 * Constructor.
+	 * @param messageType the message type
+	 * @param stage the stage (e.g. transit, queue, processing)
+	 * @param count the number of measured messages
+	 * @param p50 the median latency
+	 * @param p95 the 95th percentile
+	 * @param p99 the 99th percentile
+	 * @param max the maximum latency
+	 */
+	public MessagingLatency( String messageType, String stage, long count, long p50, long p95, long p99, long max ) {
+		this.messageType = messageType;
+		this.stage = stage;
+		this.count = count;
+		this.p50 = p50;
+		this.p95 = p95;
+		this.p99 = p99;
+		this.max = max;
+	}
+
+	/**
+	 * @return the messageType
+	 */
+	public String getMessageType() {
+		return this.messageType;
+	}
+
+	/**
+	 * @return the stage
+	 */
+	public String getStage() {
+		return this.stage;
+	}
+
+	/**
+	 * @return the count
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * @return the p50
+	 */
+	public long getP50() {
+		return this.p50;
+	}
+
+	/**
+	 * @return the p95
+	 */
+	public long getP95() {
+		return this.p95;
+	}
+
+	/**
+	 * @return the p99
+	 */
+	public long getP99() {
+		return this.p99;
+	}
+
+	/**
+	 * @return the max
+	 */
+	public long getMax() {
+		return this.max;
+	}
+}
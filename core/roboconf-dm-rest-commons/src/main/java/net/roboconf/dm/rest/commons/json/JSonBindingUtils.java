@@ -69,6 +69,7 @@ import net.roboconf.dm.rest.commons.Diagnostic;
 import net.roboconf.dm.rest.commons.Diagnostic.DependencyInformation;
 import net.roboconf.dm.rest.commons.beans.ApplicationBindings;
 import net.roboconf.dm.rest.commons.beans.ApplicationBindings.ApplicationBindingItem;
+import net.roboconf.dm.rest.commons.beans.MessagingLatency;
 import net.roboconf.dm.rest.commons.beans.TargetAssociation;
 import net.roboconf.dm.rest.commons.beans.WebSocketMessage;
 
@@ -127,6 +128,7 @@ public final class JSonBindingUtils {
 		SERIALIZERS.put( ApplicationBindings.class, new ApplicationBindingsSerializer());
 		SERIALIZERS.put( WebSocketMessage.class, new WebSocketMessageSerializer());
 		SERIALIZERS.put( CommandHistoryItem.class, new CommandHistoryItemSerializer());
+		SERIALIZERS.put( MessagingLatency.class, new MessagingLatencySerializer());
 	}
 
 
@@ -193,6 +195,14 @@ public final class JSonBindingUtils {
 	private static final String WS_INST = "inst";
 	private static final String WS_MSG = "msg";
 
+	private static final String LATENCY_TYPE = "type";
+	private static final String LATENCY_STAGE = "stage";
+	private static final String LATENCY_COUNT = "count";
+	private static final String LATENCY_P50 = "p50";
+	private static final String LATENCY_P95 = "p95";
+	private static final String LATENCY_P99 = "p99";
+	private static final String LATENCY_MAX = "max";
+
 
 	/**
 	 * Private constructor.
@@ -259,6 +269,36 @@ public final class JSonBindingUtils {
 	}
 
 
+	/**
+	 * A JSon serializer for messaging latencies.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	public static class MessagingLatencySerializer extends JsonSerializer<MessagingLatency> {
+
+		@Override
+		public void serialize(
+				MessagingLatency item,
+				JsonGenerator generator,
+				SerializerProvider provider )
+		throws IOException {
+
+			generator.writeStartObject();
+			if( item.getMessageType() != null )
+				generator.writeStringField( LATENCY_TYPE, item.getMessageType());
+
+			if( item.getStage() != null )
+				generator.writeStringField( LATENCY_STAGE, item.getStage());
+
+			generator.writeNumberField( LATENCY_COUNT, item.getCount());
+			generator.writeNumberField( LATENCY_P50, item.getP50());
+			generator.writeNumberField( LATENCY_P95, item.getP95());
+			generator.writeNumberField( LATENCY_P99, item.getP99());
+			generator.writeNumberField( LATENCY_MAX, item.getMax());
+			generator.writeEndObject();
+		}
+	}
+
+
 	/**
 	 * A JSon serializer for a bean describing a scheduled job.
 	 * @author Vincent Zurczak - Linagora
@@ -67,6 +67,7 @@ import net.roboconf.dm.rest.commons.Diagnostic;
 import net.roboconf.dm.rest.commons.Diagnostic.DependencyInformation;
 import net.roboconf.dm.rest.commons.beans.ApplicationBindings;
 import net.roboconf.dm.rest.commons.beans.ApplicationBindings.ApplicationBindingItem;
+import net.roboconf.dm.rest.commons.beans.MessagingLatency;
 import net.roboconf.dm.rest.commons.beans.TargetAssociation;
 import net.roboconf.dm.rest.commons.beans.WebSocketMessage;
 
@@ -1136,6 +1137,25 @@ public class JSonBindingUtilsTest {
 	}
 
 
+	@Test
+	public void testMessagingLatencyBinding() throws Exception {
+
+		ObjectMapper mapper = JSonBindingUtils.createObjectMapper();
+
+		MessagingLatency latency = new MessagingLatency( null, null, 0, 0, 0, 0, 0 );
+		StringWriter writer = new StringWriter();
+		mapper.writeValue( writer, latency );
+		Assert.assertEquals( "{\"count\":0,\"p50\":0,\"p95\":0,\"p99\":0,\"max\":0}", writer.toString());
+
+		latency = new MessagingLatency( "MsgNotifHeartbeat", "QUEUE", 12, 5, 30, 41, 48 );
+		writer = new StringWriter();
+		mapper.writeValue( writer, latency );
+		Assert.assertEquals(
+				"{\"type\":\"MsgNotifHeartbeat\",\"stage\":\"QUEUE\",\"count\":12,\"p50\":5,\"p95\":30,\"p99\":41,\"max\":48}",
+				writer.toString());
+	}
+
+
 	@Test
 	public void testTargetAssociationBinding() throws Exception {
 
@@ -46,6 +46,7 @@ import net.roboconf.dm.rest.services.internal.filters.AuthenticationFilter;
 import net.roboconf.dm.rest.services.internal.icons.IconServlet;
 import net.roboconf.dm.rest.services.internal.websocket.RoboconfWebSocketServlet;
 import net.roboconf.dm.rest.services.internal.websocket.WebSocketHandler;
+import net.roboconf.dm.rest.services.internal.websocket.WebSocketHandler.BacklogPolicy;
 import net.roboconf.dm.rest.services.jmx.RestServicesMBean;
 import net.roboconf.dm.scheduler.IScheduler;
 
@@ -322,6 +323,33 @@ public class ServletRegistrationComponent implements RestServicesMBean {
 	}
 
 
+	/**
+	 * Invoked by iPojo.
+	 * @param webSocketMaxBacklog the maximum number of pending notifications per web socket client
+	 */
+	public void setWebSocketMaxBacklog( int webSocketMaxBacklog ) {
+		this.logger.fine( "New maximum backlog for web socket clients: " + webSocketMaxBacklog );
+		WebSocketHandler.setMaxBacklog( webSocketMaxBacklog );
+	}
+
+
+	/**
+	 * Invoked by iPojo.
+	 * @param webSocketBacklogPolicy what to do when the backlog of a web socket client is full ("drop" or "disconnect")
+	 */
+	public void setWebSocketBacklogPolicy( String webSocketBacklogPolicy ) {
+
+		BacklogPolicy policy = BacklogPolicy.which( webSocketBacklogPolicy );
+		if( policy == null ) {
+			this.logger.warning( "Invalid backlog policy for web socket clients: " + webSocketBacklogPolicy + ". Notifications will be dropped." );
+			policy = BacklogPolicy.DROP;
+		}
+
+		this.logger.fine( "New backlog policy for web socket clients: " + policy );
+		WebSocketHandler.setBacklogPolicy( policy );
+	}
+
+
 	// These setters are not used by iPojo.
 	// But they may be useful when using this class outside OSGi.
 
@@ -364,6 +392,24 @@ public class ServletRegistrationComponent implements RestServicesMBean {
 	}
 
 
+	@Override
+	public int getWebSocketBacklogCount() {
+		return WebSocketHandler.getBacklogCount();
+	}
+
+
+	@Override
+	public long getWebSocketDroppedNotificationsCount() {
+		return WebSocketHandler.getDroppedNotificationsCount();
+	}
+
+
+	@Override
+	public long getWebSocketDisconnectedClientsCount() {
+		return WebSocketHandler.getDisconnectedSessionsCount();
+	}
+
+
 	@Override
 	public long getRestRequestsWithAuthFailureCount() {
 		return this.restRequestsWithAuthFailureCount.get();
@@ -393,5 +439,6 @@ public class ServletRegistrationComponent implements RestServicesMBean {
 		this.restRequestsCount.set( 0 );
 		this.restRequestsWithAuthFailureCount.set( 0 );
 		WS_CONNECTION_ERRORS_COUNT.set( 0 );
+		WebSocketHandler.resetCounters();
 	}
 }
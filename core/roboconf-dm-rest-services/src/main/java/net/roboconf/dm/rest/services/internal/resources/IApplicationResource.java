@@ -280,6 +280,46 @@ public interface IApplicationResource {
 			@QueryParam("all-children") boolean allChildren );
 
 
+	/**
+	 * Finds instances in a given application.
+	 * <p>
+	 * Instances are filtered on the server side and sorted by path, like with
+	 * {@link #listChildrenInstances(String, String, boolean)}. The response is streamed.
+	 * </p>
+	 * <p>
+	 * Pagination relies on a cursor: to get the next page, pass the path of the last
+	 * instance of the current page. When a page contains less instances than the limit,
+	 * there is no other page.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param instancePath the instance path (null to consider the whole application)
+	 * @param allChildren true to get all the children, false to only get the direct children
+	 * @param status the status of the instances to find (null to ignore this filter)
+	 * @param componentName the component name of the instances to find (null to ignore this filter)
+	 * @param pathPrefix the prefix of the paths of the instances to find (null to ignore this filter)
+	 * @param afterPath the path of the last instance of the previous page (null to get the first page)
+	 * @param limit the maximum number of instances to return (0 or negative to return all of them)
+	 * @return a response
+	 *
+	 * @HTTP 200 Everything went fine (instances were returned too).
+	 * @HTTP 404 The application or the instance was not found.
+	 * @HTTP 403 The status is invalid.
+	 */
+	@GET
+	@Path( "/instances/search" )
+	@Produces( MediaType.APPLICATION_JSON )
+	Response findInstances(
+			@PathParam("name") String applicationName,
+			@QueryParam("instance-path") String instancePath,
+			@QueryParam("all-children") boolean allChildren,
+			@QueryParam("status") String status,
+			@QueryParam("component") String componentName,
+			@QueryParam("path-prefix") String pathPrefix,
+			@QueryParam("after") String afterPath,
+			@QueryParam("limit") int limit );
+
+
 	/**
 	 * Lists the available components in this application.
 	 * @param applicationName the application name
@@ -36,6 +36,7 @@ import javax.ws.rs.core.Response;
 
 import net.roboconf.dm.rest.commons.Diagnostic;
 import net.roboconf.dm.rest.commons.UrlConstants;
+import net.roboconf.dm.rest.commons.beans.MessagingLatency;
 import net.roboconf.dm.rest.services.internal.resources.impl.DebugResource;
 
 /**
@@ -149,4 +150,21 @@ public interface IDebugResource {
 	@Produces( MediaType.APPLICATION_JSON )
 	@Path("/diagnose-application")
 	List<Diagnostic> diagnoseApplication( @QueryParam("application-name") String applicationName );
+
+
+	/**
+	 * Gets the latencies measured for the messages received by the DM.
+	 * <p>
+	 * Latencies are given per message type and per stage (transit, queue, processing).
+	 * They are expressed in micro-seconds and only cover the last minute.
+	 * </p>
+	 *
+	 * @return a non-null list of latencies
+	 *
+	 * @HTTP 200 Everything went fine.
+	 */
+	@GET
+	@Produces( MediaType.APPLICATION_JSON )
+	@Path("/messaging-latencies")
+	List<MessagingLatency> getMessagingLatencies();
 }
@@ -47,6 +47,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.ws.rs.Path;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
@@ -347,6 +348,59 @@ public class ApplicationResource implements IApplicationResource {
 	}
 
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.dm.rest.services.internal.resources.IApplicationResource
+	 * #findInstances(java.lang.String, java.lang.String, boolean, java.lang.String,
+	 * java.lang.String, java.lang.String, java.lang.String, int)
+	 */
+	@Override
+	public Response findInstances(
+			String applicationName,
+			String instancePath,
+			boolean allChildren,
+			String status,
+			String componentName,
+			String pathPrefix,
+			String afterPath,
+			int limit ) {
+
+		this.logger.fine( "Request: find instances in " + applicationName + " (status = " + status
+				+ ", component = " + componentName + ", path prefix = " + pathPrefix
+				+ ", after = " + afterPath + ", limit = " + limit + ")." );
+
+		String lang = lang( this.manager );
+		Application app = this.manager.applicationMngr().findApplicationByName( applicationName );
+		InstanceStatus instanceStatus = InstanceStatus.exactStatus( status );
+
+		Response response;
+		Instance inst = null;
+		if( app == null )
+			response = handleError( Status.NOT_FOUND, new RestError( REST_INEXISTING, application( applicationName )), lang ).build();
+
+		else if( instancePath != null && ( inst = InstanceHelpers.findInstanceByPath( app, instancePath )) == null )
+			response = handleError( Status.NOT_FOUND, new RestError( REST_INEXISTING, instance( instancePath ), application( applicationName )), lang ).build();
+
+		else if( status != null && instanceStatus == null )
+			response = handleError( Status.FORBIDDEN, new RestError( REST_INEXISTING, name( status )), lang ).build();
+
+		else {
+			InstancesStreamingOutput output = new InstancesStreamingOutput(
+					inst == null ? app.getRootInstances() : inst.getChildren(),
+					allChildren );
+
+			output.status = instanceStatus;
+			output.componentName = componentName;
+			output.pathPrefix = pathPrefix;
+			output.afterPath = afterPath;
+			output.limit = limit;
+			response = Response.ok( output, MediaType.APPLICATION_JSON ).build();
+		}
+
+		return response;
+	}
+
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.roboconf.dm.rest.services.internal.resources.IApplicationResource
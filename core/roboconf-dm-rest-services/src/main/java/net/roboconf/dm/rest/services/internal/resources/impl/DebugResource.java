@@ -54,8 +54,10 @@ import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.Manager;
 import net.roboconf.dm.rest.commons.Diagnostic;
 import net.roboconf.dm.rest.commons.Diagnostic.DependencyInformation;
+import net.roboconf.dm.rest.commons.beans.MessagingLatency;
 import net.roboconf.dm.rest.services.internal.errors.RestError;
 import net.roboconf.dm.rest.services.internal.resources.IDebugResource;
+import net.roboconf.messaging.api.jmx.LatencyStatistics;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -176,6 +178,27 @@ public class DebugResource implements IDebugResource {
 	}
 
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.dm.rest.services.internal.resources.IDebugResource
+	 * #getMessagingLatencies()
+	 */
+	@Override
+	public List<MessagingLatency> getMessagingLatencies() {
+
+		this.logger.fine( "Request: get the latencies of the messages received by the DM." );
+		List<MessagingLatency> result = new ArrayList<> ();
+		for( LatencyStatistics stats : this.manager.debugMngr().findMessagingLatencies()) {
+			result.add( new MessagingLatency(
+					stats.getMessageType(), stats.getStage().toString(),
+					stats.getCount(), stats.getP50(), stats.getP95(),
+					stats.getP99(), stats.getMax()));
+		}
+
+		return result;
+	}
+
+
 	/**
 	 * Creates a diagnostic for an instance.
 	 * @param instance a non-null instance
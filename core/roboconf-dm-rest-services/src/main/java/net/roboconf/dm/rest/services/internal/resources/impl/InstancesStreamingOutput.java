@@ -0,0 +1,164 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.rest.services.internal.resources.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.beans.Instance.InstanceStatus;
+import net.roboconf.core.model.comparators.InstanceComparator;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.dm.rest.commons.json.JSonBindingUtils;
+
+/**
+ * Writes a filtered and sorted list of instances as a JSon array.
+ * <p>
+ * Instances are visited in the order defined by {@link InstanceComparator}, i.e.
+ * a depth-first traversal where siblings are sorted by name. Only lists of siblings
+ * are copied and instances are serialized one after the other. So, large applications
+ * can be listed without building the whole list and the whole response in memory.
+ * </p>
+ * <p>
+ * Pagination relies on a cursor: the path of the last instance of the previous page.
+ * Only the instances located after this path are written. Branches that are entirely
+ * located before the cursor, or that cannot match the path prefix, are not visited.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+class InstancesStreamingOutput implements StreamingOutput {
+
+	private static final ObjectMapper MAPPER = JSonBindingUtils.createObjectMapper();
+	private static final ObjectWriter WRITER = MAPPER.writer().without( SerializationFeature.FLUSH_AFTER_WRITE_VALUE );
+
+	private final Collection<Instance> instances;
+	private final boolean allChildren;
+
+	InstanceStatus status;
+	String componentName, pathPrefix, afterPath;
+	int limit;
+
+
+	/**
+	 * Constructor.
+	 * @param instances the instances to list (not null)
+	 * @param allChildren true to also list the children of these instances, recursively
+	 */
+	InstancesStreamingOutput( Collection<Instance> instances, boolean allChildren ) {
+		this.instances = instances;
+		this.allChildren = allChildren;
+	}
+
+
+	@Override
+	public void write( OutputStream os ) throws IOException {
+
+		JsonGenerator generator = MAPPER.getFactory().createGenerator( os, JsonEncoding.UTF8 );
+		generator.writeStartArray();
+		visit( generator, this.instances, 0 );
+		generator.writeEndArray();
+		generator.flush();
+	}
+
+
+	/**
+	 * Visits and writes instances.
+	 * @param generator the JSon generator
+	 * @param siblings the instances to visit
+	 * @param written the number of instances already written
+	 * @return the updated number of written instances
+	 * @throws IOException if the serialization failed
+	 */
+	private int visit( JsonGenerator generator, Collection<Instance> siblings, int written ) throws IOException {
+
+		List<Instance> sortedSiblings = new ArrayList<>( siblings );
+		Collections.sort( sortedSiblings, new InstanceComparator());
+
+		int result = written;
+		for( Instance instance : sortedSiblings ) {
+			if( this.limit > 0 && result >= this.limit )
+				break;
+
+			String path = InstanceHelpers.computeInstancePath( instance );
+
+			// Instances before the cursor were listed in previous pages.
+			// Their children are only visited if the cursor is one of their descendants.
+			boolean afterCursor = true;
+			if( this.afterPath != null ) {
+				int comparison = InstanceComparator.comparePaths( path, this.afterPath );
+				afterCursor = comparison > 0;
+				if( comparison < 0 && ! this.afterPath.startsWith( path + "/" ))
+					continue;
+			}
+
+			// Skip the branches that cannot match the path prefix
+			boolean matchesPrefix = true;
+			if( this.pathPrefix != null ) {
+				matchesPrefix = path.startsWith( this.pathPrefix );
+				if( ! matchesPrefix && ! this.pathPrefix.startsWith( path + "/" ))
+					continue;
+			}
+
+			// Write the instance and visit its children
+			if( afterCursor && matchesPrefix && matches( instance )) {
+				WRITER.writeValue( generator, instance );
+				result ++;
+			}
+
+			if( this.allChildren )
+				result = visit( generator, instance.getChildren(), result );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @param instance an instance
+	 * @return true if the instance matches the status and component filters
+	 */
+	private boolean matches( Instance instance ) {
+
+		boolean result = this.status == null || this.status == instance.getStatus();
+		if( result && this.componentName != null )
+			result = instance.getComponent() != null && this.componentName.equals( instance.getComponent().getName());
+
+		return result;
+	}
+}
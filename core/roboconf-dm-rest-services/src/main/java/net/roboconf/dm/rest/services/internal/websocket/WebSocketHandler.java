@@ -26,16 +26,23 @@
 package net.roboconf.dm.rest.services.internal.websocket;
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import net.roboconf.core.model.beans.Application;
 import net.roboconf.core.model.beans.ApplicationTemplate;
@@ -47,21 +54,76 @@ import net.roboconf.dm.rest.commons.beans.WebSocketMessage;
 import net.roboconf.dm.rest.commons.json.JSonBindingUtils;
 
 /**
+ * A DM listener that propagates notifications to web socket clients.
+ * <p>
+ * Every notification is serialized once and sent to all the sessions
+ * without waiting for the network writes to complete. Every session has
+ * a bounded backlog of pending writes. When it is full, either the notification
+ * is dropped for this session, or the session is closed (see {@link BacklogPolicy}).
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class WebSocketHandler implements IDmListener {
 
-	private final static Set<Session> SESSIONS = new HashSet<> ();
+	/**
+	 * The default maximum number of pending notifications per session.
+	 */
+	public static final int DEFAULT_MAX_BACKLOG = 200;
+
+	private final static Map<Session,SessionContext> SESSIONS = new HashMap<> ();
+	private final static ObjectWriter WRITER = JSonBindingUtils.createObjectMapper().writer();
+
+	private final static AtomicLong DROPPED_NOTIFICATIONS_COUNT = new AtomicLong();
+	private final static AtomicLong DISCONNECTED_SESSIONS_COUNT = new AtomicLong();
+	private static volatile int maxBacklog = DEFAULT_MAX_BACKLOG;
+	private static volatile BacklogPolicy backlogPolicy = BacklogPolicy.DROP;
 
 	private final AtomicBoolean enabled = new AtomicBoolean( false );
 	private final Logger logger = Logger.getLogger( getClass().getName());
 
 
+	/**
+	 * What to do when the backlog of a session is full.
+	 */
+	public enum BacklogPolicy {
+
+		/**
+		 * New notifications are not sent to the session until its backlog decreases.
+		 */
+		DROP,
+
+		/**
+		 * The session is closed. The client will have to reconnect and reload its data.
+		 */
+		DISCONNECT;
+
+
+		/**
+		 * Finds a policy by name.
+		 * @param s a string (not case-sensitive)
+		 * @return a policy, or null if none matched
+		 */
+		public static BacklogPolicy which( String s ) {
+
+			BacklogPolicy result = null;
+			for( BacklogPolicy policy : values()) {
+				if( policy.toString().equalsIgnoreCase( s )) {
+					result = policy;
+					break;
+				}
+			}
+
+			return result;
+		}
+	}
+
+
 	// Sessions management
 
 	public static void addSession( Session session ) {
 		synchronized( SESSIONS ) {
-			SESSIONS.add( session );
+			SESSIONS.put( session, new SessionContext( session ));
 		}
 	}
 
@@ -76,7 +138,7 @@ public class WebSocketHandler implements IDmListener {
 
 		Set<Session> result;
 		synchronized( SESSIONS ) {
-			result = Collections.unmodifiableSet( SESSIONS );
+			result = Collections.unmodifiableSet( new HashSet<>( SESSIONS.keySet()));
 		}
 
 		return result;
@@ -89,6 +151,78 @@ public class WebSocketHandler implements IDmListener {
 	}
 
 
+	// Configuration and statistics
+
+	/**
+	 * @param maxBacklog the maximum number of pending notifications per session (strictly positive)
+	 */
+	public static void setMaxBacklog( int maxBacklog ) {
+		WebSocketHandler.maxBacklog = Math.max( 1, maxBacklog );
+	}
+
+
+	/**
+	 * @return the maximum number of pending notifications per session
+	 */
+	public static int getMaxBacklog() {
+		return maxBacklog;
+	}
+
+
+	/**
+	 * @param backlogPolicy the policy to apply when the backlog of a session is full (null means "drop")
+	 */
+	public static void setBacklogPolicy( BacklogPolicy backlogPolicy ) {
+		WebSocketHandler.backlogPolicy = backlogPolicy == null ? BacklogPolicy.DROP : backlogPolicy;
+	}
+
+
+	/**
+	 * @return the policy to apply when the backlog of a session is full
+	 */
+	public static BacklogPolicy getBacklogPolicy() {
+		return backlogPolicy;
+	}
+
+
+	/**
+	 * @return the number of notifications that are being sent (all sessions included)
+	 */
+	public static int getBacklogCount() {
+
+		int result = 0;
+		for( SessionContext ctx : copySessionContexts())
+			result += ctx.backlog.get();
+
+		return result;
+	}
+
+
+	/**
+	 * @return the number of notifications that were not sent to a session because its backlog was full
+	 */
+	public static long getDroppedNotificationsCount() {
+		return DROPPED_NOTIFICATIONS_COUNT.get();
+	}
+
+
+	/**
+	 * @return the number of sessions that were closed because their backlog was full
+	 */
+	public static long getDisconnectedSessionsCount() {
+		return DISCONNECTED_SESSIONS_COUNT.get();
+	}
+
+
+	/**
+	 * Resets the counters.
+	 */
+	public static void resetCounters() {
+		DROPPED_NOTIFICATIONS_COUNT.set( 0 );
+		DISCONNECTED_SESSIONS_COUNT.set( 0 );
+	}
+
+
 	// IDmListener
 
 	@Override
@@ -112,24 +246,21 @@ public class WebSocketHandler implements IDmListener {
 	@Override
 	public void application( Application application, EventType eventType ) {
 		WebSocketMessage message = new WebSocketMessage( application, eventType );
-		String msg = asJson( message );
-		send( msg );
+		send( message );
 	}
 
 
 	@Override
 	public void applicationTemplate( ApplicationTemplate tpl, EventType eventType ) {
 		WebSocketMessage message = new WebSocketMessage( tpl, eventType );
-		String msg = asJson( message );
-		send( msg );
+		send( message );
 	}
 
 
 	@Override
 	public void instance( Instance instance, Application application, EventType eventType ) {
 		WebSocketMessage message = new WebSocketMessage( instance, application, eventType );
-		String msg = asJson( message );
-		send( msg );
+		send( message );
 	}
 
 
@@ -139,8 +270,7 @@ public class WebSocketHandler implements IDmListener {
 		// We do not use "data"
 		if( message != null ) {
 			WebSocketMessage wrappedMessage = new WebSocketMessage( message );
-			String msg = asJson( wrappedMessage );
-			send( msg );
+			send( wrappedMessage );
 		}
 	}
 
@@ -154,10 +284,7 @@ public class WebSocketHandler implements IDmListener {
 
 		String result = null;
 		try {
-			ObjectMapper mapper = JSonBindingUtils.createObjectMapper();
-			StringWriter writer = new StringWriter();
-			mapper.writeValue( writer, message );
-			result = writer.toString();
+			result = WRITER.writeValueAsString( message );
 
 		} catch( IOException e ) {
 			this.logger.severe( "A notification could not be prepared. It will not be sent. " + e.getMessage());
@@ -169,34 +296,116 @@ public class WebSocketHandler implements IDmListener {
 
 
 	/**
-	 * Sends a message to all the connected sessions.
+	 * Serializes a message and sends it to all the connected sessions.
 	 * @param message the message to send
 	 */
-	private void send( String message ) {
+	private void send( WebSocketMessage message ) {
 
+		List<SessionContext> contexts = copySessionContexts();
+		String msg;
 		if( ! this.enabled.get()) {
 			this.logger.finest( "Notifications were disabled by the DM." );
 
-		} else if( message == null ) {
+		} else if( contexts.isEmpty()) {
+			// Do not serialize anything if there is nobody to notify
+			this.logger.finest( "No web socket client to notify." );
+
+		} else if(( msg = asJson( message )) == null ) {
 			this.logger.finest( "No message to send to web socket clients." );
 
-		} else synchronized( SESSIONS ) {
-			for( Session session : SESSIONS ) {
-				try {
-					this.logger.finest( "Sending a message to a web socket client..." );
-					session.getRemote().sendString( message );
+		} else {
+			for( SessionContext ctx : contexts )
+				send( ctx, msg );
+		}
+	}
+
+
+	/**
+	 * Sends a message to a session without waiting for the write to complete.
+	 * @param ctx the session's context
+	 * @param message the message to send
+	 */
+	private void send( SessionContext ctx, String message ) {
 
-				} catch( IOException e ) {
-					StringBuilder sb = new StringBuilder( "A notification could not be propagated for session " );
-					sb.append( session.getRemoteAddress());
-					sb.append( "." );
-					if( ! Utils.isEmptyOrWhitespaces( e.getMessage()))
-						sb.append( " " + e.getMessage());
+		if( ctx.backlog.get() >= maxBacklog ) {
+			if( backlogPolicy == BacklogPolicy.DISCONNECT ) {
+				this.logger.warning( "Too many notifications are waiting for session " + ctx.session.getRemoteAddress() + ". It is being closed." );
+				DISCONNECTED_SESSIONS_COUNT.incrementAndGet();
+				removeSession( ctx.session );
+				try {
+					ctx.session.close( StatusCode.POLICY_VIOLATION, "Too many pending notifications." );
 
-					this.logger.severe( sb.toString());
+				} catch( Exception e ) {
 					Utils.logException( this.logger, e );
 				}
+
+			} else {
+				this.logger.finest( "Too many notifications are waiting for session " + ctx.session.getRemoteAddress() + ". A notification is dropped." );
+				DROPPED_NOTIFICATIONS_COUNT.incrementAndGet();
 			}
+
+		} else {
+			this.logger.finest( "Sending a message to a web socket client..." );
+			ctx.backlog.incrementAndGet();
+			try {
+				ctx.session.getRemote().sendString( message, ctx );
+
+			} catch( Exception e ) {
+				ctx.writeFailed( e );
+			}
+		}
+	}
+
+
+	private static List<SessionContext> copySessionContexts() {
+		synchronized( SESSIONS ) {
+			return new ArrayList<>( SESSIONS.values());
+		}
+	}
+
+
+	/**
+	 * The context associated with a session.
+	 * <p>
+	 * It keeps track of the number of pending writes.
+	 * </p>
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static class SessionContext implements WriteCallback {
+
+		private final Logger logger = Logger.getLogger( getClass().getName());
+		final AtomicInteger backlog = new AtomicInteger();
+		final Session session;
+
+
+		/**
+		 * Constructor.
+		 * @param session
+		 */
+		SessionContext( Session session ) {
+			this.session = session;
+		}
+
+
+		@Override
+		public void writeSuccess() {
+			this.backlog.decrementAndGet();
+		}
+
+
+		@Override
+		public void writeFailed( Throwable t ) {
+
+			this.backlog.decrementAndGet();
+			StringBuilder sb = new StringBuilder( "A notification could not be propagated for session " );
+			sb.append( this.session.getRemoteAddress());
+			sb.append( "." );
+			if( ! Utils.isEmptyOrWhitespaces( t.getMessage()))
+				sb.append( " " + t.getMessage());
+
+			this.logger.severe( sb.toString());
+			Utils.logException( this.logger, t );
 		}
 	}
 }
@@ -63,6 +63,21 @@ public interface RestServicesMBean {
 	 */
 	long getWebSocketConnectionErrorsCount();
 
+	/**
+	 * @return the number of notifications that are being sent to web socket clients
+	 */
+	int getWebSocketBacklogCount();
+
+	/**
+	 * @return the total number of notifications that were not sent to web socket clients because their backlog was full
+	 */
+	long getWebSocketDroppedNotificationsCount();
+
+	/**
+	 * @return the total number of web socket clients that were disconnected because their backlog was full
+	 */
+	long getWebSocketDisconnectedClientsCount();
+
 	/**
 	 * Resets the value of the counters.
 	 */
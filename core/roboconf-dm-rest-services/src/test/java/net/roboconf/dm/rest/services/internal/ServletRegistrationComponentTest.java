@@ -63,6 +63,8 @@ import net.roboconf.dm.rest.commons.UrlConstants;
 import net.roboconf.dm.rest.commons.json.JSonBindingUtils;
 import net.roboconf.dm.rest.commons.security.AuthenticationManager;
 import net.roboconf.dm.rest.services.internal.filters.AuthenticationFilter;
+import net.roboconf.dm.rest.services.internal.websocket.WebSocketHandler;
+import net.roboconf.dm.rest.services.internal.websocket.WebSocketHandler.BacklogPolicy;
 import net.roboconf.messaging.api.MessagingConstants;
 
 /**
@@ -337,6 +339,31 @@ public class ServletRegistrationComponentTest {
 	}
 
 
+	@Test
+	public void testWebSocketBacklog() throws Exception {
+
+		try {
+			this.register.setWebSocketMaxBacklog( 50 );
+			Assert.assertEquals( 50, WebSocketHandler.getMaxBacklog());
+
+			this.register.setWebSocketBacklogPolicy( "disconnect" );
+			Assert.assertEquals( BacklogPolicy.DISCONNECT, WebSocketHandler.getBacklogPolicy());
+
+			this.register.setWebSocketBacklogPolicy( "invalid" );
+			Assert.assertEquals( BacklogPolicy.DROP, WebSocketHandler.getBacklogPolicy());
+
+			this.register.reset();
+			Assert.assertEquals( 0, this.register.getWebSocketBacklogCount());
+			Assert.assertEquals( 0, this.register.getWebSocketDroppedNotificationsCount());
+			Assert.assertEquals( 0, this.register.getWebSocketDisconnectedClientsCount());
+
+		} finally {
+			this.register.setWebSocketMaxBacklog( WebSocketHandler.DEFAULT_MAX_BACKLOG );
+			this.register.setWebSocketBacklogPolicy( "drop" );
+		}
+	}
+
+
 	/**
 	 * @author Vincent Zurczak - Linagora
 	 */
@@ -25,6 +25,7 @@
 
 package net.roboconf.dm.rest.services.internal.resources.impl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -40,6 +41,7 @@ import java.util.Timer;
 
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -48,6 +50,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import net.roboconf.core.Constants;
 import net.roboconf.core.internal.tests.TestApplication;
 import net.roboconf.core.internal.tests.TestUtils;
@@ -65,6 +69,7 @@ import net.roboconf.dm.management.Manager;
 import net.roboconf.dm.rest.commons.beans.ApplicationBindings;
 import net.roboconf.dm.rest.commons.beans.ApplicationBindings.ApplicationBindingItem;
 import net.roboconf.dm.rest.commons.beans.TargetAssociation;
+import net.roboconf.dm.rest.commons.json.JSonBindingUtils;
 import net.roboconf.dm.rest.services.internal.resources.IApplicationResource;
 import net.roboconf.messaging.api.MessagingConstants;
 import net.roboconf.messaging.api.internal.client.test.TestClient;
@@ -447,6 +452,89 @@ public class ApplicationResourceTest {
 	}
 
 
+	@Test
+	public void testFindInstances() throws Exception {
+
+		// Invalid requests
+		Response resp = this.resource.findInstances( "inexisting", null, true, null, null, null, null, 0 );
+		Assert.assertEquals( Status.NOT_FOUND.getStatusCode(), resp.getStatus());
+
+		resp = this.resource.findInstances( this.app.getName(), "/bip/bip", true, null, null, null, null, 0 );
+		Assert.assertEquals( Status.NOT_FOUND.getStatusCode(), resp.getStatus());
+
+		resp = this.resource.findInstances( this.app.getName(), null, true, "not a status", null, null, null, 0 );
+		Assert.assertEquals( Status.FORBIDDEN.getStatusCode(), resp.getStatus());
+
+		// No filter, no pagination => same result than when listing instances
+		List<String> expected = new ArrayList<> ();
+		for( Instance inst : this.resource.listChildrenInstances( this.app.getName(), null, true ))
+			expected.add( InstanceHelpers.computeInstancePath( inst ));
+
+		Assert.assertEquals( 5, expected.size());
+		Assert.assertEquals( expected, findPaths( this.app.getName(), null, true, null, null, null, null, 0 ));
+
+		expected.clear();
+		for( Instance inst : this.resource.listChildrenInstances( this.app.getName(), null, false ))
+			expected.add( InstanceHelpers.computeInstancePath( inst ));
+
+		Assert.assertEquals( expected, findPaths( this.app.getName(), null, false, null, null, null, null, 0 ));
+
+		String tomcatVmPath = InstanceHelpers.computeInstancePath( this.app.getTomcatVm());
+		String tomcatPath = InstanceHelpers.computeInstancePath( this.app.getTomcat());
+		String warPath = InstanceHelpers.computeInstancePath( this.app.getWar());
+		Assert.assertEquals(
+				Arrays.asList( tomcatPath, warPath ),
+				findPaths( this.app.getName(), tomcatVmPath, true, null, null, null, null, 0 ));
+
+		// Filters
+		Assert.assertEquals(
+				Arrays.asList( InstanceHelpers.computeInstancePath( this.app.getMySqlVm()), tomcatVmPath ),
+				findPaths( this.app.getName(), null, true, null, "vm", null, null, 0 ));
+
+		Assert.assertEquals(
+				Arrays.asList( tomcatVmPath, tomcatPath, warPath ),
+				findPaths( this.app.getName(), null, true, null, null, "/tomcat", null, 0 ));
+
+		Assert.assertEquals(
+				Arrays.asList( warPath ),
+				findPaths( this.app.getName(), null, true, null, null, tomcatPath + "/", null, 0 ));
+
+		this.app.getTomcat().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		Assert.assertEquals(
+				Arrays.asList( tomcatPath ),
+				findPaths( this.app.getName(), null, true, "deployed_started", null, null, null, 0 ));
+
+		Assert.assertEquals(
+				Collections.emptyList(),
+				findPaths( this.app.getName(), null, true, "DEPLOYED_STARTED", "vm", null, null, 0 ));
+
+		// Pagination
+		List<String> allPaths = findPaths( this.app.getName(), null, true, null, null, null, null, 0 );
+		List<String> pagedPaths = new ArrayList<> ();
+		String cursor = null;
+		for( ;; ) {
+			List<String> page = findPaths( this.app.getName(), null, true, null, null, null, cursor, 2 );
+			Assert.assertTrue( page.size() <= 2 );
+			pagedPaths.addAll( page );
+			if( page.size() < 2 )
+				break;
+
+			cursor = page.get( page.size() - 1 );
+		}
+
+		Assert.assertEquals( allPaths, pagedPaths );
+
+		// The cursor does not need to exist anymore
+		Assert.assertEquals(
+				Arrays.asList( InstanceHelpers.computeInstancePath( this.app.getMySql()), tomcatVmPath, tomcatPath, warPath ),
+				findPaths( this.app.getName(), null, true, null, null, null, "/mysql-vm/deleted", 0 ));
+
+		Assert.assertEquals(
+				Arrays.asList( warPath ),
+				findPaths( this.app.getName(), null, true, null, null, null, tomcatPath, 0 ));
+	}
+
+
 	@Test
 	public void testListComponents() throws Exception {
 
@@ -1421,4 +1509,29 @@ public class ApplicationResourceTest {
 		Assert.assertEquals( 0, this.app.getTemplate().getTags().size());
 		Assert.assertEquals( Status.NOT_FOUND.getStatusCode(), resp.getStatus());
 	}
+
+
+	private List<String> findPaths(
+			String applicationName,
+			String instancePath,
+			boolean allChildren,
+			String status,
+			String componentName,
+			String pathPrefix,
+			String afterPath,
+			int limit )
+	throws Exception {
+
+		Response resp = this.resource.findInstances( applicationName, instancePath, allChildren, status, componentName, pathPrefix, afterPath, limit );
+		Assert.assertEquals( Status.OK.getStatusCode(), resp.getStatus());
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		((StreamingOutput) resp.getEntity()).write( os );
+
+		List<String> result = new ArrayList<> ();
+		for( JsonNode node : JSonBindingUtils.createObjectMapper().readTree( os.toByteArray()))
+			result.add( node.get( "path" ).textValue());
+
+		return result;
+	}
 }
@@ -48,8 +48,11 @@ import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.Manager;
 import net.roboconf.dm.rest.commons.Diagnostic;
 import net.roboconf.dm.rest.commons.Diagnostic.DependencyInformation;
+import net.roboconf.dm.rest.commons.beans.MessagingLatency;
 import net.roboconf.messaging.api.MessagingConstants;
 import net.roboconf.messaging.api.internal.client.test.TestClient;
+import net.roboconf.messaging.api.jmx.MessageLatencyTracker.LatencyStage;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
 import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
 
@@ -275,4 +278,21 @@ public class DebugResourceTest {
 		Assert.assertEquals( Status.NOT_FOUND.getStatusCode(), resp.getStatus());
 		Assert.assertEquals( 0, this.msgClient.allSentMessages.size());
 	}
+
+
+	@Test
+	public void testGetMessagingLatencies() throws Exception {
+
+		Assert.assertEquals( 0, this.resource.getMessagingLatencies().size());
+
+		RoboconfMessageQueue queue = this.manager.messagingMngr().getMessageQueue();
+		Assert.assertNotNull( queue );
+		queue.getLatencyTracker().record( LatencyStage.PROCESSING, new MsgEcho( "hi" ), 150 );
+
+		List<MessagingLatency> latencies = this.resource.getMessagingLatencies();
+		Assert.assertEquals( 1, latencies.size());
+		Assert.assertEquals( MsgEcho.class.getSimpleName(), latencies.get( 0 ).getMessageType());
+		Assert.assertEquals( LatencyStage.PROCESSING.toString(), latencies.get( 0 ).getStage());
+		Assert.assertEquals( 1, latencies.get( 0 ).getCount());
+	}
 }
@@ -29,17 +29,24 @@ import java.io.IOException;
 
 import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import net.roboconf.core.model.beans.Application;
 import net.roboconf.core.model.beans.ApplicationTemplate;
 import net.roboconf.core.model.beans.Component;
 import net.roboconf.core.model.beans.Instance;
 import net.roboconf.core.model.runtime.EventType;
+import net.roboconf.dm.rest.commons.beans.WebSocketMessage;
+import net.roboconf.dm.rest.services.internal.websocket.WebSocketHandler.BacklogPolicy;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -56,6 +63,10 @@ public class WebSocketHandlerTest {
 
 		for( Session session : WebSocketHandler.getSessions())
 			WebSocketHandler.removeSession( session );
+
+		WebSocketHandler.resetCounters();
+		WebSocketHandler.setMaxBacklog( WebSocketHandler.DEFAULT_MAX_BACKLOG );
+		WebSocketHandler.setBacklogPolicy( BacklogPolicy.DROP );
 	}
 
 
@@ -91,8 +102,9 @@ public class WebSocketHandlerTest {
 		WebSocketHandler handler = configuredHandler();
 		handler.enableNotifications();
 		handler.application( app, EventType.CREATED );
-		Mockito.verify( this.remoteEndpoint )
-				.sendString( "{\"event\":\"CREATED\",\"app\":{\"name\":\"test\",\"displayName\":\"test\",\"tplName\":\"test-tpl\"}}" );
+		Mockito.verify( this.remoteEndpoint ).sendString(
+				Mockito.eq( "{\"event\":\"CREATED\",\"app\":{\"name\":\"test\",\"displayName\":\"test\",\"tplName\":\"test-tpl\"}}" ),
+				Mockito.any( WriteCallback.class ));
 	}
 
 
@@ -104,8 +116,9 @@ public class WebSocketHandlerTest {
 		WebSocketHandler handler = configuredHandler();
 		handler.enableNotifications();
 		handler.applicationTemplate( template, EventType.DELETED );
-		Mockito.verify( this.remoteEndpoint )
-				.sendString( "{\"event\":\"DELETED\",\"tpl\":{\"name\":\"test-tpl\",\"displayName\":\"test-tpl\",\"apps\":[]}}" );
+		Mockito.verify( this.remoteEndpoint ).sendString(
+				Mockito.eq( "{\"event\":\"DELETED\",\"tpl\":{\"name\":\"test-tpl\",\"displayName\":\"test-tpl\",\"apps\":[]}}" ),
+				Mockito.any( WriteCallback.class ));
 	}
 
 
@@ -126,7 +139,7 @@ public class WebSocketHandlerTest {
 				"{\"event\":\"CHANGED\",\"app\":{\"name\":\"test\",\"displayName\":\"test\",\"tplName\":\"test-tpl\"},\"inst\":"
 				+ "{\"name\":\"inst\",\"path\":\"/inst\",\"status\":\"NOT_DEPLOYED\",\"component\":{\"name\":\"comp\"}}}";
 
-		Mockito.verify( this.remoteEndpoint ).sendString( expected );
+		Mockito.verify( this.remoteEndpoint ).sendString( Mockito.eq( expected ), Mockito.any( WriteCallback.class ));
 	}
 
 
@@ -136,7 +149,7 @@ public class WebSocketHandlerTest {
 		WebSocketHandler handler = configuredHandler();
 		handler.enableNotifications();
 		handler.raw( "this is a raw notification" );
-		Mockito.verify( this.remoteEndpoint ).sendString( "{\"msg\":\"this is a raw notification\"}" );
+		Mockito.verify( this.remoteEndpoint ).sendString( Mockito.eq( "{\"msg\":\"this is a raw notification\"}" ), Mockito.any( WriteCallback.class ));
 	}
 
 
@@ -146,7 +159,7 @@ public class WebSocketHandlerTest {
 		WebSocketHandler handler = configuredHandler();
 		handler.enableNotifications();
 		handler.raw( null );
-		Mockito.verify( this.remoteEndpoint, Mockito.never()).sendString( Mockito.anyString());
+		Mockito.verify( this.remoteEndpoint, Mockito.never()).sendString( Mockito.anyString(), Mockito.any( WriteCallback.class ));
 	}
 
 
@@ -156,7 +169,7 @@ public class WebSocketHandlerTest {
 		WebSocketHandler handler = configuredHandler();
 		handler.disableNotifications();
 		handler.raw( "this is a raw notification" );
-		Mockito.verify( this.remoteEndpoint, Mockito.never()).sendString( Mockito.anyString());
+		Mockito.verify( this.remoteEndpoint, Mockito.never()).sendString( Mockito.anyString(), Mockito.any( WriteCallback.class ));
 	}
 
 
@@ -166,9 +179,15 @@ public class WebSocketHandlerTest {
 		WebSocketHandler handler = configuredHandler();
 		handler.enableNotifications();
 
-		Mockito.doThrow( new IOException()).when( this.remoteEndpoint ).sendString( Mockito.anyString());
+		Mockito.doAnswer( new FailingWrite( new IOException()))
+				.when( this.remoteEndpoint ).sendString( Mockito.anyString(), Mockito.any( WriteCallback.class ));
+
 		handler.raw( "this is another raw notification" );
-		Mockito.verify( this.remoteEndpoint ).sendString( "{\"msg\":\"this is another raw notification\"}" );
+		Mockito.verify( this.remoteEndpoint ).sendString(
+				Mockito.eq( "{\"msg\":\"this is another raw notification\"}" ),
+				Mockito.any( WriteCallback.class ));
+
+		Assert.assertEquals( 0, WebSocketHandler.getBacklogCount());
 	}
 
 
@@ -178,9 +197,125 @@ public class WebSocketHandlerTest {
 		WebSocketHandler handler = configuredHandler();
 		handler.enableNotifications();
 
-		Mockito.doThrow( new IOException( "some reason" )).when( this.remoteEndpoint ).sendString( Mockito.anyString());
+		Mockito.doAnswer( new FailingWrite( new IOException( "some reason" )))
+				.when( this.remoteEndpoint ).sendString( Mockito.anyString(), Mockito.any( WriteCallback.class ));
+
+		handler.raw( "this is another raw notification" );
+		Mockito.verify( this.remoteEndpoint ).sendString(
+				Mockito.eq( "{\"msg\":\"this is another raw notification\"}" ),
+				Mockito.any( WriteCallback.class ));
+
+		Assert.assertEquals( 0, WebSocketHandler.getBacklogCount());
+	}
+
+
+	@Test
+	public void testNotifications_sendRuntimeException() throws Exception {
+
+		WebSocketHandler handler = configuredHandler();
+		handler.enableNotifications();
+
+		Mockito.doThrow( new IllegalStateException( "closed" ))
+				.when( this.remoteEndpoint ).sendString( Mockito.anyString(), Mockito.any( WriteCallback.class ));
+
 		handler.raw( "this is another raw notification" );
-		Mockito.verify( this.remoteEndpoint ).sendString( "{\"msg\":\"this is another raw notification\"}" );
+		Assert.assertEquals( 0, WebSocketHandler.getBacklogCount());
+	}
+
+
+	@Test
+	public void testNotifications_serializedOnceForAllSessions() throws Exception {
+
+		WebSocketHandler handler = Mockito.spy( configuredHandler());
+		RemoteEndpoint remoteEndpoint1 = this.remoteEndpoint;
+		configuredHandler();
+		RemoteEndpoint remoteEndpoint2 = this.remoteEndpoint;
+		Assert.assertEquals( 2, WebSocketHandler.getSessionsCount());
+
+		handler.enableNotifications();
+		handler.raw( "this is a raw notification" );
+
+		Mockito.verify( handler, Mockito.times( 1 )).asJson( Mockito.any( WebSocketMessage.class ));
+		Mockito.verify( remoteEndpoint1 ).sendString( Mockito.eq( "{\"msg\":\"this is a raw notification\"}" ), Mockito.any( WriteCallback.class ));
+		Mockito.verify( remoteEndpoint2 ).sendString( Mockito.eq( "{\"msg\":\"this is a raw notification\"}" ), Mockito.any( WriteCallback.class ));
+	}
+
+
+	@Test
+	public void testNotifications_noSession() throws Exception {
+
+		WebSocketHandler handler = Mockito.spy( new WebSocketHandler());
+		handler.enableNotifications();
+		handler.raw( "this is a raw notification" );
+		Mockito.verify( handler, Mockito.never()).asJson( Mockito.any( WebSocketMessage.class ));
+	}
+
+
+	@Test
+	public void testNotifications_backlogIsFull_drop() throws Exception {
+
+		// Writes never complete
+		WebSocketHandler.setMaxBacklog( 3 );
+		Assert.assertEquals( 3, WebSocketHandler.getMaxBacklog());
+
+		WebSocketHandler handler = configuredHandler();
+		handler.enableNotifications();
+		for( int i=0; i<5; i++ )
+			handler.raw( "msg " + i );
+
+		Mockito.verify( this.remoteEndpoint, Mockito.times( 3 )).sendString( Mockito.anyString(), Mockito.any( WriteCallback.class ));
+		Assert.assertEquals( 3, WebSocketHandler.getBacklogCount());
+		Assert.assertEquals( 2, WebSocketHandler.getDroppedNotificationsCount());
+		Assert.assertEquals( 0, WebSocketHandler.getDisconnectedSessionsCount());
+		Assert.assertEquals( 1, WebSocketHandler.getSessionsCount());
+
+		// Once writes complete, notifications are sent again
+		ArgumentCaptor<WriteCallback> captor = ArgumentCaptor.forClass( WriteCallback.class );
+		Mockito.verify( this.remoteEndpoint, Mockito.times( 3 )).sendString( Mockito.anyString(), captor.capture());
+		captor.getValue().writeSuccess();
+		Assert.assertEquals( 2, WebSocketHandler.getBacklogCount());
+
+		handler.raw( "msg 5" );
+		Mockito.verify( this.remoteEndpoint ).sendString( Mockito.eq( "{\"msg\":\"msg 5\"}" ), Mockito.any( WriteCallback.class ));
+		Assert.assertEquals( 3, WebSocketHandler.getBacklogCount());
+
+		WebSocketHandler.resetCounters();
+		Assert.assertEquals( 0, WebSocketHandler.getDroppedNotificationsCount());
+	}
+
+
+	@Test
+	public void testNotifications_backlogIsFull_disconnect() throws Exception {
+
+		WebSocketHandler.setMaxBacklog( 2 );
+		WebSocketHandler.setBacklogPolicy( BacklogPolicy.DISCONNECT );
+		Assert.assertEquals( BacklogPolicy.DISCONNECT, WebSocketHandler.getBacklogPolicy());
+
+		WebSocketHandler handler = configuredHandler();
+		handler.enableNotifications();
+		for( int i=0; i<3; i++ )
+			handler.raw( "msg " + i );
+
+		Mockito.verify( this.remoteEndpoint, Mockito.times( 2 )).sendString( Mockito.anyString(), Mockito.any( WriteCallback.class ));
+		Mockito.verify( this.session ).close( Mockito.eq( StatusCode.POLICY_VIOLATION ), Mockito.anyString());
+		Assert.assertEquals( 1, WebSocketHandler.getDisconnectedSessionsCount());
+		Assert.assertEquals( 0, WebSocketHandler.getSessionsCount());
+	}
+
+
+	@Test
+	public void testBacklogPolicies() {
+
+		Assert.assertEquals( BacklogPolicy.DROP, BacklogPolicy.which( "drop" ));
+		Assert.assertEquals( BacklogPolicy.DISCONNECT, BacklogPolicy.which( "DISconnect" ));
+		Assert.assertNull( BacklogPolicy.which( "block" ));
+		Assert.assertNull( BacklogPolicy.which( null ));
+
+		WebSocketHandler.setBacklogPolicy( null );
+		Assert.assertEquals( BacklogPolicy.DROP, WebSocketHandler.getBacklogPolicy());
+
+		WebSocketHandler.setMaxBacklog( -5 );
+		Assert.assertEquals( 1, WebSocketHandler.getMaxBacklog());
 	}
 
 
@@ -195,4 +330,22 @@ public class WebSocketHandlerTest {
 
 		return handler;
 	}
+
+
+	/**
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class FailingWrite implements Answer<Object> {
+		private final Throwable cause;
+
+		FailingWrite( Throwable cause ) {
+			this.cause = cause;
+		}
+
+		@Override
+		public Object answer( InvocationOnMock invocation ) throws Throwable {
+			invocation.getArgumentAt( 1, WriteCallback.class ).writeFailed( this.cause );
+			return null;
+		}
+	}
 }
@@ -30,6 +30,13 @@ import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import net.roboconf.core.model.beans.Application;
@@ -40,11 +47,20 @@ import net.roboconf.core.utils.Utils;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.Manager;
 import net.roboconf.dm.management.events.IDmListener;
+import net.roboconf.dm.templating.internal.templates.GenerationCache;
 import net.roboconf.dm.templating.internal.templates.TemplateEntry;
 import net.roboconf.dm.templating.internal.templates.TemplateUtils;
 import net.roboconf.dm.templating.internal.templates.TemplateWatcher;
 
 /**
+ * The templating manager.
+ * <p>
+ * When a generation delay is set, changes on applications and instances do not
+ * trigger a generation immediately. All the changes of an application that occur during
+ * this delay result in a single generation. Templates are only applied again if the model parts
+ * they read have changed (see {@link GenerationCache}).
+ * </p>
+ *
  * @author Pierre Bourret - Université Joseph Fourier
  * @author Vincent Zurczak - Linagora
  */
@@ -58,6 +74,7 @@ public class TemplatingManager implements IDmListener {
 
 	// Injected by iPojo
 	private long pollInterval;
+	private long generationDelay;
 	Manager dm;
 
 	// Fields
@@ -65,6 +82,10 @@ public class TemplatingManager implements IDmListener {
 	File templatesDIR, outputDIR;
 	TemplateWatcher templateWatcher;
 
+	final GenerationCache generationCache = new GenerationCache();
+	private final Map<String,GenerationTask> appNameToPendingGeneration = new HashMap<> ();
+	private ScheduledExecutorService generationExecutor;
+
 
 
 	// Configuration
@@ -85,6 +106,20 @@ public class TemplatingManager implements IDmListener {
 	}
 
 
+	/**
+	 * Sets the delay between a change and the generation of files.
+	 * <p>
+	 * All the changes of an application during this delay result in a single generation.
+	 * </p>
+	 *
+	 * @param generationDelay a delay, in milliseconds (0 or negative to generate files immediately)
+	 */
+	public void setGenerationDelay( long generationDelay ) {
+		this.generationDelay = generationDelay;
+		this.logger.fine( "Generation delay set to " + generationDelay );
+	}
+
+
 	/**
 	 * Sets the templates directory.
 	 * @param templatesDirectory the templates directory
@@ -109,6 +144,9 @@ public class TemplatingManager implements IDmListener {
 		// Update the configuration
 		this.logger.fine( "Output directory is now... " + outputDirectory );
 		this.outputDIR = Utils.isEmptyOrWhitespaces( outputDirectory ) ? null : new File( outputDirectory );
+		synchronized( this.generationLock ) {
+			this.generationCache.clear();
+		}
 
 		// Generate the files
 		if( this.outputDIR != null && this.dm != null ) {
@@ -168,6 +206,17 @@ public class TemplatingManager implements IDmListener {
 			this.logger.config( "The templating manager is stopping..." );
 			stopWatcher();
 		}
+
+		synchronized( this.appNameToPendingGeneration ) {
+			for( GenerationTask task : this.appNameToPendingGeneration.values())
+				task.future.cancel( false );
+
+			this.appNameToPendingGeneration.clear();
+			if( this.generationExecutor != null ) {
+				this.generationExecutor.shutdown();
+				this.generationExecutor = null;
+			}
+		}
 	}
 
 
@@ -196,9 +245,14 @@ public class TemplatingManager implements IDmListener {
 
 		} else if( eventType == EventType.DELETED ) {
 			synchronized( this.generationLock ) {
+				cancelGeneration( application );
 				TemplateUtils.deleteGeneratedFiles( application, this.outputDIR );
+				this.generationCache.forget( application.getName());
 			}
 
+		} else if( this.generationDelay > 0 ) {
+			scheduleGeneration( application );
+
 		} else {
 			generate( application );
 		}
@@ -322,6 +376,52 @@ public class TemplatingManager implements IDmListener {
 	}
 
 
+	/**
+	 * Schedules the generation of files for a given application.
+	 * <p>
+	 * If a generation is already planned for this application, nothing is done.
+	 * </p>
+	 *
+	 * @param application an application (not null)
+	 */
+	void scheduleGeneration( Application application ) {
+
+		synchronized( this.appNameToPendingGeneration ) {
+			if( ! this.appNameToPendingGeneration.containsKey( application.getName())) {
+
+				if( this.generationExecutor == null ) {
+					this.generationExecutor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+						@Override
+						public Thread newThread( Runnable r ) {
+							Thread thread = new Thread( r, "Roboconf - Templates generation" );
+							thread.setDaemon( true );
+							return thread;
+						}
+					});
+				}
+
+				GenerationTask task = new GenerationTask( application );
+				this.appNameToPendingGeneration.put( application.getName(), task );
+				task.future = this.generationExecutor.schedule( task, this.generationDelay, TimeUnit.MILLISECONDS );
+			}
+		}
+	}
+
+
+	/**
+	 * Cancels the planned generation for a given application, if any.
+	 * @param application an application (not null)
+	 */
+	private void cancelGeneration( Application application ) {
+
+		synchronized( this.appNameToPendingGeneration ) {
+			GenerationTask task = this.appNameToPendingGeneration.remove( application.getName());
+			if( task != null )
+				task.future.cancel( false );
+		}
+	}
+
+
 	/**
 	 * Generates files from templates for a given application.
 	 * <p>
@@ -357,7 +457,7 @@ public class TemplatingManager implements IDmListener {
 
 		try {
 			synchronized( this.generationLock ) {
-				TemplateUtils.generate( application, this.outputDIR, templates, this.logger );
+				TemplateUtils.generate( application, this.outputDIR, templates, this.generationCache, this.logger );
 			}
 
 		} catch( IOException e ) {
@@ -369,4 +469,42 @@ public class TemplatingManager implements IDmListener {
 			Utils.logException( this.logger, new UndeclaredThrowableException( e ));
 		}
 	}
+
+
+	/**
+	 * A planned generation for an application.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private class GenerationTask implements Runnable {
+		private final Application application;
+		ScheduledFuture<?> future;
+
+
+		/**
+		 * Constructor.
+		 * @param application
+		 */
+		GenerationTask( Application application ) {
+			this.application = application;
+		}
+
+
+		@Override
+		public void run() {
+
+			// The generation lock prevents a deleted application
+			// from being generated again.
+			synchronized( TemplatingManager.this.generationLock ) {
+				synchronized( TemplatingManager.this.appNameToPendingGeneration ) {
+					if( TemplatingManager.this.appNameToPendingGeneration.get( this.application.getName()) != this )
+						return;
+
+					TemplatingManager.this.appNameToPendingGeneration.remove( this.application.getName());
+				}
+
+				if( TemplatingManager.this.outputDIR != null )
+					generate( this.application );
+			}
+		}
+	}
 }
@@ -0,0 +1,364 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.templating.internal.templates;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.roboconf.dm.templating.internal.contexts.ApplicationContextBean;
+import net.roboconf.dm.templating.internal.contexts.ImportContextBean;
+import net.roboconf.dm.templating.internal.contexts.InstanceContextBean;
+import net.roboconf.dm.templating.internal.contexts.VariableContextBean;
+
+/**
+ * A cache to avoid useless generations.
+ * <p>
+ * For every application and every template, the cache remembers the state of
+ * the model parts when the template was last applied, as well as a hash of the output.
+ * A template is only applied again if one of the model parts it reads has changed.
+ * The output is only written if it differs from the previous one.
+ * </p>
+ * <p>
+ * This class is not thread-safe. It is guarded by the generation lock
+ * of the templating manager.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class GenerationCache {
+
+	private static final AtomicLong TIMESTAMP_COUNTER = new AtomicLong();
+
+	private static final Set<String> NEUTRAL_NAMES = new HashSet<> ( Arrays.asList(
+			"this", "each", "if", "unless", "with", "log", "lookup",
+			"@index", "@key", "@first", "@last", "is-key"
+	));
+
+	private static final Set<String> INSTANCE_NAMES = new HashSet<> ( Arrays.asList(
+			"instances", "instancesByType", "children", "parent", "exports", "imports",
+			"data", "ip", "installer", "path", "component", "types", "instance",
+			"variables", "value", "all"
+	));
+
+	private final Map<String,Map<File,Record>> appNameToRecords = new HashMap<> ();
+
+	private long renderedCount, skippedRenderingsCount, skippedWritingsCount;
+
+
+	/**
+	 * The parts of the model that templates can read.
+	 */
+	public enum ModelPart {
+
+		/**
+		 * The name and the description of the application.
+		 */
+		APPLICATION,
+
+		/**
+		 * The components and types of the application.
+		 */
+		COMPONENTS,
+
+		/**
+		 * The instances, with their data, exports and imports (but without their status).
+		 */
+		INSTANCES,
+
+		/**
+		 * The status of the instances.
+		 */
+		STATUSES,
+
+		/**
+		 * The generation date (changes every time).
+		 */
+		TIMESTAMP;
+	}
+
+
+	/**
+	 * Computes fingerprints for every part of the model.
+	 * @param ctx the context used to apply templates
+	 * @return a non-null map
+	 */
+	public static Map<ModelPart,String> computeFingerprints( ApplicationContextBean ctx ) {
+
+		Map<ModelPart,String> result = new EnumMap<> ( ModelPart.class );
+		result.put( ModelPart.APPLICATION, hash( ctx.getName() + "|" + ctx.getDescription()));
+		result.put( ModelPart.COMPONENTS, hash( String.valueOf( ctx.getComponents()) + "|" + ctx.getInstancesByType().keySet()));
+		result.put( ModelPart.TIMESTAMP, String.valueOf( TIMESTAMP_COUNTER.incrementAndGet()));
+
+		StringBuilder instances = new StringBuilder();
+		StringBuilder statuses = new StringBuilder();
+		for( InstanceContextBean inst : ctx.getInstances()) {
+
+			statuses.append( inst.getPath()).append( '=' ).append( inst.getStatus()).append( '\n' );
+
+			instances.append( inst.getPath());
+			instances.append( '|' ).append( inst.getComponent());
+			instances.append( '|' ).append( inst.getTypes());
+			instances.append( '|' ).append( inst.getIp());
+			instances.append( '|' ).append( inst.getInstaller());
+			appendVariables( instances.append( "|exports:" ), inst.getExports());
+			appendVariables( instances.append( "|data:" ), inst.getData());
+
+			instances.append( "|imports:" );
+			for( ImportContextBean imp : inst.getImports()) {
+				instances.append( imp.getComponent()).append( '@' );
+				instances.append( imp.getInstance() == null ? null : imp.getInstance().getPath());
+				appendVariables( instances.append( ':' ), imp.getVariables());
+			}
+
+			instances.append( '\n' );
+		}
+
+		result.put( ModelPart.INSTANCES, hash( instances.toString()));
+		result.put( ModelPart.STATUSES, hash( statuses.toString()));
+
+		return result;
+	}
+
+
+	/**
+	 * Computes a hash for a string.
+	 * @param s a string (not null)
+	 * @return a non-null string
+	 */
+	public static String hash( String s ) {
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+			byte[] bytes = digest.digest( s.getBytes( StandardCharsets.UTF_8 ));
+			return new BigInteger( 1, bytes ).toString( 16 );
+
+		} catch( NoSuchAlgorithmException e ) {
+			// SHA-1 is supported by all the JVMs
+			return String.valueOf( s.hashCode());
+		}
+	}
+
+
+	/**
+	 * Determines whether a template must be applied to an application.
+	 * @param appName the application name
+	 * @param template the template
+	 * @param target the file to generate
+	 * @param fingerprints the current fingerprints of the model
+	 * @return true if the template must be applied
+	 */
+	public boolean mustRender( String appName, TemplateEntry template, File target, Map<ModelPart,String> fingerprints ) {
+
+		Record record = findRecord( appName, template );
+		boolean result = record == null
+				|| record.template != template
+				|| ! record.target.equals( target )
+				|| ! target.exists();
+
+		for( ModelPart part : template.getDependencies()) {
+			if( result )
+				break;
+
+			result = ! fingerprints.get( part ).equals( record.fingerprints.get( part ));
+		}
+
+		if( result )
+			this.renderedCount ++;
+		else
+			this.skippedRenderingsCount ++;
+
+		return result;
+	}
+
+
+	/**
+	 * Determines whether the output of a template must be written.
+	 * @param appName the application name
+	 * @param template the template
+	 * @param target the file to generate
+	 * @param outputHash the hash of the new output
+	 * @return true if the output must be written
+	 */
+	public boolean mustWrite( String appName, TemplateEntry template, File target, String outputHash ) {
+
+		Record record = findRecord( appName, template );
+		boolean result = record == null
+				|| ! record.target.equals( target )
+				|| ! target.exists()
+				|| ! outputHash.equals( record.outputHash );
+
+		if( ! result )
+			this.skippedWritingsCount ++;
+
+		return result;
+	}
+
+
+	/**
+	 * Records the application of a template.
+	 * @param appName the application name
+	 * @param template the template
+	 * @param target the generated file
+	 * @param fingerprints the fingerprints of the model that was used
+	 * @param outputHash the hash of the output
+	 */
+	public void update( String appName, TemplateEntry template, File target, Map<ModelPart,String> fingerprints, String outputHash ) {
+
+		Map<File,Record> records = this.appNameToRecords.get( appName );
+		if( records == null ) {
+			records = new HashMap<> ();
+			this.appNameToRecords.put( appName, records );
+		}
+
+		Record record = new Record();
+		record.template = template;
+		record.target = target;
+		record.fingerprints = fingerprints;
+		record.outputHash = outputHash;
+		records.put( template.getTemplateFile(), record );
+	}
+
+
+	/**
+	 * Forgets everything about an application.
+	 * @param appName the application name
+	 */
+	public void forget( String appName ) {
+		this.appNameToRecords.remove( appName );
+	}
+
+
+	/**
+	 * Forgets everything.
+	 */
+	public void clear() {
+		this.appNameToRecords.clear();
+	}
+
+
+	/**
+	 * @return the number of times templates were applied
+	 */
+	public long getRenderedCount() {
+		return this.renderedCount;
+	}
+
+
+	/**
+	 * @return the number of times templates were not applied because the model parts they read did not change
+	 */
+	public long getSkippedRenderingsCount() {
+		return this.skippedRenderingsCount;
+	}
+
+
+	/**
+	 * @return the number of times outputs were not written because they did not change
+	 */
+	public long getSkippedWritingsCount() {
+		return this.skippedWritingsCount;
+	}
+
+
+	/**
+	 * Finds the model parts a template reads.
+	 * <p>
+	 * This analysis relies on the names of the tags and of the parameters
+	 * of the template. It is conservative: names that are not known are assumed to
+	 * read everything but the generation date. Names that mention a status
+	 * or the generation date are assumed to read them.
+	 * </p>
+	 *
+	 * @param names the names of the tags and parameters of the template
+	 * @return a non-null set
+	 */
+	static Set<ModelPart> findDependencies( Iterable<String> names ) {
+
+		Set<ModelPart> result = EnumSet.noneOf( ModelPart.class );
+		for( String name : names ) {
+			for( String segment : name.split( "[^\\w\\-@]+" )) {
+
+				String lower = segment.toLowerCase();
+				if( segment.isEmpty() || NEUTRAL_NAMES.contains( segment ))
+					continue;
+
+				if( lower.contains( "status" ))
+					result.add( ModelPart.STATUSES );
+
+				else if( lower.contains( "lastmodified" ))
+					result.add( ModelPart.TIMESTAMP );
+
+				else if( "name".equals( segment ) || "description".equals( segment ))
+					result.add( ModelPart.APPLICATION );
+
+				else if( "components".equals( segment ))
+					result.add( ModelPart.COMPONENTS );
+
+				else if( INSTANCE_NAMES.contains( segment ))
+					result.add( ModelPart.INSTANCES );
+
+				else
+					result.addAll( EnumSet.complementOf( EnumSet.of( ModelPart.TIMESTAMP )));
+			}
+		}
+
+		return result;
+	}
+
+
+	private static void appendVariables( StringBuilder sb, Iterable<VariableContextBean> variables ) {
+		for( VariableContextBean var : variables )
+			sb.append( var.getName()).append( '=' ).append( var.getValue()).append( ';' );
+	}
+
+
+	private Record findRecord( String appName, TemplateEntry template ) {
+		Map<File,Record> records = this.appNameToRecords.get( appName );
+		return records == null ? null : records.get( template.getTemplateFile());
+	}
+
+
+	/**
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class Record {
+		TemplateEntry template;
+		File target;
+		Map<ModelPart,String> fingerprints;
+		String outputHash;
+	}
+}
@@ -26,9 +26,17 @@
 package net.roboconf.dm.templating.internal.templates;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
+import com.github.jknack.handlebars.TagType;
 import com.github.jknack.handlebars.Template;
 
+import net.roboconf.dm.templating.internal.templates.GenerationCache.ModelPart;
+
 /**
  * Entry for a template being watched by the {@link TemplateWatcher}.
  * @author Pierre Bourret - Université Joseph Fourier
@@ -38,6 +46,7 @@ public final class TemplateEntry {
 	final File templateFile;
 	final String appName, targetFilePath;
 	final Template template;
+	final Set<ModelPart> dependencies;
 
 
 	/**
@@ -53,6 +62,17 @@ public final class TemplateEntry {
 		this.targetFilePath = targetFilePath;
 		this.appName = appName;
 		this.template = template;
+
+		// Find the model parts read by the template
+		if( template == null ) {
+			this.dependencies = Collections.unmodifiableSet( EnumSet.allOf( ModelPart.class ));
+
+		} else {
+			List<String> names = new ArrayList<> ();
+			names.addAll( template.collect( TagType.values()));
+			names.addAll( template.collectReferenceParameters());
+			this.dependencies = Collections.unmodifiableSet( GenerationCache.findDependencies( names ));
+		}
 	}
 
 	/**
@@ -82,4 +102,11 @@ public final class TemplateEntry {
 	public String getTargetFilePath() {
 		return this.targetFilePath;
 	}
+
+	/**
+	 * @return the model parts this template reads (not null)
+	 */
+	public Set<ModelPart> getDependencies() {
+		return this.dependencies;
+	}
 }
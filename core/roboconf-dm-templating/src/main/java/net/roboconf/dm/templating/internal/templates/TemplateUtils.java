@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import com.github.jknack.handlebars.Context;
@@ -41,6 +42,7 @@ import net.roboconf.core.utils.Utils;
 import net.roboconf.dm.templating.internal.contexts.ApplicationContextBean;
 import net.roboconf.dm.templating.internal.contexts.ContextUtils;
 import net.roboconf.dm.templating.internal.resolvers.ComponentPathResolver;
+import net.roboconf.dm.templating.internal.templates.GenerationCache.ModelPart;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -100,6 +102,31 @@ public final class TemplateUtils {
 	 * @throws IOException if something went wrong
 	 */
 	public static void generate( Application app, File outputDirectory, Collection<TemplateEntry> templates, Logger logger )
+	throws IOException {
+		generate( app, outputDirectory, templates, null, logger );
+	}
+
+
+	/**
+	 * Generates files from templates for a given application.
+	 * <p>
+	 * When a cache is specified, templates are only applied if the model parts they read
+	 * have changed since their last generation, and files are only written if their content changed.
+	 * </p>
+	 *
+	 * @param app an application (not null)
+	 * @param outputDirectory the output directory (not null)
+	 * @param templates a non-null collection of templates
+	 * @param cache a generation cache (can be null)
+	 * @param logger a logger
+	 * @throws IOException if something went wrong
+	 */
+	public static void generate(
+			Application app,
+			File outputDirectory,
+			Collection<TemplateEntry> templates,
+			GenerationCache cache,
+			Logger logger )
 	throws IOException {
 
 		// Create the context on the fly
@@ -114,6 +141,7 @@ public final class TemplateUtils {
 				).build();
 
 		// Deal with the templates
+		Map<ModelPart,String> fingerprints = cache == null ? null : GenerationCache.computeFingerprints( appCtx );
 		try {
 			for( TemplateEntry template : templates ) {
 
@@ -129,11 +157,24 @@ public final class TemplateUtils {
 					target = new File( outputDirectory, app.getName() + "/" + filename );
 				}
 
+				if( cache != null && ! cache.mustRender( app.getName(), template, target, fingerprints )) {
+					logger.finer( "Template " + template.getTemplateFile() + " does not need to be processed again for application " + app + "." );
+					continue;
+				}
+
 				Utils.createDirectory( target.getParentFile());
 				String output = template.getTemplate().apply( wrappingCtx );
-				Utils.writeStringInto( output, target );
+				String outputHash = cache == null ? null : GenerationCache.hash( output );
+				if( cache == null || cache.mustWrite( app.getName(), template, target, outputHash )) {
+					Utils.writeStringInto( output, target );
+					logger.fine( "Template " + template.getTemplateFile() + " was processed with application " + app + ". Output is in " + target );
+
+				} else {
+					logger.finer( "Template " + template.getTemplateFile() + " was processed with application " + app + ". The output did not change." );
+				}
 
-				logger.fine( "Template " + template.getTemplateFile() + " was processed with application " + app + ". Output is in " + target );
+				if( cache != null )
+					cache.update( app.getName(), template, target, fingerprints, outputHash );
 			}
 
 		} finally {
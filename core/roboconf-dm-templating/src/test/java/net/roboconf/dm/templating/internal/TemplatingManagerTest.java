@@ -175,6 +175,61 @@ public class TemplatingManagerTest {
 	}
 
 
+	@Test
+	public void testGenerationDelay() throws Exception {
+
+		// Configure the templating manager
+		TemplatingManager mngr = new TemplatingManager();
+		File templatesDirectory = this.folder.newFolder();
+		File outputDirectory = this.folder.newFolder();
+
+		mngr.setTemplatesDirectory( templatesDirectory.getAbsolutePath());
+		mngr.setOutputDirectory( outputDirectory.getAbsolutePath());
+		mngr.setPollInterval( 100 );
+		mngr.setGenerationDelay( 300 );
+
+		File tplFile = new File( templatesDirectory, "basic.txt.tpl" );
+		InputStream in = getClass().getResourceAsStream( "/templates/basic.txt.tpl" );
+		try {
+			Utils.copyStream( in, tplFile );
+
+		} finally {
+			Utils.closeQuietly( in );
+		}
+
+		mngr.start();
+		Thread.sleep( 500 );
+
+		// Several changes => a single generation, after the delay
+		TestApplication app = new TestApplication();
+		File expectedFile = new File( outputDirectory, app.getName() + "/basic.txt" );
+
+		mngr.application( app, EventType.CREATED );
+		for( int i=0; i<5; i++ )
+			mngr.instance( app.getMySqlVm(), app, EventType.CHANGED );
+
+		Assert.assertFalse( expectedFile.exists());
+		Thread.sleep( 700 );
+		Assert.assertTrue( expectedFile.exists());
+		Assert.assertEquals( 1, mngr.generationCache.getRenderedCount());
+
+		// Nothing the template reads changed => no new rendering
+		mngr.instance( app.getMySqlVm(), app, EventType.CHANGED );
+		Thread.sleep( 700 );
+		Assert.assertEquals( 1, mngr.generationCache.getRenderedCount());
+		Assert.assertEquals( 1, mngr.generationCache.getSkippedRenderingsCount());
+
+		// Deleting the application cancels the pending generation
+		mngr.instance( app.getMySqlVm(), app, EventType.CHANGED );
+		mngr.application( app, EventType.DELETED );
+		Assert.assertFalse( expectedFile.getParentFile().exists());
+
+		Thread.sleep( 700 );
+		Assert.assertFalse( expectedFile.getParentFile().exists());
+		mngr.stop();
+	}
+
+
 	@Test
 	public void test_invalidDirectories() throws Exception {
 
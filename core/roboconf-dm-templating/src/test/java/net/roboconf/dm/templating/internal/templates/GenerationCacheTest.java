@@ -0,0 +1,204 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.templating.internal.templates;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Instance.InstanceStatus;
+import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.templating.internal.contexts.ApplicationContextBean;
+import net.roboconf.dm.templating.internal.contexts.ContextUtils;
+import net.roboconf.dm.templating.internal.helpers.GenerationTest;
+import net.roboconf.dm.templating.internal.templates.GenerationCache.ModelPart;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class GenerationCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+
+	@Test
+	public void testFindDependencies() {
+
+		Assert.assertEquals(
+				EnumSet.noneOf( ModelPart.class ),
+				GenerationCache.findDependencies( Arrays.asList( "this", "each", "@index" )));
+
+		Assert.assertEquals(
+				EnumSet.of( ModelPart.APPLICATION ),
+				GenerationCache.findDependencies( Arrays.asList( "name", "description" )));
+
+		Assert.assertEquals(
+				EnumSet.of( ModelPart.INSTANCES ),
+				GenerationCache.findDependencies( Arrays.asList( "each", "instances", "path", "exports" )));
+
+		Assert.assertEquals(
+				EnumSet.of( ModelPart.INSTANCES, ModelPart.STATUSES ),
+				GenerationCache.findDependencies( Arrays.asList( "each", "instances", "path", "status" )));
+
+		// Component names are not known
+		Assert.assertEquals(
+				EnumSet.complementOf( EnumSet.of( ModelPart.TIMESTAMP )),
+				GenerationCache.findDependencies( Arrays.asList( "all", "Vm", "path", "status" )));
+
+		Assert.assertEquals(
+				EnumSet.of( ModelPart.COMPONENTS, ModelPart.INSTANCES, ModelPart.TIMESTAMP ),
+				GenerationCache.findDependencies( Arrays.asList( "components", "instancesByType", "lastModified" )));
+
+		Assert.assertEquals(
+				EnumSet.of( ModelPart.INSTANCES, ModelPart.STATUSES ),
+				GenerationCache.findDependencies( Arrays.asList( "parent.status" )));
+
+		// Unknown names => everything but the generation date
+		Assert.assertEquals(
+				EnumSet.complementOf( EnumSet.of( ModelPart.TIMESTAMP )),
+				GenerationCache.findDependencies( Arrays.asList( "my-custom-helper" )));
+	}
+
+
+	@Test
+	public void testTemplateDependencies() throws Exception {
+
+		Assert.assertEquals(
+				EnumSet.allOf( ModelPart.class ),
+				new TemplateEntry( new File( "whatever.tpl" ), null, null, null ).getDependencies());
+
+		Assert.assertEquals(
+				EnumSet.of( ModelPart.APPLICATION, ModelPart.INSTANCES ),
+				compile( "{{name}}: {{#each instances}}{{path}} {{/each}}" ).getDependencies());
+
+		Assert.assertEquals(
+				EnumSet.of( ModelPart.INSTANCES, ModelPart.STATUSES ),
+				compile( "{{#each instances}}{{path}} {{status}}{{/each}}" ).getDependencies());
+	}
+
+
+	@Test
+	public void testFingerprints() throws Exception {
+
+		Application app = GenerationTest.testApplicationForTemplates();
+		ApplicationContextBean ctx = ContextUtils.toContext( app );
+		Map<ModelPart,String> fingerprints1 = GenerationCache.computeFingerprints( ctx );
+		Map<ModelPart,String> fingerprints2 = GenerationCache.computeFingerprints( ContextUtils.toContext( app ));
+
+		Assert.assertEquals( fingerprints1.get( ModelPart.APPLICATION ), fingerprints2.get( ModelPart.APPLICATION ));
+		Assert.assertEquals( fingerprints1.get( ModelPart.COMPONENTS ), fingerprints2.get( ModelPart.COMPONENTS ));
+		Assert.assertEquals( fingerprints1.get( ModelPart.INSTANCES ), fingerprints2.get( ModelPart.INSTANCES ));
+		Assert.assertEquals( fingerprints1.get( ModelPart.STATUSES ), fingerprints2.get( ModelPart.STATUSES ));
+		Assert.assertNotEquals( fingerprints1.get( ModelPart.TIMESTAMP ), fingerprints2.get( ModelPart.TIMESTAMP ));
+
+		// Change a status
+		app.getRootInstances().iterator().next().setStatus( InstanceStatus.DEPLOYING );
+		fingerprints2 = GenerationCache.computeFingerprints( ContextUtils.toContext( app ));
+
+		Assert.assertEquals( fingerprints1.get( ModelPart.INSTANCES ), fingerprints2.get( ModelPart.INSTANCES ));
+		Assert.assertNotEquals( fingerprints1.get( ModelPart.STATUSES ), fingerprints2.get( ModelPart.STATUSES ));
+	}
+
+
+	@Test
+	public void testGenerate() throws Exception {
+
+		TemplateEntry namesTpl = compile( "{{#each instances}}{{path}}\n{{/each}}" );
+		TemplateEntry statusesTpl = compile( "{{#each instances}}{{path}}={{status}}\n{{/each}}" );
+
+		Logger logger = Logger.getLogger( getClass().getName());
+		File outputDir = this.folder.newFolder();
+		Application app = GenerationTest.testApplicationForTemplates();
+		GenerationCache cache = new GenerationCache();
+
+		// First generation
+		TemplateUtils.generate( app, outputDir, Arrays.asList( namesTpl, statusesTpl ), cache, logger );
+		Assert.assertEquals( 2, cache.getRenderedCount());
+		Assert.assertEquals( 0, cache.getSkippedRenderingsCount());
+		Assert.assertEquals( 0, cache.getSkippedWritingsCount());
+
+		File namesFile = new File( outputDir, app.getName() + "/" + namesTpl.getTemplateFile().getName().replace( ".tpl", "" ));
+		File statusesFile = new File( outputDir, app.getName() + "/" + statusesTpl.getTemplateFile().getName().replace( ".tpl", "" ));
+		Assert.assertTrue( namesFile.exists());
+		Assert.assertTrue( statusesFile.exists());
+
+		// Nothing changed
+		TemplateUtils.generate( app, outputDir, Arrays.asList( namesTpl, statusesTpl ), cache, logger );
+		Assert.assertEquals( 2, cache.getRenderedCount());
+		Assert.assertEquals( 2, cache.getSkippedRenderingsCount());
+
+		// A status changed => only one template is applied again
+		app.getRootInstances().iterator().next().setStatus( InstanceStatus.DEPLOYING );
+		String before = Utils.readFileContent( statusesFile );
+
+		TemplateUtils.generate( app, outputDir, Arrays.asList( namesTpl, statusesTpl ), cache, logger );
+		Assert.assertEquals( 3, cache.getRenderedCount());
+		Assert.assertEquals( 3, cache.getSkippedRenderingsCount());
+		Assert.assertNotEquals( before, Utils.readFileContent( statusesFile ));
+
+		// A deleted output is generated again
+		Utils.deleteFilesRecursively( namesFile );
+		TemplateUtils.generate( app, outputDir, Collections.singleton( namesTpl ), cache, logger );
+		Assert.assertEquals( 4, cache.getRenderedCount());
+		Assert.assertTrue( namesFile.exists());
+
+		// The output did not change => nothing is written
+		TemplateUtils.generate( app, outputDir, Collections.singleton( new TemplateEntry(
+				namesTpl.getTemplateFile(), null, namesTpl.getTemplate(), null )), cache, logger );
+
+		Assert.assertEquals( 5, cache.getRenderedCount());
+		Assert.assertEquals( 1, cache.getSkippedWritingsCount());
+
+		// Forget the application => everything is rendered again
+		cache.forget( app.getName());
+		TemplateUtils.generate( app, outputDir, Arrays.asList( namesTpl, statusesTpl ), cache, logger );
+		Assert.assertEquals( 7, cache.getRenderedCount());
+		Assert.assertEquals( 1, cache.getSkippedWritingsCount());
+	}
+
+
+	private TemplateEntry compile( String content ) throws Exception {
+
+		File dir = this.folder.newFolder();
+		File tplFile = new File( dir, "test-" + dir.getName() + ".txt.tpl" );
+		Utils.writeStringInto( content, tplFile );
+
+		TemplateEntry result = new TemplateWatcher( null, dir, 100 ).compileTemplate( tplFile );
+		Assert.assertNotNull( result );
+
+		return result;
+	}
+}
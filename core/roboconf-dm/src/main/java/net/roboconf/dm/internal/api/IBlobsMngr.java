@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Instance;
+
+/**
+ * An API to distribute resources (recipes, scripts) to agents by content.
+ * <p>
+ * Resources are identified by the digest of their content (blobs).
+ * The DM sends manifests (file name to digest) and only the blobs an agent
+ * is not known to have. Agents keep the blobs in a local cache. When an agent
+ * misses some of them anyway (e.g. it lost its cache), it requests them explicitly.
+ * </p>
+ * <p>
+ * This API is made internal as it does not make sense to
+ * make it visible to other bundles.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IBlobsMngr {
+
+	/**
+	 * Computes the digests of files.
+	 * <p>
+	 * Digests are cached as long as files are not modified.
+	 * Files are also registered so that their content can be sent later, on demand.
+	 * </p>
+	 *
+	 * @param files a non-null map (key = file name, value = file)
+	 * @return a non-null map (key = file name, value = digest)
+	 * @throws IOException if a file could not be read
+	 */
+	Map<String,String> computeDigests( Map<String,File> files ) throws IOException;
+
+	/**
+	 * Finds the resources an agent is not known to have.
+	 * <p>
+	 * The returned blobs are then considered as known by the agent.
+	 * A blob shared by several files is returned only once.
+	 * </p>
+	 *
+	 * @param application the application
+	 * @param scopedInstance the scoped instance associated with the agent
+	 * @param files a non-null map (key = file name, value = file)
+	 * @param fileNameToDigest the digests computed by {@link #computeDigests(Map)}
+	 * @return a non-null map (key = file name, value = file content)
+	 * @throws IOException if a file could not be read
+	 */
+	Map<String,byte[]> findResourcesToSend(
+			Application application,
+			Instance scopedInstance,
+			Map<String,File> files,
+			Map<String,String> fileNameToDigest ) throws IOException;
+
+	/**
+	 * Finds blobs explicitly requested by an agent.
+	 * <p>
+	 * Blobs that cannot be found anymore (e.g. a file was modified) are ignored.
+	 * </p>
+	 *
+	 * @param application the application
+	 * @param scopedInstance the scoped instance associated with the agent
+	 * @param digests the requested digests
+	 * @return a non-null map (key = digest, value = content)
+	 */
+	Map<String,byte[]> findBlobs( Application application, Instance scopedInstance, Collection<String> digests );
+
+	/**
+	 * Forgets the blobs an agent was known to have.
+	 * <p>
+	 * Expected to be invoked when an agent (re)starts or when its machine is deleted.
+	 * </p>
+	 *
+	 * @param application the application
+	 * @param scopedInstance the scoped instance associated with the agent
+	 */
+	void forgetAgent( Application application, Instance scopedInstance );
+}
@@ -46,6 +46,7 @@ public interface IRandomMngr {
 	 * </p>
 	 * <p>
 	 * Expected to be invoked when an instance is added.
+	 * The model is not saved by this method, this is the caller's job.
 	 * </p>
 	 *
 	 * @param application a non-null application
@@ -60,6 +61,7 @@ public interface IRandomMngr {
 	 * </p>
 	 * <p>
 	 * Expected to be invoked when an application is created.
+	 * The model is not saved by this method, this is the caller's job.
 	 * </p>
 	 *
 	 * @param application a non-null application
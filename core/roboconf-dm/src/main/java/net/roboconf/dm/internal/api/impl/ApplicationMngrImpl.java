@@ -46,11 +46,12 @@ import net.roboconf.core.model.beans.Application;
 import net.roboconf.core.model.beans.ApplicationTemplate;
 import net.roboconf.core.model.beans.Instance;
 import net.roboconf.core.model.beans.Instance.InstanceStatus;
-import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.EventType;
 import net.roboconf.core.utils.Utils;
 import net.roboconf.dm.internal.api.IRandomMngr;
 import net.roboconf.dm.internal.utils.ConfigurationUtils;
+import net.roboconf.dm.internal.utils.InstancesPersister;
+import net.roboconf.dm.internal.utils.InstancesPersister.FsyncPolicy;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.api.IApplicationMngr;
 import net.roboconf.dm.management.api.IApplicationTemplateMngr;
@@ -84,6 +85,7 @@ public class ApplicationMngrImpl implements IApplicationMngr {
 	private final IAutonomicMngr autonomicMngr;
 
 	private IApplicationTemplateMngr applicationTemplateMngr;
+	private InstancesPersister instancesPersister = new InstancesPersister();
 
 
 	/**
@@ -121,6 +123,14 @@ public class ApplicationMngrImpl implements IApplicationMngr {
 	}
 
 
+	/**
+	 * @param instancesPersister the instancesPersister to set
+	 */
+	public void setInstancesPersister( InstancesPersister instancesPersister ) {
+		this.instancesPersister = instancesPersister;
+	}
+
+
 	@Override
 	public Application findApplicationByName( String applicationName ) {
 		ManagedApplication ma = this.nameToManagedApplication.get( applicationName );
@@ -172,6 +182,9 @@ public class ApplicationMngrImpl implements IApplicationMngr {
 		// Set a value to random variables, if any
 		this.randomMngr.generateAllRandomValues( ma.getApplication());
 
+		// Save the instances!
+		this.instancesPersister.writeSnapshot( ma.getApplication());
+
 		// Start listening to messages
 		this.messagingMngr.getMessagingClient().listenToAgentMessages( ma.getApplication(), ListenerCommand.START );
 
@@ -245,6 +258,8 @@ public class ApplicationMngrImpl implements IApplicationMngr {
 		// Delete artifacts
 		this.logger.info( "Deleting the application called " + app.getName() + "..." );
 		this.nameToManagedApplication.remove( app.getName());
+		this.instancesPersister.forget( app );
+		ma.close();
 		app.removeAssociationWithTemplate();
 
 		File targetDirectory = ConfigurationUtils.findApplicationDirectory( app.getName(), this.configurationMngr.getWorkingDirectory());
@@ -281,6 +296,7 @@ public class ApplicationMngrImpl implements IApplicationMngr {
 				app.setDirectory( targetDirectory );
 
 				ManagedApplication ma = new ManagedApplication( app );
+				ma.setAwaitingMessagesFsync( fsyncAwaitingMessages());
 				this.nameToManagedApplication.put( ma.getName(), ma );
 
 				// Restore the cache for random generation in variables
@@ -300,8 +316,12 @@ public class ApplicationMngrImpl implements IApplicationMngr {
 				checkErrors( ilr.getLoadErrors(), this.logger );
 
 				ma.getApplication().getRootInstances().clear();
+				ma.getApplication().getInstancePathIndex().clear();
 				ma.getApplication().getRootInstances().addAll( ilr.getRootInstances());
 
+				// Restore the messages that were waiting for agents
+				ma.restoreAwaitingMessages();
+
 			} catch( AlreadyExistingException | InvalidApplicationException | IOException e ) {
 				this.logger.warning( "Application restoration failed for directory " + dir + " (" + e.getClass().getSimpleName() + ")." );
 				Utils.logException( this.logger, e );
@@ -346,6 +366,17 @@ public class ApplicationMngrImpl implements IApplicationMngr {
 	}
 
 
+	/**
+	 * @return true if the messages waiting for agents must be forced on the disk
+	 */
+	private boolean fsyncAwaitingMessages() {
+
+		// Stored messages are appended like journal records
+		return this.instancesPersister == null
+				|| this.instancesPersister.getFsyncPolicy() == FsyncPolicy.ALWAYS;
+	}
+
+
 	/**
 	 * Creates a new application from a template.
 	 * @param name the application's name
@@ -405,11 +436,9 @@ public class ApplicationMngrImpl implements IApplicationMngr {
 
 		// Register the application
 		ManagedApplication ma = new ManagedApplication( app );
+		ma.setAwaitingMessagesFsync( fsyncAwaitingMessages());
 		this.nameToManagedApplication.put( app.getName(), ma );
 
-		// Save the instances!
-		ConfigurationUtils.saveInstances( ma );
-
 		this.logger.info( "Application " + name + " was successfully created from the template " + tpl + "." );
 		return ma;
 	}
@@ -442,7 +471,7 @@ public class ApplicationMngrImpl implements IApplicationMngr {
 			this.logger.fine( "External prefix " + externalExportPrefix + " is now bound to application " + applicationName + " in " + ma.getName() + "." );
 
 			// Notify the agents
-			for( Instance inst : InstanceHelpers.findAllScopedInstances( ma.getApplication())) {
+			for( Instance inst : ma.getApplication().findScopedInstances()) {
 				MsgCmdChangeBinding msg = new MsgCmdChangeBinding(
 						externalExportPrefix,
 						ma.getApplication().getApplicationBindings().get( externalExportPrefix ));
@@ -480,7 +509,7 @@ public class ApplicationMngrImpl implements IApplicationMngr {
 			}
 
 			// Notify the agents
-			for( Instance inst : InstanceHelpers.findAllScopedInstances( ma.getApplication())) {
+			for( Instance inst : ma.getApplication().findScopedInstances()) {
 				MsgCmdChangeBinding msg = new MsgCmdChangeBinding(
 						externalExportPrefix,
 						ma.getApplication().getApplicationBindings().get( externalExportPrefix ));
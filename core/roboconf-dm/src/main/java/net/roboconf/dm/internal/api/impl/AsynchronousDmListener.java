@@ -0,0 +1,437 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.api.impl;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.ApplicationTemplate;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.runtime.EventType;
+import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.management.events.IDmListener;
+
+/**
+ * A DM listener that delivers events to another listener from its own thread.
+ * <p>
+ * Events are stored in a bounded queue and delivered in the order they were received.
+ * A slow listener only delays its own events. When the queue is full, the overflow
+ * policy applies.
+ * </p>
+ * <ul>
+ * <li>{@link OverflowPolicy#BLOCK}: the producer waits until there is room in the queue.</li>
+ * <li>
+ * {@link OverflowPolicy#DROP_OLDEST}: the oldest pending event is dropped. If all the pending
+ * events are control events, the producer waits until there is room in the queue.
+ * </li>
+ * <li>{@link OverflowPolicy#DROP_NEWEST}: the new event is dropped.</li>
+ * </ul>
+ * <p>
+ * Enabling and disabling notifications are never dropped.
+ * </p>
+ * <p>
+ * Notice that model objects are passed by reference. When an event is delivered,
+ * the listener sees the current state of the instance or application, which may
+ * be more recent than the one at the time the event was generated.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+class AsynchronousDmListener implements IDmListener {
+
+	static final int DEFAULT_CAPACITY = 1000;
+	static final OverflowPolicy DEFAULT_POLICY = OverflowPolicy.BLOCK;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final IDmListener listener;
+	private final int capacity;
+	private final OverflowPolicy policy;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = this.lock.newCondition();
+	private final Condition notFull = this.lock.newCondition();
+	private final ArrayDeque<Event> events = new ArrayDeque<> ();
+	private final Thread thread;
+	private boolean stopped = false;
+
+	private final AtomicLong deliveredCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong lastLag = new AtomicLong();
+	private final AtomicLong maxLag = new AtomicLong();
+
+
+	/**
+	 * The overflow policies.
+	 */
+	public enum OverflowPolicy {
+		BLOCK, DROP_OLDEST, DROP_NEWEST;
+
+
+		/**
+		 * Finds a policy by name.
+		 * @param s a string (e.g. "drop-oldest", not case-sensitive)
+		 * @return a policy, or null if none matched
+		 */
+		public static OverflowPolicy which( String s ) {
+
+			OverflowPolicy result = null;
+			for( OverflowPolicy policy : values()) {
+				if( policy.toString().replace( '_', '-' ).equalsIgnoreCase( s )) {
+					result = policy;
+					break;
+				}
+			}
+
+			return result;
+		}
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param listener the listener to notify
+	 * @param capacity the maximum number of pending events (strictly positive)
+	 * @param policy the overflow policy (not null)
+	 */
+	public AsynchronousDmListener( IDmListener listener, int capacity, OverflowPolicy policy ) {
+		this.listener = listener;
+		this.capacity = capacity;
+		this.policy = policy;
+
+		this.thread = new Thread( "Roboconf - DM listener - " + listener.getId()) {
+			@Override
+			public void run() {
+				deliverEvents();
+			}
+		};
+
+		this.thread.setDaemon( true );
+	}
+
+
+	/**
+	 * Starts the delivery thread.
+	 */
+	public void start() {
+		this.thread.start();
+	}
+
+
+	/**
+	 * Stops the delivery thread.
+	 * @param drain true to deliver pending events before stopping, false to discard them
+	 * @param timeout the maximum time to wait for the thread to complete (in milliseconds, 0 not to wait)
+	 */
+	public void stop( boolean drain, long timeout ) {
+
+		this.lock.lock();
+		try {
+			this.stopped = true;
+			if( ! drain )
+				this.events.clear();
+
+			this.notEmpty.signalAll();
+			this.notFull.signalAll();
+
+		} finally {
+			this.lock.unlock();
+		}
+
+		if( timeout > 0 && Thread.currentThread() != this.thread ) {
+			try {
+				this.thread.join( timeout );
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+	/**
+	 * @return the listener that is notified from the delivery thread
+	 */
+	public IDmListener getListener() {
+		return this.listener;
+	}
+
+
+	/**
+	 * @return the maximum number of pending events
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+
+	/**
+	 * @return the overflow policy
+	 */
+	public OverflowPolicy getPolicy() {
+		return this.policy;
+	}
+
+
+	/**
+	 * @return the number of events waiting to be delivered
+	 */
+	public int getPendingCount() {
+
+		this.lock.lock();
+		try {
+			return this.events.size();
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * @return the number of delivered events
+	 */
+	public long getDeliveredCount() {
+		return this.deliveredCount.get();
+	}
+
+
+	/**
+	 * @return the number of events that were dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return this.droppedCount.get();
+	}
+
+
+	/**
+	 * @return the time the last delivered event spent in the queue (in milliseconds)
+	 */
+	public long getLastLag() {
+		return this.lastLag.get();
+	}
+
+
+	/**
+	 * @return the maximum time an event spent in the queue (in milliseconds)
+	 */
+	public long getMaxLag() {
+		return this.maxLag.get();
+	}
+
+
+	@Override
+	public String getId() {
+		return this.listener.getId();
+	}
+
+
+	@Override
+	public void enableNotifications() {
+		enqueue( new Event( true ) {
+			@Override
+			void deliver( IDmListener l ) {
+				l.enableNotifications();
+			}
+		});
+	}
+
+
+	@Override
+	public void disableNotifications() {
+		enqueue( new Event( true ) {
+			@Override
+			void deliver( IDmListener l ) {
+				l.disableNotifications();
+			}
+		});
+	}
+
+
+	@Override
+	public void application( final Application application, final EventType eventType ) {
+		enqueue( new Event( false ) {
+			@Override
+			void deliver( IDmListener l ) {
+				l.application( application, eventType );
+			}
+		});
+	}
+
+
+	@Override
+	public void applicationTemplate( final ApplicationTemplate tpl, final EventType eventType ) {
+		enqueue( new Event( false ) {
+			@Override
+			void deliver( IDmListener l ) {
+				l.applicationTemplate( tpl, eventType );
+			}
+		});
+	}
+
+
+	@Override
+	public void instance( final Instance instance, final Application application, final EventType eventType ) {
+		enqueue( new Event( false ) {
+			@Override
+			void deliver( IDmListener l ) {
+				l.instance( instance, application, eventType );
+			}
+		});
+	}
+
+
+	@Override
+	public void raw( final String message, final Object... data ) {
+		enqueue( new Event( false ) {
+			@Override
+			void deliver( IDmListener l ) {
+				l.raw( message, data );
+			}
+		});
+	}
+
+
+	/**
+	 * Adds an event to the queue, applying the overflow policy if necessary.
+	 * @param event an event
+	 */
+	private void enqueue( Event event ) {
+
+		boolean dropped = false;
+		this.lock.lock();
+		try {
+			while( ! this.stopped
+					&& ! dropped
+					&& this.events.size() >= this.capacity ) {
+
+				if( event.control
+						|| this.policy == OverflowPolicy.BLOCK
+						|| this.policy == OverflowPolicy.DROP_OLDEST && ! dropOldestEvent()) {
+					this.notFull.awaitUninterruptibly();
+
+				} else if( this.policy == OverflowPolicy.DROP_NEWEST ) {
+					dropped = true;
+					this.droppedCount.incrementAndGet();
+				}
+			}
+
+			if( ! this.stopped && ! dropped ) {
+				this.events.addLast( event );
+				this.notEmpty.signal();
+			}
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Drops the oldest pending event that is not a control one.
+	 * <p>
+	 * Must be invoked while holding the lock.
+	 * </p>
+	 *
+	 * @return true if an event was dropped, false if all the pending events are control events
+	 */
+	private boolean dropOldestEvent() {
+
+		boolean result = false;
+		for( Iterator<Event> it = this.events.iterator(); it.hasNext(); ) {
+			if( ! it.next().control ) {
+				it.remove();
+				this.droppedCount.incrementAndGet();
+				result = true;
+				break;
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Delivers events until the listener is stopped.
+	 */
+	private void deliverEvents() {
+
+		for( ;; ) {
+			Event event;
+			this.lock.lock();
+			try {
+				while(( event = this.events.pollFirst()) == null && ! this.stopped )
+					this.notEmpty.awaitUninterruptibly();
+
+				this.notFull.signal();
+
+			} finally {
+				this.lock.unlock();
+			}
+
+			if( event == null )
+				break;
+
+			long lag = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - event.nanoTime );
+			this.lastLag.set( lag );
+			if( lag > this.maxLag.get())
+				this.maxLag.set( lag );
+
+			try {
+				event.deliver( this.listener );
+
+			} catch( Exception e ) {
+				this.logger.severe( "The DM listener '" + getId() + "' failed to process an event. " + e.getMessage());
+				Utils.logException( this.logger, e );
+			}
+
+			this.deliveredCount.incrementAndGet();
+		}
+
+		this.logger.fine( "The delivery thread of the DM listener '" + getId() + "' is now stopped." );
+	}
+
+
+	/**
+	 * An event to deliver.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private abstract static class Event {
+		final long nanoTime = System.nanoTime();
+		final boolean control;
+
+		Event( boolean control ) {
+			this.control = control;
+		}
+
+		abstract void deliver( IDmListener l );
+	}
+}
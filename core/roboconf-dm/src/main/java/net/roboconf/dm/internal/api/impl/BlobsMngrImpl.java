@@ -0,0 +1,204 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.api.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.internal.api.IBlobsMngr;
+import net.roboconf.dm.internal.api.impl.beans.InstanceContext;
+import net.roboconf.messaging.api.utils.BlobUtils;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class BlobsMngrImpl implements IBlobsMngr {
+
+	/**
+	 * File systems may only store modification dates with a precision of one or two seconds.
+	 * Digests of files modified more recently than this delay are not cached.
+	 */
+	static final long RACY_DELAY = 3000;
+
+	/**
+	 * Digests, cached by file.
+	 * <p>
+	 * A cached digest is only used if the file's length and last modification date did not change.
+	 * </p>
+	 */
+	final Map<File,CachedDigest> fileToDigest = new ConcurrentHashMap<> ();
+
+	/**
+	 * A file whose content matched a given digest (to answer agents' requests).
+	 */
+	final Map<String,File> digestToFile = new ConcurrentHashMap<> ();
+
+	/**
+	 * The blobs each agent is known to have.
+	 * <p>
+	 * An agent is identified by an application and a scoped instance.
+	 * </p>
+	 */
+	final ConcurrentMap<InstanceContext,Set<String>> agentToDigests = new ConcurrentHashMap<> ();
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+
+
+	@Override
+	public Map<String,String> computeDigests( Map<String,File> files ) throws IOException {
+
+		Map<String,String> result = new HashMap<> ();
+		for( Map.Entry<String,File> entry : files.entrySet())
+			result.put( entry.getKey(), computeDigest( entry.getValue()));
+
+		return result;
+	}
+
+
+	@Override
+	public Map<String,byte[]> findResourcesToSend(
+			Application application,
+			Instance scopedInstance,
+			Map<String,File> files,
+			Map<String,String> fileNameToDigest )
+	throws IOException {
+
+		Set<String> knownDigests = findKnownDigests( application, scopedInstance );
+		Map<String,byte[]> result = new HashMap<> ();
+		for( Map.Entry<String,String> entry : fileNameToDigest.entrySet()) {
+
+			// "add" returns false if the agent already has (or is about to receive) this blob
+			File file = files.get( entry.getKey());
+			if( file != null && knownDigests.add( entry.getValue()))
+				result.put( entry.getKey(), BlobUtils.readContent( file ));
+		}
+
+		return result;
+	}
+
+
+	@Override
+	public Map<String,byte[]> findBlobs( Application application, Instance scopedInstance, Collection<String> digests ) {
+
+		Set<String> knownDigests = findKnownDigests( application, scopedInstance );
+		Map<String,byte[]> result = new HashMap<> ();
+		for( String digest : digests ) {
+
+			// Files may have been modified since their digest was computed
+			File file = this.digestToFile.get( digest );
+			byte[] content = null;
+			try {
+				if( file != null )
+					content = BlobUtils.readContent( file );
+
+			} catch( IOException e ) {
+				Utils.logException( this.logger, e );
+			}
+
+			if( content != null && digest.equals( BlobUtils.computeDigest( content ))) {
+				result.put( digest, content );
+				knownDigests.add( digest );
+
+			} else {
+				this.logger.warning( "Blob " + digest + " was requested by " + new InstanceContext( application, scopedInstance ) + " but it could not be found." );
+				this.digestToFile.remove( digest );
+			}
+		}
+
+		return result;
+	}
+
+
+	@Override
+	public void forgetAgent( Application application, Instance scopedInstance ) {
+		this.agentToDigests.remove( new InstanceContext( application, scopedInstance ));
+	}
+
+
+	private Set<String> findKnownDigests( Application application, Instance scopedInstance ) {
+
+		InstanceContext key = new InstanceContext( application, scopedInstance );
+		Set<String> result = this.agentToDigests.get( key );
+		if( result == null ) {
+			Set<String> newSet = Collections.newSetFromMap( new ConcurrentHashMap<String,Boolean> ());
+			result = this.agentToDigests.putIfAbsent( key, newSet );
+			if( result == null )
+				result = newSet;
+		}
+
+		return result;
+	}
+
+
+	private String computeDigest( File file ) throws IOException {
+
+		CachedDigest cached = this.fileToDigest.get( file );
+		long length = file.length();
+		long lastModified = file.lastModified();
+
+		String result;
+		if( cached != null
+				&& cached.length == length
+				&& cached.lastModified == lastModified ) {
+			result = cached.digest;
+
+		} else {
+			result = BlobUtils.computeDigest( BlobUtils.readContent( file ));
+			if( System.currentTimeMillis() - lastModified > RACY_DELAY )
+				this.fileToDigest.put( file, new CachedDigest( result, length, lastModified ));
+		}
+
+		this.digestToFile.put( result, file );
+		return result;
+	}
+
+
+	/**
+	 * A digest, with the file properties that were used to compute it.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static final class CachedDigest {
+		final String digest;
+		final long length, lastModified;
+
+		CachedDigest( String digest, long length, long lastModified ) {
+			this.digest = digest;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+	}
+}
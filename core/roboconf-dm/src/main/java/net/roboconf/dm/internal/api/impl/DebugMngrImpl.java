@@ -26,6 +26,8 @@
 package net.roboconf.dm.internal.api.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import net.roboconf.core.model.beans.Instance;
@@ -35,6 +37,8 @@ import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.api.IDebugMngr;
 import net.roboconf.dm.management.api.IMessagingMngr;
 import net.roboconf.dm.management.api.INotificationMngr;
+import net.roboconf.messaging.api.jmx.LatencyStatistics;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
 
 /**
@@ -110,4 +114,18 @@ public class DebugMngrImpl implements IDebugMngr {
 	public void notifyMsgEchoReceived( MsgEcho message ) {
 		this.notificationMngr.raw( message.getContent());
 	}
+
+
+	@Override
+	public List<LatencyStatistics> findMessagingLatencies() {
+
+		RoboconfMessageQueue queue = this.messagingMngr.getMessageQueue();
+		List<LatencyStatistics> result;
+		if( queue == null )
+			result = new ArrayList<>( 0 );
+		else
+			result = queue.getLatencyTracker().computeStatistics();
+
+		return result;
+	}
 }
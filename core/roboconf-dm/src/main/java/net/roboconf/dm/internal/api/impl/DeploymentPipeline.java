@@ -0,0 +1,427 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.dm.management.ManagedApplication;
+import net.roboconf.dm.management.api.ITargetsMngr;
+
+/**
+ * A pipeline that processes instances of several agents concurrently (bulk actions).
+ * <p>
+ * Instances are grouped in stages, one per scoped instance. The instances of a stage
+ * are processed in order, within a same thread. Different stages are processed concurrently,
+ * unless a stage depends on another one (e.g. a container that must be created in a VM).
+ * </p>
+ * <p>
+ * Operations on scoped instances (e.g. the creation of a machine) are limited twice:
+ * globally (for the whole DM) and per target.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+final class DeploymentPipeline {
+
+	static final int DEFAULT_MAX_CONCURRENCY = 10;
+	static final int DEFAULT_MAX_CONCURRENCY_PER_TARGET = 4;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final ConcurrentMap<String,Semaphore> targetIdToPermits = new ConcurrentHashMap<> ();
+
+	private volatile Semaphore globalPermits;
+	private volatile int maxConcurrency, maxConcurrencyPerTarget;
+
+
+	/**
+	 * Constructor.
+	 */
+	DeploymentPipeline() {
+		setMaxConcurrency( DEFAULT_MAX_CONCURRENCY );
+		setMaxConcurrencyPerTarget( DEFAULT_MAX_CONCURRENCY_PER_TARGET );
+	}
+
+
+	/**
+	 * Sets the maximum number of operations on scoped instances that can run concurrently.
+	 * <p>
+	 * Operations that are already running are not impacted.
+	 * </p>
+	 *
+	 * @param maxConcurrency a strictly positive integer (invalid values are replaced by 1)
+	 */
+	synchronized void setMaxConcurrency( int maxConcurrency ) {
+		this.maxConcurrency = Math.max( 1, maxConcurrency );
+		this.globalPermits = new Semaphore( this.maxConcurrency, true );
+	}
+
+
+	/**
+	 * Sets the maximum number of operations on scoped instances that can run concurrently on a same target.
+	 * <p>
+	 * Operations that are already running are not impacted.
+	 * </p>
+	 *
+	 * @param maxConcurrencyPerTarget a strictly positive integer (invalid values are replaced by 1)
+	 */
+	synchronized void setMaxConcurrencyPerTarget( int maxConcurrencyPerTarget ) {
+		this.maxConcurrencyPerTarget = Math.max( 1, maxConcurrencyPerTarget );
+		this.targetIdToPermits.clear();
+	}
+
+
+	/**
+	 * @return the maximum number of operations on scoped instances that can run concurrently
+	 */
+	int getMaxConcurrency() {
+		return this.maxConcurrency;
+	}
+
+
+	/**
+	 * @return the maximum number of operations on scoped instances that can run concurrently on a same target
+	 */
+	int getMaxConcurrencyPerTarget() {
+		return this.maxConcurrencyPerTarget;
+	}
+
+
+	/**
+	 * Groups instances in stages.
+	 * @param app the application
+	 * @param instances the instances to process, parents being listed before their children
+	 * @param chained true if the stage of a scoped instance must wait for the one of its scoped parent
+	 * @param targetsMngr the targets manager (to find the target of every scoped instance)
+	 * @return a non-null plan
+	 */
+	static Plan plan( Application app, List<Instance> instances, boolean chained, ITargetsMngr targetsMngr ) {
+
+		Plan result = new Plan();
+		Map<Instance,Stage> scopedInstanceToStage = new IdentityHashMap<> ();
+		for( Instance instance : instances ) {
+
+			Instance scopedInstance = InstanceHelpers.findScopedInstance( instance );
+			Stage stage = scopedInstanceToStage.get( scopedInstance );
+			if( stage == null ) {
+				String targetId = null;
+				Stage previousStage = null;
+				if( instance == scopedInstance ) {
+					targetId = targetsMngr.findTargetId( app, InstanceHelpers.computeInstancePath( instance ));
+					if( chained && instance.getParent() != null )
+						previousStage = scopedInstanceToStage.get( InstanceHelpers.findScopedInstance( instance.getParent()));
+				}
+
+				stage = new Stage( targetId );
+				scopedInstanceToStage.put( scopedInstance, stage );
+				result.stageCount ++;
+				if( previousStage != null )
+					previousStage.nextStages.add( stage );
+				else
+					result.firstStages.add( stage );
+			}
+
+			stage.instances.add( instance );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Executes a plan and waits for its completion.
+	 * @param ma the managed application
+	 * @param operation the name of the operation (for logs)
+	 * @param plan the plan to execute
+	 * @param step the step to execute for every instance
+	 * @return a non-null list of exceptions that occurred while processing instances
+	 */
+	List<Exception> execute( ManagedApplication ma, String operation, Plan plan, Step step ) {
+
+		final List<Exception> exceptions = Collections.synchronizedList( new ArrayList<Exception> ());
+		Execution execution = new Execution( ma, operation, plan.stageCount, step, exceptions );
+		long before = System.currentTimeMillis();
+
+		// Only one stage: no need for additional threads
+		if( plan.stageCount == 1 ) {
+			execution.processStage( plan.firstStages.get( 0 ));
+
+		} else if( plan.stageCount > 1 ) {
+			final String threadName = "Roboconf - " + operation + " @ " + ma.getName();
+			ExecutorService executor = Executors.newFixedThreadPool( Math.min( plan.stageCount, this.maxConcurrency ), new ThreadFactory() {
+				@Override
+				public Thread newThread( Runnable r ) {
+					return new Thread( r, threadName );
+				}
+			});
+
+			execution.executor = executor;
+			for( Stage stage : plan.firstStages )
+				execution.submit( stage );
+
+			try {
+				execution.latch.await();
+				executor.shutdown();
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				exceptions.add( e );
+			}
+		}
+
+		if( plan.stageCount > 0 ) {
+			StringBuilder sb = new StringBuilder();
+			sb.append( "Operation '" );
+			sb.append( operation );
+			sb.append( "' was processed for " );
+			sb.append( plan.stageCount );
+			sb.append( " agent(s) in " );
+			sb.append( ma.getName());
+			sb.append( " in " );
+			sb.append( System.currentTimeMillis() - before );
+			sb.append( " ms." );
+			if( execution.slowestInstancePath != null ) {
+				sb.append( " Slowest instance: " );
+				sb.append( execution.slowestInstancePath );
+				sb.append( " (" );
+				sb.append( execution.slowestDuration );
+				sb.append( " ms)." );
+			}
+
+			this.logger.fine( sb.toString());
+		}
+
+		return exceptions;
+	}
+
+
+	/**
+	 * Processes an instance while holding the permits for its target.
+	 * @param stage the stage
+	 * @param instance the scoped instance to process
+	 * @param step the step to execute
+	 * @throws Exception if something went wrong
+	 */
+	private void processTarget( Stage stage, Instance instance, Step step ) throws Exception {
+
+		Semaphore global = this.globalPermits;
+		Semaphore perTarget = null;
+		if( stage.targetId != null ) {
+			perTarget = this.targetIdToPermits.get( stage.targetId );
+			if( perTarget == null ) {
+				Semaphore newPermits = new Semaphore( this.maxConcurrencyPerTarget, true );
+				perTarget = this.targetIdToPermits.putIfAbsent( stage.targetId, newPermits );
+				if( perTarget == null )
+					perTarget = newPermits;
+			}
+		}
+
+		// Wait for the target first: an operation blocked by a busy target
+		// must not hold a global permit that other targets could use.
+		if( perTarget != null )
+			perTarget.acquire();
+
+		try {
+			global.acquire();
+			try {
+				step.process( instance );
+
+			} finally {
+				global.release();
+			}
+
+		} finally {
+			if( perTarget != null )
+				perTarget.release();
+		}
+	}
+
+
+	/**
+	 * The action to execute on every instance.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	interface Step {
+
+		/**
+		 * Processes an instance.
+		 * @param instance an instance
+		 * @throws Exception if something went wrong
+		 */
+		void process( Instance instance ) throws Exception;
+	}
+
+
+	/**
+	 * Stages to execute.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static final class Plan {
+		final List<Stage> firstStages = new ArrayList<> ();
+		int stageCount;
+	}
+
+
+	/**
+	 * Instances associated with a same agent, processed in order.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static final class Stage {
+
+		final String targetId;
+		final List<Instance> instances = new ArrayList<> ();
+		final List<Stage> nextStages = new ArrayList<> ();
+
+
+		/**
+		 * Constructor.
+		 * @param targetId the target ID (can be null)
+		 */
+		Stage( String targetId ) {
+			this.targetId = targetId;
+		}
+	}
+
+
+	/**
+	 * The state of a plan's execution.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private final class Execution {
+
+		final ManagedApplication ma;
+		final String operation;
+		final int stageCount;
+		final Step step;
+		final List<Exception> exceptions;
+
+		final CountDownLatch latch;
+		final AtomicInteger processedStages = new AtomicInteger();
+		ExecutorService executor;
+
+		// Guarded by "this"
+		String slowestInstancePath;
+		long slowestDuration = -1;
+
+
+		/**
+		 * Constructor.
+		 * @param ma
+		 * @param operation
+		 * @param stageCount
+		 * @param step
+		 * @param exceptions
+		 */
+		Execution( ManagedApplication ma, String operation, int stageCount, Step step, List<Exception> exceptions ) {
+			this.ma = ma;
+			this.operation = operation;
+			this.stageCount = stageCount;
+			this.step = step;
+			this.exceptions = exceptions;
+			this.latch = new CountDownLatch( stageCount );
+		}
+
+
+		void submit( final Stage stage ) {
+
+			try {
+				this.executor.execute( new Runnable() {
+					@Override
+					public void run() {
+						try {
+							processStage( stage );
+
+						} finally {
+							Execution.this.latch.countDown();
+						}
+					}
+				});
+
+			} catch( RejectedExecutionException e ) {
+				// The execution was interrupted
+				this.latch.countDown();
+			}
+		}
+
+
+		void processStage( Stage stage ) {
+
+			for( Instance instance : stage.instances ) {
+				long before = System.currentTimeMillis();
+				try {
+					if( InstanceHelpers.isTarget( instance ))
+						processTarget( stage, instance, this.step );
+					else
+						this.step.process( instance );
+
+				} catch( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					this.exceptions.add( e );
+					break;
+
+				} catch( Exception e ) {
+					this.exceptions.add( e );
+				}
+
+				long duration = System.currentTimeMillis() - before;
+				String path = InstanceHelpers.computeInstancePath( instance );
+				DeploymentPipeline.this.logger.finer( "Operation '" + this.operation + "' took " + duration + " ms for " + path + " in " + this.ma.getName() + "." );
+				synchronized( this ) {
+					if( duration > this.slowestDuration ) {
+						this.slowestDuration = duration;
+						this.slowestInstancePath = path;
+					}
+				}
+			}
+
+			// Dependent stages can start as soon as this one was processed
+			for( Stage nextStage : stage.nextStages )
+				submit( nextStage );
+
+			int processed = this.processedStages.incrementAndGet();
+			DeploymentPipeline.this.logger.fine(
+					"Operation '" + this.operation + "' in " + this.ma.getName()
+					+ ": " + processed + " / " + this.stageCount + " agent(s) processed." );
+		}
+	}
+}
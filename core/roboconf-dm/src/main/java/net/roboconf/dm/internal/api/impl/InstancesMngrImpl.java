@@ -43,10 +43,13 @@ import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.EventType;
 import net.roboconf.core.utils.ResourceUtils;
 import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.internal.api.IBlobsMngr;
 import net.roboconf.dm.internal.api.IRandomMngr;
 import net.roboconf.dm.internal.api.ITargetConfigurator;
-import net.roboconf.dm.internal.utils.ConfigurationUtils;
+import net.roboconf.dm.internal.api.impl.DeploymentPipeline.Plan;
+import net.roboconf.dm.internal.api.impl.DeploymentPipeline.Step;
 import net.roboconf.dm.internal.utils.DmUtils;
+import net.roboconf.dm.internal.utils.InstancesPersister;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.api.IAutonomicMngr;
 import net.roboconf.dm.management.api.IInstancesMngr;
@@ -88,6 +91,9 @@ public class InstancesMngrImpl implements IInstancesMngr {
 
 	private IAutonomicMngr autonomicMngr;
 	private ITargetHandlerResolver targetHandlerResolver;
+	private IBlobsMngr blobsMngr;
+	private InstancesPersister instancesPersister = new InstancesPersister();
+	private final DeploymentPipeline deploymentPipeline = new DeploymentPipeline();
 	private String dmDomain;
 
 
@@ -130,6 +136,38 @@ public class InstancesMngrImpl implements IInstancesMngr {
 	}
 
 
+	/**
+	 * @param blobsMngr the blobsMngr to set (null to send all the resources every time)
+	 */
+	public void setBlobsMngr( IBlobsMngr blobsMngr ) {
+		this.blobsMngr = blobsMngr;
+	}
+
+
+	/**
+	 * @param instancesPersister the instancesPersister to set
+	 */
+	public void setInstancesPersister( InstancesPersister instancesPersister ) {
+		this.instancesPersister = instancesPersister;
+	}
+
+
+	/**
+	 * @param maxConcurrentTargetOperations the maximum number of operations on scoped instances that can run concurrently
+	 */
+	public void setMaxConcurrentTargetOperations( int maxConcurrentTargetOperations ) {
+		this.deploymentPipeline.setMaxConcurrency( maxConcurrentTargetOperations );
+	}
+
+
+	/**
+	 * @param maxConcurrentOperationsPerTarget the maximum number of operations that can run concurrently on a same target
+	 */
+	public void setMaxConcurrentOperationsPerTarget( int maxConcurrentOperationsPerTarget ) {
+		this.deploymentPipeline.setMaxConcurrencyPerTarget( maxConcurrentOperationsPerTarget );
+	}
+
+
 	/**
 	 * @param dmDomain the dmDomain to set
 	 */
@@ -157,7 +195,7 @@ public class InstancesMngrImpl implements IInstancesMngr {
 		// Store the message because we want to make sure the message is not lost
 		ma.storeAwaitingMessage( instance, new MsgCmdAddInstance( scopedInstance ));
 
-		ConfigurationUtils.saveInstances( ma );
+		this.instancesPersister.instanceChanged( ma.getApplication(), instance );
 		this.notificationMngr.instance( instance, ma.getApplication(), EventType.CREATED );
 	}
 
@@ -166,7 +204,7 @@ public class InstancesMngrImpl implements IInstancesMngr {
 	public void instanceWasUpdated( Instance instance, ManagedApplication ma ) {
 
 		this.notificationMngr.instance( instance, ma.getApplication(), EventType.CHANGED );
-		ConfigurationUtils.saveInstances( ma );
+		this.instancesPersister.instanceChanged( ma.getApplication(), instance );
 	}
 
 
@@ -207,14 +245,12 @@ public class InstancesMngrImpl implements IInstancesMngr {
 		this.messagingMngr.sendMessageSafely( ma, instance, message );
 
 		// Remove it from the model
-		if( instance.getParent() == null ) {
-			ma.getApplication().getRootInstances().remove( instance );
+		Instance formerRootInstance = InstanceHelpers.findRootInstance( instance );
+		boolean rootInstance = instance.getParent() == null;
+		InstanceHelpers.removeInstance( ma.getApplication(), instance );
+		if( rootInstance )
 			this.autonomicMngr.notifyVmWasDeletedByHand( instance );
 
-		} else {
-			instance.getParent().getChildren().remove( instance );
-		}
-
 		// Release random values, if any
 		this.randomMngr.releaseRandomValues( ma.getApplication(), instance );
 
@@ -223,7 +259,7 @@ public class InstancesMngrImpl implements IInstancesMngr {
 
 		// Persist the model and notify
 		this.logger.fine( "Instance " + InstanceHelpers.computeInstancePath( instance ) + " was successfully removed in " + ma.getName() + "." );
-		ConfigurationUtils.saveInstances( ma );
+		this.instancesPersister.instanceChanged( ma.getApplication(), formerRootInstance );
 		this.notificationMngr.instance( instance, ma.getApplication(), EventType.DELETED );
 	}
 
@@ -231,7 +267,7 @@ public class InstancesMngrImpl implements IInstancesMngr {
 	@Override
 	public void restoreInstanceStates( ManagedApplication ma, TargetHandler targetHandler ) {
 
-		for( Instance scopedInstance : InstanceHelpers.findAllScopedInstances( ma.getApplication())) {
+		for( Instance scopedInstance : ma.getApplication().findScopedInstances()) {
 			try {
 				// Not associated with a VM? => Everything must be not deployed.
 				String machineId = scopedInstance.data.get( Instance.MACHINE_ID );
@@ -322,12 +358,24 @@ public class InstancesMngrImpl implements IInstancesMngr {
 				this.logger.warning( "Ignoring a request to update a scoped instance's state. New state was " + newStatus );
 
 		} else {
-			Map<String,byte[]> instanceResources = null;
-			if( newStatus == InstanceStatus.DEPLOYED_STARTED
-					|| newStatus == InstanceStatus.DEPLOYED_STOPPED )
-				instanceResources = ResourceUtils.storeInstanceResources( ma.getTemplateDirectory(), instance );
+			MsgCmdChangeInstanceState message;
+			if( newStatus != InstanceStatus.DEPLOYED_STARTED
+					&& newStatus != InstanceStatus.DEPLOYED_STOPPED ) {
+				message = new MsgCmdChangeInstanceState( instance, newStatus );
+
+			} else if( this.blobsMngr == null ) {
+				Map<String,byte[]> instanceResources = ResourceUtils.storeInstanceResources( ma.getTemplateDirectory(), instance );
+				message = new MsgCmdChangeInstanceState( instance, newStatus, instanceResources );
+
+			} else {
+				// Send a manifest and only the resources the agent does not have yet
+				Instance scopedInstance = InstanceHelpers.findScopedInstance( instance );
+				Map<String,File> files = ResourceUtils.findInstanceResourceFiles( ma.getTemplateDirectory(), instance );
+				Map<String,String> fileNameToDigest = this.blobsMngr.computeDigests( files );
+				Map<String,byte[]> instanceResources = this.blobsMngr.findResourcesToSend( ma.getApplication(), scopedInstance, files, fileNameToDigest );
+				message = new MsgCmdChangeInstanceState( instancePath, newStatus, instanceResources, fileNameToDigest );
+			}
 
-			MsgCmdChangeInstanceState message = new MsgCmdChangeInstanceState( instance, newStatus, instanceResources );
 			this.messagingMngr.sendMessageSafely( ma, instance, message );
 			this.logger.fine( "A message was (or will be) sent to the agent to change the state of " + instancePath + " in " + ma.getName() + "." );
 		}
@@ -335,7 +383,7 @@ public class InstancesMngrImpl implements IInstancesMngr {
 
 
 	@Override
-	public void deployAndStartAll( ManagedApplication ma, Instance instance ) throws IOException {
+	public void deployAndStartAll( final ManagedApplication ma, Instance instance ) throws IOException {
 
 		this.messagingMngr.checkMessagingConfiguration();
 		Collection<Instance> initialInstances;
@@ -344,24 +392,26 @@ public class InstancesMngrImpl implements IInstancesMngr {
 		else
 			initialInstances = ma.getApplication().getRootInstances();
 
-		List<Exception> exceptions = new ArrayList<> ();
-		for( Instance initialInstance : initialInstances ) {
-			for( Instance i : InstanceHelpers.buildHierarchicalList( initialInstance )) {
-				try {
-					changeInstanceState( ma, i, InstanceStatus.DEPLOYED_STARTED );
-
-				} catch( Exception e ) {
-					exceptions.add( e );
-				}
+		// Scoped instances are deployed concurrently.
+		// Their children are processed once their deployment was requested.
+		List<Instance> instances = new ArrayList<> ();
+		for( Instance initialInstance : initialInstances )
+			instances.addAll( InstanceHelpers.buildHierarchicalList( initialInstance ));
+
+		Plan plan = DeploymentPipeline.plan( ma.getApplication(), instances, true, this.targetsMngr );
+		List<Exception> exceptions = this.deploymentPipeline.execute( ma, "deploy and start all", plan, new Step() {
+			@Override
+			public void process( Instance i ) throws Exception {
+				changeInstanceState( ma, i, InstanceStatus.DEPLOYED_STARTED );
 			}
-		}
+		});
 
 		processExceptions( this.logger, exceptions, "One or several errors occurred while deploying and starting instances." );
 	}
 
 
 	@Override
-	public void stopAll( ManagedApplication ma, Instance instance ) throws IOException {
+	public void stopAll( final ManagedApplication ma, Instance instance ) throws IOException {
 
 		this.messagingMngr.checkMessagingConfiguration();
 		Collection<Instance> initialInstances;
@@ -372,25 +422,28 @@ public class InstancesMngrImpl implements IInstancesMngr {
 
 		// We do not need to stop all the instances, just the first children.
 		// Stop does not mean anything for targetsMngr.
-		List<Exception> exceptions = new ArrayList<> ();
+		List<Instance> instances = new ArrayList<> ();
 		for( Instance initialInstance : initialInstances ) {
-			try {
-				if( ! InstanceHelpers.isTarget( initialInstance ))
-					changeInstanceState( ma, initialInstance, InstanceStatus.DEPLOYED_STOPPED );
-				else for( Instance i : initialInstance.getChildren())
-					changeInstanceState( ma, i, InstanceStatus.DEPLOYED_STOPPED );
+			if( ! InstanceHelpers.isTarget( initialInstance ))
+				instances.add( initialInstance );
+			else
+				instances.addAll( initialInstance.getChildren());
+		}
 
-			} catch( Exception e ) {
-				exceptions.add( e );
+		Plan plan = DeploymentPipeline.plan( ma.getApplication(), instances, false, this.targetsMngr );
+		List<Exception> exceptions = this.deploymentPipeline.execute( ma, "stop all", plan, new Step() {
+			@Override
+			public void process( Instance i ) throws Exception {
+				changeInstanceState( ma, i, InstanceStatus.DEPLOYED_STOPPED );
 			}
-		}
+		});
 
 		processExceptions( this.logger, exceptions, "One or several errors occurred while stopping instances." );
 	}
 
 
 	@Override
-	public void undeployAll( ManagedApplication ma, Instance instance ) throws IOException {
+	public void undeployAll( final ManagedApplication ma, Instance instance ) throws IOException {
 
 		this.messagingMngr.checkMessagingConfiguration();
 		Collection<Instance> initialInstances;
@@ -400,15 +453,13 @@ public class InstancesMngrImpl implements IInstancesMngr {
 			initialInstances = ma.getApplication().getRootInstances();
 
 		// We do not need to undeploy all the instances, just the first instance
-		List<Exception> exceptions = new ArrayList<> ();
-		for( Instance initialInstance : initialInstances ) {
-			try {
-				changeInstanceState( ma, initialInstance, InstanceStatus.NOT_DEPLOYED );
-
-			} catch( Exception e ) {
-				exceptions.add( e );
+		Plan plan = DeploymentPipeline.plan( ma.getApplication(), new ArrayList<>( initialInstances ), false, this.targetsMngr );
+		List<Exception> exceptions = this.deploymentPipeline.execute( ma, "undeploy all", plan, new Step() {
+			@Override
+			public void process( Instance i ) throws Exception {
+				changeInstanceState( ma, i, InstanceStatus.NOT_DEPLOYED );
 			}
-		}
+		});
 
 		processExceptions( this.logger, exceptions, "One or several errors occurred while undeploying instances." );
 	}
@@ -452,13 +503,7 @@ public class InstancesMngrImpl implements IInstancesMngr {
 			this.notificationMngr.instance( scopedInstance, ma.getApplication(), EventType.CHANGED );
 
 			// Send the model
-			Map<String,byte[]> scriptResources = this.targetsMngr.findScriptResourcesForAgent( ma.getApplication(), scopedInstance );
-			MsgCmdSetScopedInstance msgModel = new MsgCmdSetScopedInstance(
-					scopedInstance,
-					ma.getApplication().getExternalExports(),
-					ma.getApplication().getApplicationBindings(),
-					scriptResources );
-
+			MsgCmdSetScopedInstance msgModel = DmUtils.buildSetScopedInstanceMessage( ma, scopedInstance, this.targetsMngr, this.blobsMngr );
 			this.messagingMngr.sendMessageSafely( ma, scopedInstance, msgModel );
 
 			// Send the probe files (if any)
@@ -520,7 +565,7 @@ public class InstancesMngrImpl implements IInstancesMngr {
 			throw e;
 
 		} finally {
-			ConfigurationUtils.saveInstances( ma );
+			this.instancesPersister.instanceChanged( ma.getApplication(), scopedInstance );
 			this.notificationMngr.instance( scopedInstance, ma.getApplication(), EventType.CHANGED );
 		}
 	}
@@ -579,7 +624,10 @@ public class InstancesMngrImpl implements IInstancesMngr {
 
 		} finally {
 			ma.removeAwaitingMessages( scopedInstance );
-			ConfigurationUtils.saveInstances( ma );
+			if( this.blobsMngr != null )
+				this.blobsMngr.forgetAgent( ma.getApplication(), scopedInstance );
+
+			this.instancesPersister.instanceChanged( ma.getApplication(), scopedInstance );
 		}
 	}
 
@@ -37,6 +37,7 @@ import net.roboconf.dm.internal.environment.messaging.RCDm;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.api.IMessagingMngr;
 import net.roboconf.messaging.api.business.IDmClient;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
 
 /**
@@ -47,6 +48,8 @@ import net.roboconf.messaging.api.messages.Message;
  */
 public class MessagingMngrImpl implements IMessagingMngr {
 
+	static final int STORED_MESSAGES_BATCH_SIZE = 50;
+
 	private final Logger logger = Logger.getLogger( getClass().getName());
 	private RCDm messagingClient;
 
@@ -87,24 +90,30 @@ public class MessagingMngrImpl implements IMessagingMngr {
 			Instance scopedInstance = InstanceHelpers.findScopedInstance( instance );
 			if( scopedInstance.getStatus() == InstanceStatus.DEPLOYED_STARTED ) {
 
-				List<Message> messages = ma.removeAwaitingMessages( instance );
-				if( messages.isEmpty())
-					return;
-
+				// Messages are drained in batches, so that messages stored on the disk
+				// are not all loaded in memory at once.
 				String path = InstanceHelpers.computeInstancePath( scopedInstance );
-				this.logger.fine( "Forcing the sending of " + messages.size() + " awaiting message(s) for " + path + "." );
-
-				for( Message msg : messages ) {
-					try {
-						sendMessageDirectly( ma, scopedInstance, msg );
-
-					} catch( IOException e ) {
-
-						// If the message could not be send, plan a retry.
-						// This preserves message ordering (FIFO).
-						ma.storeAwaitingMessage( scopedInstance, msg );
-						this.logger.severe( "Error while sending a stored message. A retry is planned. " + e.getMessage());
-						Utils.logException( this.logger, e );
+				boolean failed = false;
+				while( ! failed ) {
+
+					List<Message> messages = ma.removeAwaitingMessages( instance, STORED_MESSAGES_BATCH_SIZE );
+					if( messages.isEmpty())
+						break;
+
+					this.logger.fine( "Forcing the sending of " + messages.size() + " awaiting message(s) for " + path + "." );
+					for( int i = 0; i < messages.size() && ! failed; i ++ ) {
+						try {
+							sendMessageDirectly( ma, scopedInstance, messages.get( i ));
+
+						} catch( IOException e ) {
+
+							// If the message could not be send, plan a retry.
+							// It and the next ones are put back before the other stored messages (FIFO).
+							ma.putBackAwaitingMessages( scopedInstance, messages.subList( i, messages.size()));
+							this.logger.severe( "Error while sending a stored message. A retry is planned. " + e.getMessage());
+							Utils.logException( this.logger, e );
+							failed = true;
+						}
 					}
 				}
 			}
@@ -124,6 +133,17 @@ public class MessagingMngrImpl implements IMessagingMngr {
 	}
 
 
+	@Override
+	public RoboconfMessageQueue getMessageQueue() {
+
+		RoboconfMessageQueue result = null;
+		if( this.messagingClient != null && this.messagingClient.getMessageProcessor() != null )
+			result = this.messagingClient.getMessageProcessor().getMessageQueue();
+
+		return result;
+	}
+
+
 	@Override
 	public void checkMessagingConfiguration() throws IOException {
 
@@ -27,27 +27,65 @@ package net.roboconf.dm.internal.api.impl;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import net.roboconf.core.model.beans.Application;
 import net.roboconf.core.model.beans.ApplicationTemplate;
 import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.EventType;
+import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.internal.api.impl.AsynchronousDmListener.OverflowPolicy;
 import net.roboconf.dm.management.api.INotificationMngr;
 import net.roboconf.dm.management.events.IDmListener;
 
 /**
+ * The notification manager.
+ * <p>
+ * By default, listeners are notified synchronously, by the thread that generated the event.
+ * In asynchronous mode, every listener has its own queue and delivery thread (see
+ * {@link AsynchronousDmListener}), so that a slow listener does not delay the DM.
+ * </p>
+ * <p>
+ * When a coalescing window is set, {@link EventType#CHANGED} events about instances
+ * are not delivered immediately. During the window, successive changes of a same instance
+ * are merged and listeners are only notified once, with the latest state. Any other event
+ * first delivers the pending changes, so that the order of events is preserved.
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class NotificationMngrImpl implements INotificationMngr {
 
+	/**
+	 * The maximum time to wait for pending events to be delivered when the queues are reconfigured.
+	 */
+	static final long DRAIN_TIMEOUT = 5000;
+
 	private final Logger logger = Logger.getLogger( getClass().getName());
 	private final List<IDmListener> dmListeners = new ArrayList<> ();
+	private final Map<IDmListener,AsynchronousDmListener> asynchronousListeners = new HashMap<> ();
 	private final AtomicBoolean enableNotifications = new AtomicBoolean( false );
 
+	private boolean asynchronousNotifications = false;
+	private String queuesConfiguration;
+
+	private final Map<String,PendingChange> pendingChanges = new LinkedHashMap<> ();
+	private final AtomicLong coalescedNotificationsCount = new AtomicLong();
+	private ScheduledExecutorService coalescingExecutor;
+	private long coalescingWindow = 0;
+
 
 	@Override
 	public String getId() {
@@ -61,8 +99,9 @@ public class NotificationMngrImpl implements INotificationMngr {
 		this.logger.info( "Notifications are being enabled for DM listeners..." );
 		this.enableNotifications.set( true );
 		synchronized( this.dmListeners ) {
+			flushPendingChanges();
 			for( IDmListener listener : this.dmListeners )
-				listener.enableNotifications();
+				findTarget( listener ).enableNotifications();
 		}
 	}
 
@@ -73,8 +112,9 @@ public class NotificationMngrImpl implements INotificationMngr {
 		this.logger.info( "Notifications are being disabled for DM listeners..." );
 		this.enableNotifications.set( false );
 		synchronized( this.dmListeners ) {
+			flushPendingChanges();
 			for( IDmListener listener : this.dmListeners )
-				listener.disableNotifications();
+				findTarget( listener ).disableNotifications();
 		}
 	}
 
@@ -89,12 +129,17 @@ public class NotificationMngrImpl implements INotificationMngr {
 			this.logger.info( "An invalid DM listener failed to be added." );
 
 		} else {
+			IDmListener target;
 			synchronized( this.dmListeners ) {
 				this.dmListeners.add( listener );
+				if( this.asynchronousNotifications )
+					startAsynchronousListener( listener );
+
+				target = findTarget( listener );
 			}
 
 			if( this.enableNotifications.get())
-				listener.enableNotifications();
+				target.enableNotifications();
 
 			this.logger.info( "The listener '" + listener.getId() + "' is now available in Roboconf's DM." );
 		}
@@ -110,10 +155,15 @@ public class NotificationMngrImpl implements INotificationMngr {
 	public void removeListener( IDmListener listener ) {
 
 		if( listener != null ) {
+			AsynchronousDmListener asynchronousListener;
 			synchronized( this.dmListeners ) {
 				this.dmListeners.remove( listener );
+				asynchronousListener = this.asynchronousListeners.remove( listener );
 			}
 
+			if( asynchronousListener != null )
+				asynchronousListener.stop( false, 0 );
+
 			this.logger.info( "The listener '" + listener.getId() + "' is not available anymore in Roboconf's DM." );
 		} else {
 			this.logger.info( "An invalid DM listener was removed." );
@@ -134,8 +184,9 @@ public class NotificationMngrImpl implements INotificationMngr {
 	@Override
 	public void application( Application application, EventType eventType ) {
 		synchronized( this.dmListeners ) {
+			flushPendingChanges();
 			for( IDmListener listener : this.dmListeners )
-				listener.application( application, eventType );
+				findTarget( listener ).application( application, eventType );
 		}
 	}
 
@@ -143,17 +194,33 @@ public class NotificationMngrImpl implements INotificationMngr {
 	@Override
 	public void applicationTemplate( ApplicationTemplate tpl, EventType eventType ) {
 		synchronized( this.dmListeners ) {
+			flushPendingChanges();
 			for( IDmListener listener : this.dmListeners )
-				listener.applicationTemplate( tpl, eventType );
+				findTarget( listener ).applicationTemplate( tpl, eventType );
 		}
 	}
 
 
 	@Override
 	public void instance( Instance instance, Application application, EventType eventType ) {
+
 		synchronized( this.dmListeners ) {
-			for( IDmListener listener : this.dmListeners )
-				listener.instance( instance, application, eventType );
+			if( eventType == EventType.CHANGED && this.coalescingExecutor != null ) {
+
+				// Pending changes keep their position in the map.
+				// The first change of an instance schedules the delivery.
+				String key = (application == null ? "" : application.getName()) + "|" + InstanceHelpers.computeInstancePath( instance );
+				PendingChange previous = this.pendingChanges.put( key, new PendingChange( instance, application ));
+				if( previous != null )
+					this.coalescedNotificationsCount.incrementAndGet();
+				else
+					scheduleFlush();
+
+			} else {
+				flushPendingChanges();
+				for( IDmListener listener : this.dmListeners )
+					findTarget( listener ).instance( instance, application, eventType );
+			}
 		}
 	}
 
@@ -161,8 +228,284 @@ public class NotificationMngrImpl implements INotificationMngr {
 	@Override
 	public void raw( String message, Object... data ) {
 		synchronized( this.dmListeners ) {
+			flushPendingChanges();
 			for( IDmListener listener : this.dmListeners )
-				listener.raw( message, data );
+				findTarget( listener ).raw( message, data );
+		}
+	}
+
+
+	/**
+	 * Sets whether listeners are notified asynchronously.
+	 * @param asynchronousNotifications true to notify every listener from its own thread
+	 */
+	public void setAsynchronousNotifications( boolean asynchronousNotifications ) {
+
+		synchronized( this.dmListeners ) {
+			this.asynchronousNotifications = asynchronousNotifications;
+			restartAsynchronousListeners();
+		}
+	}
+
+
+	/**
+	 * @return true if listeners are notified asynchronously
+	 */
+	public boolean isAsynchronousNotifications() {
+		synchronized( this.dmListeners ) {
+			return this.asynchronousNotifications;
+		}
+	}
+
+
+	/**
+	 * Sets the configuration of the listeners' queues (in asynchronous mode).
+	 * <p>
+	 * The expected format is a comma-separated list of <code>listener-id:capacity:policy</code>,
+	 * where the policy is one of "block", "drop-oldest" and "drop-newest".
+	 * Example: <code>DM's Websocket:1000:drop-oldest, DM's Templating:100:block</code>.
+	 * Listeners that are not listed have a queue of {@value AsynchronousDmListener#DEFAULT_CAPACITY}
+	 * events and the "block" policy. Invalid entries are ignored.
+	 * </p>
+	 *
+	 * @param queuesConfiguration a configuration string (can be null)
+	 */
+	public void setQueuesConfiguration( String queuesConfiguration ) {
+
+		synchronized( this.dmListeners ) {
+			this.queuesConfiguration = queuesConfiguration;
+			restartAsynchronousListeners();
+		}
+	}
+
+
+	/**
+	 * Sets the coalescing window for changes on instances.
+	 * @param coalescingWindow a delay in milliseconds (0 or negative to deliver all the changes immediately)
+	 */
+	public void setCoalescingWindow( long coalescingWindow ) {
+
+		synchronized( this.dmListeners ) {
+			flushPendingChanges();
+			this.coalescingWindow = coalescingWindow;
+
+			if( coalescingWindow > 0 && this.coalescingExecutor == null ) {
+				this.coalescingExecutor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+					@Override
+					public Thread newThread( Runnable r ) {
+						Thread thread = new Thread( r, "Roboconf - DM notifications coalescing" );
+						thread.setDaemon( true );
+						return thread;
+					}
+				});
+
+			} else if( coalescingWindow <= 0 && this.coalescingExecutor != null ) {
+				this.coalescingExecutor.shutdown();
+				this.coalescingExecutor = null;
+			}
+		}
+	}
+
+
+	/**
+	 * @return the coalescing window for changes on instances (in milliseconds)
+	 */
+	public long getCoalescingWindow() {
+		synchronized( this.dmListeners ) {
+			return this.coalescingWindow;
+		}
+	}
+
+
+	/**
+	 * @return the number of changes on instances that were merged with a pending one
+	 */
+	public long getCoalescedNotificationsCount() {
+		return this.coalescedNotificationsCount.get();
+	}
+
+
+	/**
+	 * Delivers the pending changes on instances.
+	 */
+	public void flushPendingChanges() {
+
+		synchronized( this.dmListeners ) {
+			if( ! this.pendingChanges.isEmpty()) {
+				List<PendingChange> changes = new ArrayList<>( this.pendingChanges.values());
+				this.pendingChanges.clear();
+
+				for( PendingChange change : changes ) {
+					for( IDmListener listener : this.dmListeners )
+						findTarget( listener ).instance( change.instance, change.application, EventType.CHANGED );
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * @return the number of events waiting to be delivered to listeners
+	 */
+	public int getPendingNotificationsCount() {
+
+		int result = 0;
+		for( AsynchronousDmListener listener : copyAsynchronousListeners())
+			result += listener.getPendingCount();
+
+		return result;
+	}
+
+
+	/**
+	 * @return the number of events that were dropped because a listener's queue was full
+	 */
+	public long getDroppedNotificationsCount() {
+
+		long result = 0;
+		for( AsynchronousDmListener listener : copyAsynchronousListeners())
+			result += listener.getDroppedCount();
+
+		return result;
+	}
+
+
+	/**
+	 * @return the maximum time an event spent in a listener's queue (in milliseconds)
+	 */
+	public long getMaxNotificationLag() {
+
+		long result = 0;
+		for( AsynchronousDmListener listener : copyAsynchronousListeners())
+			result = Math.max( result, listener.getMaxLag());
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the asynchronous wrapper of a listener.
+	 * @param listener a listener
+	 * @return the wrapper, or null if the listener is notified synchronously
+	 */
+	AsynchronousDmListener findAsynchronousListener( IDmListener listener ) {
+		synchronized( this.dmListeners ) {
+			return this.asynchronousListeners.get( listener );
+		}
+	}
+
+
+	/**
+	 * Finds the object to notify for a given listener.
+	 * <p>
+	 * Must be invoked while holding the listeners' monitor.
+	 * </p>
+	 *
+	 * @param listener a listener
+	 * @return the listener itself, or its asynchronous wrapper
+	 */
+	private IDmListener findTarget( IDmListener listener ) {
+		AsynchronousDmListener result = this.asynchronousListeners.get( listener );
+		return result != null ? result : listener;
+	}
+
+
+	/**
+	 * Stops the asynchronous wrappers and creates new ones if necessary.
+	 * <p>
+	 * Pending events are delivered before new wrappers are created, so that
+	 * listeners still receive events in order. Must be invoked while holding
+	 * the listeners' monitor.
+	 * </p>
+	 */
+	private void restartAsynchronousListeners() {
+
+		for( AsynchronousDmListener listener : this.asynchronousListeners.values())
+			listener.stop( true, DRAIN_TIMEOUT );
+
+		this.asynchronousListeners.clear();
+		if( this.asynchronousNotifications ) {
+			for( IDmListener listener : this.dmListeners )
+				startAsynchronousListener( listener );
+		}
+
+		this.logger.fine( "DM listeners are now notified " + (this.asynchronousNotifications ? "asynchronously." : "synchronously." ));
+	}
+
+
+	/**
+	 * Creates and starts the asynchronous wrapper of a listener.
+	 * <p>
+	 * Must be invoked while holding the listeners' monitor.
+	 * </p>
+	 *
+	 * @param listener a listener
+	 */
+	private void startAsynchronousListener( IDmListener listener ) {
+
+		int capacity = AsynchronousDmListener.DEFAULT_CAPACITY;
+		OverflowPolicy policy = AsynchronousDmListener.DEFAULT_POLICY;
+		String id = listener.getId();
+
+		if( ! Utils.isEmptyOrWhitespaces( this.queuesConfiguration )) {
+			for( String s : Utils.splitNicely( this.queuesConfiguration, "," )) {
+
+				List<String> parts = Utils.splitNicely( s, ":" );
+				if( parts.size() != 3 || ! parts.get( 0 ).equals( id ))
+					continue;
+
+				OverflowPolicy p = OverflowPolicy.which( parts.get( 2 ));
+				int c = 0;
+				try {
+					c = Integer.parseInt( parts.get( 1 ));
+
+				} catch( NumberFormatException e ) {
+					// nothing, c remains invalid
+				}
+
+				if( p != null && c > 0 ) {
+					capacity = c;
+					policy = p;
+
+				} else {
+					this.logger.warning( "Invalid queue configuration for the DM listener '" + id + "': " + s + ". Default values are used." );
+				}
+			}
+		}
+
+		AsynchronousDmListener asynchronousListener = new AsynchronousDmListener( listener, capacity, policy );
+		this.asynchronousListeners.put( listener, asynchronousListener );
+		asynchronousListener.start();
+	}
+
+
+	/**
+	 * Schedules the delivery of pending changes at the end of the coalescing window.
+	 * <p>
+	 * Must be invoked while holding the listeners' monitor.
+	 * </p>
+	 */
+	private void scheduleFlush() {
+
+		this.coalescingExecutor.schedule( new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flushPendingChanges();
+
+				} catch( Exception e ) {
+					NotificationMngrImpl.this.logger.severe( "Pending changes could not be delivered to DM listeners. " + e.getMessage());
+					Utils.logException( NotificationMngrImpl.this.logger, e );
+				}
+			}
+
+		}, this.coalescingWindow, TimeUnit.MILLISECONDS );
+	}
+
+
+	private List<AsynchronousDmListener> copyAsynchronousListeners() {
+		synchronized( this.dmListeners ) {
+			return new ArrayList<>( this.asynchronousListeners.values());
 		}
 	}
 
@@ -189,4 +532,19 @@ public class NotificationMngrImpl implements INotificationMngr {
 			this.logger.info( sb.toString());
 		}
 	}
+
+
+	/**
+	 * A change on an instance that was not delivered yet.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class PendingChange {
+		final Instance instance;
+		final Application application;
+
+		PendingChange( Instance instance, Application application ) {
+			this.instance = instance;
+			this.application = application;
+		}
+	}
 }
@@ -40,7 +40,7 @@ import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.utils.Utils;
 import net.roboconf.dm.internal.api.IRandomMngr;
 import net.roboconf.dm.internal.api.impl.beans.InstanceContext;
-import net.roboconf.dm.internal.utils.ConfigurationUtils;
+import net.roboconf.dm.internal.utils.InstancesPersister;
 import net.roboconf.dm.management.api.IPreferencesMngr;
 
 /**
@@ -58,6 +58,7 @@ public class RandomMngrImpl implements IRandomMngr {
 
 	private final Logger logger = Logger.getLogger( getClass().getName());
 	private IPreferencesMngr preferencesMngr;
+	private InstancesPersister instancesPersister = new InstancesPersister();
 
 
 	/**
@@ -68,6 +69,14 @@ public class RandomMngrImpl implements IRandomMngr {
 	}
 
 
+	/**
+	 * @param instancesPersister the instancesPersister to set
+	 */
+	public void setInstancesPersister( InstancesPersister instancesPersister ) {
+		this.instancesPersister = instancesPersister;
+	}
+
+
 	@Override
 	public synchronized void generateRandomValues( Application application, Instance instance ) {
 
@@ -86,9 +95,6 @@ public class RandomMngrImpl implements IRandomMngr {
 					generateRandomPort( application, instance, var.getName());
 			}
 		}
-
-		// Save the updated model
-		ConfigurationUtils.saveInstances( application );
 	}
 
 
@@ -177,7 +183,7 @@ public class RandomMngrImpl implements IRandomMngr {
 
 			// Save the updated model?
 			if( ! variablesToRegenerate.isEmpty())
-				ConfigurationUtils.saveInstances( application );
+				this.instancesPersister.instanceChanged( application, instance );
 		}
 	}
 
@@ -324,7 +324,7 @@ public class TargetsMngrImpl implements ITargetsMngr {
 		keys.add( new InstanceContext( app.getTemplate(), (String) null ));
 
 		// We can search defaults only for the existing instances
-		for( Instance scopedInstance : InstanceHelpers.findAllScopedInstances( app ))
+		for( Instance scopedInstance : app.findScopedInstances())
 			keys.add( new InstanceContext( app.getTemplate(), scopedInstance ));
 
 		// Copy mappings for the components
@@ -373,7 +373,7 @@ public class TargetsMngrImpl implements ITargetsMngr {
 		}
 
 		// Once we have the target IDs, update the list of entries to remove
-		for( Instance scopedInstance : InstanceHelpers.findAllScopedInstances( app )) {
+		for( Instance scopedInstance : app.findScopedInstances()) {
 			InstanceContext ctx = new InstanceContext( app, scopedInstance );
 			toClean.add( ctx );
 		}
@@ -488,6 +488,26 @@ public class TargetsMngrImpl implements ITargetsMngr {
 	}
 
 
+	@Override
+	public Map<String,File> findScriptFilesForAgent( AbstractApplication app, Instance scopedInstance ) {
+
+		Map<String,File> result = new HashMap<> ();
+		String targetId = findTargetId( app, InstanceHelpers.computeInstancePath( scopedInstance ));
+		File targetDir = targetId == null ? null : new File( findTargetDirectory( targetId ), Constants.PROJECT_SUB_DIR_SCRIPTS );
+		if( targetDir != null && targetDir.isDirectory()) {
+
+			// Same exclusions than for findScriptResourcesForAgent
+			String exclusionPattern = "(?i).*" + Pattern.quote( Constants.LOCAL_RESOURCE_PREFIX ) + ".*";
+			for( File file : Utils.listAllFiles( targetDir, false )) {
+				if( ! file.getName().matches( exclusionPattern ))
+					result.put( Utils.computeFileRelativeLocation( targetDir, file ), file );
+			}
+		}
+
+		return result;
+	}
+
+
 	@Override
 	public Map<String,byte[]> findScriptResourcesForAgent( AbstractApplication app, Instance scopedInstance ) throws IOException {
 
@@ -56,6 +56,6 @@ class RenameCommandExecution extends AbstractCommandExecution {
 		if( scopedInstance.getStatus() != InstanceStatus.NOT_DEPLOYED )
 			throw new CommandException( "Only instances that are not yet managed by an agent can be renamed." );
 
-		instance.setName( this.instr.getNewInstanceName());
+		InstanceHelpers.renameInstance( this.instr.getApplication(), instance, this.instr.getNewInstanceName());
 	}
 }
@@ -38,19 +38,24 @@ import net.roboconf.core.model.helpers.ImportHelpers;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.utils.DockerAndScriptUtils;
 import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.internal.api.IBlobsMngr;
 import net.roboconf.dm.internal.utils.DmUtils;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.Manager;
 import net.roboconf.messaging.api.AbstractMessageProcessor;
 import net.roboconf.messaging.api.business.IDmClient;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.AbstractMsgNotif;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifAutonomic;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifHeartbeat;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceChanged;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMachineDown;
-import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSetScopedInstance;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMissingBlobs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendBlobs;
 import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
 
 /**
@@ -70,6 +75,7 @@ public class DmMessageProcessor extends AbstractMessageProcessor<IDmClient> {
 
 	// Set as a class attribute so that it can be replaced for unit tests.
 	String tmpDir = System.getProperty( "java.io.tmpdir" );
+	final LogChunkWriter logChunkWriter = new LogChunkWriter();
 
 
 	/**
@@ -77,11 +83,66 @@ public class DmMessageProcessor extends AbstractMessageProcessor<IDmClient> {
 	 * @param manager
 	 */
 	public DmMessageProcessor( Manager manager ) {
-		super( "Roboconf DM - Message Processor" );
+		this( manager, new RoboconfMessageQueue());
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param manager
+	 * @param messageQueue the queue that stores the messages to process
+	 */
+	public DmMessageProcessor( Manager manager, RoboconfMessageQueue messageQueue ) {
+		super( "Roboconf DM - Message Processor", messageQueue );
 		this.manager = manager;
 	}
 
 
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.messaging.api.AbstractMessageProcessor
+	 * #stopProcessor()
+	 */
+	@Override
+	public void stopProcessor() {
+		super.stopProcessor();
+
+		// Let the pending chunks of log files be written
+		try {
+			this.logChunkWriter.stop( 5000 );
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			Utils.logException( this.logger, e );
+		}
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.messaging.api.AbstractMessageProcessor
+	 * #findPartitionKey(net.roboconf.messaging.api.messages.Message)
+	 */
+	@Override
+	protected String findPartitionKey( Message message ) {
+
+		// Messages are partitioned by application.
+		// Handlers update state shared by all the agents of an application (awaiting messages,
+		// imports, root instances...) and this state is not thread-safe. So, only messages
+		// from different applications can be processed in parallel.
+		String result = null;
+		if( message instanceof AbstractMsgNotif )
+			result = ((AbstractMsgNotif) message).getApplicationName();
+		else if( message instanceof MsgNotifInstanceChanged )
+			result = ((MsgNotifInstanceChanged) message).getApplicationName();
+		else if( message instanceof MsgNotifInstanceRemoved )
+			result = ((MsgNotifInstanceRemoved) message).getApplicationName();
+
+		// Other messages (e.g. echo messages) are processed by the main thread
+		return result;
+	}
+
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.roboconf.messaging.api.business.AbstractMessageProcessor
@@ -111,6 +172,12 @@ public class DmMessageProcessor extends AbstractMessageProcessor<IDmClient> {
 		else if( message instanceof MsgNotifLogs )
 			processMsgNotifLogs((MsgNotifLogs) message );
 
+		else if( message instanceof MsgNotifLogChunk )
+			processMsgNotifLogChunk((MsgNotifLogChunk) message );
+
+		else if( message instanceof MsgNotifMissingBlobs )
+			processMsgNotifMissingBlobs((MsgNotifMissingBlobs) message );
+
 		else
 			this.logger.warning( "The DM got an undetermined message to process: " + message.getClass().getName());
 	}
@@ -118,14 +185,8 @@ public class DmMessageProcessor extends AbstractMessageProcessor<IDmClient> {
 
 	private void processMsgNotifLogs( MsgNotifLogs message ) {
 
-		StringBuilder path = new StringBuilder();
-		path.append( "roboconf-logs/" );
-		path.append( message.getApplicationName());
-		path.append( "/" );
-		path.append( DockerAndScriptUtils.cleanInstancePath( message.getScopedInstancePath()));
-
 		// Dump these messages in the temporary directory...
-		File dumpDir = new File( this.tmpDir, path.toString());
+		File dumpDir = findLogsDirectory( message );
 		try {
 			Utils.createDirectory( dumpDir );
 			for( Map.Entry<String,byte[]> entry : message.getLogFiles().entrySet()) {
@@ -149,6 +210,56 @@ public class DmMessageProcessor extends AbstractMessageProcessor<IDmClient> {
 	}
 
 
+	private void processMsgNotifLogChunk( MsgNotifLogChunk message ) {
+		// Written by another thread, so that heartbeats are not delayed
+		this.logChunkWriter.write( findLogsDirectory( message ), message );
+	}
+
+
+	private File findLogsDirectory( AbstractMsgNotif message ) {
+
+		StringBuilder path = new StringBuilder();
+		path.append( "roboconf-logs/" );
+		path.append( message.getApplicationName());
+		path.append( "/" );
+		path.append( DockerAndScriptUtils.cleanInstancePath( message.getScopedInstancePath()));
+
+		return new File( this.tmpDir, path.toString());
+	}
+
+
+	private void processMsgNotifMissingBlobs( MsgNotifMissingBlobs message ) {
+
+		String scopedInstancePath = message.getScopedInstancePath();
+		ManagedApplication ma = this.manager.applicationMngr().findManagedApplicationByName( message.getApplicationName());
+		Application app = ma == null ? null : ma.getApplication();
+		Instance scopedInstance = InstanceHelpers.findInstanceByPath( app, scopedInstancePath );
+		IBlobsMngr blobsMngr = this.manager.blobsMngr();
+
+		// If 'app' is null, then 'instance' is also null.
+		if( scopedInstance == null || blobsMngr == null ) {
+			StringBuilder sb = new StringBuilder();
+			sb.append( "Missing blobs were requested by an unknown agent: " );
+			sb.append( scopedInstancePath );
+			sb.append( " (app = " );
+			sb.append( app );
+			sb.append( ")." );
+			this.logger.warning( sb.toString());
+
+		} else {
+			this.logger.fine( "Agent " + scopedInstancePath + " requested " + message.getDigests().size() + " missing blob(s)." );
+			Map<String,byte[]> blobs = blobsMngr.findBlobs( app, scopedInstance, message.getDigests());
+			try {
+				this.messagingClient.sendMessageToAgent( app, scopedInstance, new MsgCmdSendBlobs( blobs ));
+
+			} catch( IOException e ) {
+				this.logger.warning( "Blobs could not be sent to agent " + scopedInstancePath + ". " + e.getMessage());
+				Utils.logException( this.logger, e );
+			}
+		}
+	}
+
+
 	private void processMsgNotifMachineDown( MsgNotifMachineDown message ) {
 
 		String scopedInstancePath = message.getScopedInstancePath();
@@ -226,13 +337,13 @@ public class DmMessageProcessor extends AbstractMessageProcessor<IDmClient> {
 				// A heart beat may also say whether the agent received its model.
 				if( message.isModelRequired()) {
 					this.logger.fine( "The DM is sending its model to agent " + scopedInstancePath + "." );
-					Map<String,byte[]> scriptResources = this.manager.targetsMngr().findScriptResourcesForAgent( ma.getApplication(), scopedInstance );
-					Message msg = new MsgCmdSetScopedInstance(
-							scopedInstance,
-							app.getExternalExports(),
-							app.getApplicationBindings(),
-							scriptResources);
 
+					// The agent (re)started: it may not have any blob
+					IBlobsMngr blobsMngr = this.manager.blobsMngr();
+					if( blobsMngr != null )
+						blobsMngr.forgetAgent( app, scopedInstance );
+
+					Message msg = DmUtils.buildSetScopedInstanceMessage( ma, scopedInstance, this.manager.targetsMngr(), blobsMngr );
 					this.messagingClient.sendMessageToAgent( ma.getApplication(), scopedInstance, msg );
 				}
 
@@ -315,7 +426,7 @@ public class DmMessageProcessor extends AbstractMessageProcessor<IDmClient> {
 			if( InstanceHelpers.isTarget( instance ))
 				this.logger.warning( "Anormal behavior. A 'REMOVE' notification was received for a scoped instance: " + instancePath + "." );
 			else
-				instance.getParent().getChildren().remove( instance );
+				InstanceHelpers.removeInstance( app, instance );
 
 			this.logger.info( "Instance " + instancePath + " was removed from the model." );
 		}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.environment.messaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.codec.CompressingCodec;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk;
+
+/**
+ * A class that writes chunks of log files on the disk.
+ * <p>
+ * Chunks are written by a separate thread, so that gathering logs from many agents
+ * does not delay the processing of other messages (e.g. heartbeats). The number of chunks
+ * waiting to be written is bounded. When this limit is reached, the caller waits for room,
+ * which slows down the reception of log chunks instead of filling the memory.
+ * </p>
+ * <p>
+ * A single thread writes the chunks, in the order they were received. Otherwise,
+ * the first chunk of a file could truncate chunks that were already written.
+ * </p>
+ * <p>
+ * Every chunk is written at its offset. The first chunk of a file (offset 0) truncates it.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class LogChunkWriter {
+
+	/**
+	 * The maximum number of chunks waiting to be written.
+	 */
+	public static final int MAX_PENDING_CHUNKS = 64;
+
+	/**
+	 * The maximum size (in bytes) of a decompressed chunk.
+	 */
+	public static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private ThreadPoolExecutor executor;
+
+
+	/**
+	 * Schedules the writing of a chunk.
+	 * <p>
+	 * This method blocks while {@value #MAX_PENDING_CHUNKS} chunks are waiting to be written.
+	 * </p>
+	 *
+	 * @param dumpDirectory the directory where the log files of the agent are stored
+	 * @param chunk a chunk
+	 */
+	public synchronized void write( final File dumpDirectory, final MsgNotifLogChunk chunk ) {
+
+		getExecutor().execute( new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeChunk( dumpDirectory, chunk );
+
+				} catch( IOException e ) {
+					StringBuilder sb = new StringBuilder();
+					sb.append( "A chunk of " );
+					sb.append( chunk.getFileName());
+					sb.append( " could not be written for agent " );
+					sb.append( chunk.getScopedInstancePath());
+					sb.append( " @ " );
+					sb.append( chunk.getApplicationName());
+					sb.append( ". " );
+					if( ! Utils.isEmptyOrWhitespaces( e.getMessage()))
+						sb.append( e.getMessage());
+
+					LogChunkWriter.this.logger.severe( sb.toString());
+					Utils.logException( LogChunkWriter.this.logger, e );
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Stops the writer, after the pending chunks have been written.
+	 * <p>
+	 * The writer can still be used after it was stopped.
+	 * </p>
+	 *
+	 * @param timeout the maximum time to wait for pending chunks (in milliseconds)
+	 * @throws InterruptedException if the current thread was interrupted while waiting
+	 */
+	public void stop( long timeout ) throws InterruptedException {
+
+		ThreadPoolExecutor executorToStop;
+		synchronized( this ) {
+			executorToStop = this.executor;
+			this.executor = null;
+		}
+
+		if( executorToStop != null ) {
+			executorToStop.shutdown();
+			if( ! executorToStop.awaitTermination( timeout, TimeUnit.MILLISECONDS ))
+				this.logger.warning( "Some chunks of log files could not be written before the timeout expired." );
+		}
+	}
+
+
+	/**
+	 * Writes a chunk on the disk.
+	 * @param dumpDirectory the directory where the log files of the agent are stored
+	 * @param chunk a chunk
+	 * @throws IOException if something went wrong
+	 */
+	static void writeChunk( File dumpDirectory, MsgNotifLogChunk chunk ) throws IOException {
+
+		byte[] content = chunk.isCompressed() ? CompressingCodec.decompress( chunk.getContent(), MAX_CHUNK_SIZE ) : chunk.getContent();
+		Utils.createDirectory( dumpDirectory );
+
+		// Do not let agents write elsewhere
+		File logFile = new File( dumpDirectory, new File( chunk.getFileName()).getName());
+		try( RandomAccessFile raf = new RandomAccessFile( logFile, "rw" )) {
+			if( chunk.getOffset() == 0 )
+				raf.setLength( 0 );
+
+			raf.seek( chunk.getOffset());
+			raf.write( content );
+		}
+	}
+
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+
+		// Created on demand and released when idle: logs are rarely gathered
+		if( this.executor == null ) {
+			this.executor = new ThreadPoolExecutor(
+					1, 1, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>( MAX_PENDING_CHUNKS ),
+					new WaitPolicy());
+
+			this.executor.allowCoreThreadTimeOut( true );
+		}
+
+		return this.executor;
+	}
+
+
+	/**
+	 * A policy that waits for room in the queue of the executor.
+	 * <p>
+	 * The queue is full, which means the writing thread is alive.
+	 * </p>
+	 */
+	static class WaitPolicy implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution( Runnable r, ThreadPoolExecutor executor ) {
+
+			if( executor.isShutdown())
+				throw new RejectedExecutionException( "The writer of log chunks was stopped." );
+
+			try {
+				executor.getQueue().put( r );
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException( "Interrupted while waiting to write a log chunk.", e );
+			}
+		}
+	}
+}
@@ -28,9 +28,11 @@ package net.roboconf.dm.internal.tasks;
 import java.util.TimerTask;
 import java.util.logging.Logger;
 
+import net.roboconf.core.utils.Utils;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.api.IApplicationMngr;
 import net.roboconf.dm.management.api.INotificationMngr;
+import net.roboconf.dm.management.api.IPreferencesMngr;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -40,16 +42,19 @@ public class CheckerForHeartbeatsTask extends TimerTask {
 	private final Logger logger = Logger.getLogger( getClass().getName());
 	private final IApplicationMngr appManager;
 	private final INotificationMngr notificationMngr;
+	private final IPreferencesMngr preferencesMngr;
 
 
 	/**
 	 * Constructor.
 	 * @param appManager
 	 * @param notificationMngr
+	 * @param preferencesMngr
 	 */
-	public CheckerForHeartbeatsTask( IApplicationMngr appManager, INotificationMngr notificationMngr ) {
+	public CheckerForHeartbeatsTask( IApplicationMngr appManager, INotificationMngr notificationMngr, IPreferencesMngr preferencesMngr ) {
 		this.appManager = appManager;
 		this.notificationMngr = notificationMngr;
+		this.preferencesMngr = preferencesMngr;
 	}
 
 
@@ -57,8 +62,31 @@ public class CheckerForHeartbeatsTask extends TimerTask {
 	public void run() {
 
 		this.logger.finest( "The task that checks heart beats runs." );
+		String defaultTolerance = this.preferencesMngr.get( IPreferencesMngr.HEARTBEAT_TOLERANCE, "" );
 		for( ManagedApplication ma : this.appManager.getManagedApplications()) {
+			String tolerance = this.preferencesMngr.get( IPreferencesMngr.HEARTBEAT_TOLERANCE + "." + ma.getName(), defaultTolerance );
+			ma.setHeartbeatTolerance( parseTolerance( tolerance ));
 			ma.checkStates( this.notificationMngr );
 		}
 	}
+
+
+	/**
+	 * @param value a string value (can be null)
+	 * @return the tolerance for heart beats
+	 */
+	private int parseTolerance( String value ) {
+
+		int result = ManagedApplication.DEFAULT_HEARTBEAT_TOLERANCE;
+		if( ! Utils.isEmptyOrWhitespaces( value )) {
+			try {
+				result = Integer.parseInt( value.trim());
+
+			} catch( NumberFormatException e ) {
+				this.logger.warning( "Invalid tolerance for heart beats: " + value + ". The default value is used." );
+			}
+		}
+
+		return result;
+	}
 }
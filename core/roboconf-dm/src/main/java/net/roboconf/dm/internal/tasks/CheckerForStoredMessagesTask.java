@@ -29,7 +29,6 @@ import java.util.TimerTask;
 import java.util.logging.Logger;
 
 import net.roboconf.core.model.beans.Instance;
-import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.api.IApplicationMngr;
 import net.roboconf.dm.management.api.IMessagingMngr;
@@ -60,7 +59,7 @@ public class CheckerForStoredMessagesTask extends TimerTask {
 
 		this.logger.finest( "The task that checks stored messages runs." );
 		for( ManagedApplication ma : this.appManager.getManagedApplications()) {
-			for( Instance scopedInstance : InstanceHelpers.findAllScopedInstances( ma.getApplication()))
+			for( Instance scopedInstance : ma.getApplication().findScopedInstances())
 				this.messagingMngr.sendStoredMessages( ma, scopedInstance );
 		}
 	}
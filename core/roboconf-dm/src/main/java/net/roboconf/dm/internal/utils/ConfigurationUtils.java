@@ -109,15 +109,17 @@ public final class ConfigurationUtils {
 
 	/**
 	 * Saves the instances into a file.
+	 * <p>
+	 * All the instances are written in a new snapshot and the journal is deleted
+	 * (see {@link InstancesJournalUtils}). To persist frequent changes, prefer {@link InstancesPersister}.
+	 * </p>
+	 *
 	 * @param app the application (not null)
-	 * @param configurationDirectory the configuration directory
 	 */
 	public static void saveInstances( Application app ) {
 
-		File targetFile = new File( app.getDirectory(), Constants.PROJECT_DIR_INSTANCES + "/" + INSTANCES_FILE );
 		try {
-			Utils.createDirectory( targetFile.getParentFile());
-			RuntimeModelIo.writeInstances( targetFile, app.getRootInstances());
+			InstancesJournalUtils.writeSnapshot( app, true );
 
 		} catch( IOException e ) {
 			Logger logger = Logger.getLogger( ConfigurationUtils.class.getName());
@@ -129,17 +131,22 @@ public final class ConfigurationUtils {
 
 	/**
 	 * Restores instances and set them in the application.
+	 * <p>
+	 * The snapshot is loaded and the journal, if any, is replayed on it.
+	 * </p>
+	 *
 	 * @param ma the application
-	 * @param configurationDirectory the configuration directory
 	 */
 	public static InstancesLoadResult restoreInstances( ManagedApplication ma ) {
 
 		File sourceFile = new File( ma.getDirectory(), Constants.PROJECT_DIR_INSTANCES + "/" + INSTANCES_FILE );
 		Graphs graphs = ma.getApplication().getTemplate().getGraphs();
 		InstancesLoadResult result;
-		if( sourceFile.exists())
+		if( sourceFile.exists()) {
 			result = RuntimeModelIo.loadInstances( sourceFile, sourceFile.getParentFile(), graphs, ma.getApplication().getName());
-		else
+			InstancesJournalUtils.replayJournal( sourceFile.getParentFile(), graphs, ma.getApplication().getName(), result );
+
+		} else
 			result = new InstancesLoadResult();
 
 		return result;
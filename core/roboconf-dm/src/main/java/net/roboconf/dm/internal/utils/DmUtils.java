@@ -25,9 +25,12 @@
 
 package net.roboconf.dm.internal.utils;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import net.roboconf.core.model.beans.Instance;
@@ -35,9 +38,12 @@ import net.roboconf.core.model.beans.Instance.InstanceStatus;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.EventType;
 import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.internal.api.IBlobsMngr;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.api.IInstancesMngr;
 import net.roboconf.dm.management.api.INotificationMngr;
+import net.roboconf.dm.management.api.ITargetsMngr;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSetScopedInstance;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -107,4 +113,45 @@ public final class DmUtils {
 			}
 		}
 	}
+
+
+	/**
+	 * Builds the message that sends its model to an agent.
+	 * <p>
+	 * If a blobs manager is available, the message contains a manifest of the
+	 * scripts and only the scripts the agent does not have yet.
+	 * </p>
+	 *
+	 * @param ma the managed application
+	 * @param scopedInstance the scoped instance associated with the agent
+	 * @param targetsMngr the targets manager (not null)
+	 * @param blobsMngr the blobs manager (can be null)
+	 * @return a non-null message
+	 * @throws IOException if scripts could not be read
+	 */
+	public static MsgCmdSetScopedInstance buildSetScopedInstanceMessage(
+			ManagedApplication ma,
+			Instance scopedInstance,
+			ITargetsMngr targetsMngr,
+			IBlobsMngr blobsMngr )
+	throws IOException {
+
+		Map<String,byte[]> scriptResources;
+		Map<String,String> scriptDigests = null;
+		if( blobsMngr == null ) {
+			scriptResources = targetsMngr.findScriptResourcesForAgent( ma.getApplication(), scopedInstance );
+
+		} else {
+			Map<String,File> files = targetsMngr.findScriptFilesForAgent( ma.getApplication(), scopedInstance );
+			scriptDigests = blobsMngr.computeDigests( files );
+			scriptResources = blobsMngr.findResourcesToSend( ma.getApplication(), scopedInstance, files, scriptDigests );
+		}
+
+		return new MsgCmdSetScopedInstance(
+				scopedInstance,
+				ma.getApplication().getExternalExports(),
+				ma.getApplication().getApplicationBindings(),
+				scriptResources,
+				scriptDigests );
+	}
 }
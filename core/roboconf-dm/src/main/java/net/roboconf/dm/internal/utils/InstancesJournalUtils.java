@@ -0,0 +1,458 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import net.roboconf.core.Constants;
+import net.roboconf.core.dsl.ParsingModelIo;
+import net.roboconf.core.dsl.converters.FromInstances;
+import net.roboconf.core.dsl.parsing.FileDefinition;
+import net.roboconf.core.model.RuntimeModelIo;
+import net.roboconf.core.model.RuntimeModelIo.InstancesLoadResult;
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Graphs;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.utils.Utils;
+
+/**
+ * Utilities to persist instances as a snapshot completed by an append-only journal.
+ * <p>
+ * The snapshot is the usual instances file ({@link ConfigurationUtils#INSTANCES_FILE}).
+ * Its first line is a comment that contains a generation ID. The journal is stored next to it
+ * and starts with the generation of the snapshot it completes. A journal whose generation differs
+ * from the snapshot's one is obsolete and ignored. This happens when the DM stopped between the writing
+ * of a new snapshot and the deletion of the previous journal.
+ * </p>
+ * <p>
+ * A journal record contains either the definition of a root instance (with all its children),
+ * or the name of a root instance that was removed. Restoring instances consists in loading the
+ * snapshot and applying the journal records, in order.
+ * </p>
+ * <p>
+ * Every record starts with a header line that contains its kind, the length (in bytes) and the CRC32
+ * of its payload. The payload is followed by a line break. An incomplete or corrupted record (e.g. the DM
+ * was killed while writing it) ends the replay, and the journal is truncated after the last valid record.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class InstancesJournalUtils {
+
+	public static final String JOURNAL_FILE = ConfigurationUtils.INSTANCES_FILE + ".journal";
+
+	static final String SNAPSHOT_GENERATION = "# generation: ";
+	static final String JOURNAL_GENERATION = "@generation ";
+	static final String PUT = "@put ";
+	static final String DELETE = "@delete ";
+
+	private static final String REPLAY_FILE = ".replay.instances";
+
+
+	/**
+	 * Private constructor.
+	 */
+	private InstancesJournalUtils() {
+		// nothing
+	}
+
+
+	/**
+	 * @param app an application
+	 * @return a non-null file that points to the snapshot of the instances
+	 */
+	public static File findSnapshotFile( Application app ) {
+		return new File( app.getDirectory(), Constants.PROJECT_DIR_INSTANCES + "/" + ConfigurationUtils.INSTANCES_FILE );
+	}
+
+
+	/**
+	 * @param app an application
+	 * @return a non-null file that points to the journal of the instances
+	 */
+	public static File findJournalFile( Application app ) {
+		return new File( app.getDirectory(), Constants.PROJECT_DIR_INSTANCES + "/" + JOURNAL_FILE );
+	}
+
+
+	/**
+	 * Writes all the instances of an application into a new snapshot and deletes the journal.
+	 * <p>
+	 * The snapshot is first written into a temporary file, which then replaces
+	 * the previous snapshot.
+	 * </p>
+	 *
+	 * @param app an application
+	 * @param fsync true to force the snapshot to be written on the disk before replacing the previous one
+	 * @return the generation of the new snapshot
+	 * @throws IOException if the snapshot could not be written
+	 */
+	public static String writeSnapshot( Application app, boolean fsync ) throws IOException {
+
+		File snapshotFile = findSnapshotFile( app );
+		Utils.createDirectory( snapshotFile.getParentFile());
+
+		String generation = UUID.randomUUID().toString();
+		StringBuilder sb = new StringBuilder();
+		sb.append( SNAPSHOT_GENERATION );
+		sb.append( generation );
+		sb.append( "\n\n" );
+		sb.append( writeInstances( app.getRootInstances()));
+
+		File tempFile = new File( snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp" );
+		write( tempFile, sb.toString(), false, fsync );
+		try {
+			Files.move( tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+
+		} catch( AtomicMoveNotSupportedException e ) {
+			Files.move( tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+		}
+
+		// The previous journal is now obsolete
+		Utils.deleteFilesRecursively( findJournalFile( app ));
+		return generation;
+	}
+
+
+	/**
+	 * Appends records to the journal of an application.
+	 * @param app an application
+	 * @param generation the generation of the snapshot the journal must complete, as returned by {@link #writeSnapshot(Application, boolean)}
+	 * @param updatedRootInstances the root instances to write (with their children)
+	 * @param removedRootInstanceNames the names of the root instances that were removed
+	 * @param fsync true to force the records to be written on the disk
+	 * @return the number of written bytes, or -1 if there is no snapshot to complete (null generation)
+	 * @throws IOException if the journal could not be written
+	 */
+	public static long appendRecords(
+			Application app,
+			String generation,
+			Collection<Instance> updatedRootInstances,
+			Collection<String> removedRootInstanceNames,
+			boolean fsync )
+	throws IOException {
+
+		if( updatedRootInstances.isEmpty() && removedRootInstanceNames.isEmpty())
+			return 0;
+
+		if( generation == null )
+			return -1;
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		File journalFile = findJournalFile( app );
+		if( ! journalFile.exists()) {
+			byte[] header = ( JOURNAL_GENERATION + generation + "\n" ).getBytes( StandardCharsets.UTF_8 );
+			out.write( header, 0, header.length );
+		}
+
+		for( String name : removedRootInstanceNames )
+			writeRecord( out, DELETE, name );
+
+		for( Instance rootInstance : updatedRootInstances ) {
+			String s = writeInstances( Collections.singleton( rootInstance ));
+			writeRecord( out, PUT, rootInstance.getName() + "\n" + s );
+		}
+
+		byte[] bytes = out.toByteArray();
+		write( journalFile, bytes, true, fsync );
+		return bytes.length;
+	}
+
+
+	/**
+	 * Applies the journal records on instances loaded from a snapshot.
+	 * @param instancesDirectory the directory that contains the snapshot and the journal
+	 * @param graphs the graph(s) to use to resolve instances
+	 * @param applicationName the application name
+	 * @param result the instances loaded from the snapshot, updated by this method
+	 */
+	public static void replayJournal( File instancesDirectory, Graphs graphs, String applicationName, InstancesLoadResult result ) {
+
+		File journalFile = new File( instancesDirectory, JOURNAL_FILE );
+		if( ! journalFile.exists())
+			return;
+
+		Logger logger = Logger.getLogger( InstancesJournalUtils.class.getName());
+		String generation = readGeneration( new File( instancesDirectory, ConfigurationUtils.INSTANCES_FILE ));
+		Map<String,String> records = readRecords( journalFile, generation, logger );
+
+		Map<String,Instance> nameToRootInstance = new LinkedHashMap<> ();
+		for( Instance rootInstance : result.getRootInstances())
+			nameToRootInstance.put( rootInstance.getName(), rootInstance );
+
+		File replayFile = new File( instancesDirectory, REPLAY_FILE );
+		try {
+			for( Map.Entry<String,String> entry : records.entrySet()) {
+				nameToRootInstance.remove( entry.getKey());
+				if( entry.getValue() == null )
+					continue;
+
+				Utils.writeStringInto( entry.getValue(), replayFile );
+				InstancesLoadResult ilr = RuntimeModelIo.loadInstances( replayFile, instancesDirectory, graphs, applicationName );
+				result.getLoadErrors().addAll( ilr.getLoadErrors());
+				for( Instance rootInstance : ilr.getRootInstances())
+					nameToRootInstance.put( rootInstance.getName(), rootInstance );
+			}
+
+		} catch( IOException e ) {
+			logger.severe( "The journal of instances could not be entirely replayed. " + e.getMessage());
+			Utils.logException( logger, e );
+
+		} finally {
+			Utils.deleteFilesRecursivelyAndQuietly( replayFile );
+		}
+
+		result.getRootInstances().clear();
+		result.getRootInstances().addAll( nameToRootInstance.values());
+	}
+
+
+	/**
+	 * Reads the generation of a snapshot.
+	 * @param snapshotFile the snapshot file
+	 * @return the generation, or null if it was not found
+	 */
+	static String readGeneration( File snapshotFile ) {
+
+		String result = null;
+		if( snapshotFile.exists()) {
+			try( BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( snapshotFile ), StandardCharsets.UTF_8 ))) {
+				String line = reader.readLine();
+				if( line != null && line.startsWith( SNAPSHOT_GENERATION ))
+					result = line.substring( SNAPSHOT_GENERATION.length()).trim();
+
+			} catch( IOException e ) {
+				Logger logger = Logger.getLogger( InstancesJournalUtils.class.getName());
+				Utils.logException( logger, e );
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Reads the records of a journal.
+	 * <p>
+	 * Only the last record of every root instance is kept. If the journal ends with an incomplete
+	 * or corrupted record, it is truncated after the last valid one, so that new records can be appended.
+	 * </p>
+	 *
+	 * @param journalFile the journal file
+	 * @param generation the generation of the snapshot
+	 * @param logger a logger
+	 * @return a non-null map (key = root instance name, value = definition or null if it was removed)
+	 */
+	static Map<String,String> readRecords( File journalFile, String generation, Logger logger ) {
+
+		Map<String,String> result = new LinkedHashMap<> ();
+		try {
+			byte[] bytes = Files.readAllBytes( journalFile.toPath());
+			int end = indexOfLineBreak( bytes, 0 );
+			if( end < 0 || ! new String( bytes, 0, end, StandardCharsets.UTF_8 ).equals( JOURNAL_GENERATION + generation )) {
+				logger.warning( "The journal of instances is obsolete and will be ignored. File: " + journalFile );
+				return result;
+			}
+
+			int validLength = end + 1;
+			Record record;
+			while(( record = readRecord( bytes, validLength )) != null ) {
+				validLength = record.end;
+
+				if( DELETE.equals( record.kind )) {
+					result.remove( record.payload );
+					result.put( record.payload, null );
+
+				} else {
+					int index = record.payload.indexOf( '\n' );
+					String name = record.payload.substring( 0, index );
+					result.remove( name );
+					result.put( name, record.payload.substring( index + 1 ));
+				}
+			}
+
+			if( validLength < bytes.length ) {
+				logger.warning( "The last record of the journal of instances is incomplete or invalid. The journal is truncated after the last valid record. File: " + journalFile );
+				try( RandomAccessFile raf = new RandomAccessFile( journalFile, "rw" )) {
+					raf.setLength( validLength );
+				}
+			}
+
+		} catch( IOException e ) {
+			logger.severe( "The journal of instances could not be entirely read. " + e.getMessage());
+			Utils.logException( logger, e );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Reads a record.
+	 * @param bytes the content of the journal
+	 * @param offset the position of the record
+	 * @return the record, or null if there is no valid record at this position
+	 */
+	static Record readRecord( byte[] bytes, int offset ) {
+
+		int headerEnd = indexOfLineBreak( bytes, offset );
+		if( headerEnd < 0 )
+			return null;
+
+		// Header: kind, payload length and CRC32 of the payload
+		String header = new String( bytes, offset, headerEnd - offset, StandardCharsets.UTF_8 );
+		String kind;
+		if( header.startsWith( PUT ))
+			kind = PUT;
+		else if( header.startsWith( DELETE ))
+			kind = DELETE;
+		else
+			return null;
+
+		String[] parts = header.substring( kind.length()).split( " " );
+		if( parts.length != 2 )
+			return null;
+
+		long length, checksum;
+		try {
+			length = Long.parseLong( parts[ 0 ]);
+			checksum = Long.parseLong( parts[ 1 ], 16 );
+
+		} catch( NumberFormatException e ) {
+			return null;
+		}
+
+		// The payload must be complete and followed by a line break
+		long payloadEnd = headerEnd + 1 + length;
+		if( length < 0
+				|| payloadEnd >= bytes.length
+				|| bytes[(int) payloadEnd ] != '\n' )
+			return null;
+
+		CRC32 crc = new CRC32();
+		crc.update( bytes, headerEnd + 1, (int) length );
+		if( crc.getValue() != checksum )
+			return null;
+
+		String payload = new String( bytes, headerEnd + 1, (int) length, StandardCharsets.UTF_8 );
+		if( PUT.equals( kind ) && payload.indexOf( '\n' ) < 0 )
+			return null;
+
+		return new Record( kind, payload, (int) payloadEnd + 1 );
+	}
+
+
+	/**
+	 * Serializes root instances.
+	 * @param rootInstances root instances
+	 * @return a non-null string
+	 */
+	static String writeInstances( Collection<Instance> rootInstances ) {
+		FileDefinition def = new FromInstances().buildFileDefinition( rootInstances, null, false, true );
+		return ParsingModelIo.writeConfigurationFile( def, false, "\n" );
+	}
+
+
+	private static void writeRecord( ByteArrayOutputStream out, String kind, String payload ) {
+
+		byte[] bytes = payload.getBytes( StandardCharsets.UTF_8 );
+		CRC32 crc = new CRC32();
+		crc.update( bytes, 0, bytes.length );
+
+		byte[] header = ( kind + bytes.length + " " + Long.toHexString( crc.getValue()) + "\n" ).getBytes( StandardCharsets.UTF_8 );
+		out.write( header, 0, header.length );
+		out.write( bytes, 0, bytes.length );
+		out.write( '\n' );
+	}
+
+
+	private static int indexOfLineBreak( byte[] bytes, int offset ) {
+
+		int result = -1;
+		for( int i = offset; i < bytes.length && result < 0; i ++ ) {
+			if( bytes[ i ] == '\n' )
+				result = i;
+		}
+
+		return result;
+	}
+
+
+	private static void write( File file, String content, boolean append, boolean fsync ) throws IOException {
+		write( file, content.getBytes( StandardCharsets.UTF_8 ), append, fsync );
+	}
+
+
+	private static void write( File file, byte[] content, boolean append, boolean fsync ) throws IOException {
+
+		try( FileOutputStream os = new FileOutputStream( file, append )) {
+			os.write( content );
+			if( fsync )
+				os.getFD().sync();
+		}
+	}
+
+
+	/**
+	 * A journal record.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static final class Record {
+		final String kind, payload;
+		final int end;
+
+
+		/**
+		 * Constructor.
+		 * @param kind
+		 * @param payload
+		 * @param end
+		 */
+		Record( String kind, String payload, int end ) {
+			this.kind = kind;
+			this.payload = payload;
+			this.end = end;
+		}
+	}
+}
@@ -0,0 +1,509 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.utils;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.utils.Utils;
+
+/**
+ * A class that persists the instances of applications in the background.
+ * <p>
+ * Changes are not written immediately. They are coalesced and written by a separate thread,
+ * at most {@link #setMaxDelay(long)} milliseconds after they were notified. When only some
+ * root instances were modified, they are appended to the journal of the application. A full
+ * snapshot is written when it was explicitly requested, when the journal becomes bigger than the
+ * snapshot, and the first time an application is persisted. See {@link InstancesJournalUtils}.
+ * </p>
+ * <p>
+ * When the maximum delay is 0, or when the persister is not started, changes are written
+ * synchronously.
+ * </p>
+ * <p>
+ * Once an application has been forgotten, notifications about it are ignored.
+ * This way, late changes cannot recreate the files of a deleted application.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class InstancesPersister {
+
+	/**
+	 * The journal is never compacted while it is smaller than this size (in bytes).
+	 */
+	public static final long MIN_JOURNAL_SIZE = 256 * 1024;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final Map<Application,ApplicationState> states = new IdentityHashMap<> ();
+
+	// Guarded by the states.
+	// Applications are compared by identity: a new application may have the same name.
+	private final List<WeakReference<Application>> forgottenApplications = new ArrayList<> ();
+
+	private volatile long maxDelay;
+	private volatile FsyncPolicy fsyncPolicy = FsyncPolicy.ALWAYS;
+	private ScheduledExecutorService executor;
+
+
+	/**
+	 * When changes must be forced on the disk.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	public enum FsyncPolicy {
+
+		/**
+		 * Journal records and snapshots are forced on the disk.
+		 */
+		ALWAYS,
+
+		/**
+		 * Only snapshots are forced on the disk.
+		 */
+		SNAPSHOTS,
+
+		/**
+		 * The operating system decides when changes are written on the disk.
+		 */
+		NEVER;
+
+
+		/**
+		 * A secured alternative to {@link FsyncPolicy#valueOf(String)}.
+		 * @param s a string (can be null)
+		 * @return the associated policy, or {@link #ALWAYS} if none matched
+		 */
+		public static FsyncPolicy which( String s ) {
+
+			FsyncPolicy result = ALWAYS;
+			for( FsyncPolicy policy : FsyncPolicy.values()) {
+				if( policy.toString().equalsIgnoreCase( s )) {
+					result = policy;
+					break;
+				}
+			}
+
+			return result;
+		}
+	}
+
+
+	/**
+	 * Starts the background thread.
+	 */
+	public synchronized void start() {
+
+		if( this.executor == null ) {
+			this.executor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+				@Override
+				public Thread newThread( Runnable r ) {
+					Thread thread = new Thread( r, "Roboconf - Instances Persister" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			});
+		}
+	}
+
+
+	/**
+	 * Stops the background thread and writes all the pending changes.
+	 * <p>
+	 * The persister can still be used after it was stopped. Changes are then written synchronously.
+	 * </p>
+	 */
+	public void stop() {
+
+		ScheduledExecutorService executorToStop;
+		synchronized( this ) {
+			executorToStop = this.executor;
+			this.executor = null;
+		}
+
+		if( executorToStop != null ) {
+			executorToStop.shutdown();
+			try {
+				if( ! executorToStop.awaitTermination( Math.max( this.maxDelay, 1000 ) * 2, TimeUnit.MILLISECONDS ))
+					this.logger.warning( "The persistence of instances did not stop before the timeout expired." );
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		flush();
+		synchronized( this.states ) {
+			this.states.clear();
+		}
+	}
+
+
+	/**
+	 * Indicates an instance was modified (or added).
+	 * <p>
+	 * The root instance it belongs to will be written in the journal.
+	 * </p>
+	 *
+	 * @param app the application
+	 * @param instance the instance that was modified
+	 */
+	public void instanceChanged( Application app, Instance instance ) {
+
+		Instance rootInstance = InstanceHelpers.findRootInstance( instance );
+		ApplicationState state = findState( app );
+		if( state == null )
+			return;
+
+		synchronized( state ) {
+			state.dirtyRootInstances.add( rootInstance );
+		}
+
+		schedule( state );
+	}
+
+
+	/**
+	 * Indicates all the instances of an application must be saved in a new snapshot.
+	 * @param app the application
+	 */
+	public void instancesChanged( Application app ) {
+
+		ApplicationState state = findState( app );
+		if( state == null )
+			return;
+
+		synchronized( state ) {
+			state.snapshotRequested = true;
+		}
+
+		schedule( state );
+	}
+
+
+	/**
+	 * Writes all the instances of an application in a new snapshot, synchronously.
+	 * <p>
+	 * This is expected to be used for rare and important changes, e.g. when an application is created.
+	 * </p>
+	 *
+	 * @param app the application
+	 */
+	public void writeSnapshot( Application app ) {
+
+		ApplicationState state = findState( app );
+		if( state == null )
+			return;
+
+		synchronized( state ) {
+			state.snapshotRequested = true;
+		}
+
+		flush( state );
+	}
+
+
+	/**
+	 * Forgets an application (e.g. because it was deleted).
+	 * <p>
+	 * Pending changes for this application are dropped.
+	 * </p>
+	 *
+	 * @param app the application
+	 */
+	public void forget( Application app ) {
+
+		ApplicationState state;
+		synchronized( this.states ) {
+			state = this.states.remove( app );
+			if( ! isForgotten( app ))
+				this.forgottenApplications.add( new WeakReference<>( app ));
+		}
+
+		if( state != null ) {
+			synchronized( state.writeLock ) {
+				state.forgotten = true;
+			}
+		}
+	}
+
+
+	/**
+	 * Writes all the pending changes, synchronously.
+	 */
+	public void flush() {
+
+		List<ApplicationState> toFlush;
+		synchronized( this.states ) {
+			toFlush = new ArrayList<>( this.states.values());
+		}
+
+		for( ApplicationState state : toFlush )
+			flush( state );
+	}
+
+
+	/**
+	 * @param maxDelay the maximum delay (in milliseconds) before a change is written (0 to write synchronously)
+	 */
+	public void setMaxDelay( long maxDelay ) {
+		this.maxDelay = maxDelay;
+	}
+
+
+	/**
+	 * @return the fsync policy (never null)
+	 */
+	public FsyncPolicy getFsyncPolicy() {
+		return this.fsyncPolicy;
+	}
+
+
+	/**
+	 * @param fsyncPolicy the fsync policy to set (null to use the default one)
+	 */
+	public void setFsyncPolicy( FsyncPolicy fsyncPolicy ) {
+		this.fsyncPolicy = fsyncPolicy == null ? FsyncPolicy.ALWAYS : fsyncPolicy;
+	}
+
+
+	/**
+	 * Finds (or creates) the state of an application.
+	 * @param app the application
+	 * @return the state, or null if the application was forgotten
+	 */
+	private ApplicationState findState( Application app ) {
+
+		ApplicationState state;
+		synchronized( this.states ) {
+			state = this.states.get( app );
+			if( state == null && ! isForgotten( app )) {
+				state = new ApplicationState( app );
+				this.states.put( app, state );
+			}
+		}
+
+		return state;
+	}
+
+
+	/**
+	 * Determines whether an application was forgotten.
+	 * <p>
+	 * To invoke while holding the lock on the states.
+	 * </p>
+	 *
+	 * @param app the application
+	 * @return true if it was forgotten, false otherwise
+	 */
+	private boolean isForgotten( Application app ) {
+
+		boolean result = false;
+		for( Iterator<WeakReference<Application>> it = this.forgottenApplications.iterator(); it.hasNext(); ) {
+			Application forgottenApp = it.next().get();
+			if( forgottenApp == null )
+				it.remove();
+			else if( forgottenApp == app )
+				result = true;
+		}
+
+		return result;
+	}
+
+
+	private void schedule( final ApplicationState state ) {
+
+		boolean now = true;
+		if( this.maxDelay > 0
+				&& state.scheduled.compareAndSet( false, true )) {
+
+			synchronized( this ) {
+				if( this.executor != null ) {
+					try {
+						this.executor.schedule( new Runnable() {
+							@Override
+							public void run() {
+								flush( state );
+							}
+
+						}, this.maxDelay, TimeUnit.MILLISECONDS );
+						now = false;
+
+					} catch( RejectedExecutionException e ) {
+						Utils.logException( this.logger, e );
+					}
+				}
+			}
+
+		} else if( this.maxDelay > 0 ) {
+			// A flush is already scheduled
+			now = false;
+		}
+
+		if( now )
+			flush( state );
+	}
+
+
+	void flush( ApplicationState state ) {
+
+		boolean retry = false;
+		synchronized( state.writeLock ) {
+			if( state.forgotten )
+				return;
+
+			// Pick up the pending changes.
+			// Those that arrive after this point will be written by another flush.
+			state.scheduled.set( false );
+			Set<Instance> dirtyRootInstances;
+			boolean snapshot;
+			synchronized( state ) {
+				dirtyRootInstances = state.dirtyRootInstances;
+				state.dirtyRootInstances = newIdentitySet();
+				snapshot = state.snapshotRequested;
+				state.snapshotRequested = false;
+			}
+
+			if( dirtyRootInstances.isEmpty() && ! snapshot )
+				return;
+
+			Application app = state.app;
+			FsyncPolicy policy = this.fsyncPolicy;
+			try {
+				Set<Instance> currentRootInstances = newIdentitySet();
+				currentRootInstances.addAll( app.getRootInstances());
+
+				Set<String> currentRootNames = new HashSet<> ();
+				for( Instance rootInstance : currentRootInstances )
+					currentRootNames.add( rootInstance.getName());
+
+				long written = -1;
+				if( ! snapshot
+						&& state.generation != null
+						&& state.journalLength <= Math.max( MIN_JOURNAL_SIZE, state.snapshotLength )) {
+
+					// Removed (or renamed) root instances
+					Collection<String> removedRootNames = new ArrayList<> ( state.rootNames );
+					removedRootNames.removeAll( currentRootNames );
+
+					// Only keep the root instances that are still in the model
+					dirtyRootInstances.retainAll( currentRootInstances );
+					written = InstancesJournalUtils.appendRecords(
+							app, state.generation,
+							dirtyRootInstances, removedRootNames,
+							policy == FsyncPolicy.ALWAYS );
+				}
+
+				if( written < 0 ) {
+					state.generation = InstancesJournalUtils.writeSnapshot( app, policy != FsyncPolicy.NEVER );
+					state.snapshotLength = InstancesJournalUtils.findSnapshotFile( app ).length();
+					state.journalLength = 0;
+
+				} else {
+					state.journalLength += written;
+				}
+
+				state.rootNames = currentRootNames;
+
+			} catch( IOException | RuntimeException e ) {
+				this.logger.severe( "Failed to save instances of application " + app + ". " + e.getMessage());
+				Utils.logException( this.logger, e );
+
+				// Write everything on the next attempt.
+				// Instances may have been modified while they were written (e.g. concurrent modifications).
+				// Such errors are transient: another attempt is scheduled.
+				synchronized( state ) {
+					state.snapshotRequested = true;
+				}
+
+				retry = e instanceof RuntimeException;
+			}
+		}
+
+		// Only retry in the background, never in a loop
+		if( retry && this.maxDelay > 0 && isStarted())
+			schedule( state );
+	}
+
+
+	private synchronized boolean isStarted() {
+		return this.executor != null;
+	}
+
+
+	static Set<Instance> newIdentitySet() {
+		return Collections.newSetFromMap( new IdentityHashMap<Instance,Boolean> ());
+	}
+
+
+	/**
+	 * The persistence state of an application.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static class ApplicationState {
+
+		final Application app;
+		final Object writeLock = new Object();
+		final AtomicBoolean scheduled = new AtomicBoolean( false );
+
+		// Guarded by the state itself
+		Set<Instance> dirtyRootInstances = newIdentitySet();
+		boolean snapshotRequested;
+
+		// Guarded by the write lock
+		boolean forgotten;
+		String generation;
+		long snapshotLength, journalLength;
+		Set<String> rootNames = new HashSet<> ();
+
+
+		/**
+		 * Constructor.
+		 * @param app
+		 */
+		ApplicationState( Application app ) {
+			this.app = app;
+		}
+	}
+}
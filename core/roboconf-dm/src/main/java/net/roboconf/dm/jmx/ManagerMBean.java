@@ -49,4 +49,39 @@ public interface ManagerMBean {
 	 * @return the total number of instances
 	 */
 	int getInstancesCount();
+
+	/**
+	 * @return the mean jitter of the heart beats received by the DM (in milliseconds)
+	 */
+	long getHeartbeatMeanJitter();
+
+	/**
+	 * @return the maximum lateness of the heart beats received by the DM (in milliseconds)
+	 */
+	long getHeartbeatMaxLateness();
+
+	/**
+	 * @return the total number of messages waiting for agents to be started
+	 */
+	int getAwaitingMessagesCount();
+
+	/**
+	 * @return the number of events waiting to be delivered to DM listeners
+	 */
+	int getPendingNotificationsCount();
+
+	/**
+	 * @return the number of events that could not be delivered to DM listeners because their queue was full
+	 */
+	long getDroppedNotificationsCount();
+
+	/**
+	 * @return the maximum time an event waited before being delivered to a DM listener (in milliseconds)
+	 */
+	long getMaxNotificationLag();
+
+	/**
+	 * @return the number of notifications about changed instances that were merged with a more recent one
+	 */
+	long getCoalescedNotificationsCount();
 }
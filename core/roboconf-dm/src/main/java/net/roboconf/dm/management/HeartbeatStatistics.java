@@ -0,0 +1,114 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+/**
+ * Statistics about the heart beats received from agents.
+ * <p>
+ * Agents are expected to send a heart beat every {@link net.roboconf.core.Constants#HEARTBEAT_PERIOD}
+ * milliseconds. For every heart beat, the interval since the previous one is compared with this period.
+ * The jitter is the absolute difference between both. The lateness is the part of the interval that exceeds
+ * the period (0 for heart beats that arrived on time).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class HeartbeatStatistics {
+
+	private final long samples, totalJitter, maxJitter, totalLateness, maxLateness;
+
+
+	/**
+	 * Constructor.
+	 * @param samples the number of measured intervals
+	 * @param totalJitter the sum of all the jitters (in milliseconds)
+	 * @param maxJitter the maximum jitter (in milliseconds)
+	 * @param totalLateness the sum of all the latenesses (in milliseconds)
+	 * @param maxLateness the maximum lateness (in milliseconds)
+	 */
+	public HeartbeatStatistics( long samples, long totalJitter, long maxJitter, long totalLateness, long maxLateness ) {
+		this.samples = samples;
+		this.totalJitter = totalJitter;
+		this.maxJitter = maxJitter;
+		this.totalLateness = totalLateness;
+		this.maxLateness = maxLateness;
+	}
+
+
+	/**
+	 * Merges these statistics with other ones.
+	 * @param other other statistics
+	 * @return new statistics
+	 */
+	public HeartbeatStatistics merge( HeartbeatStatistics other ) {
+		return new HeartbeatStatistics(
+				this.samples + other.samples,
+				this.totalJitter + other.totalJitter,
+				Math.max( this.maxJitter, other.maxJitter ),
+				this.totalLateness + other.totalLateness,
+				Math.max( this.maxLateness, other.maxLateness ));
+	}
+
+
+	/**
+	 * @return the number of measured intervals
+	 */
+	public long getSamples() {
+		return this.samples;
+	}
+
+
+	/**
+	 * @return the mean jitter (in milliseconds)
+	 */
+	public long getMeanJitter() {
+		return this.samples == 0 ? 0 : this.totalJitter / this.samples;
+	}
+
+
+	/**
+	 * @return the maximum jitter (in milliseconds)
+	 */
+	public long getMaxJitter() {
+		return this.maxJitter;
+	}
+
+
+	/**
+	 * @return the mean lateness (in milliseconds)
+	 */
+	public long getMeanLateness() {
+		return this.samples == 0 ? 0 : this.totalLateness / this.samples;
+	}
+
+
+	/**
+	 * @return the maximum lateness (in milliseconds)
+	 */
+	public long getMaxLateness() {
+		return this.maxLateness;
+	}
+}
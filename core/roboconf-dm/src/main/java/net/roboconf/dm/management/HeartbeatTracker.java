@@ -0,0 +1,299 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.roboconf.core.Constants;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.beans.Instance.InstanceStatus;
+
+/**
+ * A class that tracks the heart beats of the agents of an application.
+ * <p>
+ * Time is measured in ticks, one tick being one invocation of {@link #tick(List)}
+ * (i.e. one heart beat period). An agent that did not send any heart beat for more than
+ * {@link #getTolerance()} ticks is considered to be in trouble.
+ * </p>
+ * <p>
+ * Deadlines are stored in a hashed timing wheel. A tick only processes the agents
+ * whose deadline has been reached, instead of all the scoped instances. Acknowledging a heart beat
+ * only updates the agent's last tick: its deadline is pushed back lazily, when the old one is reached.
+ * </p>
+ * <p>
+ * Heart beats can be acknowledged concurrently. Ticks must not.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+final class HeartbeatTracker {
+
+	static final int DEFAULT_TOLERANCE = 2;
+	static final int WHEEL_SIZE = 64;
+
+	private final Map<Instance,Agent> instanceToAgent = Collections.synchronizedMap( new IdentityHashMap<Instance,Agent> ());
+	private final ConcurrentLinkedQueue<Agent> newAgents = new ConcurrentLinkedQueue<> ();
+	private final List<List<Agent>> wheel = new ArrayList<>( WHEEL_SIZE );
+
+	private volatile long currentTick;
+	private volatile int tolerance = DEFAULT_TOLERANCE;
+	private List<Instance> knownScopedInstances;
+
+	private final Object statisticsLock = new Object();
+	private long samples, totalJitter, maxJitter, totalLateness, maxLateness;
+
+
+	/**
+	 * Constructor.
+	 */
+	HeartbeatTracker() {
+		for( int i = 0; i < WHEEL_SIZE; i ++ )
+			this.wheel.add( new ArrayList<Agent> ());
+	}
+
+
+	/**
+	 * Acknowledges a heart beat.
+	 * @param scopedInstance a scoped instance
+	 * @param now the current time (in milliseconds)
+	 * @return true if the agent was considered as in trouble before this heart beat
+	 */
+	boolean acknowledge( Instance scopedInstance, long now ) {
+
+		Agent agent;
+		synchronized( this.instanceToAgent ) {
+			agent = this.instanceToAgent.get( scopedInstance );
+			if( agent == null ) {
+				agent = new Agent( scopedInstance );
+				this.instanceToAgent.put( scopedInstance, agent );
+				this.newAgents.add( agent );
+			}
+		}
+
+		boolean result = agent.timedOut;
+		agent.timedOut = false;
+		agent.lastTick = this.currentTick;
+
+		long lastTime = agent.lastTime;
+		agent.lastTime = now;
+		if( lastTime > 0 )
+			updateStatistics( now - lastTime );
+
+		return result;
+	}
+
+
+	/**
+	 * Moves the wheel forward.
+	 * @param scopedInstances the current scoped instances (used to detect new and removed ones)
+	 * @return the scoped instances whose agent has just been considered as in trouble
+	 */
+	synchronized List<Instance> tick( List<Instance> scopedInstances ) {
+
+		long tick = ++ this.currentTick;
+
+		// Scoped instances were added or removed?
+		if( scopedInstances != this.knownScopedInstances ) {
+			this.knownScopedInstances = scopedInstances;
+
+			Set<Instance> current = Collections.newSetFromMap( new IdentityHashMap<Instance,Boolean> ());
+			current.addAll( scopedInstances );
+			synchronized( this.instanceToAgent ) {
+				for( Iterator<Instance> it = this.instanceToAgent.keySet().iterator(); it.hasNext(); ) {
+					if( ! current.contains( it.next()))
+						it.remove();
+				}
+
+				for( Instance scopedInstance : scopedInstances ) {
+					if( this.instanceToAgent.containsKey( scopedInstance ))
+						continue;
+
+					// Consider we had a heart beat right before this tick
+					Agent agent = new Agent( scopedInstance );
+					agent.lastTick = tick - 1;
+					this.instanceToAgent.put( scopedInstance, agent );
+					schedule( agent, agent.lastTick + this.tolerance + 1 );
+				}
+			}
+		}
+
+		// Agents that sent their first heart beat
+		for( Agent agent; (agent = this.newAgents.poll()) != null; )
+			schedule( agent, agent.lastTick + this.tolerance + 1 );
+
+		// Process the agents whose deadline is reached
+		int index = (int) (tick % WHEEL_SIZE);
+		List<Agent> bucket = this.wheel.get( index );
+		this.wheel.set( index, new ArrayList<Agent> ());
+
+		List<Instance> result = new ArrayList<> ();
+		for( Agent agent : bucket ) {
+
+			// Not for this round, or removed
+			if( agent.deadline > tick ) {
+				schedule( agent, agent.deadline );
+				continue;
+			}
+
+			if( this.instanceToAgent.get( agent.instance ) != agent )
+				continue;
+
+			// Never started instances,
+			// or scoped instances that have been stopped by an agent,
+			// do not have to send heart beats.
+			InstanceStatus status = agent.instance.getStatus();
+			if( ! mustSendHeartbeats( status )) {
+				agent.lastTick = tick;
+				agent.lastTime = 0;
+				agent.timedOut = false;
+				schedule( agent, tick + this.tolerance + 1 );
+				continue;
+			}
+
+			// A heart beat arrived in time
+			long deadline = agent.lastTick + this.tolerance + 1;
+			if( deadline > tick ) {
+				schedule( agent, deadline );
+				continue;
+			}
+
+			// Otherwise, the agent is in trouble.
+			// Check it again on the next tick, in case its status was updated.
+			if( status != InstanceStatus.PROBLEM )
+				result.add( agent.instance );
+
+			agent.timedOut = true;
+			schedule( agent, tick + 1 );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @param scopedInstance a scoped instance
+	 * @return the number of heart beats that were missed by this instance's agent
+	 */
+	int getMissedHeartbeats( Instance scopedInstance ) {
+
+		Agent agent = this.instanceToAgent.get( scopedInstance );
+		int result = 0;
+		if( agent != null && mustSendHeartbeats( scopedInstance.getStatus()))
+			result = (int) Math.max( 0, this.currentTick - agent.lastTick );
+
+		return result;
+	}
+
+
+	/**
+	 * @return the statistics about received heart beats
+	 */
+	HeartbeatStatistics getStatistics() {
+		synchronized( this.statisticsLock ) {
+			return new HeartbeatStatistics( this.samples, this.totalJitter, this.maxJitter, this.totalLateness, this.maxLateness );
+		}
+	}
+
+
+	/**
+	 * @return the number of heart beat periods an agent can miss before being in trouble
+	 */
+	int getTolerance() {
+		return this.tolerance;
+	}
+
+
+	/**
+	 * Sets the tolerance.
+	 * <p>
+	 * A greater tolerance is immediately taken into account.
+	 * A smaller one is taken into account progressively.
+	 * </p>
+	 *
+	 * @param tolerance the number of heart beat periods an agent can miss before being in trouble
+	 */
+	void setTolerance( int tolerance ) {
+		this.tolerance = Math.max( 0, tolerance );
+	}
+
+
+	private void schedule( Agent agent, long deadline ) {
+		agent.deadline = deadline;
+		this.wheel.get((int) (deadline % WHEEL_SIZE)).add( agent );
+	}
+
+
+	private void updateStatistics( long interval ) {
+
+		long jitter = Math.abs( interval - Constants.HEARTBEAT_PERIOD );
+		long lateness = Math.max( 0, interval - Constants.HEARTBEAT_PERIOD );
+		synchronized( this.statisticsLock ) {
+			this.samples ++;
+			this.totalJitter += jitter;
+			this.maxJitter = Math.max( this.maxJitter, jitter );
+			this.totalLateness += lateness;
+			this.maxLateness = Math.max( this.maxLateness, lateness );
+		}
+	}
+
+
+	private static boolean mustSendHeartbeats( InstanceStatus status ) {
+		return status != InstanceStatus.NOT_DEPLOYED
+				&& status != InstanceStatus.DEPLOYING
+				&& status != InstanceStatus.UNDEPLOYING;
+	}
+
+
+	/**
+	 * The heart beat state of an agent.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class Agent {
+
+		final Instance instance;
+		volatile long lastTick, lastTime;
+		volatile boolean timedOut;
+
+		// Only used by ticks
+		long deadline;
+
+
+		/**
+		 * Constructor.
+		 * @param instance
+		 */
+		Agent( Instance instance ) {
+			this.instance = instance;
+		}
+	}
+}
@@ -26,10 +26,6 @@
 package net.roboconf.dm.management;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -51,13 +47,16 @@ import net.roboconf.messaging.api.messages.Message;
  */
 public class ManagedApplication {
 
-	static final String MISSED_HEARTBEATS = "dm.missed.heartbeats";
-	static final int THRESHOLD = 2;
+	/**
+	 * The default number of heart beats an agent can miss before being considered in problem.
+	 */
+	public static final int DEFAULT_HEARTBEAT_TOLERANCE = HeartbeatTracker.DEFAULT_TOLERANCE;
 
 	private final Application application;
 	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final HeartbeatTracker heartbeatTracker = new HeartbeatTracker();
 
-	private final Map<Instance,List<Message>> scopedInstanceToAwaitingMessages;
+	private final MessagesOutbox outbox;
 
 
 
@@ -69,12 +68,15 @@ public class ManagedApplication {
 		Objects.requireNonNull( application.getTemplate());
 
 		this.application = application;
-		this.scopedInstanceToAwaitingMessages = new HashMap<> ();
+		this.outbox = new MessagesOutbox( application.getDirectory());
 	}
 
 
+	/**
+	 * @return a snapshot of the awaiting messages (for diagnostics and tests)
+	 */
 	public Map<Instance,List<Message>> getScopedInstanceToAwaitingMessages() {
-		return this.scopedInstanceToAwaitingMessages;
+		return this.outbox.snapshot();
 	}
 
 
@@ -123,17 +125,7 @@ public class ManagedApplication {
 		Instance scopedInstance = InstanceHelpers.findScopedInstance( instance );
 		this.logger.finer( "Storing message " + msg.getClass().getSimpleName() + " for instance " + scopedInstance );
 
-		// We need synchronized access to the map.
-		// ConcurrentHashMap does not suit. We need atomic insertion in the lists (which are map values).
-		synchronized( this.scopedInstanceToAwaitingMessages ) {
-			List<Message> messages = this.scopedInstanceToAwaitingMessages.get( scopedInstance );
-			if( messages == null ) {
-				messages = new ArrayList<>( 1 );
-				this.scopedInstanceToAwaitingMessages.put( scopedInstance, messages );
-			}
-
-			messages.add( msg );
-		}
+		this.outbox.store( scopedInstance, msg );
 	}
 
 
@@ -147,16 +139,97 @@ public class ManagedApplication {
 	 * @return a non-null list
 	 */
 	public List<Message> removeAwaitingMessages( Instance instance ) {
+		return removeAwaitingMessages( instance, Integer.MAX_VALUE );
+	}
+
 
+	/**
+	 * Removes the oldest waiting messages for a given instance.
+	 * <p>
+	 * Can be called concurrently with {@link #storeAwaitingMessage(Instance, Message)}.
+	 * </p>
+	 *
+	 * @param instance an instance (any instance is fine, the root will be determined)
+	 * @param maxCount the maximum number of messages to remove
+	 * @return a non-null list, in the order messages were stored
+	 */
+	public List<Message> removeAwaitingMessages( Instance instance, int maxCount ) {
 		Instance scopedInstance = InstanceHelpers.findScopedInstance( instance );
-		List<Message> result = null;
+		return this.outbox.remove( scopedInstance, maxCount );
+	}
+
+
+	/**
+	 * Puts waiting messages back, before the other ones.
+	 * <p>
+	 * This is used when removed messages could not be sent.
+	 * They will be sent first on the next attempt.
+	 * </p>
+	 *
+	 * @param instance an instance (any instance is fine, the root will be determined)
+	 * @param messages the messages to put back, in the order they were removed
+	 */
+	public void putBackAwaitingMessages( Instance instance, List<Message> messages ) {
+		Instance scopedInstance = InstanceHelpers.findScopedInstance( instance );
+		this.outbox.putBack( scopedInstance, messages );
+	}
 
-		// We reduce the spent time in the synchronized section.
-		synchronized( this.scopedInstanceToAwaitingMessages ) {
-			result = this.scopedInstanceToAwaitingMessages.remove( scopedInstance );
-		}
 
-		return result != null ? result : new ArrayList<Message>( 0 );
+	/**
+	 * @param instance an instance (any instance is fine, the root will be determined)
+	 * @return the number of messages waiting for this instance's agent
+	 */
+	public int getAwaitingMessagesCount( Instance instance ) {
+		return this.outbox.getDepth( InstanceHelpers.findScopedInstance( instance ));
+	}
+
+
+	/**
+	 * @return the number of messages waiting for all the agents of this application
+	 */
+	public int getAwaitingMessagesCount() {
+		return this.outbox.getTotalDepth();
+	}
+
+
+	/**
+	 * @param instance an instance (any instance is fine, the root will be determined)
+	 * @return the age of the oldest message waiting for this instance's agent (in milliseconds, 0 if there is none)
+	 */
+	public long getAwaitingMessagesAge( Instance instance ) {
+		long timestamp = this.outbox.getOldestTimestamp( InstanceHelpers.findScopedInstance( instance ));
+		return timestamp == 0 ? 0 : Math.max( 0, System.currentTimeMillis() - timestamp );
+	}
+
+
+	/**
+	 * Sets whether the messages waiting for agents must be forced on the disk when they are stored.
+	 * @param fsync true to force them on the disk, false to let the operating system decide
+	 */
+	public void setAwaitingMessagesFsync( boolean fsync ) {
+		this.outbox.setFsync( fsync );
+	}
+
+
+	/**
+	 * Releases the files held to store the messages waiting for agents.
+	 * <p>
+	 * They are opened again if other messages are stored.
+	 * </p>
+	 */
+	public void close() {
+		this.outbox.close();
+	}
+
+
+	/**
+	 * Restores the messages that were waiting for agents when the DM stopped.
+	 * <p>
+	 * This method must be invoked once the application's instances were restored.
+	 * </p>
+	 */
+	public void restoreAwaitingMessages() {
+		this.outbox.restore( this.application );
 	}
 
 
@@ -166,9 +239,8 @@ public class ManagedApplication {
 	 */
 	public void acknowledgeHeartBeat( Instance scopedInstance ) {
 
-		String count = scopedInstance.data.get( MISSED_HEARTBEATS );
-		if( count != null
-				&& Integer.parseInt( count ) > THRESHOLD )
+		long now = System.currentTimeMillis();
+		if( this.heartbeatTracker.acknowledge( scopedInstance, now ))
 			this.logger.info( "Agent " + InstanceHelpers.computeInstancePath( scopedInstance ) + " is alive and reachable again." );
 
 		// Store the moment the first ACK (without interruption) was received.
@@ -177,43 +249,59 @@ public class ManagedApplication {
 		// If we were already deployed and started, do NOT override it.
 		if( scopedInstance.getStatus() != InstanceStatus.DEPLOYED_STARTED
 				|| ! scopedInstance.data.containsKey( Instance.RUNNING_FROM ))
-			scopedInstance.data.put( Instance.RUNNING_FROM, String.valueOf( new Date().getTime()));
+			scopedInstance.data.put( Instance.RUNNING_FROM, String.valueOf( now ));
 
 		scopedInstance.setStatus( InstanceStatus.DEPLOYED_STARTED );
-		scopedInstance.data.remove( MISSED_HEARTBEATS );
 	}
 
 
 	/**
 	 * Check the scoped instances states with respect to missed heart beats.
+	 * <p>
+	 * Expected to be invoked once per heart beat period.
+	 * </p>
+	 *
 	 * @param notificationMngr
 	 */
 	public void checkStates( INotificationMngr notificationMngr ) {
 
-		// Check the status of scoped instances
-		Collection<Instance> scopedInstances = InstanceHelpers.findAllScopedInstances( this.application );
-		for( Instance scopedInstance : scopedInstances ) {
-
-			// Never started instances,
-			// or scoped instances that have been stopped by an agent,
-			// are not processed anymore here
-			if( scopedInstance.getStatus() == InstanceStatus.NOT_DEPLOYED
-					|| scopedInstance.getStatus() == InstanceStatus.DEPLOYING
-					|| scopedInstance.getStatus() == InstanceStatus.UNDEPLOYING ) {
-				scopedInstance.data.remove( MISSED_HEARTBEATS );
-				continue;
-			}
-
-			// Otherwise
-			String countAs = scopedInstance.data.get( MISSED_HEARTBEATS );
-			int count = countAs == null ? 0 : Integer.parseInt( countAs );
-			if( ++ count > THRESHOLD ) {
-				scopedInstance.setStatus( InstanceStatus.PROBLEM );
-				notificationMngr.instance( scopedInstance, this.application, EventType.CHANGED );
-				this.logger.severe( "Agent " + InstanceHelpers.computeInstancePath( scopedInstance ) + " has not sent heart beats for quite a long time. Status changed to PROBLEM." );
-			}
-
-			scopedInstance.data.put( MISSED_HEARTBEATS, String.valueOf( count ));
+		for( Instance scopedInstance : this.heartbeatTracker.tick( this.application.findScopedInstances())) {
+			scopedInstance.setStatus( InstanceStatus.PROBLEM );
+			notificationMngr.instance( scopedInstance, this.application, EventType.CHANGED );
+			this.logger.severe( "Agent " + InstanceHelpers.computeInstancePath( scopedInstance ) + " has not sent heart beats for quite a long time. Status changed to PROBLEM." );
 		}
 	}
+
+
+	/**
+	 * @param scopedInstance a scoped instance
+	 * @return the number of heart beats its agent missed (0 if it is not supposed to send any)
+	 */
+	public int getMissedHeartbeats( Instance scopedInstance ) {
+		return this.heartbeatTracker.getMissedHeartbeats( scopedInstance );
+	}
+
+
+	/**
+	 * @return statistics about the heart beats received for this application (never null)
+	 */
+	public HeartbeatStatistics getHeartbeatStatistics() {
+		return this.heartbeatTracker.getStatistics();
+	}
+
+
+	/**
+	 * @return the number of heart beats an agent can miss before being considered in problem
+	 */
+	public int getHeartbeatTolerance() {
+		return this.heartbeatTracker.getTolerance();
+	}
+
+
+	/**
+	 * @param heartbeatTolerance the number of heart beats an agent can miss before being considered in problem
+	 */
+	public void setHeartbeatTolerance( int heartbeatTolerance ) {
+		this.heartbeatTracker.setTolerance( heartbeatTolerance );
+	}
 }
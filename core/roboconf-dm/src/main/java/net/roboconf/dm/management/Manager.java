@@ -38,10 +38,12 @@ import net.roboconf.core.Constants;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.runtime.IReconfigurable;
 import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.internal.api.IBlobsMngr;
 import net.roboconf.dm.internal.api.IRandomMngr;
 import net.roboconf.dm.internal.api.impl.ApplicationMngrImpl;
 import net.roboconf.dm.internal.api.impl.ApplicationTemplateMngrImpl;
 import net.roboconf.dm.internal.api.impl.AutonomicMngrImpl;
+import net.roboconf.dm.internal.api.impl.BlobsMngrImpl;
 import net.roboconf.dm.internal.api.impl.CommandsMngrImpl;
 import net.roboconf.dm.internal.api.impl.ConfigurationMngrImpl;
 import net.roboconf.dm.internal.api.impl.DebugMngrImpl;
@@ -58,7 +60,8 @@ import net.roboconf.dm.internal.environment.messaging.RCDm;
 import net.roboconf.dm.internal.tasks.CheckerForHeartbeatsTask;
 import net.roboconf.dm.internal.tasks.CheckerForStoredMessagesTask;
 import net.roboconf.dm.internal.tasks.CheckerForTargetsConfigurationTask;
-import net.roboconf.dm.internal.utils.ConfigurationUtils;
+import net.roboconf.dm.internal.utils.InstancesPersister;
+import net.roboconf.dm.internal.utils.InstancesPersister.FsyncPolicy;
 import net.roboconf.dm.jmx.ManagerMBean;
 import net.roboconf.dm.management.api.IApplicationMngr;
 import net.roboconf.dm.management.api.IApplicationTemplateMngr;
@@ -73,8 +76,11 @@ import net.roboconf.dm.management.api.IPreferencesMngr;
 import net.roboconf.dm.management.api.ITargetHandlerResolver;
 import net.roboconf.dm.management.api.ITargetsMngr;
 import net.roboconf.dm.management.events.IDmListener;
+import net.roboconf.messaging.api.AbstractMessageProcessor;
 import net.roboconf.messaging.api.business.ListenerCommand;
 import net.roboconf.messaging.api.factory.IMessagingClientFactory;
+import net.roboconf.messaging.api.jmx.PrioritizedMessageQueue;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.factory.MessagingClientFactoryRegistry;
 import net.roboconf.target.api.TargetHandler;
 
@@ -109,6 +115,11 @@ public class Manager implements IReconfigurable, ManagerMBean {
 	// Injected by iPojo or Admin Config
 	protected String messagingType;
 	protected String domain = Constants.DEFAULT_DOMAIN;
+	protected int messageProcessingLanes = 1;
+	protected int messageProcessingLaneCapacity = AbstractMessageProcessor.DEFAULT_LANE_CAPACITY;
+	protected String messageQueueLanes;
+	protected long instancesFlushDelay = 1000;
+	protected String instancesFsyncPolicy;
 	protected IPreferencesMngr preferencesMngr;
 	protected DataSource dataSource;
 
@@ -135,7 +146,9 @@ public class Manager implements IReconfigurable, ManagerMBean {
 
 	// Private API
 	private final IRandomMngr randomMngr;
+	private final IBlobsMngr blobsMngr;
 	private final TargetConfiguratorImpl targetConfigurator;
+	private final InstancesPersister instancesPersister;
 
 
 	/**
@@ -149,6 +162,9 @@ public class Manager implements IReconfigurable, ManagerMBean {
 		this.notificationMngr = new NotificationMngrImpl();
 		this.configurationMngr = new ConfigurationMngrImpl();
 		this.randomMngr = new RandomMngrImpl();
+		this.blobsMngr = new BlobsMngrImpl();
+		this.instancesPersister = new InstancesPersister();
+		((RandomMngrImpl) this.randomMngr).setInstancesPersister( this.instancesPersister );
 
 		this.messagingMngr = new MessagingMngrImpl();
 		this.defaultTargetHandlerResolver = new TargetHandlerResolverImpl();
@@ -164,6 +180,7 @@ public class Manager implements IReconfigurable, ManagerMBean {
 
 		this.applicationTemplateMngr = new ApplicationTemplateMngrImpl( this.notificationMngr, this.targetsMngr, this.applicationMngr, this.configurationMngr );
 		this.applicationMngr.setApplicationTemplateMngr( this.applicationTemplateMngr );
+		this.applicationMngr.setInstancesPersister( this.instancesPersister );
 
 		this.targetConfigurator = new TargetConfiguratorImpl();
 		this.targetConfigurator.setTargetHandlerResolver( this.defaultTargetHandlerResolver );
@@ -172,6 +189,8 @@ public class Manager implements IReconfigurable, ManagerMBean {
 		this.instancesMngr.setTargetHandlerResolver( this.defaultTargetHandlerResolver );
 		this.instancesMngr.setRuleBasedHandler( this.autonomicMngr );
 		this.instancesMngr.setDmDomain( this.domain );
+		this.instancesMngr.setBlobsMngr( this.blobsMngr );
+		this.instancesMngr.setInstancesPersister( this.instancesPersister );
 
 		// The manager is supposed to be an API.
 		// To make it simple to use in non-OSGi environments, we instantiate a default set of preferences.
@@ -193,7 +212,8 @@ public class Manager implements IReconfigurable, ManagerMBean {
 		this.logger.info( "The DM is about to be launched." );
 
 		// Start the messaging
-		DmMessageProcessor messageProcessor = new DmMessageProcessor( this );
+		DmMessageProcessor messageProcessor = new DmMessageProcessor( this, createMessageQueue());
+		messageProcessor.setProcessingLanes( this.messageProcessingLanes, this.messageProcessingLaneCapacity );
 		this.messagingClient = new RCDm( this.applicationMngr );
 		this.messagingClient.setDomain( this.domain );
 		this.messagingClient.associateMessageProcessor( messageProcessor );
@@ -202,12 +222,17 @@ public class Manager implements IReconfigurable, ManagerMBean {
 		// Start the target configurator
 		this.targetConfigurator.start();
 
+		// Start the persistence of instances
+		this.instancesPersister.setMaxDelay( this.instancesFlushDelay );
+		this.instancesPersister.setFsyncPolicy( FsyncPolicy.which( this.instancesFsyncPolicy ));
+		this.instancesPersister.start();
+
 		// Run the timer
 		this.timer = new Timer( "Roboconf's Management Timer", false );
 		this.timer.scheduleAtFixedRate( new CheckerForStoredMessagesTask( this.applicationMngr, this.messagingMngr ), 0, TIMER_PERIOD );
 		this.timer.scheduleAtFixedRate( new CheckerForTargetsConfigurationTask( this.targetConfigurator ), 0, TIMER_PERIOD );
 		this.timer.scheduleAtFixedRate(
-				new CheckerForHeartbeatsTask( this.applicationMngr, this.notificationMngr ),
+				new CheckerForHeartbeatsTask( this.applicationMngr, this.notificationMngr, this.preferencesMngr ),
 				0, Constants.HEARTBEAT_PERIOD );
 
 		// Configure the messaging
@@ -244,7 +269,11 @@ public class Manager implements IReconfigurable, ManagerMBean {
 
 		// Save the instances
 		for( ManagedApplication ma : this.applicationMngr.getManagedApplications())
-			ConfigurationUtils.saveInstances( ma );
+			this.instancesPersister.instancesChanged( ma.getApplication());
+
+		this.instancesPersister.stop();
+		for( ManagedApplication ma : this.applicationMngr.getManagedApplications())
+			ma.close();
 
 		// Disable notifications to listeners
 		this.notificationMngr.disableNotifications();
@@ -276,6 +305,30 @@ public class Manager implements IReconfigurable, ManagerMBean {
 	}
 
 
+	/**
+	 * Creates the queue that stores the messages to process.
+	 * @return a non-null queue
+	 */
+	private RoboconfMessageQueue createMessageQueue() {
+
+		RoboconfMessageQueue result = null;
+		if( ! Utils.isEmptyOrWhitespaces( this.messageQueueLanes )) {
+			try {
+				result = new PrioritizedMessageQueue( this.messageQueueLanes );
+
+			} catch( IllegalArgumentException e ) {
+				this.logger.severe( "The configuration of the message queue lanes is invalid. Priority lanes are disabled. " + e.getMessage());
+				Utils.logException( this.logger, e );
+			}
+		}
+
+		if( result == null )
+			result = new RoboconfMessageQueue();
+
+		return result;
+	}
+
+
 	/**
 	 * This method is invoked by iPojo every time a new target handler appears.
 	 * @param targetItf the appearing target handler
@@ -408,6 +461,146 @@ public class Manager implements IReconfigurable, ManagerMBean {
 	}
 
 
+	/**
+	 * Sets the number of lanes used to process the messages sent by agents.
+	 * <p>
+	 * Messages from a same application are always processed in order, but messages
+	 * from different applications can be processed in parallel. 1 means all the messages
+	 * are processed by a single thread. The new value is only taken into account
+	 * when the DM (re)starts.
+	 * </p>
+	 *
+	 * @param messageProcessingLanes the number of processing lanes
+	 */
+	public void setMessageProcessingLanes( int messageProcessingLanes ) {
+		this.messageProcessingLanes = messageProcessingLanes;
+		this.logger.fine( "Number of message processing lanes set to " + messageProcessingLanes );
+	}
+
+
+	/**
+	 * Sets the maximum number of pending messages per processing lane.
+	 * <p>
+	 * The new value is only taken into account when the DM (re)starts.
+	 * </p>
+	 *
+	 * @param messageProcessingLaneCapacity the capacity of a processing lane
+	 */
+	public void setMessageProcessingLaneCapacity( int messageProcessingLaneCapacity ) {
+		this.messageProcessingLaneCapacity = messageProcessingLaneCapacity;
+		this.logger.fine( "Capacity of message processing lanes set to " + messageProcessingLaneCapacity );
+	}
+
+
+	/**
+	 * Sets the configuration of the priority lanes for the DM's message queue.
+	 * <p>
+	 * If null or empty, messages are processed in the order they were received
+	 * and the queue is not bounded. Otherwise, see {@link PrioritizedMessageQueue}.
+	 * The new value is only taken into account when the DM (re)starts.
+	 * </p>
+	 *
+	 * @param messageQueueLanes the lanes configuration (e.g. "control:1000:coalesce, bulk:500:drop-oldest")
+	 */
+	public void setMessageQueueLanes( String messageQueueLanes ) {
+		this.messageQueueLanes = messageQueueLanes;
+		this.logger.fine( "Configuration of the message queue lanes set to " + messageQueueLanes );
+	}
+
+
+	/**
+	 * Sets the maximum delay before changes on instances are written on the disk.
+	 * <p>
+	 * Changes that occur during this delay are coalesced. 0 means every change
+	 * is written immediately. The new value is only taken into account when the DM (re)starts.
+	 * </p>
+	 *
+	 * @param instancesFlushDelay a delay, in milliseconds
+	 */
+	public void setInstancesFlushDelay( long instancesFlushDelay ) {
+		this.instancesFlushDelay = instancesFlushDelay;
+		this.logger.fine( "Flush delay for instances set to " + instancesFlushDelay );
+	}
+
+
+	/**
+	 * Sets when changes on instances must be forced on the disk.
+	 * <p>
+	 * Possible values are "always" (snapshots and journal records), "snapshots" and "never".
+	 * Messages waiting for agents are forced on the disk only with "always".
+	 * The new value is only taken into account when the DM (re)starts.
+	 * </p>
+	 *
+	 * @param instancesFsyncPolicy the fsync policy (null or invalid values mean "always")
+	 */
+	public void setInstancesFsyncPolicy( String instancesFsyncPolicy ) {
+		this.instancesFsyncPolicy = instancesFsyncPolicy;
+		this.logger.fine( "Fsync policy for instances set to " + instancesFsyncPolicy );
+	}
+
+
+	/**
+	 * Sets the maximum number of operations on scoped instances (e.g. machine creations)
+	 * that can run concurrently during bulk actions.
+	 * @param maxConcurrentTargetOperations a strictly positive integer
+	 */
+	public void setMaxConcurrentTargetOperations( int maxConcurrentTargetOperations ) {
+		this.instancesMngr.setMaxConcurrentTargetOperations( maxConcurrentTargetOperations );
+		this.logger.fine( "Maximum number of concurrent operations on targets set to " + maxConcurrentTargetOperations );
+	}
+
+
+	/**
+	 * Sets the maximum number of operations on scoped instances that can run concurrently
+	 * on a same target during bulk actions.
+	 * @param maxConcurrentOperationsPerTarget a strictly positive integer
+	 */
+	public void setMaxConcurrentOperationsPerTarget( int maxConcurrentOperationsPerTarget ) {
+		this.instancesMngr.setMaxConcurrentOperationsPerTarget( maxConcurrentOperationsPerTarget );
+		this.logger.fine( "Maximum number of concurrent operations per target set to " + maxConcurrentOperationsPerTarget );
+	}
+
+
+	/**
+	 * Sets whether DM listeners are notified asynchronously.
+	 * <p>
+	 * In asynchronous mode, every listener has its own queue and delivery thread,
+	 * so that a slow listener only delays its own notifications.
+	 * </p>
+	 *
+	 * @param asynchronousNotifications true to notify listeners asynchronously
+	 */
+	public void setAsynchronousNotifications( boolean asynchronousNotifications ) {
+		this.notificationMngr.setAsynchronousNotifications( asynchronousNotifications );
+		this.logger.fine( "Asynchronous notifications set to " + asynchronousNotifications );
+	}
+
+
+	/**
+	 * Sets the configuration of the DM listeners' queues (in asynchronous mode).
+	 * @param notificationQueues the queues configuration (e.g. "DM's Websocket:1000:drop-oldest")
+	 */
+	public void setNotificationQueues( String notificationQueues ) {
+		this.notificationMngr.setQueuesConfiguration( notificationQueues );
+		this.logger.fine( "Configuration of the notification queues set to " + notificationQueues );
+	}
+
+
+	/**
+	 * Sets the coalescing window for notifications about changed instances.
+	 * <p>
+	 * Successive changes of a same instance during this window result in a single
+	 * notification for DM listeners. Creations and deletions are not coalesced.
+	 * </p>
+	 *
+	 * @param notificationsCoalescingWindow a delay in milliseconds (0 to disable coalescing)
+	 */
+	public void setNotificationsCoalescingWindow( long notificationsCoalescingWindow ) {
+		this.notificationMngr.setCoalescingWindow( notificationsCoalescingWindow );
+		this.logger.fine( "Coalescing window for notifications set to " + notificationsCoalescingWindow );
+	}
+
+
 	/**
 	 * @param preferencesMngr the preferencesMngr to set
 	 */
@@ -522,6 +715,14 @@ public class Manager implements IReconfigurable, ManagerMBean {
 	}
 
 
+	/**
+	 * @return the blobs API (internal, only used by the DM's message processor)
+	 */
+	public IBlobsMngr blobsMngr() {
+		return this.blobsMngr;
+	}
+
+
 	// Convenience methods for non-OSGi environments
 
 	/**
@@ -599,15 +800,75 @@ public class Manager implements IReconfigurable, ManagerMBean {
 
 		int result = 0;
 		for( ManagedApplication ma : this.applicationMngr.getManagedApplications())
-			result += InstanceHelpers.findAllScopedInstances( ma.getApplication()).size();
+			result += ma.getApplication().findScopedInstances().size();
+
+		return result;
+	}
+
+
+	@Override
+	public int getAwaitingMessagesCount() {
+
+		int result = 0;
+		for( ManagedApplication ma : this.applicationMngr.getManagedApplications())
+			result += ma.getAwaitingMessagesCount();
 
 		return result;
 	}
 
 
+	@Override
+	public int getPendingNotificationsCount() {
+		return this.notificationMngr.getPendingNotificationsCount();
+	}
+
+
+	@Override
+	public long getDroppedNotificationsCount() {
+		return this.notificationMngr.getDroppedNotificationsCount();
+	}
+
+
+	@Override
+	public long getMaxNotificationLag() {
+		return this.notificationMngr.getMaxNotificationLag();
+	}
+
+
+	@Override
+	public long getCoalescedNotificationsCount() {
+		return this.notificationMngr.getCoalescedNotificationsCount();
+	}
+
+
+	@Override
+	public long getHeartbeatMeanJitter() {
+		return heartbeatStatistics().getMeanJitter();
+	}
+
+
+	@Override
+	public long getHeartbeatMaxLateness() {
+		return heartbeatStatistics().getMaxLateness();
+	}
+
+
 	// Private utilities
 
 
+	/**
+	 * @return the heart beat statistics of all the applications
+	 */
+	private HeartbeatStatistics heartbeatStatistics() {
+
+		HeartbeatStatistics result = new HeartbeatStatistics( 0, 0, 0, 0, 0 );
+		for( ManagedApplication ma : this.applicationMngr.getManagedApplications())
+			result = result.merge( ma.getHeartbeatStatistics());
+
+		return result;
+	}
+
+
 	/**
 	 * Restores the states of all the instances from the current target handlers.
 	 */
@@ -0,0 +1,741 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.utils.SerializationUtils;
+
+/**
+ * A durable outbox for the messages that wait for agents to be started.
+ * <p>
+ * Every stored message is appended to a segment file, in the application's
+ * {@value #OUTBOX_DIRECTORY} directory. When messages are removed, an acknowledgment
+ * is appended. Segment files are deleted once all their messages were removed, and they
+ * are replayed when the DM restarts. Messages that could not be sent can be put back at the
+ * head of the queue: they are appended again, and the acknowledgment is moved back.
+ * </p>
+ * <p>
+ * Only {@link #getMaxMemory()} bytes of messages are kept in memory. Other messages are
+ * read back from the segment files when they are removed. Applications without
+ * directory are only kept in memory.
+ * </p>
+ * <p>
+ * The current segment file remains open until a new segment is started or until
+ * the outbox is closed. By default, every record is forced on the disk (fsync).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+final class MessagesOutbox {
+
+	static final String OUTBOX_DIRECTORY = "outbox";
+	static final long DEFAULT_MAX_MEMORY = 8 * 1024 * 1024;
+	static final long SEGMENT_SIZE = 4 * 1024 * 1024;
+
+	private static final String SEGMENT_EXTENSION = ".segment";
+	private static final byte RECORD_MESSAGE = 1;
+	private static final byte RECORD_ACK = 2;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final File directory;
+	private long maxMemory = DEFAULT_MAX_MEMORY;
+	private boolean fsync = true;
+
+	// Guarded by "this"
+	private final Map<Instance,AgentQueue> scopedInstanceToQueue = new HashMap<> ();
+	private final Map<String,Long> pathToNextSeq = new HashMap<> ();
+	private final TreeMap<Integer,Integer> segmentToLiveMessages = new TreeMap<> ();
+	private int currentSegment, totalCount;
+	private long currentSegmentSize, memoryBytes;
+	private FileOutputStream currentStream;
+	private int currentStreamSegment;
+
+
+	/**
+	 * Constructor.
+	 * @param applicationDirectory the application's directory (null to only work in memory)
+	 */
+	MessagesOutbox( File applicationDirectory ) {
+		this.directory = applicationDirectory == null ? null : new File( applicationDirectory, OUTBOX_DIRECTORY );
+	}
+
+
+	/**
+	 * Stores a message.
+	 * @param scopedInstance a scoped instance
+	 * @param msg a message
+	 */
+	void store( Instance scopedInstance, Message msg ) {
+
+		// Serialize outside the lock
+		byte[] payload = serialize( msg );
+		synchronized( this ) {
+			AgentQueue queue = findQueue( scopedInstance );
+
+			// Sequences must keep on growing while acknowledgments may remain on the disk
+			Long seq = this.pathToNextSeq.get( queue.path );
+			seq = seq == null ? 1 : seq;
+			this.pathToNextSeq.put( queue.path, seq + 1 );
+
+			queue.entries.add( newEntry( queue.path, seq, msg, payload ));
+			this.totalCount ++;
+		}
+	}
+
+
+	/**
+	 * Puts messages back at the head of the queue of a scoped instance.
+	 * <p>
+	 * This is used when removed messages could not be sent.
+	 * They will be the first ones to be removed again, in the same order.
+	 * </p>
+	 *
+	 * @param scopedInstance a scoped instance
+	 * @param messages the messages to put back, in the order they were removed
+	 */
+	void putBack( Instance scopedInstance, List<Message> messages ) {
+
+		if( messages.isEmpty())
+			return;
+
+		// Serialize outside the lock
+		List<byte[]> payloads = new ArrayList<>( messages.size());
+		for( Message msg : messages )
+			payloads.add( serialize( msg ));
+
+		synchronized( this ) {
+			AgentQueue queue = findQueue( scopedInstance );
+
+			// Removed messages had lower sequences than the remaining ones.
+			// Put back messages take the sequences right before the head of the queue.
+			long firstSeq;
+			if( queue.entries.isEmpty()) {
+				Long nextSeq = this.pathToNextSeq.get( queue.path );
+				firstSeq = ( nextSeq == null ? 1 : nextSeq ) - messages.size();
+
+			} else {
+				firstSeq = queue.entries.peek().seq - messages.size();
+			}
+
+			List<Entry> entries = new ArrayList<>( messages.size());
+			boolean written = false;
+			for( int i = 0; i < messages.size(); i ++ ) {
+				Entry entry = newEntry( queue.path, firstSeq + i, messages.get( i ), payloads.get( i ));
+				entries.add( entry );
+				written |= entry.segment >= 0;
+			}
+
+			for( int i = entries.size() - 1; i >= 0; i -- )
+				queue.entries.addFirst( entries.get( i ));
+
+			this.totalCount += entries.size();
+
+			// These sequences were acknowledged, make them live again
+			if( written ) {
+				try {
+					appendAck( queue.path, firstSeq - 1 );
+
+				} catch( IOException e ) {
+					this.logger.warning( "An acknowledgment could not be written in the outbox of " + queue.path + ". " + e.getMessage());
+					Utils.logException( this.logger, e );
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Removes the oldest messages stored for a scoped instance.
+	 * @param scopedInstance a scoped instance
+	 * @param maxCount the maximum number of messages to remove
+	 * @return a non-null list of messages, in the order they were stored
+	 */
+	synchronized List<Message> remove( Instance scopedInstance, int maxCount ) {
+
+		List<Message> result = new ArrayList<> ();
+		AgentQueue queue = this.scopedInstanceToQueue.get( scopedInstance );
+		if( queue == null )
+			return result;
+
+		long lastSeq = -1;
+		boolean written = false;
+		for( int i = 0; i < maxCount && ! queue.entries.isEmpty(); i ++ ) {
+			Entry entry = queue.entries.poll();
+			lastSeq = entry.seq;
+			this.totalCount --;
+
+			Message msg = entry.message;
+			this.memoryBytes -= entry.memorySize;
+			if( msg == null )
+				msg = read( entry );
+
+			if( msg != null )
+				result.add( msg );
+
+			if( entry.segment >= 0 ) {
+				written = true;
+				decrementLiveMessages( entry.segment );
+			}
+		}
+
+		if( queue.entries.isEmpty())
+			this.scopedInstanceToQueue.remove( scopedInstance );
+
+		if( written ) {
+			try {
+				appendAck( queue.path, lastSeq );
+
+			} catch( IOException e ) {
+				this.logger.warning( "An acknowledgment could not be written in the outbox of " + queue.path + ". " + e.getMessage());
+				Utils.logException( this.logger, e );
+			}
+
+			deleteUselessSegments();
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @param scopedInstance a scoped instance
+	 * @return the number of messages stored for this scoped instance
+	 */
+	synchronized int getDepth( Instance scopedInstance ) {
+		AgentQueue queue = this.scopedInstanceToQueue.get( scopedInstance );
+		return queue == null ? 0 : queue.entries.size();
+	}
+
+
+	/**
+	 * @return the number of stored messages, for all the agents
+	 */
+	synchronized int getTotalDepth() {
+		return this.totalCount;
+	}
+
+
+	/**
+	 * @param scopedInstance a scoped instance
+	 * @return the time at which the oldest message was stored for this scoped instance (0 if there is none)
+	 */
+	synchronized long getOldestTimestamp( Instance scopedInstance ) {
+		AgentQueue queue = this.scopedInstanceToQueue.get( scopedInstance );
+		return queue == null ? 0 : queue.entries.peek().timestamp;
+	}
+
+
+	/**
+	 * @return a snapshot of the stored messages, for all the agents
+	 */
+	synchronized Map<Instance,List<Message>> snapshot() {
+
+		Map<Instance,List<Message>> result = new LinkedHashMap<> ();
+		for( Map.Entry<Instance,AgentQueue> mapEntry : this.scopedInstanceToQueue.entrySet()) {
+			List<Message> messages = new ArrayList<>( mapEntry.getValue().entries.size());
+			for( Entry entry : mapEntry.getValue().entries ) {
+				Message msg = entry.message != null ? entry.message : read( entry );
+				if( msg != null )
+					messages.add( msg );
+			}
+
+			result.put( mapEntry.getKey(), messages );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Restores the messages that were stored before the DM stopped.
+	 * <p>
+	 * Messages for instances that do not exist anymore are dropped.
+	 * </p>
+	 *
+	 * @param app the application, with its instances already restored
+	 */
+	synchronized void restore( Application app ) {
+
+		if( this.directory == null )
+			return;
+
+		// Read all the records
+		Map<String,TreeMap<Long,Entry>> pathToEntries = new LinkedHashMap<> ();
+		Map<String,Long> pathToAckedSeq = new HashMap<> ();
+		Map<String,Long> pathToMaxSeq = new HashMap<> ();
+		for( Map.Entry<Integer,File> segment : listSegments().entrySet()) {
+			this.currentSegment = Math.max( this.currentSegment, segment.getKey());
+			readSegment( segment.getKey(), segment.getValue(), pathToEntries, pathToAckedSeq, pathToMaxSeq );
+		}
+
+		// Never append after a record that may have been truncated
+		this.currentSegment ++;
+		this.currentSegmentSize = 0;
+
+		// Rebuild the queues
+		for( Map.Entry<String,TreeMap<Long,Entry>> mapEntry : pathToEntries.entrySet()) {
+
+			String path = mapEntry.getKey();
+			Instance instance = InstanceHelpers.findInstanceByPath( app, path );
+			if( instance == null
+					|| ! InstanceHelpers.isTarget( instance )
+					|| ! app.getRootInstances().contains( InstanceHelpers.findRootInstance( instance ))) {
+				this.logger.fine( "Stored messages for " + path + " in " + app + " are dropped. This scoped instance does not exist anymore." );
+				continue;
+			}
+
+			Long ackedSeq = pathToAckedSeq.get( path );
+			AgentQueue queue = new AgentQueue( path );
+			for( Entry entry : mapEntry.getValue().values()) {
+				if( ackedSeq != null && entry.seq <= ackedSeq )
+					continue;
+
+				queue.entries.add( entry );
+				this.totalCount ++;
+				Integer count = this.segmentToLiveMessages.get( entry.segment );
+				this.segmentToLiveMessages.put( entry.segment, count == null ? 1 : count + 1 );
+			}
+
+			if( ! queue.entries.isEmpty()) {
+				this.scopedInstanceToQueue.put( instance, queue );
+				this.logger.fine( queue.entries.size() + " stored message(s) were restored for " + path + " in " + app + "." );
+			}
+		}
+
+		// Sequences must keep on growing, even for agents without any message left
+		for( Map.Entry<String,Long> mapEntry : pathToMaxSeq.entrySet())
+			this.pathToNextSeq.put( mapEntry.getKey(), mapEntry.getValue() + 1 );
+
+		deleteUselessSegments();
+	}
+
+
+	/**
+	 * @return the maximum number of bytes of messages kept in memory
+	 */
+	synchronized long getMaxMemory() {
+		return this.maxMemory;
+	}
+
+
+	/**
+	 * @param maxMemory the maximum number of bytes of messages kept in memory
+	 */
+	synchronized void setMaxMemory( long maxMemory ) {
+		this.maxMemory = maxMemory;
+	}
+
+
+	/**
+	 * @return true if records are forced on the disk
+	 */
+	synchronized boolean isFsync() {
+		return this.fsync;
+	}
+
+
+	/**
+	 * @param fsync true to force records on the disk, false to let the operating system decide
+	 */
+	synchronized void setFsync( boolean fsync ) {
+		this.fsync = fsync;
+	}
+
+
+	/**
+	 * Closes the current segment file.
+	 * <p>
+	 * The outbox can still be used after: the segment file is opened again when necessary.
+	 * </p>
+	 */
+	synchronized void close() {
+		closeCurrentStream();
+	}
+
+
+	/**
+	 * @return the number of bytes of messages kept in memory
+	 */
+	synchronized long getMemoryBytes() {
+		return this.memoryBytes;
+	}
+
+
+	private byte[] serialize( Message msg ) {
+
+		byte[] result = null;
+		if( this.directory != null ) {
+			try {
+				result = SerializationUtils.serializeObject( msg );
+
+			} catch( IOException e ) {
+				this.logger.warning( "A message could not be serialized. It will only be kept in memory. " + e.getMessage());
+				Utils.logException( this.logger, e );
+			}
+		}
+
+		return result;
+	}
+
+
+	private AgentQueue findQueue( Instance scopedInstance ) {
+
+		AgentQueue queue = this.scopedInstanceToQueue.get( scopedInstance );
+		if( queue == null ) {
+			queue = new AgentQueue( InstanceHelpers.computeInstancePath( scopedInstance ));
+			this.scopedInstanceToQueue.put( scopedInstance, queue );
+		}
+
+		return queue;
+	}
+
+
+	private Entry newEntry( String path, long seq, Message msg, byte[] payload ) {
+
+		Entry entry = new Entry( seq, System.currentTimeMillis());
+		if( payload != null ) {
+			try {
+				append( path, entry, payload );
+
+			} catch( IOException e ) {
+				this.logger.warning( "A message could not be written in the outbox of " + path + ". It will only be kept in memory. " + e.getMessage());
+				Utils.logException( this.logger, e );
+				entry.segment = -1;
+			}
+		}
+
+		// Keep it in memory if it was not written or if there is room for it
+		int size = payload != null ? payload.length : 0;
+		if( entry.segment < 0 || this.memoryBytes + size <= this.maxMemory ) {
+			entry.message = msg;
+			entry.memorySize = size;
+			this.memoryBytes += size;
+		}
+
+		return entry;
+	}
+
+
+	private void append( String path, Entry entry, byte[] payload ) throws IOException {
+
+		if( this.currentSegmentSize >= SEGMENT_SIZE ) {
+			this.currentSegment ++;
+			this.currentSegmentSize = 0;
+		}
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream( payload.length + 64 );
+		DataOutputStream out = new DataOutputStream( os );
+		out.writeByte( RECORD_MESSAGE );
+		out.writeUTF( path );
+		out.writeLong( entry.seq );
+		out.writeLong( entry.timestamp );
+		out.writeInt( payload.length );
+		int headerSize = out.size();
+		out.write( payload );
+
+		long offset = writeRecord( os.toByteArray());
+		entry.offset = offset + headerSize;
+		entry.size = payload.length;
+		entry.segment = this.currentSegment;
+		Integer count = this.segmentToLiveMessages.get( this.currentSegment );
+		this.segmentToLiveMessages.put( this.currentSegment, count == null ? 1 : count + 1 );
+	}
+
+
+	private void appendAck( String path, long seq ) throws IOException {
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream( 64 );
+		DataOutputStream out = new DataOutputStream( os );
+		out.writeByte( RECORD_ACK );
+		out.writeUTF( path );
+		out.writeLong( seq );
+		writeRecord( os.toByteArray());
+
+		// Make sure the segment is not deleted while it holds acknowledgments
+		if( ! this.segmentToLiveMessages.containsKey( this.currentSegment ))
+			this.segmentToLiveMessages.put( this.currentSegment, 0 );
+	}
+
+
+	/**
+	 * Appends a record to the current segment file.
+	 * @param record the record's bytes
+	 * @return the position of the record in the segment file
+	 * @throws IOException if the record could not be written
+	 */
+	private long writeRecord( byte[] record ) throws IOException {
+
+		if( this.currentStream != null && this.currentStreamSegment != this.currentSegment )
+			closeCurrentStream();
+
+		if( this.currentStream == null ) {
+			Utils.createDirectory( this.directory );
+			this.currentStream = new FileOutputStream( segmentFile( this.currentSegment ), true );
+			this.currentStreamSegment = this.currentSegment;
+		}
+
+		long offset = this.currentStream.getChannel().size();
+		try {
+			this.currentStream.write( record );
+			if( this.fsync )
+				this.currentStream.getFD().sync();
+
+		} catch( IOException e ) {
+			// Start from a clean state on the next write
+			closeCurrentStream();
+			throw e;
+		}
+
+		this.currentSegmentSize = offset + record.length;
+		return offset;
+	}
+
+
+	private void closeCurrentStream() {
+		Utils.closeQuietly( this.currentStream );
+		this.currentStream = null;
+	}
+
+
+	private Message read( Entry entry ) {
+
+		Message result = null;
+		try( RandomAccessFile raf = new RandomAccessFile( segmentFile( entry.segment ), "r" )) {
+			byte[] payload = new byte[ entry.size ];
+			raf.seek( entry.offset );
+			raf.readFully( payload );
+			result = SerializationUtils.deserializeObject( payload );
+
+		} catch( IOException | ClassNotFoundException e ) {
+			this.logger.severe( "A stored message could not be read from the outbox in " + this.directory + ". It is lost. " + e.getMessage());
+			Utils.logException( this.logger, e );
+		}
+
+		return result;
+	}
+
+
+	private void readSegment(
+			int segment,
+			File segmentFile,
+			Map<String,TreeMap<Long,Entry>> pathToEntries,
+			Map<String,Long> pathToAckedSeq,
+			Map<String,Long> pathToMaxSeq ) {
+
+		this.segmentToLiveMessages.put( segment, 0 );
+		try( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( segmentFile )))) {
+			long position = 0;
+			for( ;; ) {
+				byte type;
+				try {
+					type = in.readByte();
+
+				} catch( EOFException e ) {
+					break;
+				}
+
+				String path = in.readUTF();
+				long seq = in.readLong();
+				position += 1 + 2 + path.getBytes( "UTF-8" ).length + 8;
+
+				Long maxSeq = pathToMaxSeq.get( path );
+				pathToMaxSeq.put( path, maxSeq == null ? seq : Math.max( seq, maxSeq ));
+
+				if( type == RECORD_ACK ) {
+					// The last acknowledgment wins: it goes back when messages are put back
+					pathToAckedSeq.put( path, seq );
+
+				} else if( type == RECORD_MESSAGE ) {
+					Entry entry = new Entry( seq, in.readLong());
+					entry.size = in.readInt();
+					entry.offset = position + 12;
+					entry.segment = segment;
+					position = entry.offset + entry.size;
+					if( position > segmentFile.length()
+							|| in.skipBytes( entry.size ) != entry.size )
+						throw new EOFException();
+
+					// Messages are sorted by sequence.
+					// Put back messages override the records they were read from.
+					TreeMap<Long,Entry> entries = pathToEntries.get( path );
+					if( entries == null ) {
+						entries = new TreeMap<> ();
+						pathToEntries.put( path, entries );
+					}
+
+					entries.put( seq, entry );
+
+				} else {
+					throw new IOException( "Unknown record type: " + type );
+				}
+			}
+
+		} catch( IOException e ) {
+			// A truncated record (e.g. if the DM was killed while writing)
+			this.logger.warning( "The outbox segment " + segmentFile + " is incomplete or corrupted. Only its first records are restored. " + e.getMessage());
+			Utils.logException( this.logger, e );
+		}
+	}
+
+
+	private void decrementLiveMessages( int segment ) {
+		Integer count = this.segmentToLiveMessages.get( segment );
+		if( count != null )
+			this.segmentToLiveMessages.put( segment, count - 1 );
+	}
+
+
+	private void deleteUselessSegments() {
+
+		// Segments are deleted in order, so that acknowledgments
+		// always outlive the messages they refer to.
+		boolean allDeleted = true;
+		for( Iterator<Map.Entry<Integer,Integer>> it = this.segmentToLiveMessages.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<Integer,Integer> mapEntry = it.next();
+			if( mapEntry.getValue() > 0 ) {
+				allDeleted = false;
+				break;
+			}
+
+			// Keep the current segment, unless the outbox is empty
+			if( mapEntry.getKey() == this.currentSegment && this.totalCount > 0 ) {
+				allDeleted = false;
+				break;
+			}
+
+			if( this.currentStream != null && mapEntry.getKey() == this.currentStreamSegment )
+				closeCurrentStream();
+
+			Utils.deleteFilesRecursivelyAndQuietly( segmentFile( mapEntry.getKey()));
+			it.remove();
+		}
+
+		// Everything was delivered: start a new segment.
+		// No acknowledgment remains on the disk, sequences can be reset.
+		if( allDeleted && this.totalCount == 0 ) {
+			this.pathToNextSeq.clear();
+			if( this.currentSegmentSize > 0 ) {
+				this.currentSegment ++;
+				this.currentSegmentSize = 0;
+			}
+		}
+	}
+
+
+	private Map<Integer,File> listSegments() {
+
+		Map<Integer,File> result = new TreeMap<> ();
+		File[] files = this.directory.listFiles();
+		if( files != null ) {
+			for( File f : files ) {
+				String name = f.getName();
+				if( ! name.endsWith( SEGMENT_EXTENSION ))
+					continue;
+
+				try {
+					result.put( Integer.parseInt( name.substring( 0, name.length() - SEGMENT_EXTENSION.length())), f );
+
+				} catch( NumberFormatException e ) {
+					this.logger.fine( "Ignoring an invalid file in the outbox: " + f );
+				}
+			}
+		}
+
+		return result;
+	}
+
+
+	private File segmentFile( int segment ) {
+		return new File( this.directory, String.format( "%08d", segment ) + SEGMENT_EXTENSION );
+	}
+
+
+	/**
+	 * The messages of an agent.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class AgentQueue {
+		final String path;
+		final Deque<Entry> entries = new ArrayDeque<> ();
+
+
+		/**
+		 * Constructor.
+		 * @param path
+		 */
+		AgentQueue( String path ) {
+			this.path = path;
+		}
+	}
+
+
+	/**
+	 * A stored message.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class Entry {
+		final long seq, timestamp;
+		int segment = -1, size, memorySize;
+		long offset;
+		Message message;
+
+
+		/**
+		 * Constructor.
+		 * @param seq
+		 * @param timestamp
+		 */
+		Entry( long seq, long timestamp ) {
+			this.seq = seq;
+			this.timestamp = timestamp;
+		}
+	}
+}
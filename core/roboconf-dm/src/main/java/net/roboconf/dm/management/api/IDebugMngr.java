@@ -25,8 +25,11 @@
 
 package net.roboconf.dm.management.api;
 
+import java.util.List;
+
 import net.roboconf.core.model.beans.Instance;
 import net.roboconf.dm.management.ManagedApplication;
+import net.roboconf.messaging.api.jmx.LatencyStatistics;
 import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
 
 /**
@@ -55,4 +58,15 @@ public interface IDebugMngr {
 	 * @param message an ECHO message
 	 */
 	void notifyMsgEchoReceived( MsgEcho message );
+
+	/**
+	 * Computes latency statistics about the messages received by the DM.
+	 * <p>
+	 * Statistics are given per message type and stage (transit, waiting in
+	 * the queue, processing), over a sliding window.
+	 * </p>
+	 *
+	 * @return a non-null list of statistics
+	 */
+	List<LatencyStatistics> findMessagingLatencies();
 }
@@ -30,6 +30,7 @@ import java.io.IOException;
 import net.roboconf.core.model.beans.Instance;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.messaging.api.business.IDmClient;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
 
 /**
@@ -103,6 +104,12 @@ public interface IMessagingMngr {
 	IDmClient getMessagingClient();
 
 
+	/**
+	 * @return the queue that stores the messages received by the DM (null if the DM was not started)
+	 */
+	RoboconfMessageQueue getMessageQueue();
+
+
 	/**
 	 * Checks the messaging configuration.
 	 * @throws IOException if the configuration is invalid
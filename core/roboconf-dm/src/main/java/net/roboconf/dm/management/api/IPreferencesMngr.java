@@ -37,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import net.roboconf.core.Constants;
 import net.roboconf.core.model.runtime.Preference;
 import net.roboconf.core.model.runtime.Preference.PreferenceKeyCategory;
 import net.roboconf.dm.internal.api.impl.RandomMngrImpl;
@@ -133,6 +134,21 @@ public interface IPreferencesMngr {
 	)
 	String AUTONOMIC_STRICT_MAX_VM_NUMBER = "autonomic.strict.maximum.vm.number";
 
+	/**
+	 * The number of heart beats an agent can miss before being considered in problem.
+	 * <p>
+	 * This value applies to all the applications. It can be overridden for a given
+	 * application with the key <code>heartbeat.tolerance.&lt;application name&gt;</code>.
+	 * </p>
+	 */
+	@PreferenceDescription(
+			desc =
+			"The number of heart beats an agent can miss before being considered in problem.\n"
+			+ "A heart beat is expected every " + Constants.HEARTBEAT_PERIOD / 1000 + " seconds.\n"
+			+ "This value can be overridden for a given application with the key \"heartbeat.tolerance.<application name>\"."
+	)
+	String HEARTBEAT_TOLERANCE = "heartbeat.tolerance";
+
 	/**
 	 * The user language (example: the web console).
 	 */
@@ -281,6 +297,7 @@ public interface IPreferencesMngr {
 			this.keyToCategory.put( USER_LANGUAGE, PreferenceKeyCategory.WEB );
 			this.keyToCategory.put( WEB_EXTENSIONS, PreferenceKeyCategory.WEB );
 			this.keyToCategory.put( FORBIDDEN_RANDOM_PORTS, PreferenceKeyCategory.MISCELLANEOUS );
+			this.keyToCategory.put( HEARTBEAT_TOLERANCE, PreferenceKeyCategory.MISCELLANEOUS );
 
 			// Define default values
 			this.keyToDefaultValue.put( JAVAX_MAIL_FROM, "dm@roboconf.net" );
@@ -290,6 +307,7 @@ public interface IPreferencesMngr {
 			this.keyToDefaultValue.put( JAVAX_MAIL_SSL_TRUST, "smtp.gmail.com" );
 			this.keyToDefaultValue.put( JAVAX_MAIL_START_SSL_ENABLE, "true" );
 			this.keyToDefaultValue.put( USER_LANGUAGE, "EN" );
+			this.keyToDefaultValue.put( HEARTBEAT_TOLERANCE, "2" );
 		}
 	}
 
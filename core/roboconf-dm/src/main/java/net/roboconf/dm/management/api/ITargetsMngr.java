@@ -367,6 +367,15 @@ public interface ITargetsMngr {
 	Map<String,byte[]> findScriptResourcesForAgent( AbstractApplication app, Instance scopedInstance ) throws IOException;
 
 
+	/**
+	 * Finds the scripts that will be sent and executed by an agent once the VM is created, without reading them.
+	 * @param app an application
+	 * @param scopedInstance a scopedInstance
+	 * @return a non-null map (key = the file location, relative to the instance's directory, value = file)
+	 */
+	Map<String,File> findScriptFilesForAgent( AbstractApplication app, Instance scopedInstance );
+
+
 	/**
 	 * Finds the script the DM has to execute to complete the configuration of a machine.
 	 * @param app an application
@@ -0,0 +1,350 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.api.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.ApplicationTemplate;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.runtime.EventType;
+import net.roboconf.dm.internal.api.impl.AsynchronousDmListener.OverflowPolicy;
+import net.roboconf.dm.management.events.IDmListener;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class AsynchronousDmListenerTest {
+
+	@Test
+	public void testOverflowPolicies() {
+
+		Assert.assertEquals( OverflowPolicy.BLOCK, OverflowPolicy.which( "block" ));
+		Assert.assertEquals( OverflowPolicy.DROP_OLDEST, OverflowPolicy.which( "drop-oldest" ));
+		Assert.assertEquals( OverflowPolicy.DROP_NEWEST, OverflowPolicy.which( "DROP-newest" ));
+		Assert.assertNull( OverflowPolicy.which( "coalesce" ));
+		Assert.assertNull( OverflowPolicy.which( null ));
+	}
+
+
+	@Test
+	public void testDeliveryOrder() throws Exception {
+
+		RecordingListener listener = new RecordingListener( 0 );
+		AsynchronousDmListener asyncListener = new AsynchronousDmListener( listener, 100, OverflowPolicy.BLOCK );
+		Assert.assertEquals( listener.getId(), asyncListener.getId());
+		Assert.assertEquals( listener, asyncListener.getListener());
+		asyncListener.start();
+
+		asyncListener.enableNotifications();
+		for( int i=0; i<50; i++ )
+			asyncListener.raw( String.valueOf( i ));
+
+		asyncListener.disableNotifications();
+		asyncListener.stop( true, 5000 );
+
+		Assert.assertEquals( 52, listener.events.size());
+		Assert.assertEquals( "enable", listener.events.get( 0 ));
+		for( int i=0; i<50; i++ )
+			Assert.assertEquals( String.valueOf( i ), listener.events.get( i + 1 ));
+
+		Assert.assertEquals( "disable", listener.events.get( 51 ));
+		Assert.assertEquals( 52, asyncListener.getDeliveredCount());
+		Assert.assertEquals( 0, asyncListener.getDroppedCount());
+		Assert.assertEquals( 0, asyncListener.getPendingCount());
+	}
+
+
+	@Test
+	public void testAllEventTypes() throws Exception {
+
+		RecordingListener listener = new RecordingListener( 0 );
+		AsynchronousDmListener asyncListener = new AsynchronousDmListener( listener, 100, OverflowPolicy.BLOCK );
+		asyncListener.start();
+
+		asyncListener.application( new Application( "app", null ), EventType.CREATED );
+		asyncListener.applicationTemplate( new ApplicationTemplate( "tpl" ), EventType.DELETED );
+		asyncListener.instance( new Instance( "inst" ), null, EventType.CHANGED );
+		asyncListener.stop( true, 5000 );
+
+		Assert.assertEquals( 3, listener.events.size());
+		Assert.assertEquals( "app CREATED", listener.events.get( 0 ));
+		Assert.assertEquals( "tpl DELETED", listener.events.get( 1 ));
+		Assert.assertEquals( "inst CHANGED", listener.events.get( 2 ));
+	}
+
+
+	@Test
+	public void testDropOldest() throws Exception {
+
+		RecordingListener listener = new RecordingListener( 0 );
+		listener.blocker = new CountDownLatch( 1 );
+		AsynchronousDmListener asyncListener = new AsynchronousDmListener( listener, 5, OverflowPolicy.DROP_OLDEST );
+		Assert.assertEquals( 5, asyncListener.getCapacity());
+		Assert.assertEquals( OverflowPolicy.DROP_OLDEST, asyncListener.getPolicy());
+		asyncListener.start();
+
+		// The first event blocks the delivery thread
+		asyncListener.raw( "first" );
+		Assert.assertTrue( listener.started.await( 5, TimeUnit.SECONDS ));
+		for( int i=0; i<20; i++ )
+			asyncListener.raw( String.valueOf( i ));
+
+		Assert.assertEquals( 5, asyncListener.getPendingCount());
+		Assert.assertEquals( 15, asyncListener.getDroppedCount());
+
+		listener.blocker.countDown();
+		asyncListener.stop( true, 5000 );
+
+		Assert.assertEquals( 6, listener.events.size());
+		Assert.assertEquals( "first", listener.events.get( 0 ));
+		for( int i=0; i<5; i++ )
+			Assert.assertEquals( String.valueOf( 15 + i ), listener.events.get( i + 1 ));
+	}
+
+
+	@Test
+	public void testDropOldest_controlEventsAreKept() throws Exception {
+
+		RecordingListener listener = new RecordingListener( 0 );
+		listener.blocker = new CountDownLatch( 1 );
+		AsynchronousDmListener asyncListener = new AsynchronousDmListener( listener, 5, OverflowPolicy.DROP_OLDEST );
+		asyncListener.start();
+
+		// The first event blocks the delivery thread
+		asyncListener.raw( "first" );
+		Assert.assertTrue( listener.started.await( 5, TimeUnit.SECONDS ));
+		asyncListener.disableNotifications();
+		for( int i=0; i<20; i++ )
+			asyncListener.raw( String.valueOf( i ));
+
+		Assert.assertEquals( 5, asyncListener.getPendingCount());
+		Assert.assertEquals( 16, asyncListener.getDroppedCount());
+
+		listener.blocker.countDown();
+		asyncListener.stop( true, 5000 );
+
+		Assert.assertEquals( 6, listener.events.size());
+		Assert.assertEquals( "first", listener.events.get( 0 ));
+		Assert.assertEquals( "disable", listener.events.get( 1 ));
+		for( int i=0; i<4; i++ )
+			Assert.assertEquals( String.valueOf( 16 + i ), listener.events.get( i + 2 ));
+	}
+
+
+	@Test
+	public void testDropOldest_onlyControlEvents() throws Exception {
+
+		RecordingListener listener = new RecordingListener( 0 );
+		listener.blocker = new CountDownLatch( 1 );
+		final AsynchronousDmListener asyncListener = new AsynchronousDmListener( listener, 2, OverflowPolicy.DROP_OLDEST );
+		asyncListener.start();
+
+		asyncListener.raw( "first" );
+		Assert.assertTrue( listener.started.await( 5, TimeUnit.SECONDS ));
+		asyncListener.disableNotifications();
+		asyncListener.enableNotifications();
+
+		// All the pending events are control events: the producer waits
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				asyncListener.raw( "last" );
+			}
+		};
+
+		producer.start();
+		producer.join( 200 );
+		Assert.assertTrue( producer.isAlive());
+		Assert.assertEquals( 0, asyncListener.getDroppedCount());
+
+		listener.blocker.countDown();
+		producer.join( 5000 );
+		Assert.assertFalse( producer.isAlive());
+		asyncListener.stop( true, 5000 );
+
+		Assert.assertEquals( Arrays.asList( "first", "disable", "enable", "last" ), listener.events );
+		Assert.assertEquals( 0, asyncListener.getDroppedCount());
+	}
+
+
+	@Test
+	public void testDropNewest() throws Exception {
+
+		RecordingListener listener = new RecordingListener( 0 );
+		listener.blocker = new CountDownLatch( 1 );
+		AsynchronousDmListener asyncListener = new AsynchronousDmListener( listener, 5, OverflowPolicy.DROP_NEWEST );
+		asyncListener.start();
+
+		asyncListener.raw( "first" );
+		Assert.assertTrue( listener.started.await( 5, TimeUnit.SECONDS ));
+		for( int i=0; i<20; i++ )
+			asyncListener.raw( String.valueOf( i ));
+
+		Assert.assertEquals( 5, asyncListener.getPendingCount());
+		Assert.assertEquals( 15, asyncListener.getDroppedCount());
+
+		listener.blocker.countDown();
+		asyncListener.stop( true, 5000 );
+
+		Assert.assertEquals( 6, listener.events.size());
+		Assert.assertEquals( "first", listener.events.get( 0 ));
+		for( int i=0; i<5; i++ )
+			Assert.assertEquals( String.valueOf( i ), listener.events.get( i + 1 ));
+	}
+
+
+	@Test
+	public void testBlock_andLag() throws Exception {
+
+		RecordingListener listener = new RecordingListener( 20 );
+		AsynchronousDmListener asyncListener = new AsynchronousDmListener( listener, 2, OverflowPolicy.BLOCK );
+		asyncListener.start();
+
+		// The producer waits, nothing is lost
+		for( int i=0; i<10; i++ )
+			asyncListener.raw( String.valueOf( i ));
+
+		asyncListener.stop( true, 5000 );
+		Assert.assertEquals( 10, listener.events.size());
+		Assert.assertEquals( 0, asyncListener.getDroppedCount());
+		Assert.assertTrue( asyncListener.getMaxLag() > 0 );
+		Assert.assertTrue( asyncListener.getLastLag() <= asyncListener.getMaxLag());
+	}
+
+
+	@Test
+	public void testStopWithoutDraining() throws Exception {
+
+		RecordingListener listener = new RecordingListener( 0 );
+		listener.blocker = new CountDownLatch( 1 );
+		AsynchronousDmListener asyncListener = new AsynchronousDmListener( listener, 100, OverflowPolicy.BLOCK );
+		asyncListener.start();
+
+		asyncListener.raw( "first" );
+		Assert.assertTrue( listener.started.await( 5, TimeUnit.SECONDS ));
+		asyncListener.raw( "second" );
+		asyncListener.stop( false, 0 );
+
+		// Events are ignored once the listener is stopped
+		asyncListener.raw( "third" );
+		Assert.assertEquals( 0, asyncListener.getPendingCount());
+
+		listener.blocker.countDown();
+		asyncListener.stop( false, 5000 );
+		Assert.assertEquals( Collections.singletonList( "first" ), listener.events );
+	}
+
+
+	@Test
+	public void testListenerFailure() throws Exception {
+
+		RecordingListener listener = new RecordingListener( 0 );
+		AsynchronousDmListener asyncListener = new AsynchronousDmListener( listener, 100, OverflowPolicy.BLOCK );
+		asyncListener.start();
+
+		asyncListener.raw( "fail" );
+		asyncListener.raw( "after" );
+		asyncListener.stop( true, 5000 );
+
+		Assert.assertEquals( 2, listener.events.size());
+		Assert.assertEquals( 2, asyncListener.getDeliveredCount());
+	}
+
+
+	/**
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static class RecordingListener implements IDmListener {
+
+		final List<String> events = Collections.synchronizedList( new ArrayList<String> ());
+		final CountDownLatch started = new CountDownLatch( 1 );
+		final long delay;
+		CountDownLatch blocker;
+
+
+		RecordingListener( long delay ) {
+			this.delay = delay;
+		}
+
+		@Override
+		public String getId() {
+			return "recording";
+		}
+
+		@Override
+		public void enableNotifications() {
+			this.events.add( "enable" );
+		}
+
+		@Override
+		public void disableNotifications() {
+			this.events.add( "disable" );
+		}
+
+		@Override
+		public void application( Application application, EventType eventType ) {
+			this.events.add( application.getName() + " " + eventType );
+		}
+
+		@Override
+		public void applicationTemplate( ApplicationTemplate tpl, EventType eventType ) {
+			this.events.add( tpl.getName() + " " + eventType );
+		}
+
+		@Override
+		public void instance( Instance instance, Application application, EventType eventType ) {
+			this.events.add( instance.getName() + " " + eventType );
+		}
+
+		@Override
+		public void raw( String message, Object... data ) {
+
+			this.events.add( message );
+			this.started.countDown();
+			try {
+				if( this.blocker != null )
+					this.blocker.await( 5, TimeUnit.SECONDS );
+
+				Thread.sleep( this.delay );
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+
+			if( "fail".equals( message ))
+				throw new RuntimeException( "for test" );
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.api.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.roboconf.core.internal.tests.TestApplication;
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.utils.BlobUtils;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class BlobsMngrImplTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BlobsMngrImpl mngr;
+	private TestApplication app;
+	private Map<String,File> files;
+
+
+	@Before
+	public void prepare() throws Exception {
+
+		this.mngr = new BlobsMngrImpl();
+		this.app = new TestApplication();
+		this.files = new HashMap<> ();
+
+		File dir = this.folder.newFolder();
+		this.files.put( "deploy.sh", write( new File( dir, "deploy.sh" ), "deploy" ));
+		this.files.put( "start.sh", write( new File( dir, "start.sh" ), "start" ));
+		this.files.put( "sub/start.sh", write( new File( dir, "sub/start.sh" ), "start" ));
+	}
+
+
+	@Test
+	public void testComputeDigests() throws Exception {
+
+		Map<String,String> digests = this.mngr.computeDigests( this.files );
+		Assert.assertEquals( 3, digests.size());
+		Assert.assertEquals( BlobUtils.computeDigest( "deploy".getBytes( StandardCharsets.UTF_8 )), digests.get( "deploy.sh" ));
+		Assert.assertEquals( digests.get( "start.sh" ), digests.get( "sub/start.sh" ));
+		Assert.assertEquals( 2, this.mngr.digestToFile.size());
+
+		// Recently modified files are not cached
+		Assert.assertEquals( 0, this.mngr.fileToDigest.size());
+	}
+
+
+	@Test
+	public void testComputeDigests_cache() throws Exception {
+
+		// Make the files look old enough to be cached
+		for( File f : this.files.values())
+			Assert.assertTrue( f.setLastModified( System.currentTimeMillis() - 2 * BlobsMngrImpl.RACY_DELAY ));
+
+		Map<String,String> digests = this.mngr.computeDigests( this.files );
+		Assert.assertEquals( 3, this.mngr.fileToDigest.size());
+
+		// The cache is used as long as the file does not change
+		File f = this.files.get( "deploy.sh" );
+		this.mngr.fileToDigest.put( f, new BlobsMngrImpl.CachedDigest( "cached", f.length(), f.lastModified()));
+		Assert.assertEquals( "cached", this.mngr.computeDigests( this.files ).get( "deploy.sh" ));
+
+		// Modifications invalidate the cache
+		write( f, "deploy again" );
+		Map<String,String> newDigests = this.mngr.computeDigests( this.files );
+		Assert.assertNotEquals( digests.get( "deploy.sh" ), newDigests.get( "deploy.sh" ));
+		Assert.assertEquals( BlobUtils.computeDigest( "deploy again".getBytes( StandardCharsets.UTF_8 )), newDigests.get( "deploy.sh" ));
+	}
+
+
+	@Test
+	public void testFindResourcesToSend() throws Exception {
+
+		Map<String,String> digests = this.mngr.computeDigests( this.files );
+
+		// The first time, every blob is sent (but only once)
+		Map<String,byte[]> toSend = this.mngr.findResourcesToSend( this.app, this.app.getMySqlVm(), this.files, digests );
+		Assert.assertEquals( 2, toSend.size());
+		Assert.assertArrayEquals( "deploy".getBytes( StandardCharsets.UTF_8 ), toSend.get( "deploy.sh" ));
+
+		// The second time, nothing is sent
+		toSend = this.mngr.findResourcesToSend( this.app, this.app.getMySqlVm(), this.files, digests );
+		Assert.assertEquals( 0, toSend.size());
+
+		// Another agent does not share this knowledge
+		toSend = this.mngr.findResourcesToSend( this.app, this.app.getTomcatVm(), this.files, digests );
+		Assert.assertEquals( 2, toSend.size());
+
+		// Only modified files are sent
+		write( this.files.get( "deploy.sh" ), "deploy again" );
+		digests = this.mngr.computeDigests( this.files );
+		toSend = this.mngr.findResourcesToSend( this.app, this.app.getMySqlVm(), this.files, digests );
+		Assert.assertEquals( 1, toSend.size());
+		Assert.assertArrayEquals( "deploy again".getBytes( StandardCharsets.UTF_8 ), toSend.get( "deploy.sh" ));
+
+		// When an agent is forgotten, everything is sent again
+		this.mngr.forgetAgent( this.app, this.app.getMySqlVm());
+		toSend = this.mngr.findResourcesToSend( this.app, this.app.getMySqlVm(), this.files, digests );
+		Assert.assertEquals( 2, toSend.size());
+	}
+
+
+	@Test
+	public void testFindBlobs() throws Exception {
+
+		Map<String,String> digests = this.mngr.computeDigests( this.files );
+		String deployDigest = digests.get( "deploy.sh" );
+		String unknownDigest = BlobUtils.computeDigest( new byte[ 3 ]);
+
+		Map<String,byte[]> blobs = this.mngr.findBlobs( this.app, this.app.getMySqlVm(), Arrays.asList( deployDigest, unknownDigest ));
+		Assert.assertEquals( 1, blobs.size());
+		Assert.assertArrayEquals( "deploy".getBytes( StandardCharsets.UTF_8 ), blobs.get( deployDigest ));
+
+		// Found blobs are then known by the agent
+		Assert.assertTrue( this.mngr.agentToDigests.values().iterator().next().contains( deployDigest ));
+
+		// If the file was modified in the meantime, its previous content cannot be found anymore
+		write( this.files.get( "deploy.sh" ), "deploy again" );
+		blobs = this.mngr.findBlobs( this.app, this.app.getTomcatVm(), Arrays.asList( deployDigest ));
+		Assert.assertEquals( 0, blobs.size());
+		Assert.assertFalse( this.mngr.digestToFile.containsKey( deployDigest ));
+	}
+
+
+	private static File write( File f, String content ) throws Exception {
+		Utils.createDirectory( f.getParentFile());
+		Utils.writeStringInto( content, f );
+		return f;
+	}
+}
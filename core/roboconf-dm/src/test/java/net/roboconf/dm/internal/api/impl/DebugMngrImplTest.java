@@ -36,6 +36,9 @@ import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.api.IDebugMngr;
 import net.roboconf.dm.management.api.IMessagingMngr;
 import net.roboconf.dm.management.api.INotificationMngr;
+import net.roboconf.messaging.api.jmx.LatencyStatistics;
+import net.roboconf.messaging.api.jmx.MessageLatencyTracker.LatencyStage;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
 import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
 
@@ -176,4 +179,27 @@ public class DebugMngrImplTest {
 				Mockito.any( Instance.class ),
 				Mockito.any( Message.class ));
 	}
+
+
+	@Test
+	public void testFindMessagingLatencies() throws Exception {
+
+		// No queue
+		Assert.assertEquals( 0, this.mngr.findMessagingLatencies().size());
+
+		// A queue
+		RoboconfMessageQueue queue = new RoboconfMessageQueue();
+		Mockito.when( this.messagingMngr.getMessageQueue()).thenReturn( queue );
+		Assert.assertEquals( 0, this.mngr.findMessagingLatencies().size());
+
+		MsgEcho msg = new MsgEcho( "hey" );
+		msg.setSendTimestamp( System.currentTimeMillis() - 50 );
+		queue.add( msg );
+
+		List<LatencyStatistics> stats = this.mngr.findMessagingLatencies();
+		Assert.assertEquals( 1, stats.size());
+		Assert.assertEquals( "MsgEcho", stats.get( 0 ).getMessageType());
+		Assert.assertEquals( LatencyStage.TRANSIT, stats.get( 0 ).getStage());
+		Assert.assertTrue( stats.get( 0 ).getMax() >= 50000 );
+	}
 }
@@ -0,0 +1,285 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import net.roboconf.core.internal.tests.TestApplication;
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Component;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.dm.internal.api.impl.DeploymentPipeline.Plan;
+import net.roboconf.dm.internal.api.impl.DeploymentPipeline.Step;
+import net.roboconf.dm.management.ManagedApplication;
+import net.roboconf.dm.management.api.ITargetsMngr;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class DeploymentPipelineTest {
+
+	@Test
+	public void testPlan() {
+
+		TestApplication app = new TestApplication();
+		ITargetsMngr targetsMngr = Mockito.mock( ITargetsMngr.class );
+		Mockito.when( targetsMngr.findTargetId( Mockito.any( Application.class ), Mockito.anyString())).thenReturn( "t1" );
+
+		List<Instance> instances = new ArrayList<> ();
+		for( Instance rootInstance : app.getRootInstances())
+			instances.addAll( InstanceHelpers.buildHierarchicalList( rootInstance ));
+
+		Plan plan = DeploymentPipeline.plan( app, instances, true, targetsMngr );
+		Assert.assertEquals( app.getRootInstances().size(), plan.stageCount );
+		Assert.assertEquals( app.getRootInstances().size(), plan.firstStages.size());
+
+		int count = 0;
+		for( DeploymentPipeline.Stage stage : plan.firstStages ) {
+			Assert.assertEquals( "t1", stage.targetId );
+			Assert.assertTrue( InstanceHelpers.isTarget( stage.instances.get( 0 )));
+			Assert.assertEquals( 0, stage.nextStages.size());
+			count += stage.instances.size();
+		}
+
+		Assert.assertEquals( instances.size(), count );
+	}
+
+
+	@Test
+	public void testPlan_nestedScopedInstances() {
+
+		Application app = nestedApplication( 1, 2 );
+		ITargetsMngr targetsMngr = Mockito.mock( ITargetsMngr.class );
+		List<Instance> instances = InstanceHelpers.buildHierarchicalList( app.getRootInstances().iterator().next());
+
+		// Chained
+		Plan plan = DeploymentPipeline.plan( app, instances, true, targetsMngr );
+		Assert.assertEquals( 3, plan.stageCount );
+		Assert.assertEquals( 1, plan.firstStages.size());
+		Assert.assertEquals( 2, plan.firstStages.get( 0 ).nextStages.size());
+		Assert.assertNull( plan.firstStages.get( 0 ).targetId );
+
+		// Not chained
+		plan = DeploymentPipeline.plan( app, instances, false, targetsMngr );
+		Assert.assertEquals( 3, plan.stageCount );
+		Assert.assertEquals( 3, plan.firstStages.size());
+	}
+
+
+	@Test
+	public void testExecute_globalLimit() {
+
+		Application app = nestedApplication( 8, 0 );
+		ITargetsMngr targetsMngr = Mockito.mock( ITargetsMngr.class );
+		Plan plan = DeploymentPipeline.plan( app, new ArrayList<>( app.getRootInstances()), false, targetsMngr );
+
+		DeploymentPipeline pipeline = new DeploymentPipeline();
+		pipeline.setMaxConcurrency( 3 );
+		Assert.assertEquals( 3, pipeline.getMaxConcurrency());
+
+		ConcurrencyStep step = new ConcurrencyStep();
+		List<Exception> exceptions = pipeline.execute( new ManagedApplication( app ), "test", plan, step );
+		Assert.assertEquals( 0, exceptions.size());
+		Assert.assertEquals( 8, step.processed.get());
+		Assert.assertTrue( step.maxRunning.get() <= 3 );
+		Assert.assertTrue( step.maxRunning.get() > 1 );
+	}
+
+
+	@Test
+	public void testExecute_perTargetLimit() {
+
+		Application app = nestedApplication( 8, 0 );
+		ITargetsMngr targetsMngr = Mockito.mock( ITargetsMngr.class );
+		Mockito.when( targetsMngr.findTargetId( Mockito.any( Application.class ), Mockito.anyString())).thenReturn( "t1" );
+		Plan plan = DeploymentPipeline.plan( app, new ArrayList<>( app.getRootInstances()), false, targetsMngr );
+
+		DeploymentPipeline pipeline = new DeploymentPipeline();
+		pipeline.setMaxConcurrencyPerTarget( 0 );
+		Assert.assertEquals( 1, pipeline.getMaxConcurrencyPerTarget());
+
+		ConcurrencyStep step = new ConcurrencyStep();
+		List<Exception> exceptions = pipeline.execute( new ManagedApplication( app ), "test", plan, step );
+		Assert.assertEquals( 0, exceptions.size());
+		Assert.assertEquals( 8, step.processed.get());
+		Assert.assertEquals( 1, step.maxRunning.get());
+	}
+
+
+	@Test
+	public void testExecute_busyTargetDoesNotHoldGlobalPermits() throws Exception {
+
+		final DeploymentPipeline pipeline = new DeploymentPipeline();
+		pipeline.setMaxConcurrency( 2 );
+		pipeline.setMaxConcurrencyPerTarget( 1 );
+
+		// Two machines on a busy target: the first one waits until the other target was processed
+		final Application busyApp = nestedApplication( 2, 0 );
+		ITargetsMngr busyTargetsMngr = Mockito.mock( ITargetsMngr.class );
+		Mockito.when( busyTargetsMngr.findTargetId( Mockito.any( Application.class ), Mockito.anyString())).thenReturn( "busy" );
+		final Plan busyPlan = DeploymentPipeline.plan( busyApp, new ArrayList<>( busyApp.getRootInstances()), false, busyTargetsMngr );
+
+		final CountDownLatch busyStarted = new CountDownLatch( 1 );
+		final CountDownLatch freeProcessed = new CountDownLatch( 1 );
+		final AtomicInteger timeouts = new AtomicInteger();
+		final List<Exception> busyExceptions = Collections.synchronizedList( new ArrayList<Exception> ());
+		Thread busyThread = new Thread() {
+			@Override
+			public void run() {
+				busyExceptions.addAll( pipeline.execute( new ManagedApplication( busyApp ), "busy", busyPlan, new Step() {
+					@Override
+					public void process( Instance instance ) throws Exception {
+						busyStarted.countDown();
+						if( ! freeProcessed.await( 5, TimeUnit.SECONDS ))
+							timeouts.incrementAndGet();
+					}
+				}));
+			}
+		};
+
+		busyThread.start();
+		Assert.assertTrue( busyStarted.await( 5, TimeUnit.SECONDS ));
+
+		// Let the second machine wait for the busy target
+		Thread.sleep( 100 );
+
+		// One machine on another target: it must not wait for the busy one
+		Application freeApp = nestedApplication( 1, 0 );
+		ITargetsMngr freeTargetsMngr = Mockito.mock( ITargetsMngr.class );
+		Mockito.when( freeTargetsMngr.findTargetId( Mockito.any( Application.class ), Mockito.anyString())).thenReturn( "free" );
+		Plan freePlan = DeploymentPipeline.plan( freeApp, new ArrayList<>( freeApp.getRootInstances()), false, freeTargetsMngr );
+
+		List<Exception> exceptions = pipeline.execute( new ManagedApplication( freeApp ), "free", freePlan, new Step() {
+			@Override
+			public void process( Instance instance ) throws Exception {
+				freeProcessed.countDown();
+			}
+		});
+
+		busyThread.join( 15000 );
+		Assert.assertFalse( busyThread.isAlive());
+		Assert.assertEquals( 0, exceptions.size());
+		Assert.assertEquals( 0, busyExceptions.size());
+		Assert.assertEquals( 0, timeouts.get());
+	}
+
+
+	@Test
+	public void testExecute_orderAndErrors() {
+
+		Application app = nestedApplication( 2, 3 );
+		ITargetsMngr targetsMngr = Mockito.mock( ITargetsMngr.class );
+		List<Instance> instances = new ArrayList<> ();
+		for( Instance rootInstance : app.getRootInstances())
+			instances.addAll( InstanceHelpers.buildHierarchicalList( rootInstance ));
+
+		final List<Instance> processed = Collections.synchronizedList( new ArrayList<Instance> ());
+		Plan plan = DeploymentPipeline.plan( app, instances, true, targetsMngr );
+		List<Exception> exceptions = new DeploymentPipeline().execute( new ManagedApplication( app ), "test", plan, new Step() {
+			@Override
+			public void process( Instance instance ) throws Exception {
+				processed.add( instance );
+				if( instance.getParent() == null )
+					throw new Exception( "for test" );
+			}
+		});
+
+		// All the instances were processed, even if their parent failed
+		Assert.assertEquals( 2, exceptions.size());
+		Assert.assertEquals( instances.size(), processed.size());
+		for( Instance instance : processed ) {
+			if( instance.getParent() != null )
+				Assert.assertTrue( processed.indexOf( instance.getParent()) < processed.indexOf( instance ));
+		}
+	}
+
+
+	/**
+	 * Creates an application with root instances and (nested) containers.
+	 * @param vmCount the number of root instances
+	 * @param containerCount the number of containers per root instance
+	 * @return an application
+	 */
+	private static Application nestedApplication( int vmCount, int containerCount ) {
+
+		Component vmComponent = new Component( "vm" ).installerName( "target" );
+		Component containerComponent = new Component( "container" ).installerName( "target" );
+		Component appComponent = new Component( "app" ).installerName( "script" );
+		vmComponent.addChild( containerComponent );
+		containerComponent.addChild( appComponent );
+
+		Application app = new TestApplication();
+		app.getRootInstances().clear();
+		for( int i=0; i<vmCount; i++ ) {
+			Instance vm = new Instance( "vm" + i ).component( vmComponent );
+			for( int j=0; j<containerCount; j++ ) {
+				Instance container = new Instance( "container" + j ).component( containerComponent );
+				InstanceHelpers.insertChild( vm, container );
+				InstanceHelpers.insertChild( container, new Instance( "app" ).component( appComponent ));
+			}
+
+			app.getRootInstances().add( vm );
+		}
+
+		return app;
+	}
+
+
+	/**
+	 * A step that measures how many instances are processed at the same time.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class ConcurrencyStep implements Step {
+
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final AtomicInteger processed = new AtomicInteger();
+
+
+		@Override
+		public void process( Instance instance ) throws Exception {
+
+			int current = this.running.incrementAndGet();
+			synchronized( this ) {
+				this.maxRunning.set( Math.max( current, this.maxRunning.get()));
+			}
+
+			Thread.sleep( 50 );
+			this.running.decrementAndGet();
+			this.processed.incrementAndGet();
+		}
+	}
+}
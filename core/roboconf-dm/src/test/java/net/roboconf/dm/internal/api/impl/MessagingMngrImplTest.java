@@ -38,6 +38,9 @@ import net.roboconf.core.model.beans.Instance.InstanceStatus;
 import net.roboconf.dm.internal.environment.messaging.RCDm;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.api.IMessagingMngr;
+import net.roboconf.messaging.api.AbstractMessageProcessor;
+import net.roboconf.messaging.api.business.IDmClient;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdRemoveInstance;
 
@@ -87,6 +90,26 @@ public class MessagingMngrImplTest {
 	}
 
 
+	@Test
+	@SuppressWarnings( "unchecked" )
+	public void testGetMessageQueue() {
+
+		// No message processor
+		Assert.assertNull( this.mngr.getMessageQueue());
+
+		// With a message processor
+		RoboconfMessageQueue queue = new RoboconfMessageQueue();
+		AbstractMessageProcessor<IDmClient> processor = Mockito.mock( AbstractMessageProcessor.class );
+		Mockito.when( processor.getMessageQueue()).thenReturn( queue );
+		Mockito.when( this.msgClient.getMessageProcessor()).thenReturn( processor );
+		Assert.assertEquals( queue, this.mngr.getMessageQueue());
+
+		// No messaging client
+		((MessagingMngrImpl) this.mngr).setMessagingClient( null );
+		Assert.assertNull( this.mngr.getMessageQueue());
+	}
+
+
 	@Test
 	public void testSendMessageDirectly_normal() throws Exception {
 
@@ -235,6 +258,38 @@ public class MessagingMngrImplTest {
 	}
 
 
+	@Test
+	public void testSendStoredMessages_theOrderIsKeptWhenTheMessagingFails() throws Exception {
+
+		TestApplication app = new TestApplication();
+		ManagedApplication ma = new ManagedApplication( app );
+		Message msg1 = new MsgCmdRemoveInstance( "/1" );
+		Message msg2 = new MsgCmdRemoveInstance( "/2" );
+		Message msg3 = new MsgCmdRemoveInstance( "/3" );
+
+		ma.storeAwaitingMessage( app.getMySqlVm(), msg1 );
+		ma.storeAwaitingMessage( app.getMySqlVm(), msg2 );
+		ma.storeAwaitingMessage( app.getMySqlVm(), msg3 );
+
+		app.getMySqlVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		Mockito.when( this.msgClient.isConnected()).thenReturn( true );
+		Mockito.doThrow( new IOException( "for test" )).when( this.msgClient ).sendMessageToAgent(
+				Mockito.any( Application.class ),
+				Mockito.any( Instance.class ),
+				Mockito.eq( msg2 ));
+
+		this.mngr.sendStoredMessages( ma, app.getMySqlVm());
+
+		// The first message was sent, we stopped at the second one
+		Mockito.verify( this.msgClient, Mockito.times( 1 )).sendMessageToAgent( app, app.getMySqlVm(), msg1 );
+		Mockito.verify( this.msgClient, Mockito.times( 1 )).sendMessageToAgent( app, app.getMySqlVm(), msg2 );
+		Mockito.verify( this.msgClient, Mockito.times( 0 )).sendMessageToAgent( app, app.getMySqlVm(), msg3 );
+
+		List<Message> messages = ma.removeAwaitingMessages( app.getMySqlVm());
+		Assert.assertEquals( Arrays.asList( msg2, msg3 ), messages );
+	}
+
+
 	@Test
 	public void testSendStoredMessages_NoMessageToSend() throws Exception {
 
@@ -29,6 +29,11 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.runtime.EventType;
+import net.roboconf.dm.internal.api.impl.AsynchronousDmListener.OverflowPolicy;
+import net.roboconf.dm.internal.api.impl.AsynchronousDmListenerTest.RecordingListener;
 import net.roboconf.dm.management.events.IDmListener;
 
 /**
@@ -88,4 +93,173 @@ public class NotificationMngrImplTest {
 		Mockito.verify( listener1, Mockito.only()).disableNotifications();
 		Mockito.verify( listener2, Mockito.only()).disableNotifications();
 	}
+
+
+	@Test
+	public void testAsynchronousNotifications() throws Exception {
+
+		NotificationMngrImpl mngr = new NotificationMngrImpl();
+		Assert.assertFalse( mngr.isAsynchronousNotifications());
+
+		RecordingListener listener = new RecordingListener( 0 );
+		mngr.addListener( listener );
+		Assert.assertNull( mngr.findAsynchronousListener( listener ));
+
+		// Synchronous mode
+		mngr.enableNotifications();
+		mngr.application( new Application( "app", null ), EventType.CREATED );
+		Assert.assertEquals( 2, listener.events.size());
+
+		// Asynchronous mode
+		mngr.setAsynchronousNotifications( true );
+		Assert.assertTrue( mngr.isAsynchronousNotifications());
+
+		AsynchronousDmListener asyncListener = mngr.findAsynchronousListener( listener );
+		Assert.assertNotNull( asyncListener );
+		Assert.assertEquals( AsynchronousDmListener.DEFAULT_CAPACITY, asyncListener.getCapacity());
+		Assert.assertEquals( AsynchronousDmListener.DEFAULT_POLICY, asyncListener.getPolicy());
+
+		mngr.application( new Application( "app", null ), EventType.CHANGED );
+		mngr.raw( "hello" );
+
+		// Going back to the synchronous mode delivers pending events
+		mngr.setAsynchronousNotifications( false );
+		Assert.assertNull( mngr.findAsynchronousListener( listener ));
+		Assert.assertEquals( 4, listener.events.size());
+		Assert.assertEquals( "app CHANGED", listener.events.get( 2 ));
+		Assert.assertEquals( "hello", listener.events.get( 3 ));
+
+		Assert.assertEquals( 0, mngr.getPendingNotificationsCount());
+		Assert.assertEquals( 0, mngr.getDroppedNotificationsCount());
+		Assert.assertEquals( 0, mngr.getMaxNotificationLag());
+	}
+
+
+	@Test
+	public void testAsynchronousNotifications_listenersAddedAndRemoved() throws Exception {
+
+		NotificationMngrImpl mngr = new NotificationMngrImpl();
+		mngr.setAsynchronousNotifications( true );
+		mngr.enableNotifications();
+
+		RecordingListener listener = new RecordingListener( 0 );
+		mngr.addListener( listener );
+
+		AsynchronousDmListener asyncListener = mngr.findAsynchronousListener( listener );
+		Assert.assertNotNull( asyncListener );
+
+		mngr.raw( "hello" );
+		mngr.removeListener( listener );
+		Assert.assertNull( mngr.findAsynchronousListener( listener ));
+
+		// Removed listeners are not notified anymore (pending events are discarded)
+		asyncListener.stop( false, 5000 );
+		mngr.raw( "ignored" );
+		Assert.assertFalse( listener.events.contains( "ignored" ));
+		Assert.assertEquals( 0, asyncListener.getPendingCount());
+	}
+
+
+	@Test
+	public void testQueuesConfiguration() throws Exception {
+
+		NotificationMngrImpl mngr = new NotificationMngrImpl();
+		RecordingListener listener = new RecordingListener( 0 );
+		mngr.addListener( listener );
+
+		mngr.setAsynchronousNotifications( true );
+		mngr.setQueuesConfiguration( "other:5:drop-newest, recording:10:drop-oldest" );
+
+		AsynchronousDmListener asyncListener = mngr.findAsynchronousListener( listener );
+		Assert.assertEquals( 10, asyncListener.getCapacity());
+		Assert.assertEquals( OverflowPolicy.DROP_OLDEST, asyncListener.getPolicy());
+
+		// Invalid configurations
+		mngr.setQueuesConfiguration( "recording:-1:drop-oldest" );
+		asyncListener = mngr.findAsynchronousListener( listener );
+		Assert.assertEquals( AsynchronousDmListener.DEFAULT_CAPACITY, asyncListener.getCapacity());
+		Assert.assertEquals( AsynchronousDmListener.DEFAULT_POLICY, asyncListener.getPolicy());
+
+		mngr.setQueuesConfiguration( "recording:10:coalesce, recording:oops:block, recording" );
+		asyncListener = mngr.findAsynchronousListener( listener );
+		Assert.assertEquals( AsynchronousDmListener.DEFAULT_CAPACITY, asyncListener.getCapacity());
+		Assert.assertEquals( AsynchronousDmListener.DEFAULT_POLICY, asyncListener.getPolicy());
+
+		mngr.setQueuesConfiguration( null );
+		asyncListener = mngr.findAsynchronousListener( listener );
+		Assert.assertEquals( AsynchronousDmListener.DEFAULT_CAPACITY, asyncListener.getCapacity());
+		mngr.setAsynchronousNotifications( false );
+	}
+
+
+	@Test
+	public void testCoalescing() throws Exception {
+
+		NotificationMngrImpl mngr = new NotificationMngrImpl();
+		RecordingListener listener = new RecordingListener( 0 );
+		mngr.addListener( listener );
+
+		mngr.setCoalescingWindow( 100 );
+		Assert.assertEquals( 100, mngr.getCoalescingWindow());
+
+		Application app = new Application( "app", null );
+		Instance inst1 = new Instance( "inst1" );
+		Instance inst2 = new Instance( "inst2" );
+
+		mngr.instance( inst1, app, EventType.CHANGED );
+		mngr.instance( inst2, app, EventType.CHANGED );
+		mngr.instance( inst1, app, EventType.CHANGED );
+		mngr.instance( inst1, app, EventType.CHANGED );
+		Assert.assertEquals( 0, listener.events.size());
+		Assert.assertEquals( 2, mngr.getCoalescedNotificationsCount());
+
+		// Wait for the end of the window
+		for( int i=0; i<50 && listener.events.size() < 2; i++ )
+			Thread.sleep( 100 );
+
+		Assert.assertEquals( 2, listener.events.size());
+		Assert.assertEquals( "inst1 CHANGED", listener.events.get( 0 ));
+		Assert.assertEquals( "inst2 CHANGED", listener.events.get( 1 ));
+
+		mngr.setCoalescingWindow( 0 );
+	}
+
+
+	@Test
+	public void testCoalescing_otherEventsPreserveTheOrder() throws Exception {
+
+		NotificationMngrImpl mngr = new NotificationMngrImpl();
+		RecordingListener listener = new RecordingListener( 0 );
+		mngr.addListener( listener );
+		mngr.setCoalescingWindow( 10000 );
+
+		Application app = new Application( "app", null );
+		Instance inst = new Instance( "inst" );
+
+		mngr.instance( inst, app, EventType.CREATED );
+		mngr.instance( inst, app, EventType.CHANGED );
+		mngr.instance( inst, app, EventType.CHANGED );
+		mngr.instance( inst, app, EventType.DELETED );
+		mngr.instance( inst, app, EventType.CHANGED );
+		mngr.raw( "hello" );
+
+		Assert.assertEquals( 5, listener.events.size());
+		Assert.assertEquals( "inst CREATED", listener.events.get( 0 ));
+		Assert.assertEquals( "inst CHANGED", listener.events.get( 1 ));
+		Assert.assertEquals( "inst DELETED", listener.events.get( 2 ));
+		Assert.assertEquals( "inst CHANGED", listener.events.get( 3 ));
+		Assert.assertEquals( "hello", listener.events.get( 4 ));
+
+		// Disabling the coalescing delivers pending changes
+		mngr.instance( inst, app, EventType.CHANGED );
+		Assert.assertEquals( 5, listener.events.size());
+		mngr.setCoalescingWindow( 0 );
+		Assert.assertEquals( 6, listener.events.size());
+		Assert.assertEquals( "inst CHANGED", listener.events.get( 5 ));
+
+		// Without coalescing, every change is delivered
+		mngr.instance( inst, app, EventType.CHANGED );
+		mngr.instance( inst, app, EventType.CHANGED );
+		Assert.assertEquals( 8, listener.events.size());
+	}
 }
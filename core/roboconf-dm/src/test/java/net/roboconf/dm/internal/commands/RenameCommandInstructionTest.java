@@ -59,6 +59,12 @@ public class RenameCommandInstructionTest {
 		Assert.assertEquals( "tomcat-vm", this.app.getTomcatVm().getName());
 		executor.execute();
 		Assert.assertEquals( "toto", this.app.getTomcatVm().getName());
+
+		// The index of instances was updated
+		Assert.assertSame( this.app.getTomcatVm(), this.app.getInstancePathIndex().get( "/toto" ));
+		Assert.assertSame( this.app.getWar(), this.app.getInstancePathIndex().get( InstanceHelpers.computeInstancePath( this.app.getWar())));
+		Assert.assertNull( this.app.getInstancePathIndex().get( instancePath ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( this.app, instancePath ));
 	}
 
 
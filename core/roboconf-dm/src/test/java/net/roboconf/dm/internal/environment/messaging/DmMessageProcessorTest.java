@@ -26,8 +26,12 @@
 package net.roboconf.dm.internal.environment.messaging;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -42,6 +46,8 @@ import net.roboconf.core.internal.tests.TestApplication;
 import net.roboconf.core.model.beans.Instance;
 import net.roboconf.core.model.beans.Instance.InstanceStatus;
 import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.internal.api.IBlobsMngr;
 import net.roboconf.dm.internal.test.TestManagerWrapper;
 import net.roboconf.dm.internal.test.TestTargetResolver;
 import net.roboconf.dm.management.ManagedApplication;
@@ -49,14 +55,21 @@ import net.roboconf.dm.management.Manager;
 import net.roboconf.dm.management.events.IDmListener;
 import net.roboconf.messaging.api.MessagingConstants;
 import net.roboconf.messaging.api.internal.client.test.TestClient;
+import net.roboconf.messaging.api.jmx.PrioritizedMessageQueue;
+import net.roboconf.messaging.api.jmx.PrioritizedMessageQueue.PriorityLane;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifHeartbeat;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceChanged;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMachineDown;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMissingBlobs;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdGatherLogs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendBlobs;
 import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
+import net.roboconf.messaging.api.utils.BlobUtils;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -194,6 +207,23 @@ public class DmMessageProcessorTest {
 	}
 
 
+	@Test
+	public void testProcessMsgNotifLogChunk() throws Exception {
+
+		this.processor.tmpDir = this.folder.newFolder().getAbsolutePath();
+		File output = new File( this.processor.tmpDir, "roboconf-logs/app/si/karaf.log" );
+		Assert.assertFalse( output.exists());
+
+		byte[] content = "0123456789".getBytes( StandardCharsets.UTF_8 );
+		this.processor.processMessage( new MsgNotifLogChunk( "app", "si", "karaf.log", 0, Arrays.copyOfRange( content, 0, 4 ), false, false ));
+		this.processor.processMessage( new MsgNotifLogChunk( "app", "si", "karaf.log", 4, Arrays.copyOfRange( content, 4, 10 ), false, true ));
+
+		// Chunks are written asynchronously
+		this.processor.logChunkWriter.stop( 5000 );
+		Assert.assertEquals( "0123456789", Utils.readFileContent( output ));
+	}
+
+
 	@Test
 	public void testProcessMsgNotifInstanceChanged_success() {
 
@@ -346,6 +376,48 @@ public class DmMessageProcessorTest {
 	}
 
 
+	@Test
+	public void testProcessMsgNotifMissingBlobs() throws Exception {
+
+		this.managerWrapper.configureMessagingForTest();
+		this.manager.reconfigure();
+		TestClient msgClient = (TestClient) this.managerWrapper.getInternalMessagingClient();
+
+		// Register a file
+		File f = this.folder.newFile();
+		Utils.writeStringInto( "echo 'hello'", f );
+		Map<String,File> files = new HashMap<> ();
+		files.put( "script.sh", f );
+
+		IBlobsMngr blobsMngr = this.manager.blobsMngr();
+		String digest = blobsMngr.computeDigests( files ).get( "script.sh" );
+		String unknownDigest = BlobUtils.computeDigest( new byte[ 1 ]);
+
+		// Request it, along with an unknown one
+		Set<String> digests = new HashSet<>( Arrays.asList( digest, unknownDigest ));
+		this.processor.processMessage( new MsgNotifMissingBlobs( this.app.getName(), this.app.getMySqlVm(), digests ));
+
+		Assert.assertEquals( 1, msgClient.allSentMessages.size());
+		MsgCmdSendBlobs sent = (MsgCmdSendBlobs) msgClient.allSentMessages.get( 0 );
+		Assert.assertEquals( 1, sent.getDigestToContent().size());
+		Assert.assertEquals( "echo 'hello'", new String( sent.getDigestToContent().get( digest ), StandardCharsets.UTF_8 ));
+
+		// The agent is now known to have it
+		Assert.assertEquals( 0, blobsMngr.findResourcesToSend( this.app, this.app.getMySqlVm(), files, blobsMngr.computeDigests( files )).size());
+
+		// ... until it requires its model again
+		MsgNotifHeartbeat msg = new MsgNotifHeartbeat( this.app.getName(), this.app.getMySqlVm(), "192.168.1.45" );
+		msg.setModelRequired( true );
+		this.processor.processMessage( msg );
+		Assert.assertEquals( 1, blobsMngr.findResourcesToSend( this.app, this.app.getMySqlVm(), files, blobsMngr.computeDigests( files )).size());
+
+		// Unknown agents get nothing
+		msgClient.allSentMessages.clear();
+		this.processor.processMessage( new MsgNotifMissingBlobs( this.app.getName(), "/unknown", digests ));
+		Assert.assertEquals( 0, msgClient.allSentMessages.size());
+	}
+
+
 	@Test
 	public void testMsgNotifHeartbeat_invalidApplication() {
 
@@ -377,4 +449,88 @@ public class DmMessageProcessorTest {
 
 		this.processor.processMessage( msg );
 	}
+
+
+	@Test
+	public void testFindPartitionKey() {
+
+		Instance mysql = this.app.getMySql();
+		Instance vm = this.app.getMySqlVm();
+		String appName = this.app.getName();
+
+		// Messages from a same application share the same key, even if they come from different agents
+		String key = this.processor.findPartitionKey( new MsgNotifHeartbeat( appName, vm, "127.0.0.1" ));
+		Assert.assertNotNull( key );
+		Assert.assertEquals( key, this.processor.findPartitionKey( new MsgNotifMachineDown( appName, vm )));
+		Assert.assertEquals( key, this.processor.findPartitionKey( new MsgNotifInstanceChanged( appName, mysql )));
+		Assert.assertEquals( key, this.processor.findPartitionKey( new MsgNotifInstanceRemoved( appName, mysql )));
+		Assert.assertEquals( key, this.processor.findPartitionKey( new MsgNotifHeartbeat( appName, this.app.getTomcatVm(), "127.0.0.1" )));
+
+		// Other applications have other keys
+		Assert.assertNotEquals( key, this.processor.findPartitionKey( new MsgNotifHeartbeat( "other", vm, "127.0.0.1" )));
+
+		// Messages that are not related to agents go to the main thread
+		Assert.assertNull( this.processor.findPartitionKey( new MsgEcho( "hey" )));
+	}
+
+
+	@Test
+	public void testProcessingLanes() throws Exception {
+
+		// Restart the DM with several processing lanes
+		this.manager.stop();
+		this.manager.setMessageProcessingLanes( 3 );
+		this.manager.start();
+
+		this.managerWrapper = new TestManagerWrapper( this.manager );
+		this.processor = (DmMessageProcessor) this.managerWrapper.getMessagingClient().getMessageProcessor();
+		Assert.assertEquals( 3, this.processor.getMessageQueue().getProcessingLanes().size());
+
+		this.managerWrapper.clearManagedApplications();
+		this.managerWrapper.addManagedApplication( new ManagedApplication( this.app ));
+
+		// Messages are processed
+		this.app.getMySqlVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.processor.storeMessage( new MsgNotifMachineDown( this.app.getName(), this.app.getMySqlVm()));
+		this.processor.storeMessage( new MsgNotifMachineDown( this.app.getName(), this.app.getTomcatVm()));
+
+		for( int i=0; i<20; i++ ) {
+			if( this.app.getMySqlVm().getStatus() == InstanceStatus.NOT_DEPLOYED
+					&& this.app.getTomcatVm().getStatus() == InstanceStatus.NOT_DEPLOYED )
+				break;
+
+			Thread.sleep( 100 );
+		}
+
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, this.app.getMySqlVm().getStatus());
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, this.app.getTomcatVm().getStatus());
+	}
+
+
+	@Test
+	public void testMessageQueueLanes() throws Exception {
+
+		Assert.assertEquals( RoboconfMessageQueue.class, this.processor.getMessageQueue().getClass());
+
+		// Valid configuration
+		this.manager.stop();
+		this.manager.setMessageQueueLanes( "bulk:5:drop-oldest" );
+		this.manager.start();
+
+		this.managerWrapper = new TestManagerWrapper( this.manager );
+		this.processor = (DmMessageProcessor) this.managerWrapper.getMessagingClient().getMessageProcessor();
+		Assert.assertEquals( PrioritizedMessageQueue.class, this.processor.getMessageQueue().getClass());
+
+		PrioritizedMessageQueue queue = (PrioritizedMessageQueue) this.processor.getMessageQueue();
+		Assert.assertEquals( 5, queue.getLaneCapacity( PriorityLane.BULK ));
+
+		// Invalid configuration
+		this.manager.stop();
+		this.manager.setMessageQueueLanes( "bulk:oops:drop-oldest" );
+		this.manager.start();
+
+		this.processor = (DmMessageProcessor) this.managerWrapper.getMessagingClient().getMessageProcessor();
+		Assert.assertEquals( RoboconfMessageQueue.class, this.processor.getMessageQueue().getClass());
+	}
 }
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.environment.messaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.codec.CompressingCodec;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class LogChunkWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+
+	@Test
+	public void testWriteChunks() throws Exception {
+
+		File dir = new File( this.folder.newFolder(), "app/vm" );
+		File logFile = new File( dir, "karaf.log" );
+		LogChunkWriter writer = new LogChunkWriter();
+
+		writer.write( dir, new MsgNotifLogChunk( "app", "/vm", "karaf.log", 0, bytes( "hello " ), false, false ));
+		writer.write( dir, new MsgNotifLogChunk( "app", "/vm", "karaf.log", 6, bytes( "world" ), false, true ));
+		writer.stop( 5000 );
+		Assert.assertEquals( "hello world", Utils.readFileContent( logFile ));
+
+		// A new transfer replaces the previous content
+		writer.write( dir, new MsgNotifLogChunk( "app", "/vm", "karaf.log", 0, bytes( "bye" ), false, true ));
+		writer.stop( 5000 );
+		Assert.assertEquals( "bye", Utils.readFileContent( logFile ));
+	}
+
+
+	@Test
+	public void testWriteChunks_orderIsKeptWhenTheQueueIsFull() throws Exception {
+
+		File dir = new File( this.folder.newFolder(), "app/vm" );
+		File logFile = new File( dir, "karaf.log" );
+		LogChunkWriter writer = new LogChunkWriter();
+
+		// Keep the writing thread busy, so that the first chunk of the file waits in the queue
+		for( int i=0; i<LogChunkWriter.MAX_PENDING_CHUNKS * 2; i++ )
+			writer.write( dir, new MsgNotifLogChunk( "app", "/vm", "other.log", 0, new byte[ 100000 ], false, true ));
+
+		// Then, send many more chunks than what the queue can contain
+		StringBuilder expected = new StringBuilder();
+		int chunksCount = LogChunkWriter.MAX_PENDING_CHUNKS * 4;
+		for( int i=0; i<chunksCount; i++ ) {
+			String content = String.format( "line %04d\n", i );
+			writer.write( dir, new MsgNotifLogChunk( "app", "/vm", "karaf.log", expected.length(), bytes( content ), false, i == chunksCount - 1 ));
+			expected.append( content );
+		}
+
+		writer.stop( 5000 );
+		Assert.assertEquals( expected.toString(), Utils.readFileContent( logFile ));
+	}
+
+
+	@Test
+	public void testWriteChunk_compressed() throws Exception {
+
+		StringBuilder sb = new StringBuilder();
+		for( int i=0; i<100; i++ )
+			sb.append( "INFO - Everything is fine.\n" );
+
+		byte[] content = new CompressingCodec( null, 1 ).compress( bytes( sb.toString()));
+		Assert.assertTrue( CompressingCodec.isCompressed( content ));
+
+		File dir = this.folder.newFolder();
+		LogChunkWriter.writeChunk( dir, new MsgNotifLogChunk( "app", "/vm", "roboconf.log", 0, content, true, true ));
+		Assert.assertEquals( sb.toString(), Utils.readFileContent( new File( dir, "roboconf.log" )));
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testWriteChunk_compressedChunkIsTooBig() throws Exception {
+
+		byte[] content = new CompressingCodec( null, 1 ).compress( new byte[ LogChunkWriter.MAX_CHUNK_SIZE + 1 ]);
+		Assert.assertTrue( CompressingCodec.isCompressed( content ));
+
+		File dir = this.folder.newFolder();
+		try {
+			LogChunkWriter.writeChunk( dir, new MsgNotifLogChunk( "app", "/vm", "roboconf.log", 0, content, true, true ));
+
+		} finally {
+			Assert.assertFalse( new File( dir, "roboconf.log" ).exists());
+		}
+	}
+
+
+	@Test
+	public void testWriteChunk_fileNameCannotEscapeTheDirectory() throws Exception {
+
+		File dir = this.folder.newFolder();
+		LogChunkWriter.writeChunk( dir, new MsgNotifLogChunk( "app", "/vm", "../karaf.log", 0, bytes( "test" ), false, true ));
+
+		Assert.assertTrue( new File( dir, "karaf.log" ).exists());
+		Assert.assertFalse( new File( dir.getParentFile(), "karaf.log" ).exists());
+	}
+
+
+	@Test
+	public void testWrite_failure() throws Exception {
+
+		// The directory cannot be created, the error is only logged
+		File dir = new File( this.folder.newFile(), "vm" );
+		LogChunkWriter writer = new LogChunkWriter();
+		writer.write( dir, new MsgNotifLogChunk( "app", "/vm", "karaf.log", 0, bytes( "test" ), false, true ));
+		writer.stop( 5000 );
+
+		Assert.assertFalse( dir.exists());
+	}
+
+
+	private static byte[] bytes( String s ) {
+		return s.getBytes( StandardCharsets.UTF_8 );
+	}
+}
@@ -27,9 +27,12 @@ package net.roboconf.dm.internal.tasks;
 
 import java.util.Map;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import net.roboconf.core.internal.tests.TestApplicationTemplate;
 import net.roboconf.core.internal.tests.TestUtils;
@@ -42,6 +45,7 @@ import net.roboconf.dm.management.api.IAutonomicMngr;
 import net.roboconf.dm.management.api.IConfigurationMngr;
 import net.roboconf.dm.management.api.IMessagingMngr;
 import net.roboconf.dm.management.api.INotificationMngr;
+import net.roboconf.dm.management.api.IPreferencesMngr;
 import net.roboconf.dm.management.api.ITargetsMngr;
 
 /**
@@ -51,6 +55,7 @@ public class CheckerForHeartbeatsTaskTest {
 
 	private IApplicationMngr appManager;
 	private Map<String,ManagedApplication> nameToManagedApplication;
+	private IPreferencesMngr preferencesMngr;
 
 
 	@SuppressWarnings( "unchecked" )
@@ -71,6 +76,14 @@ public class CheckerForHeartbeatsTaskTest {
 				targetsMngr, messagingMngr,
 				randomMngr, autonomicMngr );
 
+		this.preferencesMngr = Mockito.mock( IPreferencesMngr.class );
+		Mockito.when( this.preferencesMngr.get( Mockito.anyString(), Mockito.anyString())).thenAnswer( new Answer<String>() {
+			@Override
+			public String answer( InvocationOnMock invocation ) throws Throwable {
+				return invocation.getArgumentAt( 1, String.class );
+			}
+		});
+
 		this.nameToManagedApplication = TestUtils.getInternalField( this.appManager, "nameToManagedApplication", Map.class );
 	}
 
@@ -79,7 +92,7 @@ public class CheckerForHeartbeatsTaskTest {
 	public void testRun_noApplication() {
 
 		INotificationMngr notificationMngr = Mockito.mock( INotificationMngr.class );
-		CheckerForHeartbeatsTask task = new CheckerForHeartbeatsTask( this.appManager, notificationMngr );
+		CheckerForHeartbeatsTask task = new CheckerForHeartbeatsTask( this.appManager, notificationMngr, this.preferencesMngr );
 		task.run();
 		Mockito.verifyZeroInteractions( notificationMngr );
 	}
@@ -93,8 +106,36 @@ public class CheckerForHeartbeatsTaskTest {
 		ManagedApplication ma = new ManagedApplication( app );
 		this.nameToManagedApplication.put( app.getName(), ma );
 
-		CheckerForHeartbeatsTask task = new CheckerForHeartbeatsTask( this.appManager, notificationMngr );
+		CheckerForHeartbeatsTask task = new CheckerForHeartbeatsTask( this.appManager, notificationMngr, this.preferencesMngr );
 		task.run();
 		Mockito.verifyZeroInteractions( notificationMngr );
 	}
+
+
+	@Test
+	public void testRun_tolerance() {
+
+		INotificationMngr notificationMngr = Mockito.mock( INotificationMngr.class );
+		Application app1 = new Application( "app1", new TestApplicationTemplate());
+		ManagedApplication ma1 = new ManagedApplication( app1 );
+		this.nameToManagedApplication.put( app1.getName(), ma1 );
+
+		Application app2 = new Application( "app2", new TestApplicationTemplate());
+		ManagedApplication ma2 = new ManagedApplication( app2 );
+		this.nameToManagedApplication.put( app2.getName(), ma2 );
+
+		Mockito.when( this.preferencesMngr.get( IPreferencesMngr.HEARTBEAT_TOLERANCE, "" )).thenReturn( "4" );
+		Mockito.when( this.preferencesMngr.get( IPreferencesMngr.HEARTBEAT_TOLERANCE + ".app2", "4" )).thenReturn( "7" );
+
+		CheckerForHeartbeatsTask task = new CheckerForHeartbeatsTask( this.appManager, notificationMngr, this.preferencesMngr );
+		task.run();
+		Assert.assertEquals( 4, ma1.getHeartbeatTolerance());
+		Assert.assertEquals( 7, ma2.getHeartbeatTolerance());
+
+		// Invalid values
+		Mockito.when( this.preferencesMngr.get( IPreferencesMngr.HEARTBEAT_TOLERANCE + ".app2", "4" )).thenReturn( "oops" );
+		task.run();
+		Assert.assertEquals( 4, ma1.getHeartbeatTolerance());
+		Assert.assertEquals( ManagedApplication.DEFAULT_HEARTBEAT_TOLERANCE, ma2.getHeartbeatTolerance());
+	}
 }
@@ -0,0 +1,279 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.utils;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.roboconf.core.internal.tests.TestApplication;
+import net.roboconf.core.model.RuntimeModelIo.InstancesLoadResult;
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.beans.Instance.InstanceStatus;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.management.ManagedApplication;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class InstancesJournalUtilsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestApplication app;
+	private ManagedApplication ma;
+
+
+	@Before
+	public void createApplication() throws Exception {
+
+		File dir = this.folder.newFolder();
+		this.app = new TestApplication();
+		this.app.setDirectory( ConfigurationUtils.findApplicationDirectory( this.app.getName(), dir ));
+		this.ma = new ManagedApplication( this.app );
+	}
+
+
+	@Test
+	public void testSnapshotAndJournal() throws Exception {
+
+		String generation = InstancesJournalUtils.writeSnapshot( this.app, true );
+		Assert.assertEquals( generation, InstancesJournalUtils.readGeneration( InstancesJournalUtils.findSnapshotFile( this.app )));
+		Assert.assertFalse( InstancesJournalUtils.findJournalFile( this.app ).exists());
+
+		// Update a root instance and remove another one
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.app.getTomcatVm().data.put( Instance.IP_ADDRESS, "192.168.1.12" );
+		this.app.getMySqlVm().setName( "renamed-vm" );
+
+		long written = InstancesJournalUtils.appendRecords(
+				this.app, generation,
+				Arrays.asList( this.app.getTomcatVm(), this.app.getMySqlVm()),
+				Arrays.asList( "mysql-vm" ), false );
+
+		Assert.assertTrue( written > 0 );
+		Assert.assertEquals( written, InstancesJournalUtils.findJournalFile( this.app ).length());
+
+		// Nothing to write
+		Assert.assertEquals( 0, InstancesJournalUtils.appendRecords(
+				this.app, generation,
+				Collections.<Instance>emptyList(), Collections.<String>emptyList(), false ));
+
+		// Restore
+		InstancesLoadResult ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals( 2, ilr.getRootInstances().size());
+
+		Instance restoredTomcatVm = find( ilr, "/tomcat-vm" );
+		Assert.assertNotNull( restoredTomcatVm );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, restoredTomcatVm.getStatus());
+		Assert.assertEquals( "192.168.1.12", restoredTomcatVm.data.get( Instance.IP_ADDRESS ));
+		Assert.assertEquals( 2, InstanceHelpers.buildHierarchicalList( restoredTomcatVm ).size() - 1 );
+
+		Assert.assertNull( find( ilr, "/mysql-vm" ));
+		Assert.assertNotNull( find( ilr, "/renamed-vm/mysql-server" ));
+
+		// The replay file was deleted
+		Assert.assertEquals( 2, InstancesJournalUtils.findSnapshotFile( this.app ).getParentFile().listFiles().length );
+	}
+
+
+	@Test
+	public void testAppendRecords_noGeneration() throws Exception {
+
+		InstancesJournalUtils.writeSnapshot( this.app, false );
+		Assert.assertEquals( -1, InstancesJournalUtils.appendRecords(
+				this.app, null,
+				Arrays.asList( this.app.getTomcatVm()),
+				Collections.<String>emptyList(), false ));
+
+		Assert.assertFalse( InstancesJournalUtils.findJournalFile( this.app ).exists());
+	}
+
+
+	@Test
+	public void testObsoleteJournalIsIgnored() throws Exception {
+
+		String generation = InstancesJournalUtils.writeSnapshot( this.app, false );
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		InstancesJournalUtils.appendRecords(
+				this.app, generation,
+				Arrays.asList( this.app.getTomcatVm()),
+				Collections.<String>emptyList(), false );
+
+		// Simulate a crash between the writing of a new snapshot and the deletion of the journal
+		File journalFile = InstancesJournalUtils.findJournalFile( this.app );
+		String journal = Utils.readFileContent( journalFile );
+
+		this.app.getTomcatVm().setStatus( InstanceStatus.NOT_DEPLOYED );
+		InstancesJournalUtils.writeSnapshot( this.app, false );
+		Assert.assertFalse( journalFile.exists());
+		Utils.writeStringInto( journal, journalFile );
+
+		InstancesLoadResult ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Instance restoredTomcatVm = find( ilr, "/tomcat-vm" );
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, restoredTomcatVm.getStatus());
+	}
+
+
+	@Test
+	public void testIncompleteRecordIsIgnored() throws Exception {
+
+		String generation = InstancesJournalUtils.writeSnapshot( this.app, false );
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYING );
+		InstancesJournalUtils.appendRecords(
+				this.app, generation,
+				Arrays.asList( this.app.getTomcatVm()),
+				Collections.<String>emptyList(), false );
+
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.app.getMySqlVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		InstancesJournalUtils.appendRecords(
+				this.app, generation,
+				Arrays.asList( this.app.getTomcatVm(), this.app.getMySqlVm()),
+				Collections.<String>emptyList(), false );
+
+		// Cut the last record
+		File journalFile = InstancesJournalUtils.findJournalFile( this.app );
+		String journal = Utils.readFileContent( journalFile );
+		int index = journal.lastIndexOf( InstancesJournalUtils.PUT );
+		Utils.writeStringInto( journal.substring( 0, index + 20 ), journalFile );
+
+		InstancesLoadResult ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals(
+				InstanceStatus.DEPLOYED_STARTED,
+				find( ilr, "/tomcat-vm" ).getStatus());
+
+		Assert.assertEquals(
+				InstanceStatus.NOT_DEPLOYED,
+				find( ilr, "/mysql-vm" ).getStatus());
+	}
+
+
+	@Test
+	public void testTornRecordIsIgnoredAndTruncated() throws Exception {
+
+		String generation = InstancesJournalUtils.writeSnapshot( this.app, false );
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYING );
+		InstancesJournalUtils.appendRecords(
+				this.app, generation,
+				Arrays.asList( this.app.getTomcatVm()),
+				Collections.<String>emptyList(), false );
+
+		File journalFile = InstancesJournalUtils.findJournalFile( this.app );
+		long validLength = journalFile.length();
+
+		// The DM was killed while writing the last lines of a definition
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.app.getMySqlVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		InstancesJournalUtils.appendRecords(
+				this.app, generation,
+				Arrays.asList( this.app.getMySqlVm()),
+				Collections.<String>emptyList(), false );
+
+		try( RandomAccessFile raf = new RandomAccessFile( journalFile, "rw" )) {
+			raf.setLength( raf.length() - 10 );
+		}
+
+		InstancesLoadResult ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals( InstanceStatus.DEPLOYING, find( ilr, "/tomcat-vm" ).getStatus());
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, find( ilr, "/mysql-vm" ).getStatus());
+		Assert.assertEquals( validLength, journalFile.length());
+
+		// New records can be appended after the last valid one
+		InstancesJournalUtils.appendRecords(
+				this.app, generation,
+				Arrays.asList( this.app.getTomcatVm()),
+				Collections.<String>emptyList(), false );
+
+		ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, find( ilr, "/tomcat-vm" ).getStatus());
+	}
+
+
+	@Test
+	public void testCorruptedRecordIsIgnored() throws Exception {
+
+		String generation = InstancesJournalUtils.writeSnapshot( this.app, false );
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYING );
+		InstancesJournalUtils.appendRecords(
+				this.app, generation,
+				Arrays.asList( this.app.getTomcatVm()),
+				Collections.<String>emptyList(), false );
+
+		// Same length, different content
+		File journalFile = InstancesJournalUtils.findJournalFile( this.app );
+		String journal = Utils.readFileContent( journalFile );
+		Utils.writeStringInto( journal.replace( "DEPLOYING", "DEPLOYINX" ), journalFile );
+
+		InstancesLoadResult ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, find( ilr, "/tomcat-vm" ).getStatus());
+	}
+
+
+	@Test
+	public void testInvalidRecordStopsTheReplay() throws Exception {
+
+		String generation = InstancesJournalUtils.writeSnapshot( this.app, false );
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYING );
+		InstancesJournalUtils.appendRecords(
+				this.app, generation,
+				Arrays.asList( this.app.getTomcatVm()),
+				Collections.<String>emptyList(), false );
+
+		File journalFile = InstancesJournalUtils.findJournalFile( this.app );
+		Utils.appendStringInto( "oops\n" + InstancesJournalUtils.DELETE + "tomcat-vm\n", journalFile );
+
+		InstancesLoadResult ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals(
+				InstanceStatus.DEPLOYING,
+				find( ilr, "/tomcat-vm" ).getStatus());
+	}
+
+
+	private static Instance find( InstancesLoadResult ilr, String instancePath ) {
+
+		Application restoredApp = new Application( "test", null );
+		restoredApp.getRootInstances().addAll( ilr.getRootInstances());
+		return InstanceHelpers.findInstanceByPath( restoredApp, instancePath );
+	}
+}
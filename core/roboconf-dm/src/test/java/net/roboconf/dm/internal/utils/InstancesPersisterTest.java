@@ -0,0 +1,287 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.internal.utils;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.roboconf.core.internal.tests.TestApplication;
+import net.roboconf.core.model.RuntimeModelIo.InstancesLoadResult;
+import net.roboconf.core.model.beans.Application;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.beans.Instance.InstanceStatus;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.utils.Utils;
+import net.roboconf.dm.internal.utils.InstancesPersister.FsyncPolicy;
+import net.roboconf.dm.management.ManagedApplication;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class InstancesPersisterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestApplication app;
+	private ManagedApplication ma;
+	private InstancesPersister persister;
+
+
+	@Before
+	public void createApplication() throws Exception {
+
+		File dir = this.folder.newFolder();
+		this.app = new TestApplication();
+		this.app.setDirectory( ConfigurationUtils.findApplicationDirectory( this.app.getName(), dir ));
+		this.ma = new ManagedApplication( this.app );
+		this.persister = new InstancesPersister();
+	}
+
+
+	@After
+	public void stopPersister() {
+		this.persister.stop();
+	}
+
+
+	@Test
+	public void testFsyncPolicy() {
+
+		Assert.assertEquals( FsyncPolicy.ALWAYS, FsyncPolicy.which( null ));
+		Assert.assertEquals( FsyncPolicy.ALWAYS, FsyncPolicy.which( "oops" ));
+		Assert.assertEquals( FsyncPolicy.ALWAYS, FsyncPolicy.which( "always" ));
+		Assert.assertEquals( FsyncPolicy.SNAPSHOTS, FsyncPolicy.which( "Snapshots" ));
+		Assert.assertEquals( FsyncPolicy.NEVER, FsyncPolicy.which( "NEVER" ));
+	}
+
+
+	@Test
+	public void testSynchronousWrites() throws Exception {
+
+		File snapshotFile = InstancesJournalUtils.findSnapshotFile( this.app );
+		File journalFile = InstancesJournalUtils.findJournalFile( this.app );
+
+		// The first write is a snapshot
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYING );
+		this.persister.instanceChanged( this.app, this.app.getTomcatVm());
+		Assert.assertTrue( snapshotFile.exists());
+		Assert.assertFalse( journalFile.exists());
+
+		// The next ones go in the journal
+		String snapshot = Utils.readFileContent( snapshotFile );
+		this.app.getTomcat().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.persister.instanceChanged( this.app, this.app.getTomcat());
+		Assert.assertTrue( journalFile.exists());
+		Assert.assertEquals( snapshot, Utils.readFileContent( snapshotFile ));
+
+		// Remove a root instance
+		InstanceHelpers.removeInstance( this.app, this.app.getMySqlVm());
+		this.persister.instanceChanged( this.app, this.app.getMySqlVm());
+		Assert.assertEquals( snapshot, Utils.readFileContent( snapshotFile ));
+
+		InstancesLoadResult ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals( 1, ilr.getRootInstances().size());
+		Assert.assertEquals( InstanceStatus.DEPLOYING, find( ilr, "/tomcat-vm" ).getStatus());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, find( ilr, "/tomcat-vm/tomcat-server" ).getStatus());
+
+		// Request a snapshot
+		this.persister.instancesChanged( this.app );
+		Assert.assertFalse( journalFile.exists());
+		Assert.assertNotEquals( snapshot, Utils.readFileContent( snapshotFile ));
+
+		ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals( 1, ilr.getRootInstances().size());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, find( ilr, "/tomcat-vm/tomcat-server" ).getStatus());
+	}
+
+
+	@Test
+	public void testChangesAreCoalesced() throws Exception {
+
+		// Initial snapshot
+		this.persister.instancesChanged( this.app );
+		File snapshotFile = InstancesJournalUtils.findSnapshotFile( this.app );
+		File journalFile = InstancesJournalUtils.findJournalFile( this.app );
+		Assert.assertTrue( snapshotFile.exists());
+
+		// Asynchronous writes
+		this.persister.setMaxDelay( 200 );
+		this.persister.start();
+
+		InstanceStatus[] statuses = InstanceStatus.values();
+		for( int i = 0; i < 1000; i ++ ) {
+			Instance inst = i % 2 == 0 ? this.app.getMySql() : this.app.getTomcat();
+			inst.setStatus( statuses[ i % statuses.length ]);
+			this.persister.instanceChanged( this.app, inst );
+		}
+
+		this.app.getMySql().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.app.getTomcat().setStatus( InstanceStatus.STARTING );
+		this.persister.instanceChanged( this.app, this.app.getMySql());
+		this.persister.instanceChanged( this.app, this.app.getTomcat());
+
+		// Stopping writes the pending changes
+		this.persister.stop();
+		Assert.assertTrue( journalFile.exists());
+
+		int records = 0;
+		for( String line : Utils.readFileContent( journalFile ).split( "\n" )) {
+			if( line.startsWith( InstancesJournalUtils.PUT ))
+				records ++;
+		}
+
+		Assert.assertTrue( "Records: " + records, records < 100 );
+
+		InstancesLoadResult ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, find( ilr, "/mysql-vm/mysql-server" ).getStatus());
+		Assert.assertEquals( InstanceStatus.STARTING, find( ilr, "/tomcat-vm/tomcat-server" ).getStatus());
+	}
+
+
+	@Test
+	public void testJournalIsCompacted() throws Exception {
+
+		this.persister.setFsyncPolicy( FsyncPolicy.NEVER );
+		this.persister.instancesChanged( this.app );
+		File journalFile = InstancesJournalUtils.findJournalFile( this.app );
+
+		long maxJournalLength = 0;
+		boolean compacted = false;
+		for( int i = 0; i < 3000; i ++ ) {
+			this.app.getTomcatVm().data.put( "counter", String.valueOf( i ));
+			this.persister.instanceChanged( this.app, this.app.getTomcatVm());
+
+			long length = journalFile.length();
+			compacted |= length < maxJournalLength;
+			maxJournalLength = Math.max( maxJournalLength, length );
+		}
+
+		Assert.assertTrue( compacted );
+		Assert.assertTrue( maxJournalLength < 2 * InstancesPersister.MIN_JOURNAL_SIZE );
+
+		InstancesLoadResult ilr = ConfigurationUtils.restoreInstances( this.ma );
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals( "2999", find( ilr, "/tomcat-vm" ).data.get( "counter" ));
+	}
+
+
+	@Test
+	public void testForgottenApplication() throws Exception {
+
+		this.persister.setMaxDelay( 60000 );
+		this.persister.start();
+
+		this.persister.instancesChanged( this.app );
+		this.persister.forget( this.app );
+		this.persister.stop();
+
+		Assert.assertFalse( this.app.getDirectory().exists());
+	}
+
+
+	@Test
+	public void testLateChangesAfterForget() throws Exception {
+
+		// Synchronous writes
+		this.persister.forget( this.app );
+		this.persister.instanceChanged( this.app, this.app.getTomcat());
+		this.persister.instancesChanged( this.app );
+		this.persister.writeSnapshot( this.app );
+		this.persister.flush();
+
+		Assert.assertFalse( this.app.getDirectory().exists());
+	}
+
+
+	@Test
+	public void testRuntimeErrorsRequestSnapshots() throws Exception {
+
+		FailingApplication failingApp = new FailingApplication();
+		failingApp.setDirectory( this.app.getDirectory());
+
+		File snapshotFile = InstancesJournalUtils.findSnapshotFile( failingApp );
+		File journalFile = InstancesJournalUtils.findJournalFile( failingApp );
+
+		this.persister.instanceChanged( failingApp, failingApp.getTomcatVm());
+		Assert.assertTrue( snapshotFile.exists());
+		Assert.assertFalse( journalFile.exists());
+
+		this.persister.instanceChanged( failingApp, failingApp.getTomcat());
+		Assert.assertTrue( journalFile.exists());
+
+		// Simulate a concurrent modification while saving
+		failingApp.fail = true;
+		failingApp.getTomcat().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.persister.instanceChanged( failingApp, failingApp.getTomcat());
+
+		// The next write is a snapshot
+		failingApp.fail = false;
+		this.persister.instanceChanged( failingApp, failingApp.getMySql());
+		Assert.assertTrue( snapshotFile.exists());
+		Assert.assertFalse( journalFile.exists());
+
+		InstancesLoadResult ilr = ConfigurationUtils.restoreInstances( new ManagedApplication( failingApp ));
+		Assert.assertEquals( 0, ilr.getLoadErrors().size());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, find( ilr, "/tomcat-vm/tomcat-server" ).getStatus());
+	}
+
+
+	private static Instance find( InstancesLoadResult ilr, String instancePath ) {
+
+		Application restoredApp = new Application( "test", null );
+		restoredApp.getRootInstances().addAll( ilr.getRootInstances());
+		return InstanceHelpers.findInstanceByPath( restoredApp, instancePath );
+	}
+
+
+	/**
+	 * An application whose root instances cannot be read on demand.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static class FailingApplication extends TestApplication {
+		boolean fail;
+
+		@Override
+		public Collection<Instance> getRootInstances() {
+			if( this.fail )
+				throw new ConcurrentModificationException( "For test purpose." );
+
+			return super.getRootInstances();
+		}
+	}
+}
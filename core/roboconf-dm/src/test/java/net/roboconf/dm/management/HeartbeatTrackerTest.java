@@ -0,0 +1,169 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.roboconf.core.Constants;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.beans.Instance.InstanceStatus;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class HeartbeatTrackerTest {
+
+	@Test
+	public void testTimeout() {
+
+		HeartbeatTracker tracker = new HeartbeatTracker();
+		Instance vm = new Instance( "vm" ).status( InstanceStatus.DEPLOYED_STARTED );
+		List<Instance> scopedInstances = Collections.singletonList( vm );
+
+		// Registered on the first tick
+		Assert.assertEquals( 0, tracker.tick( scopedInstances ).size());
+		Assert.assertEquals( 1, tracker.getMissedHeartbeats( vm ));
+		Assert.assertEquals( 0, tracker.tick( scopedInstances ).size());
+		Assert.assertEquals( 2, tracker.getMissedHeartbeats( vm ));
+
+		List<Instance> result = tracker.tick( scopedInstances );
+		Assert.assertEquals( 1, result.size());
+		Assert.assertSame( vm, result.get( 0 ));
+		Assert.assertEquals( 3, tracker.getMissedHeartbeats( vm ));
+
+		// Reported once the status is updated
+		vm.setStatus( InstanceStatus.PROBLEM );
+		Assert.assertEquals( 0, tracker.tick( scopedInstances ).size());
+
+		// A heart beat comes back
+		Assert.assertTrue( tracker.acknowledge( vm, 1000 ));
+		Assert.assertFalse( tracker.acknowledge( vm, 2000 ));
+		Assert.assertEquals( 0, tracker.getMissedHeartbeats( vm ));
+	}
+
+
+	@Test
+	public void testManyTicks() {
+
+		// More ticks than the wheel size, with regular heart beats
+		HeartbeatTracker tracker = new HeartbeatTracker();
+		Instance vm = new Instance( "vm" ).status( InstanceStatus.DEPLOYED_STARTED );
+		List<Instance> scopedInstances = Collections.singletonList( vm );
+
+		for( int i=0; i<3 * HeartbeatTracker.WHEEL_SIZE; i++ ) {
+			tracker.acknowledge( vm, i * Constants.HEARTBEAT_PERIOD );
+			Assert.assertEquals( 0, tracker.tick( scopedInstances ).size());
+		}
+
+		// Then, no more heart beat (the last tick already counts as a missed one)
+		for( int i=1; i<HeartbeatTracker.DEFAULT_TOLERANCE; i++ )
+			Assert.assertEquals( 0, tracker.tick( scopedInstances ).size());
+
+		Assert.assertEquals( 1, tracker.tick( scopedInstances ).size());
+	}
+
+
+	@Test
+	public void testInactiveAndRemovedInstances() {
+
+		HeartbeatTracker tracker = new HeartbeatTracker();
+		Instance vm1 = new Instance( "vm1" ).status( InstanceStatus.NOT_DEPLOYED );
+		Instance vm2 = new Instance( "vm2" ).status( InstanceStatus.DEPLOYED_STARTED );
+
+		List<Instance> scopedInstances = new ArrayList<> ();
+		scopedInstances.add( vm1 );
+		scopedInstances.add( vm2 );
+		for( int i=0; i<HeartbeatTracker.DEFAULT_TOLERANCE; i++ )
+			Assert.assertEquals( 0, tracker.tick( scopedInstances ).size());
+
+		// Remove vm2 (a new list, as with the registry of scoped instances)
+		scopedInstances = Collections.singletonList( vm1 );
+		for( int i=0; i<10; i++ )
+			Assert.assertEquals( 0, tracker.tick( scopedInstances ).size());
+
+		Assert.assertEquals( 0, tracker.getMissedHeartbeats( vm1 ));
+		Assert.assertEquals( 0, tracker.getMissedHeartbeats( vm2 ));
+
+		// Started again: it must send heart beats
+		vm1.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		int cpt = 0;
+		while( tracker.tick( scopedInstances ).isEmpty())
+			cpt ++;
+
+		Assert.assertTrue( cpt <= 2 * HeartbeatTracker.DEFAULT_TOLERANCE + 1 );
+	}
+
+
+	@Test
+	public void testTolerance() {
+
+		HeartbeatTracker tracker = new HeartbeatTracker();
+		Assert.assertEquals( HeartbeatTracker.DEFAULT_TOLERANCE, tracker.getTolerance());
+
+		tracker.setTolerance( -3 );
+		Assert.assertEquals( 0, tracker.getTolerance());
+
+		tracker.setTolerance( 10 );
+		Instance vm = new Instance( "vm" ).status( InstanceStatus.DEPLOYED_STARTED );
+		List<Instance> scopedInstances = Collections.singletonList( vm );
+		for( int i=0; i<10; i++ )
+			Assert.assertEquals( 0, tracker.tick( scopedInstances ).size());
+
+		Assert.assertEquals( 1, tracker.tick( scopedInstances ).size());
+	}
+
+
+	@Test
+	public void testStatistics() {
+
+		HeartbeatTracker tracker = new HeartbeatTracker();
+		Instance vm = new Instance( "vm" ).status( InstanceStatus.DEPLOYED_STARTED );
+		Assert.assertEquals( 0, tracker.getStatistics().getSamples());
+		Assert.assertEquals( 0, tracker.getStatistics().getMeanJitter());
+
+		long period = Constants.HEARTBEAT_PERIOD;
+		tracker.acknowledge( vm, 1000 );
+		tracker.acknowledge( vm, 1000 + period + 100 );
+		tracker.acknowledge( vm, 1000 + 2 * period );
+
+		HeartbeatStatistics stats = tracker.getStatistics();
+		Assert.assertEquals( 2, stats.getSamples());
+		Assert.assertEquals( 100, stats.getMeanJitter());
+		Assert.assertEquals( 100, stats.getMaxJitter());
+		Assert.assertEquals( 50, stats.getMeanLateness());
+		Assert.assertEquals( 100, stats.getMaxLateness());
+
+		stats = stats.merge( new HeartbeatStatistics( 2, 0, 0, 0, 300 ));
+		Assert.assertEquals( 4, stats.getSamples());
+		Assert.assertEquals( 50, stats.getMeanJitter());
+		Assert.assertEquals( 300, stats.getMaxLateness());
+	}
+}
@@ -100,6 +100,7 @@ public class ManagedApplicationTest {
 		this.ma.storeAwaitingMessage( childInstance, new MsgCmdAddInstance( childInstance ));
 		Assert.assertEquals( 1, this.ma.getScopedInstanceToAwaitingMessages().size());
 
+		messages = this.ma.getScopedInstanceToAwaitingMessages().get( rootInstance );
 		Assert.assertEquals( 2, messages.size());
 		Assert.assertEquals( MsgCmdSendInstances.class, messages.get( 0 ).getClass());
 		Assert.assertEquals( MsgCmdAddInstance.class, messages.get( 1 ).getClass());
@@ -156,13 +157,34 @@ public class ManagedApplicationTest {
 	}
 
 
+	@Test
+	public void testAwaitingMessagesStatistics() throws Exception {
+
+		Instance rootInstance = new Instance( "root" );
+		Assert.assertEquals( 0, this.ma.getAwaitingMessagesCount());
+		Assert.assertEquals( 0, this.ma.getAwaitingMessagesCount( rootInstance ));
+		Assert.assertEquals( 0, this.ma.getAwaitingMessagesAge( rootInstance ));
+
+		this.ma.storeAwaitingMessage( rootInstance, new MsgCmdSendInstances());
+		this.ma.storeAwaitingMessage( rootInstance, new MsgCmdSendInstances());
+		Thread.sleep( 20 );
+
+		Assert.assertEquals( 2, this.ma.getAwaitingMessagesCount());
+		Assert.assertEquals( 2, this.ma.getAwaitingMessagesCount( rootInstance ));
+		Assert.assertTrue( this.ma.getAwaitingMessagesAge( rootInstance ) >= 20 );
+
+		Assert.assertEquals( 1, this.ma.removeAwaitingMessages( rootInstance, 1 ).size());
+		Assert.assertEquals( 1, this.ma.getAwaitingMessagesCount( rootInstance ));
+	}
+
+
 	@Test
 	public void testAcknowledgeHeartBeat() {
 
 		Assert.assertNull( this.app.getMySqlVm().data.get( Instance.RUNNING_FROM ));
-		Assert.assertNull( this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+		Assert.assertEquals( 0, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
 		this.ma.acknowledgeHeartBeat( this.app.getMySqlVm());
-		Assert.assertNull( this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+		Assert.assertEquals( 0, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
 
 		String time = this.app.getMySqlVm().data.get( Instance.RUNNING_FROM );
 		Assert.assertNotNull( time );
@@ -170,7 +192,7 @@ public class ManagedApplicationTest {
 		this.app.getMySqlVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
 		this.ma.acknowledgeHeartBeat( this.app.getMySqlVm());
 		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, this.app.getMySqlVm().getStatus());
-		Assert.assertNull( this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+		Assert.assertEquals( 0, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
 
 		String otherTime = this.app.getMySqlVm().data.get( Instance.RUNNING_FROM );
 		Assert.assertNotNull( otherTime );
@@ -179,13 +201,8 @@ public class ManagedApplicationTest {
 		this.app.getMySqlVm().setStatus( InstanceStatus.PROBLEM );
 		this.ma.acknowledgeHeartBeat( this.app.getMySqlVm());
 		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, this.app.getMySqlVm().getStatus());
-		Assert.assertNull( this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+		Assert.assertEquals( 0, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
 
-		this.app.getMySqlVm().setStatus( InstanceStatus.PROBLEM );
-		this.app.getMySqlVm().data.put( ManagedApplication.MISSED_HEARTBEATS, "5" );
-		this.ma.acknowledgeHeartBeat( this.app.getMySqlVm());
-		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, this.app.getMySqlVm().getStatus());
-		Assert.assertNull( this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
 	}
 
 
@@ -194,22 +211,19 @@ public class ManagedApplicationTest {
 
 		INotificationMngr notificationMngr = Mockito.mock( INotificationMngr.class );
 
-		Assert.assertNull( this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+		Assert.assertEquals( 0, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
 		this.app.getMySqlVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
 		this.ma.checkStates( notificationMngr );
-		Assert.assertEquals( "1", this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+		Assert.assertEquals( 1, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
 		Mockito.verifyZeroInteractions( notificationMngr );
 
 		this.ma.acknowledgeHeartBeat( this.app.getMySqlVm());
-		Assert.assertNull( this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+		Assert.assertEquals( 0, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
 
 		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, this.app.getMySqlVm().getStatus());
-		for( int i=0; i<=ManagedApplication.THRESHOLD; i++ ) {
+		for( int i=0; i<=ManagedApplication.DEFAULT_HEARTBEAT_TOLERANCE; i++ ) {
 			this.ma.checkStates( notificationMngr );
-			Assert.assertEquals(
-					String.valueOf( i ),
-					String.valueOf( i+1 ),
-					this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+			Assert.assertEquals( String.valueOf( i ), i+1, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
 		}
 
 		Assert.assertEquals( InstanceStatus.PROBLEM, this.app.getMySqlVm().getStatus());
@@ -218,17 +232,43 @@ public class ManagedApplicationTest {
 
 		this.app.getMySqlVm().setStatus( InstanceStatus.UNDEPLOYING );
 		this.ma.checkStates( notificationMngr );
-		Assert.assertNull( this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+		Assert.assertEquals( 0, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
 		Mockito.verifyZeroInteractions( notificationMngr );
 
 		this.app.getMySqlVm().setStatus( InstanceStatus.DEPLOYING );
 		this.ma.checkStates( notificationMngr );
-		Assert.assertNull( this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+		Assert.assertEquals( 0, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
 		Mockito.verifyZeroInteractions( notificationMngr );
 
 		this.app.getMySqlVm().setStatus( InstanceStatus.NOT_DEPLOYED );
 		this.ma.checkStates( notificationMngr );
-		Assert.assertNull( this.app.getMySqlVm().data.get( ManagedApplication.MISSED_HEARTBEATS ));
+		Assert.assertEquals( 0, this.ma.getMissedHeartbeats( this.app.getMySqlVm()));
+		Mockito.verifyZeroInteractions( notificationMngr );
+	}
+
+
+	@Test
+	public void testCheckStates_customTolerance() {
+
+		INotificationMngr notificationMngr = Mockito.mock( INotificationMngr.class );
+		this.ma.setHeartbeatTolerance( 5 );
+		Assert.assertEquals( 5, this.ma.getHeartbeatTolerance());
+
+		this.app.getMySqlVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.ma.acknowledgeHeartBeat( this.app.getMySqlVm());
+		for( int i=0; i<5; i++ ) {
+			this.ma.checkStates( notificationMngr );
+			Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, this.app.getMySqlVm().getStatus());
+		}
+
+		Mockito.verifyZeroInteractions( notificationMngr );
+		this.ma.checkStates( notificationMngr );
+		Assert.assertEquals( InstanceStatus.PROBLEM, this.app.getMySqlVm().getStatus());
+		Mockito.verify( notificationMngr ).instance( this.app.getMySqlVm(), this.app, EventType.CHANGED );
+
+		// Only one notification while the agent remains silent
+		Mockito.reset( notificationMngr );
+		this.ma.checkStates( notificationMngr );
 		Mockito.verifyZeroInteractions( notificationMngr );
 	}
 }
@@ -68,5 +68,13 @@ public class ManagerJmxTest {
 		Assert.assertEquals(
 				2 * InstanceHelpers.findAllScopedInstances( new TestApplication()).size(),
 				manager.getScopedInstancesCount());
+
+		Assert.assertEquals( 0, manager.getHeartbeatMeanJitter());
+		Assert.assertEquals( 0, manager.getHeartbeatMaxLateness());
+		Assert.assertEquals( 0, manager.getAwaitingMessagesCount());
+		Assert.assertEquals( 0, manager.getPendingNotificationsCount());
+		Assert.assertEquals( 0, manager.getDroppedNotificationsCount());
+		Assert.assertEquals( 0, manager.getMaxNotificationLag());
+		Assert.assertEquals( 0, manager.getCoalescedNotificationsCount());
 	}
 }
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.roboconf.core.internal.tests.TestApplication;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdAddInstance;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdRemoveInstance;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendInstances;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class MessagesOutboxTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+
+	@Test
+	public void testInMemoryOnly() {
+
+		TestApplication app = new TestApplication();
+		MessagesOutbox outbox = new MessagesOutbox( null );
+
+		Assert.assertEquals( 0, outbox.getTotalDepth());
+		Assert.assertEquals( 0, outbox.remove( app.getMySqlVm(), 10 ).size());
+
+		outbox.store( app.getMySqlVm(), new MsgCmdSendInstances());
+		outbox.store( app.getMySqlVm(), new MsgCmdAddInstance( app.getMySql()));
+		outbox.store( app.getTomcatVm(), new MsgCmdSendInstances());
+		Assert.assertEquals( 3, outbox.getTotalDepth());
+		Assert.assertEquals( 2, outbox.getDepth( app.getMySqlVm()));
+		Assert.assertEquals( 1, outbox.getDepth( app.getTomcatVm()));
+		Assert.assertTrue( outbox.getOldestTimestamp( app.getMySqlVm()) > 0 );
+		Assert.assertEquals( 2, outbox.snapshot().size());
+
+		List<Message> messages = outbox.remove( app.getMySqlVm(), 1 );
+		Assert.assertEquals( 1, messages.size());
+		Assert.assertEquals( MsgCmdSendInstances.class, messages.get( 0 ).getClass());
+
+		messages = outbox.remove( app.getMySqlVm(), 10 );
+		Assert.assertEquals( 1, messages.size());
+		Assert.assertEquals( MsgCmdAddInstance.class, messages.get( 0 ).getClass());
+		Assert.assertEquals( 0, outbox.getDepth( app.getMySqlVm()));
+		Assert.assertEquals( 0, outbox.getOldestTimestamp( app.getMySqlVm()));
+		Assert.assertEquals( 1, outbox.getTotalDepth());
+	}
+
+
+	@Test
+	public void testRestore() throws Exception {
+
+		File dir = this.folder.newFolder();
+		TestApplication app = new TestApplication();
+		MessagesOutbox outbox = new MessagesOutbox( dir );
+
+		outbox.store( app.getMySqlVm(), new MsgCmdSendInstances());
+		outbox.store( app.getMySqlVm(), new MsgCmdAddInstance( app.getMySql()));
+		outbox.store( app.getTomcatVm(), new MsgCmdRemoveInstance( app.getTomcat()));
+		outbox.store( app.getMySqlVm(), new MsgCmdRemoveInstance( app.getMySql()));
+		Assert.assertEquals( 1, outbox.remove( app.getMySqlVm(), 1 ).size());
+
+		// Restore it
+		MessagesOutbox newOutbox = new MessagesOutbox( dir );
+		newOutbox.restore( app );
+		Assert.assertEquals( 3, newOutbox.getTotalDepth());
+		Assert.assertEquals( 2, newOutbox.getDepth( app.getMySqlVm()));
+		Assert.assertEquals( 1, newOutbox.getDepth( app.getTomcatVm()));
+
+		List<Message> messages = newOutbox.remove( app.getMySqlVm(), 10 );
+		Assert.assertEquals( 2, messages.size());
+		Assert.assertEquals( MsgCmdAddInstance.class, messages.get( 0 ).getClass());
+		Assert.assertEquals( MsgCmdRemoveInstance.class, messages.get( 1 ).getClass());
+
+		// New messages for an agent whose older messages were acknowledged
+		newOutbox.store( app.getMySqlVm(), new MsgCmdSendInstances());
+
+		MessagesOutbox thirdOutbox = new MessagesOutbox( dir );
+		thirdOutbox.restore( app );
+		Assert.assertEquals( 1, thirdOutbox.getDepth( app.getMySqlVm()));
+		Assert.assertEquals( 1, thirdOutbox.getDepth( app.getTomcatVm()));
+		Assert.assertEquals( MsgCmdSendInstances.class, thirdOutbox.remove( app.getMySqlVm(), 10 ).get( 0 ).getClass());
+		Assert.assertEquals( MsgCmdRemoveInstance.class, thirdOutbox.remove( app.getTomcatVm(), 10 ).get( 0 ).getClass());
+
+		// Everything was delivered: no segment remains
+		Assert.assertEquals( 0, thirdOutbox.getTotalDepth());
+		Assert.assertEquals( 0, new File( dir, MessagesOutbox.OUTBOX_DIRECTORY ).list().length );
+	}
+
+
+	@Test
+	public void testRestore_unknownInstance() throws Exception {
+
+		File dir = this.folder.newFolder();
+		TestApplication app = new TestApplication();
+		MessagesOutbox outbox = new MessagesOutbox( dir );
+		outbox.store( app.getMySqlVm(), new MsgCmdSendInstances());
+		outbox.store( app.getTomcatVm(), new MsgCmdSendInstances());
+
+		app.getRootInstances().remove( app.getTomcatVm());
+		MessagesOutbox newOutbox = new MessagesOutbox( dir );
+		newOutbox.restore( app );
+		Assert.assertEquals( 1, newOutbox.getTotalDepth());
+		Assert.assertEquals( 1, newOutbox.getDepth( app.getMySqlVm()));
+	}
+
+
+	@Test
+	public void testRestore_truncatedSegment() throws Exception {
+
+		File dir = this.folder.newFolder();
+		TestApplication app = new TestApplication();
+		MessagesOutbox outbox = new MessagesOutbox( dir );
+		outbox.store( app.getMySqlVm(), new MsgCmdSendInstances());
+		outbox.store( app.getMySqlVm(), new MsgCmdAddInstance( app.getMySql()));
+
+		// Simulate a crash while writing the last record
+		File[] segments = new File( dir, MessagesOutbox.OUTBOX_DIRECTORY ).listFiles();
+		Assert.assertEquals( 1, segments.length );
+		try( RandomAccessFile raf = new RandomAccessFile( segments[ 0 ], "rw" )) {
+			raf.setLength( raf.length() - 10 );
+		}
+
+		MessagesOutbox newOutbox = new MessagesOutbox( dir );
+		newOutbox.restore( app );
+		Assert.assertEquals( 1, newOutbox.getDepth( app.getMySqlVm()));
+
+		// New records must not be appended after the truncated one
+		newOutbox.store( app.getMySqlVm(), new MsgCmdRemoveInstance( app.getMySql()));
+		MessagesOutbox thirdOutbox = new MessagesOutbox( dir );
+		thirdOutbox.restore( app );
+
+		List<Message> messages = thirdOutbox.remove( app.getMySqlVm(), 10 );
+		Assert.assertEquals( 2, messages.size());
+		Assert.assertEquals( MsgCmdSendInstances.class, messages.get( 0 ).getClass());
+		Assert.assertEquals( MsgCmdRemoveInstance.class, messages.get( 1 ).getClass());
+	}
+
+
+	@Test
+	public void testPutBack() throws Exception {
+
+		File dir = this.folder.newFolder();
+		TestApplication app = new TestApplication();
+		MessagesOutbox outbox = new MessagesOutbox( dir );
+		for( int i=1; i<=5; i++ )
+			outbox.store( app.getMySqlVm(), new MsgCmdRemoveInstance( "/" + i ));
+
+		// Messages that could not be sent go back at the head of the queue
+		List<Message> messages = outbox.remove( app.getMySqlVm(), 3 );
+		outbox.putBack( app.getMySqlVm(), messages.subList( 1, 3 ));
+		Assert.assertEquals( 4, outbox.getDepth( app.getMySqlVm()));
+		Assert.assertEquals( 4, outbox.getTotalDepth());
+		Assert.assertEquals( "/2 /3 /4 /5", paths( outbox.snapshot().get( app.getMySqlVm())));
+
+		// Even after a restart
+		MessagesOutbox newOutbox = new MessagesOutbox( dir );
+		newOutbox.restore( app );
+		Assert.assertEquals( 4, newOutbox.getDepth( app.getMySqlVm()));
+		Assert.assertEquals( "/2 /3 /4 /5", paths( newOutbox.snapshot().get( app.getMySqlVm())));
+
+		// Put messages back in an empty queue
+		messages = newOutbox.remove( app.getMySqlVm(), 10 );
+		newOutbox.putBack( app.getMySqlVm(), messages.subList( 2, 4 ));
+		newOutbox.store( app.getMySqlVm(), new MsgCmdRemoveInstance( "/6" ));
+
+		MessagesOutbox thirdOutbox = new MessagesOutbox( dir );
+		thirdOutbox.restore( app );
+		Assert.assertEquals( "/4 /5 /6", paths( thirdOutbox.remove( app.getMySqlVm(), 10 )));
+		Assert.assertEquals( 0, new File( dir, MessagesOutbox.OUTBOX_DIRECTORY ).list().length );
+	}
+
+
+	@Test
+	public void testFsyncAndClose() throws Exception {
+
+		File dir = this.folder.newFolder();
+		TestApplication app = new TestApplication();
+		MessagesOutbox outbox = new MessagesOutbox( dir );
+		Assert.assertTrue( outbox.isFsync());
+
+		outbox.setFsync( false );
+		Assert.assertFalse( outbox.isFsync());
+		outbox.store( app.getMySqlVm(), new MsgCmdRemoveInstance( "/1" ));
+
+		// The segment file is opened again once closed
+		outbox.close();
+		outbox.store( app.getMySqlVm(), new MsgCmdRemoveInstance( "/2" ));
+		outbox.close();
+		outbox.close();
+
+		Assert.assertEquals( 1, new File( dir, MessagesOutbox.OUTBOX_DIRECTORY ).list().length );
+		MessagesOutbox newOutbox = new MessagesOutbox( dir );
+		newOutbox.restore( app );
+		Assert.assertEquals( "/1 /2", paths( newOutbox.remove( app.getMySqlVm(), 10 )));
+		newOutbox.close();
+		Assert.assertEquals( 0, new File( dir, MessagesOutbox.OUTBOX_DIRECTORY ).list().length );
+	}
+
+
+	@Test
+	public void testSpillToDisk() throws Exception {
+
+		TestApplication app = new TestApplication();
+		MessagesOutbox outbox = new MessagesOutbox( this.folder.newFolder());
+		outbox.setMaxMemory( 10000 );
+		Assert.assertEquals( 10000, outbox.getMaxMemory());
+
+		for( int i=0; i<50; i++ )
+			outbox.store( app.getMySqlVm(), new MsgCmdAddInstance( app.getMySql()));
+
+		Assert.assertEquals( 50, outbox.getDepth( app.getMySqlVm()));
+		Assert.assertTrue( outbox.getMemoryBytes() <= 10000 );
+		Assert.assertTrue( outbox.getMemoryBytes() > 0 );
+
+		// Spilled messages are read back from the disk
+		int count = 0;
+		for( List<Message> messages = outbox.remove( app.getMySqlVm(), 7 ); ! messages.isEmpty(); messages = outbox.remove( app.getMySqlVm(), 7 )) {
+			Assert.assertTrue( messages.size() <= 7 );
+			for( Message msg : messages ) {
+				Assert.assertEquals( MsgCmdAddInstance.class, msg.getClass());
+				count ++;
+			}
+		}
+
+		Assert.assertEquals( 50, count );
+		Assert.assertEquals( 0, outbox.getMemoryBytes());
+	}
+
+
+	private static String paths( List<Message> messages ) {
+
+		StringBuilder sb = new StringBuilder();
+		for( Message msg : messages ) {
+			if( sb.length() > 0 )
+				sb.append( " " );
+
+			sb.append(((MsgCmdRemoveInstance) msg).getInstancePath());
+		}
+
+		return sb.toString();
+	}
+}
@@ -300,7 +300,8 @@ public class ManagerLifeCycleTest {
 		Assert.assertNotNull( ((MsgCmdChangeInstanceState) msg).getFileNameToFileContent());
 
 		// Try other states
-		ma.getScopedInstanceToAwaitingMessages().clear();
+		ma.removeAwaitingMessages( this.app.getMySqlVm());
+		ma.removeAwaitingMessages( this.app.getTomcatVm());
 		this.manager.instancesMngr().changeInstanceState( ma, this.app.getMySql(), InstanceStatus.DEPLOYED_STARTED );
 		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, this.app.getMySql().getStatus());
 		Assert.assertEquals( 0, this.targetResolver.instancePathToRunningStatus.size());
@@ -315,7 +316,8 @@ public class ManagerLifeCycleTest {
 		Assert.assertNotNull( ((MsgCmdChangeInstanceState) msg).getFileNameToFileContent());
 
 		// Not_DEPLOYED
-		ma.getScopedInstanceToAwaitingMessages().clear();
+		ma.removeAwaitingMessages( this.app.getMySqlVm());
+		ma.removeAwaitingMessages( this.app.getTomcatVm());
 		this.manager.instancesMngr().changeInstanceState( ma, this.app.getMySql(), InstanceStatus.NOT_DEPLOYED );
 		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, this.app.getMySql().getStatus());
 		Assert.assertEquals( 0, this.targetResolver.instancePathToRunningStatus.size());
@@ -556,7 +558,8 @@ public class ManagerLifeCycleTest {
 		Assert.assertEquals( 0, ma.getScopedInstanceToAwaitingMessages().size());
 
 		// The state means nothing in fact, the machine ID does
-		ma.getScopedInstanceToAwaitingMessages().clear();
+		ma.removeAwaitingMessages( this.app.getMySqlVm());
+		ma.removeAwaitingMessages( this.app.getTomcatVm());
 		this.app.getMySqlVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
 		this.app.getMySqlVm().data.put( Instance.MACHINE_ID, InstanceHelpers.computeInstancePath( this.app.getMySqlVm()));
 		this.manager.instancesMngr().changeInstanceState( ma, this.app.getMySqlVm(), InstanceStatus.NOT_DEPLOYED );
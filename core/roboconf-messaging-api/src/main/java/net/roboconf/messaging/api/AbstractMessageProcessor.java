@@ -25,11 +25,19 @@
 
 package net.roboconf.messaging.api;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
+import net.roboconf.core.utils.Utils;
+
 import net.roboconf.messaging.api.business.IClient;
 import net.roboconf.messaging.api.extensions.IMessagingClient;
+import net.roboconf.messaging.api.jmx.MessageLatencyTracker;
+import net.roboconf.messaging.api.jmx.MessageLatencyTracker.LatencyStage;
+import net.roboconf.messaging.api.jmx.PrioritizedMessageQueue;
 import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
 import net.roboconf.messaging.api.reconfigurables.ReconfigurableClient;
@@ -45,14 +53,26 @@ import net.roboconf.messaging.api.reconfigurables.ReconfigurableClient;
  * processing messages after the current message is processed, or right after the next one is received.
  * For an immediate stop, use the {@link #interrupt()} method.
  * </p>
+ * <p>
+ * By default, all the messages are processed by this thread. It is also possible to
+ * define several processing lanes (see {@link #setProcessingLanes(int, int)}). In this case,
+ * messages are dispatched onto worker threads according to their partition key (see
+ * {@link #findPartitionKey(Message)}). Messages that share a same key are always processed
+ * by the same lane, and thus in the order they were received. Messages without a key are
+ * processed by this thread.
+ * </p>
  *
  * @param <T> a sub-class of {@link IMessagingClient}
  * @author Vincent Zurczak - Linagora
  */
 public abstract class AbstractMessageProcessor<T extends IClient> extends Thread {
 
-	private final RoboconfMessageQueue messageQueue = new RoboconfMessageQueue();
+	public static final int DEFAULT_LANE_CAPACITY = 1000;
+	private static final long LANE_OFFER_TIMEOUT = 500;
+
+	private final RoboconfMessageQueue messageQueue;
 	private final AtomicBoolean running = new AtomicBoolean( false );
+	private final List<ProcessingLane> lanes = new ArrayList<> ();
 	protected T messagingClient;
 
 
@@ -62,7 +82,18 @@ public abstract class AbstractMessageProcessor<T extends IClient> extends Thread
 	 * @param threadName the thread name
 	 */
 	public AbstractMessageProcessor( String threadName ) {
+		this( threadName, new RoboconfMessageQueue());
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param threadName the thread name
+	 * @param messageQueue the queue that will store the messages to process (e.g. a {@link PrioritizedMessageQueue})
+	 */
+	public AbstractMessageProcessor( String threadName, RoboconfMessageQueue messageQueue ) {
 		super( threadName );
+		this.messageQueue = messageQueue;
 	}
 
 
@@ -96,6 +127,38 @@ public abstract class AbstractMessageProcessor<T extends IClient> extends Thread
 	}
 
 
+	/**
+	 * Defines processing lanes.
+	 * <p>
+	 * This method must be invoked before {@link #start()}.
+	 * Invoking it after has no effect.
+	 * </p>
+	 *
+	 * @param laneCount the number of lanes (1 or less means messages are all processed by this thread)
+	 * @param laneCapacity the maximum number of pending messages per lane (if 0 or negative, {@value #DEFAULT_LANE_CAPACITY})
+	 */
+	public void setProcessingLanes( int laneCount, int laneCapacity ) {
+
+		if( isAlive()) {
+			Logger.getLogger( getClass().getName()).warning( "Processing lanes cannot be changed once the message processor has started." );
+			return;
+		}
+
+		this.lanes.clear();
+		if( laneCount > 1 ) {
+			int capacity = laneCapacity > 0 ? laneCapacity : DEFAULT_LANE_CAPACITY;
+			for( int i=0; i<laneCount; i++ )
+				this.lanes.add( new ProcessingLane( getName() + " - Lane " + i, capacity ));
+		}
+
+		List<RoboconfMessageQueue> laneQueues = new ArrayList<> ();
+		for( ProcessingLane lane : this.lanes )
+			laneQueues.add( lane.laneQueue );
+
+		this.messageQueue.setProcessingLanes( laneQueues );
+	}
+
+
 	/*
 	 * (non-Javadoc)
 	 * @see java.lang.Thread#run()
@@ -104,11 +167,14 @@ public abstract class AbstractMessageProcessor<T extends IClient> extends Thread
 	public final void run() {
 
 		this.running.set( true );
+		for( ProcessingLane lane : this.lanes )
+			lane.start();
+
 		while( this.running.get()) {
 			try {
 				Message message = this.messageQueue.take();
 				if( this.running.get())
-					processMessage( message );
+					dispatchMessage( message );
 
 			} catch( InterruptedException e ) {
 				break;
@@ -117,6 +183,8 @@ public abstract class AbstractMessageProcessor<T extends IClient> extends Thread
 
 		Logger.getLogger( getClass().getName()).fine( "Roboconf's message processing thread is stopping." );
 		this.running.set( false );
+		for( ProcessingLane lane : this.lanes )
+			lane.interrupt();
 	}
 
 
@@ -138,7 +206,116 @@ public abstract class AbstractMessageProcessor<T extends IClient> extends Thread
 
 	/**
 	 * Processes a message.
+	 * <p>
+	 * When processing lanes are defined, this method may be invoked concurrently
+	 * for messages that have different partition keys.
+	 * </p>
+	 *
 	 * @param message the message to process
 	 */
 	protected abstract void processMessage( Message message );
+
+
+	/**
+	 * Finds the partition key of a message.
+	 * <p>
+	 * Messages with a same key are processed sequentially, in the order they were received.
+	 * This method is only invoked when processing lanes are defined.
+	 * </p>
+	 *
+	 * @param message a message
+	 * @return a partition key, or null to process the message in the main processing thread
+	 */
+	protected String findPartitionKey( Message message ) {
+		return null;
+	}
+
+
+	/**
+	 * Processes a message or dispatches it onto a processing lane.
+	 * @param message a message
+	 * @throws InterruptedException if the thread was interrupted while waiting for room in a lane
+	 */
+	private void dispatchMessage( Message message ) throws InterruptedException {
+
+		String key = this.lanes.isEmpty() ? null : findPartitionKey( message );
+		if( key == null ) {
+			processAndMeasure( message );
+
+		} else {
+			// Wait for room in the lane, unless the processor is being stopped.
+			// Blocking here propagates the back pressure to the main queue.
+			int index = Math.abs( key.hashCode() % this.lanes.size());
+			RoboconfMessageQueue laneQueue = this.lanes.get( index ).laneQueue;
+			while( ! laneQueue.offer( message, LANE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS )
+					&& this.running.get()) {
+				// nothing
+			}
+		}
+	}
+
+
+	/**
+	 * Processes a message, records the latencies and notifies the queue the message was handled.
+	 * @param message a message
+	 */
+	private void processAndMeasure( Message message ) {
+
+		MessageLatencyTracker tracker = this.messageQueue.getLatencyTracker();
+		long start = System.nanoTime();
+		if( message.getReceptionTime() != 0 )
+			tracker.record( LatencyStage.QUEUE, message, ( start - message.getReceptionTime()) / 1000 );
+
+		try {
+			processMessage( message );
+
+		} finally {
+			tracker.record( LatencyStage.PROCESSING, message, ( System.nanoTime() - start ) / 1000 );
+			this.messageQueue.messageWasHandled( message );
+		}
+	}
+
+
+	/**
+	 * A worker thread that processes the messages of a given set of partition keys.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private class ProcessingLane extends Thread {
+		final RoboconfMessageQueue laneQueue;
+
+
+		/**
+		 * Constructor.
+		 * @param threadName the thread name
+		 * @param capacity the lane capacity
+		 */
+		ProcessingLane( String threadName, int capacity ) {
+			super( threadName );
+			this.laneQueue = new RoboconfMessageQueue( capacity );
+		}
+
+
+		@Override
+		public void run() {
+
+			Logger logger = Logger.getLogger( AbstractMessageProcessor.this.getClass().getName());
+			while( AbstractMessageProcessor.this.running.get()) {
+				try {
+					Message message = this.laneQueue.take();
+					if( AbstractMessageProcessor.this.running.get())
+						processAndMeasure( message );
+
+				} catch( InterruptedException e ) {
+					break;
+
+				} catch( RuntimeException e ) {
+					// Do not let a single message kill the lane
+					logger.severe( "An error occurred while processing a message in " + getName() + "." );
+					Utils.logException( logger, e );
+				}
+			}
+
+			logger.fine( getName() + " is stopping." );
+		}
+	}
 }
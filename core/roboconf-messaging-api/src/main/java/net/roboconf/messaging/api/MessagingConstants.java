@@ -58,6 +58,41 @@ public interface MessagingConstants {
 	 */
 	String MESSAGING_TYPE_PROPERTY = MESSAGING_PROPERTY_PREFIX + ".type";
 
+	/**
+	 * The name of the property which contains the codec used to serialize messages.
+	 * <p>
+	 * Supported values are {@value #CODEC_JAVA} (default) and {@value #CODEC_BINARY}.
+	 * This property only impacts the way messages are written. Received messages are decoded
+	 * whatever the codec that was used to write them.
+	 * </p>
+	 */
+	String MESSAGING_CODEC_PROPERTY = MESSAGING_PROPERTY_PREFIX + ".codec";
+
+	/**
+	 * The name of the codec based on Java serialization.
+	 */
+	String CODEC_JAVA = "java";
+
+	/**
+	 * The name of the compact binary codec.
+	 */
+	String CODEC_BINARY = "binary";
+
+	/**
+	 * The name of the property which contains the size (in bytes) from which messages are compressed.
+	 * <p>
+	 * Compression is disabled when this property is not set or is not a positive integer.
+	 * Like codecs, it only impacts the way messages are written. Compressed messages are
+	 * flagged with a header, so that they can always be decompressed by receivers.
+	 * </p>
+	 */
+	String MESSAGING_COMPRESSION_THRESHOLD_PROPERTY = MESSAGING_PROPERTY_PREFIX + ".compression.threshold";
+
+	/**
+	 * The name of the compression algorithm.
+	 */
+	String COMPRESSION_DEFLATE = "deflate";
+
 	/**
 	 * The factory's name for test clients.
 	 */
@@ -72,4 +107,15 @@ public interface MessagingConstants {
 	 * The factory's name for idle clients.
 	 */
 	String FACTORY_IDLE = "idle";
+
+	/**
+	 * The name of the property that indicates whether in-memory clients copy messages.
+	 * <p>
+	 * By default, in-memory clients hand the published message instances directly to the
+	 * recipients' queues. When this property is "true", every recipient receives its own
+	 * copy, obtained by encoding and decoding the message with the configured codec.
+	 * This isolates senders and recipients, at the price of a serialization round-trip.
+	 * </p>
+	 */
+	String IN_MEMORY_COPY_MESSAGES_PROPERTY = MESSAGING_PROPERTY_PREFIX + ".in-memory.copy.messages";
 }
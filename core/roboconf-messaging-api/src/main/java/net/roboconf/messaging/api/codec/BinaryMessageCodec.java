@@ -0,0 +1,727 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import net.roboconf.core.model.beans.Import;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.beans.Instance.InstanceStatus;
+import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdAddImport;
+import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdRemoveImport;
+import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdRequestImport;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifAutonomic;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMachineDown;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMissingBlobs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdAddInstance;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeBinding;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeInstanceState;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeLogLevel;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdGatherLogs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdRemoveInstance;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdResynchronize;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendBlobs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendInstances;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSetScopedInstance;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdUpdateProbeConfiguration;
+import net.roboconf.messaging.api.utils.SerializationUtils;
+
+/**
+ * A compact binary codec for Roboconf messages.
+ * <p>
+ * Every payload starts with a header: two magic bytes, the layout version, the time
+ * at which the message was encoded (a long, in milliseconds since the epoch) and a tag that
+ * identifies the message class. The time is set as the send timestamp of the decoded message.
+ * The header is followed by the message's fields, written explicitly (no class descriptor,
+ * no reflection). Sizes are written as variable-length integers and strings in UTF-8.
+ * </p>
+ * <p>
+ * Messages whose class is unknown to this codec (e.g. {@link net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho}
+ * or custom messages) are embedded with Java serialization. The same applies to the
+ * instance graph carried by {@link MsgCmdSetScopedInstance}.
+ * </p>
+ * <p>
+ * Tags must never be reused. If the layout of a message changes, the version must be incremented.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class BinaryMessageCodec implements IMessageCodec {
+
+	/**
+	 * The current version of the layout.
+	 */
+	public static final byte VERSION = 1;
+
+	static final byte MAGIC_1 = 'R';
+	static final byte MAGIC_2 = 'C';
+
+	// Message tags
+	static final byte TAG_SERIALIZED = 0;
+	static final byte TAG_HEARTBEAT = 1;
+	static final byte TAG_INSTANCE_CHANGED = 2;
+	static final byte TAG_INSTANCE_REMOVED = 3;
+	static final byte TAG_MACHINE_DOWN = 4;
+	static final byte TAG_AUTONOMIC = 5;
+	static final byte TAG_LOGS = 6;
+	static final byte TAG_CHANGE_INSTANCE_STATE = 7;
+	static final byte TAG_REMOVE_INSTANCE = 8;
+	static final byte TAG_ADD_INSTANCE = 9;
+	static final byte TAG_SET_SCOPED_INSTANCE = 10;
+	static final byte TAG_RESYNCHRONIZE = 11;
+	static final byte TAG_SEND_INSTANCES = 12;
+	static final byte TAG_GATHER_LOGS = 13;
+	static final byte TAG_CHANGE_LOG_LEVEL = 14;
+	static final byte TAG_UPDATE_PROBE_CONFIGURATION = 15;
+	static final byte TAG_CHANGE_BINDING = 16;
+	static final byte TAG_ADD_IMPORT = 17;
+	static final byte TAG_REMOVE_IMPORT = 18;
+	static final byte TAG_REQUEST_IMPORT = 19;
+	static final byte TAG_MISSING_BLOBS = 20;
+	static final byte TAG_SEND_BLOBS = 21;
+	static final byte TAG_LOG_CHUNK = 22;
+
+
+	@Override
+	public String getName() {
+		return MessagingConstants.CODEC_BINARY;
+	}
+
+
+	@Override
+	public boolean accepts( byte[] bytes ) {
+		return bytes.length >= 4
+				&& bytes[ 0 ] == MAGIC_1
+				&& bytes[ 1 ] == MAGIC_2;
+	}
+
+
+	@Override
+	public byte[] encode( Message message ) throws IOException {
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream( 128 );
+		DataOutputStream out = new DataOutputStream( os );
+		out.writeByte( MAGIC_1 );
+		out.writeByte( MAGIC_2 );
+		out.writeByte( VERSION );
+		out.writeLong( System.currentTimeMillis());
+
+		Class<?> clazz = message.getClass();
+		if( clazz == MsgNotifHeartbeat.class ) {
+			MsgNotifHeartbeat msg = (MsgNotifHeartbeat) message;
+			out.writeByte( TAG_HEARTBEAT );
+			writeString( out, msg.getApplicationName());
+			writeString( out, msg.getScopedInstancePath());
+			writeString( out, msg.getIpAddress());
+			out.writeBoolean( msg.isModelRequired());
+
+		} else if( clazz == MsgNotifInstanceChanged.class ) {
+			MsgNotifInstanceChanged msg = (MsgNotifInstanceChanged) message;
+			out.writeByte( TAG_INSTANCE_CHANGED );
+			writeString( out, msg.getApplicationName());
+			writeString( out, msg.getInstancePath());
+			writeStatus( out, msg.getNewStatus());
+			writeImports( out, msg.getNewImports());
+
+		} else if( clazz == MsgNotifInstanceRemoved.class ) {
+			MsgNotifInstanceRemoved msg = (MsgNotifInstanceRemoved) message;
+			out.writeByte( TAG_INSTANCE_REMOVED );
+			writeString( out, msg.getApplicationName());
+			writeString( out, msg.getInstancePath());
+
+		} else if( clazz == MsgNotifMachineDown.class ) {
+			MsgNotifMachineDown msg = (MsgNotifMachineDown) message;
+			out.writeByte( TAG_MACHINE_DOWN );
+			writeString( out, msg.getApplicationName());
+			writeString( out, msg.getScopedInstancePath());
+
+		} else if( clazz == MsgNotifAutonomic.class ) {
+			MsgNotifAutonomic msg = (MsgNotifAutonomic) message;
+			out.writeByte( TAG_AUTONOMIC );
+			writeString( out, msg.getApplicationName());
+			writeString( out, msg.getScopedInstancePath());
+			writeString( out, msg.getEventName());
+			writeString( out, msg.getEventInfo());
+
+		} else if( clazz == MsgNotifLogs.class ) {
+			MsgNotifLogs msg = (MsgNotifLogs) message;
+			out.writeByte( TAG_LOGS );
+			writeString( out, msg.getApplicationName());
+			writeString( out, msg.getScopedInstancePath());
+			writeBytesMap( out, msg.getLogFiles());
+
+		} else if( clazz == MsgNotifLogChunk.class ) {
+			MsgNotifLogChunk msg = (MsgNotifLogChunk) message;
+			out.writeByte( TAG_LOG_CHUNK );
+			writeString( out, msg.getApplicationName());
+			writeString( out, msg.getScopedInstancePath());
+			writeString( out, msg.getFileName());
+			out.writeLong( msg.getOffset());
+			writeBytes( out, msg.getContent());
+			out.writeBoolean( msg.isCompressed());
+			out.writeBoolean( msg.isLastChunk());
+
+		} else if( clazz == MsgNotifMissingBlobs.class ) {
+			MsgNotifMissingBlobs msg = (MsgNotifMissingBlobs) message;
+			out.writeByte( TAG_MISSING_BLOBS );
+			writeString( out, msg.getApplicationName());
+			writeString( out, msg.getScopedInstancePath());
+			writeStrings( out, msg.getDigests());
+
+		} else if( clazz == MsgCmdChangeInstanceState.class ) {
+			MsgCmdChangeInstanceState msg = (MsgCmdChangeInstanceState) message;
+			out.writeByte( TAG_CHANGE_INSTANCE_STATE );
+			writeString( out, msg.getInstancePath());
+			writeStatus( out, msg.getNewState());
+			writeBytesMap( out, msg.getFileNameToFileContent());
+			writeStringMap( out, msg.getFileNameToDigest());
+
+		} else if( clazz == MsgCmdRemoveInstance.class ) {
+			out.writeByte( TAG_REMOVE_INSTANCE );
+			writeString( out, ((MsgCmdRemoveInstance) message).getInstancePath());
+
+		} else if( clazz == MsgCmdAddInstance.class ) {
+			MsgCmdAddInstance msg = (MsgCmdAddInstance) message;
+			out.writeByte( TAG_ADD_INSTANCE );
+			writeString( out, msg.getParentInstancePath());
+			writeString( out, msg.getInstanceName());
+			writeString( out, msg.getComponentName());
+			writeStrings( out, msg.getChannels());
+			writeStringMap( out, msg.getData());
+			writeStringMap( out, msg.getOverridenExports());
+
+		} else if( clazz == MsgCmdSetScopedInstance.class ) {
+			MsgCmdSetScopedInstance msg = (MsgCmdSetScopedInstance) message;
+			out.writeByte( TAG_SET_SCOPED_INSTANCE );
+			writeBytes( out, SerializationUtils.serializeObject( msg.getScopedInstance()));
+			writeStringMap( out, msg.getExternalExports());
+
+			Map<String,Set<String>> bindings = msg.getApplicationBindings();
+			writeSize( out, bindings );
+			for( Map.Entry<String,Set<String>> entry : bindings.entrySet()) {
+				writeString( out, entry.getKey());
+				writeStrings( out, entry.getValue());
+			}
+
+			writeBytesMap( out, msg.getscriptResources());
+			writeStringMap( out, msg.getScriptDigests());
+
+		} else if( clazz == MsgCmdResynchronize.class ) {
+			out.writeByte( TAG_RESYNCHRONIZE );
+
+		} else if( clazz == MsgCmdSendInstances.class ) {
+			out.writeByte( TAG_SEND_INSTANCES );
+
+		} else if( clazz == MsgCmdGatherLogs.class ) {
+			MsgCmdGatherLogs msg = (MsgCmdGatherLogs) message;
+			out.writeByte( TAG_GATHER_LOGS );
+			out.writeInt( msg.getChunkSize());
+			out.writeLong( msg.getMaxBytes());
+			out.writeLong( msg.getSinceTimestamp());
+			out.writeBoolean( msg.isCompressed());
+
+		} else if( clazz == MsgCmdChangeLogLevel.class ) {
+			out.writeByte( TAG_CHANGE_LOG_LEVEL );
+			writeString( out, ((MsgCmdChangeLogLevel) message).getLogLevel());
+
+		} else if( clazz == MsgCmdUpdateProbeConfiguration.class ) {
+			MsgCmdUpdateProbeConfiguration msg = (MsgCmdUpdateProbeConfiguration) message;
+			out.writeByte( TAG_UPDATE_PROBE_CONFIGURATION );
+			writeString( out, msg.getInstancePath());
+			writeBytesMap( out, msg.getProbeResources());
+
+		} else if( clazz == MsgCmdChangeBinding.class ) {
+			MsgCmdChangeBinding msg = (MsgCmdChangeBinding) message;
+			out.writeByte( TAG_CHANGE_BINDING );
+			writeString( out, msg.getExternalExportsPrefix());
+			writeStrings( out, msg.getAppNames());
+
+		} else if( clazz == MsgCmdAddImport.class ) {
+			MsgCmdAddImport msg = (MsgCmdAddImport) message;
+			out.writeByte( TAG_ADD_IMPORT );
+			writeString( out, msg.getApplicationOrContextName());
+			writeString( out, msg.getComponentOrFacetName());
+			writeString( out, msg.getAddedInstancePath());
+			writeStringMap( out, msg.getExportedVariables());
+
+		} else if( clazz == MsgCmdRemoveImport.class ) {
+			MsgCmdRemoveImport msg = (MsgCmdRemoveImport) message;
+			out.writeByte( TAG_REMOVE_IMPORT );
+			writeString( out, msg.getApplicationOrContextName());
+			writeString( out, msg.getComponentOrFacetName());
+			writeString( out, msg.getRemovedInstancePath());
+
+		} else if( clazz == MsgCmdRequestImport.class ) {
+			MsgCmdRequestImport msg = (MsgCmdRequestImport) message;
+			out.writeByte( TAG_REQUEST_IMPORT );
+			writeString( out, msg.getApplicationOrContextName());
+			writeString( out, msg.getComponentOrFacetName());
+
+		} else if( clazz == MsgCmdSendBlobs.class ) {
+			out.writeByte( TAG_SEND_BLOBS );
+			writeBytesMap( out, ((MsgCmdSendBlobs) message).getDigestToContent());
+
+		} else {
+			out.writeByte( TAG_SERIALIZED );
+			writeBytes( out, SerializationUtils.serializeObject( message ));
+		}
+
+		out.flush();
+		return os.toByteArray();
+	}
+
+
+	@Override
+	public Message decode( byte[] bytes ) throws IOException, ClassNotFoundException {
+
+		if( ! accepts( bytes ))
+			throw new IOException( "The bytes were not written by the binary codec." );
+
+		DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes, 2, bytes.length - 2 ));
+		byte version = in.readByte();
+		if( version != VERSION )
+			throw new IOException( "Unsupported version for the binary codec: " + version );
+
+		long sendTimestamp = in.readLong();
+
+		Message result;
+		byte tag = in.readByte();
+		switch( tag ) {
+		case TAG_HEARTBEAT:
+			MsgNotifHeartbeat heartbeat = new MsgNotifHeartbeat( readString( in ), readString( in ), readString( in ));
+			heartbeat.setModelRequired( in.readBoolean());
+			result = heartbeat;
+			break;
+
+		case TAG_INSTANCE_CHANGED:
+			result = new MsgNotifInstanceChanged( readString( in ), readString( in ), readStatus( in ), readImports( in ));
+			break;
+
+		case TAG_INSTANCE_REMOVED:
+			result = new MsgNotifInstanceRemoved( readString( in ), readString( in ));
+			break;
+
+		case TAG_MACHINE_DOWN:
+			result = new MsgNotifMachineDown( readString( in ), readString( in ));
+			break;
+
+		case TAG_AUTONOMIC:
+			result = new MsgNotifAutonomic( readString( in ), readString( in ), readString( in ), readString( in ));
+			break;
+
+		case TAG_LOGS:
+			result = new MsgNotifLogs( readString( in ), readString( in ), readBytesMap( in ));
+			break;
+
+		case TAG_LOG_CHUNK:
+			result = new MsgNotifLogChunk(
+					readString( in ), readString( in ), readString( in ),
+					in.readLong(), readBytes( in ), in.readBoolean(), in.readBoolean());
+			break;
+
+		case TAG_MISSING_BLOBS:
+			result = new MsgNotifMissingBlobs( readString( in ), readString( in ), readStrings( in ));
+			break;
+
+		case TAG_CHANGE_INSTANCE_STATE:
+			result = new MsgCmdChangeInstanceState(
+					readString( in ), readStatus( in ), readBytesMap( in ), readStringMap( in ));
+			break;
+
+		case TAG_REMOVE_INSTANCE:
+			result = new MsgCmdRemoveInstance( readString( in ));
+			break;
+
+		case TAG_ADD_INSTANCE:
+			result = new MsgCmdAddInstance(
+					readString( in ), readString( in ), readString( in ),
+					readStrings( in ), readStringMap( in ), readStringMap( in ));
+			break;
+
+		case TAG_SET_SCOPED_INSTANCE:
+			Instance scopedInstance = SerializationUtils.deserializeObject( readBytes( in ), Instance.class );
+			Map<String,String> externalExports = readStringMap( in );
+
+			Map<String,Set<String>> bindings = null;
+			int size = readCount( in );
+			if( size >= 0 ) {
+				bindings = new LinkedHashMap<>( size );
+				for( int i=0; i<size; i++ )
+					bindings.put( readString( in ), readStrings( in ));
+			}
+
+			Map<String,byte[]> scriptResources = readBytesMap( in );
+			Map<String,String> scriptDigests = readStringMap( in );
+			result = new MsgCmdSetScopedInstance( scopedInstance, externalExports, bindings, scriptResources, scriptDigests );
+			break;
+
+		case TAG_RESYNCHRONIZE:
+			result = new MsgCmdResynchronize();
+			break;
+
+		case TAG_SEND_INSTANCES:
+			result = new MsgCmdSendInstances();
+			break;
+
+		case TAG_GATHER_LOGS:
+			result = new MsgCmdGatherLogs( in.readInt(), in.readLong(), in.readLong(), in.readBoolean());
+			break;
+
+		case TAG_CHANGE_LOG_LEVEL:
+			try {
+				result = new MsgCmdChangeLogLevel( Level.parse( readString( in )));
+
+			} catch( IllegalArgumentException | NullPointerException e ) {
+				throw new IOException( "Invalid log level in a binary message.", e );
+			}
+			break;
+
+		case TAG_UPDATE_PROBE_CONFIGURATION:
+			result = new MsgCmdUpdateProbeConfiguration( readString( in ), readBytesMap( in ));
+			break;
+
+		case TAG_CHANGE_BINDING:
+			result = new MsgCmdChangeBinding( readString( in ), readStrings( in ));
+			break;
+
+		case TAG_ADD_IMPORT:
+			result = new MsgCmdAddImport( readString( in ), readString( in ), readString( in ), readStringMap( in ));
+			break;
+
+		case TAG_REMOVE_IMPORT:
+			result = new MsgCmdRemoveImport( readString( in ), readString( in ), readString( in ));
+			break;
+
+		case TAG_REQUEST_IMPORT:
+			result = new MsgCmdRequestImport( readString( in ), readString( in ));
+			break;
+
+		case TAG_SEND_BLOBS:
+			result = new MsgCmdSendBlobs( readBytesMap( in ));
+			break;
+
+		case TAG_SERIALIZED:
+			result = SerializationUtils.deserializeObject( readBytes( in ), Message.class );
+			break;
+
+		default:
+			throw new IOException( "Unknown message tag for the binary codec: " + tag );
+		}
+
+		result.setSendTimestamp( sendTimestamp );
+		return result;
+	}
+
+
+	// Primitives, also used by transports that wrap messages in their own envelopes
+
+
+	/**
+	 * Writes a size (or -1 for null) as a variable-length integer.
+	 * @param out the output stream
+	 * @param size a size, or -1
+	 * @throws IOException
+	 */
+	public static void writeSize( DataOutputStream out, int size ) throws IOException {
+
+		// Shift by one so that "null" (-1) is written as zero
+		int value = size + 1;
+		while(( value & ~0x7F ) != 0 ) {
+			out.writeByte(( value & 0x7F ) | 0x80 );
+			value >>>= 7;
+		}
+
+		out.writeByte( value );
+	}
+
+
+	/**
+	 * Reads a size written with {@link #writeSize(DataOutputStream, int)}.
+	 * @param in the input stream
+	 * @return a size, or -1 for null
+	 * @throws IOException
+	 */
+	public static int readSize( DataInputStream in ) throws IOException {
+
+		int value = 0;
+		for( int shift = 0; shift < 32; shift += 7 ) {
+			byte b = in.readByte();
+			value |= ( b & 0x7F ) << shift;
+			if(( b & 0x80 ) == 0 )
+				return value - 1;
+		}
+
+		throw new IOException( "Malformed size in a binary message." );
+	}
+
+
+	/**
+	 * Writes a string (that may be null).
+	 * @param out the output stream
+	 * @param s a string, or null
+	 * @throws IOException
+	 */
+	public static void writeString( DataOutputStream out, String s ) throws IOException {
+		writeBytes( out, s == null ? null : s.getBytes( StandardCharsets.UTF_8 ));
+	}
+
+
+	/**
+	 * Reads a string written with {@link #writeString(DataOutputStream, String)}.
+	 * @param in the input stream
+	 * @return a string, or null
+	 * @throws IOException
+	 */
+	public static String readString( DataInputStream in ) throws IOException {
+		byte[] bytes = readBytes( in );
+		return bytes == null ? null : new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+
+	/**
+	 * Writes an array of bytes (that may be null).
+	 * @param out the output stream
+	 * @param bytes an array of bytes, or null
+	 * @throws IOException
+	 */
+	public static void writeBytes( DataOutputStream out, byte[] bytes ) throws IOException {
+
+		writeSize( out, bytes == null ? -1 : bytes.length );
+		if( bytes != null )
+			out.write( bytes );
+	}
+
+
+	/**
+	 * Reads an array of bytes written with {@link #writeBytes(DataOutputStream, byte[])}.
+	 * @param in the input stream
+	 * @return an array of bytes, or null
+	 * @throws IOException
+	 */
+	public static byte[] readBytes( DataInputStream in ) throws IOException {
+
+		int size = readSize( in );
+		if( size > in.available())
+			throw new IOException( "Truncated binary message." );
+
+		byte[] result = null;
+		if( size >= 0 ) {
+			result = new byte[ size ];
+			in.readFully( result );
+		}
+
+		return result;
+	}
+
+
+	// Other helpers
+
+
+	/**
+	 * Reads the number of elements of a collection or a map.
+	 * <p>
+	 * Every element takes at least one byte. So, a count that exceeds the number
+	 * of remaining bytes comes from a corrupted or truncated message. Checking it
+	 * prevents huge allocations when collections are created.
+	 * </p>
+	 *
+	 * @param in the input stream
+	 * @return a count, or -1 for null
+	 * @throws IOException if the count is invalid
+	 */
+	private static int readCount( DataInputStream in ) throws IOException {
+
+		int count = readSize( in );
+		if( count > in.available())
+			throw new IOException( "Truncated binary message." );
+
+		return count;
+	}
+
+
+	private static void writeSize( DataOutputStream out, Map<?,?> map ) throws IOException {
+		writeSize( out, map == null ? -1 : map.size());
+	}
+
+
+	private static void writeStatus( DataOutputStream out, InstanceStatus status ) throws IOException {
+		writeString( out, status == null ? null : status.name());
+	}
+
+
+	private static InstanceStatus readStatus( DataInputStream in ) throws IOException {
+
+		String s = readString( in );
+		try {
+			return s == null ? null : InstanceStatus.valueOf( s );
+
+		} catch( IllegalArgumentException e ) {
+			throw new IOException( "Unknown instance status in a binary message: " + s, e );
+		}
+	}
+
+
+	private static void writeStrings( DataOutputStream out, Collection<String> strings ) throws IOException {
+
+		writeSize( out, strings == null ? -1 : strings.size());
+		if( strings != null ) {
+			for( String s : strings )
+				writeString( out, s );
+		}
+	}
+
+
+	private static Set<String> readStrings( DataInputStream in ) throws IOException {
+
+		Set<String> result = null;
+		int size = readCount( in );
+		if( size >= 0 ) {
+			result = new LinkedHashSet<>( size );
+			for( int i=0; i<size; i++ )
+				result.add( readString( in ));
+		}
+
+		return result;
+	}
+
+
+	private static void writeStringMap( DataOutputStream out, Map<String,String> map ) throws IOException {
+
+		writeSize( out, map );
+		if( map != null ) {
+			for( Map.Entry<String,String> entry : map.entrySet()) {
+				writeString( out, entry.getKey());
+				writeString( out, entry.getValue());
+			}
+		}
+	}
+
+
+	private static Map<String,String> readStringMap( DataInputStream in ) throws IOException {
+
+		Map<String,String> result = null;
+		int size = readCount( in );
+		if( size >= 0 ) {
+			result = new LinkedHashMap<>( size );
+			for( int i=0; i<size; i++ )
+				result.put( readString( in ), readString( in ));
+		}
+
+		return result;
+	}
+
+
+	private static void writeBytesMap( DataOutputStream out, Map<String,byte[]> map ) throws IOException {
+
+		writeSize( out, map );
+		if( map != null ) {
+			for( Map.Entry<String,byte[]> entry : map.entrySet()) {
+				writeString( out, entry.getKey());
+				writeBytes( out, entry.getValue());
+			}
+		}
+	}
+
+
+	private static Map<String,byte[]> readBytesMap( DataInputStream in ) throws IOException {
+
+		Map<String,byte[]> result = null;
+		int size = readCount( in );
+		if( size >= 0 ) {
+			result = new LinkedHashMap<>( size );
+			for( int i=0; i<size; i++ )
+				result.put( readString( in ), readBytes( in ));
+		}
+
+		return result;
+	}
+
+
+	private static void writeImports( DataOutputStream out, Map<String,Collection<Import>> imports ) throws IOException {
+
+		writeSize( out, imports );
+		if( imports != null ) {
+			for( Map.Entry<String,Collection<Import>> entry : imports.entrySet()) {
+				writeString( out, entry.getKey());
+
+				Collection<Import> list = entry.getValue();
+				writeSize( out, list == null ? -1 : list.size());
+				if( list == null )
+					continue;
+
+				for( Import imp : list ) {
+					writeString( out, imp.getInstancePath());
+					writeString( out, imp.getComponentName());
+					writeStringMap( out, imp.getExportedVars());
+				}
+			}
+		}
+	}
+
+
+	private static Map<String,Collection<Import>> readImports( DataInputStream in ) throws IOException {
+
+		Map<String,Collection<Import>> result = null;
+		int size = readCount( in );
+		if( size >= 0 ) {
+			result = new LinkedHashMap<>( size );
+			for( int i=0; i<size; i++ ) {
+				String key = readString( in );
+
+				Collection<Import> list = null;
+				int listSize = readCount( in );
+				if( listSize >= 0 ) {
+					list = new ArrayList<>( listSize );
+					for( int j=0; j<listSize; j++ )
+						list.add( new Import( readString( in ), readString( in ), readStringMap( in )));
+				}
+
+				result.put( key, list );
+			}
+		}
+
+		return result;
+	}
+}
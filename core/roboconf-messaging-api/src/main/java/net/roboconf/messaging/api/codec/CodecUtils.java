@@ -0,0 +1,191 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.codec;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import net.roboconf.messaging.api.MessagingConstants;
+
+/**
+ * Utilities to find message codecs.
+ * <p>
+ * The Java serialization and the binary codecs are always available.
+ * Other codecs can be registered (and unregistered) at runtime.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class CodecUtils {
+
+	private static final IMessageCodec JAVA_CODEC = new JavaSerializationCodec();
+	private static final IMessageCodec DECOMPRESSING_CODEC = new CompressingCodec( null, 0 );
+	private static final List<IMessageCodec> CODECS = new CopyOnWriteArrayList<> ();
+	static {
+		CODECS.add( new BinaryMessageCodec());
+		CODECS.add( JAVA_CODEC );
+	}
+
+
+	/**
+	 * Private empty constructor.
+	 */
+	private CodecUtils() {
+		// nothing
+	}
+
+
+	/**
+	 * Registers a codec.
+	 * <p>
+	 * If a codec with the same name was already registered, it is replaced.
+	 * </p>
+	 *
+	 * @param codec a non-null codec
+	 */
+	public static void registerCodec( IMessageCodec codec ) {
+		unregisterCodec( codec.getName());
+		CODECS.add( 0, codec );
+	}
+
+
+	/**
+	 * Unregisters a codec.
+	 * <p>
+	 * The Java serialization codec cannot be unregistered.
+	 * </p>
+	 *
+	 * @param codecName a codec name
+	 */
+	public static void unregisterCodec( String codecName ) {
+
+		for( IMessageCodec codec : CODECS ) {
+			if( codec != JAVA_CODEC && codec.getName().equals( codecName ))
+				CODECS.remove( codec );
+		}
+	}
+
+
+	/**
+	 * Finds a codec by name.
+	 * @param codecName a codec name (can be null)
+	 * @return a non-null codec (the Java serialization one if no codec matched)
+	 */
+	public static IMessageCodec findCodec( String codecName ) {
+
+		IMessageCodec result = null;
+		if( codecName != null ) {
+			for( IMessageCodec codec : CODECS ) {
+				if( codecName.equals( codec.getName())) {
+					result = codec;
+					break;
+				}
+			}
+
+			if( result == null )
+				Logger.getLogger( CodecUtils.class.getName()).warning( "Unknown message codec: " + codecName + ". Java serialization will be used." );
+		}
+
+		return result != null ? result : JAVA_CODEC;
+	}
+
+
+	/**
+	 * Finds the codec to use from a messaging configuration.
+	 * @param configuration a messaging configuration (not null)
+	 * @return a non-null codec
+	 * @see MessagingConstants#MESSAGING_CODEC_PROPERTY
+	 */
+	public static IMessageCodec findCodec( Map<String,String> configuration ) {
+		return findCodec(
+				configuration.get( MessagingConstants.MESSAGING_CODEC_PROPERTY ),
+				findCompressionThreshold( configuration ));
+	}
+
+
+	/**
+	 * Finds a codec by name and wraps it to compress big payloads.
+	 * @param codecName a codec name (can be null)
+	 * @param compressionThreshold the size from which payloads are compressed (0 or negative to disable compression)
+	 * @return a non-null codec
+	 */
+	public static IMessageCodec findCodec( String codecName, int compressionThreshold ) {
+
+		IMessageCodec result = findCodec( codecName );
+		if( compressionThreshold > 0 )
+			result = new CompressingCodec( result, compressionThreshold );
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the compression threshold from a messaging configuration.
+	 * @param configuration a messaging configuration (not null)
+	 * @return the compression threshold, or 0 if compression is disabled
+	 * @see MessagingConstants#MESSAGING_COMPRESSION_THRESHOLD_PROPERTY
+	 */
+	public static int findCompressionThreshold( Map<String,String> configuration ) {
+
+		String value = configuration.get( MessagingConstants.MESSAGING_COMPRESSION_THRESHOLD_PROPERTY );
+		int result = 0;
+		if( value != null ) {
+			try {
+				result = Math.max( 0, Integer.parseInt( value.trim()));
+
+			} catch( NumberFormatException e ) {
+				Logger.getLogger( CodecUtils.class.getName()).warning( "Invalid compression threshold: " + value + ". Compression is disabled." );
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the codec that can decode the given bytes.
+	 * @param bytes a non-null array of bytes
+	 * @return a non-null codec (the Java serialization one if no codec matched)
+	 */
+	public static IMessageCodec findDecoder( byte[] bytes ) {
+
+		// Compressed payloads wrap payloads written by other codecs
+		if( CompressingCodec.isCompressed( bytes ))
+			return DECOMPRESSING_CODEC;
+
+		IMessageCodec result = JAVA_CODEC;
+		for( IMessageCodec codec : CODECS ) {
+			if( codec.accepts( bytes )) {
+				result = codec;
+				break;
+			}
+		}
+
+		return result;
+	}
+}
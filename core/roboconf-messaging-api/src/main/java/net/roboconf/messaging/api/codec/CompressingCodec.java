@@ -0,0 +1,286 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.messages.Message;
+
+/**
+ * A codec that compresses the payloads written by another codec.
+ * <p>
+ * Only payloads whose size reaches a threshold are compressed (with Deflate, favoring speed).
+ * Compressed payloads start with a header: two magic bytes, the format version and the size
+ * of the original payload. Smaller payloads, and payloads that Deflate cannot reduce, are
+ * written as is. Receivers can therefore always decode messages, whatever their own configuration.
+ * </p>
+ * <p>
+ * The announced size is checked before anything is allocated: it cannot exceed a maximum
+ * nor what Deflate can produce from the compressed bytes.
+ * </p>
+ * <p>
+ * Statistics are shared by all the instances of this class (JVM-wide).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class CompressingCodec implements IMessageCodec {
+
+	/**
+	 * The current version of the format.
+	 */
+	public static final byte VERSION = 1;
+
+	static final byte MAGIC_1 = 'R';
+	static final byte MAGIC_2 = 'Z';
+	static final int HEADER_SIZE = 7;
+
+	/**
+	 * The default maximum size (in bytes) of a decompressed payload.
+	 */
+	public static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The maximum compression ratio of Deflate (1032:1).
+	 */
+	static final int MAX_RATIO = 1032;
+
+	private static final CompressionStatistics STATISTICS = new CompressionStatistics();
+
+	private final IMessageCodec delegate;
+	private final int threshold;
+
+
+	/**
+	 * Constructor.
+	 * @param delegate the codec that writes the messages (null if this codec is only used to decode messages)
+	 * @param threshold the size (in bytes) from which payloads are compressed
+	 */
+	public CompressingCodec( IMessageCodec delegate, int threshold ) {
+		this.delegate = delegate;
+		this.threshold = threshold;
+	}
+
+
+	@Override
+	public String getName() {
+		String suffix = MessagingConstants.COMPRESSION_DEFLATE;
+		return this.delegate == null ? suffix : this.delegate.getName() + "+" + suffix;
+	}
+
+
+	@Override
+	public boolean accepts( byte[] bytes ) {
+		return isCompressed( bytes );
+	}
+
+
+	@Override
+	public byte[] encode( Message message ) throws IOException {
+		if( this.delegate == null )
+			throw new IOException( "This codec can only decode messages." );
+
+		return compress( this.delegate.encode( message ));
+	}
+
+
+	@Override
+	public Message decode( byte[] bytes ) throws IOException, ClassNotFoundException {
+		byte[] payload = decompress( bytes );
+		return CodecUtils.findDecoder( payload ).decode( payload );
+	}
+
+
+	/**
+	 * Compresses a payload if it is big enough.
+	 * @param bytes a non-null array of bytes
+	 * @return the compressed payload, or the same array if compression was not worth it
+	 */
+	public byte[] compress( byte[] bytes ) {
+
+		if( bytes.length < this.threshold || this.threshold <= 0 ) {
+			STATISTICS.notCompressed();
+			return bytes;
+		}
+
+		long start = System.nanoTime();
+		ByteArrayOutputStream os = new ByteArrayOutputStream( bytes.length / 2 + HEADER_SIZE );
+		os.write( MAGIC_1 );
+		os.write( MAGIC_2 );
+		os.write( VERSION );
+		os.write( bytes.length >>> 24 );
+		os.write( bytes.length >>> 16 );
+		os.write( bytes.length >>> 8 );
+		os.write( bytes.length );
+
+		Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+		try {
+			deflater.setInput( bytes );
+			deflater.finish();
+
+			byte[] buffer = new byte[ 8192 ];
+			while( ! deflater.finished()) {
+				int count = deflater.deflate( buffer );
+				os.write( buffer, 0, count );
+
+				// Not worth it
+				if( os.size() >= bytes.length )
+					break;
+			}
+
+		} finally {
+			deflater.end();
+		}
+
+		byte[] result;
+		if( os.size() >= bytes.length ) {
+			STATISTICS.notCompressed();
+			result = bytes;
+
+		} else {
+			result = os.toByteArray();
+			STATISTICS.compressed( bytes.length, result.length, System.nanoTime() - start );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @return the codec that writes the messages (can be null)
+	 */
+	public IMessageCodec getDelegate() {
+		return this.delegate;
+	}
+
+
+	/**
+	 * @return the size (in bytes) from which payloads are compressed
+	 */
+	public int getThreshold() {
+		return this.threshold;
+	}
+
+
+	/**
+	 * @return the compression statistics (never null)
+	 */
+	public static CompressionStatistics getStatistics() {
+		return STATISTICS;
+	}
+
+
+	/**
+	 * Determines whether a payload was compressed by this class.
+	 * @param bytes a non-null array of bytes
+	 * @return true if it was compressed, false otherwise
+	 */
+	public static boolean isCompressed( byte[] bytes ) {
+		return bytes.length >= HEADER_SIZE
+				&& bytes[ 0 ] == MAGIC_1
+				&& bytes[ 1 ] == MAGIC_2;
+	}
+
+
+	/**
+	 * Decompresses a payload.
+	 * @param bytes a non-null array of bytes
+	 * @return the original payload (the same array if it was not compressed)
+	 * @throws IOException if the payload could not be decompressed
+	 * @see #DEFAULT_MAX_DECOMPRESSED_SIZE
+	 */
+	public static byte[] decompress( byte[] bytes ) throws IOException {
+		return decompress( bytes, DEFAULT_MAX_DECOMPRESSED_SIZE );
+	}
+
+
+	/**
+	 * Decompresses a payload.
+	 * @param bytes a non-null array of bytes
+	 * @param maxSize the maximum size (in bytes) of the original payload
+	 * @return the original payload (the same array if it was not compressed)
+	 * @throws IOException if the payload could not be decompressed or if it is too big
+	 */
+	public static byte[] decompress( byte[] bytes, int maxSize ) throws IOException {
+
+		if( ! isCompressed( bytes ))
+			return bytes;
+
+		if( bytes[ 2 ] != VERSION )
+			throw new IOException( "Unsupported version for compressed messages: " + bytes[ 2 ]);
+
+		long start = System.nanoTime();
+		int size = (bytes[ 3 ] & 0xFF) << 24
+				| (bytes[ 4 ] & 0xFF) << 16
+				| (bytes[ 5 ] & 0xFF) << 8
+				| (bytes[ 6 ] & 0xFF);
+
+		if( size < 0 )
+			throw new IOException( "Invalid size for a compressed message: " + size );
+
+		if( size > maxSize )
+			throw new IOException( "A compressed message is too big: " + size + " bytes (maximum: " + maxSize + ")." );
+
+		if( size > (long) ( bytes.length - HEADER_SIZE ) * MAX_RATIO )
+			throw new IOException( "A compressed message announces more bytes than it can contain: " + size );
+
+		byte[] result = new byte[ size ];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput( bytes, HEADER_SIZE, bytes.length - HEADER_SIZE );
+			// Inflate until the end of the stream, so that the checksum is verified
+			int read = 0;
+			byte[] extra = new byte[ 1 ];
+			while( ! inflater.finished()) {
+				int count = read < size ? inflater.inflate( result, read, size - read ) : inflater.inflate( extra );
+				if( count == 0 && ( inflater.needsInput() || inflater.needsDictionary()))
+					break;
+
+				if( read == size && count > 0 )
+					throw new IOException( "A compressed message is bigger than announced." );
+
+				read += count;
+			}
+
+			if( read != size || ! inflater.finished())
+				throw new IOException( "A compressed message is truncated." );
+
+		} catch( DataFormatException e ) {
+			throw new IOException( "A compressed message is corrupted.", e );
+
+		} finally {
+			inflater.end();
+		}
+
+		STATISTICS.decompressed( System.nanoTime() - start );
+		return result;
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics about the compression of messages.
+ * <p>
+ * Instances are thread-safe.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class CompressionStatistics {
+
+	private final AtomicLong compressedMessagesCount = new AtomicLong();
+	private final AtomicLong uncompressedMessagesCount = new AtomicLong();
+	private final AtomicLong bytesBeforeCompression = new AtomicLong();
+	private final AtomicLong bytesAfterCompression = new AtomicLong();
+	private final AtomicLong compressionTime = new AtomicLong();
+	private final AtomicLong decompressedMessagesCount = new AtomicLong();
+	private final AtomicLong decompressionTime = new AtomicLong();
+
+
+	/**
+	 * Records a compression.
+	 * @param originalSize the size before compression
+	 * @param compressedSize the size after compression
+	 * @param durationNanos the compression time, in nano-seconds
+	 */
+	public void compressed( int originalSize, int compressedSize, long durationNanos ) {
+		this.compressedMessagesCount.incrementAndGet();
+		this.bytesBeforeCompression.addAndGet( originalSize );
+		this.bytesAfterCompression.addAndGet( compressedSize );
+		this.compressionTime.addAndGet( durationNanos );
+	}
+
+
+	/**
+	 * Records a message that was sent without compression (too small, or not compressible).
+	 */
+	public void notCompressed() {
+		this.uncompressedMessagesCount.incrementAndGet();
+	}
+
+
+	/**
+	 * Records a decompression.
+	 * @param durationNanos the decompression time, in nano-seconds
+	 */
+	public void decompressed( long durationNanos ) {
+		this.decompressedMessagesCount.incrementAndGet();
+		this.decompressionTime.addAndGet( durationNanos );
+	}
+
+
+	/**
+	 * Resets all the counters.
+	 */
+	public void reset() {
+		this.compressedMessagesCount.set( 0 );
+		this.uncompressedMessagesCount.set( 0 );
+		this.bytesBeforeCompression.set( 0 );
+		this.bytesAfterCompression.set( 0 );
+		this.compressionTime.set( 0 );
+		this.decompressedMessagesCount.set( 0 );
+		this.decompressionTime.set( 0 );
+	}
+
+
+	/**
+	 * @return the number of compressed messages
+	 */
+	public long getCompressedMessagesCount() {
+		return this.compressedMessagesCount.get();
+	}
+
+
+	/**
+	 * @return the number of messages that were not compressed
+	 */
+	public long getUncompressedMessagesCount() {
+		return this.uncompressedMessagesCount.get();
+	}
+
+
+	/**
+	 * @return the total size of compressed messages, before compression
+	 */
+	public long getBytesBeforeCompression() {
+		return this.bytesBeforeCompression.get();
+	}
+
+
+	/**
+	 * @return the total size of compressed messages, after compression
+	 */
+	public long getBytesAfterCompression() {
+		return this.bytesAfterCompression.get();
+	}
+
+
+	/**
+	 * @return the compression ratio, in percents (compressed size / original size), or 0 if nothing was compressed
+	 */
+	public long getCompressionRatio() {
+		long before = this.bytesBeforeCompression.get();
+		return before == 0 ? 0 : this.bytesAfterCompression.get() * 100 / before;
+	}
+
+
+	/**
+	 * @return the average compression time, in micro-seconds
+	 */
+	public long getAverageCompressionTime() {
+		long count = this.compressedMessagesCount.get();
+		return count == 0 ? 0 : this.compressionTime.get() / count / 1000;
+	}
+
+
+	/**
+	 * @return the number of decompressed messages
+	 */
+	public long getDecompressedMessagesCount() {
+		return this.decompressedMessagesCount.get();
+	}
+
+
+	/**
+	 * @return the average decompression time, in micro-seconds
+	 */
+	public long getAverageDecompressionTime() {
+		long count = this.decompressedMessagesCount.get();
+		return count == 0 ? 0 : this.decompressionTime.get() / count / 1000;
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.codec;
+
+import java.io.IOException;
+
+import net.roboconf.messaging.api.messages.Message;
+
+/**
+ * A codec converts Roboconf messages into bytes and vice-versa.
+ * <p>
+ * The codec used to write messages is chosen through the messaging configuration
+ * (see {@link net.roboconf.messaging.api.MessagingConstants#MESSAGING_CODEC_PROPERTY}).
+ * Codecs must recognize the payloads they wrote, so that a receiver can always decode a message,
+ * even if its own configuration uses another codec.
+ * </p>
+ * <p>
+ * Codecs must be stateless and thread-safe.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IMessageCodec {
+
+	/**
+	 * @return the codec's name (not null)
+	 */
+	String getName();
+
+	/**
+	 * Encodes a message.
+	 * @param message a non-null message
+	 * @return a non-null array of bytes
+	 * @throws IOException if the message could not be encoded
+	 */
+	byte[] encode( Message message ) throws IOException;
+
+	/**
+	 * Decodes a message.
+	 * @param bytes a non-null array of bytes
+	 * @return the decoded message (not null)
+	 * @throws IOException if the bytes could not be decoded
+	 * @throws ClassNotFoundException if a class could not be found while decoding
+	 */
+	Message decode( byte[] bytes ) throws IOException, ClassNotFoundException;
+
+	/**
+	 * Determines whether this codec wrote the given bytes.
+	 * <p>
+	 * This method is expected to be fast: only the first bytes (header) should be checked.
+	 * </p>
+	 *
+	 * @param bytes a non-null array of bytes
+	 * @return true if this codec can decode these bytes, false otherwise
+	 */
+	boolean accepts( byte[] bytes );
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.messages.Message;
+
+/**
+ * A codec based on Java serialization.
+ * <p>
+ * This is the historical (and default) codec. It supports any message,
+ * including those that are not known by the messaging API.
+ * </p>
+ * <p>
+ * The send time stamp is written after the serialized message. This way,
+ * published messages are not modified and older decoders simply ignore it.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class JavaSerializationCodec implements IMessageCodec {
+
+	/**
+	 * The first bytes of any Java serialization stream.
+	 */
+	private static final byte[] STREAM_MAGIC = { (byte) 0xAC, (byte) 0xED };
+
+
+	@Override
+	public String getName() {
+		return MessagingConstants.CODEC_JAVA;
+	}
+
+
+	@Override
+	public byte[] encode( Message message ) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream( os );
+		try {
+			out.writeObject( message );
+			out.writeLong( System.currentTimeMillis());
+
+		} finally {
+			Utils.closeQuietly( out );
+		}
+
+		return os.toByteArray();
+	}
+
+
+	@Override
+	public Message decode( byte[] bytes ) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( bytes ));
+		try {
+			Message result = Message.class.cast( in.readObject());
+			try {
+				result.setSendTimestamp( in.readLong());
+
+			} catch( EOFException e ) {
+				// Older senders did not write any time stamp
+			}
+
+			return result;
+
+		} finally {
+			Utils.closeQuietly( in );
+		}
+	}
+
+
+	@Override
+	public boolean accepts( byte[] bytes ) {
+		return bytes.length >= STREAM_MAGIC.length
+				&& bytes[ 0 ] == STREAM_MAGIC[ 0 ]
+				&& bytes[ 1 ] == STREAM_MAGIC[ 1 ];
+	}
+}
@@ -27,11 +27,11 @@ package net.roboconf.messaging.api.extensions;
 
 import java.io.IOException;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.roboconf.core.model.beans.Application;
@@ -69,7 +69,155 @@ public abstract class AbstractRoutingClient<T> implements IMessagingClient {
 	 * @author Vincent Zurczak - Linagora
 	 */
 	public static abstract class RoutingContext {
-		public final Map<String,Set<MessagingContext>> subscriptions = new ConcurrentHashMap<> ();
+
+		/**
+		 * Owner ID => subscriptions.
+		 * <p>
+		 * Use the methods of this class to update it, so that
+		 * it remains consistent with the reverse index.
+		 * </p>
+		 */
+		private final Map<String,Set<MessagingContext>> subscriptions = new ConcurrentHashMap<> ();
+
+		/**
+		 * Messaging context => IDs of the subscribed owners (reverse index).
+		 */
+		final Map<MessagingContext,Set<String>> subscribers = new ConcurrentHashMap<> ();
+
+
+		/**
+		 * Registers a subscription.
+		 * @param ownerId an owner ID
+		 * @param ctx a messaging context (ignored if null)
+		 */
+		public synchronized void addSubscription( String ownerId, MessagingContext ctx ) {
+
+			if( ownerId == null || ctx == null )
+				return;
+
+			Set<MessagingContext> sub = this.subscriptions.get( ownerId );
+			if( sub == null ) {
+				sub = newConcurrentSet();
+				this.subscriptions.put( ownerId, sub );
+			}
+
+			sub.add( ctx );
+
+			Set<String> owners = this.subscribers.get( ctx );
+			if( owners == null ) {
+				owners = newConcurrentSet();
+				this.subscribers.put( ctx, owners );
+			}
+
+			owners.add( ownerId );
+		}
+
+
+		/**
+		 * Unregisters a subscription.
+		 * @param ownerId an owner ID
+		 * @param ctx a messaging context (ignored if null)
+		 */
+		public synchronized void removeSubscription( String ownerId, MessagingContext ctx ) {
+
+			if( ownerId == null || ctx == null )
+				return;
+
+			Set<MessagingContext> sub = this.subscriptions.get( ownerId );
+			if( sub != null ) {
+				sub.remove( ctx );
+				if( sub.isEmpty())
+					this.subscriptions.remove( ownerId );
+			}
+
+			removeFromIndex( ownerId, ctx );
+		}
+
+
+		/**
+		 * Removes all the subscriptions of an owner.
+		 * @param ownerId an owner ID
+		 * @return the removed subscriptions (can be null)
+		 */
+		public synchronized Set<MessagingContext> removeOwner( String ownerId ) {
+
+			Set<MessagingContext> sub = ownerId == null ? null : this.subscriptions.remove( ownerId );
+			if( sub != null ) {
+				for( MessagingContext ctx : sub )
+					removeFromIndex( ownerId, ctx );
+			}
+
+			return sub;
+		}
+
+
+		/**
+		 * Associates the subscriptions of an owner with a new ID.
+		 * @param oldOwnerId the old owner ID
+		 * @param newOwnerId the new owner ID
+		 */
+		public synchronized void renameOwner( String oldOwnerId, String newOwnerId ) {
+
+			Set<MessagingContext> sub = removeOwner( oldOwnerId );
+			if( sub != null ) {
+				for( MessagingContext ctx : sub )
+					addSubscription( newOwnerId, ctx );
+			}
+		}
+
+
+		/**
+		 * Finds the subscriptions of an owner.
+		 * <p>
+		 * The result is a read-only live view, safe for concurrent iteration.
+		 * </p>
+		 *
+		 * @param ownerId an owner ID
+		 * @return a non-null set of messaging contexts
+		 */
+		public Set<MessagingContext> findSubscriptions( String ownerId ) {
+			Set<MessagingContext> result = ownerId == null ? null : this.subscriptions.get( ownerId );
+			return result == null ? Collections.<MessagingContext>emptySet() : Collections.unmodifiableSet( result );
+		}
+
+
+		/**
+		 * @return a read-only live view of the IDs of the owners that have subscriptions
+		 */
+		public Set<String> getOwnerIds() {
+			return Collections.unmodifiableSet( this.subscriptions.keySet());
+		}
+
+
+		/**
+		 * Finds the owners that subscribed to a given context.
+		 * <p>
+		 * The result is a live view, safe for concurrent iteration.
+		 * </p>
+		 *
+		 * @param ctx a messaging context
+		 * @return a non-null set of owner IDs
+		 */
+		public Set<String> findSubscribers( MessagingContext ctx ) {
+			Set<String> result = ctx == null ? null : this.subscribers.get( ctx );
+			return result == null ? Collections.<String>emptySet() : result;
+		}
+
+
+		private void removeFromIndex( String ownerId, MessagingContext ctx ) {
+
+			Set<String> owners = this.subscribers.get( ctx );
+			if( owners != null ) {
+				owners.remove( ownerId );
+				if( owners.isEmpty())
+					this.subscribers.remove( ctx );
+			}
+		}
+
+
+		private static <E> Set<E> newConcurrentSet() {
+			return Collections.newSetFromMap( new ConcurrentHashMap<E,Boolean> ());
+		}
 	}
 
 
@@ -118,7 +266,7 @@ public abstract class AbstractRoutingClient<T> implements IMessagingClient {
 
 		this.logger.fine( getOwnerId() + " is deleting server artifacts for " + application );
 		getStaticContextToObject().remove( this.ownerId );
-		this.routingContext.subscriptions.remove( this.ownerId );
+		this.routingContext.removeOwner( this.ownerId );
 	}
 
 
@@ -145,17 +293,21 @@ public abstract class AbstractRoutingClient<T> implements IMessagingClient {
 	@Override
 	public void publish( MessagingContext ctx, Message msg ) throws IOException {
 
-		this.logger.fine( getOwnerId() + " is publishing message (" + msg + ") to " + buildOwnerId( ctx ));
+		// Publishing is on the hot path: do not build log messages for nothing
+		boolean fine = this.logger.isLoggable( Level.FINE );
+		if( fine )
+			this.logger.fine( getOwnerId() + " is publishing message (" + msg + ") to " + buildOwnerId( ctx ));
+
 		if( ! canProceed()) {
-			this.logger.fine( getOwnerId() + " is dropping message (" + msg + ") for " + buildOwnerId( ctx ));
+			if( fine )
+				this.logger.fine( getOwnerId() + " is dropping message (" + msg + ") for " + buildOwnerId( ctx ));
+
 			return;
 		}
 
-		for( Map.Entry<String,Set<MessagingContext>> entry : this.routingContext.subscriptions.entrySet()) {
-			if( ! entry.getValue().contains( ctx ))
-				continue;
-
-			T obj = getStaticContextToObject().get( entry.getKey());
+		// Only visit the owners that subscribed to this context
+		for( String subscriberId : this.routingContext.findSubscribers( ctx )) {
+			T obj = getStaticContextToObject().get( subscriberId );
 			if( obj != null )
 				process( obj, msg );
 		}
@@ -190,9 +342,7 @@ public abstract class AbstractRoutingClient<T> implements IMessagingClient {
 			if( obj != null )
 				getStaticContextToObject().put( newOwnerId, obj );
 
-			Set<MessagingContext> subscriptions = this.routingContext.subscriptions.remove( oldOwnerId );
-			if( subscriptions != null )
-				this.routingContext.subscriptions.put( newOwnerId, subscriptions );
+			this.routingContext.renameOwner( oldOwnerId, newOwnerId );
 		}
 	}
 
@@ -264,16 +414,8 @@ public abstract class AbstractRoutingClient<T> implements IMessagingClient {
 	 */
 	protected void subscribe( String id, MessagingContext ctx ) throws IOException {
 
-		if( ! canProceed())
-			return;
-
-		Set<MessagingContext> sub = this.routingContext.subscriptions.get( id );
-		if( sub == null ) {
-			sub = new HashSet<> ();
-			this.routingContext.subscriptions.put( id, sub );
-		}
-
-		sub.add( ctx );
+		if( canProceed())
+			this.routingContext.addSubscription( id, ctx );
 	}
 
 
@@ -285,15 +427,8 @@ public abstract class AbstractRoutingClient<T> implements IMessagingClient {
 	 */
 	protected void unsubscribe( String id, MessagingContext ctx ) throws IOException {
 
-		if( ! canProceed())
-			return;
-
-		Set<MessagingContext> sub = this.routingContext.subscriptions.get( id );
-		if( sub != null ) {
-			sub.remove( ctx );
-			if( sub.isEmpty())
-				this.routingContext.subscriptions.remove( id );
-		}
+		if( canProceed())
+			this.routingContext.removeSubscription( id, ctx );
 	}
 
 
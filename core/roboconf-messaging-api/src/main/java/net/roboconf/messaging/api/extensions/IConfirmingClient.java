@@ -0,0 +1,70 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.extensions;
+
+import net.roboconf.messaging.api.jmx.LatencyHistogram;
+
+/**
+ * An optional interface for messaging clients that wait for the messaging server
+ * to confirm the messages they publish.
+ * <p>
+ * It is used to expose confirmation statistics through JMX.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IConfirmingClient {
+
+	/**
+	 * @return the number of published messages that were confirmed by the messaging server
+	 */
+	long getConfirmedMessagesCount();
+
+	/**
+	 * @return the number of published messages that were rejected (nack) by the messaging server
+	 */
+	long getRejectedMessagesCount();
+
+	/**
+	 * @return the number of messages that were published again after a rejection
+	 */
+	long getRepublishedMessagesCount();
+
+	/**
+	 * @return the number of messages that were given up (rejected too many times or never confirmed)
+	 */
+	long getLostMessagesCount();
+
+	/**
+	 * @return the number of published messages that are waiting for a confirmation
+	 */
+	int getPendingConfirmsCount();
+
+	/**
+	 * @return the latencies between publication and confirmation (in micro-seconds, can be null)
+	 */
+	LatencyHistogram getConfirmLatencies();
+}
@@ -26,11 +26,13 @@
 package net.roboconf.messaging.api.internal.client.in_memory;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.codec.IMessageCodec;
 import net.roboconf.messaging.api.extensions.AbstractRoutingClient;
 import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
 import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
@@ -42,6 +44,11 @@ import net.roboconf.messaging.api.messages.Message;
  * This solution only works when the DM and ALL the agents run in the same JVM.
  * So, it should only work with in-memory agents, and maybe with locally "embedded" agents.
  * </p>
+ * <p>
+ * Messages are not serialized: the published instances are directly added into the
+ * recipients' queues. Recipients must therefore not modify the messages they receive.
+ * Tests that need isolation can enable copies through the routing context.
+ * </p>
  *
  * @author Vincent Zurczak - Linagora
  */
@@ -52,10 +59,16 @@ public class InMemoryClient extends AbstractRoutingClient<LinkedBlockingQueue<Me
 	 */
 	public static class InMemoryRoutingContext extends RoutingContext {
 		public final Map<String,LinkedBlockingQueue<Message>> ctxToQueue = new ConcurrentHashMap<> ();
+
+		/**
+		 * The codec used to copy messages (null to pass messages by reference).
+		 */
+		public volatile IMessageCodec copyCodec;
 	}
 
-	// Internal field (for a convenient access).
+	// Internal fields (for a convenient access).
 	private final Map<String,LinkedBlockingQueue<Message>> ctxToQueue;
+	private final InMemoryRoutingContext inMemoryRoutingContext;
 
 
 	/**
@@ -66,6 +79,21 @@ public class InMemoryClient extends AbstractRoutingClient<LinkedBlockingQueue<Me
 	public InMemoryClient( InMemoryRoutingContext routingContext, RecipientKind ownerKind ) {
 		super( routingContext, ownerKind );
 		this.ctxToQueue = routingContext.ctxToQueue;
+		this.inMemoryRoutingContext = routingContext;
+	}
+
+
+	@Override
+	public Map<String,String> getConfiguration() {
+
+		Map<String,String> result = super.getConfiguration();
+		if( this.inMemoryRoutingContext.copyCodec != null ) {
+			result = new HashMap<>( result );
+			result.put( MessagingConstants.IN_MEMORY_COPY_MESSAGES_PROPERTY, "true" );
+			result.put( MessagingConstants.MESSAGING_CODEC_PROPERTY, this.inMemoryRoutingContext.copyCodec.getName());
+		}
+
+		return result;
 	}
 
 
@@ -89,6 +117,20 @@ public class InMemoryClient extends AbstractRoutingClient<LinkedBlockingQueue<Me
 
 	@Override
 	protected void process( LinkedBlockingQueue<Message> queue, Message message ) throws IOException {
-		queue.add( message );
+
+		// Fast path: no serialization
+		IMessageCodec copyCodec = this.inMemoryRoutingContext.copyCodec;
+		if( copyCodec == null ) {
+			queue.add( message );
+			return;
+		}
+
+		// Defensive copy: every recipient gets its own instance
+		try {
+			queue.add( copyCodec.decode( copyCodec.encode( message )));
+
+		} catch( ClassNotFoundException e ) {
+			throw new IOException( e );
+		}
 	}
 }
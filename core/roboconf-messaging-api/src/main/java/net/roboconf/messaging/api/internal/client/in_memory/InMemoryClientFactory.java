@@ -28,6 +28,7 @@ package net.roboconf.messaging.api.internal.client.in_memory;
 import java.util.Map;
 
 import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.codec.CodecUtils;
 import net.roboconf.messaging.api.extensions.IMessagingClient;
 import net.roboconf.messaging.api.factory.IMessagingClientFactory;
 import net.roboconf.messaging.api.internal.client.in_memory.InMemoryClient.InMemoryRoutingContext;
@@ -55,6 +56,22 @@ public class InMemoryClientFactory implements IMessagingClientFactory {
 	@Override
 	public boolean setConfiguration( final Map<String, String> configuration ) {
 		String messagingType = configuration.get( MessagingConstants.MESSAGING_TYPE_PROPERTY );
-		return MessagingConstants.FACTORY_IN_MEMORY.equals( messagingType );
+		boolean result = MessagingConstants.FACTORY_IN_MEMORY.equals( messagingType );
+
+		// Messages are passed by reference, unless copies were explicitly requested
+		if( result ) {
+			boolean copy = Boolean.parseBoolean( configuration.get( MessagingConstants.IN_MEMORY_COPY_MESSAGES_PROPERTY ));
+			this.routingContext.copyCodec = copy ? CodecUtils.findCodec( configuration ) : null;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @return the routing context shared by the clients of this factory
+	 */
+	InMemoryRoutingContext getRoutingContext() {
+		return this.routingContext;
 	}
 }
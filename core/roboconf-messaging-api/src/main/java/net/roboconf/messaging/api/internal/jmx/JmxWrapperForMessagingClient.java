@@ -26,9 +26,12 @@
 package net.roboconf.messaging.api.internal.jmx;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
@@ -38,11 +41,17 @@ import org.osgi.framework.ServiceRegistration;
 
 import net.roboconf.core.model.beans.Application;
 import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.codec.CompressingCodec;
+import net.roboconf.messaging.api.extensions.IConfirmingClient;
 import net.roboconf.messaging.api.extensions.IMessagingClient;
 import net.roboconf.messaging.api.extensions.MessagingContext;
 import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
 import net.roboconf.messaging.api.internal.client.dismiss.DismissClient;
+import net.roboconf.messaging.api.jmx.LatencyHistogram;
+import net.roboconf.messaging.api.jmx.LatencyStatistics;
 import net.roboconf.messaging.api.jmx.MessagingApiMBean;
+import net.roboconf.messaging.api.jmx.PrioritizedMessageQueue;
+import net.roboconf.messaging.api.jmx.PrioritizedMessageQueue.PriorityLane;
 import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
 import net.roboconf.messaging.api.utils.MessagingUtils;
@@ -66,7 +75,7 @@ public class JmxWrapperForMessagingClient implements IMessagingClient, Messaging
 
 	// The wrapped elements
 	private final IMessagingClient messagingClient;
-	private RoboconfMessageQueue messageQueue;
+	private volatile RoboconfMessageQueue messageQueue;
 	private String id;
 
 	// Logger
@@ -157,6 +166,8 @@ public class JmxWrapperForMessagingClient implements IMessagingClient, Messaging
 
 		if( this.messageQueue != null )
 			this.messageQueue.reset();
+
+		CompressingCodec.getStatistics().reset();
 	}
 
 
@@ -169,25 +180,25 @@ public class JmxWrapperForMessagingClient implements IMessagingClient, Messaging
 	// Sent messages
 
 	@Override
-	public synchronized long getFailedSendingCount() {
+	public long getFailedSendingCount() {
 		return this.failedSendingCount.get();
 	}
 
 
 	@Override
-	public synchronized long getSentMessagesCount() {
+	public long getSentMessagesCount() {
 		return this.sentMessagesCount.get();
 	}
 
 
 	@Override
-	public synchronized long getTimestampOfLastSendingFailure() {
+	public long getTimestampOfLastSendingFailure() {
 		return this.timestampOfLastSendingFailure.get();
 	}
 
 
 	@Override
-	public synchronized long getTimestampOfLastSentMessage() {
+	public long getTimestampOfLastSentMessage() {
 		return this.timestampOfLastSentMessage.get();
 	}
 
@@ -195,26 +206,276 @@ public class JmxWrapperForMessagingClient implements IMessagingClient, Messaging
 	// Received messages
 
 	@Override
-	public synchronized long getFailedReceptionCount() {
-		return this.messageQueue == null ? 0 : this.messageQueue.getFailedReceptionCount();
+	public long getFailedReceptionCount() {
+		RoboconfMessageQueue queue = this.messageQueue;
+		return queue == null ? 0 : queue.getFailedReceptionCount();
+	}
+
+
+	@Override
+	public long getReceivedMessagesCount() {
+		RoboconfMessageQueue queue = this.messageQueue;
+		return queue == null ? 0 : queue.getReceivedMessagesCount();
+	}
+
+
+	@Override
+	public long getTimestampOfLastReceptionFailure() {
+		RoboconfMessageQueue queue = this.messageQueue;
+		return queue == null ? 0 : queue.getTimestampOfLastReceptionFailure();
+	}
+
+
+	@Override
+	public long getTimestampOfLastReceivedMessage() {
+		RoboconfMessageQueue queue = this.messageQueue;
+		return queue == null ? 0 : queue.getTimestampOfLastReceivedMessage();
+	}
+
+
+	// Processing lanes
+
+	@Override
+	public int getProcessingLanesCount() {
+		return findProcessingLanes().size();
 	}
 
 
 	@Override
-	public synchronized long getReceivedMessagesCount() {
-		return this.messageQueue == null ? 0 : this.messageQueue.getReceivedMessagesCount();
+	public long[] getProcessingLanesPendingMessages() {
+
+		List<RoboconfMessageQueue> lanes = findProcessingLanes();
+		long[] result = new long[ lanes.size()];
+		for( int i=0; i<result.length; i++ )
+			result[ i ] = lanes.get( i ).size();
+
+		return result;
 	}
 
 
 	@Override
-	public synchronized long getTimestampOfLastReceptionFailure() {
-		return this.messageQueue == null ? 0 : this.messageQueue.getTimestampOfLastReceptionFailure();
+	public long[] getProcessingLanesReceivedMessagesCount() {
+
+		List<RoboconfMessageQueue> lanes = findProcessingLanes();
+		long[] result = new long[ lanes.size()];
+		for( int i=0; i<result.length; i++ )
+			result[ i ] = lanes.get( i ).getReceivedMessagesCount();
+
+		return result;
 	}
 
 
+	private List<RoboconfMessageQueue> findProcessingLanes() {
+
+		RoboconfMessageQueue queue = this.messageQueue;
+		List<RoboconfMessageQueue> result;
+		if( queue == null )
+			result = Collections.emptyList();
+		else
+			result = queue.getProcessingLanes();
+
+		return result;
+	}
+
+
+	// Priority lanes
+
 	@Override
-	public synchronized long getTimestampOfLastReceivedMessage() {
-		return this.messageQueue == null ? 0 : this.messageQueue.getTimestampOfLastReceivedMessage();
+	public String[] getPriorityLanes() {
+
+		PrioritizedMessageQueue queue = findPrioritizedMessageQueue();
+		PriorityLane[] lanes = queue == null ? new PriorityLane[ 0 ] : PriorityLane.values();
+		String[] result = new String[ lanes.length ];
+		for( int i=0; i<result.length; i++ )
+			result[ i ] = lanes[ i ].toString();
+
+		return result;
+	}
+
+
+	@Override
+	public long[] getPriorityLanesPendingMessages() {
+
+		PrioritizedMessageQueue queue = findPrioritizedMessageQueue();
+		PriorityLane[] lanes = queue == null ? new PriorityLane[ 0 ] : PriorityLane.values();
+		long[] result = new long[ lanes.length ];
+		for( int i=0; i<result.length; i++ )
+			result[ i ] = queue.getLaneSize( lanes[ i ]);
+
+		return result;
+	}
+
+
+	@Override
+	public long[] getPriorityLanesDroppedMessagesCount() {
+
+		PrioritizedMessageQueue queue = findPrioritizedMessageQueue();
+		PriorityLane[] lanes = queue == null ? new PriorityLane[ 0 ] : PriorityLane.values();
+		long[] result = new long[ lanes.length ];
+		for( int i=0; i<result.length; i++ )
+			result[ i ] = queue.getLaneDroppedMessagesCount( lanes[ i ]);
+
+		return result;
+	}
+
+
+	@Override
+	public long[] getPriorityLanesCoalescedMessagesCount() {
+
+		PrioritizedMessageQueue queue = findPrioritizedMessageQueue();
+		PriorityLane[] lanes = queue == null ? new PriorityLane[ 0 ] : PriorityLane.values();
+		long[] result = new long[ lanes.length ];
+		for( int i=0; i<result.length; i++ )
+			result[ i ] = queue.getLaneCoalescedMessagesCount( lanes[ i ]);
+
+		return result;
+	}
+
+
+	@Override
+	public long[] getPriorityLanesAgeOfOldestMessage() {
+
+		PrioritizedMessageQueue queue = findPrioritizedMessageQueue();
+		PriorityLane[] lanes = queue == null ? new PriorityLane[ 0 ] : PriorityLane.values();
+		long[] result = new long[ lanes.length ];
+		for( int i=0; i<result.length; i++ )
+			result[ i ] = queue.getLaneAgeOfOldestMessage( lanes[ i ]);
+
+		return result;
+	}
+
+
+	private PrioritizedMessageQueue findPrioritizedMessageQueue() {
+		RoboconfMessageQueue queue = this.messageQueue;
+		return queue instanceof PrioritizedMessageQueue ? (PrioritizedMessageQueue) queue : null;
+	}
+
+
+	// Latencies
+
+	@Override
+	public String[] getLatencyStatistics() {
+
+		List<LatencyStatistics> stats = findLatencyStatistics();
+		String[] result = new String[ stats.size()];
+		for( int i=0; i<result.length; i++ )
+			result[ i ] = stats.get( i ).toString();
+
+		return result;
+	}
+
+
+	/**
+	 * @return the latency statistics of the received messages (never null)
+	 */
+	public List<LatencyStatistics> findLatencyStatistics() {
+		RoboconfMessageQueue queue = this.messageQueue;
+		return queue == null ? new ArrayList<LatencyStatistics>( 0 ) : queue.getLatencyTracker().computeStatistics();
+	}
+
+
+	// Publisher confirms
+
+	@Override
+	public long getConfirmedMessagesCount() {
+		IConfirmingClient client = findConfirmingClient();
+		return client == null ? 0 : client.getConfirmedMessagesCount();
+	}
+
+
+	@Override
+	public long getRejectedMessagesCount() {
+		IConfirmingClient client = findConfirmingClient();
+		return client == null ? 0 : client.getRejectedMessagesCount();
+	}
+
+
+	@Override
+	public long getRepublishedMessagesCount() {
+		IConfirmingClient client = findConfirmingClient();
+		return client == null ? 0 : client.getRepublishedMessagesCount();
+	}
+
+
+	@Override
+	public long getLostMessagesCount() {
+		IConfirmingClient client = findConfirmingClient();
+		return client == null ? 0 : client.getLostMessagesCount();
+	}
+
+
+	@Override
+	public int getPendingConfirmsCount() {
+		IConfirmingClient client = findConfirmingClient();
+		return client == null ? 0 : client.getPendingConfirmsCount();
+	}
+
+
+	@Override
+	public long[] getConfirmLatency() {
+		LatencyHistogram histogram = findConfirmLatencies();
+		return histogram == null ? new long[ 5 ] : histogram.computeStatistics();
+	}
+
+
+	@Override
+	public long getConfirmThroughput() {
+
+		long result = 0;
+		LatencyHistogram histogram = findConfirmLatencies();
+		if( histogram != null )
+			result = histogram.computeStatistics()[ 0 ] * 1000 / histogram.getWindow();
+
+		return result;
+	}
+
+
+	// Compression
+
+	@Override
+	public long getCompressedMessagesCount() {
+		return CompressingCodec.getStatistics().getCompressedMessagesCount();
+	}
+
+
+	@Override
+	public long getUncompressedMessagesCount() {
+		return CompressingCodec.getStatistics().getUncompressedMessagesCount();
+	}
+
+
+	@Override
+	public long getCompressionRatio() {
+		return CompressingCodec.getStatistics().getCompressionRatio();
+	}
+
+
+	@Override
+	public long getCompressionTime() {
+		return CompressingCodec.getStatistics().getAverageCompressionTime();
+	}
+
+
+	@Override
+	public long getDecompressedMessagesCount() {
+		return CompressingCodec.getStatistics().getDecompressedMessagesCount();
+	}
+
+
+	@Override
+	public long getDecompressionTime() {
+		return CompressingCodec.getStatistics().getAverageDecompressionTime();
+	}
+
+
+	private IConfirmingClient findConfirmingClient() {
+		return this.messagingClient instanceof IConfirmingClient ? (IConfirmingClient) this.messagingClient : null;
+	}
+
+
+	private LatencyHistogram findConfirmLatencies() {
+		IConfirmingClient client = findConfirmingClient();
+		return client == null ? null : client.getConfirmLatencies();
 	}
 
 
@@ -274,10 +535,7 @@ public class JmxWrapperForMessagingClient implements IMessagingClient, Messaging
 	@Override
 	public void setMessageQueue( RoboconfMessageQueue messageQueue ) {
 
-		synchronized( this ) {
-			this.messageQueue = messageQueue;
-		}
-
+		this.messageQueue = messageQueue;
 		this.messagingClient.setMessageQueue( messageQueue );
 	}
 
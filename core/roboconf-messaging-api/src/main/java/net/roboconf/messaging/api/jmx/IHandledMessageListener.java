@@ -0,0 +1,51 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.jmx;
+
+import net.roboconf.messaging.api.messages.Message;
+
+/**
+ * A listener notified when a message taken from a {@link RoboconfMessageQueue} has been handled.
+ * <p>
+ * A message is handled once it has been processed, or once it has been discarded by the
+ * queue (e.g. dropped or replaced by a more recent one). Either way, it will not be processed
+ * anymore. This is typically used to acknowledge messages to a messaging server.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IHandledMessageListener {
+
+	/**
+	 * Invoked when a message has been handled.
+	 * <p>
+	 * When processing lanes are used, this method may be invoked concurrently.
+	 * </p>
+	 *
+	 * @param message the message (not null)
+	 */
+	void messageWasHandled( Message message );
+}
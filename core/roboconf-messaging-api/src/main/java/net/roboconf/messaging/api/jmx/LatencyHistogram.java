@@ -0,0 +1,258 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.jmx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A light histogram to compute latency percentiles over a sliding window.
+ * <p>
+ * Values are counted in buckets whose width grows with the value (about 12% of precision),
+ * so that recording a value only consists in incrementing a counter. The window is divided
+ * into slots. When a slot gets too old, it is recycled, which makes old values expire.
+ * </p>
+ * <p>
+ * Values are expected in microseconds, but this class does not really care about units.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class LatencyHistogram {
+
+	/**
+	 * The default duration of the sliding window (in milliseconds).
+	 */
+	public static final long DEFAULT_WINDOW = 60000;
+
+	/**
+	 * The default number of slots in the sliding window.
+	 */
+	public static final int DEFAULT_SLOT_COUNT = 6;
+
+	// Values below this one have their own bucket.
+	// Then, every power of 2 is divided into SUB_BUCKETS.
+	static final int LINEAR_LIMIT = 16;
+	static final int SUB_BUCKETS = 8;
+	static final int BUCKET_COUNT = LINEAR_LIMIT + ( 63 - 4 ) * SUB_BUCKETS;
+
+	private final Slot[] slots;
+	private final long slotDuration;
+
+
+	/**
+	 * Constructor.
+	 * @param window the duration of the sliding window (in milliseconds)
+	 * @param slotCount the number of slots in the window
+	 */
+	public LatencyHistogram( long window, int slotCount ) {
+
+		this.slots = new Slot[ Math.max( 1, slotCount )];
+		this.slotDuration = Math.max( 1, window / this.slots.length );
+		for( int i=0; i<this.slots.length; i++ )
+			this.slots[ i ] = new Slot();
+	}
+
+
+	/**
+	 * Constructor with a default window of one minute.
+	 */
+	public LatencyHistogram() {
+		this( DEFAULT_WINDOW, DEFAULT_SLOT_COUNT );
+	}
+
+
+	/**
+	 * Records a value.
+	 * @param value a value (negative values are considered as 0)
+	 */
+	public void record( long value ) {
+		record( value, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Computes statistics about the values recorded within the sliding window.
+	 * @return a non-null array with 5 items: count, p50, p95, p99 and max
+	 */
+	public long[] computeStatistics() {
+		return computeStatistics( System.currentTimeMillis());
+	}
+
+
+	/**
+	 * @return the duration of the sliding window (in milliseconds)
+	 */
+	public long getWindow() {
+		return this.slotDuration * this.slots.length;
+	}
+
+
+	/**
+	 * Forgets all the recorded values.
+	 */
+	public void reset() {
+		for( Slot slot : this.slots ) {
+			synchronized( slot ) {
+				slot.clear( -1 );
+			}
+		}
+	}
+
+
+	/**
+	 * Records a value (package visibility for tests).
+	 * @param value a value
+	 * @param now the current time (in milliseconds)
+	 */
+	void record( long value, long now ) {
+
+		long v = Math.max( 0, value );
+		long slotNumber = now / this.slotDuration;
+		Slot slot = this.slots[(int) ( slotNumber % this.slots.length )];
+
+		// Recycle the slot if it is too old
+		if( slot.number != slotNumber ) {
+			synchronized( slot ) {
+				if( slot.number != slotNumber )
+					slot.clear( slotNumber );
+			}
+		}
+
+		slot.counts.incrementAndGet( findBucket( v ));
+		long max;
+		while(( max = slot.max.get()) < v && ! slot.max.compareAndSet( max, v )) {
+			// nothing
+		}
+	}
+
+
+	/**
+	 * Computes statistics (package visibility for tests).
+	 * @param now the current time (in milliseconds)
+	 * @return a non-null array with 5 items: count, p50, p95, p99 and max
+	 */
+	long[] computeStatistics( long now ) {
+
+		// Merge the slots that belong to the window
+		long currentSlotNumber = now / this.slotDuration;
+		long[] counts = new long[ BUCKET_COUNT ];
+		long count = 0, max = 0;
+		for( Slot slot : this.slots ) {
+			if( slot.number < 0 || currentSlotNumber - slot.number >= this.slots.length )
+				continue;
+
+			for( int i=0; i<BUCKET_COUNT; i++ ) {
+				long c = slot.counts.get( i );
+				counts[ i ] += c;
+				count += c;
+			}
+
+			max = Math.max( max, slot.max.get());
+		}
+
+		// Find the percentiles
+		long[] result = new long[ 5 ];
+		result[ 0 ] = count;
+		result[ 4 ] = max;
+
+		double[] percentiles = { 0.5, 0.95, 0.99 };
+		long seen = 0;
+		int p = 0;
+		for( int i=0; i<BUCKET_COUNT && p < percentiles.length; i++ ) {
+			seen += counts[ i ];
+			while( p < percentiles.length && seen > 0 && seen >= Math.ceil( count * percentiles[ p ])) {
+				result[ p + 1 ] = Math.min( max, findBucketUpperBound( i ));
+				p ++;
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the bucket of a value.
+	 * @param value a positive value
+	 * @return the bucket index
+	 */
+	static int findBucket( long value ) {
+
+		int result;
+		if( value < LINEAR_LIMIT ) {
+			result = (int) value;
+
+		} else {
+			int exponent = 63 - Long.numberOfLeadingZeros( value );
+			int sub = (int) (( value >> ( exponent - 3 )) & ( SUB_BUCKETS - 1 ));
+			result = LINEAR_LIMIT + ( exponent - 4 ) * SUB_BUCKETS + sub;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the highest value of a bucket.
+	 * @param bucket a bucket index
+	 * @return the highest value that goes into this bucket
+	 */
+	static long findBucketUpperBound( int bucket ) {
+
+		long result;
+		if( bucket < LINEAR_LIMIT ) {
+			result = bucket;
+
+		} else {
+			int exponent = ( bucket - LINEAR_LIMIT ) / SUB_BUCKETS + 4;
+			int sub = ( bucket - LINEAR_LIMIT ) % SUB_BUCKETS;
+			long lowerBound = ((long) SUB_BUCKETS + sub ) << ( exponent - 3 );
+			result = lowerBound + ( 1L << ( exponent - 3 )) - 1;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * A part of the sliding window.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class Slot {
+		final AtomicLongArray counts = new AtomicLongArray( BUCKET_COUNT );
+		final AtomicLong max = new AtomicLong();
+		volatile long number = -1;
+
+
+		void clear( long newNumber ) {
+			for( int i=0; i<BUCKET_COUNT; i++ )
+				this.counts.set( i, 0 );
+
+			this.max.set( 0 );
+			this.number = newNumber;
+		}
+	}
+}
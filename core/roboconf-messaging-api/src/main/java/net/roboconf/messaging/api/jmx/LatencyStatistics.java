@@ -0,0 +1,100 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.jmx;
+
+import net.roboconf.messaging.api.jmx.MessageLatencyTracker.LatencyStage;
+
+/**
+ * Latency statistics for a given message type and a given stage.
+ * <p>
+ * Values are expressed in microseconds and computed over a sliding window.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class LatencyStatistics {
+
+	private final String messageType;
+	private final LatencyStage stage;
+	private final long count, p50, p95, p99, max;
+
+
+	/**
+	 * Constructor.
+	 * @param messageType the message type
+	 * @param stage the stage
+	 * @param stats the statistics computed by {@link LatencyHistogram#computeStatistics()}
+	 */
+	public LatencyStatistics( String messageType, LatencyStage stage, long[] stats ) {
+		this.messageType = messageType;
+		this.stage = stage;
+		this.count = stats[ 0 ];
+		this.p50 = stats[ 1 ];
+		this.p95 = stats[ 2 ];
+		this.p99 = stats[ 3 ];
+		this.max = stats[ 4 ];
+	}
+
+
+	@Override
+	public String toString() {
+		return this.messageType + " - " + this.stage
+				+ ": count=" + this.count
+				+ ", p50=" + this.p50
+				+ ", p95=" + this.p95
+				+ ", p99=" + this.p99
+				+ ", max=" + this.max + " (micro-seconds)";
+	}
+
+
+	public String getMessageType() {
+		return this.messageType;
+	}
+
+	public LatencyStage getStage() {
+		return this.stage;
+	}
+
+	public long getCount() {
+		return this.count;
+	}
+
+	public long getP50() {
+		return this.p50;
+	}
+
+	public long getP95() {
+		return this.p95;
+	}
+
+	public long getP99() {
+		return this.p99;
+	}
+
+	public long getMax() {
+		return this.max;
+	}
+}
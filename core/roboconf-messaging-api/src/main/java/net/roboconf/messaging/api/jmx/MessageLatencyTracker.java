@@ -0,0 +1,124 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.jmx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.roboconf.messaging.api.messages.Message;
+
+/**
+ * Tracks the latencies of received messages, per message type.
+ * <p>
+ * Three stages are measured.
+ * </p>
+ * <ul>
+ * <li>{@link LatencyStage#TRANSIT}: between the moment a message was published and the moment it
+ * was stored in the message queue. This relies on the send time stamp carried by messages, so it
+ * is only accurate if clocks are synchronized.</li>
+ * <li>{@link LatencyStage#QUEUE}: the time spent waiting in the message queue.</li>
+ * <li>{@link LatencyStage#PROCESSING}: the time spent processing the message.</li>
+ * </ul>
+ * <p>
+ * Latencies are recorded in microseconds.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class MessageLatencyTracker {
+
+	private final ConcurrentHashMap<Class<?>,LatencyHistogram[]> histograms = new ConcurrentHashMap<> ();
+
+
+	/**
+	 * The measured stages.
+	 */
+	public enum LatencyStage {
+		TRANSIT, QUEUE, PROCESSING;
+	}
+
+
+	/**
+	 * Records a latency.
+	 * @param stage the stage
+	 * @param message the message (not null)
+	 * @param latency the latency, in microseconds
+	 */
+	public void record( LatencyStage stage, Message message, long latency ) {
+
+		LatencyHistogram[] h = this.histograms.get( message.getClass());
+		if( h == null ) {
+			LatencyHistogram[] newHistograms = new LatencyHistogram[ LatencyStage.values().length ];
+			for( int i=0; i<newHistograms.length; i++ )
+				newHistograms[ i ] = new LatencyHistogram();
+
+			h = this.histograms.putIfAbsent( message.getClass(), newHistograms );
+			if( h == null )
+				h = newHistograms;
+		}
+
+		h[ stage.ordinal()].record( latency );
+	}
+
+
+	/**
+	 * Computes the statistics for every message type and stage that has values in the sliding window.
+	 * @return a non-null list, sorted by message type and stage
+	 */
+	public List<LatencyStatistics> computeStatistics() {
+
+		List<LatencyStatistics> result = new ArrayList<> ();
+		for( Map.Entry<Class<?>,LatencyHistogram[]> entry : this.histograms.entrySet()) {
+			for( LatencyStage stage : LatencyStage.values()) {
+				long[] stats = entry.getValue()[ stage.ordinal()].computeStatistics();
+				if( stats[ 0 ] > 0 )
+					result.add( new LatencyStatistics( entry.getKey().getSimpleName(), stage, stats ));
+			}
+		}
+
+		Collections.sort( result, new Comparator<LatencyStatistics> () {
+			@Override
+			public int compare( LatencyStatistics o1, LatencyStatistics o2 ) {
+				int result = o1.getMessageType().compareTo( o2.getMessageType());
+				return result != 0 ? result : o1.getStage().compareTo( o2.getStage());
+			}
+		});
+
+		return result;
+	}
+
+
+	/**
+	 * Forgets all the recorded latencies.
+	 */
+	public void reset() {
+		this.histograms.clear();
+	}
+}
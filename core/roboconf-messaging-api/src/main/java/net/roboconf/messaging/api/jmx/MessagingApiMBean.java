@@ -77,6 +77,144 @@ public interface MessagingApiMBean {
 	long getTimestampOfLastReceivedMessage();
 
 
+	// Processing lanes
+
+	/**
+	 * @return the number of processing lanes (0 if all the messages are processed by a single thread)
+	 */
+	int getProcessingLanesCount();
+
+	/**
+	 * @return the number of messages waiting to be processed, for each processing lane
+	 */
+	long[] getProcessingLanesPendingMessages();
+
+	/**
+	 * @return the number of messages dispatched onto each processing lane
+	 */
+	long[] getProcessingLanesReceivedMessagesCount();
+
+
+	// Priority lanes
+
+	/**
+	 * @return the names of the priority lanes, from the highest priority to the lowest
+	 * (empty if the message queue does not use priority lanes)
+	 */
+	String[] getPriorityLanes();
+
+	/**
+	 * @return the number of messages waiting in each priority lane
+	 */
+	long[] getPriorityLanesPendingMessages();
+
+	/**
+	 * @return the number of messages dropped by each priority lane because it was full
+	 */
+	long[] getPriorityLanesDroppedMessagesCount();
+
+	/**
+	 * @return the number of messages that replaced a pending one, for each priority lane
+	 */
+	long[] getPriorityLanesCoalescedMessagesCount();
+
+	/**
+	 * @return the age (in milliseconds) of the oldest message of each priority lane (0 for empty lanes)
+	 */
+	long[] getPriorityLanesAgeOfOldestMessage();
+
+
+	// Latencies
+
+	/**
+	 * Gets latency statistics (p50, p95, p99 and max) about the received messages.
+	 * <p>
+	 * There is one line per message type and stage (transit from the sender to the
+	 * message queue, waiting in the queue, processing). Values are computed over a
+	 * sliding window of one minute and expressed in micro-seconds.
+	 * </p>
+	 *
+	 * @return a non-null array of human-readable statistics
+	 */
+	String[] getLatencyStatistics();
+
+
+	// Publisher confirms (only for messaging clients that support them, 0 otherwise)
+
+	/**
+	 * @return the number of published messages that were confirmed by the messaging server
+	 */
+	long getConfirmedMessagesCount();
+
+	/**
+	 * @return the number of published messages that were rejected by the messaging server
+	 */
+	long getRejectedMessagesCount();
+
+	/**
+	 * @return the number of messages that were published again after a rejection
+	 */
+	long getRepublishedMessagesCount();
+
+	/**
+	 * @return the number of messages that were given up after too many rejections
+	 */
+	long getLostMessagesCount();
+
+	/**
+	 * @return the number of published messages that are waiting for a confirmation
+	 */
+	int getPendingConfirmsCount();
+
+	/**
+	 * Gets statistics about the time it takes for a published message to be confirmed.
+	 * <p>
+	 * Values are computed over a sliding window of one minute and expressed in micro-seconds.
+	 * </p>
+	 *
+	 * @return a non-null array with 5 items: count, p50, p95, p99 and max
+	 */
+	long[] getConfirmLatency();
+
+	/**
+	 * @return the number of messages confirmed per second (average over the last minute)
+	 */
+	long getConfirmThroughput();
+
+
+	// Compression (JVM-wide, see net.roboconf.messaging.compression.threshold)
+
+	/**
+	 * @return the number of messages that were compressed before being sent
+	 */
+	long getCompressedMessagesCount();
+
+	/**
+	 * @return the number of messages that were sent without compression (below the threshold, or not compressible)
+	 */
+	long getUncompressedMessagesCount();
+
+	/**
+	 * @return the compression ratio, in percents (compressed size / original size)
+	 */
+	long getCompressionRatio();
+
+	/**
+	 * @return the average time to compress a message, in micro-seconds
+	 */
+	long getCompressionTime();
+
+	/**
+	 * @return the number of received messages that were decompressed
+	 */
+	long getDecompressedMessagesCount();
+
+	/**
+	 * @return the average time to decompress a message, in micro-seconds
+	 */
+	long getDecompressionTime();
+
+
 	// Current state
 
 	/**
@@ -0,0 +1,912 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.jmx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifAutonomic;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdGatherLogs;
+import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
+
+/**
+ * A message queue that stores messages in priority lanes.
+ * <p>
+ * Messages are taken from the control lane first (heart beats, echo messages),
+ * then from the state lane (instance changes and all the other messages), and eventually
+ * from the bulk lane (logs, autonomic events). Within a lane, messages are taken in the
+ * order they were received.
+ * </p>
+ * <p>
+ * Every lane is bounded and has its own overflow policy.
+ * </p>
+ * <ul>
+ * <li>{@link OverflowPolicy#BLOCK}: the producer waits until there is room in the lane.</li>
+ * <li>{@link OverflowPolicy#DROP_OLDEST}: the oldest message of the lane is dropped.</li>
+ * <li>
+ * {@link OverflowPolicy#COALESCE}: a new message replaces a pending one that carries the same
+ * information (e.g. a heart beat from the same agent), even if the lane is not full.
+ * The pending message is removed and the new one is appended to the lane, so that messages
+ * are still taken in the order they were received. If there is no such message and the lane
+ * is full, the producer waits.
+ * </li>
+ * </ul>
+ * <p>
+ * Notice that with the BLOCK and COALESCE policies, {@link #offer(Message)} and {@link #add(Message)}
+ * wait for room in the lane instead of failing immediately.
+ * </p>
+ * <p>
+ * Messages are not stored in the storage inherited from {@link java.util.concurrent.LinkedBlockingQueue}.
+ * All the methods that access it are overridden.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class PrioritizedMessageQueue extends RoboconfMessageQueue {
+
+	private static final long serialVersionUID = -3541845226478924560L;
+
+	/**
+	 * The default configuration, used when no configuration is specified.
+	 */
+	public static final String DEFAULT_CONFIGURATION = "control:1000:coalesce, state:10000:block, bulk:1000:drop-oldest";
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = this.lock.newCondition();
+	private final Map<PriorityLane,Lane> lanes = new EnumMap<> ( PriorityLane.class );
+
+
+	/**
+	 * The priority lanes, from the highest priority to the lowest one.
+	 */
+	public enum PriorityLane {
+		CONTROL, STATE, BULK;
+
+
+		/**
+		 * Finds the default lane of a message.
+		 * @param message a message
+		 * @return a non-null lane
+		 */
+		public static PriorityLane which( Message message ) {
+
+			PriorityLane result;
+			if( message instanceof MsgNotifHeartbeat
+					|| message instanceof MsgEcho )
+				result = PriorityLane.CONTROL;
+
+			else if( message instanceof MsgNotifLogs
+					|| message instanceof MsgNotifLogChunk
+					|| message instanceof MsgCmdGatherLogs
+					|| message instanceof MsgNotifAutonomic )
+				result = PriorityLane.BULK;
+
+			// Other messages, including unknown ones, keep their relative order
+			else
+				result = PriorityLane.STATE;
+
+			return result;
+		}
+	}
+
+
+	/**
+	 * The overflow policies.
+	 */
+	public enum OverflowPolicy {
+		BLOCK, DROP_OLDEST, COALESCE;
+
+
+		/**
+		 * Finds a policy by name.
+		 * @param s a string (e.g. "drop-oldest", not case-sensitive)
+		 * @return a policy, or null if none matched
+		 */
+		public static OverflowPolicy which( String s ) {
+
+			OverflowPolicy result = null;
+			for( OverflowPolicy policy : values()) {
+				if( policy.toString().replace( '_', '-' ).equalsIgnoreCase( s )) {
+					result = policy;
+					break;
+				}
+			}
+
+			return result;
+		}
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param configuration the lanes configuration (can be null, see {@link #DEFAULT_CONFIGURATION} for the format)
+	 * @throws IllegalArgumentException if the configuration is invalid
+	 */
+	public PrioritizedMessageQueue( String configuration ) {
+		super();
+
+		configure( DEFAULT_CONFIGURATION );
+		configure( configuration );
+	}
+
+
+	/**
+	 * Constructor with the default configuration.
+	 */
+	public PrioritizedMessageQueue() {
+		this( null );
+	}
+
+
+	/**
+	 * Configures the lanes.
+	 * <p>
+	 * The expected format is a comma-separated list of <code>lane:capacity:policy</code>.
+	 * Example: <code>control:1000:coalesce, state:10000:block, bulk:1000:drop-oldest</code>.
+	 * Lanes that are not listed keep their default configuration.
+	 * </p>
+	 *
+	 * @param configuration a configuration string (can be null)
+	 * @throws IllegalArgumentException if the configuration is invalid
+	 */
+	private void configure( String configuration ) {
+
+		if( Utils.isEmptyOrWhitespaces( configuration ))
+			return;
+
+		for( String s : Utils.splitNicely( configuration, "," )) {
+			if( Utils.isEmptyOrWhitespaces( s ))
+				continue;
+
+			List<String> parts = Utils.splitNicely( s, ":" );
+			if( parts.size() != 3 )
+				throw new IllegalArgumentException( "Invalid lane configuration: " + s );
+
+			PriorityLane lane;
+			try {
+				lane = PriorityLane.valueOf( parts.get( 0 ).toUpperCase());
+
+			} catch( IllegalArgumentException e ) {
+				throw new IllegalArgumentException( "Invalid lane name: " + parts.get( 0 ), e );
+			}
+
+			int capacity;
+			try {
+				capacity = Integer.parseInt( parts.get( 1 ));
+
+			} catch( NumberFormatException e ) {
+				throw new IllegalArgumentException( "Invalid lane capacity: " + parts.get( 1 ), e );
+			}
+
+			OverflowPolicy policy = OverflowPolicy.which( parts.get( 2 ));
+			if( capacity < 1 )
+				throw new IllegalArgumentException( "A lane capacity must be strictly positive: " + s );
+
+			if( policy == null )
+				throw new IllegalArgumentException( "Invalid overflow policy: " + parts.get( 2 ));
+
+			this.lanes.put( lane, new Lane( capacity, policy, this.lock.newCondition()));
+		}
+	}
+
+
+	/**
+	 * Finds the lane a message should go in.
+	 * @param message a message
+	 * @return a non-null lane
+	 */
+	protected PriorityLane findLane( Message message ) {
+		return PriorityLane.which( message );
+	}
+
+
+	/**
+	 * Finds the key to determine whether two messages can be coalesced.
+	 * @param message a message
+	 * @return a key, or null if the message cannot be coalesced
+	 */
+	protected String findCoalescingKey( Message message ) {
+
+		String result = null;
+		if( message instanceof MsgNotifHeartbeat ) {
+			MsgNotifHeartbeat msg = (MsgNotifHeartbeat) message;
+			result = "heartbeat|" + msg.getApplicationName() + "|" + msg.getScopedInstancePath();
+
+		} else if( message instanceof MsgNotifInstanceChanged ) {
+			MsgNotifInstanceChanged msg = (MsgNotifInstanceChanged) message;
+			result = "changed|" + msg.getApplicationName() + "|" + msg.getInstancePath();
+		}
+
+		return result;
+	}
+
+
+	// Adding messages
+
+
+	@Override
+	public boolean offer( Message e ) {
+
+		boolean result;
+		try {
+			result = offer( e, -1, TimeUnit.MILLISECONDS );
+
+		} catch( InterruptedException e1 ) {
+			Thread.currentThread().interrupt();
+			result = false;
+		}
+
+		return result;
+	}
+
+
+	@Override
+	public boolean offer( Message e, long timeout, TimeUnit unit ) throws InterruptedException {
+
+		if( e == null )
+			throw new NullPointerException();
+
+		markReception( e );
+		Lane lane = this.lanes.get( findLane( e ));
+		String coalescingKey = lane.policy == OverflowPolicy.COALESCE ? findCoalescingKey( e ) : null;
+		long nanos = unit.toNanos( timeout );
+		boolean result = true;
+		List<Message> discardedMessages = new ArrayList<> ( 1 );
+
+		this.lock.lockInterruptibly();
+		try {
+			// Replace a pending message?
+			Entry replacedEntry = coalescingKey == null ? null : lane.removeCoalescable( coalescingKey );
+			if( replacedEntry != null ) {
+				lane.coalescedMessagesCount.incrementAndGet();
+				discardedMessages.add( replacedEntry.message );
+			}
+
+			// Make room if necessary
+			while( result && lane.entries.size() >= lane.capacity ) {
+				if( lane.policy == OverflowPolicy.DROP_OLDEST ) {
+					discardedMessages.add( lane.pollFirst().message );
+					lane.droppedMessagesCount.incrementAndGet();
+
+				} else if( timeout < 0 ) {
+					lane.notFull.await();
+
+				} else if( nanos > 0 ) {
+					nanos = lane.notFull.awaitNanos( nanos );
+
+				} else {
+					result = false;
+				}
+			}
+
+			if( result ) {
+				lane.add( new Entry( e, coalescingKey ));
+				this.notEmpty.signal();
+			}
+
+		} finally {
+			this.lock.unlock();
+		}
+
+		// Notify listeners outside the lock
+		for( Message discardedMessage : discardedMessages )
+			messageWasHandled( discardedMessage );
+
+		if( result )
+			messageWasReceived( e );
+
+		return result;
+	}
+
+
+	// Retrieving messages
+
+
+	@Override
+	public Message take() throws InterruptedException {
+
+		this.lock.lockInterruptibly();
+		try {
+			Message result;
+			while(( result = dequeue()) == null )
+				this.notEmpty.await();
+
+			return result;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public Message poll( long timeout, TimeUnit unit ) throws InterruptedException {
+
+		long nanos = unit.toNanos( timeout );
+		this.lock.lockInterruptibly();
+		try {
+			Message result;
+			while(( result = dequeue()) == null && nanos > 0 )
+				nanos = this.notEmpty.awaitNanos( nanos );
+
+			return result;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public Message poll() {
+
+		this.lock.lock();
+		try {
+			return dequeue();
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public Message peek() {
+
+		this.lock.lock();
+		try {
+			Message result = null;
+			for( Lane lane : this.lanes.values()) {
+				Entry entry = lane.peekFirst();
+				if( entry != null ) {
+					result = entry.message;
+					break;
+				}
+			}
+
+			return result;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public int drainTo( Collection<? super Message> c ) {
+		return drainTo( c, Integer.MAX_VALUE );
+	}
+
+
+	@Override
+	public int drainTo( Collection<? super Message> c, int maxElements ) {
+
+		if( c == this )
+			throw new IllegalArgumentException();
+
+		this.lock.lock();
+		try {
+			int result = 0;
+			Message msg;
+			while( result < maxElements && ( msg = dequeue()) != null ) {
+				c.add( msg );
+				result ++;
+			}
+
+			return result;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	// Collection methods
+
+
+	@Override
+	public int size() {
+
+		this.lock.lock();
+		try {
+			int result = 0;
+			for( Lane lane : this.lanes.values())
+				result += lane.entries.size();
+
+			return result;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public int remainingCapacity() {
+
+		this.lock.lock();
+		try {
+			int result = 0;
+			for( Lane lane : this.lanes.values())
+				result += lane.capacity - lane.entries.size();
+
+			return result;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public boolean remove( Object o ) {
+
+		this.lock.lock();
+		try {
+			boolean result = false;
+			for( Lane lane : this.lanes.values()) {
+				for( Entry entry : lane.entries ) {
+					if( entry.message.equals( o )) {
+						lane.remove( entry );
+						lane.notFull.signal();
+						result = true;
+						break;
+					}
+				}
+
+				if( result )
+					break;
+			}
+
+			return result;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public boolean contains( Object o ) {
+		return snapshot().contains( o );
+	}
+
+
+	@Override
+	public void clear() {
+
+		this.lock.lock();
+		try {
+			for( Lane lane : this.lanes.values()) {
+				lane.clear();
+				lane.notFull.signalAll();
+			}
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	@Override
+	public Object[] toArray() {
+		return snapshot().toArray();
+	}
+
+
+	@Override
+	public <T> T[] toArray( T[] a ) {
+		return snapshot().toArray( a );
+	}
+
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The iterator works on a snapshot of this queue, in the order messages would be taken.
+	 * </p>
+	 */
+	@Override
+	public Iterator<Message> iterator() {
+
+		final Iterator<Message> it = snapshot().iterator();
+		return new Iterator<Message> () {
+			private Message current;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Message next() {
+				this.current = it.next();
+				return this.current;
+			}
+
+			@Override
+			public void remove() {
+				if( this.current == null )
+					throw new IllegalStateException();
+
+				PrioritizedMessageQueue.this.remove( this.current );
+				this.current = null;
+			}
+		};
+	}
+
+
+	@Override
+	public boolean removeAll( final Collection<?> c ) {
+
+		if( c == null )
+			throw new NullPointerException();
+
+		return removeMatching( new MessageFilter() {
+			@Override
+			public boolean matches( Message msg ) {
+				return c.contains( msg );
+			}
+		});
+	}
+
+
+	@Override
+	public boolean retainAll( final Collection<?> c ) {
+
+		if( c == null )
+			throw new NullPointerException();
+
+		return removeMatching( new MessageFilter() {
+			@Override
+			public boolean matches( Message msg ) {
+				return ! c.contains( msg );
+			}
+		});
+	}
+
+
+	// Metrics
+
+
+	@Override
+	public void reset() {
+		super.reset();
+		for( Lane lane : this.lanes.values()) {
+			lane.droppedMessagesCount.set( 0 );
+			lane.coalescedMessagesCount.set( 0 );
+		}
+	}
+
+
+	/**
+	 * @param lane a priority lane
+	 * @return the number of messages waiting in this lane
+	 */
+	public int getLaneSize( PriorityLane lane ) {
+
+		this.lock.lock();
+		try {
+			return this.lanes.get( lane ).entries.size();
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * @param lane a priority lane
+	 * @return the number of messages that were dropped because the lane was full
+	 */
+	public long getLaneDroppedMessagesCount( PriorityLane lane ) {
+		return this.lanes.get( lane ).droppedMessagesCount.get();
+	}
+
+
+	/**
+	 * @param lane a priority lane
+	 * @return the number of messages that replaced a pending one
+	 */
+	public long getLaneCoalescedMessagesCount( PriorityLane lane ) {
+		return this.lanes.get( lane ).coalescedMessagesCount.get();
+	}
+
+
+	/**
+	 * @param lane a priority lane
+	 * @return the age of the oldest message in this lane, in milliseconds (0 if the lane is empty)
+	 */
+	public long getLaneAgeOfOldestMessage( PriorityLane lane ) {
+
+		this.lock.lock();
+		try {
+			Entry entry = this.lanes.get( lane ).peekFirst();
+			return entry == null ? 0 : new Date().getTime() - entry.timestamp;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * @param lane a priority lane
+	 * @return the capacity of this lane
+	 */
+	public int getLaneCapacity( PriorityLane lane ) {
+		return this.lanes.get( lane ).capacity;
+	}
+
+
+	/**
+	 * @param lane a priority lane
+	 * @return the overflow policy of this lane
+	 */
+	public OverflowPolicy getLaneOverflowPolicy( PriorityLane lane ) {
+		return this.lanes.get( lane ).policy;
+	}
+
+
+	// Internal stuff
+
+
+	/**
+	 * Removes the next message to process.
+	 * <p>
+	 * Must be invoked while holding the lock.
+	 * </p>
+	 *
+	 * @return a message, or null if all the lanes are empty
+	 */
+	private Message dequeue() {
+
+		Message result = null;
+		for( Lane lane : this.lanes.values()) {
+			Entry entry = lane.pollFirst();
+			if( entry != null ) {
+				lane.notFull.signal();
+				result = entry.message;
+				break;
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @return a copy of the pending messages, in the order they would be taken
+	 */
+	private List<Message> snapshot() {
+
+		this.lock.lock();
+		try {
+			List<Message> result = new ArrayList<> ();
+			for( Lane lane : this.lanes.values()) {
+				for( Entry entry : lane.entries )
+					result.add( entry.message );
+			}
+
+			return result;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Removes the messages that match a filter.
+	 * @param filter a filter
+	 * @return true if at least one message was removed
+	 */
+	private boolean removeMatching( MessageFilter filter ) {
+
+		this.lock.lock();
+		try {
+			boolean result = false;
+			for( Lane lane : this.lanes.values()) {
+				for( Entry entry : new ArrayList<>( lane.entries )) {
+					if( filter.matches( entry.message )) {
+						lane.remove( entry );
+						lane.notFull.signal();
+						result = true;
+					}
+				}
+			}
+
+			return result;
+
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+
+	/**
+	 * A filter for messages.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private interface MessageFilter {
+
+		/**
+		 * @param msg a message
+		 * @return true if the message matches
+		 */
+		boolean matches( Message msg );
+	}
+
+
+	/**
+	 * A lane and its configuration.
+	 * <p>
+	 * Entries are stored in insertion order. Coalescable entries are also indexed
+	 * by key, so that finding and removing them does not require to visit the lane.
+	 * </p>
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static final class Lane {
+
+		final int capacity;
+		final OverflowPolicy policy;
+		final Set<Entry> entries = new LinkedHashSet<> ();
+		final Map<String,Entry> keyToEntry = new HashMap<> ();
+		final Condition notFull;
+
+		final AtomicLong droppedMessagesCount = new AtomicLong();
+		final AtomicLong coalescedMessagesCount = new AtomicLong();
+
+
+		/**
+		 * Constructor.
+		 * @param capacity
+		 * @param policy
+		 * @param notFull
+		 */
+		Lane( int capacity, OverflowPolicy policy, Condition notFull ) {
+			this.capacity = capacity;
+			this.policy = policy;
+			this.notFull = notFull;
+		}
+
+
+		/**
+		 * Appends an entry.
+		 * @param entry an entry
+		 */
+		void add( Entry entry ) {
+			this.entries.add( entry );
+			if( entry.coalescingKey != null )
+				this.keyToEntry.put( entry.coalescingKey, entry );
+		}
+
+
+		/**
+		 * Removes an entry.
+		 * @param entry an entry
+		 */
+		void remove( Entry entry ) {
+			this.entries.remove( entry );
+			if( entry.coalescingKey != null && this.keyToEntry.get( entry.coalescingKey ) == entry )
+				this.keyToEntry.remove( entry.coalescingKey );
+		}
+
+
+		/**
+		 * Removes all the entries.
+		 */
+		void clear() {
+			this.entries.clear();
+			this.keyToEntry.clear();
+		}
+
+
+		/**
+		 * @return the first entry, or null if the lane is empty
+		 */
+		Entry peekFirst() {
+			return this.entries.isEmpty() ? null : this.entries.iterator().next();
+		}
+
+
+		/**
+		 * Removes the first entry.
+		 * @return the removed entry, or null if the lane is empty
+		 */
+		Entry pollFirst() {
+
+			Entry result = peekFirst();
+			if( result != null )
+				remove( result );
+
+			return result;
+		}
+
+
+		/**
+		 * Removes the pending entry with a given coalescing key.
+		 * @param key a non-null coalescing key
+		 * @return the removed entry, or null if there was no such entry
+		 */
+		Entry removeCoalescable( String key ) {
+
+			Entry result = this.keyToEntry.remove( key );
+			if( result != null )
+				this.entries.remove( result );
+
+			return result;
+		}
+	}
+
+
+	/**
+	 * A pending message.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static final class Entry {
+
+		final long timestamp = new Date().getTime();
+		final String coalescingKey;
+		final Message message;
+
+
+		/**
+		 * Constructor.
+		 * @param message
+		 * @param coalescingKey
+		 */
+		Entry( Message message, String coalescingKey ) {
+			this.message = message;
+			this.coalescingKey = coalescingKey;
+		}
+	}
+}
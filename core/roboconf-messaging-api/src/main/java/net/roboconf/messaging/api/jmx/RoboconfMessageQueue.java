@@ -25,10 +25,15 @@
 
 package net.roboconf.messaging.api.jmx;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import net.roboconf.messaging.api.jmx.MessageLatencyTracker.LatencyStage;
 import net.roboconf.messaging.api.messages.Message;
 
 /**
@@ -45,6 +50,10 @@ public class RoboconfMessageQueue extends LinkedBlockingQueue<Message> {
 	private final AtomicLong failedReceptionCount = new AtomicLong();
 	private final AtomicLong timestampOfLastReceptionFailure = new AtomicLong();
 
+	private final List<RoboconfMessageQueue> processingLanes = new CopyOnWriteArrayList<> ();
+	private final MessageLatencyTracker latencyTracker = new MessageLatencyTracker();
+	private final List<IHandledMessageListener> handledMessageListeners = new CopyOnWriteArrayList<> ();
+
 
 	/**
 	 * Constructor.
@@ -55,10 +64,10 @@ public class RoboconfMessageQueue extends LinkedBlockingQueue<Message> {
 
 
 	/**
-	 * Constructor (used only for tests).
-	 * @param capacity
+	 * Constructor.
+	 * @param capacity the maximum number of messages this queue can contain
 	 */
-	RoboconfMessageQueue( int capacity ) {
+	public RoboconfMessageQueue( int capacity ) {
 		super( capacity );
 	}
 
@@ -71,16 +80,27 @@ public class RoboconfMessageQueue extends LinkedBlockingQueue<Message> {
 	//
 	// - put() is ignored.
 	//
-	// So, we only override offer().
+	// So, we only override offer() (and its variant with a time out).
 
 	@Override
 	public boolean offer( Message e ) {
 
+		markReception( e );
 		boolean result = super.offer( e );
-		if( result ) {
-			this.receivedMessagesCount.incrementAndGet();
-			this.timestampOfLastReceivedMessage.set( new Date().getTime());
-		}
+		if( result )
+			messageWasReceived( e );
+
+		return result;
+	}
+
+
+	@Override
+	public boolean offer( Message e, long timeout, TimeUnit unit ) throws InterruptedException {
+
+		markReception( e );
+		boolean result = super.offer( e, timeout, unit );
+		if( result )
+			messageWasReceived( e );
 
 		return result;
 	}
@@ -103,6 +123,91 @@ public class RoboconfMessageQueue extends LinkedBlockingQueue<Message> {
 		this.timestampOfLastReceivedMessage.set( 0 );
 		this.failedReceptionCount.set( 0 );
 		this.timestampOfLastReceptionFailure.set( 0 );
+		this.latencyTracker.reset();
+
+		for( RoboconfMessageQueue lane : this.processingLanes )
+			lane.reset();
+	}
+
+
+	/**
+	 * Sets the queues of the processing lanes fed from this queue.
+	 * <p>
+	 * They are only referenced here to expose their metrics.
+	 * </p>
+	 *
+	 * @param processingLanes a non-null list of queues (can be empty)
+	 */
+	public void setProcessingLanes( List<RoboconfMessageQueue> processingLanes ) {
+		this.processingLanes.clear();
+		this.processingLanes.addAll( processingLanes );
+	}
+
+
+	/**
+	 * Updates the metrics when a message was successfully added to this queue.
+	 * <p>
+	 * Sub-classes that do not rely on {@link #offer(Message)} must invoke it.
+	 * </p>
+	 *
+	 * @param message the message that was added
+	 */
+	protected void messageWasReceived( Message message ) {
+
+		long now = System.currentTimeMillis();
+		this.receivedMessagesCount.incrementAndGet();
+		this.timestampOfLastReceivedMessage.set( now );
+
+		if( message.getSendTimestamp() > 0 )
+			this.latencyTracker.record( LatencyStage.TRANSIT, message, ( now - message.getSendTimestamp()) * 1000 );
+	}
+
+
+	/**
+	 * Indicates a message taken from this queue was processed or discarded.
+	 * <p>
+	 * Message processors must invoke it once they are done with a message.
+	 * Sub-classes that discard messages must invoke it too.
+	 * </p>
+	 *
+	 * @param message the handled message
+	 */
+	public void messageWasHandled( Message message ) {
+		for( IHandledMessageListener listener : this.handledMessageListeners )
+			listener.messageWasHandled( message );
+	}
+
+
+	/**
+	 * Registers a listener to be notified when a message was handled.
+	 * @param listener a non-null listener
+	 */
+	public void addHandledMessageListener( IHandledMessageListener listener ) {
+		this.handledMessageListeners.add( listener );
+	}
+
+
+	/**
+	 * Unregisters a listener.
+	 * @param listener a listener
+	 */
+	public void removeHandledMessageListener( IHandledMessageListener listener ) {
+		this.handledMessageListeners.remove( listener );
+	}
+
+
+	/**
+	 * Stores the reception time in a message, before it is added to this queue.
+	 * <p>
+	 * The reception time is set only once, so that messages that go through
+	 * several queues (e.g. processing lanes) keep their initial reception time.
+	 * </p>
+	 *
+	 * @param message a message (may be null)
+	 */
+	protected static void markReception( Message message ) {
+		if( message != null && message.getReceptionTime() == 0 )
+			message.setReceptionTime( System.nanoTime());
 	}
 
 
@@ -135,4 +240,14 @@ public class RoboconfMessageQueue extends LinkedBlockingQueue<Message> {
 	public long getTimestampOfLastReceivedMessage() {
 		return this.timestampOfLastReceivedMessage.get();
 	}
+
+
+	public MessageLatencyTracker getLatencyTracker() {
+		return this.latencyTracker;
+	}
+
+
+	public List<RoboconfMessageQueue> getProcessingLanes() {
+		return Collections.unmodifiableList( this.processingLanes );
+	}
 }
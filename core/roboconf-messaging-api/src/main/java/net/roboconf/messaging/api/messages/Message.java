@@ -33,9 +33,48 @@ import java.io.Serializable;
 public abstract class Message implements Serializable {
 	private static final long serialVersionUID = -4397827141046520759L;
 
+	// When the message was published (in milliseconds, 0 if unknown).
+	// Codecs write it in the frame, next to the message, and set it when decoding.
+	private transient long sendTimestamp;
+
+	// When the message was stored in a message queue (System#nanoTime(), local only).
+	private transient long receptionTime;
+
 
 	@Override
 	public String toString() {
 		return getClass().getSimpleName();
 	}
+
+
+	/**
+	 * @return the time stamp indicating when this message was published (0 if unknown)
+	 */
+	public long getSendTimestamp() {
+		return this.sendTimestamp;
+	}
+
+
+	/**
+	 * @param sendTimestamp the time stamp indicating when this message was published
+	 */
+	public void setSendTimestamp( long sendTimestamp ) {
+		this.sendTimestamp = sendTimestamp;
+	}
+
+
+	/**
+	 * @return the value of {@link System#nanoTime()} when this message was stored in a message queue (0 if unknown)
+	 */
+	public long getReceptionTime() {
+		return this.receptionTime;
+	}
+
+
+	/**
+	 * @param receptionTime the value of {@link System#nanoTime()} when this message was stored in a message queue
+	 */
+	public void setReceptionTime( long receptionTime ) {
+		this.receptionTime = receptionTime;
+	}
 }
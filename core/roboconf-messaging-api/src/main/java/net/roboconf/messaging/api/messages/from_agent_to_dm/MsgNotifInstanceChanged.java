@@ -60,6 +60,27 @@ public class MsgNotifInstanceChanged extends Message {
 		this.applicationName = applicationName;
 	}
 
+
+	/**
+	 * Constructor.
+	 * @param applicationName the application name
+	 * @param instancePath the path of the changed instance
+	 * @param newStatus the new status
+	 * @param newImports the new imports
+	 */
+	public MsgNotifInstanceChanged(
+			String applicationName,
+			String instancePath,
+			InstanceStatus newStatus,
+			Map<String,Collection<Import>> newImports ) {
+
+		super();
+		this.instancePath = instancePath;
+		this.newImports = newImports;
+		this.newStatus = newStatus;
+		this.applicationName = applicationName;
+	}
+
 	/**
 	 * @return the applicationName
 	 */
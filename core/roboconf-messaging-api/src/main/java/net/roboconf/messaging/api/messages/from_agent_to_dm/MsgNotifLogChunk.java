@@ -0,0 +1,108 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.messages.from_agent_to_dm;
+
+/**
+ * A message that carries a part of a log file, sent by an agent to the DM.
+ * <p>
+ * Log files are split into fixed-size chunks, so that neither the agent nor the
+ * DM has to load a complete log file in memory. Chunks related to a same file are sent in order.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class MsgNotifLogChunk extends AbstractMsgNotif {
+
+	private static final long serialVersionUID = -2416089743145273096L;
+
+	private final String fileName;
+	private final long offset;
+	private final byte[] content;
+	private final boolean compressed, lastChunk;
+
+
+	/**
+	 * Constructor.
+	 * @param applicationName the application name
+	 * @param scopedInstancePath the scoped instance's path
+	 * @param fileName the name of the log file
+	 * @param offset the position of this chunk in the transferred content (0 for the first chunk)
+	 * @param content the chunk's content (not null)
+	 * @param compressed true if the content was compressed with {@link net.roboconf.messaging.api.codec.CompressingCodec}
+	 * @param lastChunk true if this is the last chunk for this file
+	 */
+	public MsgNotifLogChunk(
+			String applicationName,
+			String scopedInstancePath,
+			String fileName,
+			long offset,
+			byte[] content,
+			boolean compressed,
+			boolean lastChunk ) {
+
+		super( applicationName, scopedInstancePath );
+		this.fileName = fileName;
+		this.offset = offset;
+		this.content = content;
+		this.compressed = compressed;
+		this.lastChunk = lastChunk;
+	}
+
+	/**
+	 * @return the name of the log file
+	 */
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	/**
+	 * @return the position of this chunk in the transferred content
+	 */
+	public long getOffset() {
+		return this.offset;
+	}
+
+	/**
+	 * @return the content (never null)
+	 */
+	public byte[] getContent() {
+		return this.content;
+	}
+
+	/**
+	 * @return true if the content was compressed
+	 */
+	public boolean isCompressed() {
+		return this.compressed;
+	}
+
+	/**
+	 * @return true if this is the last chunk for this file
+	 */
+	public boolean isLastChunk() {
+		return this.lastChunk;
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.messages.from_agent_to_dm;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+
+/**
+ * A message sent by an agent when it could not find resources in its blob cache.
+ * <p>
+ * The DM should answer with a {@link net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendBlobs} message.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class MsgNotifMissingBlobs extends AbstractMsgNotif {
+
+	private static final long serialVersionUID = 6180736651238779521L;
+	private final Set<String> digests;
+
+
+	/**
+	 * Constructor.
+	 * @param applicationName the application name
+	 * @param scopedInstancePath the scoped instance's path
+	 * @param digests the digests of the missing blobs (may be null)
+	 */
+	public MsgNotifMissingBlobs( String applicationName, String scopedInstancePath, Set<String> digests ) {
+		super( applicationName, scopedInstancePath );
+		this.digests = new HashSet<> ();
+		if( digests != null )
+			this.digests.addAll( digests );
+	}
+
+	/**
+	 * Constructor.
+	 * @param applicationName the application name
+	 * @param scopedInstance the scoped instance
+	 * @param digests the digests of the missing blobs (may be null)
+	 */
+	public MsgNotifMissingBlobs( String applicationName, Instance scopedInstance, Set<String> digests ) {
+		this( applicationName, InstanceHelpers.computeInstancePath( scopedInstance ), digests );
+	}
+
+	/**
+	 * @return the digests of the missing blobs (never null)
+	 */
+	public Set<String> getDigests() {
+		return this.digests;
+	}
+}
@@ -66,6 +66,32 @@ public class MsgCmdAddInstance extends Message {
 		this.overridenExports = instance.overriddenExports;
 	}
 
+
+	/**
+	 * Constructor.
+	 * @param parentInstancePath the path of the parent instance (can be null)
+	 * @param instanceName the instance name
+	 * @param componentName the component name
+	 * @param channels the channels
+	 * @param data the instance data
+	 * @param overridenExports the overridden exports
+	 */
+	public MsgCmdAddInstance(
+			String parentInstancePath,
+			String instanceName,
+			String componentName,
+			Collection<String> channels,
+			Map<String,String> data,
+			Map<String,String> overridenExports ) {
+
+		this.parentInstancePath = parentInstancePath;
+		this.instanceName = instanceName;
+		this.componentName = componentName;
+		this.channels = channels;
+		this.data = data;
+		this.overridenExports = overridenExports;
+	}
+
 	/**
 	 * @return the parentInstancePath
 	 */
@@ -41,19 +41,43 @@ public class MsgCmdChangeInstanceState extends Message {
 	private final String instancePath;
 	private final InstanceStatus newState;
 	private final Map<String,byte[]> fileNameToFileContent;
+	private final Map<String,String> fileNameToDigest;
 
 
 	/**
 	 * Constructor.
+	 * <p>
+	 * When a manifest is set, it lists all the instance's resources.
+	 * The content map then only contains the files the agent is not known to have.
+	 * The other ones must be found in the agent's blob cache.
+	 * </p>
+	 *
 	 * @param instancePath
 	 * @param newState
 	 * @param fileNameToFileContent
+	 * @param fileNameToDigest the manifest (can be null)
 	 */
-	public MsgCmdChangeInstanceState( String instancePath, InstanceStatus newState, Map<String, byte[]> fileNameToFileContent ) {
+	public MsgCmdChangeInstanceState(
+			String instancePath,
+			InstanceStatus newState,
+			Map<String,byte[]> fileNameToFileContent,
+			Map<String,String> fileNameToDigest ) {
+
 		super();
 		this.instancePath = instancePath;
 		this.newState = newState;
 		this.fileNameToFileContent = fileNameToFileContent;
+		this.fileNameToDigest = fileNameToDigest;
+	}
+
+	/**
+	 * Constructor.
+	 * @param instancePath
+	 * @param newState
+	 * @param fileNameToFileContent
+	 */
+	public MsgCmdChangeInstanceState( String instancePath, InstanceStatus newState, Map<String, byte[]> fileNameToFileContent ) {
+		this( instancePath, newState, fileNameToFileContent, null );
 	}
 
 	/**
@@ -98,6 +122,13 @@ public class MsgCmdChangeInstanceState extends Message {
 		return this.fileNameToFileContent;
 	}
 
+	/**
+	 * @return a map associating file names with their digest (can be null)
+	 */
+	public Map<String,String> getFileNameToDigest() {
+		return this.fileNameToDigest;
+	}
+
 	/**
 	 * @return the newState
 	 */
@@ -29,9 +29,81 @@ import net.roboconf.messaging.api.messages.Message;
 
 /**
  * A message that indicates to an agent it must sends its logs.
+ * <p>
+ * By default, log files are sent as a whole, in a single
+ * {@link net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs} message.
+ * When a chunk size is specified, they are streamed as
+ * {@link net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk} messages.
+ * The amount of sent data can be limited, in which case only the most recent logs are sent.
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class MsgCmdGatherLogs extends Message {
 
+	/**
+	 * The default size of a chunk (in bytes).
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
 	private static final long serialVersionUID = -97111826628551779L;
+
+	private final int chunkSize;
+	private final long maxBytes, sinceTimestamp;
+	private final boolean compressed;
+
+
+	/**
+	 * Constructor (log files will be sent as a whole).
+	 */
+	public MsgCmdGatherLogs() {
+		this( 0, 0, 0, false );
+	}
+
+	/**
+	 * Constructor.
+	 * @param chunkSize the size of a chunk, in bytes (0 or less to send log files as a whole)
+	 * @param maxBytes the maximum number of bytes an agent may send (0 or less for no limit)
+	 * <p>
+	 * When this limit is reached, only the end (tail) of the log files is sent.
+	 * It is only considered when a chunk size is set.
+	 * </p>
+	 *
+	 * @param sinceTimestamp only log files modified after this time stamp will be sent (0 or less for all)
+	 * @param compressed true to compress the chunks
+	 */
+	public MsgCmdGatherLogs( int chunkSize, long maxBytes, long sinceTimestamp, boolean compressed ) {
+		this.chunkSize = chunkSize;
+		this.maxBytes = maxBytes;
+		this.sinceTimestamp = sinceTimestamp;
+		this.compressed = compressed;
+	}
+
+	/**
+	 * @return the chunk size (0 or less if log files must be sent as a whole)
+	 */
+	public int getChunkSize() {
+		return this.chunkSize;
+	}
+
+	/**
+	 * @return the maximum number of bytes an agent may send (0 or less for no limit)
+	 */
+	public long getMaxBytes() {
+		return this.maxBytes;
+	}
+
+	/**
+	 * @return the time stamp after which log files must have been modified (0 or less for all)
+	 */
+	public long getSinceTimestamp() {
+		return this.sinceTimestamp;
+	}
+
+	/**
+	 * @return true if chunks must be compressed
+	 */
+	public boolean isCompressed() {
+		return this.compressed;
+	}
 }
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.messages.from_dm_to_agent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.roboconf.messaging.api.messages.Message;
+
+/**
+ * A message that sends blobs (resources identified by their digest) to an agent.
+ * <p>
+ * It answers a {@link net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMissingBlobs} message.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class MsgCmdSendBlobs extends Message {
+
+	private static final long serialVersionUID = -3018830419846361092L;
+	private final Map<String,byte[]> digestToContent;
+
+
+	/**
+	 * Constructor.
+	 * @param digestToContent a map (key = digest, value = content), may be null
+	 */
+	public MsgCmdSendBlobs( Map<String,byte[]> digestToContent ) {
+		this.digestToContent = new HashMap<> ();
+		if( digestToContent != null )
+			this.digestToContent.putAll( digestToContent );
+	}
+
+	/**
+	 * @return the blobs (never null, key = digest, value = content)
+	 */
+	public Map<String,byte[]> getDigestToContent() {
+		return this.digestToContent;
+	}
+}
@@ -43,6 +43,7 @@ public class MsgCmdSetScopedInstance extends Message {
 	private final Map<String,String> externalExports;
 	private final Map<String,Set<String>> applicationBindings;
 	private final Map<String,byte[]> scriptResources;
+	private final Map<String,String> scriptDigests;
 
 
 	/**
@@ -57,6 +58,28 @@ public class MsgCmdSetScopedInstance extends Message {
 			Map<String,String> externalExports,
 			Map<String,Set<String>> applicationBindings,
 			Map<String,byte[]> scriptResources ) {
+		this( scopedInstance, externalExports, applicationBindings, scriptResources, null );
+	}
+
+	/**
+	 * Constructor.
+	 * <p>
+	 * When script digests are set, they list all the scripts.
+	 * Script resources then only contain the files the agent is not known to have.
+	 * </p>
+	 *
+	 * @param scopedInstance
+	 * @param externalExports
+	 * @param applicationBindings
+	 * @param scriptResouces
+	 * @param scriptDigests
+	 */
+	public MsgCmdSetScopedInstance(
+			Instance scopedInstance,
+			Map<String,String> externalExports,
+			Map<String,Set<String>> applicationBindings,
+			Map<String,byte[]> scriptResources,
+			Map<String,String> scriptDigests ) {
 
 		this.scopedInstance = scopedInstance;
 
@@ -71,6 +94,10 @@ public class MsgCmdSetScopedInstance extends Message {
 		this.scriptResources = new HashMap<String,byte[]> ();
 		if( scriptResources != null )
 			this.scriptResources.putAll( scriptResources );
+
+		this.scriptDigests = new HashMap<> ();
+		if( scriptDigests != null )
+			this.scriptDigests.putAll( scriptDigests );
 	}
 
 	/**
@@ -108,4 +135,11 @@ public class MsgCmdSetScopedInstance extends Message {
 	public Map<String,byte[]> getscriptResources() {
 		return this.scriptResources;
 	}
+
+	/**
+	 * @return the script digests (never null, key = file name, value = digest)
+	 */
+	public Map<String,String> getScriptDigests() {
+		return this.scriptDigests;
+	}
 }
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import net.roboconf.core.utils.Utils;
+
+/**
+ * Utilities related to content-addressed resources (blobs).
+ * <p>
+ * Recipes and scripts are identified by the SHA-256 digest of their content.
+ * The DM sends manifests (file name to digest) and agents keep the blobs they
+ * already received in a local cache, so that identical content is not transferred twice.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class BlobUtils {
+
+	/**
+	 * The algorithm used to compute digests.
+	 */
+	public static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private static final Pattern DIGEST_PATTERN = Pattern.compile( "[0-9a-f]{64}" );
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+
+	/**
+	 * Constructor.
+	 */
+	private BlobUtils() {
+		// nothing
+	}
+
+
+	/**
+	 * Computes the digest of some content.
+	 * @param content a non-null byte array
+	 * @return a non-null string (lower-case hexadecimal)
+	 */
+	public static String computeDigest( byte[] content ) {
+
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance( DIGEST_ALGORITHM );
+
+		} catch( NoSuchAlgorithmException e ) {
+			// SHA-256 is supported by every JVM
+			throw new IllegalStateException( e );
+		}
+
+		byte[] digest = md.digest( content );
+		char[] result = new char[ digest.length * 2 ];
+		for( int i=0; i<digest.length; i++ ) {
+			result[ 2 * i ] = HEX[( digest[ i ] >> 4 ) & 0x0F ];
+			result[ 2 * i + 1 ] = HEX[ digest[ i ] & 0x0F ];
+		}
+
+		return new String( result );
+	}
+
+
+	/**
+	 * Computes the digests of resources.
+	 * @param resources a map (key = file name, value = file content), may be null
+	 * @return a non-null map (key = file name, value = digest)
+	 */
+	public static Map<String,String> computeDigests( Map<String,byte[]> resources ) {
+
+		Map<String,String> result = new HashMap<> ();
+		if( resources != null ) {
+			for( Map.Entry<String,byte[]> entry : resources.entrySet())
+				result.put( entry.getKey(), computeDigest( entry.getValue()));
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Reads a file's content.
+	 * @param file an existing file
+	 * @return a non-null byte array
+	 * @throws IOException if the file could not be read
+	 */
+	public static byte[] readContent( File file ) throws IOException {
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream((int) Math.max( 32, file.length()));
+		Utils.copyStream( file, os );
+		return os.toByteArray();
+	}
+
+
+	/**
+	 * Determines whether a string is a valid digest.
+	 * <p>
+	 * Digests are used as file names in blob caches.
+	 * Received digests must be validated before being used.
+	 * </p>
+	 *
+	 * @param digest a string (may be null)
+	 * @return true if it is a valid digest, false otherwise
+	 */
+	public static boolean isValidDigest( String digest ) {
+		return digest != null && DIGEST_PATTERN.matcher( digest ).matches();
+	}
+}
@@ -32,6 +32,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
+import net.roboconf.messaging.api.codec.CodecUtils;
 import net.roboconf.messaging.api.messages.Message;
 
 /**
@@ -82,6 +83,11 @@ public final class SerializationUtils {
 
 	/**
 	 * Deserializes a message.
+	 * <p>
+	 * The codec that wrote the message is determined from the first bytes.
+	 * Java serialization is used when no other codec recognizes them.
+	 * </p>
+	 *
 	 * @param bytes a non-null array of bytes
 	 * @return the deserialized message, or null if it failed
 	 * @throws ClassNotFoundException
@@ -89,6 +95,6 @@ public final class SerializationUtils {
 	 */
 	public static Message deserializeObject( byte[] bytes )
 	throws IOException, ClassNotFoundException {
-		return deserializeObject( bytes, Message.class );
+		return CodecUtils.findDecoder( bytes ).decode( bytes );
 	}
 }
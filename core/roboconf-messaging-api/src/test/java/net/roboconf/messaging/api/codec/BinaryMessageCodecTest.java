@@ -0,0 +1,402 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.codec;
+
+import static net.roboconf.messaging.api.utils.SerializationUtilsTest.checkBasics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.roboconf.core.model.beans.Component;
+import net.roboconf.core.model.beans.Import;
+import net.roboconf.core.model.beans.Instance;
+import net.roboconf.core.model.beans.Instance.InstanceStatus;
+import net.roboconf.core.model.helpers.ImportHelpers;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdAddImport;
+import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdRemoveImport;
+import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdRequestImport;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifAutonomic;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMachineDown;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMissingBlobs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdAddInstance;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeBinding;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeInstanceState;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdChangeLogLevel;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdGatherLogs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdRemoveInstance;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdResynchronize;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendBlobs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSendInstances;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdSetScopedInstance;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdUpdateProbeConfiguration;
+import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
+import net.roboconf.messaging.api.utils.BlobUtils;
+import net.roboconf.messaging.api.utils.SerializationUtils;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class BinaryMessageCodecTest {
+
+	// Magic bytes (2) + version (1) + send time stamp (8)
+	private static final int TAG_INDEX = 11;
+
+	private final IMessageCodec codec = new BinaryMessageCodec();
+
+
+	@Test
+	public void testName() {
+		Assert.assertEquals( MessagingConstants.CODEC_BINARY, this.codec.getName());
+	}
+
+
+	@Test
+	public void testNotifications() throws Exception {
+
+		MsgNotifHeartbeat heartbeat = new MsgNotifHeartbeat( "app1", "/vm 1", "127.0.0.1" );
+		Assert.assertFalse( checkBasics( heartbeat, MsgNotifHeartbeat.class, this.codec ).isModelRequired());
+
+		heartbeat.setModelRequired( true );
+		Assert.assertTrue( checkBasics( heartbeat, MsgNotifHeartbeat.class, this.codec ).isModelRequired());
+
+		checkBasics( new MsgNotifHeartbeat( "app1", "/vm 1", null ), MsgNotifHeartbeat.class, this.codec );
+		checkBasics( new MsgNotifAutonomic( "app1", "instance1", "too high", "oops" ), MsgNotifAutonomic.class, this.codec );
+		checkBasics( new MsgNotifMachineDown( "app1", "instance1" ), MsgNotifMachineDown.class, this.codec );
+		checkBasics( new MsgNotifInstanceRemoved( "app2", new Instance( "instance1" )), MsgNotifInstanceRemoved.class, this.codec );
+
+		checkBasics( new MsgNotifLogs( "app1", "instance1", null ), MsgNotifLogs.class, this.codec );
+		Map<String,byte[]> map = new HashMap<> ();
+		map.put( "file1", new byte[ 0 ]);
+		map.put( "file2", "test".getBytes( "UTF-8" ));
+
+		MsgNotifLogs logs = checkBasics( new MsgNotifLogs( "app5", "instance4", map ), MsgNotifLogs.class, this.codec );
+		Assert.assertArrayEquals( "test".getBytes( "UTF-8" ), logs.getLogFiles().get( "file2" ));
+
+		checkBasics( new MsgNotifLogChunk( "app1", "/vm", "karaf.log", 0, new byte[ 0 ], false, true ), MsgNotifLogChunk.class, this.codec );
+		MsgNotifLogChunk chunk = checkBasics(
+				new MsgNotifLogChunk( "app1", "/vm", "roboconf.log", 65536, "test".getBytes( "UTF-8" ), true, false ),
+				MsgNotifLogChunk.class, this.codec );
+
+		Assert.assertTrue( chunk.isCompressed());
+		Assert.assertFalse( chunk.isLastChunk());
+	}
+
+
+	@Test
+	public void testInstanceChanged() throws Exception {
+
+		Instance instance = new Instance( "instance1" ).status( InstanceStatus.DEPLOYED_STARTED );
+		checkBasics( new MsgNotifInstanceChanged( "app2", instance ), MsgNotifInstanceChanged.class, this.codec );
+
+		Map<String,String> exportedVars = new HashMap<> ();
+		exportedVars.put( "db.ip", "192.168.1.2" );
+		exportedVars.put( "db.port", null );
+		ImportHelpers.addImport( instance, "db", new Import( "/vm/db", "database", exportedVars ));
+		ImportHelpers.addImport( instance, "db", new Import( "/vm2/db", "database" ));
+
+		MsgNotifInstanceChanged msg = checkBasics( new MsgNotifInstanceChanged( "app2", instance ), MsgNotifInstanceChanged.class, this.codec );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, msg.getNewStatus());
+
+		Collection<Import> imports = msg.getNewImports().get( "db" );
+		Assert.assertEquals( 2, imports.size());
+
+		Import imp = imports.iterator().next();
+		Assert.assertEquals( "/vm/db", imp.getInstancePath());
+		Assert.assertEquals( "database", imp.getComponentName());
+		Assert.assertEquals( exportedVars, imp.getExportedVars());
+	}
+
+
+	@Test
+	public void testImports() throws Exception {
+
+		Map<String,String> map = new HashMap<> ();
+		map.put( "yeah", "value" );
+
+		checkBasics( new MsgCmdAddImport( "app", "change-me", "anything", map ), MsgCmdAddImport.class, this.codec );
+		checkBasics( new MsgCmdAddImport( "app", "change-me", "anything", null ), MsgCmdAddImport.class, this.codec );
+		checkBasics( new MsgCmdRemoveImport( "app", "change-me", "anything" ), MsgCmdRemoveImport.class, this.codec );
+		checkBasics( new MsgCmdRequestImport( "app", "dsf" ), MsgCmdRequestImport.class, this.codec );
+	}
+
+
+	@Test
+	public void testCommands() throws Exception {
+
+		checkBasics( new MsgCmdResynchronize(), MsgCmdResynchronize.class, this.codec );
+		checkBasics( new MsgCmdSendInstances(), MsgCmdSendInstances.class, this.codec );
+		checkBasics( new MsgCmdGatherLogs(), MsgCmdGatherLogs.class, this.codec );
+		MsgCmdGatherLogs gatherLogs = checkBasics( new MsgCmdGatherLogs( 512, 4096, 12L, true ), MsgCmdGatherLogs.class, this.codec );
+		Assert.assertTrue( gatherLogs.isCompressed());
+		checkBasics( new MsgCmdChangeLogLevel( Level.FINER ), MsgCmdChangeLogLevel.class, this.codec );
+		checkBasics( new MsgCmdRemoveInstance( "/inst1" ), MsgCmdRemoveInstance.class, this.codec );
+		checkBasics( new MsgCmdUpdateProbeConfiguration( "/inst", null ), MsgCmdUpdateProbeConfiguration.class, this.codec );
+		checkBasics( new MsgCmdChangeBinding( "tpl", new HashSet<>( Arrays.asList( "app1", "app2" ))), MsgCmdChangeBinding.class, this.codec );
+
+		checkBasics( new MsgCmdChangeInstanceState( "/o/mp/k", InstanceStatus.DEPLOYED_STARTED ), MsgCmdChangeInstanceState.class, this.codec );
+		checkBasics( new MsgCmdChangeInstanceState((String) null, null ), MsgCmdChangeInstanceState.class, this.codec );
+
+		Map<String,byte[]> fileNameToFileContent = new HashMap<> ();
+		fileNameToFileContent.put( "readme.txt", new byte[ 90 ]);
+		MsgCmdChangeInstanceState msg = checkBasics(
+				new MsgCmdChangeInstanceState( "/oops", InstanceStatus.NOT_DEPLOYED, fileNameToFileContent ),
+				MsgCmdChangeInstanceState.class, this.codec );
+
+		Assert.assertEquals( 90, msg.getFileNameToFileContent().get( "readme.txt" ).length );
+		Assert.assertNull( msg.getFileNameToDigest());
+
+		Map<String,String> fileNameToDigest = BlobUtils.computeDigests( fileNameToFileContent );
+		fileNameToDigest.put( "already-sent.sh", BlobUtils.computeDigest( new byte[ 4 ]));
+		msg = checkBasics(
+				new MsgCmdChangeInstanceState( "/oops", InstanceStatus.DEPLOYED_STARTED, fileNameToFileContent, fileNameToDigest ),
+				MsgCmdChangeInstanceState.class, this.codec );
+
+		Assert.assertEquals( fileNameToDigest, msg.getFileNameToDigest());
+	}
+
+
+	@Test
+	public void testBlobs() throws Exception {
+
+		Set<String> digests = new HashSet<>( Arrays.asList(
+				BlobUtils.computeDigest( new byte[ 1 ]),
+				BlobUtils.computeDigest( new byte[ 2 ])));
+
+		MsgNotifMissingBlobs missing = checkBasics( new MsgNotifMissingBlobs( "app", "/vm", digests ), MsgNotifMissingBlobs.class, this.codec );
+		Assert.assertEquals( digests, missing.getDigests());
+		checkBasics( new MsgNotifMissingBlobs( "app", "/vm", null ), MsgNotifMissingBlobs.class, this.codec );
+
+		Map<String,byte[]> blobs = new HashMap<> ();
+		blobs.put( BlobUtils.computeDigest( "test".getBytes( "UTF-8" )), "test".getBytes( "UTF-8" ));
+		MsgCmdSendBlobs send = checkBasics( new MsgCmdSendBlobs( blobs ), MsgCmdSendBlobs.class, this.codec );
+		Assert.assertEquals( 1, send.getDigestToContent().size());
+		checkBasics( new MsgCmdSendBlobs( null ), MsgCmdSendBlobs.class, this.codec );
+	}
+
+
+	@Test
+	public void testAddInstance() throws Exception {
+
+		Instance child = new Instance( "child" ).channel( "channel 4" ).status( InstanceStatus.DEPLOYED_STOPPED );
+		child.component( new Component( "comp_child" ).installerName( "whatever" ));
+		child.data.put( "some", "data" );
+		child.overriddenExports.put( "port", "8080" );
+
+		Instance root = new Instance( "root" ).channel( "channel1" ).channel( "channel2" );
+		InstanceHelpers.insertChild( root, child );
+
+		MsgCmdAddInstance msg = checkBasics( new MsgCmdAddInstance( child ), MsgCmdAddInstance.class, this.codec );
+		Assert.assertEquals( "data", msg.getData().get( "some" ));
+		Assert.assertEquals( "8080", msg.getOverridenExports().get( "port" ));
+
+		checkBasics( new MsgCmdAddInstance( new Instance( "instance without component" )), MsgCmdAddInstance.class, this.codec );
+	}
+
+
+	@Test
+	public void testSetScopedInstance() throws Exception {
+
+		checkBasics( new MsgCmdSetScopedInstance( new Instance( "instance1" )), MsgCmdSetScopedInstance.class, this.codec );
+
+		Map<String,String> map1 = new HashMap<> ();
+		map1.put( "test", "t1" );
+
+		Map<String,Set<String>> map2 = new HashMap<> ();
+		Set<String> appNames = new LinkedHashSet<> ();
+		appNames.add( "app1" );
+		appNames.add( "app2" );
+		map2.put( "app_prefix", appNames );
+
+		Map<String,byte[]> map3 = new HashMap<> ();
+		map3.put( "script", "toto".getBytes( "UTF-8" ));
+
+		Instance scopedInstance = new Instance( "instance1" ).component( new Component( "vm" ).installerName( "target" ));
+		InstanceHelpers.insertChild( scopedInstance, new Instance( "child" ));
+
+		MsgCmdSetScopedInstance msg = checkBasics(
+				new MsgCmdSetScopedInstance( scopedInstance, map1, map2, map3 ),
+				MsgCmdSetScopedInstance.class, this.codec );
+
+		Assert.assertEquals( appNames, msg.getApplicationBindings().get( "app_prefix" ));
+		Assert.assertEquals( 1, msg.getScopedInstance().getChildren().size());
+		Assert.assertEquals( "vm", msg.getScopedInstance().getComponent().getName());
+		Assert.assertEquals( 0, msg.getScriptDigests().size());
+
+		msg = checkBasics(
+				new MsgCmdSetScopedInstance( scopedInstance, map1, map2, map3, BlobUtils.computeDigests( map3 )),
+				MsgCmdSetScopedInstance.class, this.codec );
+
+		Assert.assertEquals( BlobUtils.computeDigest( "toto".getBytes( "UTF-8" )), msg.getScriptDigests().get( "script" ));
+	}
+
+
+	@Test
+	public void testFallbackOnJavaSerialization() throws Exception {
+
+		MsgEcho msg = checkBasics( new MsgEcho( "coucou", UUID.randomUUID()), MsgEcho.class, this.codec );
+		Assert.assertEquals( "coucou", msg.getContent());
+
+		byte[] bytes = this.codec.encode( new MsgEcho( "hello" ));
+		Assert.assertEquals( BinaryMessageCodec.TAG_SERIALIZED, bytes[ TAG_INDEX ]);
+	}
+
+
+	@Test
+	public void testMessagesAreSmaller() throws Exception {
+
+		Message msg = new MsgNotifHeartbeat( "app1", "/vm 1", "127.0.0.1" );
+		Assert.assertTrue( this.codec.encode( msg ).length * 5 < SerializationUtils.serializeObject( msg ).length );
+	}
+
+
+	@Test
+	public void testLongStrings() throws Exception {
+
+		StringBuilder sb = new StringBuilder();
+		for( int i=0; i<70000; i++ )
+			sb.append( 'é' );
+
+		MsgNotifAutonomic msg = new MsgNotifAutonomic( "app", "/vm", "event", sb.toString());
+		Assert.assertEquals( sb.toString(), checkBasics( msg, MsgNotifAutonomic.class, this.codec ).getEventInfo());
+	}
+
+
+	@Test
+	public void testAccepts() throws Exception {
+
+		Assert.assertFalse( this.codec.accepts( new byte[ 0 ]));
+		Assert.assertFalse( this.codec.accepts( SerializationUtils.serializeObject( new MsgCmdResynchronize())));
+		Assert.assertTrue( this.codec.accepts( this.codec.encode( new MsgCmdResynchronize())));
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testDecode_notBinary() throws Exception {
+		this.codec.decode( SerializationUtils.serializeObject( new MsgCmdResynchronize()));
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testDecode_unsupportedVersion() throws Exception {
+
+		byte[] bytes = this.codec.encode( new MsgCmdResynchronize());
+		bytes[ 2 ] = BinaryMessageCodec.VERSION + 1;
+		this.codec.decode( bytes );
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testDecode_unknownTag() throws Exception {
+
+		byte[] bytes = this.codec.encode( new MsgCmdResynchronize());
+		bytes[ TAG_INDEX ] = 127;
+		this.codec.decode( bytes );
+	}
+
+
+	@Test
+	public void testSendTimestamp() throws Exception {
+
+		// Encoding stamps the result, not the original message
+		MsgNotifAutonomic msg = new MsgNotifAutonomic( "app", "/vm", "event", "info" );
+		long before = System.currentTimeMillis();
+		byte[] bytes = this.codec.encode( msg );
+		long after = System.currentTimeMillis();
+
+		long sendTimestamp = this.codec.decode( bytes ).getSendTimestamp();
+		Assert.assertTrue( sendTimestamp >= before );
+		Assert.assertTrue( sendTimestamp <= after );
+		Assert.assertEquals( 0, msg.getSendTimestamp());
+
+		// Messages embedded with Java serialization
+		MsgEcho echo = new MsgEcho( "hi" );
+		before = System.currentTimeMillis();
+		bytes = this.codec.encode( echo );
+		after = System.currentTimeMillis();
+
+		sendTimestamp = this.codec.decode( bytes ).getSendTimestamp();
+		Assert.assertTrue( sendTimestamp >= before );
+		Assert.assertTrue( sendTimestamp <= after );
+		Assert.assertEquals( 0, echo.getSendTimestamp());
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testDecode_truncated() throws Exception {
+
+		byte[] bytes = this.codec.encode( new MsgNotifAutonomic( "app", "/vm", "event", "info" ));
+		this.codec.decode( Arrays.copyOf( bytes, bytes.length - 2 ));
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testDecode_invalidCollectionSize() throws Exception {
+
+		// A corrupted size must not result in a huge allocation
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream( os );
+		out.writeByte( BinaryMessageCodec.MAGIC_1 );
+		out.writeByte( BinaryMessageCodec.MAGIC_2 );
+		out.writeByte( BinaryMessageCodec.VERSION );
+		out.writeLong( System.currentTimeMillis());
+		out.writeByte( BinaryMessageCodec.TAG_LOGS );
+		BinaryMessageCodec.writeString( out, "app" );
+		BinaryMessageCodec.writeString( out, "/vm" );
+		BinaryMessageCodec.writeSize( out, Integer.MAX_VALUE - 1 );
+
+		this.codec.decode( os.toByteArray());
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testDecode_invalidLogLevel() throws Exception {
+
+		byte[] bytes = this.codec.encode( new MsgCmdChangeLogLevel( Level.INFO ));
+		bytes[ bytes.length - 1 ] = 'X';
+		this.codec.decode( bytes );
+	}
+}
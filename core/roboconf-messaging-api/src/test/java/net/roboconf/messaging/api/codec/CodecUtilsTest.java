@@ -0,0 +1,146 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.codec;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdResynchronize;
+import net.roboconf.messaging.api.utils.SerializationUtils;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class CodecUtilsTest {
+
+	@After
+	public void unregisterCodecs() {
+		CodecUtils.unregisterCodec( "custom" );
+	}
+
+
+	@Test
+	public void testFindCodec() {
+
+		Assert.assertEquals( MessagingConstants.CODEC_JAVA, CodecUtils.findCodec((String) null ).getName());
+		Assert.assertEquals( MessagingConstants.CODEC_JAVA, CodecUtils.findCodec( "unknown" ).getName());
+		Assert.assertEquals( MessagingConstants.CODEC_JAVA, CodecUtils.findCodec( MessagingConstants.CODEC_JAVA ).getName());
+		Assert.assertEquals( MessagingConstants.CODEC_BINARY, CodecUtils.findCodec( MessagingConstants.CODEC_BINARY ).getName());
+
+		Map<String,String> configuration = new HashMap<> ();
+		Assert.assertEquals( MessagingConstants.CODEC_JAVA, CodecUtils.findCodec( configuration ).getName());
+
+		configuration.put( MessagingConstants.MESSAGING_CODEC_PROPERTY, MessagingConstants.CODEC_BINARY );
+		Assert.assertEquals( MessagingConstants.CODEC_BINARY, CodecUtils.findCodec( configuration ).getName());
+
+		// Compression
+		configuration.put( MessagingConstants.MESSAGING_COMPRESSION_THRESHOLD_PROPERTY, "1024" );
+		IMessageCodec codec = CodecUtils.findCodec( configuration );
+		Assert.assertEquals( CompressingCodec.class, codec.getClass());
+		Assert.assertEquals( "binary+deflate", codec.getName());
+		Assert.assertEquals( 1024, ((CompressingCodec) codec).getThreshold());
+		Assert.assertEquals( MessagingConstants.CODEC_BINARY, ((CompressingCodec) codec).getDelegate().getName());
+
+		configuration.put( MessagingConstants.MESSAGING_COMPRESSION_THRESHOLD_PROPERTY, "0" );
+		Assert.assertEquals( MessagingConstants.CODEC_BINARY, CodecUtils.findCodec( configuration ).getName());
+
+		configuration.put( MessagingConstants.MESSAGING_COMPRESSION_THRESHOLD_PROPERTY, "invalid" );
+		Assert.assertEquals( MessagingConstants.CODEC_BINARY, CodecUtils.findCodec( configuration ).getName());
+		Assert.assertEquals( 0, CodecUtils.findCompressionThreshold( configuration ));
+	}
+
+
+	@Test
+	public void testFindDecoder() throws Exception {
+
+		Message msg = new MsgCmdResynchronize();
+		byte[] bytes = SerializationUtils.serializeObject( msg );
+		Assert.assertEquals( MessagingConstants.CODEC_JAVA, CodecUtils.findDecoder( bytes ).getName());
+
+		bytes = new BinaryMessageCodec().encode( msg );
+		Assert.assertEquals( MessagingConstants.CODEC_BINARY, CodecUtils.findDecoder( bytes ).getName());
+
+		bytes = new CompressingCodec( new BinaryMessageCodec(), 1 ).compress( new byte[ 200 ]);
+		Assert.assertEquals( MessagingConstants.COMPRESSION_DEFLATE, CodecUtils.findDecoder( bytes ).getName());
+
+		// Unknown bytes => Java serialization
+		Assert.assertEquals( MessagingConstants.CODEC_JAVA, CodecUtils.findDecoder( new byte[ 0 ]).getName());
+	}
+
+
+	@Test
+	public void testRegisterAndUnregister() throws Exception {
+
+		IMessageCodec customCodec = new CustomCodec();
+		Assert.assertEquals( MessagingConstants.CODEC_JAVA, CodecUtils.findCodec( "custom" ).getName());
+
+		CodecUtils.registerCodec( customCodec );
+		Assert.assertSame( customCodec, CodecUtils.findCodec( "custom" ));
+		Assert.assertSame( customCodec, CodecUtils.findDecoder( new byte[] { 42 }));
+		Assert.assertEquals( MsgCmdResynchronize.class, SerializationUtils.deserializeObject( new byte[] { 42 }).getClass());
+
+		CodecUtils.unregisterCodec( "custom" );
+		Assert.assertEquals( MessagingConstants.CODEC_JAVA, CodecUtils.findCodec( "custom" ).getName());
+
+		// The Java codec cannot be unregistered
+		CodecUtils.unregisterCodec( MessagingConstants.CODEC_JAVA );
+		Assert.assertEquals( MessagingConstants.CODEC_JAVA, CodecUtils.findCodec( MessagingConstants.CODEC_JAVA ).getName());
+	}
+
+
+	/**
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class CustomCodec implements IMessageCodec {
+
+		@Override
+		public String getName() {
+			return "custom";
+		}
+
+		@Override
+		public byte[] encode( Message message ) throws IOException {
+			return new byte[] { 42 };
+		}
+
+		@Override
+		public Message decode( byte[] bytes ) throws IOException {
+			return new MsgCmdResynchronize();
+		}
+
+		@Override
+		public boolean accepts( byte[] bytes ) {
+			return bytes.length == 1 && bytes[ 0 ] == 42;
+		}
+	}
+}
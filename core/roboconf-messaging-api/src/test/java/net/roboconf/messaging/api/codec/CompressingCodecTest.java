@@ -0,0 +1,217 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.codec;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdResynchronize;
+import net.roboconf.messaging.api.utils.SerializationUtils;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class CompressingCodecTest {
+
+	@Before
+	public void resetStatistics() {
+		CompressingCodec.getStatistics().reset();
+	}
+
+
+	@Test
+	public void testSmallMessagesAreNotCompressed() throws Exception {
+
+		IMessageCodec delegate = new BinaryMessageCodec();
+		CompressingCodec codec = new CompressingCodec( delegate, 4096 );
+
+		Message msg = new MsgCmdResynchronize();
+		byte[] bytes = codec.encode( msg );
+		Assert.assertArrayEquals( delegate.encode( msg ), bytes );
+		Assert.assertFalse( CompressingCodec.isCompressed( bytes ));
+		Assert.assertFalse( codec.accepts( bytes ));
+
+		CompressionStatistics stats = CompressingCodec.getStatistics();
+		Assert.assertEquals( 0, stats.getCompressedMessagesCount());
+		Assert.assertEquals( 1, stats.getUncompressedMessagesCount());
+		Assert.assertEquals( 0, stats.getCompressionRatio());
+	}
+
+
+	@Test
+	public void testBigMessagesAreCompressed_allCodecs() throws Exception {
+
+		for( IMessageCodec delegate : new IMessageCodec[] { new BinaryMessageCodec(), new JavaSerializationCodec()}) {
+
+			CompressingCodec codec = new CompressingCodec( delegate, 1024 );
+			Message msg = buildLogsMessage();
+
+			byte[] uncompressed = delegate.encode( msg );
+			byte[] bytes = codec.encode( msg );
+			Assert.assertTrue( CompressingCodec.isCompressed( bytes ));
+			Assert.assertTrue( codec.accepts( bytes ));
+			Assert.assertTrue( bytes.length < uncompressed.length / 10 );
+
+			// Compressed messages can be read by any receiver
+			Message read = SerializationUtils.deserializeObject( bytes );
+			Assert.assertEquals( MsgNotifLogs.class, read.getClass());
+
+			Map<String,byte[]> logFiles = ((MsgNotifLogs) read).getLogFiles();
+			Assert.assertEquals( 2, logFiles.size());
+			Assert.assertArrayEquals(((MsgNotifLogs) msg).getLogFiles().get( "agent.log" ), logFiles.get( "agent.log" ));
+
+			read = codec.decode( bytes );
+			Assert.assertEquals( MsgNotifLogs.class, read.getClass());
+		}
+
+		CompressionStatistics stats = CompressingCodec.getStatistics();
+		Assert.assertEquals( 2, stats.getCompressedMessagesCount());
+		Assert.assertEquals( 0, stats.getUncompressedMessagesCount());
+		Assert.assertEquals( 4, stats.getDecompressedMessagesCount());
+		Assert.assertTrue( stats.getBytesAfterCompression() < stats.getBytesBeforeCompression());
+		Assert.assertTrue( stats.getCompressionRatio() < 10 );
+		Assert.assertTrue( stats.getAverageCompressionTime() >= 0 );
+		Assert.assertTrue( stats.getAverageDecompressionTime() >= 0 );
+
+		stats.reset();
+		Assert.assertEquals( 0, stats.getCompressedMessagesCount());
+		Assert.assertEquals( 0, stats.getDecompressedMessagesCount());
+		Assert.assertEquals( 0, stats.getBytesBeforeCompression());
+	}
+
+
+	@Test
+	public void testIncompressiblePayloadsAreKept() throws Exception {
+
+		byte[] random = new byte[ 2000 ];
+		new Random( 12 ).nextBytes( random );
+
+		CompressingCodec codec = new CompressingCodec( new BinaryMessageCodec(), 10 );
+		Assert.assertSame( random, codec.compress( random ));
+		Assert.assertEquals( 1, CompressingCodec.getStatistics().getUncompressedMessagesCount());
+	}
+
+
+	@Test
+	public void testDecompress() throws Exception {
+
+		// Not compressed
+		byte[] bytes = new byte[] { 1, 2, 3 };
+		Assert.assertSame( bytes, CompressingCodec.decompress( bytes ));
+
+		// Round trip
+		bytes = new byte[ 5000 ];
+		for( int i=0; i<bytes.length; i++ )
+			bytes[ i ] = (byte) (i % 7);
+
+		byte[] compressed = new CompressingCodec( null, 1 ).compress( bytes );
+		Assert.assertTrue( compressed.length < bytes.length );
+		Assert.assertArrayEquals( bytes, CompressingCodec.decompress( compressed ));
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testDecompress_unsupportedVersion() throws Exception {
+
+		byte[] compressed = new CompressingCodec( null, 1 ).compress( new byte[ 500 ]);
+		compressed[ 2 ] = 50;
+		CompressingCodec.decompress( compressed );
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testDecompress_truncated() throws Exception {
+
+		byte[] compressed = new CompressingCodec( null, 1 ).compress( new byte[ 5000 ]);
+		byte[] truncated = new byte[ compressed.length - 3 ];
+		System.arraycopy( compressed, 0, truncated, 0, truncated.length );
+		CompressingCodec.decompress( truncated );
+	}
+
+
+	@Test
+	public void testDecompress_announcedSizeIsChecked() throws Exception {
+
+		byte[] bytes = new byte[ 5000 ];
+		byte[] compressed = new CompressingCodec( null, 1 ).compress( bytes );
+		Assert.assertArrayEquals( bytes, CompressingCodec.decompress( compressed, bytes.length ));
+
+		// Above the maximum
+		try {
+			CompressingCodec.decompress( compressed, bytes.length - 1 );
+			Assert.fail( "An exception was expected." );
+
+		} catch( IOException e ) {
+			Assert.assertTrue( e.getMessage().contains( "too big" ));
+		}
+
+		// Above what the compressed bytes can contain
+		compressed[ 3 ] = 0x7F;
+		try {
+			CompressingCodec.decompress( compressed, Integer.MAX_VALUE );
+			Assert.fail( "An exception was expected." );
+
+		} catch( IOException e ) {
+			Assert.assertTrue( e.getMessage().contains( "announces more bytes" ));
+		}
+
+		// The default maximum applies too
+		try {
+			CompressingCodec.decompress( compressed );
+			Assert.fail( "An exception was expected." );
+
+		} catch( IOException e ) {
+			Assert.assertTrue( e.getMessage().contains( "too big" ));
+		}
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testEncode_decoderOnly() throws Exception {
+		new CompressingCodec( null, 1 ).encode( new MsgCmdResynchronize());
+	}
+
+
+	private static MsgNotifLogs buildLogsMessage() {
+
+		StringBuilder sb = new StringBuilder();
+		for( int i=0; i<2000; i++ )
+			sb.append( "[INFO] net.roboconf.agent: instance /vm/server-" ).append( i % 10 ).append( " was deployed.\n" );
+
+		Map<String,byte[]> logFiles = new HashMap<> ();
+		logFiles.put( "agent.log", sb.toString().getBytes());
+		logFiles.put( "karaf.log", sb.toString().getBytes());
+		return new MsgNotifLogs( "app", "/vm", logFiles );
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.codec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdResynchronize;
+import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
+import net.roboconf.messaging.api.utils.SerializationUtils;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class JavaSerializationCodecTest {
+
+	private final JavaSerializationCodec codec = new JavaSerializationCodec();
+
+
+	@Test
+	public void testEncodeAndDecode() throws Exception {
+
+		MsgEcho msg = new MsgEcho( "hi" );
+		Message result = this.codec.decode( this.codec.encode( msg ));
+
+		Assert.assertEquals( MsgEcho.class, result.getClass());
+		Assert.assertEquals( "hi", ((MsgEcho) result).getContent());
+		Assert.assertTrue( this.codec.accepts( this.codec.encode( msg )));
+	}
+
+
+	@Test
+	public void testSendTimestamp() throws Exception {
+
+		// Encoding stamps the result, not the original message
+		MsgCmdResynchronize msg = new MsgCmdResynchronize();
+		long before = System.currentTimeMillis();
+		byte[] bytes = this.codec.encode( msg );
+		long after = System.currentTimeMillis();
+
+		long sendTimestamp = this.codec.decode( bytes ).getSendTimestamp();
+		Assert.assertTrue( sendTimestamp >= before );
+		Assert.assertTrue( sendTimestamp <= after );
+		Assert.assertEquals( 0, msg.getSendTimestamp());
+
+		// Older senders do not append any time stamp
+		bytes = SerializationUtils.serializeObject( msg );
+		Assert.assertEquals( 0, this.codec.decode( bytes ).getSendTimestamp());
+
+		// And older receivers ignore it
+		bytes = this.codec.encode( msg );
+		Assert.assertEquals( MsgCmdResynchronize.class, SerializationUtils.deserializeObject( bytes, Message.class ).getClass());
+	}
+}
@@ -26,14 +26,23 @@
 package net.roboconf.messaging.api.extensions;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
+import net.roboconf.messaging.api.extensions.MessagingContext.ThoseThat;
 import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdResynchronize;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -61,6 +70,219 @@ public class AbstractRoutingClientTest {
 	}
 
 
+	@Test
+	public void testReverseIndex() throws Exception {
+
+		MessagingContext ctx1 = new MessagingContext( RecipientKind.AGENTS, "domain", "db", ThoseThat.EXPORT, "app" );
+		MessagingContext ctx2 = new MessagingContext( RecipientKind.AGENTS, "domain", "db", ThoseThat.IMPORT, "app" );
+
+		ListRoutingContext routingContext = new ListRoutingContext();
+		ListClient client1 = new ListClient( routingContext );
+		client1.setOwnerProperties( RecipientKind.AGENTS, "domain", "app", "/vm1" );
+		ListClient client2 = new ListClient( routingContext );
+		client2.setOwnerProperties( RecipientKind.AGENTS, "domain", "app", "/vm2" );
+
+		Assert.assertEquals( 0, routingContext.findSubscribers( ctx1 ).size());
+		Assert.assertEquals( 0, routingContext.findSubscribers( null ).size());
+
+		client1.subscribe( ctx1 );
+		client1.subscribe( ctx2 );
+		client2.subscribe( ctx1 );
+		Assert.assertEquals( 2, routingContext.findSubscribers( ctx1 ).size());
+		Assert.assertEquals( 1, routingContext.findSubscribers( ctx2 ).size());
+
+		client1.unsubscribe( ctx1 );
+		Assert.assertEquals( 1, routingContext.findSubscribers( ctx1 ).size());
+		Assert.assertTrue( routingContext.findSubscribers( ctx1 ).contains( client2.getOwnerId()));
+
+		// Changing the owner ID updates the index
+		client1.setOwnerProperties( RecipientKind.AGENTS, "domain", "app", "/vm1-bis" );
+		Assert.assertEquals( 1, routingContext.findSubscribers( ctx2 ).size());
+		Assert.assertTrue( routingContext.findSubscribers( ctx2 ).contains( client1.getOwnerId()));
+		Assert.assertTrue( routingContext.getOwnerIds().contains( client1.getOwnerId()));
+
+		// Deleting artifacts clears the subscriptions of the owner
+		client1.deleteMessagingServerArtifacts( null );
+		Assert.assertEquals( 0, routingContext.findSubscribers( ctx2 ).size());
+		Assert.assertFalse( routingContext.getOwnerIds().contains( client1.getOwnerId()));
+		Assert.assertFalse( routingContext.subscribers.containsKey( ctx2 ));
+
+		client2.unsubscribe( ctx1 );
+		Assert.assertEquals( 0, routingContext.getOwnerIds().size());
+		Assert.assertEquals( 0, routingContext.subscribers.size());
+	}
+
+
+	@Test
+	public void testPublishOnlyReachesSubscribers() throws Exception {
+
+		MessagingContext ctx = new MessagingContext( RecipientKind.AGENTS, "domain", "db", ThoseThat.EXPORT, "app" );
+		MessagingContext otherCtx = new MessagingContext( RecipientKind.AGENTS, "domain", "web", ThoseThat.EXPORT, "app" );
+
+		ListRoutingContext routingContext = new ListRoutingContext();
+		List<ListClient> clients = new ArrayList<> ();
+		for( int i=0; i<10; i++ ) {
+			ListClient client = new ListClient( routingContext );
+			client.setOwnerProperties( RecipientKind.AGENTS, "domain", "app", "/vm" + i );
+			client.subscribe( i % 2 == 0 ? ctx : otherCtx );
+			clients.add( client );
+		}
+
+		clients.get( 0 ).publish( ctx, new MsgCmdResynchronize());
+		for( int i=0; i<10; i++ )
+			Assert.assertEquals( "Client " + i, i % 2 == 0 ? 1 : 0, clients.get( i ).received.size());
+	}
+
+
+	@Test
+	public void testPublishOnlyVisitsMatchingSubscribers() throws Exception {
+
+		// Only one subscriber matches the context.
+		// Publishing must not visit the other ones.
+		ListRoutingContext routingContext = new ListRoutingContext();
+		ListClient publisher = null;
+		for( int i=0; i<10000; i++ ) {
+			ListClient client = new ListClient( routingContext );
+			client.setOwnerProperties( RecipientKind.AGENTS, "domain", "app", "/vm" + i );
+			client.subscribe( new MessagingContext( RecipientKind.AGENTS, "domain", "comp" + i, ThoseThat.EXPORT, "app" ));
+			if( publisher == null )
+				publisher = client;
+		}
+
+		MessagingContext ctx = new MessagingContext( RecipientKind.AGENTS, "domain", "comp0", ThoseThat.EXPORT, "app" );
+		Assert.assertEquals( Collections.singleton( publisher.getOwnerId()), routingContext.findSubscribers( ctx ));
+
+		routingContext.ctxToList.lookups.set( 0 );
+		for( int i=0; i<100; i++ )
+			publisher.publish( ctx, new MsgCmdResynchronize());
+
+		Assert.assertEquals( 100, routingContext.ctxToList.lookups.get());
+		Assert.assertEquals( 100, publisher.received.size());
+	}
+
+
+	/**
+	 * A (basic) benchmark for the publish operation.
+	 * <p>
+	 * Only one subscriber matches the context. Publishing should not
+	 * depend on the total number of subscribers (100 vs 10,000).
+	 * Measures are only logged.
+	 * </p>
+	 */
+	@Test
+	public void testPublishLatencyWithManySubscribers() throws Exception {
+
+		long with100 = measurePublishLatency( 100 );
+		long with10000 = measurePublishLatency( 10000 );
+
+		Logger.getLogger( getClass().getName()).info(
+				"Median publish latency: " + with100 + " ns (100 subscribers), " + with10000 + " ns (10,000 subscribers)." );
+	}
+
+
+	private static long measurePublishLatency( int subscribersCount ) throws Exception {
+
+		ListRoutingContext routingContext = new ListRoutingContext();
+		ListClient publisher = null;
+		for( int i=0; i<subscribersCount; i++ ) {
+			ListClient client = new ListClient( routingContext );
+			client.setOwnerProperties( RecipientKind.AGENTS, "domain", "app", "/vm" + i );
+			client.subscribe( new MessagingContext( RecipientKind.AGENTS, "domain", "comp" + i, ThoseThat.EXPORT, "app" ));
+			if( publisher == null )
+				publisher = client;
+		}
+
+		MessagingContext ctx = new MessagingContext( RecipientKind.AGENTS, "domain", "comp0", ThoseThat.EXPORT, "app" );
+		Message msg = new MsgCmdResynchronize();
+		long[] durations = new long[ 2000 ];
+
+		// Warm up, then measure
+		for( int i=0; i<durations.length; i++ )
+			publisher.publish( ctx, msg );
+
+		for( int i=0; i<durations.length; i++ ) {
+			long start = System.nanoTime();
+			publisher.publish( ctx, msg );
+			durations[ i ] = System.nanoTime() - start;
+		}
+
+		Assert.assertEquals( 2 * durations.length, publisher.received.size());
+		Arrays.sort( durations );
+		return durations[ durations.length / 2 ];
+	}
+
+
+	/**
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class ListRoutingContext extends AbstractRoutingClient.RoutingContext {
+		final CountingMap ctxToList = new CountingMap();
+	}
+
+
+	/**
+	 * A map that counts the look-ups.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class CountingMap extends ConcurrentHashMap<String,List<Message>> {
+		private static final long serialVersionUID = 1L;
+		final AtomicInteger lookups = new AtomicInteger();
+
+		@Override
+		public List<Message> get( Object key ) {
+			this.lookups.incrementAndGet();
+			return super.get( key );
+		}
+	}
+
+
+	/**
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class ListClient extends AbstractRoutingClient<List<Message>> {
+		// Not initialized here: the super constructor invokes setOwnerProperties
+		List<Message> received;
+
+		/**
+		 * Constructor.
+		 * @param routingContext
+		 */
+		public ListClient( ListRoutingContext routingContext ) {
+			super( routingContext, RecipientKind.AGENTS );
+			this.connectionIsRequired = false;
+		}
+
+		@Override
+		public void setOwnerProperties( RecipientKind ownerKind, String domain, String applicationName, String scopedInstancePath ) {
+			super.setOwnerProperties( ownerKind, domain, applicationName, scopedInstancePath );
+			if( this.received == null )
+				this.received = new ArrayList<> ();
+
+			getStaticContextToObject().put( this.ownerId, this.received );
+		}
+
+		@Override
+		public void setMessageQueue( RoboconfMessageQueue messageQueue ) {
+			// nothing
+		}
+
+		@Override
+		protected Map<String,List<Message>> getStaticContextToObject() {
+			return ((ListRoutingContext) this.routingContext).ctxToList;
+		}
+
+		@Override
+		protected void process( List<Message> obj, Message message ) throws IOException {
+			obj.add( message );
+		}
+
+		@Override
+		public String getMessagingType() {
+			return "whatever";
+		}
+	}
+
+
 	/**
 	 * @author Vincent Zurczak - Linagora
 	 */
@@ -26,6 +26,7 @@
 package net.roboconf.messaging.api.internal.client.in_memory;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -57,4 +58,34 @@ public class InMemoryClientFactoryTest {
 		Assert.assertEquals( InMemoryClient.class, client.getClass());
 		Assert.assertEquals( "", ((InMemoryClient) client).getOwnerId());
 	}
+
+
+	@Test
+	public void testCopyConfiguration() {
+
+		InMemoryClientFactory factory = new InMemoryClientFactory();
+		Map<String,String> conf = new HashMap<> ();
+		conf.put( MessagingConstants.MESSAGING_TYPE_PROPERTY, MessagingConstants.FACTORY_IN_MEMORY );
+
+		Assert.assertTrue( factory.setConfiguration( conf ));
+		Assert.assertNull( factory.getRoutingContext().copyCodec );
+
+		conf.put( MessagingConstants.IN_MEMORY_COPY_MESSAGES_PROPERTY, "true" );
+		Assert.assertTrue( factory.setConfiguration( conf ));
+		Assert.assertEquals( MessagingConstants.CODEC_JAVA, factory.getRoutingContext().copyCodec.getName());
+
+		conf.put( MessagingConstants.MESSAGING_CODEC_PROPERTY, MessagingConstants.CODEC_BINARY );
+		Assert.assertTrue( factory.setConfiguration( conf ));
+		Assert.assertEquals( MessagingConstants.CODEC_BINARY, factory.getRoutingContext().copyCodec.getName());
+
+		// Another messaging type does not change anything
+		conf.put( MessagingConstants.MESSAGING_TYPE_PROPERTY, "whatever" );
+		Assert.assertFalse( factory.setConfiguration( conf ));
+		Assert.assertNotNull( factory.getRoutingContext().copyCodec );
+
+		conf.put( MessagingConstants.MESSAGING_TYPE_PROPERTY, MessagingConstants.FACTORY_IN_MEMORY );
+		conf.remove( MessagingConstants.IN_MEMORY_COPY_MESSAGES_PROPERTY );
+		Assert.assertTrue( factory.setConfiguration( conf ));
+		Assert.assertNull( factory.getRoutingContext().copyCodec );
+	}
 }
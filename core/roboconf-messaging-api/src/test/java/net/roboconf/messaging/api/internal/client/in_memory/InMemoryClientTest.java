@@ -25,21 +25,28 @@
 
 package net.roboconf.messaging.api.internal.client.in_memory;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import net.roboconf.core.model.beans.Instance;
 import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.codec.BinaryMessageCodec;
+import net.roboconf.messaging.api.codec.JavaSerializationCodec;
+import net.roboconf.messaging.api.extensions.AbstractRoutingClient.RoutingContext;
 import net.roboconf.messaging.api.extensions.MessagingContext;
 import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
 import net.roboconf.messaging.api.internal.client.in_memory.InMemoryClient.InMemoryRoutingContext;
 import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifHeartbeat;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdAddInstance;
 
 /**
@@ -74,11 +81,11 @@ public class InMemoryClientTest {
 
 		// Not connected, subscriptions cannot work
 		Assert.assertFalse( client.isConnected());
-		Assert.assertNull( getSubscriptions( client ));
+		Assert.assertEquals( 0, getSubscriptions( client ).size());
 		client.subscribe( ctx );
-		Assert.assertNull( getSubscriptions( client ));
+		Assert.assertEquals( 0, getSubscriptions( client ).size());
 		client.unsubscribe( ctx );
-		Assert.assertNull( getSubscriptions( client ));
+		Assert.assertEquals( 0, getSubscriptions( client ).size());
 
 		// Connection
 		client.openConnection();
@@ -88,18 +95,18 @@ public class InMemoryClientTest {
 		Assert.assertTrue( getSubscriptions( client ).contains( ctx ));
 
 		client.unsubscribe( ctx );
-		Assert.assertNull( getSubscriptions( client ));
+		Assert.assertEquals( 0, getSubscriptions( client ).size());
 
 		client.unsubscribe( ctx );
 		client.unsubscribe( null );
-		Assert.assertNull( getSubscriptions( client ));
+		Assert.assertEquals( 0, getSubscriptions( client ).size());
 
 		// Cleaning artifacts
 		client.subscribe( ctx );
 		Assert.assertEquals( 1, getSubscriptions( client ).size());
 
 		client.deleteMessagingServerArtifacts( null );
-		Assert.assertNull( getSubscriptions( client ));
+		Assert.assertEquals( 0, getSubscriptions( client ).size());
 	}
 
 
@@ -172,12 +179,11 @@ public class InMemoryClientTest {
 		String ownerId_1 = client.getOwnerId();
 
 		// Verify associations
-		Map<String,Set<MessagingContext>> sub = client.getRoutingContext().subscriptions;
+		RoutingContext routingContext = client.getRoutingContext();
 		Map<String,LinkedBlockingQueue<Message>> ctxToQueue = ((InMemoryRoutingContext) client.getRoutingContext()).ctxToQueue;
 		Assert.assertEquals( queue, ctxToQueue.get( ownerId_1 ));
 
-		Set<MessagingContext> subscribedContexts = sub.get( ownerId_1 );
-		Assert.assertNotNull( subscribedContexts );
+		Set<MessagingContext> subscribedContexts = routingContext.findSubscriptions( ownerId_1 );
 		Assert.assertEquals( 1, subscribedContexts.size());
 		Assert.assertTrue( subscribedContexts.contains( ctx ));
 
@@ -190,16 +196,126 @@ public class InMemoryClientTest {
 
 		Assert.assertEquals( queue, ctxToQueue.get( ownerId_2 ));
 		Assert.assertNull( ctxToQueue.get( ownerId_1 ));
-		Assert.assertNull( sub.get( ownerId_1 ));
+		Assert.assertEquals( 0, routingContext.findSubscriptions( ownerId_1 ).size());
 
-		subscribedContexts = sub.get( ownerId_2 );
-		Assert.assertNotNull( subscribedContexts );
+		subscribedContexts = routingContext.findSubscriptions( ownerId_2 );
 		Assert.assertEquals( 1, subscribedContexts.size());
 		Assert.assertTrue( subscribedContexts.contains( ctx ));
 	}
 
 
 	private Set<MessagingContext> getSubscriptions( InMemoryClient client ) {
-		return client.getRoutingContext().subscriptions.get( client.getOwnerId());
+		return client.getRoutingContext().findSubscriptions( client.getOwnerId());
+	}
+
+
+	@Test
+	public void testPublications_byReferenceOrWithCopies() throws Exception {
+
+		InMemoryRoutingContext routingContext = new InMemoryRoutingContext();
+		InMemoryClient client = new InMemoryClient( routingContext, RecipientKind.DM );
+		RoboconfMessageQueue queue = new RoboconfMessageQueue();
+		client.setMessageQueue( queue );
+		client.openConnection();
+
+		MessagingContext ctx = new MessagingContext( RecipientKind.AGENTS, "domain", "app" );
+		client.subscribe( ctx );
+
+		// By default, the same instance is received
+		Message msg = new MsgCmdAddInstance( new Instance( "inst" ));
+		client.publish( ctx, msg );
+		Assert.assertSame( msg, queue.poll());
+		Assert.assertEquals( 1, client.getConfiguration().size());
+
+		// With copies, recipients and senders are isolated
+		routingContext.copyCodec = new BinaryMessageCodec();
+		client.publish( ctx, msg );
+
+		Message copy = queue.poll();
+		Assert.assertNotSame( msg, copy );
+		Assert.assertEquals( MsgCmdAddInstance.class, copy.getClass());
+		Assert.assertEquals( "inst", ((MsgCmdAddInstance) copy).getInstanceName());
+
+		Map<String,String> conf = client.getConfiguration();
+		Assert.assertEquals( 3, conf.size());
+		Assert.assertEquals( MessagingConstants.FACTORY_IN_MEMORY, conf.get( MessagingConstants.MESSAGING_TYPE_PROPERTY ));
+		Assert.assertEquals( "true", conf.get( MessagingConstants.IN_MEMORY_COPY_MESSAGES_PROPERTY ));
+		Assert.assertEquals( MessagingConstants.CODEC_BINARY, conf.get( MessagingConstants.MESSAGING_CODEC_PROPERTY ));
+	}
+
+
+	/**
+	 * A (basic) throughput benchmark with 1,000 simulated agents.
+	 * <p>
+	 * Every agent sends heart beats to the DM, and the DM sends a message to every agent.
+	 * Passing messages by reference should be much faster than copying them.
+	 * Measures are only logged.
+	 * </p>
+	 */
+	@Test
+	public void testThroughput_byReferenceVsCopies() throws Exception {
+
+		// Warm up
+		measureThroughput( null, 100, 5 );
+		measureThroughput( new JavaSerializationCodec(), 100, 5 );
+
+		long byReference = measureThroughput( null, 1000, 20 );
+		long withCopies = measureThroughput( new JavaSerializationCodec(), 1000, 20 );
+
+		Logger.getLogger( getClass().getName()).info(
+				"In-memory messaging throughput with 1,000 agents: " + byReference
+				+ " messages/s (by reference), " + withCopies + " messages/s (with copies)." );
+	}
+
+
+	private static long measureThroughput( JavaSerializationCodec copyCodec, int agentsCount, int rounds ) throws Exception {
+
+		InMemoryRoutingContext routingContext = new InMemoryRoutingContext();
+		routingContext.copyCodec = copyCodec;
+
+		InMemoryClient dmClient = new InMemoryClient( routingContext, RecipientKind.DM );
+		RoboconfMessageQueue dmQueue = new RoboconfMessageQueue();
+		dmClient.setMessageQueue( dmQueue );
+		dmClient.openConnection();
+		dmClient.subscribe( new MessagingContext( RecipientKind.DM, "domain", "app" ));
+
+		List<InMemoryClient> agentClients = new ArrayList<> ();
+		List<RoboconfMessageQueue> agentQueues = new ArrayList<> ();
+		List<MessagingContext> agentContexts = new ArrayList<> ();
+		for( int i=0; i<agentsCount; i++ ) {
+			InMemoryClient agentClient = new InMemoryClient( routingContext, RecipientKind.AGENTS );
+			agentClient.setOwnerProperties( RecipientKind.AGENTS, "domain", "app", "/vm" + i );
+
+			RoboconfMessageQueue agentQueue = new RoboconfMessageQueue();
+			agentClient.setMessageQueue( agentQueue );
+			agentClient.openConnection();
+
+			MessagingContext ctx = new MessagingContext( RecipientKind.AGENTS, "domain", "/vm" + i, "app" );
+			agentClient.subscribe( ctx );
+
+			agentClients.add( agentClient );
+			agentQueues.add( agentQueue );
+			agentContexts.add( ctx );
+		}
+
+		MessagingContext dmCtx = new MessagingContext( RecipientKind.DM, "domain", "app" );
+		Message toAgents = new MsgCmdAddInstance( new Instance( "inst" ));
+
+		long start = System.nanoTime();
+		for( int r=0; r<rounds; r++ ) {
+			for( int i=0; i<agentsCount; i++ ) {
+				agentClients.get( i ).publish( dmCtx, new MsgNotifHeartbeat( "app", "/vm" + i, "127.0.0.1" ));
+				dmClient.publish( agentContexts.get( i ), toAgents );
+			}
+
+			// Consume the messages
+			Assert.assertEquals( agentsCount, dmQueue.size());
+			dmQueue.clear();
+			for( RoboconfMessageQueue agentQueue : agentQueues )
+				agentQueue.clear();
+		}
+
+		long duration = Math.max( 1, System.nanoTime() - start );
+		return 2L * agentsCount * rounds * 1000000000L / duration;
 	}
 }
@@ -26,6 +26,7 @@
 package net.roboconf.messaging.api.internal.jmx;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Dictionary;
 
 import org.junit.Assert;
@@ -35,12 +36,18 @@ import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 
 import net.roboconf.core.model.beans.Application;
+import net.roboconf.messaging.api.codec.CompressingCodec;
+import net.roboconf.messaging.api.extensions.IConfirmingClient;
 import net.roboconf.messaging.api.extensions.IMessagingClient;
 import net.roboconf.messaging.api.extensions.MessagingContext;
 import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
+import net.roboconf.messaging.api.jmx.LatencyHistogram;
 import net.roboconf.messaging.api.jmx.MessagingApiMBean;
+import net.roboconf.messaging.api.jmx.PrioritizedMessageQueue;
 import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifAutonomic;
+import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
 import net.roboconf.messaging.api.utils.MessagingUtils;
 import net.roboconf.messaging.api.utils.OsgiHelper;
 
@@ -242,6 +249,165 @@ public class JmxWrapperForMessagingClientTest {
 	}
 
 
+	@Test
+	public void testProcessingLanes() {
+
+		IMessagingClient messagingClient = Mockito.mock( IMessagingClient.class );
+		JmxWrapperForMessagingClient client = new JmxWrapperForMessagingClient( messagingClient );
+
+		Assert.assertEquals( 0, client.getProcessingLanesCount());
+		Assert.assertEquals( 0, client.getProcessingLanesPendingMessages().length );
+		Assert.assertEquals( 0, client.getProcessingLanesReceivedMessagesCount().length );
+
+		RoboconfMessageQueue lane1 = new RoboconfMessageQueue( 5 );
+		RoboconfMessageQueue lane2 = new RoboconfMessageQueue( 5 );
+		lane1.add( Mockito.mock( Message.class ));
+		lane1.add( Mockito.mock( Message.class ));
+		lane2.add( Mockito.mock( Message.class ));
+		lane1.poll();
+
+		RoboconfMessageQueue queue = new RoboconfMessageQueue();
+		queue.setProcessingLanes( Arrays.asList( lane1, lane2 ));
+		client.setMessageQueue( queue );
+
+		Assert.assertEquals( 2, client.getProcessingLanesCount());
+		Assert.assertArrayEquals( new long[] { 1, 1 }, client.getProcessingLanesPendingMessages());
+		Assert.assertArrayEquals( new long[] { 2, 1 }, client.getProcessingLanesReceivedMessagesCount());
+
+		// Reset
+		client.reset();
+		Assert.assertEquals( 2, client.getProcessingLanesCount());
+		Assert.assertArrayEquals( new long[] { 0, 0 }, client.getProcessingLanesReceivedMessagesCount());
+	}
+
+
+	@Test
+	public void testPriorityLanes() {
+
+		IMessagingClient messagingClient = Mockito.mock( IMessagingClient.class );
+		JmxWrapperForMessagingClient client = new JmxWrapperForMessagingClient( messagingClient );
+
+		// Regular queue
+		client.setMessageQueue( new RoboconfMessageQueue());
+		Assert.assertEquals( 0, client.getPriorityLanes().length );
+		Assert.assertEquals( 0, client.getPriorityLanesPendingMessages().length );
+		Assert.assertEquals( 0, client.getPriorityLanesDroppedMessagesCount().length );
+		Assert.assertEquals( 0, client.getPriorityLanesCoalescedMessagesCount().length );
+		Assert.assertEquals( 0, client.getPriorityLanesAgeOfOldestMessage().length );
+
+		// Prioritized queue
+		PrioritizedMessageQueue queue = new PrioritizedMessageQueue( "bulk:1:drop-oldest" );
+		queue.add( new MsgNotifAutonomic( "app", "/vm", "event1", null ));
+		queue.add( new MsgNotifAutonomic( "app", "/vm", "event2", null ));
+		queue.add( new MsgEcho( "hi" ));
+		client.setMessageQueue( queue );
+
+		Assert.assertArrayEquals( new String[] { "CONTROL", "STATE", "BULK" }, client.getPriorityLanes());
+		Assert.assertArrayEquals( new long[] { 1, 0, 1 }, client.getPriorityLanesPendingMessages());
+		Assert.assertArrayEquals( new long[] { 0, 0, 1 }, client.getPriorityLanesDroppedMessagesCount());
+		Assert.assertArrayEquals( new long[] { 0, 0, 0 }, client.getPriorityLanesCoalescedMessagesCount());
+		Assert.assertEquals( 3, client.getPriorityLanesAgeOfOldestMessage().length );
+
+		client.reset();
+		Assert.assertArrayEquals( new long[] { 0, 0, 0 }, client.getPriorityLanesDroppedMessagesCount());
+	}
+
+
+	@Test
+	public void testLatencies() throws Exception {
+
+		IMessagingClient messagingClient = Mockito.mock( IMessagingClient.class );
+		JmxWrapperForMessagingClient client = new JmxWrapperForMessagingClient( messagingClient );
+		Assert.assertEquals( 0, client.getLatencyStatistics().length );
+		Assert.assertEquals( 0, client.findLatencyStatistics().size());
+
+		// Published messages are not modified (codecs stamp what they send)
+		MsgEcho msg = new MsgEcho( "hi" );
+		client.publish( Mockito.mock( MessagingContext.class ), msg );
+		Assert.assertEquals( 0, msg.getSendTimestamp());
+		msg.setSendTimestamp( System.currentTimeMillis());
+
+		// Received messages are measured
+		RoboconfMessageQueue queue = new RoboconfMessageQueue();
+		client.setMessageQueue( queue );
+		queue.add( msg );
+		queue.add( new MsgEcho( "no send time stamp" ));
+
+		Assert.assertEquals( 1, client.getLatencyStatistics().length );
+		Assert.assertTrue( client.getLatencyStatistics()[ 0 ].startsWith( "MsgEcho - TRANSIT: count=1," ));
+
+		client.reset();
+		Assert.assertEquals( 0, client.getLatencyStatistics().length );
+	}
+
+
+	@Test
+	public void testPublisherConfirms() throws Exception {
+
+		// Clients that do not support confirms
+		IMessagingClient messagingClient = Mockito.mock( IMessagingClient.class );
+		JmxWrapperForMessagingClient client = new JmxWrapperForMessagingClient( messagingClient );
+
+		Assert.assertEquals( 0, client.getConfirmedMessagesCount());
+		Assert.assertEquals( 0, client.getRejectedMessagesCount());
+		Assert.assertEquals( 0, client.getRepublishedMessagesCount());
+		Assert.assertEquals( 0, client.getLostMessagesCount());
+		Assert.assertEquals( 0, client.getPendingConfirmsCount());
+		Assert.assertEquals( 0, client.getConfirmThroughput());
+		Assert.assertArrayEquals( new long[ 5 ], client.getConfirmLatency());
+
+		// Clients that support them
+		LatencyHistogram histogram = new LatencyHistogram( 1000, 1 );
+		for( int i=0; i<10; i++ )
+			histogram.record( 100 );
+
+		messagingClient = Mockito.mock( IMessagingClient.class, Mockito.withSettings().extraInterfaces( IConfirmingClient.class ));
+		IConfirmingClient confirmingClient = (IConfirmingClient) messagingClient;
+		Mockito.when( confirmingClient.getConfirmedMessagesCount()).thenReturn( 10L );
+		Mockito.when( confirmingClient.getRejectedMessagesCount()).thenReturn( 3L );
+		Mockito.when( confirmingClient.getRepublishedMessagesCount()).thenReturn( 2L );
+		Mockito.when( confirmingClient.getLostMessagesCount()).thenReturn( 1L );
+		Mockito.when( confirmingClient.getPendingConfirmsCount()).thenReturn( 4 );
+		Mockito.when( confirmingClient.getConfirmLatencies()).thenReturn( histogram );
+
+		client = new JmxWrapperForMessagingClient( messagingClient );
+		Assert.assertEquals( 10, client.getConfirmedMessagesCount());
+		Assert.assertEquals( 3, client.getRejectedMessagesCount());
+		Assert.assertEquals( 2, client.getRepublishedMessagesCount());
+		Assert.assertEquals( 1, client.getLostMessagesCount());
+		Assert.assertEquals( 4, client.getPendingConfirmsCount());
+		Assert.assertEquals( 10, client.getConfirmThroughput());
+		Assert.assertEquals( 10, client.getConfirmLatency()[ 0 ]);
+	}
+
+
+	@Test
+	public void testCompressionStatistics() throws Exception {
+
+		JmxWrapperForMessagingClient client = new JmxWrapperForMessagingClient( Mockito.mock( IMessagingClient.class ));
+		client.reset();
+		Assert.assertEquals( 0, client.getCompressedMessagesCount());
+		Assert.assertEquals( 0, client.getUncompressedMessagesCount());
+		Assert.assertEquals( 0, client.getCompressionRatio());
+		Assert.assertEquals( 0, client.getCompressionTime());
+		Assert.assertEquals( 0, client.getDecompressedMessagesCount());
+		Assert.assertEquals( 0, client.getDecompressionTime());
+
+		CompressingCodec codec = new CompressingCodec( null, 100 );
+		codec.compress( new byte[ 10 ]);
+		CompressingCodec.decompress( codec.compress( new byte[ 1000 ]));
+
+		Assert.assertEquals( 1, client.getCompressedMessagesCount());
+		Assert.assertEquals( 1, client.getUncompressedMessagesCount());
+		Assert.assertEquals( 1, client.getDecompressedMessagesCount());
+		Assert.assertTrue( client.getCompressionRatio() < 10 );
+
+		client.reset();
+		Assert.assertEquals( 0, client.getCompressedMessagesCount());
+		Assert.assertEquals( 0, client.getDecompressedMessagesCount());
+	}
+
+
 	@Test
 	public void testSetOwnerProperties() {
 
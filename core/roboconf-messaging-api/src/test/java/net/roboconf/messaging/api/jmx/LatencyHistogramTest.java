@@ -0,0 +1,129 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.jmx;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+
+		// Every value must be lower or equal to the upper bound of its bucket,
+		// and greater than the upper bound of the previous bucket.
+		long[] values = { 0, 1, 15, 16, 17, 31, 32, 100, 1000, 123456, Long.MAX_VALUE / 3, Long.MAX_VALUE };
+		for( long value : values ) {
+			int bucket = LatencyHistogram.findBucket( value );
+			Assert.assertTrue( String.valueOf( value ), bucket < LatencyHistogram.BUCKET_COUNT );
+			Assert.assertTrue( String.valueOf( value ), value <= LatencyHistogram.findBucketUpperBound( bucket ));
+			if( bucket > 0 )
+				Assert.assertTrue( String.valueOf( value ), value > LatencyHistogram.findBucketUpperBound( bucket - 1 ));
+		}
+
+		// Precision
+		for( long value = 16; value < 1000000; value *= 3 ) {
+			long upperBound = LatencyHistogram.findBucketUpperBound( LatencyHistogram.findBucket( value ));
+			Assert.assertTrue( String.valueOf( value ), upperBound - value <= value / 8 );
+		}
+	}
+
+
+	@Test
+	public void testStatistics() {
+
+		LatencyHistogram histogram = new LatencyHistogram( 60000, 6 );
+		long[] stats = histogram.computeStatistics( 1000 );
+		Assert.assertArrayEquals( new long[] { 0, 0, 0, 0, 0 }, stats );
+
+		for( int i=1; i<=1000; i++ )
+			histogram.record( i, 1000 );
+
+		stats = histogram.computeStatistics( 1000 );
+		Assert.assertEquals( 1000, stats[ 0 ]);
+		Assert.assertEquals( 1000, stats[ 4 ]);
+
+		// p50, p95 and p99 (with the bucket precision)
+		assertApproximately( 500, stats[ 1 ]);
+		assertApproximately( 950, stats[ 2 ]);
+		assertApproximately( 990, stats[ 3 ]);
+	}
+
+
+	@Test
+	public void testSlidingWindow() {
+
+		LatencyHistogram histogram = new LatencyHistogram( 60000, 6 );
+		histogram.record( 5000, 0 );
+		histogram.record( 10, 30000 );
+
+		long[] stats = histogram.computeStatistics( 50000 );
+		Assert.assertEquals( 2, stats[ 0 ]);
+		Assert.assertEquals( 5000, stats[ 4 ]);
+
+		// The first value expired
+		stats = histogram.computeStatistics( 70000 );
+		Assert.assertEquals( 1, stats[ 0 ]);
+		Assert.assertEquals( 10, stats[ 4 ]);
+		Assert.assertEquals( 10, stats[ 1 ]);
+
+		// Slots are recycled
+		histogram.record( 20, 60000 );
+		stats = histogram.computeStatistics( 60000 );
+		Assert.assertEquals( 2, stats[ 0 ]);
+		Assert.assertEquals( 20, stats[ 4 ]);
+
+		// Everything expired
+		stats = histogram.computeStatistics( 200000 );
+		Assert.assertEquals( 0, stats[ 0 ]);
+
+		// Reset
+		histogram.record( 20, 200000 );
+		Assert.assertEquals( 1, histogram.computeStatistics( 200000 )[ 0 ]);
+		histogram.reset();
+		Assert.assertEquals( 0, histogram.computeStatistics( 200000 )[ 0 ]);
+	}
+
+
+	@Test
+	public void testNegativeValues() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record( -50 );
+
+		long[] stats = histogram.computeStatistics();
+		Assert.assertEquals( 1, stats[ 0 ]);
+		Assert.assertEquals( 0, stats[ 4 ]);
+	}
+
+
+	private static void assertApproximately( long expected, long value ) {
+		Assert.assertTrue( value + " vs " + expected, Math.abs( value - expected ) <= expected / 8 );
+	}
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.jmx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.roboconf.messaging.api.jmx.PrioritizedMessageQueue.OverflowPolicy;
+import net.roboconf.messaging.api.jmx.PrioritizedMessageQueue.PriorityLane;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifAutonomic;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdResynchronize;
+import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class PrioritizedMessageQueueTest {
+
+	@Test
+	public void testDefaultConfiguration() {
+
+		PrioritizedMessageQueue queue = new PrioritizedMessageQueue();
+		Assert.assertEquals( 1000, queue.getLaneCapacity( PriorityLane.CONTROL ));
+		Assert.assertEquals( OverflowPolicy.COALESCE, queue.getLaneOverflowPolicy( PriorityLane.CONTROL ));
+		Assert.assertEquals( 10000, queue.getLaneCapacity( PriorityLane.STATE ));
+		Assert.assertEquals( OverflowPolicy.BLOCK, queue.getLaneOverflowPolicy( PriorityLane.STATE ));
+		Assert.assertEquals( 1000, queue.getLaneCapacity( PriorityLane.BULK ));
+		Assert.assertEquals( OverflowPolicy.DROP_OLDEST, queue.getLaneOverflowPolicy( PriorityLane.BULK ));
+	}
+
+
+	@Test
+	public void testPartialConfiguration() {
+
+		PrioritizedMessageQueue queue = new PrioritizedMessageQueue( " bulk : 5 : Block " );
+		Assert.assertEquals( 1000, queue.getLaneCapacity( PriorityLane.CONTROL ));
+		Assert.assertEquals( OverflowPolicy.COALESCE, queue.getLaneOverflowPolicy( PriorityLane.CONTROL ));
+		Assert.assertEquals( 5, queue.getLaneCapacity( PriorityLane.BULK ));
+		Assert.assertEquals( OverflowPolicy.BLOCK, queue.getLaneOverflowPolicy( PriorityLane.BULK ));
+	}
+
+
+	@Test
+	public void testInvalidConfigurations() {
+
+		List<String> configurations = Arrays.asList(
+				"bulk:5",
+				"invalid:5:block",
+				"bulk:five:block",
+				"bulk:0:block",
+				"bulk:5:invalid" );
+
+		for( String configuration : configurations ) {
+			try {
+				new PrioritizedMessageQueue( configuration );
+				Assert.fail( "An exception was expected for " + configuration );
+
+			} catch( IllegalArgumentException e ) {
+				// nothing
+			}
+		}
+	}
+
+
+	@Test
+	public void testPriorities() throws Exception {
+
+		PrioritizedMessageQueue queue = new PrioritizedMessageQueue();
+		Message autonomic = new MsgNotifAutonomic( "app", "/vm", "event", null );
+		Message removed1 = new MsgNotifInstanceRemoved( "app", "/vm/server1" );
+		Message removed2 = new MsgNotifInstanceRemoved( "app", "/vm/server2" );
+		Message heartbeat = new MsgNotifHeartbeat( "app", "/vm", "127.0.0.1" );
+		Message echo = new MsgEcho( "hi" );
+		Message unknown = new MsgCmdResynchronize();
+
+		queue.addAll( Arrays.asList( autonomic, removed1, heartbeat, unknown, removed2, echo ));
+		Assert.assertEquals( 6, queue.size());
+		Assert.assertEquals( 6, queue.getReceivedMessagesCount());
+		Assert.assertEquals( 2, queue.getLaneSize( PriorityLane.CONTROL ));
+		Assert.assertEquals( 3, queue.getLaneSize( PriorityLane.STATE ));
+		Assert.assertEquals( 1, queue.getLaneSize( PriorityLane.BULK ));
+
+		List<Message> expected = Arrays.asList( heartbeat, echo, removed1, unknown, removed2, autonomic );
+		Assert.assertEquals( expected, new ArrayList<>( queue ));
+		Assert.assertEquals( heartbeat, queue.peek());
+
+		List<Message> taken = new ArrayList<> ();
+		taken.add( queue.take());
+		taken.add( queue.poll());
+		taken.add( queue.poll( 10, TimeUnit.MILLISECONDS ));
+		queue.drainTo( taken );
+
+		Assert.assertEquals( expected, taken );
+		Assert.assertTrue( queue.isEmpty());
+		Assert.assertNull( queue.poll());
+		Assert.assertNull( queue.poll( 10, TimeUnit.MILLISECONDS ));
+	}
+
+
+	@Test
+	public void testDropOldest() {
+
+		PrioritizedMessageQueue queue = new PrioritizedMessageQueue( "bulk:2:drop-oldest" );
+		Message msg1 = new MsgNotifAutonomic( "app", "/vm", "event1", null );
+		Message msg2 = new MsgNotifAutonomic( "app", "/vm", "event2", null );
+		Message msg3 = new MsgNotifAutonomic( "app", "/vm", "event3", null );
+
+		Assert.assertTrue( queue.offer( msg1 ));
+		Assert.assertTrue( queue.offer( msg2 ));
+		Assert.assertEquals( 0, queue.getLaneDroppedMessagesCount( PriorityLane.BULK ));
+
+		Assert.assertTrue( queue.offer( msg3 ));
+		Assert.assertEquals( 1, queue.getLaneDroppedMessagesCount( PriorityLane.BULK ));
+		Assert.assertEquals( Arrays.asList( msg2, msg3 ), new ArrayList<>( queue ));
+
+		queue.reset();
+		Assert.assertEquals( 0, queue.getLaneDroppedMessagesCount( PriorityLane.BULK ));
+		Assert.assertEquals( 2, queue.size());
+	}
+
+
+	@Test
+	public void testCoalesce() {
+
+		PrioritizedMessageQueue queue = new PrioritizedMessageQueue( "control:2:coalesce" );
+		Message hb1 = new MsgNotifHeartbeat( "app", "/vm1", "127.0.0.1" );
+		Message hb2 = new MsgNotifHeartbeat( "app", "/vm2", "127.0.0.1" );
+		Message hb3 = new MsgNotifHeartbeat( "app", "/vm1", "127.0.0.2" );
+
+		Assert.assertTrue( queue.offer( hb1 ));
+		Assert.assertTrue( queue.offer( hb2 ));
+		Assert.assertTrue( queue.offer( hb3 ));
+
+		// hb3 replaced hb1, and it was appended to the lane
+		Assert.assertEquals( Arrays.asList( hb2, hb3 ), new ArrayList<>( queue ));
+		Assert.assertEquals( 1, queue.getLaneCoalescedMessagesCount( PriorityLane.CONTROL ));
+		Assert.assertEquals( 0, queue.getLaneDroppedMessagesCount( PriorityLane.CONTROL ));
+		Assert.assertEquals( 3, queue.getReceivedMessagesCount());
+
+		// Once taken, a message cannot be coalesced anymore
+		Assert.assertEquals( hb2, queue.poll());
+		Assert.assertEquals( hb3, queue.poll());
+
+		Message hb4 = new MsgNotifHeartbeat( "app", "/vm1", "127.0.0.3" );
+		Assert.assertTrue( queue.offer( hb4 ));
+		Assert.assertEquals( Arrays.asList( hb4 ), new ArrayList<>( queue ));
+		Assert.assertEquals( 1, queue.getLaneCoalescedMessagesCount( PriorityLane.CONTROL ));
+
+		// Removed messages cannot be coalesced either
+		Assert.assertTrue( queue.remove( hb4 ));
+		Assert.assertTrue( queue.offer( hb1 ));
+		Assert.assertEquals( Arrays.asList( hb1 ), new ArrayList<>( queue ));
+		Assert.assertEquals( 1, queue.getLaneCoalescedMessagesCount( PriorityLane.CONTROL ));
+	}
+
+
+	@Test
+	public void testBulkOperationsDoNotUseTheInheritedStorage() {
+
+		PrioritizedMessageQueue queue = new PrioritizedMessageQueue();
+		Message hb = new MsgNotifHeartbeat( "app", "/vm1", "127.0.0.1" );
+		Message msg1 = new MsgCmdResynchronize();
+		Message msg2 = new MsgNotifAutonomic( "app", "/vm", "event", null );
+
+		Assert.assertTrue( queue.offer( msg2 ));
+		Assert.assertTrue( queue.offer( msg1 ));
+		Assert.assertTrue( queue.offer( hb ));
+
+		List<Message> visited = new ArrayList<> ();
+		for( Message msg : queue )
+			visited.add( msg );
+
+		Assert.assertEquals( Arrays.asList( hb, msg1, msg2 ), visited );
+
+		for( Iterator<Message> it = queue.iterator(); it.hasNext(); ) {
+			if( it.next() == msg1 )
+				it.remove();
+		}
+
+		Assert.assertEquals( Arrays.asList( hb, msg2 ), new ArrayList<>( queue ));
+		Assert.assertTrue( queue.retainAll( Arrays.asList( hb )));
+		Assert.assertEquals( Arrays.asList( hb ), new ArrayList<>( queue ));
+		Assert.assertFalse( queue.removeAll( Arrays.asList( msg1, msg2 )));
+		Assert.assertTrue( queue.removeAll( Arrays.asList( hb )));
+		Assert.assertEquals( 0, queue.size());
+	}
+
+
+	@Test
+	public void testDiscardedMessagesAreHandled() {
+
+		final List<Message> handledMessages = new ArrayList<> ();
+		PrioritizedMessageQueue queue = new PrioritizedMessageQueue( "control:2:coalesce, bulk:1:drop-oldest" );
+		queue.addHandledMessageListener( new IHandledMessageListener() {
+			@Override
+			public void messageWasHandled( Message message ) {
+				handledMessages.add( message );
+			}
+		});
+
+		// Coalesced messages
+		Message hb1 = new MsgNotifHeartbeat( "app", "/vm1", "127.0.0.1" );
+		Message hb2 = new MsgNotifHeartbeat( "app", "/vm1", "127.0.0.2" );
+		Assert.assertTrue( queue.offer( hb1 ));
+		Assert.assertTrue( queue.offer( hb2 ));
+		Assert.assertEquals( Arrays.asList( hb1 ), handledMessages );
+
+		// Dropped messages
+		Message msg1 = new MsgNotifAutonomic( "app", "/vm", "event1", null );
+		Message msg2 = new MsgNotifAutonomic( "app", "/vm", "event2", null );
+		Assert.assertTrue( queue.offer( msg1 ));
+		Assert.assertTrue( queue.offer( msg2 ));
+		Assert.assertEquals( Arrays.asList( hb1, msg1 ), handledMessages );
+	}
+
+
+	@Test
+	public void testBlock() throws Exception {
+
+		final PrioritizedMessageQueue queue = new PrioritizedMessageQueue( "state:1:block" );
+		Assert.assertTrue( queue.offer( new MsgCmdResynchronize()));
+		Assert.assertEquals( 2000, queue.remainingCapacity());
+
+		// A time out is respected
+		Assert.assertFalse( queue.offer( new MsgCmdResynchronize(), 50, TimeUnit.MILLISECONDS ));
+		Assert.assertEquals( 1, queue.size());
+
+		// Other lanes are not impacted
+		Assert.assertTrue( queue.offer( new MsgEcho( "hi" )));
+		Assert.assertEquals( 2, queue.size());
+
+		// The producer waits until there is room
+		final AtomicBoolean added = new AtomicBoolean( false );
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				added.set( queue.offer( new MsgCmdResynchronize()));
+			}
+		};
+
+		producer.start();
+		Thread.sleep( 100 );
+		Assert.assertFalse( added.get());
+
+		Assert.assertTrue( queue.take() instanceof MsgEcho );
+		Thread.sleep( 100 );
+		Assert.assertFalse( added.get());
+
+		Assert.assertTrue( queue.take() instanceof MsgCmdResynchronize );
+		producer.join( 2000 );
+		Assert.assertTrue( added.get());
+		Assert.assertEquals( 1, queue.size());
+	}
+
+
+	@Test
+	public void testAgeOfOldestMessage() throws Exception {
+
+		PrioritizedMessageQueue queue = new PrioritizedMessageQueue();
+		Assert.assertEquals( 0, queue.getLaneAgeOfOldestMessage( PriorityLane.STATE ));
+
+		queue.add( new MsgCmdResynchronize());
+		Thread.sleep( 50 );
+		Assert.assertTrue( queue.getLaneAgeOfOldestMessage( PriorityLane.STATE ) >= 40 );
+		Assert.assertEquals( 0, queue.getLaneAgeOfOldestMessage( PriorityLane.BULK ));
+	}
+
+
+	@Test
+	public void testRemoveAndIterator() {
+
+		PrioritizedMessageQueue queue = new PrioritizedMessageQueue();
+		Message msg1 = new MsgEcho( "1" );
+		Message msg2 = new MsgCmdResynchronize();
+		Message msg3 = new MsgNotifAutonomic( "app", "/vm", "event", null );
+		queue.addAll( Arrays.asList( msg1, msg2, msg3 ));
+
+		Assert.assertTrue( queue.contains( msg2 ));
+		Assert.assertTrue( queue.remove( msg2 ));
+		Assert.assertFalse( queue.contains( msg2 ));
+		Assert.assertFalse( queue.remove( msg2 ));
+
+		Iterator<Message> it = queue.iterator();
+		Assert.assertEquals( msg1, it.next());
+		it.remove();
+		Assert.assertEquals( Arrays.asList( msg3 ), Arrays.asList( queue.toArray()));
+
+		queue.clear();
+		Assert.assertEquals( 0, queue.size());
+	}
+
+
+	@Test( expected = RuntimeException.class )
+	public void testPutIsForbidden() throws Exception {
+		new PrioritizedMessageQueue().put( new MsgCmdResynchronize());
+	}
+}
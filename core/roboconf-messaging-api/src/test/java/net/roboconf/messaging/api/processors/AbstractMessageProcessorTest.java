@@ -25,11 +25,24 @@
 
 package net.roboconf.messaging.api.processors;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.junit.Assert;
 import net.roboconf.messaging.api.AbstractMessageProcessor;
 import net.roboconf.messaging.api.MessagingConstants;
 import net.roboconf.messaging.api.business.IDmClient;
+import net.roboconf.messaging.api.jmx.IHandledMessageListener;
+import net.roboconf.messaging.api.jmx.LatencyStatistics;
+import net.roboconf.messaging.api.jmx.MessageLatencyTracker.LatencyStage;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifAutonomic;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdResynchronize;
 
 import org.junit.After;
@@ -100,6 +113,165 @@ public class AbstractMessageProcessorTest {
 	}
 
 
+	@Test
+	public void testProcessingLanes() throws Exception {
+
+		final Map<String,List<Integer>> keyToProcessedIndexes = new ConcurrentHashMap<> ();
+		final Set<String> threadNames = Collections.newSetFromMap( new ConcurrentHashMap<String,Boolean> ());
+		this.processor = new AbstractMessageProcessor<IDmClient>( "test" ) {
+
+			@Override
+			protected void processMessage( Message message ) {
+
+				MsgNotifAutonomic msg = (MsgNotifAutonomic) message;
+				threadNames.add( Thread.currentThread().getName());
+				keyToProcessedIndexes.get( msg.getScopedInstancePath()).add( Integer.valueOf( msg.getEventName()));
+			}
+
+			@Override
+			protected String findPartitionKey( Message message ) {
+				return ((MsgNotifAutonomic) message).getScopedInstancePath();
+			}
+		};
+
+		this.processor.setProcessingLanes( 4, 3 );
+		Assert.assertEquals( 4, this.processor.getMessageQueue().getProcessingLanes().size());
+
+		final int keys = 20, messagesPerKey = 50;
+		for( int k=0; k<keys; k++ )
+			keyToProcessedIndexes.put( "/vm" + k, Collections.synchronizedList( new ArrayList<Integer> ()));
+
+		this.processor.start();
+		for( int i=0; i<messagesPerKey; i++ ) {
+			for( int k=0; k<keys; k++ )
+				this.processor.storeMessage( new MsgNotifAutonomic( "app", "/vm" + k, String.valueOf( i ), null ));
+		}
+
+		// Wait for the processing to complete
+		for( int i=0; i<50; i++ ) {
+			if( countProcessed( keyToProcessedIndexes ) == keys * messagesPerKey )
+				break;
+
+			Thread.sleep( 100 );
+		}
+
+		Assert.assertEquals( keys * messagesPerKey, countProcessed( keyToProcessedIndexes ));
+
+		// The order must be preserved for every key
+		for( List<Integer> indexes : keyToProcessedIndexes.values()) {
+			for( int i=0; i<messagesPerKey; i++ )
+				Assert.assertEquals( i, indexes.get( i ).intValue());
+		}
+
+		// Messages were processed by the lanes, not by the main thread
+		Assert.assertFalse( threadNames.contains( "test" ));
+		Assert.assertTrue( threadNames.size() > 1 );
+
+		long received = 0;
+		for( RoboconfMessageQueue lane : this.processor.getMessageQueue().getProcessingLanes())
+			received += lane.getReceivedMessagesCount();
+
+		Assert.assertEquals( keys * messagesPerKey, received );
+	}
+
+
+	@Test
+	public void testProcessingLanes_cannotBeChangedOnceStarted() throws Exception {
+
+		this.processor.start();
+		Thread.sleep( 100 );
+
+		this.processor.setProcessingLanes( 4, 3 );
+		Assert.assertEquals( 0, this.processor.getMessageQueue().getProcessingLanes().size());
+	}
+
+
+	@Test
+	public void testLatencies() throws Exception {
+
+		this.processor = new AbstractMessageProcessor<IDmClient>( "test" ) {
+			@Override
+			protected void processMessage( Message message ) {
+				try {
+					Thread.sleep( 20 );
+
+				} catch( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		this.processor.storeMessage( new MsgCmdResynchronize());
+		this.processor.storeMessage( new MsgCmdResynchronize());
+		this.processor.start();
+		Thread.sleep( 300 );
+
+		Map<LatencyStage,LatencyStatistics> stageToStats = new HashMap<> ();
+		for( LatencyStatistics stats : this.processor.getMessageQueue().getLatencyTracker().computeStatistics()) {
+			Assert.assertEquals( "MsgCmdResynchronize", stats.getMessageType());
+			stageToStats.put( stats.getStage(), stats );
+		}
+
+		// No send time stamp => no transit time
+		Assert.assertEquals( 2, stageToStats.size());
+		Assert.assertEquals( 2, stageToStats.get( LatencyStage.QUEUE ).getCount());
+		Assert.assertEquals( 2, stageToStats.get( LatencyStage.PROCESSING ).getCount());
+		Assert.assertTrue( stageToStats.get( LatencyStage.PROCESSING ).getP50() >= 15000 );
+
+		// The second message waited for the first one to be processed
+		Assert.assertTrue( stageToStats.get( LatencyStage.QUEUE ).getMax() >= 15000 );
+	}
+
+
+	@Test
+	public void testHandledMessages() throws Exception {
+
+		final List<Message> handledMessages = Collections.synchronizedList( new ArrayList<Message> ());
+		this.processor = new AbstractMessageProcessor<IDmClient>( "test" ) {
+			@Override
+			protected void processMessage( Message message ) {
+				if( message instanceof MsgNotifAutonomic )
+					throw new RuntimeException( "for test" );
+			}
+
+			@Override
+			protected String findPartitionKey( Message message ) {
+				return message.getClass().getSimpleName();
+			}
+		};
+
+		this.processor.getMessageQueue().addHandledMessageListener( new IHandledMessageListener() {
+			@Override
+			public void messageWasHandled( Message message ) {
+				handledMessages.add( message );
+			}
+		});
+
+		// Messages are handled even if their processing failed
+		this.processor.setProcessingLanes( 2, 10 );
+		Message msg1 = new MsgCmdResynchronize();
+		Message msg2 = new MsgNotifAutonomic( "app", "/vm", "event", null );
+		this.processor.storeMessage( msg1 );
+		this.processor.storeMessage( msg2 );
+		this.processor.start();
+		Thread.sleep( 200 );
+
+		Assert.assertEquals( 2, handledMessages.size());
+		Assert.assertTrue( handledMessages.contains( msg1 ));
+		Assert.assertTrue( handledMessages.contains( msg2 ));
+	}
+
+
+	private static int countProcessed( Map<String,List<Integer>> keyToProcessedIndexes ) {
+
+		int result = 0;
+		for( List<Integer> indexes : keyToProcessedIndexes.values())
+			result += indexes.size();
+
+		return result;
+	}
+
+
 	/**
 	 * @author Vincent Zurczak - Linagora
 	 */
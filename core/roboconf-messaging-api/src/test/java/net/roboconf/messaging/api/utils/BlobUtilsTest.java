@@ -0,0 +1,103 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.api.utils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.roboconf.core.utils.Utils;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class BlobUtilsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+
+	@Test
+	public void testComputeDigest() {
+
+		// Reference value for SHA-256( "abc" )
+		Assert.assertEquals(
+				"ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+				BlobUtils.computeDigest( "abc".getBytes( StandardCharsets.UTF_8 )));
+
+		Assert.assertEquals(
+				BlobUtils.computeDigest( new byte[ 10 ]),
+				BlobUtils.computeDigest( new byte[ 10 ]));
+
+		Assert.assertNotEquals(
+				BlobUtils.computeDigest( new byte[ 10 ]),
+				BlobUtils.computeDigest( new byte[ 11 ]));
+	}
+
+
+	@Test
+	public void testComputeDigests() {
+
+		Assert.assertEquals( 0, BlobUtils.computeDigests( null ).size());
+
+		Map<String,byte[]> resources = new HashMap<> ();
+		resources.put( "f1", new byte[ 2 ]);
+		resources.put( "dir/f2", new byte[ 2 ]);
+		resources.put( "f3", new byte[ 3 ]);
+
+		Map<String,String> digests = BlobUtils.computeDigests( resources );
+		Assert.assertEquals( 3, digests.size());
+		Assert.assertEquals( digests.get( "f1" ), digests.get( "dir/f2" ));
+		Assert.assertNotEquals( digests.get( "f1" ), digests.get( "f3" ));
+	}
+
+
+	@Test
+	public void testReadContent() throws Exception {
+
+		File f = this.folder.newFile();
+		Utils.writeStringInto( "some content", f );
+		Assert.assertEquals( "some content", new String( BlobUtils.readContent( f ), StandardCharsets.UTF_8 ));
+	}
+
+
+	@Test
+	public void testIsValidDigest() {
+
+		Assert.assertTrue( BlobUtils.isValidDigest( BlobUtils.computeDigest( new byte[ 0 ])));
+		Assert.assertFalse( BlobUtils.isValidDigest( null ));
+		Assert.assertFalse( BlobUtils.isValidDigest( "" ));
+		Assert.assertFalse( BlobUtils.isValidDigest( "../../etc/passwd" ));
+		Assert.assertFalse( BlobUtils.isValidDigest( BlobUtils.computeDigest( new byte[ 0 ]).toUpperCase()));
+		Assert.assertFalse( BlobUtils.isValidDigest( BlobUtils.computeDigest( new byte[ 0 ]) + "0" ));
+	}
+}
@@ -42,6 +42,8 @@ import net.roboconf.core.model.beans.Component;
 import net.roboconf.core.model.beans.Instance;
 import net.roboconf.core.model.beans.Instance.InstanceStatus;
 import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.messaging.api.codec.IMessageCodec;
+import net.roboconf.messaging.api.codec.JavaSerializationCodec;
 import net.roboconf.messaging.api.messages.Message;
 import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdAddImport;
 import net.roboconf.messaging.api.messages.from_agent_to_agent.MsgCmdRemoveImport;
@@ -50,6 +52,7 @@ import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifAutonomic;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifHeartbeat;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceChanged;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogChunk;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
 import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifMachineDown;
 import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdAddInstance;
@@ -107,6 +110,17 @@ public class SerializationUtilsTest {
 	}
 
 
+	@Test
+	public void testMessage_logChunk() throws Exception {
+
+		MsgNotifLogChunk msg = new MsgNotifLogChunk( "app1", "/vm", "karaf.log", 0, new byte[ 0 ], false, true );
+		checkBasics( msg, MsgNotifLogChunk.class );
+
+		msg = new MsgNotifLogChunk( "app1", "/vm", "roboconf.log", 2048, "test".getBytes( "UTF-8" ), true, false );
+		checkBasics( msg, MsgNotifLogChunk.class );
+	}
+
+
 	@Test
 	public void testMessage_machineDown() throws Exception {
 
@@ -206,6 +220,9 @@ public class SerializationUtilsTest {
 
 		MsgCmdGatherLogs msg = new MsgCmdGatherLogs();
 		checkBasics( msg, MsgCmdGatherLogs.class );
+
+		msg = new MsgCmdGatherLogs( 1024, 4096, 12L, true );
+		checkBasics( msg, MsgCmdGatherLogs.class );
 	}
 
 
@@ -313,6 +330,19 @@ public class SerializationUtilsTest {
 	 * @throws Exception
 	 */
 	public static <T extends Message> T checkBasics( Message msg, Class<T> clazz ) throws Exception {
+		return checkBasics( msg, clazz, new JavaSerializationCodec());
+	}
+
+
+	/**
+	 * Encodes, decodes and compares messages.
+	 * @param msg
+	 * @param clazz
+	 * @param codec
+	 * @return
+	 * @throws Exception
+	 */
+	public static <T extends Message> T checkBasics( Message msg, Class<T> clazz, IMessageCodec codec ) throws Exception {
 
 		String prefix = "Class " + clazz.getSimpleName();
 		Assert.assertTrue(
@@ -320,7 +350,8 @@ public class SerializationUtilsTest {
 				clazz.isAssignableFrom( msg.getClass()));
 
 		// Write and read
-		byte[] bytes = SerializationUtils.serializeObject( msg );
+		byte[] bytes = codec.encode( msg );
+		Assert.assertTrue( prefix, codec.accepts( bytes ));
 		Message newMsg = SerializationUtils.deserializeObject( bytes );
 
 		// Compare classes
@@ -333,6 +364,10 @@ public class SerializationUtilsTest {
 					|| m.getParameterTypes().length != 0 )
 				continue;
 
+			// Codecs stamp what they send
+			if( "getSendTimestamp".equals( m.getName()))
+				continue;
+
 			Object expectedValue = m.invoke( msg );
 			Object value = m.invoke( newMsg );
 
@@ -349,6 +384,11 @@ public class SerializationUtilsTest {
 				}
 			}
 
+			// So do arrays of bytes
+			else if( value instanceof byte[] ) {
+				Assert.assertArrayEquals( prefix + ": invalid match for " + m.getName() + ".", (byte[]) expectedValue, (byte[]) value );
+			}
+
 			// Other objects are compared directly
 			else {
 				Assert.assertEquals( prefix + ": invalid match for " + m.getName() + ".", expectedValue, value );
@@ -41,6 +41,7 @@ import java.util.logging.Logger;
 
 import net.roboconf.core.utils.Utils;
 import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.codec.CodecUtils;
 import net.roboconf.messaging.api.extensions.AbstractRoutingClient.RoutingContext;
 import net.roboconf.messaging.api.extensions.IMessagingClient;
 import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
@@ -89,8 +90,8 @@ public class HttpClientFactory implements IMessagingClientFactory {
 	BundleContext bundleContext;
 	HttpService httpService;
 
-	String httpServerIp;
-	int httpPort;
+	String httpServerIp, codecName;
+	int httpPort, compressionThreshold;
 
 
 
@@ -131,6 +132,32 @@ public class HttpClientFactory implements IMessagingClientFactory {
 	}
 
 
+	public synchronized void setCodecName( final String codecName ) {
+		this.codecName = codecName;
+		this.dmClient.setCodecName( codecName );
+		this.logger.finer( "Message codec set to " + this.codecName );
+	}
+
+
+	public synchronized void setCompressionThreshold( final int compressionThreshold ) {
+		this.compressionThreshold = compressionThreshold;
+		this.dmClient.setCompressionThreshold( compressionThreshold );
+		this.logger.finer( "Compression threshold set to " + this.compressionThreshold );
+	}
+
+
+	public synchronized void setOutboundQueueCapacity( final int outboundQueueCapacity ) {
+		this.dmClient.setOutboundQueueCapacity( outboundQueueCapacity );
+		this.logger.finer( "Capacity of outbound queues set to " + outboundQueueCapacity );
+	}
+
+
+	public synchronized void setSlowConsumerPolicy( final String slowConsumerPolicy ) {
+		this.dmClient.setSlowConsumerPolicy( slowConsumerPolicy );
+		this.logger.finer( "Slow consumer policy set to " + slowConsumerPolicy );
+	}
+
+
 	public HttpDmClient getDmClient() {
 		return this.dmClient;
 	}
@@ -217,7 +244,7 @@ public class HttpClientFactory implements IMessagingClientFactory {
 
 		} else {
 			synchronized( this ) {
-				client = new HttpAgentClient( parent, this.httpServerIp, this.httpPort );
+				client = new HttpAgentClient( parent, this.httpServerIp, this.httpPort, this.codecName, this.compressionThreshold );
 			}
 
 			this.agentClients.add((HttpAgentClient) client);
@@ -244,6 +271,8 @@ public class HttpClientFactory implements IMessagingClientFactory {
 			String ip = Utils.getValue( configuration, HTTP_SERVER_IP, DEFAULT_IP );
 			String portAS = configuration.get( HttpConstants.HTTP_SERVER_PORT );
 			int port = portAS == null ? HttpConstants.DEFAULT_PORT : Integer.parseInt( portAS );
+			String codec = configuration.get( MessagingConstants.MESSAGING_CODEC_PROPERTY );
+			int threshold = CodecUtils.findCompressionThreshold( configuration );
 
 			// Avoid unnecessary (and potentially problematic) reconfiguration if nothing has changed.
 			// First we detect for changes, and set the parameters accordingly.
@@ -258,6 +287,16 @@ public class HttpClientFactory implements IMessagingClientFactory {
 					this.httpPort = port;
 					hasChanged = true;
 				}
+
+				if( ! Objects.equals( this.codecName, codec )) {
+					this.codecName = codec;
+					hasChanged = true;
+				}
+
+				if( this.compressionThreshold != threshold ) {
+					this.compressionThreshold = threshold;
+					hasChanged = true;
+				}
 			}
 
 			// Then, if changes has occurred, we reconfigure the factory. This will invalidate every created client.
@@ -26,21 +26,17 @@
 package net.roboconf.messaging.http.internal;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.logging.Logger;
-
-import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 
 import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.codec.IMessageCodec;
+import net.roboconf.messaging.api.jmx.PrioritizedMessageQueue.PriorityLane;
 import net.roboconf.messaging.api.messages.Message;
-import net.roboconf.messaging.api.utils.SerializationUtils;
 import net.roboconf.messaging.http.HttpConstants;
+import net.roboconf.messaging.http.internal.messages.HttpMessage;
+import net.roboconf.messaging.http.internal.messages.HttpSerializationUtils;
+import net.roboconf.messaging.http.internal.sockets.SessionOutboundQueue;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -61,11 +57,39 @@ public final class HttpUtils {
 	 * @return the messaging configuration for the given parameters.
 	 */
 	public static Map<String,String> httpMessagingConfiguration( String ip, int port ) {
+		return httpMessagingConfiguration( ip, port, null );
+	}
+
+
+	/**
+	 * Return a HTTP messaging configuration for the given parameters.
+	 * @param agentPort the HTTP server port of the agent.. May be {@code null}.
+	 * @param codecName the name of the message codec (may be {@code null})
+	 * @return the messaging configuration for the given parameters.
+	 */
+	public static Map<String,String> httpMessagingConfiguration( String ip, int port, String codecName ) {
+		return httpMessagingConfiguration( ip, port, codecName, 0 );
+	}
+
+
+	/**
+	 * Return a HTTP messaging configuration for the given parameters.
+	 * @param agentPort the HTTP server port of the agent.. May be {@code null}.
+	 * @param codecName the name of the message codec (may be {@code null})
+	 * @param compressionThreshold the size from which messages are compressed (0 or negative if disabled)
+	 * @return the messaging configuration for the given parameters.
+	 */
+	public static Map<String,String> httpMessagingConfiguration( String ip, int port, String codecName, int compressionThreshold ) {
 
 		final Map<String,String> result = new LinkedHashMap<>();
 		result.put( MessagingConstants.MESSAGING_TYPE_PROPERTY, HttpConstants.FACTORY_HTTP );
 		result.put( HttpConstants.HTTP_SERVER_IP, ip == null ? HttpConstants.DEFAULT_IP : ip );
 		result.put( HttpConstants.HTTP_SERVER_PORT, "" + (port <= 0 ? HttpConstants.DEFAULT_PORT : port));
+		if( codecName != null )
+			result.put( MessagingConstants.MESSAGING_CODEC_PROPERTY, codecName );
+
+		if( compressionThreshold > 0 )
+			result.put( MessagingConstants.MESSAGING_COMPRESSION_THRESHOLD_PROPERTY, String.valueOf( compressionThreshold ));
 
 		return result;
 	}
@@ -76,41 +100,38 @@ public final class HttpUtils {
 	 * <p>
 	 * Asynchronous sending is necessary since we may have several threads that
 	 * use the same messaging client. Blocking sending may result in issues such
-	 * as #598.
+	 * as #598. Besides, a slow remote end-point must not stall the other ones.
+	 * </p>
+	 * <p>
+	 * The message is serialized and put in the outbound queue of the session.
+	 * It will be written as soon as the previous messages have been sent.
 	 * </p>
 	 *
 	 * @param message the message to send
-	 * @param remoteEndpoint the remote end-point
-	 * @throws IOException if something went wrong
+	 * @param outboundQueue the outbound queue of the remote end-point
+	 * @param codec the codec to use to serialize the message
+	 * @return true if the message was enqueued, false if it was dropped (slow consumer)
+	 * @throws IOException if the message could not be serialized
 	 */
-	public static void sendAsynchronously( Message message, RemoteEndpoint remoteEndpoint )
+	public static boolean sendAsynchronously( Message message, SessionOutboundQueue outboundQueue, IMessageCodec codec )
 			throws IOException {
 
-		Future<Void> fut = null;
-		Exception exception = null;
-		try {
-			byte[] rawData = SerializationUtils.serializeObject( message );
-			ByteBuffer data = ByteBuffer.wrap( rawData );
-			fut = remoteEndpoint.sendBytesByFuture( data );
-
-			// Wait for completion (timeout)
-			fut.get( 8, TimeUnit.SECONDS );
+		byte[] rawData = HttpSerializationUtils.serializeObject( message, codec );
+		return outboundQueue.enqueue( rawData, isBulkMessage( message ));
+	}
 
-		} catch( ExecutionException | InterruptedException e ) {
-			exception = e;
 
-		} catch( TimeoutException e ) {
-			exception = e;
-			final Logger logger = Logger.getLogger( HttpUtils.class.getName());
-			logger.warning( "A message could not be sent to a remote end-point (HTTP messaging). Sending timed out." );
+	/**
+	 * Determines whether a message can be dropped when a consumer is too slow.
+	 * @param message a message (possibly wrapped in a HTTP message)
+	 * @return true if it is a bulk message, false otherwise
+	 */
+	public static boolean isBulkMessage( Message message ) {
 
-			// FIXME: should we send the message once again?
-			if( fut != null )
-				fut.cancel(true);
+		Message msg = message;
+		if( msg instanceof HttpMessage )
+			msg = ((HttpMessage) msg).getMessage();
 
-		} finally {
-			if( exception != null )
-				throw new IOException( exception );
-		}
+		return PriorityLane.which( msg ) == PriorityLane.BULK;
 	}
 }
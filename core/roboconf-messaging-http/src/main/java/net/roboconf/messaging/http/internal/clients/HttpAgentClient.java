@@ -37,6 +37,8 @@ import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 
 import net.roboconf.core.model.beans.Application;
+import net.roboconf.messaging.api.codec.CodecUtils;
+import net.roboconf.messaging.api.codec.IMessageCodec;
 import net.roboconf.messaging.api.extensions.AbstractRoutingClient;
 import net.roboconf.messaging.api.extensions.IMessagingClient;
 import net.roboconf.messaging.api.extensions.MessagingContext;
@@ -49,6 +51,8 @@ import net.roboconf.messaging.http.internal.HttpUtils;
 import net.roboconf.messaging.http.internal.messages.HttpMessage;
 import net.roboconf.messaging.http.internal.messages.SubscriptionMessage;
 import net.roboconf.messaging.http.internal.sockets.AgentWebSocket;
+import net.roboconf.messaging.http.internal.sockets.SessionOutboundQueue;
+import net.roboconf.messaging.http.internal.sockets.SessionOutboundQueue.SlowConsumerPolicy;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -59,12 +63,16 @@ public class HttpAgentClient implements IMessagingClient {
 	private final WeakReference<ReconfigurableClient<?>> reconfigurable;
 	private final String dmIp;
 	private final int dmPort;
+	private final String codecName;
+	private final int compressionThreshold;
+	private final IMessageCodec codec;
 
 	private RoboconfMessageQueue messageQueue;
 	private String applicationName, scopedInstancePath;
 
 	private AgentWebSocket socket;
 	private Session clientSession;
+	private SessionOutboundQueue outboundQueue;
 	private WebSocketClient client;
 
 
@@ -76,9 +84,43 @@ public class HttpAgentClient implements IMessagingClient {
 	 * @param dmPort
 	 */
 	public HttpAgentClient( ReconfigurableClient<?> reconfigurable, String dmIp, int dmPort ) {
+		this( reconfigurable, dmIp, dmPort, null );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param reconfigurable
+	 * @param dmIp
+	 * @param dmPort
+	 * @param codecName the name of the codec to use to serialize messages (can be null)
+	 */
+	public HttpAgentClient( ReconfigurableClient<?> reconfigurable, String dmIp, int dmPort, String codecName ) {
+		this( reconfigurable, dmIp, dmPort, codecName, 0 );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param reconfigurable
+	 * @param dmIp
+	 * @param dmPort
+	 * @param codecName the name of the codec to use to serialize messages (can be null)
+	 * @param compressionThreshold the size from which messages are compressed (0 or negative to disable compression)
+	 */
+	public HttpAgentClient(
+			ReconfigurableClient<?> reconfigurable,
+			String dmIp,
+			int dmPort,
+			String codecName,
+			int compressionThreshold ) {
+
 		this.reconfigurable = new WeakReference<ReconfigurableClient<?>>( reconfigurable );
 		this.dmIp = dmIp;
 		this.dmPort = dmPort;
+		this.codecName = codecName;
+		this.compressionThreshold = compressionThreshold;
+		this.codec = CodecUtils.findCodec( codecName, compressionThreshold );
 	}
 
 
@@ -127,6 +169,10 @@ public class HttpAgentClient implements IMessagingClient {
 
 			Future<Session> fut = this.client.connect( this.socket, dmUri, request );
 			this.clientSession = fut.get();
+			this.outboundQueue = new SessionOutboundQueue(
+					this.clientSession,
+					SessionOutboundQueue.DEFAULT_CAPACITY,
+					SlowConsumerPolicy.DROP_BULK );
 
 		} catch( Exception e ) {
 			throw new IOException( e );
@@ -156,7 +202,7 @@ public class HttpAgentClient implements IMessagingClient {
 
 	@Override
 	public Map<String,String> getConfiguration() {
-		return HttpUtils.httpMessagingConfiguration( this.dmIp, this.dmPort );
+		return HttpUtils.httpMessagingConfiguration( this.dmIp, this.dmPort, this.codecName, this.compressionThreshold );
 	}
 
 
@@ -165,9 +211,7 @@ public class HttpAgentClient implements IMessagingClient {
 
 		String ownerId = AbstractRoutingClient.buildOwnerId( RecipientKind.AGENTS, this.applicationName, this.scopedInstancePath );
 		this.logger.fine( getId() + " is about to subscribe to " + ownerId );
-		HttpUtils.sendAsynchronously(
-				new SubscriptionMessage( ownerId, ctx, true ),
-				this.clientSession.getRemote());
+		send( new SubscriptionMessage( ownerId, ctx, true ));
 	}
 
 
@@ -176,9 +220,7 @@ public class HttpAgentClient implements IMessagingClient {
 
 		String ownerId = AbstractRoutingClient.buildOwnerId( RecipientKind.AGENTS, this.applicationName, this.scopedInstancePath );
 		this.logger.fine( getId() + " is about to unsubscribe to " + ownerId );
-		HttpUtils.sendAsynchronously(
-				new SubscriptionMessage( ownerId, ctx, false ),
-				this.clientSession.getRemote());
+		send( new SubscriptionMessage( ownerId, ctx, false ));
 	}
 
 
@@ -187,9 +229,33 @@ public class HttpAgentClient implements IMessagingClient {
 
 		String ownerId = AbstractRoutingClient.buildOwnerId( RecipientKind.AGENTS, this.applicationName, this.scopedInstancePath );
 		this.logger.fine( getId() + " is about to publish a message (" + msg + ") to " + ownerId );
-		HttpUtils.sendAsynchronously(
-				new HttpMessage( ownerId, msg, ctx ),
-				this.clientSession.getRemote());
+		send( new HttpMessage( ownerId, msg, ctx ));
+	}
+
+
+	/**
+	 * Enqueues a message in the outbound queue.
+	 * <p>
+	 * Only bulk messages can be silently dropped. If any other message is rejected,
+	 * or if the session was closed because the DM did not read fast enough, an
+	 * exception is thrown so that the caller (and the reconnection logic) is aware of it.
+	 * </p>
+	 *
+	 * @param message the message to send
+	 * @throws IOException if the message could not be serialized or was rejected
+	 */
+	private void send( Message message ) throws IOException {
+
+		SessionOutboundQueue queue = this.outboundQueue;
+		if( queue == null )
+			throw new IOException( getId() + " is not connected to the DM." );
+
+		boolean accepted = HttpUtils.sendAsynchronously( message, queue, this.codec );
+		if( queue.isDisconnected())
+			throw new IOException( getId() + " was disconnected from the DM because the outbound queue was full." );
+
+		if( ! accepted && ! HttpUtils.isBulkMessage( message ))
+			throw new IOException( getId() + " could not enqueue a message because the outbound queue was full: " + message );
 	}
 
 
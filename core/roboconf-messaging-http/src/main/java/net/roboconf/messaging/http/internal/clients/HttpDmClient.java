@@ -27,11 +27,15 @@ package net.roboconf.messaging.http.internal.clients;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.websocket.api.Session;
 
+import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.codec.CodecUtils;
+import net.roboconf.messaging.api.codec.IMessageCodec;
 import net.roboconf.messaging.api.extensions.AbstractRoutingClient;
 import net.roboconf.messaging.api.extensions.MessagingContext;
 import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
@@ -42,6 +46,8 @@ import net.roboconf.messaging.http.internal.HttpClientFactory.HttpRoutingContext
 import net.roboconf.messaging.http.internal.HttpUtils;
 import net.roboconf.messaging.http.internal.messages.HttpMessage;
 import net.roboconf.messaging.http.internal.messages.SubscriptionMessage;
+import net.roboconf.messaging.http.internal.sockets.SessionOutboundQueue;
+import net.roboconf.messaging.http.internal.sockets.SessionOutboundQueue.SlowConsumerPolicy;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -52,11 +58,16 @@ public class HttpDmClient extends AbstractRoutingClient<Session> {
 	private static final String DM_OWNER_ID = AbstractRoutingClient.buildOwnerId( RecipientKind.DM, null, null );
 
 	private final Map<String,Session> ctxToSession;
+	private final ConcurrentHashMap<Session,SessionOutboundQueue> sessionToOutboundQueue = new ConcurrentHashMap<> ();
 	private RoboconfMessageQueue messageQueue;
 	private final AtomicInteger openConnections = new AtomicInteger( 0 );
 
-	private String httpServerIp;
-	private int httpPort;
+	private String httpServerIp, codecName;
+	private int httpPort, compressionThreshold;
+	private IMessageCodec codec = CodecUtils.findCodec( MessagingConstants.CODEC_JAVA );
+
+	private int outboundQueueCapacity = SessionOutboundQueue.DEFAULT_CAPACITY;
+	private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_BULK;
 
 
 	/**
@@ -109,7 +120,7 @@ public class HttpDmClient extends AbstractRoutingClient<Session> {
 
 	@Override
 	public Map<String,String> getConfiguration() {
-		return HttpUtils.httpMessagingConfiguration( this.httpServerIp, this.httpPort );
+		return HttpUtils.httpMessagingConfiguration( this.httpServerIp, this.httpPort, this.codecName, this.compressionThreshold );
 	}
 
 
@@ -117,7 +128,7 @@ public class HttpDmClient extends AbstractRoutingClient<Session> {
 	protected void process( Session session, Message message ) throws IOException {
 
 		if( session.isOpen()) {
-			HttpUtils.sendAsynchronously( message, session.getRemote());
+			HttpUtils.sendAsynchronously( message, findOutboundQueue( session ), this.codec );
 
 		} else {
 			this.logger.finer( "Session is not available anymore. No message can be published." );
@@ -135,8 +146,7 @@ public class HttpDmClient extends AbstractRoutingClient<Session> {
 		if( ctx.getKind() == RecipientKind.DM
 				&& this.connected.get()) {
 
-			Set<MessagingContext> subs = this.routingContext.subscriptions.get( DM_OWNER_ID );
-			if( subs != null && subs.contains( ctx ))
+			if( this.routingContext.findSubscriptions( DM_OWNER_ID ).contains( ctx ))
 				this.messageQueue.add( msg );
 		}
 
@@ -190,6 +200,77 @@ public class HttpDmClient extends AbstractRoutingClient<Session> {
 	}
 
 
+	/**
+	 * Indicates a web socket session was closed.
+	 * @param session a session (not null)
+	 */
+	public void sessionWasClosed( Session session ) {
+		this.sessionToOutboundQueue.remove( session );
+	}
+
+
+	/**
+	 * Finds the outbound queues associated with the sessions of agents.
+	 * <p>
+	 * This is mainly useful to monitor the back pressure on every session.
+	 * </p>
+	 *
+	 * @return a non-null map (key = owner ID, value = outbound queue)
+	 */
+	public Map<String,SessionOutboundQueue> findOutboundQueues() {
+
+		Map<String,SessionOutboundQueue> result = new TreeMap<> ();
+		for( Map.Entry<String,Session> entry : this.ctxToSession.entrySet()) {
+			SessionOutboundQueue queue = this.sessionToOutboundQueue.get( entry.getValue());
+			if( queue != null )
+				result.put( entry.getKey(), queue );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Sets the capacity of the outbound queue associated with every session.
+	 * <p>
+	 * Only new sessions are impacted.
+	 * </p>
+	 *
+	 * @param outboundQueueCapacity the maximum number of messages waiting to be sent to an agent
+	 */
+	public void setOutboundQueueCapacity( int outboundQueueCapacity ) {
+
+		if( outboundQueueCapacity > 0 ) {
+			this.outboundQueueCapacity = outboundQueueCapacity;
+			this.logger.info( "The capacity of outbound queues was changed to " + outboundQueueCapacity );
+
+		} else {
+			this.logger.warning( "Invalid capacity for outbound queues: " + outboundQueueCapacity + ". It will be ignored." );
+		}
+	}
+
+
+	/**
+	 * Sets the policy to apply when an agent does not consume its messages fast enough.
+	 * <p>
+	 * Only new sessions are impacted.
+	 * </p>
+	 *
+	 * @param slowConsumerPolicy the policy name ("disconnect" or "drop-bulk")
+	 */
+	public void setSlowConsumerPolicy( String slowConsumerPolicy ) {
+
+		SlowConsumerPolicy policy = SlowConsumerPolicy.which( slowConsumerPolicy );
+		if( policy != null ) {
+			this.slowConsumerPolicy = policy;
+			this.logger.info( "The slow consumer policy was changed to " + policy );
+
+		} else {
+			this.logger.warning( "Invalid slow consumer policy: " + slowConsumerPolicy + ". It will be ignored." );
+		}
+	}
+
+
 	/**
 	 * Sets the DM's IP address (to propagate it through its configuration).
 	 * @param httpServerIp the DM's IP address (must be visible/reachable from agents)
@@ -210,6 +291,42 @@ public class HttpDmClient extends AbstractRoutingClient<Session> {
 	}
 
 
+	/**
+	 * Sets the codec used to serialize messages (and propagates it through the configuration).
+	 * @param codecName the codec name (can be null to use the default one)
+	 */
+	public void setCodecName( String codecName ) {
+		this.codecName = codecName;
+		this.codec = CodecUtils.findCodec( codecName, this.compressionThreshold );
+		this.logger.info( "The DM's message codec was changed to " + this.codec.getName());
+	}
+
+
+	/**
+	 * Sets the size from which messages are compressed (and propagates it through the configuration).
+	 * @param compressionThreshold a size in bytes (0 or negative to disable compression)
+	 */
+	public void setCompressionThreshold( int compressionThreshold ) {
+		this.compressionThreshold = Math.max( 0, compressionThreshold );
+		this.codec = CodecUtils.findCodec( this.codecName, this.compressionThreshold );
+		this.logger.info( "The DM's compression threshold was changed to " + this.compressionThreshold );
+	}
+
+
+	private SessionOutboundQueue findOutboundQueue( Session session ) {
+
+		SessionOutboundQueue result = this.sessionToOutboundQueue.get( session );
+		if( result == null ) {
+			SessionOutboundQueue newQueue = new SessionOutboundQueue( session, this.outboundQueueCapacity, this.slowConsumerPolicy );
+			result = this.sessionToOutboundQueue.putIfAbsent( session, newQueue );
+			if( result == null )
+				result = newQueue;
+		}
+
+		return result;
+	}
+
+
 	private void registerSession( String ownerId, Session session ) {
 
 		if( session != null )
@@ -26,10 +26,22 @@
 package net.roboconf.messaging.http.internal.messages;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 
+import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.codec.BinaryMessageCodec;
+import net.roboconf.messaging.api.codec.CodecUtils;
+import net.roboconf.messaging.api.codec.CompressingCodec;
+import net.roboconf.messaging.api.codec.IMessageCodec;
+import net.roboconf.messaging.api.extensions.MessagingContext;
+import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
+import net.roboconf.messaging.api.extensions.MessagingContext.ThoseThat;
 import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.utils.SerializationUtils;
 
 /**
  * This class is a partial copy of SerializationUtils.
@@ -45,11 +57,22 @@ import net.roboconf.messaging.api.messages.Message;
  * <p>
  * However, it is not more simple. So, this bundle provides its own deserializing method.
  * </p>
+ * <p>
+ * When a codec other than Java serialization is configured, HTTP and subscription messages
+ * are written in a small binary envelope, and the wrapped message is written with the codec.
+ * </p>
  *
  * @author Noël - LIG
  */
 public final class HttpSerializationUtils {
 
+	private static final byte MAGIC_1 = 'R';
+	private static final byte MAGIC_2 = 'H';
+	private static final byte VERSION = 1;
+
+	private static final byte KIND_HTTP_MESSAGE = 1;
+	private static final byte KIND_SUBSCRIPTION = 2;
+
 	/**
 	 * Empty private constructor.
 	 */
@@ -68,8 +91,142 @@ public final class HttpSerializationUtils {
 	public static Message deserializeObject( byte[] bytes )
 	throws IOException, ClassNotFoundException {
 
+		if( CompressingCodec.isCompressed( bytes ))
+			return deserializeObject( CompressingCodec.decompress( bytes ));
+
+		if( isEnvelope( bytes ))
+			return readEnvelope( bytes );
+
+		IMessageCodec codec = CodecUtils.findDecoder( bytes );
+		if( ! MessagingConstants.CODEC_JAVA.equals( codec.getName()))
+			return codec.decode( bytes );
+
 		ByteArrayInputStream is = new ByteArrayInputStream( bytes );
 		ObjectInputStream deserializer = new ObjectInputStream( is );
 		return (Message) deserializer.readObject();
 	}
+
+
+	/**
+	 * Serializes a message.
+	 * @param message a non-null message
+	 * @param codec the codec to use (not null)
+	 * @return a non-null array of bytes
+	 * @throws IOException
+	 */
+	public static byte[] serializeObject( Message message, IMessageCodec codec ) throws IOException {
+
+		byte[] result;
+		if( codec instanceof CompressingCodec ) {
+			// Compress the whole payload (including the HTTP envelope)
+			CompressingCodec compressingCodec = (CompressingCodec) codec;
+			result = compressingCodec.compress( serializeObject( message, compressingCodec.getDelegate()));
+
+		} else if( MessagingConstants.CODEC_JAVA.equals( codec.getName())) {
+			result = SerializationUtils.serializeObject( message );
+
+		} else if( message instanceof HttpMessage ) {
+			HttpMessage httpMsg = (HttpMessage) message;
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			DataOutputStream out = writeEnvelopeHeader( os, KIND_HTTP_MESSAGE, httpMsg.getOwnerId(), httpMsg.getCtx());
+			BinaryMessageCodec.writeBytes( out, codec.encode( httpMsg.getMessage()));
+			out.flush();
+			result = os.toByteArray();
+
+		} else if( message instanceof SubscriptionMessage ) {
+			SubscriptionMessage sub = (SubscriptionMessage) message;
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			DataOutputStream out = writeEnvelopeHeader( os, KIND_SUBSCRIPTION, sub.getOwnerId(), sub.getCtx());
+			out.writeBoolean( sub.isSubscribe());
+			out.flush();
+			result = os.toByteArray();
+
+		} else {
+			result = codec.encode( message );
+		}
+
+		return result;
+	}
+
+
+	private static boolean isEnvelope( byte[] bytes ) {
+		return bytes.length >= 4
+				&& bytes[ 0 ] == MAGIC_1
+				&& bytes[ 1 ] == MAGIC_2;
+	}
+
+
+	private static DataOutputStream writeEnvelopeHeader(
+			ByteArrayOutputStream os,
+			byte kind,
+			String ownerId,
+			MessagingContext ctx )
+	throws IOException {
+
+		DataOutputStream out = new DataOutputStream( os );
+		out.writeByte( MAGIC_1 );
+		out.writeByte( MAGIC_2 );
+		out.writeByte( VERSION );
+		out.writeByte( kind );
+
+		BinaryMessageCodec.writeString( out, ownerId );
+		out.writeBoolean( ctx != null );
+		if( ctx != null ) {
+			BinaryMessageCodec.writeString( out, ctx.getKind() == null ? null : ctx.getKind().name());
+			BinaryMessageCodec.writeString( out, ctx.getDomain());
+			BinaryMessageCodec.writeString( out, ctx.getComponentOrFacetName());
+			BinaryMessageCodec.writeString( out, ctx.getAgentDirection() == null ? null : ctx.getAgentDirection().name());
+			BinaryMessageCodec.writeString( out, ctx.getApplicationName());
+		}
+
+		return out;
+	}
+
+
+	private static Message readEnvelope( byte[] bytes ) throws IOException, ClassNotFoundException {
+
+		DataInputStream in = new DataInputStream( new ByteArrayInputStream( bytes, 2, bytes.length - 2 ));
+		byte version = in.readByte();
+		if( version != VERSION )
+			throw new IOException( "Unsupported version for HTTP messages: " + version );
+
+		byte kind = in.readByte();
+		String ownerId = BinaryMessageCodec.readString( in );
+		MessagingContext ctx = null;
+		if( in.readBoolean()) {
+			try {
+				String recipientKind = BinaryMessageCodec.readString( in );
+				String domain = BinaryMessageCodec.readString( in );
+				String componentOrFacetName = BinaryMessageCodec.readString( in );
+				String thoseThat = BinaryMessageCodec.readString( in );
+				String applicationName = BinaryMessageCodec.readString( in );
+				ctx = new MessagingContext(
+						recipientKind == null ? null : RecipientKind.valueOf( recipientKind ),
+						domain,
+						componentOrFacetName,
+						thoseThat == null ? null : ThoseThat.valueOf( thoseThat ),
+						applicationName );
+
+			} catch( IllegalArgumentException e ) {
+				throw new IOException( "Invalid messaging context in a HTTP message.", e );
+			}
+		}
+
+		Message result;
+		if( kind == KIND_HTTP_MESSAGE ) {
+			byte[] wrapped = BinaryMessageCodec.readBytes( in );
+			if( wrapped == null )
+				throw new IOException( "A HTTP message does not wrap any message." );
+
+			result = new HttpMessage( ownerId, deserializeObject( wrapped ), ctx );
+
+		} else if( kind == KIND_SUBSCRIPTION ) {
+			result = new SubscriptionMessage( ownerId, ctx, in.readBoolean());
+
+		} else {
+			throw new IOException( "Unknown kind of HTTP message: " + kind );
+		}
+
+		return result;
+	}
 }
@@ -76,7 +76,7 @@ public class DmWebSocket implements WebSocketListener {
 	@Override
 	public void onWebSocketClose( int statusCode, String reason ) {
 		this.logger.finest( "Websocket closed: " + reason );
-		this.session = null;
+		sessionWasClosed();
 	}
 
 
@@ -90,7 +90,7 @@ public class DmWebSocket implements WebSocketListener {
 	@Override
 	public void onWebSocketError( Throwable cause ) {
 		this.logger.finest( "Websocket error: " + cause );
-		this.session = null;
+		sessionWasClosed();
 	}
 
 
@@ -98,4 +98,14 @@ public class DmWebSocket implements WebSocketListener {
 	public void onWebSocketText( String message ) {
 		this.logger.finest( "A text message was received but will be ignored: " + message );
 	}
+
+
+	private void sessionWasClosed() {
+
+		// Release the resources associated with the session (e.g. pending messages)
+		if( this.session != null )
+			this.httpClientFactory.getDmClient().sessionWasClosed( this.session );
+
+		this.session = null;
+	}
 }
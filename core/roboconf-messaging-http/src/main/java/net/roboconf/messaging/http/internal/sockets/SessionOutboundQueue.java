@@ -0,0 +1,371 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.http.internal.sockets;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.logging.Logger;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+import net.roboconf.core.utils.Utils;
+
+/**
+ * A bounded queue of messages waiting to be written into a web socket session.
+ * <p>
+ * Writes are not blocking: a message is written only when the previous one has been
+ * sent, and this is notified by Jetty through a {@link WriteCallback}. Enqueuing a message
+ * therefore never waits for the remote end-point, which means a slow or half-dead
+ * consumer cannot stall the threads that publish messages.
+ * </p>
+ * <p>
+ * When the queue is full, the {@link SlowConsumerPolicy} decides what happens.
+ * </p>
+ * <ul>
+ * <li>{@link SlowConsumerPolicy#DISCONNECT}: the session is closed and pending messages are dropped.</li>
+ * <li>
+ * {@link SlowConsumerPolicy#DROP_BULK}: bulk messages (logs, autonomic events...) are dropped
+ * to make room for the others. If there is no bulk message to drop, the session is closed.
+ * </li>
+ * </ul>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class SessionOutboundQueue implements WriteCallback {
+
+	/**
+	 * The default capacity of a queue.
+	 */
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final Session session;
+	private final int capacity;
+	private final SlowConsumerPolicy policy;
+
+	private final Deque<Entry> pending = new ArrayDeque<> ();
+	private boolean writing = false, draining = false, disconnected = false;
+
+	private long sentMessagesCount, droppedMessagesCount, failedMessagesCount;
+	private int maxPendingMessagesCount;
+
+
+	/**
+	 * The policies to apply when a consumer is too slow.
+	 */
+	public enum SlowConsumerPolicy {
+		DISCONNECT, DROP_BULK;
+
+
+		/**
+		 * Finds a policy by name.
+		 * @param s a string (e.g. "drop-bulk", not case-sensitive)
+		 * @return a policy, or null if none matched
+		 */
+		public static SlowConsumerPolicy which( String s ) {
+
+			SlowConsumerPolicy result = null;
+			for( SlowConsumerPolicy policy : values()) {
+				if( policy.toString().replace( '_', '-' ).equalsIgnoreCase( s )) {
+					result = policy;
+					break;
+				}
+			}
+
+			return result;
+		}
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param session a non-null web socket session
+	 * @param capacity the maximum number of pending messages (strictly positive)
+	 * @param policy the policy to apply when the queue is full (not null)
+	 */
+	public SessionOutboundQueue( Session session, int capacity, SlowConsumerPolicy policy ) {
+		this.session = session;
+		this.capacity = capacity;
+		this.policy = policy;
+	}
+
+
+	/**
+	 * Enqueues a message and starts writing it if no other write is in progress.
+	 * <p>
+	 * This method never waits for the remote end-point.
+	 * </p>
+	 *
+	 * @param data the serialized message
+	 * @param bulk true if the message can be dropped when the consumer is too slow
+	 * @return true if the message was enqueued, false if it was dropped
+	 */
+	public boolean enqueue( byte[] data, boolean bulk ) {
+
+		boolean accepted = true, disconnect = false, drain = false;
+		synchronized( this ) {
+
+			if( this.disconnected ) {
+				accepted = false;
+
+			} else if( this.pending.size() >= this.capacity ) {
+				if( this.policy == SlowConsumerPolicy.DISCONNECT )
+					disconnect = true;
+				else if( bulk )
+					accepted = false;
+				else
+					disconnect = ! dropOldestBulkMessage();
+			}
+
+			if( disconnect ) {
+				accepted = false;
+				this.disconnected = true;
+				this.droppedMessagesCount += this.pending.size();
+				this.pending.clear();
+			}
+
+			if( accepted ) {
+				this.pending.add( new Entry( data, bulk ));
+				this.maxPendingMessagesCount = Math.max( this.maxPendingMessagesCount, this.pending.size());
+
+				// Start draining the queue only if nobody else does it
+				if( ! this.writing && ! this.draining ) {
+					this.draining = true;
+					drain = true;
+				}
+
+			} else {
+				this.droppedMessagesCount ++;
+			}
+		}
+
+		// Do not hold the lock while doing I/O
+		if( disconnect ) {
+			this.logger.warning( "A web socket consumer is too slow. Its session is about to be closed. " + this );
+			this.session.close( StatusCode.POLICY_VIOLATION, "Slow consumer." );
+
+		} else if( ! accepted ) {
+			this.logger.fine( "A message was dropped because the web socket consumer is too slow. " + this );
+		}
+
+		if( drain )
+			drain();
+
+		return accepted;
+	}
+
+
+	@Override
+	public void writeSuccess() {
+		writeCompleted( true );
+	}
+
+
+	@Override
+	public void writeFailed( Throwable t ) {
+		this.logger.finer( "A message could not be written into a web socket. " + t );
+		writeCompleted( false );
+	}
+
+
+	/**
+	 * @return the number of messages waiting to be written
+	 */
+	public synchronized int getPendingMessagesCount() {
+		return this.pending.size();
+	}
+
+
+	/**
+	 * @return the highest number of messages that were waiting at the same time
+	 */
+	public synchronized int getMaxPendingMessagesCount() {
+		return this.maxPendingMessagesCount;
+	}
+
+
+	/**
+	 * @return the number of messages that were successfully written
+	 */
+	public synchronized long getSentMessagesCount() {
+		return this.sentMessagesCount;
+	}
+
+
+	/**
+	 * @return the number of messages that were dropped because the consumer was too slow
+	 */
+	public synchronized long getDroppedMessagesCount() {
+		return this.droppedMessagesCount;
+	}
+
+
+	/**
+	 * @return the number of messages whose writing failed
+	 */
+	public synchronized long getFailedMessagesCount() {
+		return this.failedMessagesCount;
+	}
+
+
+	/**
+	 * @return true if the session was closed because the consumer was too slow
+	 */
+	public synchronized boolean isDisconnected() {
+		return this.disconnected;
+	}
+
+
+	/**
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+
+	/**
+	 * @return the slow consumer policy
+	 */
+	public SlowConsumerPolicy getPolicy() {
+		return this.policy;
+	}
+
+
+	@Override
+	public synchronized String toString() {
+		return "Pending: " + this.pending.size() + "/" + this.capacity
+				+ ", max pending: " + this.maxPendingMessagesCount
+				+ ", sent: " + this.sentMessagesCount
+				+ ", dropped: " + this.droppedMessagesCount
+				+ ", failed: " + this.failedMessagesCount;
+	}
+
+
+	/**
+	 * Updates the counters once a write has completed and writes the next message.
+	 * @param success true if the write succeeded, false otherwise
+	 */
+	private void writeCompleted( boolean success ) {
+
+		synchronized( this ) {
+			if( success )
+				this.sentMessagesCount ++;
+			else
+				this.failedMessagesCount ++;
+
+			this.writing = false;
+
+			// Jetty may invoke the call back synchronously, while
+			// drain() is still running. In this case, drain() will
+			// write the next message itself (no recursion).
+			if( this.draining )
+				return;
+
+			this.draining = true;
+		}
+
+		drain();
+	}
+
+
+	/**
+	 * Writes pending messages, one at a time.
+	 * <p>
+	 * The caller must have set the "draining" flag.
+	 * </p>
+	 */
+	private void drain() {
+
+		for( ;; ) {
+			Entry entry;
+			synchronized( this ) {
+				if( this.writing || this.pending.isEmpty()) {
+					this.draining = false;
+					return;
+				}
+
+				entry = this.pending.poll();
+				this.writing = true;
+			}
+
+			try {
+				this.session.getRemote().sendBytes( ByteBuffer.wrap( entry.data ), this );
+
+			} catch( Exception e ) {
+				this.logger.severe( "A message could not be written into a web socket." );
+				Utils.logException( this.logger, e );
+				synchronized( this ) {
+					this.failedMessagesCount ++;
+					this.writing = false;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Drops the oldest bulk message.
+	 * <p>
+	 * The caller must hold the lock.
+	 * </p>
+	 *
+	 * @return true if a message was dropped, false otherwise
+	 */
+	private boolean dropOldestBulkMessage() {
+
+		boolean result = false;
+		for( Iterator<Entry> it = this.pending.iterator(); it.hasNext() && ! result; ) {
+			if( it.next().bulk ) {
+				it.remove();
+				this.droppedMessagesCount ++;
+				result = true;
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * A pending message.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class Entry {
+		final byte[] data;
+		final boolean bulk;
+
+
+		Entry( byte[] data, boolean bulk ) {
+			this.data = data;
+			this.bulk = bulk;
+		}
+	}
+}
@@ -36,6 +36,7 @@ import net.roboconf.messaging.api.AbstractMessageProcessor;
 import net.roboconf.messaging.api.MessagingConstants;
 import net.roboconf.messaging.api.business.IAgentClient;
 import net.roboconf.messaging.api.business.IDmClient;
+import net.roboconf.messaging.api.extensions.IMessagingClient;
 import net.roboconf.messaging.api.factory.MessagingClientFactoryRegistry;
 import net.roboconf.messaging.api.messages.Message;
 import net.roboconf.messaging.api.reconfigurables.ReconfigurableClient;
@@ -263,6 +264,31 @@ public class HttpClientFactoryTest {
 		synchronized( this.factory ) {
 			Assert.assertEquals( "127.0.0.4", this.factory.httpServerIp );
 			Assert.assertEquals( 24658, this.factory.httpPort );
+			Assert.assertEquals( 0, this.factory.compressionThreshold );
 		}
+
+		map.put( MessagingConstants.MESSAGING_COMPRESSION_THRESHOLD_PROPERTY, "2048" );
+		Assert.assertTrue( this.factory.setConfiguration( map ));
+		synchronized( this.factory ) {
+			Assert.assertEquals( 2048, this.factory.compressionThreshold );
+		}
+	}
+
+
+	@Test
+	public void testCompressionThreshold() throws Exception {
+
+		this.factory.setCompressionThreshold( 512 );
+		Map<String,String> conf = this.factory.getDmClient().getConfiguration();
+		Assert.assertEquals( "512", conf.get( MessagingConstants.MESSAGING_COMPRESSION_THRESHOLD_PROPERTY ));
+
+		// Agent clients propagate it too
+		IMessagingClient client = this.factory.createClient( new ReconfigurableClientAgent());
+		conf = client.getConfiguration();
+		Assert.assertEquals( "512", conf.get( MessagingConstants.MESSAGING_COMPRESSION_THRESHOLD_PROPERTY ));
+
+		this.factory.setCompressionThreshold( 0 );
+		conf = this.factory.getDmClient().getConfiguration();
+		Assert.assertNull( conf.get( MessagingConstants.MESSAGING_COMPRESSION_THRESHOLD_PROPERTY ));
 	}
 }
@@ -26,13 +26,23 @@
 package net.roboconf.messaging.http.internal.clients;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.Map;
 
 import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.extensions.MessagingContext;
+import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
+import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
 import net.roboconf.messaging.http.HttpConstants;
+import net.roboconf.messaging.http.internal.sockets.SessionOutboundQueue;
+import net.roboconf.messaging.http.internal.sockets.SessionOutboundQueue.SlowConsumerPolicy;
 
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -68,4 +78,70 @@ public class HttpAgentClientTest {
 		Assert.assertEquals( "localhost", config.get( HttpConstants.HTTP_SERVER_IP ));
 		Assert.assertEquals( "9898", config.get( HttpConstants.HTTP_SERVER_PORT ));
 	}
+
+
+	@Test
+	public void testRejectedMessagesAreReported() throws Exception {
+
+		HttpAgentClient client = new HttpAgentClient( null, "localhost", 9898 );
+		client.setOwnerProperties( RecipientKind.AGENTS, "domain", "app", "/vm" );
+		MessagingContext ctx = new MessagingContext( RecipientKind.DM, "domain", "app" );
+
+		// Not connected
+		try {
+			client.publish( ctx, new MsgEcho( "hi" ));
+			Assert.fail( "An exception was expected." );
+
+		} catch( IOException e ) {
+			// nothing
+		}
+
+		// The remote end-point does not acknowledge writes by itself
+		Session session = Mockito.mock( Session.class );
+		Mockito.when( session.getRemote()).thenReturn( Mockito.mock( RemoteEndpoint.class ));
+		SessionOutboundQueue queue = new SessionOutboundQueue( session, 1, SlowConsumerPolicy.DROP_BULK );
+
+		Field field = HttpAgentClient.class.getDeclaredField( "outboundQueue" );
+		field.setAccessible( true );
+		field.set( client, queue );
+
+		// The first message is being written, the second one is pending
+		client.publish( ctx, new MsgEcho( "hi" ));
+		client.publish( ctx, new MsgNotifLogs( "app", "/vm", null ));
+
+		// Bulk messages can be dropped silently
+		client.publish( ctx, new MsgNotifLogs( "app", "/vm", null ));
+		Assert.assertEquals( 1, queue.getDroppedMessagesCount());
+
+		// Other messages replace bulk ones
+		client.subscribe( ctx );
+		Assert.assertEquals( 2, queue.getDroppedMessagesCount());
+		Assert.assertFalse( queue.isDisconnected());
+
+		// No more bulk message => disconnection
+		try {
+			client.publish( ctx, new MsgEcho( "hi" ));
+			Assert.fail( "An exception was expected." );
+
+		} catch( IOException e ) {
+			Assert.assertTrue( queue.isDisconnected());
+		}
+
+		// Once disconnected, all the messages are rejected
+		try {
+			client.publish( ctx, new MsgNotifLogs( "app", "/vm", null ));
+			Assert.fail( "An exception was expected." );
+
+		} catch( IOException e ) {
+			// nothing
+		}
+
+		try {
+			client.unsubscribe( ctx );
+			Assert.fail( "An exception was expected." );
+
+		} catch( IOException e ) {
+			// nothing
+		}
+	}
 }
@@ -26,13 +26,18 @@
 package net.roboconf.messaging.http.internal.clients;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.Future;
+import java.util.Map;
 
 import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
 import net.roboconf.messaging.http.internal.HttpClientFactory.HttpRoutingContext;
+import net.roboconf.messaging.http.internal.sockets.SessionOutboundQueue;
+import net.roboconf.messaging.http.internal.sockets.SessionOutboundQueue.SlowConsumerPolicy;
 
 import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
@@ -58,10 +63,7 @@ public class HttpDmClientTest {
 
 		// Connected => processing...
 		Mockito.reset( session );
-		Future<Void> future = Mockito.mock( Future.class );
 		RemoteEndpoint remote = Mockito.mock( RemoteEndpoint.class );
-		Mockito.when( remote.sendBytesByFuture( Mockito.any( ByteBuffer.class ) )).thenReturn( future );
-
 		Mockito.when( session.getRemote()).thenReturn( remote );
 		Mockito.when( session.isOpen()).thenReturn( true );
 
@@ -71,5 +73,42 @@ public class HttpDmClientTest {
 		Mockito.verify( session, Mockito.times( 1 )).isOpen();
 		Mockito.verify( session, Mockito.times( 1 )).getRemote();
 		Mockito.verifyNoMoreInteractions( session );
+		Mockito.verify( remote, Mockito.only()).sendBytes( Mockito.any( ByteBuffer.class ), Mockito.any( WriteCallback.class ));
+	}
+
+
+	@Test
+	public void testOutboundQueues() throws Exception {
+
+		HttpRoutingContext routingContext = new HttpRoutingContext();
+		HttpDmClient httpDmClient = new HttpDmClient( routingContext );
+		httpDmClient.setOutboundQueueCapacity( 0 );
+		httpDmClient.setOutboundQueueCapacity( 5 );
+		httpDmClient.setSlowConsumerPolicy( "oops" );
+		httpDmClient.setSlowConsumerPolicy( "disconnect" );
+
+		// The remote end-point never acknowledges writes
+		RemoteEndpoint remote = Mockito.mock( RemoteEndpoint.class );
+		Session session = Mockito.mock( Session.class );
+		Mockito.when( session.getRemote()).thenReturn( remote );
+		Mockito.when( session.isOpen()).thenReturn( true );
+		routingContext.ctxToSession.put( "agent-1", session );
+
+		Assert.assertEquals( 0, httpDmClient.findOutboundQueues().size());
+		for( int i=0; i<3; i++ )
+			httpDmClient.process( session, new MsgEcho( "hi" ));
+
+		Map<String,SessionOutboundQueue> queues = httpDmClient.findOutboundQueues();
+		Assert.assertEquals( 1, queues.size());
+
+		SessionOutboundQueue queue = queues.get( "agent-1" );
+		Assert.assertNotNull( queue );
+		Assert.assertEquals( 5, queue.getCapacity());
+		Assert.assertEquals( SlowConsumerPolicy.DISCONNECT, queue.getPolicy());
+		Assert.assertEquals( 2, queue.getPendingMessagesCount());
+
+		// Closed sessions are forgotten
+		httpDmClient.sessionWasClosed( session );
+		Assert.assertEquals( 0, httpDmClient.findOutboundQueues().size());
 	}
 }
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.http.internal.messages;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.codec.CodecUtils;
+import net.roboconf.messaging.api.codec.CompressingCodec;
+import net.roboconf.messaging.api.codec.IMessageCodec;
+import net.roboconf.messaging.api.extensions.MessagingContext;
+import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
+import net.roboconf.messaging.api.extensions.MessagingContext.ThoseThat;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.api.messages.from_dm_to_agent.MsgCmdRemoveInstance;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class HttpSerializationUtilsTest {
+
+	@Test
+	public void testHttpMessage_allCodecs() throws Exception {
+
+		for( String codecName : new String[] { MessagingConstants.CODEC_JAVA, MessagingConstants.CODEC_BINARY }) {
+			IMessageCodec codec = CodecUtils.findCodec( codecName );
+
+			MessagingContext ctx = new MessagingContext( RecipientKind.AGENTS, "domain", "db", ThoseThat.EXPORT, "app" );
+			HttpMessage msg = new HttpMessage( "owner", new MsgNotifHeartbeat( "app", "/vm", "127.0.0.1" ), ctx );
+
+			byte[] bytes = HttpSerializationUtils.serializeObject( msg, codec );
+			Message newMsg = HttpSerializationUtils.deserializeObject( bytes );
+
+			Assert.assertEquals( codecName, HttpMessage.class, newMsg.getClass());
+			HttpMessage newHttpMsg = (HttpMessage) newMsg;
+			Assert.assertEquals( codecName, "owner", newHttpMsg.getOwnerId());
+			Assert.assertEquals( codecName, ctx, newHttpMsg.getCtx());
+			Assert.assertEquals( codecName, ctx.getDomain(), newHttpMsg.getCtx().getDomain());
+			Assert.assertEquals( codecName, MsgNotifHeartbeat.class, newHttpMsg.getMessage().getClass());
+			Assert.assertEquals( codecName, "/vm", ((MsgNotifHeartbeat) newHttpMsg.getMessage()).getScopedInstancePath());
+		}
+	}
+
+
+	@Test
+	public void testHttpMessage_withCompression() throws Exception {
+
+		for( String codecName : new String[] { MessagingConstants.CODEC_JAVA, MessagingConstants.CODEC_BINARY }) {
+			IMessageCodec codec = CodecUtils.findCodec( codecName, 1000 );
+
+			MessagingContext ctx = new MessagingContext( RecipientKind.AGENTS, "domain", "db", ThoseThat.EXPORT, "app" );
+			StringBuilder sb = new StringBuilder();
+			for( int i=0; i<300; i++ )
+				sb.append( "/vm/server" );
+
+			HttpMessage msg = new HttpMessage( "owner", new MsgNotifHeartbeat( "app", sb.toString(), "127.0.0.1" ), ctx );
+			byte[] bytes = HttpSerializationUtils.serializeObject( msg, codec );
+			Assert.assertTrue( codecName, CompressingCodec.isCompressed( bytes ));
+
+			Message newMsg = HttpSerializationUtils.deserializeObject( bytes );
+			Assert.assertEquals( codecName, HttpMessage.class, newMsg.getClass());
+			HttpMessage newHttpMsg = (HttpMessage) newMsg;
+			Assert.assertEquals( codecName, "owner", newHttpMsg.getOwnerId());
+			Assert.assertEquals( codecName, ctx, newHttpMsg.getCtx());
+			Assert.assertEquals( codecName, sb.toString(), ((MsgNotifHeartbeat) newHttpMsg.getMessage()).getScopedInstancePath());
+
+			// Small messages are not compressed
+			SubscriptionMessage sub = new SubscriptionMessage( "owner", ctx, true );
+			bytes = HttpSerializationUtils.serializeObject( sub, codec );
+			Assert.assertFalse( codecName, CompressingCodec.isCompressed( bytes ));
+			Assert.assertEquals( codecName, SubscriptionMessage.class, HttpSerializationUtils.deserializeObject( bytes ).getClass());
+		}
+	}
+
+
+	@Test
+	public void testSubscriptionMessage_allCodecs() throws Exception {
+
+		for( String codecName : new String[] { MessagingConstants.CODEC_JAVA, MessagingConstants.CODEC_BINARY }) {
+			IMessageCodec codec = CodecUtils.findCodec( codecName );
+
+			MessagingContext ctx = new MessagingContext( RecipientKind.DM, "domain", "app" );
+			SubscriptionMessage msg = new SubscriptionMessage( "owner", ctx, true );
+
+			byte[] bytes = HttpSerializationUtils.serializeObject( msg, codec );
+			Message newMsg = HttpSerializationUtils.deserializeObject( bytes );
+
+			Assert.assertEquals( codecName, SubscriptionMessage.class, newMsg.getClass());
+			SubscriptionMessage newSub = (SubscriptionMessage) newMsg;
+			Assert.assertEquals( codecName, "owner", newSub.getOwnerId());
+			Assert.assertEquals( codecName, ctx, newSub.getCtx());
+			Assert.assertTrue( codecName, newSub.isSubscribe());
+		}
+	}
+
+
+	@Test
+	public void testSubscriptionMessage_noContext() throws Exception {
+
+		IMessageCodec codec = CodecUtils.findCodec( MessagingConstants.CODEC_BINARY );
+		SubscriptionMessage msg = new SubscriptionMessage( "owner", null, false );
+
+		SubscriptionMessage newSub = (SubscriptionMessage) HttpSerializationUtils.deserializeObject(
+				HttpSerializationUtils.serializeObject( msg, codec ));
+
+		Assert.assertNull( newSub.getCtx());
+		Assert.assertFalse( newSub.isSubscribe());
+	}
+
+
+	@Test
+	public void testRawMessage_allCodecs() throws Exception {
+
+		for( String codecName : new String[] { MessagingConstants.CODEC_JAVA, MessagingConstants.CODEC_BINARY }) {
+			IMessageCodec codec = CodecUtils.findCodec( codecName );
+
+			byte[] bytes = HttpSerializationUtils.serializeObject( new MsgCmdRemoveInstance( "/vm/server" ), codec );
+			Assert.assertTrue( codecName, codec.accepts( bytes ));
+
+			Message newMsg = HttpSerializationUtils.deserializeObject( bytes );
+			Assert.assertEquals( codecName, "/vm/server", ((MsgCmdRemoveInstance) newMsg).getInstancePath());
+		}
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testEnvelope_unknownKind() throws Exception {
+
+		IMessageCodec codec = CodecUtils.findCodec( MessagingConstants.CODEC_BINARY );
+		byte[] bytes = HttpSerializationUtils.serializeObject( new SubscriptionMessage( "owner", null, false ), codec );
+		bytes[ 3 ] = 99;
+		HttpSerializationUtils.deserializeObject( bytes );
+	}
+}
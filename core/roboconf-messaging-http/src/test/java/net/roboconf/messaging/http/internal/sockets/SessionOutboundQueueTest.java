@@ -0,0 +1,207 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.http.internal.sockets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifLogs;
+import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
+import net.roboconf.messaging.http.internal.HttpUtils;
+import net.roboconf.messaging.http.internal.messages.HttpMessage;
+import net.roboconf.messaging.http.internal.sockets.SessionOutboundQueue.SlowConsumerPolicy;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class SessionOutboundQueueTest {
+
+	private Session session;
+	private RemoteEndpoint remote;
+
+
+	@Before
+	public void prepareSession() {
+
+		this.remote = Mockito.mock( RemoteEndpoint.class );
+		this.session = Mockito.mock( Session.class );
+		Mockito.when( this.session.getRemote()).thenReturn( this.remote );
+	}
+
+
+	@Test
+	public void testWhich() {
+
+		Assert.assertEquals( SlowConsumerPolicy.DISCONNECT, SlowConsumerPolicy.which( "disconnect" ));
+		Assert.assertEquals( SlowConsumerPolicy.DROP_BULK, SlowConsumerPolicy.which( "DROP-bulk" ));
+		Assert.assertNull( SlowConsumerPolicy.which( "drop_bulk" ));
+		Assert.assertNull( SlowConsumerPolicy.which( null ));
+	}
+
+
+	@Test
+	public void testWritesDoNotBlock() {
+
+		// The remote end-point does not acknowledge writes by itself
+		SessionOutboundQueue queue = new SessionOutboundQueue( this.session, 10, SlowConsumerPolicy.DISCONNECT );
+		for( int i=0; i<3; i++ )
+			Assert.assertTrue( queue.enqueue( new byte[ 1 ], false ));
+
+		// Only one write at a time
+		Mockito.verify( this.remote, Mockito.times( 1 )).sendBytes( Mockito.any( ByteBuffer.class ), Mockito.eq( queue ));
+		Assert.assertEquals( 2, queue.getPendingMessagesCount());
+		Assert.assertEquals( 2, queue.getMaxPendingMessagesCount());
+		Assert.assertEquals( 0, queue.getSentMessagesCount());
+
+		// Completing a write triggers the next one
+		queue.writeSuccess();
+		Mockito.verify( this.remote, Mockito.times( 2 )).sendBytes( Mockito.any( ByteBuffer.class ), Mockito.eq( queue ));
+		Assert.assertEquals( 1, queue.getPendingMessagesCount());
+		Assert.assertEquals( 1, queue.getSentMessagesCount());
+
+		queue.writeFailed( new IOException( "for test" ));
+		Mockito.verify( this.remote, Mockito.times( 3 )).sendBytes( Mockito.any( ByteBuffer.class ), Mockito.eq( queue ));
+		Assert.assertEquals( 0, queue.getPendingMessagesCount());
+		Assert.assertEquals( 1, queue.getFailedMessagesCount());
+
+		queue.writeSuccess();
+		Mockito.verify( this.remote, Mockito.times( 3 )).sendBytes( Mockito.any( ByteBuffer.class ), Mockito.eq( queue ));
+		Assert.assertEquals( 2, queue.getSentMessagesCount());
+		Assert.assertEquals( 0, queue.getDroppedMessagesCount());
+	}
+
+
+	@Test
+	public void testSynchronousCallbacks() {
+
+		// Jetty may invoke the call back before sendBytes returns
+		Mockito.doAnswer( new Answer<Void>() {
+			@Override
+			public Void answer( InvocationOnMock invocation ) throws Throwable {
+				((WriteCallback) invocation.getArguments()[ 1 ]).writeSuccess();
+				return null;
+			}
+
+		}).when( this.remote ).sendBytes( Mockito.any( ByteBuffer.class ), Mockito.any( WriteCallback.class ));
+
+		SessionOutboundQueue queue = new SessionOutboundQueue( this.session, 2, SlowConsumerPolicy.DISCONNECT );
+		for( int i=0; i<50; i++ )
+			Assert.assertTrue( queue.enqueue( new byte[ 1 ], false ));
+
+		Assert.assertEquals( 0, queue.getPendingMessagesCount());
+		Assert.assertEquals( 50, queue.getSentMessagesCount());
+		Assert.assertFalse( queue.isDisconnected());
+	}
+
+
+	@Test
+	public void testExceptionWhileWriting() {
+
+		Mockito.doThrow( new RuntimeException( "for test" ))
+				.when( this.remote ).sendBytes( Mockito.any( ByteBuffer.class ), Mockito.any( WriteCallback.class ));
+
+		SessionOutboundQueue queue = new SessionOutboundQueue( this.session, 2, SlowConsumerPolicy.DISCONNECT );
+		Assert.assertTrue( queue.enqueue( new byte[ 1 ], false ));
+		Assert.assertTrue( queue.enqueue( new byte[ 1 ], false ));
+
+		Assert.assertEquals( 0, queue.getPendingMessagesCount());
+		Assert.assertEquals( 2, queue.getFailedMessagesCount());
+	}
+
+
+	@Test
+	public void testDisconnectPolicy() {
+
+		SessionOutboundQueue queue = new SessionOutboundQueue( this.session, 2, SlowConsumerPolicy.DISCONNECT );
+
+		// The first message is being written, the two next ones are pending
+		Assert.assertTrue( queue.enqueue( new byte[ 1 ], false ));
+		Assert.assertTrue( queue.enqueue( new byte[ 1 ], true ));
+		Assert.assertTrue( queue.enqueue( new byte[ 1 ], false ));
+		Assert.assertFalse( queue.isDisconnected());
+
+		// The queue is full
+		Assert.assertFalse( queue.enqueue( new byte[ 1 ], false ));
+		Assert.assertTrue( queue.isDisconnected());
+		Assert.assertEquals( 0, queue.getPendingMessagesCount());
+		Assert.assertEquals( 3, queue.getDroppedMessagesCount());
+		Mockito.verify( this.session ).close( Mockito.eq( StatusCode.POLICY_VIOLATION ), Mockito.anyString());
+
+		// Nothing is accepted anymore
+		Assert.assertFalse( queue.enqueue( new byte[ 1 ], false ));
+		Assert.assertEquals( 4, queue.getDroppedMessagesCount());
+	}
+
+
+	@Test
+	public void testDropBulkPolicy() {
+
+		SessionOutboundQueue queue = new SessionOutboundQueue( this.session, 2, SlowConsumerPolicy.DROP_BULK );
+
+		// The first message is being written, the two next ones are pending
+		Assert.assertTrue( queue.enqueue( new byte[ 1 ], false ));
+		Assert.assertTrue( queue.enqueue( new byte[ 1 ], true ));
+		Assert.assertTrue( queue.enqueue( new byte[ 1 ], false ));
+
+		// New bulk messages are dropped
+		Assert.assertFalse( queue.enqueue( new byte[ 1 ], true ));
+		Assert.assertEquals( 1, queue.getDroppedMessagesCount());
+		Assert.assertEquals( 2, queue.getPendingMessagesCount());
+
+		// Other messages replace pending bulk messages
+		Assert.assertTrue( queue.enqueue( new byte[ 1 ], false ));
+		Assert.assertEquals( 2, queue.getDroppedMessagesCount());
+		Assert.assertEquals( 2, queue.getPendingMessagesCount());
+		Assert.assertFalse( queue.isDisconnected());
+
+		// No more bulk message => disconnection
+		Assert.assertFalse( queue.enqueue( new byte[ 1 ], false ));
+		Assert.assertTrue( queue.isDisconnected());
+		Assert.assertEquals( 5, queue.getDroppedMessagesCount());
+		Mockito.verify( this.session ).close( Mockito.eq( StatusCode.POLICY_VIOLATION ), Mockito.anyString());
+	}
+
+
+	@Test
+	public void testBulkMessages() {
+
+		Assert.assertTrue( HttpUtils.isBulkMessage( new MsgNotifLogs( "app", "/vm", null )));
+		Assert.assertTrue( HttpUtils.isBulkMessage( new HttpMessage( "owner", new MsgNotifLogs( "app", "/vm", null ), null )));
+		Assert.assertFalse( HttpUtils.isBulkMessage( new MsgEcho( "hi" )));
+		Assert.assertFalse( HttpUtils.isBulkMessage( new HttpMessage( "owner", new MsgEcho( "hi" ), null )));
+	}
+}
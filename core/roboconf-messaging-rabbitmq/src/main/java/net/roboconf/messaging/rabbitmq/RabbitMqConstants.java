@@ -132,6 +132,65 @@ public interface RabbitMqConstants {
 	 */
 	String RABBITMQ_SSL_TRUST_MNGR_FACTORY = RABBITMQ_PROPERTY_PREFIX + ".ssl.trust.manager.factory";
 
+	/**
+	 * Messaging property indicating the number of channels used to publish messages.
+	 * <p>
+	 * Default value is {@value #DEFAULT_PUBLISHING_CHANNELS}.
+	 * </p>
+	 */
+	String RABBITMQ_PUBLISHING_CHANNELS = RABBITMQ_PROPERTY_PREFIX + ".publishing.channels";
+
+	/**
+	 * Messaging property indicating whether published messages must be confirmed by RabbitMQ.
+	 * <p>
+	 * Default value is false.
+	 * </p>
+	 */
+	String RABBITMQ_PUBLISHER_CONFIRMS = RABBITMQ_PROPERTY_PREFIX + ".publisher.confirms";
+
+	/**
+	 * Messaging property indicating the maximum number of messages awaiting a confirmation (per channel).
+	 * <p>
+	 * Default value is {@value #DEFAULT_CONFIRMS_WINDOW}.
+	 * </p>
+	 */
+	String RABBITMQ_CONFIRMS_WINDOW = RABBITMQ_PROPERTY_PREFIX + ".publisher.confirms.window";
+
+	/**
+	 * Messaging property indicating how many times a rejected message is published again.
+	 * <p>
+	 * Default value is {@value #DEFAULT_CONFIRMS_MAX_RETRIES}.
+	 * </p>
+	 */
+	String RABBITMQ_CONFIRMS_MAX_RETRIES = RABBITMQ_PROPERTY_PREFIX + ".publisher.confirms.max.retries";
+
+	/**
+	 * Messaging property indicating how many unacknowledged messages RabbitMQ can deliver to a consumer.
+	 * <p>
+	 * A strictly positive value enables manual acknowledgements: messages are acknowledged
+	 * once they have been processed. Default value is 0 (automatic acknowledgements, no limit).
+	 * </p>
+	 */
+	String RABBITMQ_CONSUMER_PREFETCH = RABBITMQ_PROPERTY_PREFIX + ".consumer.prefetch";
+
+	/**
+	 * Messaging property indicating how many processed messages are acknowledged at once.
+	 * <p>
+	 * Only used with manual acknowledgements. Default value is {@value #DEFAULT_CONSUMER_ACK_BATCH}.
+	 * </p>
+	 */
+	String RABBITMQ_CONSUMER_ACK_BATCH = RABBITMQ_PROPERTY_PREFIX + ".consumer.ack.batch";
+
+	/**
+	 * Messaging property indicating the number of messages waiting in the local queue
+	 * above which the consumption is paused.
+	 * <p>
+	 * The consumption is resumed when the local queue is half empty.
+	 * Default value is 0 (the consumption is never paused).
+	 * </p>
+	 */
+	String RABBITMQ_CONSUMER_HIGH_WATER_MARK = RABBITMQ_PROPERTY_PREFIX + ".consumer.high.water.mark";
+
 
 	String EXCHANGE_INTER_APP = "roboconf.inter-app";
 	String EXCHANGE_DM = "roboconf.dm";
@@ -143,4 +202,9 @@ public interface RabbitMqConstants {
 	String DEFAULT_SSL_TRUST_STORE_TYPE = "JKS";
 	String DEFAULT_SSL_MNGR_FACTORY = "SunX509";
 	String GUEST = "guest";
+
+	int DEFAULT_PUBLISHING_CHANNELS = 1;
+	int DEFAULT_CONFIRMS_WINDOW = 256;
+	int DEFAULT_CONFIRMS_MAX_RETRIES = 3;
+	int DEFAULT_CONSUMER_ACK_BATCH = 10;
 }
@@ -25,6 +25,17 @@
 
 package net.roboconf.messaging.rabbitmq.internal;
 
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.DEFAULT_CONFIRMS_MAX_RETRIES;
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.DEFAULT_CONSUMER_ACK_BATCH;
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.DEFAULT_CONFIRMS_WINDOW;
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.DEFAULT_PUBLISHING_CHANNELS;
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_CONFIRMS_MAX_RETRIES;
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_CONFIRMS_WINDOW;
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_CONSUMER_ACK_BATCH;
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_CONSUMER_HIGH_WATER_MARK;
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_CONSUMER_PREFETCH;
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_PUBLISHER_CONFIRMS;
+import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_PUBLISHING_CHANNELS;
 import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_SSL_AS_USER_DATA;
 import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_SSL_KEY_MNGR_FACTORY;
 import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_SSL_KEY_STORE_PASSPHRASE;
@@ -56,18 +67,22 @@ import com.rabbitmq.client.Recoverable;
 import net.roboconf.core.model.beans.Application;
 import net.roboconf.core.userdata.UserDataHelpers;
 import net.roboconf.messaging.api.MessagingConstants;
+import net.roboconf.messaging.api.codec.CodecUtils;
+import net.roboconf.messaging.api.codec.IMessageCodec;
+import net.roboconf.messaging.api.extensions.IConfirmingClient;
 import net.roboconf.messaging.api.extensions.IMessagingClient;
 import net.roboconf.messaging.api.extensions.MessagingContext;
 import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
+import net.roboconf.messaging.api.jmx.LatencyHistogram;
 import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.api.messages.Message;
 import net.roboconf.messaging.api.reconfigurables.ReconfigurableClient;
 import net.roboconf.messaging.api.utils.MessagingUtils;
-import net.roboconf.messaging.api.utils.SerializationUtils;
 import net.roboconf.messaging.rabbitmq.RabbitMqConstants;
+import net.roboconf.messaging.rabbitmq.internal.impl.ConsumptionController;
+import net.roboconf.messaging.rabbitmq.internal.impl.PublishingChannel;
 import net.roboconf.messaging.rabbitmq.internal.impl.RoboconfConsumer;
 import net.roboconf.messaging.rabbitmq.internal.impl.RoboconfRecoveryListener;
-import net.roboconf.messaging.rabbitmq.internal.impl.RoboconfReturnListener;
 import net.roboconf.messaging.rabbitmq.internal.utils.RabbitMqUtils;
 
 /**
@@ -75,18 +90,28 @@ import net.roboconf.messaging.rabbitmq.internal.utils.RabbitMqUtils;
  * @author Pierre Bourret - Université Joseph Fourier
  * @author Vincent Zurczak - Linagora
  */
-public class RabbitMqClient implements IMessagingClient {
+public class RabbitMqClient implements IMessagingClient, IConfirmingClient {
+
+	/**
+	 * The maximum delay to wait for confirmations when the connection is closed (in milliseconds).
+	 */
+	static final long CLOSE_TIMEOUT = 5000;
 
 	private final Logger logger = Logger.getLogger( getClass().getName());
 	private final Map<String,String> configuration;
+	private final IMessageCodec codec;
 	private final WeakReference<ReconfigurableClient<?>> reconfigurable;
 
 	private RoboconfMessageQueue messageQueue;
 	private RecipientKind ownerKind;
 	private String applicationName, scopedInstancePath, domain;
 
+	private final LatencyHistogram confirmLatencies = new LatencyHistogram();
+
 	String consumerTag;
+	ConsumptionController consumptionController;
 	Channel channel;
+	List<PublishingChannel> publishingChannels = Collections.emptyList();
 
 
 	/**
@@ -112,6 +137,7 @@ public class RabbitMqClient implements IMessagingClient {
 		Map<String,String> copy = new LinkedHashMap<>( messagingProperties );
 		copy.put( MessagingConstants.MESSAGING_TYPE_PROPERTY, RabbitMqConstants.FACTORY_RABBITMQ );
 		this.configuration = Collections.unmodifiableMap( copy );
+		this.codec = CodecUtils.findCodec( this.configuration );
 	}
 
 
@@ -217,9 +243,6 @@ public class RabbitMqClient implements IMessagingClient {
 		this.channel = factory.newConnection().createChannel();
 		this.logger.info( getId() + " established a new connection with RabbitMQ. Channel # " + this.channel.getChannelNumber());
 
-		// Be notified when a message does not arrive in a queue (i.e. nobody is listening)
-		this.channel.addReturnListener( new RoboconfReturnListener());
-
 		// Add a recoverable listener (when broken connections are recovered).
 		// Given the way the RabbitMQ factory is configured, the channel should be "recoverable".
 		((Recoverable) this.channel).addRecoveryListener( new RoboconfRecoveryListener());
@@ -233,10 +256,33 @@ public class RabbitMqClient implements IMessagingClient {
 		this.channel.queueDeclare( queueName, true, false, true, null );
 
 		// Start listening to messages.
-		RoboconfConsumer consumer = new RoboconfConsumer( getId(), this.channel, this.messageQueue );
+		// With a prefetch count, messages are acknowledged once processed.
+		this.consumptionController = new ConsumptionController(
+				this.channel, queueName, this.messageQueue,
+				parseInt( RABBITMQ_CONSUMER_PREFETCH, 0 ),
+				parseInt( RABBITMQ_CONSUMER_ACK_BATCH, DEFAULT_CONSUMER_ACK_BATCH ),
+				parseInt( RABBITMQ_CONSUMER_HIGH_WATER_MARK, 0 ));
+
+		RoboconfConsumer consumer = new RoboconfConsumer( getId(), this.channel, this.messageQueue, this.consumptionController );
 		consumer.handleConsumeOk( queueName );
-		this.consumerTag = this.channel.basicConsume( queueName, true, consumer );
+		this.consumerTag = this.consumptionController.start( consumer );
 		this.logger.finer( "A new consumer tag was created: " + this.consumerTag );
+
+		// Create the channels to publish messages.
+		// Consuming and publishing on the same channel would prevent several threads from publishing at once.
+		int channelsCount = parseInt( RABBITMQ_PUBLISHING_CHANNELS, DEFAULT_PUBLISHING_CHANNELS );
+		boolean confirms = Boolean.parseBoolean( this.configuration.get( RABBITMQ_PUBLISHER_CONFIRMS ));
+		int windowSize = parseInt( RABBITMQ_CONFIRMS_WINDOW, DEFAULT_CONFIRMS_WINDOW );
+		int maxRetries = parseInt( RABBITMQ_CONFIRMS_MAX_RETRIES, DEFAULT_CONFIRMS_MAX_RETRIES );
+
+		List<PublishingChannel> channels = new ArrayList<> ();
+		for( int i=0; i<Math.max( 1, channelsCount ); i++ ) {
+			Channel publishingChannel = this.channel.getConnection().createChannel();
+			channels.add( new PublishingChannel( publishingChannel, confirms, windowSize, maxRetries, this.confirmLatencies ));
+		}
+
+		this.publishingChannels = channels;
+		this.logger.fine( getId() + " created " + channels.size() + " channel(s) to publish messages. Publisher confirms: " + confirms );
 	}
 
 
@@ -252,12 +298,20 @@ public class RabbitMqClient implements IMessagingClient {
 		// Stop listening messages
 		if( this.channel != null
 				&& this.channel.isOpen()
-				&& this.consumerTag != null ) {
+				&& this.consumptionController != null ) {
 
-			this.channel.basicCancel( this.consumerTag );
+			this.consumptionController.stop();
 			this.logger.finer( "A consumer tag was cancelled: " + this.consumerTag );
 		}
 
+		this.consumptionController = null;
+
+		// Close the publishing channels (and wait for pending confirmations)
+		for( PublishingChannel publishingChannel : this.publishingChannels )
+			publishingChannel.close( CLOSE_TIMEOUT );
+
+		this.publishingChannels = Collections.emptyList();
+
 		// Close the connection
 		this.consumerTag = null;
 		if( isConnected()) {
@@ -312,13 +366,75 @@ public class RabbitMqClient implements IMessagingClient {
 			mandatory = true;
 
 		// Send the message.
-		this.channel.basicPublish(
-				exchangeName,		// The exchange name
-				routingKey, 		// The routing key
-				mandatory, 			// Mandatory => we want it to be delivered
-				false,				// Useless, RabbitMQ does not support it for now.
-				props,				// The publish properties
-				SerializationUtils.serializeObject( msg ));
+		// Messages with the same exchange and routing key always go through
+		// the same channel, so that their order is preserved.
+		findPublishingChannel( exchangeName, routingKey ).publish(
+				exchangeName,
+				routingKey,
+				mandatory,
+				props,
+				this.codec.encode( msg ));
+	}
+
+
+	@Override
+	public long getConfirmedMessagesCount() {
+
+		long result = 0;
+		for( PublishingChannel publishingChannel : this.publishingChannels )
+			result += publishingChannel.getConfirmedMessagesCount();
+
+		return result;
+	}
+
+
+	@Override
+	public long getRejectedMessagesCount() {
+
+		long result = 0;
+		for( PublishingChannel publishingChannel : this.publishingChannels )
+			result += publishingChannel.getRejectedMessagesCount();
+
+		return result;
+	}
+
+
+	@Override
+	public long getRepublishedMessagesCount() {
+
+		long result = 0;
+		for( PublishingChannel publishingChannel : this.publishingChannels )
+			result += publishingChannel.getRepublishedMessagesCount();
+
+		return result;
+	}
+
+
+	@Override
+	public long getLostMessagesCount() {
+
+		long result = 0;
+		for( PublishingChannel publishingChannel : this.publishingChannels )
+			result += publishingChannel.getLostMessagesCount();
+
+		return result;
+	}
+
+
+	@Override
+	public int getPendingConfirmsCount() {
+
+		int result = 0;
+		for( PublishingChannel publishingChannel : this.publishingChannels )
+			result += publishingChannel.getPendingConfirmsCount();
+
+		return result;
+	}
+
+
+	@Override
+	public LatencyHistogram getConfirmLatencies() {
+		return this.confirmLatencies;
 	}
 
 
@@ -345,6 +461,33 @@ public class RabbitMqClient implements IMessagingClient {
 	}
 
 
+	PublishingChannel findPublishingChannel( String exchangeName, String routingKey ) throws IOException {
+
+		List<PublishingChannel> channels = this.publishingChannels;
+		if( channels.isEmpty())
+			throw new IOException( getId() + " is not connected to RabbitMQ." );
+
+		int hash = ( exchangeName + "|" + routingKey ).hashCode() & Integer.MAX_VALUE;
+		return channels.get( hash % channels.size());
+	}
+
+
+	private int parseInt( String propertyName, int defaultValue ) {
+
+		int result = defaultValue;
+		String value = this.configuration.get( propertyName );
+		try {
+			if( value != null )
+				result = Integer.parseInt( value.trim());
+
+		} catch( NumberFormatException e ) {
+			this.logger.warning( "Invalid value for " + propertyName + ": " + value + ". Default value will be used (" + defaultValue + ")." );
+		}
+
+		return result;
+	}
+
+
 	String getQueueName() {
 
 		StringBuilder queueName = new StringBuilder();
@@ -0,0 +1,342 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.rabbitmq.internal.impl;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.jmx.IHandledMessageListener;
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
+import net.roboconf.messaging.api.messages.Message;
+
+/**
+ * A class that controls how a RabbitMQ consumer receives and acknowledges messages.
+ * <p>
+ * With a prefetch count of 0, messages are acknowledged automatically by RabbitMQ
+ * as soon as they are delivered (this is the historical behavior). Otherwise, RabbitMQ
+ * does not deliver more than <i>prefetch</i> unacknowledged messages, and messages are
+ * only acknowledged once they have been handled by the message processor. If the client
+ * crashes, RabbitMQ delivers unacknowledged messages again.
+ * </p>
+ * <p>
+ * Acknowledgements are sent by batches: one acknowledgement validates all the messages
+ * up to a given delivery tag. Since processing lanes may process messages in any order,
+ * only the messages delivered before the oldest unprocessed one can be acknowledged.
+ * </p>
+ * <p>
+ * When a high-water mark is set, the consumption is paused when the local message queue
+ * contains too many messages, and resumed when half of them have been processed. Bursts
+ * are then absorbed by RabbitMQ and not by the local heap.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class ConsumptionController implements IHandledMessageListener, RecoveryListener {
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final Channel channel;
+	private final String queueName;
+	private final RoboconfMessageQueue messageQueue;
+	private final int prefetch, ackBatchSize, highWaterMark;
+
+	private final Map<Message,Long> messageToDeliveryTag = new IdentityHashMap<> ();
+	private final TreeSet<Long> unprocessedDeliveryTags = new TreeSet<> ();
+	private final TreeSet<Long> processedDeliveryTags = new TreeSet<> ();
+	private long highestDeliveryTag, lastAcknowledgedDeliveryTag;
+
+	private Consumer consumer;
+	private String consumerTag;
+	private boolean paused = false;
+	private long pausesCount;
+
+
+	/**
+	 * Constructor.
+	 * @param channel the channel to consume messages from
+	 * @param queueName the name of the queue to consume
+	 * @param messageQueue the local message queue
+	 * @param prefetch the maximum number of unacknowledged messages (0 for automatic acknowledgements)
+	 * @param ackBatchSize the number of processed messages acknowledged at once
+	 * @param highWaterMark the size of the local queue above which the consumption is paused (0 to disable it)
+	 */
+	public ConsumptionController(
+			Channel channel,
+			String queueName,
+			RoboconfMessageQueue messageQueue,
+			int prefetch,
+			int ackBatchSize,
+			int highWaterMark ) {
+
+		this.channel = channel;
+		this.queueName = queueName;
+		this.messageQueue = messageQueue;
+		this.prefetch = Math.max( 0, prefetch );
+		this.ackBatchSize = Math.max( 1, ackBatchSize );
+		this.highWaterMark = Math.max( 0, highWaterMark );
+	}
+
+
+	/**
+	 * Starts consuming messages.
+	 * @param consumer the consumer
+	 * @return the consumer tag
+	 * @throws IOException if something went wrong
+	 */
+	public synchronized String start( Consumer consumer ) throws IOException {
+
+		this.consumer = consumer;
+		if( this.prefetch > 0 )
+			this.channel.basicQos( this.prefetch );
+
+		if( this.prefetch > 0 || this.highWaterMark > 0 )
+			this.messageQueue.addHandledMessageListener( this );
+
+		if( this.channel instanceof Recoverable )
+			((Recoverable) this.channel).addRecoveryListener( this );
+
+		this.consumerTag = this.channel.basicConsume( this.queueName, isAutoAck(), consumer );
+		this.paused = false;
+		return this.consumerTag;
+	}
+
+
+	/**
+	 * Stops consuming messages.
+	 * <p>
+	 * Processed messages are acknowledged. Messages that were
+	 * not processed will be delivered again by RabbitMQ.
+	 * </p>
+	 *
+	 * @throws IOException if something went wrong
+	 */
+	public synchronized void stop() throws IOException {
+
+		this.messageQueue.removeHandledMessageListener( this );
+		if( this.channel.isOpen()) {
+			if( this.consumerTag != null && ! this.paused )
+				this.channel.basicCancel( this.consumerTag );
+
+			if( ! isAutoAck())
+				acknowledgeProcessedMessages();
+		}
+
+		this.consumerTag = null;
+		this.paused = false;
+	}
+
+
+	/**
+	 * Indicates a message was delivered by RabbitMQ.
+	 * <p>
+	 * It must be invoked before the message is added into the local queue.
+	 * </p>
+	 *
+	 * @param message the deserialized message
+	 * @param deliveryTag its delivery tag
+	 */
+	public synchronized void messageWasDelivered( Message message, long deliveryTag ) {
+
+		if( ! isAutoAck()) {
+			this.messageToDeliveryTag.put( message, deliveryTag );
+			this.unprocessedDeliveryTags.add( deliveryTag );
+			this.highestDeliveryTag = Math.max( this.highestDeliveryTag, deliveryTag );
+		}
+	}
+
+
+	/**
+	 * Indicates a message was added into the local queue.
+	 * <p>
+	 * The consumption is paused if the local queue contains too many messages.
+	 * </p>
+	 */
+	public synchronized void messageWasQueued() {
+
+		if( this.highWaterMark > 0
+				&& ! this.paused
+				&& this.consumerTag != null
+				&& this.messageQueue.size() >= this.highWaterMark ) {
+
+			this.logger.fine( "The local message queue reached its high-water mark. Consumption of " + this.queueName + " is paused." );
+			try {
+				this.channel.basicCancel( this.consumerTag );
+				this.paused = true;
+				this.pausesCount ++;
+
+			} catch( IOException e ) {
+				this.logger.warning( "The consumption of " + this.queueName + " could not be paused." );
+				Utils.logException( this.logger, e );
+			}
+		}
+	}
+
+
+	/**
+	 * Indicates a delivered message could not be deserialized.
+	 * <p>
+	 * Such a message is acknowledged immediately, as it will never be processed.
+	 * </p>
+	 *
+	 * @param deliveryTag its delivery tag
+	 */
+	public synchronized void messageCouldNotBeDecoded( long deliveryTag ) {
+
+		if( ! isAutoAck()) {
+			this.highestDeliveryTag = Math.max( this.highestDeliveryTag, deliveryTag );
+			markAsProcessed( deliveryTag );
+		}
+	}
+
+
+	@Override
+	public synchronized void messageWasHandled( Message message ) {
+
+		Long deliveryTag = this.messageToDeliveryTag.remove( message );
+		if( deliveryTag != null )
+			markAsProcessed( deliveryTag );
+
+		if( this.paused && this.messageQueue.size() <= this.highWaterMark / 2 ) {
+			this.logger.fine( "The local message queue is below its low-water mark. Consumption of " + this.queueName + " is resumed." );
+			try {
+				this.consumerTag = this.channel.basicConsume( this.queueName, isAutoAck(), this.consumer );
+				this.paused = false;
+
+			} catch( IOException e ) {
+				this.logger.warning( "The consumption of " + this.queueName + " could not be resumed." );
+				Utils.logException( this.logger, e );
+			}
+		}
+	}
+
+
+	@Override
+	public synchronized void handleRecovery( Recoverable recoverable ) {
+
+		// Delivery tags are reset when a channel is recovered.
+		// RabbitMQ will deliver unacknowledged messages again.
+		this.messageToDeliveryTag.clear();
+		this.unprocessedDeliveryTags.clear();
+		this.processedDeliveryTags.clear();
+		this.highestDeliveryTag = 0;
+		this.lastAcknowledgedDeliveryTag = 0;
+	}
+
+
+	/**
+	 * @return true if RabbitMQ acknowledges messages automatically
+	 */
+	public boolean isAutoAck() {
+		return this.prefetch == 0;
+	}
+
+
+	/**
+	 * @return true if the consumption is paused
+	 */
+	public synchronized boolean isPaused() {
+		return this.paused;
+	}
+
+
+	/**
+	 * @return the number of times the consumption was paused
+	 */
+	public synchronized long getPausesCount() {
+		return this.pausesCount;
+	}
+
+
+	/**
+	 * @return the number of delivered messages that were not acknowledged yet
+	 */
+	public synchronized int getUnacknowledgedMessagesCount() {
+		return this.unprocessedDeliveryTags.size() + this.processedDeliveryTags.size();
+	}
+
+
+	/**
+	 * @return the current consumer tag (null if the consumption is stopped or paused)
+	 */
+	public synchronized String getConsumerTag() {
+		return this.paused ? null : this.consumerTag;
+	}
+
+
+	/**
+	 * Marks a message as processed and acknowledges a batch of messages if possible.
+	 * <p>
+	 * The caller must hold the lock.
+	 * </p>
+	 *
+	 * @param deliveryTag a delivery tag
+	 */
+	private void markAsProcessed( long deliveryTag ) {
+
+		this.unprocessedDeliveryTags.remove( deliveryTag );
+		this.processedDeliveryTags.add( deliveryTag );
+
+		// Acknowledge when a batch is complete, or when everything has been processed.
+		// Otherwise, with few messages, they would wait forever for their acknowledgement.
+		if( this.processedDeliveryTags.size() >= this.ackBatchSize
+				|| this.unprocessedDeliveryTags.isEmpty())
+			acknowledgeProcessedMessages();
+	}
+
+
+	/**
+	 * Acknowledges all the messages delivered before the oldest unprocessed one.
+	 * <p>
+	 * The caller must hold the lock.
+	 * </p>
+	 */
+	private void acknowledgeProcessedMessages() {
+
+		long upTo = this.unprocessedDeliveryTags.isEmpty()
+				? this.highestDeliveryTag
+				: this.unprocessedDeliveryTags.first() - 1;
+
+		if( upTo > this.lastAcknowledgedDeliveryTag ) {
+			try {
+				this.channel.basicAck( upTo, true );
+				this.lastAcknowledgedDeliveryTag = upTo;
+				this.processedDeliveryTags.headSet( upTo, true ).clear();
+
+			} catch( IOException e ) {
+				this.logger.warning( "Messages could not be acknowledged to RabbitMQ. They will be delivered again." );
+				Utils.logException( this.logger, e );
+			}
+		}
+	}
+}
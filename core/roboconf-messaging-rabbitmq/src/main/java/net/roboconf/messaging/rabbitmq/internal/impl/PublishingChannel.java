@@ -0,0 +1,450 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.rabbitmq.internal.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+
+import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.jmx.LatencyHistogram;
+
+/**
+ * A RabbitMQ channel dedicated to the publication of messages.
+ * <p>
+ * RabbitMQ channels must not be used concurrently by several publishers.
+ * So, publications are serialized on a given channel.
+ * </p>
+ * <p>
+ * When publisher confirms are enabled, every published message is kept until RabbitMQ
+ * confirms it. Confirmations are handled asynchronously: publishing a message does not
+ * wait for its confirmation, unless the number of messages waiting for a confirmation
+ * reaches the window size. Rejected messages are published again, up to a given number
+ * of times. When a channel is recovered after a network failure, messages that were not
+ * confirmed are published again (RabbitMQ will never confirm them).
+ * </p>
+ * <p>
+ * Confirmations and recoveries are notified from the threads of the RabbitMQ client.
+ * Publishing from them could block the connection. So, messages to publish again are
+ * handed to a dedicated thread.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class PublishingChannel implements ConfirmListener, RecoveryListener {
+
+	/**
+	 * The maximum delay to wait for room in the window of confirms (in seconds).
+	 */
+	static final long WINDOW_TIMEOUT = 30;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final ConcurrentNavigableMap<Long,PendingMessage> pendingMessages = new ConcurrentSkipListMap<> ();
+
+	private final Channel channel;
+	private final boolean confirms;
+	private final int maxRetries;
+	private final Semaphore window;
+	private final LatencyHistogram confirmLatencies;
+	private final ExecutorService republisher;
+
+	private final AtomicLong confirmedMessagesCount = new AtomicLong();
+	private final AtomicLong rejectedMessagesCount = new AtomicLong();
+	private final AtomicLong republishedMessagesCount = new AtomicLong();
+	private final AtomicLong lostMessagesCount = new AtomicLong();
+
+
+	/**
+	 * Constructor.
+	 * @param channel a RabbitMQ channel
+	 * @param confirms true to enable publisher confirms
+	 * @param windowSize the maximum number of messages waiting for a confirmation
+	 * @param maxRetries the number of times a rejected message is published again
+	 * @param confirmLatencies the histogram where confirmation latencies are recorded
+	 * @throws IOException if the channel could not be configured
+	 */
+	public PublishingChannel(
+			Channel channel,
+			boolean confirms,
+			int windowSize,
+			int maxRetries,
+			LatencyHistogram confirmLatencies )
+	throws IOException {
+
+		this.channel = channel;
+		this.confirms = confirms;
+		this.maxRetries = maxRetries;
+		this.window = new Semaphore( Math.max( 1, windowSize ));
+		this.confirmLatencies = confirmLatencies;
+
+		// Be notified when a message does not arrive in a queue (i.e. nobody is listening)
+		this.channel.addReturnListener( new RoboconfReturnListener());
+
+		// Be notified when the channel is recovered
+		if( this.channel instanceof Recoverable )
+			((Recoverable) this.channel).addRecoveryListener( this );
+
+		if( confirms ) {
+			this.republisher = Executors.newSingleThreadExecutor( new ThreadFactory() {
+				@Override
+				public Thread newThread( Runnable r ) {
+					Thread thread = new Thread( r, "Roboconf - RabbitMQ republisher" );
+					thread.setDaemon( true );
+					return thread;
+				}
+			});
+
+			this.channel.confirmSelect();
+			this.channel.addConfirmListener( this );
+
+		} else {
+			this.republisher = null;
+		}
+	}
+
+
+	/**
+	 * Publishes a message.
+	 * <p>
+	 * With publisher confirms, this method only waits when too many
+	 * messages are waiting for a confirmation.
+	 * </p>
+	 *
+	 * @param exchangeName the exchange name
+	 * @param routingKey the routing key
+	 * @param mandatory true if RabbitMQ must notify undelivered messages
+	 * @param props the message properties (can be null)
+	 * @param body the message's content
+	 * @throws IOException if the message could not be published
+	 */
+	public void publish( String exchangeName, String routingKey, boolean mandatory, BasicProperties props, byte[] body )
+	throws IOException {
+
+		PendingMessage msg = new PendingMessage( exchangeName, routingKey, mandatory, props, body );
+		if( ! this.confirms ) {
+			synchronized( this ) {
+				basicPublish( msg );
+			}
+
+		} else {
+			// Wait for room in the window outside the lock, so
+			// that rejected messages can still be published again.
+			try {
+				if( ! this.window.tryAcquire( WINDOW_TIMEOUT, TimeUnit.SECONDS ))
+					throw new IOException( "Too many messages are waiting for a confirmation from RabbitMQ." );
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new IOException( e );
+			}
+
+			try {
+				send( msg );
+
+			} catch( IOException e ) {
+				this.window.release();
+				throw e;
+			}
+		}
+	}
+
+
+	/**
+	 * Waits for all the published messages to be confirmed and closes the channel.
+	 * @param timeout the maximum delay to wait for confirmations (in milliseconds)
+	 * @throws IOException if the channel could not be closed
+	 */
+	public void close( long timeout ) throws IOException {
+
+		if( this.confirms && this.channel.isOpen()) {
+			try {
+				this.channel.waitForConfirms( timeout );
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+
+			} catch( TimeoutException e ) {
+				this.logger.warning( "Some published messages were not confirmed before the channel was closed." );
+			}
+		}
+
+		// Let rejected messages be published again before giving up
+		if( this.republisher != null ) {
+			this.republisher.shutdown();
+			try {
+				this.republisher.awaitTermination( timeout, TimeUnit.MILLISECONDS );
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		int unconfirmed = this.pendingMessages.size();
+		if( unconfirmed > 0 ) {
+			this.lostMessagesCount.addAndGet( unconfirmed );
+			this.pendingMessages.clear();
+			this.logger.severe( unconfirmed + " published message(s) may have been lost (no confirmation from RabbitMQ)." );
+		}
+
+		if( this.channel.isOpen())
+			this.channel.close();
+	}
+
+
+	@Override
+	public void handleAck( long deliveryTag, boolean multiple ) throws IOException {
+
+		long now = System.nanoTime();
+		for( PendingMessage msg : removePendingMessages( deliveryTag, multiple )) {
+			this.confirmLatencies.record(( now - msg.publicationTime ) / 1000 );
+			this.confirmedMessagesCount.incrementAndGet();
+			this.window.release();
+		}
+	}
+
+
+	@Override
+	public void handleNack( long deliveryTag, boolean multiple ) throws IOException {
+
+		List<PendingMessage> rejected = removePendingMessages( deliveryTag, multiple );
+		this.rejectedMessagesCount.addAndGet( rejected.size());
+		scheduleRepublication( rejected );
+	}
+
+
+	@Override
+	public void handleRecovery( Recoverable recoverable ) {
+
+		// Delivery tags are reset when a channel is recovered.
+		// Messages that were waiting for a confirmation will never get one.
+		List<PendingMessage> toRepublish;
+		synchronized( this ) {
+			toRepublish = new ArrayList<>( this.pendingMessages.values());
+			this.pendingMessages.clear();
+		}
+
+		if( ! toRepublish.isEmpty()) {
+			this.logger.info( toRepublish.size() + " unconfirmed message(s) are about to be published again after a channel recovery." );
+			scheduleRepublication( toRepublish );
+		}
+	}
+
+
+	/**
+	 * @return the underlying channel
+	 */
+	public Channel getChannel() {
+		return this.channel;
+	}
+
+
+	/**
+	 * @return the number of messages waiting for a confirmation
+	 */
+	public int getPendingConfirmsCount() {
+		return this.pendingMessages.size();
+	}
+
+
+	/**
+	 * @return the number of confirmed messages
+	 */
+	public long getConfirmedMessagesCount() {
+		return this.confirmedMessagesCount.get();
+	}
+
+
+	/**
+	 * @return the number of rejected messages
+	 */
+	public long getRejectedMessagesCount() {
+		return this.rejectedMessagesCount.get();
+	}
+
+
+	/**
+	 * @return the number of messages that were published again
+	 */
+	public long getRepublishedMessagesCount() {
+		return this.republishedMessagesCount.get();
+	}
+
+
+	/**
+	 * @return the number of messages that were given up
+	 */
+	public long getLostMessagesCount() {
+		return this.lostMessagesCount.get();
+	}
+
+
+	/**
+	 * Hands messages that were not confirmed to the republishing thread.
+	 * @param messages a non-null list of messages
+	 */
+	private void scheduleRepublication( final List<PendingMessage> messages ) {
+
+		if( messages.isEmpty())
+			return;
+
+		try {
+			this.republisher.execute( new Runnable() {
+				@Override
+				public void run() {
+					for( PendingMessage msg : messages )
+						republish( msg );
+				}
+			});
+
+		} catch( RejectedExecutionException e ) {
+			// The channel is being closed
+			this.lostMessagesCount.addAndGet( messages.size());
+			this.window.release( messages.size());
+
+			this.logger.severe( messages.size() + " message(s) were lost. RabbitMQ did not confirm them and the channel is being closed." );
+		}
+	}
+
+
+	/**
+	 * Publishes a message again, unless it was already retried too many times.
+	 * <p>
+	 * The message keeps the permit it got from the window.
+	 * </p>
+	 *
+	 * @param msg a message that was not confirmed
+	 */
+	private void republish( PendingMessage msg ) {
+
+		boolean republished = false;
+		if( msg.attempts < this.maxRetries ) {
+			msg.attempts ++;
+			try {
+				send( msg );
+				this.republishedMessagesCount.incrementAndGet();
+				republished = true;
+
+			} catch( IOException e ) {
+				this.logger.severe( "A rejected message could not be published again to " + msg.exchangeName + "." );
+				Utils.logException( this.logger, e );
+			}
+		}
+
+		if( ! republished ) {
+			this.lostMessagesCount.incrementAndGet();
+			this.window.release();
+			this.logger.severe( "A message for " + msg.exchangeName + " (routing key: " + msg.routingKey + ") was lost. RabbitMQ did not confirm it." );
+		}
+	}
+
+
+	private synchronized void send( PendingMessage msg ) throws IOException {
+
+		long seqNo = this.channel.getNextPublishSeqNo();
+		msg.publicationTime = System.nanoTime();
+		this.pendingMessages.put( seqNo, msg );
+		try {
+			basicPublish( msg );
+
+		} catch( IOException e ) {
+			this.pendingMessages.remove( seqNo );
+			throw e;
+		}
+	}
+
+
+	private void basicPublish( PendingMessage msg ) throws IOException {
+
+		this.channel.basicPublish(
+				msg.exchangeName,	// The exchange name
+				msg.routingKey, 	// The routing key
+				msg.mandatory, 		// Mandatory => we want it to be delivered
+				false,				// Useless, RabbitMQ does not support it for now.
+				msg.props,			// The publish properties
+				msg.body );
+	}
+
+
+	private List<PendingMessage> removePendingMessages( long deliveryTag, boolean multiple ) {
+
+		List<PendingMessage> result = new ArrayList<> ();
+		if( multiple ) {
+			Map<Long,PendingMessage> confirmed = this.pendingMessages.headMap( deliveryTag, true );
+			result.addAll( confirmed.values());
+			confirmed.clear();
+
+		} else {
+			PendingMessage msg = this.pendingMessages.remove( deliveryTag );
+			if( msg != null )
+				result.add( msg );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * A message that was published but not confirmed yet.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private static class PendingMessage {
+
+		final String exchangeName, routingKey;
+		final boolean mandatory;
+		final BasicProperties props;
+		final byte[] body;
+
+		long publicationTime;
+		int attempts;
+
+
+		PendingMessage( String exchangeName, String routingKey, boolean mandatory, BasicProperties props, byte[] body ) {
+			this.exchangeName = exchangeName;
+			this.routingKey = routingKey;
+			this.mandatory = mandatory;
+			this.props = props;
+			this.body = body;
+		}
+	}
+}
@@ -49,6 +49,7 @@ public class RoboconfConsumer extends DefaultConsumer implements Consumer {
 	private final Logger logger = Logger.getLogger( getClass().getName());
 	private final RoboconfMessageQueue messageQueue;
 	private final String sourceName;
+	private final ConsumptionController consumptionController;
 
 
 	/**
@@ -58,9 +59,27 @@ public class RoboconfConsumer extends DefaultConsumer implements Consumer {
 	 * @param messageQueue
 	 */
 	public RoboconfConsumer( String sourceName, Channel channel, RoboconfMessageQueue messageQueue ) {
+		this( sourceName, channel, messageQueue, null );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param channel
+	 * @param sourceName
+	 * @param messageQueue
+	 * @param consumptionController a consumption controller (can be null if messages are acknowledged automatically)
+	 */
+	public RoboconfConsumer(
+			String sourceName,
+			Channel channel,
+			RoboconfMessageQueue messageQueue,
+			ConsumptionController consumptionController ) {
+
 		super( channel );
 		this.messageQueue = messageQueue;
 		this.sourceName = sourceName;
+		this.consumptionController = consumptionController;
 	}
 
 
@@ -73,12 +92,21 @@ public class RoboconfConsumer extends DefaultConsumer implements Consumer {
 			this.logger.finer( this.sourceName + " received a message " + message.getClass().getSimpleName()
 					+ " on routing key '" + envelope.getRoutingKey() + "'.");
 
+			if( this.consumptionController != null )
+				this.consumptionController.messageWasDelivered( message, envelope.getDeliveryTag());
+
 			this.messageQueue.add( message );
+			if( this.consumptionController != null )
+				this.consumptionController.messageWasQueued();
 
 		} catch( ClassNotFoundException | IOException e ) {
 			this.logger.severe( this.sourceName + ": a message could not be deserialized. => " + e.getClass().getSimpleName());
 			Utils.logException( this.logger, e );
 			this.messageQueue.errorWhileReceivingMessage();
+
+			// It will never be processed, acknowledge it now
+			if( this.consumptionController != null )
+				this.consumptionController.messageCouldNotBeDecoded( envelope.getDeliveryTag());
 		}
 	}
 
@@ -41,13 +41,17 @@ import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_SSL_TRU
 import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_SSL_TRUST_STORE_TYPE;
 import static net.roboconf.messaging.rabbitmq.RabbitMqConstants.RABBITMQ_USE_SSL;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import com.rabbitmq.client.Channel;
 
@@ -58,6 +62,7 @@ import net.roboconf.messaging.api.MessagingConstants;
 import net.roboconf.messaging.api.extensions.MessagingContext.RecipientKind;
 import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
 import net.roboconf.messaging.rabbitmq.RabbitMqConstants;
+import net.roboconf.messaging.rabbitmq.internal.impl.PublishingChannel;
 import net.roboconf.messaging.rabbitmq.internal.utils.RabbitMqTestUtils;
 
 /**
@@ -220,4 +225,49 @@ public class RabbitMqClientTest {
 		Assert.assertEquals( "guest", retrievedConfiguration.get( RABBITMQ_SERVER_PASSWORD ));
 		Assert.assertEquals( FACTORY_RABBITMQ, retrievedConfiguration.get( MessagingConstants.MESSAGING_TYPE_PROPERTY ));
 	}
+
+
+	@Test
+	public void testPublishingChannels() throws Exception {
+
+		Map<String,String> configuration = new HashMap<> ();
+		RabbitMqClient client = new RabbitMqClient( null, configuration, RecipientKind.DM );
+
+		// Not connected
+		try {
+			client.findPublishingChannel( "exchange", "key" );
+			Assert.fail( "An exception was expected." );
+
+		} catch( IOException e ) {
+			// nothing
+		}
+
+		// Several channels
+		List<PublishingChannel> channels = new ArrayList<> ();
+		for( int i=0; i<4; i++ ) {
+			PublishingChannel channel = Mockito.mock( PublishingChannel.class );
+			Mockito.when( channel.getConfirmedMessagesCount()).thenReturn( 5L );
+			Mockito.when( channel.getRejectedMessagesCount()).thenReturn( 4L );
+			Mockito.when( channel.getRepublishedMessagesCount()).thenReturn( 3L );
+			Mockito.when( channel.getLostMessagesCount()).thenReturn( 2L );
+			Mockito.when( channel.getPendingConfirmsCount()).thenReturn( 1 );
+			channels.add( channel );
+		}
+
+		client.publishingChannels = channels;
+
+		// Messages with the same exchange and routing key always use the same channel
+		PublishingChannel channel = client.findPublishingChannel( "exchange", "key" );
+		Assert.assertNotNull( channel );
+		for( int i=0; i<10; i++ )
+			Assert.assertSame( channel, client.findPublishingChannel( "exchange", "key" ));
+
+		// Statistics are aggregated
+		Assert.assertEquals( 20, client.getConfirmedMessagesCount());
+		Assert.assertEquals( 16, client.getRejectedMessagesCount());
+		Assert.assertEquals( 12, client.getRepublishedMessagesCount());
+		Assert.assertEquals( 8, client.getLostMessagesCount());
+		Assert.assertEquals( 4, client.getPendingConfirmsCount());
+		Assert.assertNotNull( client.getConfirmLatencies());
+	}
 }
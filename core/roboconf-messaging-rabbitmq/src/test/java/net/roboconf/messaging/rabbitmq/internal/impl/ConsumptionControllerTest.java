@@ -0,0 +1,253 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.rabbitmq.internal.impl;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.impl.recovery.AutorecoveringChannel;
+
+import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_dm_to_dm.MsgEcho;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class ConsumptionControllerTest {
+
+	private static final String QUEUE = "queue";
+
+	private AutorecoveringChannel channel;
+	private Consumer consumer;
+	private RoboconfMessageQueue messageQueue;
+
+
+	@Before
+	public void prepareChannel() throws Exception {
+
+		this.channel = Mockito.mock( AutorecoveringChannel.class );
+		this.consumer = Mockito.mock( Consumer.class );
+		this.messageQueue = new RoboconfMessageQueue();
+
+		Mockito.when( this.channel.isOpen()).thenReturn( true );
+		Mockito.when( this.channel.basicConsume(
+				Mockito.anyString(),
+				Mockito.anyBoolean(),
+				Mockito.any( Consumer.class ))).thenReturn( "tag" );
+	}
+
+
+	@Test
+	public void testAutomaticAcknowledgements() throws Exception {
+
+		ConsumptionController controller = new ConsumptionController( this.channel, QUEUE, this.messageQueue, 0, 10, 0 );
+		Assert.assertTrue( controller.isAutoAck());
+		Assert.assertEquals( "tag", controller.start( this.consumer ));
+		Assert.assertEquals( "tag", controller.getConsumerTag());
+
+		Mockito.verify( this.channel, Mockito.never()).basicQos( Mockito.anyInt());
+		Mockito.verify( this.channel ).basicConsume( QUEUE, true, this.consumer );
+
+		Message msg = new MsgEcho( "hi" );
+		controller.messageWasDelivered( msg, 1 );
+		this.messageQueue.add( msg );
+		controller.messageWasQueued();
+		this.messageQueue.messageWasHandled( msg );
+
+		Assert.assertEquals( 0, controller.getUnacknowledgedMessagesCount());
+		Mockito.verify( this.channel, Mockito.never()).basicAck( Mockito.anyLong(), Mockito.anyBoolean());
+
+		controller.stop();
+		Mockito.verify( this.channel ).basicCancel( "tag" );
+		Assert.assertNull( controller.getConsumerTag());
+	}
+
+
+	@Test
+	public void testManualAcknowledgements_inOrder() throws Exception {
+
+		ConsumptionController controller = new ConsumptionController( this.channel, QUEUE, this.messageQueue, 20, 3, 0 );
+		Assert.assertFalse( controller.isAutoAck());
+		controller.start( this.consumer );
+
+		Mockito.verify( this.channel ).basicQos( 20 );
+		Mockito.verify( this.channel ).basicConsume( QUEUE, false, this.consumer );
+
+		Message[] messages = new Message[ 5 ];
+		for( int i=0; i<messages.length; i++ ) {
+			messages[ i ] = new MsgEcho( "msg " + i );
+			controller.messageWasDelivered( messages[ i ], i + 1 );
+		}
+
+		Assert.assertEquals( 5, controller.getUnacknowledgedMessagesCount());
+
+		// Not enough messages for a batch
+		this.messageQueue.messageWasHandled( messages[ 0 ]);
+		this.messageQueue.messageWasHandled( messages[ 1 ]);
+		Mockito.verify( this.channel, Mockito.never()).basicAck( Mockito.anyLong(), Mockito.anyBoolean());
+
+		// A batch is complete
+		this.messageQueue.messageWasHandled( messages[ 2 ]);
+		Mockito.verify( this.channel ).basicAck( 3, true );
+		Assert.assertEquals( 2, controller.getUnacknowledgedMessagesCount());
+
+		// Everything was processed
+		this.messageQueue.messageWasHandled( messages[ 3 ]);
+		this.messageQueue.messageWasHandled( messages[ 4 ]);
+		Mockito.verify( this.channel ).basicAck( 5, true );
+		Assert.assertEquals( 0, controller.getUnacknowledgedMessagesCount());
+
+		// Unknown messages are ignored
+		this.messageQueue.messageWasHandled( new MsgEcho( "unknown" ));
+		Mockito.verify( this.channel, Mockito.times( 2 )).basicAck( Mockito.anyLong(), Mockito.anyBoolean());
+	}
+
+
+	@Test
+	public void testManualAcknowledgements_outOfOrder() throws Exception {
+
+		ConsumptionController controller = new ConsumptionController( this.channel, QUEUE, this.messageQueue, 20, 2, 0 );
+		controller.start( this.consumer );
+
+		Message[] messages = new Message[ 4 ];
+		for( int i=0; i<messages.length; i++ ) {
+			messages[ i ] = new MsgEcho( "msg " + i );
+			controller.messageWasDelivered( messages[ i ], i + 1 );
+		}
+
+		// The first message is still being processed: nothing can be acknowledged
+		this.messageQueue.messageWasHandled( messages[ 1 ]);
+		this.messageQueue.messageWasHandled( messages[ 2 ]);
+		Mockito.verify( this.channel, Mockito.never()).basicAck( Mockito.anyLong(), Mockito.anyBoolean());
+
+		// The first message is processed: the three first ones can be acknowledged
+		this.messageQueue.messageWasHandled( messages[ 0 ]);
+		Mockito.verify( this.channel ).basicAck( 3, true );
+		Assert.assertEquals( 1, controller.getUnacknowledgedMessagesCount());
+
+		// Undecodable messages are acknowledged too
+		controller.messageCouldNotBeDecoded( 5 );
+		this.messageQueue.messageWasHandled( messages[ 3 ]);
+		Mockito.verify( this.channel ).basicAck( 5, true );
+		Assert.assertEquals( 0, controller.getUnacknowledgedMessagesCount());
+	}
+
+
+	@Test
+	public void testStopAcknowledgesProcessedMessages() throws Exception {
+
+		ConsumptionController controller = new ConsumptionController( this.channel, QUEUE, this.messageQueue, 20, 10, 0 );
+		controller.start( this.consumer );
+
+		Message msg1 = new MsgEcho( "msg 1" );
+		Message msg2 = new MsgEcho( "msg 2" );
+		Message msg3 = new MsgEcho( "msg 3" );
+		controller.messageWasDelivered( msg1, 1 );
+		controller.messageWasDelivered( msg2, 2 );
+		controller.messageWasDelivered( msg3, 3 );
+
+		this.messageQueue.messageWasHandled( msg1 );
+		this.messageQueue.messageWasHandled( msg2 );
+		Mockito.verify( this.channel, Mockito.never()).basicAck( Mockito.anyLong(), Mockito.anyBoolean());
+
+		controller.stop();
+		Mockito.verify( this.channel ).basicCancel( "tag" );
+		Mockito.verify( this.channel ).basicAck( 2, true );
+
+		// Once stopped, handled messages are not tracked anymore
+		this.messageQueue.messageWasHandled( msg3 );
+		Mockito.verify( this.channel, Mockito.times( 1 )).basicAck( Mockito.anyLong(), Mockito.anyBoolean());
+	}
+
+
+	@Test
+	public void testRecoveryResetsTheTracking() throws Exception {
+
+		ConsumptionController controller = new ConsumptionController( this.channel, QUEUE, this.messageQueue, 20, 1, 0 );
+		controller.start( this.consumer );
+		Mockito.verify( this.channel ).addRecoveryListener( controller );
+
+		Message msg1 = new MsgEcho( "msg 1" );
+		Message msg2 = new MsgEcho( "msg 2" );
+		controller.messageWasDelivered( msg1, 1 );
+		controller.messageWasDelivered( msg2, 2 );
+		Assert.assertEquals( 2, controller.getUnacknowledgedMessagesCount());
+
+		controller.handleRecovery( this.channel );
+		Assert.assertEquals( 0, controller.getUnacknowledgedMessagesCount());
+
+		// Messages delivered before the recovery must not be acknowledged with the new tags
+		this.messageQueue.messageWasHandled( msg1 );
+		Mockito.verify( this.channel, Mockito.never()).basicAck( Mockito.anyLong(), Mockito.anyBoolean());
+
+		Message msg3 = new MsgEcho( "msg 3" );
+		controller.messageWasDelivered( msg3, 1 );
+		this.messageQueue.messageWasHandled( msg3 );
+		Mockito.verify( this.channel ).basicAck( 1, true );
+	}
+
+
+	@Test
+	public void testFlowControl() throws Exception {
+
+		ConsumptionController controller = new ConsumptionController( this.channel, QUEUE, this.messageQueue, 0, 10, 4 );
+		controller.start( this.consumer );
+		Mockito.verify( this.channel, Mockito.times( 1 )).basicConsume( QUEUE, true, this.consumer );
+
+		for( int i=0; i<3; i++ ) {
+			this.messageQueue.add( new MsgEcho( "msg " + i ));
+			controller.messageWasQueued();
+		}
+
+		Assert.assertFalse( controller.isPaused());
+		Mockito.verify( this.channel, Mockito.never()).basicCancel( Mockito.anyString());
+
+		// The high-water mark is reached
+		this.messageQueue.add( new MsgEcho( "msg 3" ));
+		controller.messageWasQueued();
+		Assert.assertTrue( controller.isPaused());
+		Assert.assertEquals( 1, controller.getPausesCount());
+		Assert.assertNull( controller.getConsumerTag());
+		Mockito.verify( this.channel ).basicCancel( "tag" );
+
+		// Process messages until the low-water mark is reached
+		this.messageQueue.messageWasHandled( this.messageQueue.poll());
+		Assert.assertTrue( controller.isPaused());
+
+		this.messageQueue.messageWasHandled( this.messageQueue.poll());
+		Assert.assertFalse( controller.isPaused());
+		Assert.assertEquals( "tag", controller.getConsumerTag());
+		Mockito.verify( this.channel, Mockito.times( 2 )).basicConsume( QUEUE, true, this.consumer );
+
+		// Stopping does not cancel the consumer twice
+		controller.stop();
+		Mockito.verify( this.channel, Mockito.times( 2 )).basicCancel( "tag" );
+	}
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright 2017 Linagora, Université Joseph Fourier, Floralis
+ *
+ * The present code is developed in the scope of the joint LINAGORA -
+ * Université Joseph Fourier - Floralis research program and is designated
+ * as a "Result" pursuant to the terms and conditions of the LINAGORA
+ * - Université Joseph Fourier - Floralis research program. Each copyright
+ * holder of Results enumerated here above fully & independently holds complete
+ * ownership of the complete Intellectual Property rights applicable to the whole
+ * of said Results, and may freely exploit it in any manner which does not infringe
+ * the moral rights of the other copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.rabbitmq.internal.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ReturnListener;
+import com.rabbitmq.client.impl.recovery.AutorecoveringChannel;
+
+import net.roboconf.messaging.api.jmx.LatencyHistogram;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class PublishingChannelTest {
+
+	private AutorecoveringChannel channel;
+	private LatencyHistogram histogram;
+	private final List<Thread> publishingThreads = Collections.synchronizedList( new ArrayList<Thread> ());
+
+
+	@Before
+	public void prepareChannel() throws Exception {
+
+		this.histogram = new LatencyHistogram();
+		this.channel = Mockito.mock( AutorecoveringChannel.class );
+		Mockito.when( this.channel.isOpen()).thenReturn( true );
+
+		final AtomicLong seqNo = new AtomicLong( 1 );
+		Mockito.when( this.channel.getNextPublishSeqNo()).thenAnswer( new Answer<Long>() {
+			@Override
+			public Long answer( InvocationOnMock invocation ) throws Throwable {
+				return seqNo.getAndIncrement();
+			}
+		});
+
+		Mockito.doAnswer( new Answer<Object>() {
+			@Override
+			public Object answer( InvocationOnMock invocation ) throws Throwable {
+				PublishingChannelTest.this.publishingThreads.add( Thread.currentThread());
+				return null;
+			}
+
+		}).when( this.channel ).basicPublish(
+				Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyBoolean(), Mockito.anyBoolean(),
+				Mockito.any( BasicProperties.class ), Mockito.any( byte[].class ));
+	}
+
+
+	@Test
+	public void testWithoutConfirms() throws Exception {
+
+		PublishingChannel pc = new PublishingChannel( this.channel, false, 10, 3, this.histogram );
+		Mockito.verify( this.channel ).addReturnListener( Mockito.any( ReturnListener.class ));
+		Mockito.verify( this.channel ).addRecoveryListener( pc );
+		Mockito.verify( this.channel, Mockito.never()).confirmSelect();
+
+		pc.publish( "exchange", "key", true, null, new byte[ 1 ]);
+		Mockito.verify( this.channel ).basicPublish(
+				Mockito.eq( "exchange" ), Mockito.eq( "key" ),
+				Mockito.eq( true ), Mockito.eq( false ),
+				Mockito.any( BasicProperties.class ), Mockito.any( byte[].class ));
+
+		Assert.assertEquals( 0, pc.getPendingConfirmsCount());
+		pc.close( 10 );
+		Mockito.verify( this.channel, Mockito.never()).waitForConfirms( Mockito.anyLong());
+		Mockito.verify( this.channel ).close();
+	}
+
+
+	@Test
+	public void testConfirms() throws Exception {
+
+		PublishingChannel pc = new PublishingChannel( this.channel, true, 10, 3, this.histogram );
+		Mockito.verify( this.channel ).confirmSelect();
+		Mockito.verify( this.channel ).addConfirmListener( Mockito.any( ConfirmListener.class ));
+
+		for( int i=0; i<4; i++ )
+			pc.publish( "exchange", "key", false, null, new byte[ 1 ]);
+
+		Assert.assertEquals( 4, pc.getPendingConfirmsCount());
+
+		// Several messages at once
+		pc.handleAck( 2, true );
+		Assert.assertEquals( 2, pc.getPendingConfirmsCount());
+		Assert.assertEquals( 2, pc.getConfirmedMessagesCount());
+
+		// A single message
+		pc.handleAck( 4, false );
+		Assert.assertEquals( 1, pc.getPendingConfirmsCount());
+		Assert.assertEquals( 3, pc.getConfirmedMessagesCount());
+
+		// Unknown tags are ignored
+		pc.handleAck( 4, false );
+		Assert.assertEquals( 3, pc.getConfirmedMessagesCount());
+
+		Assert.assertEquals( 3, this.histogram.computeStatistics()[ 0 ]);
+		Assert.assertEquals( 0, pc.getRejectedMessagesCount());
+		Assert.assertEquals( 0, pc.getLostMessagesCount());
+
+		// Closing with a missing confirmation
+		pc.close( 10 );
+		Mockito.verify( this.channel ).waitForConfirms( 10 );
+		Mockito.verify( this.channel ).close();
+		Assert.assertEquals( 0, pc.getPendingConfirmsCount());
+		Assert.assertEquals( 1, pc.getLostMessagesCount());
+	}
+
+
+	@Test
+	public void testRejectedMessagesArePublishedAgain() throws Exception {
+
+		PublishingChannel pc = new PublishingChannel( this.channel, true, 1, 1, this.histogram );
+		pc.publish( "exchange", "key", false, null, new byte[ 1 ]);
+
+		// First rejection => published again, but not from the thread that notified the rejection
+		pc.handleNack( 1, false );
+		Assert.assertEquals( 1, pc.getRejectedMessagesCount());
+		waitForRepublications( pc, 1 );
+		Assert.assertEquals( 1, pc.getRepublishedMessagesCount());
+		Assert.assertEquals( 1, pc.getPendingConfirmsCount());
+		Mockito.verify( this.channel, Mockito.times( 2 )).basicPublish(
+				Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyBoolean(), Mockito.anyBoolean(),
+				Mockito.any( BasicProperties.class ), Mockito.any( byte[].class ));
+
+		Assert.assertEquals( 2, this.publishingThreads.size());
+		Assert.assertEquals( Thread.currentThread(), this.publishingThreads.get( 0 ));
+		Assert.assertNotEquals( Thread.currentThread(), this.publishingThreads.get( 1 ));
+
+		// Second rejection => lost
+		pc.handleNack( 2, true );
+		Assert.assertEquals( 2, pc.getRejectedMessagesCount());
+		waitForRepublications( pc, 2 );
+		Assert.assertEquals( 1, pc.getRepublishedMessagesCount());
+		Assert.assertEquals( 1, pc.getLostMessagesCount());
+		Assert.assertEquals( 0, pc.getPendingConfirmsCount());
+
+		// The window was released (otherwise, this would block)
+		pc.publish( "exchange", "key", false, null, new byte[ 1 ]);
+		Assert.assertEquals( 1, pc.getPendingConfirmsCount());
+	}
+
+
+	@Test
+	public void testRecovery() throws Exception {
+
+		PublishingChannel pc = new PublishingChannel( this.channel, true, 10, 1, this.histogram );
+		pc.publish( "exchange", "key1", false, null, new byte[ 1 ]);
+		pc.publish( "exchange", "key2", false, null, new byte[ 1 ]);
+
+		// Unconfirmed messages are published again
+		pc.handleRecovery( this.channel );
+		waitForRepublications( pc, 2 );
+		Assert.assertEquals( 2, pc.getPendingConfirmsCount());
+		Assert.assertEquals( 2, pc.getRepublishedMessagesCount());
+
+		pc.handleAck( 4, true );
+		Assert.assertEquals( 0, pc.getPendingConfirmsCount());
+		Assert.assertEquals( 2, pc.getConfirmedMessagesCount());
+	}
+
+
+	@Test
+	public void testPublicationError() throws Exception {
+
+		Mockito.doThrow( new IOException( "for test" )).when( this.channel ).basicPublish(
+				Mockito.anyString(), Mockito.anyString(),
+				Mockito.anyBoolean(), Mockito.anyBoolean(),
+				Mockito.any( BasicProperties.class ), Mockito.any( byte[].class ));
+
+		PublishingChannel pc = new PublishingChannel( this.channel, true, 1, 1, this.histogram );
+		for( int i=0; i<2; i++ ) {
+			try {
+				pc.publish( "exchange", "key", false, null, new byte[ 1 ]);
+				Assert.fail( "An exception was expected." );
+
+			} catch( IOException e ) {
+				// The window must have been released, otherwise the second attempt would block
+				Assert.assertEquals( 0, pc.getPendingConfirmsCount());
+			}
+		}
+	}
+
+
+	/**
+	 * Waits for rejected messages to be handled by the republishing thread.
+	 * @param pc the publishing channel
+	 * @param expected the expected number of messages that were republished or lost
+	 * @throws InterruptedException
+	 */
+	private static void waitForRepublications( PublishingChannel pc, int expected ) throws InterruptedException {
+
+		for( int i=0; i<100; i++ ) {
+			if( pc.getRepublishedMessagesCount() + pc.getLostMessagesCount() >= expected )
+				break;
+
+			Thread.sleep( 50 );
+		}
+	}
+}
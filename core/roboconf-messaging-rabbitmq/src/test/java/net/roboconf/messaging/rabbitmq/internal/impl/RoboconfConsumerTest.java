@@ -39,7 +39,11 @@ import com.rabbitmq.client.ShutdownSignalException;
 import net.roboconf.core.internal.tests.TestUtils;
 import net.roboconf.core.internal.tests.TestUtils.StringHandler;
 import net.roboconf.core.utils.Utils;
+import net.roboconf.messaging.api.codec.BinaryMessageCodec;
+import net.roboconf.messaging.api.codec.JavaSerializationCodec;
 import net.roboconf.messaging.api.jmx.RoboconfMessageQueue;
+import net.roboconf.messaging.api.messages.Message;
+import net.roboconf.messaging.api.messages.from_agent_to_dm.MsgNotifHeartbeat;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -120,4 +124,49 @@ public class RoboconfConsumerTest {
 		rc.handleDelivery( "tag", Mockito.mock( Envelope.class ), null, new byte[ 1 ]);
 		Assert.assertTrue( logHandler.getLogs().startsWith( "DM: a message could not be deserialized." ));
 	}
+
+
+	@Test
+	public void testHandleDelivery_allCodecs() throws Exception {
+
+		RoboconfMessageQueue messageQueue = new RoboconfMessageQueue();
+		Channel channel = Mockito.mock( Channel.class );
+		RoboconfConsumer rc = new RoboconfConsumer( "DM", channel, messageQueue );
+
+		Message msg = new MsgNotifHeartbeat( "app", "/vm", "127.0.0.1" );
+		rc.handleDelivery( "tag", Mockito.mock( Envelope.class ), null, new JavaSerializationCodec().encode( msg ));
+		rc.handleDelivery( "tag", Mockito.mock( Envelope.class ), null, new BinaryMessageCodec().encode( msg ));
+
+		Assert.assertEquals( 2, messageQueue.size());
+		Assert.assertEquals( MsgNotifHeartbeat.class, messageQueue.poll().getClass());
+		Assert.assertEquals( MsgNotifHeartbeat.class, messageQueue.poll().getClass());
+	}
+
+
+	@Test
+	public void testHandleDelivery_withConsumptionController() throws Exception {
+
+		RoboconfMessageQueue messageQueue = new RoboconfMessageQueue();
+		Channel channel = Mockito.mock( Channel.class );
+		ConsumptionController controller = Mockito.mock( ConsumptionController.class );
+		RoboconfConsumer rc = new RoboconfConsumer( "DM", channel, messageQueue, controller );
+
+		Envelope envelope = Mockito.mock( Envelope.class );
+		Mockito.when( envelope.getDeliveryTag()).thenReturn( 4L );
+
+		Message msg = new MsgNotifHeartbeat( "app", "/vm", "127.0.0.1" );
+		rc.handleDelivery( "tag", envelope, null, new JavaSerializationCodec().encode( msg ));
+		Assert.assertEquals( 1, messageQueue.size());
+
+		Message received = messageQueue.poll();
+		Mockito.verify( controller ).messageWasDelivered( received, 4L );
+		Mockito.verify( controller ).messageWasQueued();
+		Mockito.verify( controller, Mockito.never()).messageCouldNotBeDecoded( Mockito.anyLong());
+
+		// Invalid messages are acknowledged immediately
+		Mockito.when( envelope.getDeliveryTag()).thenReturn( 5L );
+		rc.handleDelivery( "tag", envelope, null, new byte[ 1 ]);
+		Assert.assertEquals( 0, messageQueue.size());
+		Mockito.verify( controller ).messageCouldNotBeDecoded( 5L );
+	}
 }
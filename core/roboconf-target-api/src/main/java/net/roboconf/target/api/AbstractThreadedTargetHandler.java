@@ -29,10 +29,15 @@ import java.io.Closeable;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import net.roboconf.core.model.beans.Instance;
@@ -50,28 +55,41 @@ import net.roboconf.core.utils.Utils;
  * A machine configurator is in charge of configuring a machine. There will be one instance per
  * VM instance. This instance will be invoked periodically until the machine configuration is completed.
  * </p>
+ * <p>
+ * Configuration steps run on a bounded pool of threads, so that a slow machine does not delay
+ * the other ones. There is never more than one step running for a given machine. The delay between
+ * two steps of a same machine starts with {@link #delay} and doubles after every step that did not
+ * progress, up to {@link #maxDelay}. See {@link ProgressiveMachineConfigurator}.
+ * </p>
  *
  * @author Vincent Zurczak - Linagora
  */
 public abstract class AbstractThreadedTargetHandler implements TargetHandler {
 
 	protected static final int DEFAULT_DELAY = 1000;
+	protected static final int DEFAULT_MAX_DELAY = 10000;
+	protected static final int DEFAULT_POOL_SIZE = 20;
 
 	// Protected fields
 	protected final Logger logger = Logger.getLogger( getClass().getName());
 	protected long delay = DEFAULT_DELAY;
+	protected long maxDelay = DEFAULT_MAX_DELAY;
+	protected int poolSize = DEFAULT_POOL_SIZE;
 
 	// Private fields
 	private ScheduledThreadPoolExecutor timer;
-	private final Map<String,MachineConfigurator> machineIdToConfigurators = new ConcurrentHashMap<> ();
+	private final ConcurrentMap<String,MachineConfigurator> machineIdToConfigurators = new ConcurrentHashMap<> ();
+	private final ConcurrentMap<String,ConfigurationStep> machineIdToSteps = new ConcurrentHashMap<> ();
 	private final CancelledMachines cancelledMachineIds = new CancelledMachines();
+	private final StepMetrics stepMetrics = new StepMetrics();
 
 
 	/**
 	 * Starts a thread to periodically check machines under creation process.
 	 * <p>
 	 * The period is defined by {@link #delay} whose value is expressed in milliseconds
-	 * and whose default value is {@value #DEFAULT_DELAY}.
+	 * and whose default value is {@value #DEFAULT_DELAY}. Configuration steps are executed
+	 * by at most {@link #poolSize} threads.
 	 * </p>
 	 * <p>
 	 * This method should be made invokable by iPojo.
@@ -79,15 +97,17 @@ public abstract class AbstractThreadedTargetHandler implements TargetHandler {
 	 */
 	public void start() {
 
-		this.timer = new ScheduledThreadPoolExecutor( 1 );
+		this.timer = new ScheduledThreadPoolExecutor( Math.max( 1, this.poolSize ));
 		this.timer.scheduleWithFixedDelay(
-				new CheckingRunnable( this.machineIdToConfigurators, this.cancelledMachineIds ),
+				new CheckingRunnable(
+						this.machineIdToConfigurators, this.machineIdToSteps, this.cancelledMachineIds,
+						this.timer, this.delay, this.maxDelay, this.stepMetrics ),
 				0, this.delay, TimeUnit.MILLISECONDS );
 	}
 
 
 	/**
-	 * Stops the background thread.
+	 * Stops the background threads.
 	 * <p>
 	 * This method should be made invokable by iPojo.
 	 * </p>
@@ -95,6 +115,9 @@ public abstract class AbstractThreadedTargetHandler implements TargetHandler {
 	public void stop() {
 		this.timer.shutdownNow();
 		this.timer = null;
+
+		// Configurations will be resumed on restart
+		this.machineIdToSteps.clear();
 	}
 
 
@@ -178,6 +201,31 @@ public abstract class AbstractThreadedTargetHandler implements TargetHandler {
 	}
 
 
+	/**
+	 * @return the number of configuration steps that were executed
+	 */
+	public long getConfigurationStepCount() {
+		return this.stepMetrics.count.get();
+	}
+
+
+	/**
+	 * @return the mean duration of configuration steps (in milliseconds)
+	 */
+	public long getMeanConfigurationStepDuration() {
+		long count = this.stepMetrics.count.get();
+		return count == 0 ? 0 : this.stepMetrics.totalDuration.get() / count;
+	}
+
+
+	/**
+	 * @return the maximum duration of a configuration step (in milliseconds)
+	 */
+	public long getMaxConfigurationStepDuration() {
+		return this.stepMetrics.maxDuration.get();
+	}
+
+
 	/**
 	 * A class in charge of configuring a machine.
 	 * <p>
@@ -208,12 +256,36 @@ public abstract class AbstractThreadedTargetHandler implements TargetHandler {
 
 
 	/**
+	 * A machine configurator that indicates when its configuration progresses.
+	 * <p>
+	 * The delay between two configuration steps doubles every time {@link #configure()}
+	 * returns <code>false</code>. For configurators that implement this interface, it goes back
+	 * to its initial value whenever the progress changes (e.g. when a new state is reached).
+	 * </p>
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	public interface ProgressiveMachineConfigurator extends MachineConfigurator {
+
+		/**
+		 * @return an object that changes when the configuration progresses (e.g. the current state, may be null)
+		 */
+		Object getProgress();
+	}
+
+
+	/**
+	 * A runnable that handles cancellations and starts the configuration of new machines.
 	 * @author Vincent Zurczak - Linagora
 	 */
 	static class CheckingRunnable implements Runnable {
 
 		private final CancelledMachines cancelledMachineIds;
-		private final Map<String,MachineConfigurator> machineIdToConfigurators;
+		private final ConcurrentMap<String,MachineConfigurator> machineIdToConfigurators;
+		private final ConcurrentMap<String,ConfigurationStep> machineIdToSteps;
+		private final ScheduledExecutorService executor;
+		private final long delay, maxDelay;
+		private final StepMetrics stepMetrics;
 		private final Logger logger = Logger.getLogger( getClass().getName());
 
 
@@ -221,12 +293,22 @@ public abstract class AbstractThreadedTargetHandler implements TargetHandler {
 		 * Constructor.
 		 */
 		public CheckingRunnable(
-				Map<String,MachineConfigurator> machineIdToConfigurators,
-				CancelledMachines cancelledMachineIds ) {
+				ConcurrentMap<String,MachineConfigurator> machineIdToConfigurators,
+				ConcurrentMap<String,ConfigurationStep> machineIdToSteps,
+				CancelledMachines cancelledMachineIds,
+				ScheduledExecutorService executor,
+				long delay,
+				long maxDelay,
+				StepMetrics stepMetrics ) {
 
 			super();
 			this.machineIdToConfigurators = machineIdToConfigurators;
+			this.machineIdToSteps = machineIdToSteps;
 			this.cancelledMachineIds = cancelledMachineIds;
+			this.executor = executor;
+			this.delay = delay;
+			this.maxDelay = maxDelay;
+			this.stepMetrics = stepMetrics;
 		}
 
 
@@ -237,66 +319,222 @@ public abstract class AbstractThreadedTargetHandler implements TargetHandler {
 			// Deal with cancelled configurations
 			for( String machineId : this.cancelledMachineIds.removeSnapshot()) {
 				MachineConfigurator handler = this.machineIdToConfigurators.remove( machineId );
-				if( handler != null )
-					closeConfigurator( machineId, handler );
+				ConfigurationStep step = this.machineIdToSteps.remove( machineId );
+				if( step != null )
+					step.cancel();
+				else if( handler != null )
+					closeConfigurator( this.logger, machineId, handler );
 			}
 
-			// Check the state of all the launchers
-			Set<String> keysToRemove = new HashSet<> ();
+			// Start the configuration of new machines
 			for( Map.Entry<String,MachineConfigurator> entry : this.machineIdToConfigurators.entrySet()) {
+				if( this.machineIdToSteps.containsKey( entry.getKey()))
+					continue;
 
-				MachineConfigurator handler = entry.getValue();
+				ConfigurationStep step = new ConfigurationStep( entry.getKey(), entry.getValue(), this );
+				this.machineIdToSteps.put( entry.getKey(), step );
 				try {
-					if( handler.configure()) {
+					this.executor.execute( step );
+
+				} catch( RejectedExecutionException e ) {
+					this.logger.finest( "The configuration of machine " + entry.getKey() + " could not be started. The target handler is stopping." );
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * A step in the configuration of a machine.
+	 * <p>
+	 * A step reschedules itself until the configuration is completed,
+	 * which guarantees there is never more than one running step for a given machine.
+	 * </p>
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static class ConfigurationStep implements Runnable {
+
+		private final String machineId;
+		private final MachineConfigurator configurator;
+		private final CheckingRunnable context;
+		private final Logger logger = Logger.getLogger( getClass().getName());
+
+		// Only accessed by the step itself
+		private int attempts, stepsWithoutProgress;
+
+		// Guarded by "this"
+		private boolean running, cancelled, done;
+
+
+		/**
+		 * Constructor.
+		 * @param machineId
+		 * @param configurator
+		 * @param context
+		 */
+		ConfigurationStep( String machineId, MachineConfigurator configurator, CheckingRunnable context ) {
+			this.machineId = machineId;
+			this.configurator = configurator;
+			this.context = context;
+		}
 
-						// Configure is completed, remove it from the things to check
-						keysToRemove.add( entry.getKey());
-						closeConfigurator( entry.getKey(), handler );
 
+		@Override
+		public void run() {
+
+			synchronized( this ) {
+				if( this.done )
+					return;
+
+				this.running = true;
+			}
+
+			// The configurator may have been replaced
+			boolean completed = false, failed = false;
+			if( this.context.machineIdToConfigurators.get( this.machineId ) != this.configurator ) {
+				completed = true;
+
+			} else try {
+				long before = System.currentTimeMillis();
+				try {
+					this.attempts ++;
+					Object progress = findProgress();
+					if( this.configurator.configure()) {
 						// It may require to be configured from the DM => add the right marker
-						Instance scopedInstance = handler.getScopedInstance();
+						completed = true;
+						Instance scopedInstance = this.configurator.getScopedInstance();
 						scopedInstance.data.put( Instance.READY_FOR_CFG_MARKER, "true" );
-					}
 
-				} catch( Throwable t ) {
-					// We need to catch ALL the exceptions.
-					// Otherwise, the timer will stop scheduling this runnable,
-					// and this may result in unpredictable behaviors in Roboconf deployments.
-					// That would impact all the VMs on a given target.
-					this.logger.severe( "An error occurred while configuring machine '" + entry.getKey() + "'. " + t.getMessage());
-					Utils.logException( this.logger, t );
-					keysToRemove.add( entry.getKey());
-
-					// If a problem occurs, try to close the handler anyway
-					closeConfigurator( entry.getKey(), handler );
-
-					// Update the scoped instance
-					Instance scopedInstance = handler.getScopedInstance();
-					if( scopedInstance.getStatus() != InstanceStatus.NOT_DEPLOYED ) {
-						scopedInstance.setStatus( InstanceStatus.PROBLEM );
-						scopedInstance.data.put( Instance.LAST_PROBLEM, "Configuration failed. " + t.getMessage());
+					} else if( Objects.equals( progress, findProgress())) {
+						this.stepsWithoutProgress ++;
+
+					} else {
+						this.stepsWithoutProgress = 0;
 					}
+
+				} finally {
+					long duration = System.currentTimeMillis() - before;
+					this.context.stepMetrics.record( duration );
+					this.logger.finer( "Configuration step #" + this.attempts + " took " + duration + " ms for machine " + this.machineId + "." );
 				}
+
+			} catch( Throwable t ) {
+				// We need to catch ALL the exceptions.
+				// Otherwise, the thread pool may silently drop this configuration,
+				// and this may result in unpredictable behaviors in Roboconf deployments.
+				this.logger.severe( "An error occurred while configuring machine '" + this.machineId + "'. " + t.getMessage());
+				Utils.logException( this.logger, t );
+				failed = true;
+
+				// Update the scoped instance
+				Instance scopedInstance = this.configurator.getScopedInstance();
+				if( scopedInstance.getStatus() != InstanceStatus.NOT_DEPLOYED ) {
+					scopedInstance.setStatus( InstanceStatus.PROBLEM );
+					scopedInstance.data.put( Instance.LAST_PROBLEM, "Configuration failed. " + t.getMessage());
+				}
+			}
+
+			// Stop here?
+			boolean finished;
+			synchronized( this ) {
+				this.running = false;
+				finished = completed || failed || this.cancelled;
+				this.done = finished;
+			}
+
+			if( finished ) {
+				// Configure is completed (or failed), remove it from the things to check.
+				// If a problem occurred, try to close the handler anyway.
+				this.context.machineIdToConfigurators.remove( this.machineId, this.configurator );
+				this.context.machineIdToSteps.remove( this.machineId, this );
+				closeConfigurator( this.logger, this.machineId, this.configurator );
+
+			} else {
+				// Otherwise, schedule the next step, with an exponential back-off while there is no progress
+				long nextDelay = this.context.delay << Math.min( Math.max( 0, this.stepsWithoutProgress - 1 ), 30 );
+				nextDelay = Math.min( this.context.maxDelay, Math.max( 0, nextDelay ));
+				try {
+					this.context.executor.schedule( this, nextDelay, TimeUnit.MILLISECONDS );
+
+				} catch( RejectedExecutionException e ) {
+					this.logger.finest( "The configuration of machine " + this.machineId + " is interrupted. The target handler is stopping." );
+				}
+			}
+		}
+
+
+		private Object findProgress() {
+
+			Object result = null;
+			if( this.configurator instanceof ProgressiveMachineConfigurator )
+				result = ((ProgressiveMachineConfigurator) this.configurator).getProgress();
+
+			return result;
+		}
+
+
+		/**
+		 * Cancels this step.
+		 * <p>
+		 * If the step is running, the configurator will be closed once the step completes.
+		 * Otherwise, it is closed immediately.
+		 * </p>
+		 */
+		void cancel() {
+
+			synchronized( this ) {
+				this.cancelled = true;
+				if( this.running || this.done )
+					return;
+
+				this.done = true;
 			}
 
-			// Remove old keys
-			this.machineIdToConfigurators.keySet().removeAll( keysToRemove );
+			closeConfigurator( this.logger, this.machineId, this.configurator );
+		}
+	}
+
+
+	/**
+	 * Closes a configurator.
+	 * @param logger
+	 * @param machineId
+	 * @param handler
+	 */
+	static void closeConfigurator( Logger logger, String machineId, MachineConfigurator handler ) {
+		try {
+			logger.fine( "Closing the configurator for machine " + machineId );
+			handler.close();
+
+		} catch( Exception e ) {
+			logger.warning( "An error occurred while closing the configurator for machine '" + machineId + "'. " + e.getMessage());
+			Utils.logException( logger, e );
 		}
+	}
+
+
+	/**
+	 * Metrics about configuration steps.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static class StepMetrics {
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong totalDuration = new AtomicLong();
+		final AtomicLong maxDuration = new AtomicLong();
 
 
 		/**
-		 * Closes the configurator.
-		 * @param machineId
-		 * @param handler
+		 * Records the duration of a step.
+		 * @param duration a duration (in milliseconds)
 		 */
-		private void closeConfigurator( String machineId, MachineConfigurator handler ) {
-			try {
-				this.logger.fine( "Closing the configurator for machine " + machineId );
-				handler.close();
-
-			} catch( Exception e ) {
-				this.logger.warning( "An error occurred while closing the configurator for machine '" + machineId + "'. " + e.getMessage());
-				Utils.logException( this.logger, e );
+		void record( long duration ) {
+
+			this.count.incrementAndGet();
+			this.totalDuration.addAndGet( duration );
+			for( long max = this.maxDuration.get(); duration > max; max = this.maxDuration.get()) {
+				if( this.maxDuration.compareAndSet( max, duration ))
+					break;
 			}
 		}
 	}
@@ -25,6 +25,7 @@
 
 package net.roboconf.target.api;
 
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
@@ -46,11 +47,12 @@ public class AbstractThreadedTargetHandlerTest {
 		final TestAbstractThreadedTargetHandler th = new TestAbstractThreadedTargetHandler( false );
 
 		// Schedule period is 1000 by default in AbstractThreadedTargetHandler.
-		// And it starts immediately. Here is a summary...
+		// And it starts immediately. The delay between two steps then doubles.
+		// Here is a summary...
 		//
 		// 0-1000 => configure is invoked once.
-		// 1001-2000 => configure has been invoked twice.
-		// 2001-3000 => configure has been invoked three times.
+		// 1001-3000 => configure has been invoked twice.
+		// 3001-7000 => configure has been invoked three times.
 
 		Instance scopedInstance = new Instance( "test" );
 		try {
@@ -75,8 +77,13 @@ public class AbstractThreadedTargetHandlerTest {
 			Assert.assertEquals( 2, th.getCpt());
 			Thread.sleep( 1000 );
 
+			Assert.assertEquals( 1, th.getMachineIdToConfigurators().size());
+			Assert.assertEquals( 2, th.getCpt());
+			Thread.sleep( 1000 );
+
 			Assert.assertEquals( 3, th.getCpt());
 			Assert.assertEquals( 0, th.getMachineIdToConfigurators().size());
+			Assert.assertEquals( 3, th.getConfigurationStepCount());
 
 		} finally {
 			th.stop();
@@ -95,8 +102,7 @@ public class AbstractThreadedTargetHandlerTest {
 		// And it starts immediately. Here is a summary...
 		//
 		// 0-1000 => configure is invoked once.
-		// 1001-2000 => configure has been invoked twice.
-		// 2001-3000 => configure has been invoked three times and resulted in an exception.
+		// 1001-3000 => configure has been invoked twice and resulted in an exception.
 
 		Instance scopedInstance = new Instance( "test" );
 		try {
@@ -229,4 +235,167 @@ public class AbstractThreadedTargetHandlerTest {
 		th.submitMachineConfiguratorUseWithCaution( "id", new TestMachineConfigurator( new AtomicInteger(), false, new Instance()));
 		Assert.assertEquals( 1, th.getMachineIdToConfigurators().size());
 	}
+
+
+	@Test
+	public void testParallelConfigurations() throws Exception {
+
+		// Slow configurators must not delay the other ones
+		final TestAbstractThreadedTargetHandler th = new TestAbstractThreadedTargetHandler( false );
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final AtomicInteger completed = new AtomicInteger();
+
+		for( int i=0; i<10; i++ ) {
+			th.submitMachineConfiguratorUseWithCaution( "machine-" + i, new TestMachineConfigurator( new AtomicInteger(), false, new Instance()) {
+				@Override
+				public boolean configure() throws TargetException {
+
+					int current = running.incrementAndGet();
+					synchronized( maxRunning ) {
+						maxRunning.set( Math.max( current, maxRunning.get()));
+					}
+
+					try {
+						Thread.sleep( 300 );
+
+					} catch( InterruptedException e ) {
+						Thread.currentThread().interrupt();
+					}
+
+					running.decrementAndGet();
+					completed.incrementAndGet();
+					return true;
+				}
+			});
+		}
+
+		try {
+			th.start();
+			Thread.sleep( 800 );
+
+			Assert.assertEquals( 10, completed.get());
+			Assert.assertEquals( 0, th.getMachineIdToConfigurators().size());
+			Assert.assertTrue( maxRunning.get() > 1 );
+			Assert.assertEquals( 10, th.getConfigurationStepCount());
+			Assert.assertTrue( th.getMaxConfigurationStepDuration() >= 300 );
+			Assert.assertTrue( th.getMeanConfigurationStepDuration() >= 300 );
+
+		} finally {
+			th.stop();
+		}
+	}
+
+
+	@Test
+	public void testCancellationWhileConfiguring() throws Exception {
+
+		final TestAbstractThreadedTargetHandler th = new TestAbstractThreadedTargetHandler( false );
+		final AtomicInteger closed = new AtomicInteger();
+		final AtomicInteger invocations = new AtomicInteger();
+
+		th.submitMachineConfiguratorUseWithCaution( "machine-id", new TestMachineConfigurator( new AtomicInteger(), false, new Instance()) {
+			@Override
+			public boolean configure() throws TargetException {
+
+				invocations.incrementAndGet();
+				try {
+					Thread.sleep( 600 );
+
+				} catch( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+				}
+
+				Assert.assertEquals( 0, closed.get());
+				return false;
+			}
+
+			@Override
+			public void close() throws IOException {
+				closed.incrementAndGet();
+			}
+		});
+
+		try {
+			th.start();
+			Thread.sleep( 200 );
+
+			// Cancelled while configure() runs: close is deferred
+			th.cancelMachineConfigurator( "machine-id" );
+			Assert.assertEquals( 0, closed.get());
+
+			Thread.sleep( 2000 );
+			Assert.assertEquals( 1, closed.get());
+			Assert.assertEquals( 1, invocations.get());
+			Assert.assertEquals( 0, th.getMachineIdToConfigurators().size());
+
+		} finally {
+			th.stop();
+		}
+	}
+
+
+	@Test
+	public void testBackOffIsResetWhenTheConfigurationProgresses() throws Exception {
+
+		final TestAbstractThreadedTargetHandler th = new TestAbstractThreadedTargetHandler( false );
+		th.delay = 100;
+		th.maxDelay = 10000;
+
+		// Without progress: invoked at 0, 100, 300, 700, 1500... ms
+		final AtomicInteger withoutProgress = new AtomicInteger();
+		th.submitMachineConfiguratorUseWithCaution( "machine-1", new TestMachineConfigurator( new AtomicInteger(), false, new Instance()) {
+			@Override
+			public boolean configure() throws TargetException {
+				withoutProgress.incrementAndGet();
+				return false;
+			}
+		});
+
+		// With progress on every step: invoked every 100 ms
+		ProgressingConfigurator withProgress = new ProgressingConfigurator();
+		th.submitMachineConfiguratorUseWithCaution( "machine-2", withProgress );
+
+		try {
+			th.start();
+			Thread.sleep( 1200 );
+
+			Assert.assertTrue( withoutProgress.get() <= 5 );
+			Assert.assertTrue( withProgress.cpt.get() >= 8 );
+
+		} finally {
+			th.stop();
+		}
+	}
+
+
+	/**
+	 * A configurator that progresses on every step.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	static class ProgressingConfigurator
+	extends TestMachineConfigurator
+	implements AbstractThreadedTargetHandler.ProgressiveMachineConfigurator {
+
+		final AtomicInteger cpt = new AtomicInteger();
+
+
+		/**
+		 * Constructor.
+		 */
+		ProgressingConfigurator() {
+			super( new AtomicInteger(), false, new Instance());
+		}
+
+		@Override
+		public boolean configure() throws TargetException {
+			this.cpt.incrementAndGet();
+			return false;
+		}
+
+		@Override
+		public Object getProgress() {
+			return this.cpt.get();
+		}
+	}
 }
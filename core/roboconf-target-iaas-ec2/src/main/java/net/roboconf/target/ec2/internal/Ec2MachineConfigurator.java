@@ -57,14 +57,14 @@ import com.amazonaws.services.ec2.model.Tag;
 
 import net.roboconf.core.model.beans.Instance;
 import net.roboconf.core.utils.Utils;
-import net.roboconf.target.api.AbstractThreadedTargetHandler.MachineConfigurator;
+import net.roboconf.target.api.AbstractThreadedTargetHandler.ProgressiveMachineConfigurator;
 import net.roboconf.target.api.TargetException;
 
 /**
  * A machine configurator for EC2.
  * @author Vincent Zurczak - Linagora
  */
-public class Ec2MachineConfigurator implements MachineConfigurator {
+public class Ec2MachineConfigurator implements ProgressiveMachineConfigurator {
 
 	/**
 	 * The steps of a workflow.
@@ -119,6 +119,11 @@ public class Ec2MachineConfigurator implements MachineConfigurator {
 		return this.scopedInstance;
 	}
 
+	@Override
+	public Object getProgress() {
+		return this.state;
+	}
+
 	@Override
 	public void close() throws IOException {
 		// nothing
@@ -31,14 +31,14 @@ import java.util.Properties;
 import java.util.logging.Logger;
 
 import net.roboconf.core.model.beans.Instance;
-import net.roboconf.target.api.AbstractThreadedTargetHandler.MachineConfigurator;
+import net.roboconf.target.api.AbstractThreadedTargetHandler.ProgressiveMachineConfigurator;
 import net.roboconf.target.api.TargetException;
 
 /**
  * A machine configurator for OCCI.
  * @author Pierre-Yves Gibello - Linagora
  */
-public class OcciMachineConfigurator implements MachineConfigurator {
+public class OcciMachineConfigurator implements ProgressiveMachineConfigurator {
 
 	/**
 	 * The steps of a workflow.
@@ -80,6 +80,12 @@ public class OcciMachineConfigurator implements MachineConfigurator {
 	}
 
 
+	@Override
+	public Object getProgress() {
+		return this.state;
+	}
+
+
 	@Override
 	public void close() throws IOException {
 		// nothing
@@ -57,7 +57,7 @@ import org.jclouds.openstack.swift.v1.domain.Container;
 
 import net.roboconf.core.model.beans.Instance;
 import net.roboconf.core.utils.Utils;
-import net.roboconf.target.api.AbstractThreadedTargetHandler.MachineConfigurator;
+import net.roboconf.target.api.AbstractThreadedTargetHandler.ProgressiveMachineConfigurator;
 import net.roboconf.target.api.TargetException;
 
 /**
@@ -65,7 +65,7 @@ import net.roboconf.target.api.TargetException;
  * @author Vincent Zurczak - Linagora
  * @author Amadou Diarra - Université Joseph Fourier
  */
-public class OpenstackMachineConfigurator implements MachineConfigurator {
+public class OpenstackMachineConfigurator implements ProgressiveMachineConfigurator {
 
 	/**
 	 * A set of locks to prevent concurrent access to the pool of floating IP addresses.
@@ -129,6 +129,12 @@ public class OpenstackMachineConfigurator implements MachineConfigurator {
 	}
 
 
+	@Override
+	public Object getProgress() {
+		return this.state;
+	}
+
+
 	@Override
 	public void close() throws IOException {
 		if( this.novaApi != null)
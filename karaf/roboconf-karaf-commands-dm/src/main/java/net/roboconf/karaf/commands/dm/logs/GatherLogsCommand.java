@@ -34,6 +34,7 @@ import org.apache.karaf.shell.api.action.Action;
 import org.apache.karaf.shell.api.action.Argument;
 import org.apache.karaf.shell.api.action.Command;
 import org.apache.karaf.shell.api.action.Completion;
+import org.apache.karaf.shell.api.action.Option;
 import org.apache.karaf.shell.api.action.lifecycle.Reference;
 import org.apache.karaf.shell.api.action.lifecycle.Service;
 
@@ -61,6 +62,18 @@ public class GatherLogsCommand implements Action {
 	@Completion( ScopedInstanceCompleter.class )
 	String scopedInstancePath;
 
+	@Option( name = "--chunk-size", description = "The size (in bytes) of the chunks used to transfer log files (0 to send them as a whole)" )
+	int chunkSize = MsgCmdGatherLogs.DEFAULT_CHUNK_SIZE;
+
+	@Option( name = "--max-bytes", description = "The maximum number of bytes each agent can send (only the most recent logs are kept)" )
+	long maxBytes = 0;
+
+	@Option( name = "--since", description = "Only gathers the log files modified within the last N minutes" )
+	int sinceMinutes = 0;
+
+	@Option( name = "--no-compression", description = "Do not compress the chunks of log files" )
+	boolean noCompression = false;
+
 	@Reference
 	Manager manager;
 
@@ -76,6 +89,7 @@ public class GatherLogsCommand implements Action {
 		RbcfInfo info = KarafDmCommandsUtils.findInstances( this.manager, this.applicationName, this.scopedInstancePath, this.out );
 
 		// Send messages
+		long sinceTimestamp = this.sinceMinutes > 0 ? System.currentTimeMillis() - this.sinceMinutes * 60000L : 0;
 		for( Instance inst : info.getScopedInstances()) {
 
 			if( inst.getStatus() == InstanceStatus.NOT_DEPLOYED ) {
@@ -95,7 +109,7 @@ public class GatherLogsCommand implements Action {
 				this.logger.fine( sb.toString());
 			}
 
-			MsgCmdGatherLogs message = new MsgCmdGatherLogs();
+			MsgCmdGatherLogs message = new MsgCmdGatherLogs( this.chunkSize, this.maxBytes, sinceTimestamp, ! this.noCompression );
 			this.manager.messagingMngr().sendMessageSafely( info.getManagedApplication(), inst, message );
 		}
 
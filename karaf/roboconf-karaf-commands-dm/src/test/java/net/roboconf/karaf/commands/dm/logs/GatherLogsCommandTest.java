@@ -204,6 +204,46 @@ public class GatherLogsCommandTest {
 				msg.capture());
 
 		Assert.assertEquals( MsgCmdGatherLogs.class, msg.getValue().getClass());
+
+		// Logs are streamed by default
+		MsgCmdGatherLogs gatherLogs = (MsgCmdGatherLogs) msg.getValue();
+		Assert.assertEquals( MsgCmdGatherLogs.DEFAULT_CHUNK_SIZE, gatherLogs.getChunkSize());
+		Assert.assertEquals( 0, gatherLogs.getMaxBytes());
+		Assert.assertEquals( 0, gatherLogs.getSinceTimestamp());
+		Assert.assertTrue( gatherLogs.isCompressed());
+	}
+
+
+	@Test
+	public void testExecute_valid_withOptions() throws Exception {
+
+		this.gl.applicationName = this.app.getName();
+		this.gl.scopedInstancePath = InstanceHelpers.computeInstancePath( this.app.getTomcatVm());
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+
+		this.gl.chunkSize = 1024;
+		this.gl.maxBytes = 4096;
+		this.gl.sinceMinutes = 10;
+		this.gl.noCompression = true;
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		this.gl.out = new PrintStream( os, true, "UTF-8" );
+
+		long before = System.currentTimeMillis();
+		this.gl.execute();
+
+		ArgumentCaptor<Message> msg = ArgumentCaptor.forClass( Message.class );
+		Mockito.verify( this.messagingMngr, Mockito.times( 1 )).sendMessageSafely(
+				Mockito.eq( this.ma ),
+				Mockito.eq( this.app.getTomcatVm()),
+				msg.capture());
+
+		MsgCmdGatherLogs gatherLogs = (MsgCmdGatherLogs) msg.getValue();
+		Assert.assertEquals( 1024, gatherLogs.getChunkSize());
+		Assert.assertEquals( 4096, gatherLogs.getMaxBytes());
+		Assert.assertFalse( gatherLogs.isCompressed());
+		Assert.assertTrue( gatherLogs.getSinceTimestamp() >= before - 10 * 60000L );
+		Assert.assertTrue( gatherLogs.getSinceTimestamp() <= System.currentTimeMillis() - 10 * 60000L );
 	}
 
 
@@ -85,7 +85,7 @@ public class BundleDecanterCollector implements IDmListener {
 
 		if( this.enabled.get() && InstanceHelpers.isTarget(instance)) {
 
-			List<Instance> scopedInstances = InstanceHelpers.findAllScopedInstances(application);
+			List<Instance> scopedInstances = application.findScopedInstances();
 			int upInstances = 0;
 			for(Instance ins : scopedInstances) {
 				if(ins.getStatus() == InstanceStatus.DEPLOYED_STARTED) {
@@ -42,6 +42,7 @@ import net.roboconf.core.model.beans.Instance.InstanceStatus;
 import net.roboconf.dm.rest.client.WsClient;
 import net.roboconf.dm.rest.client.exceptions.ApplicationWsException;
 import net.roboconf.dm.rest.commons.UrlConstants;
+import net.roboconf.dm.rest.commons.json.JSonBindingUtils;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -226,6 +227,109 @@ public class ApplicationWsDelegate {
 	}
 
 
+	/**
+	 * Finds instances in an application.
+	 * <p>
+	 * Filtering and pagination are performed by the server. To get the next page,
+	 * pass the path of the last instance of the current page as the cursor. This path is stored
+	 * in the instance's data, under the {@link JSonBindingUtils#AT_INSTANCE_PATH} key.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param instancePath the instance path (null to consider the whole application)
+	 * @param all true to list indirect children too, false to only list direct children
+	 * @param status the status of the instances to find (null to ignore this filter)
+	 * @param componentName the component name of the instances to find (null to ignore this filter)
+	 * @param pathPrefix the prefix of the paths of the instances to find (null to ignore this filter)
+	 * @param afterPath the path of the last instance of the previous page (null to get the first page)
+	 * @param limit the maximum number of instances to return (0 or negative to return all of them)
+	 * @return a non-null list of instances
+	 * @throws ApplicationWsException if the application or the instance was not found
+	 */
+	public List<Instance> findInstances(
+			String applicationName,
+			String instancePath,
+			boolean all,
+			InstanceStatus status,
+			String componentName,
+			String pathPrefix,
+			String afterPath,
+			int limit )
+	throws ApplicationWsException {
+
+		this.logger.finer( "Finding instances in " + applicationName + " (after " + afterPath + ")." );
+
+		WebResource path = this.resource
+				.path( UrlConstants.APP ).path( applicationName ).path( "instances" ).path( "search" )
+				.queryParam( "all-children", String.valueOf( all ))
+				.queryParam( "limit", String.valueOf( limit ));
+
+		if( instancePath != null )
+			path = path.queryParam( "instance-path", instancePath );
+
+		if( status != null )
+			path = path.queryParam( "status", status.toString());
+
+		if( componentName != null )
+			path = path.queryParam( "component", componentName );
+
+		if( pathPrefix != null )
+			path = path.queryParam( "path-prefix", pathPrefix );
+
+		if( afterPath != null )
+			path = path.queryParam( "after", afterPath );
+
+		ClientResponse response = this.wsClient.createBuilder( path )
+				.accept( MediaType.APPLICATION_JSON )
+				.get( ClientResponse.class );
+
+		handleResponse( response );
+		List<Instance> result = response.getEntity( new GenericType<List<Instance>> () {});
+		if( result == null )
+			result = new ArrayList<>( 0 );
+
+		this.logger.finer( result.size() + " instances were found in " + applicationName + "." );
+		return result;
+	}
+
+
+	/**
+	 * Finds all the instances that match filters, by fetching them page by page.
+	 * @param applicationName the application name
+	 * @param instancePath the instance path (null to consider the whole application)
+	 * @param all true to list indirect children too, false to only list direct children
+	 * @param status the status of the instances to find (null to ignore this filter)
+	 * @param componentName the component name of the instances to find (null to ignore this filter)
+	 * @param pathPrefix the prefix of the paths of the instances to find (null to ignore this filter)
+	 * @param pageSize the number of instances to fetch per request (0 or negative to fetch them all at once)
+	 * @return a non-null list of instances
+	 * @throws ApplicationWsException if the application or the instance was not found
+	 */
+	public List<Instance> findAllInstances(
+			String applicationName,
+			String instancePath,
+			boolean all,
+			InstanceStatus status,
+			String componentName,
+			String pathPrefix,
+			int pageSize )
+	throws ApplicationWsException {
+
+		List<Instance> result = new ArrayList<> ();
+		List<Instance> page;
+		String afterPath = null;
+		do {
+			page = findInstances( applicationName, instancePath, all, status, componentName, pathPrefix, afterPath, pageSize );
+			result.addAll( page );
+			if( ! page.isEmpty())
+				afterPath = page.get( page.size() - 1 ).data.get( JSonBindingUtils.AT_INSTANCE_PATH );
+
+		} while( pageSize > 0 && page.size() == pageSize );
+
+		return result;
+	}
+
+
 	/**
 	 * Adds an instance into an application.
 	 * @param applicationName the application name
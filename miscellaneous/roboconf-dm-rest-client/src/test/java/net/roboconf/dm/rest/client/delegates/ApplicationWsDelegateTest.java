@@ -60,6 +60,7 @@ import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.Manager;
 import net.roboconf.dm.rest.client.WsClient;
 import net.roboconf.dm.rest.client.exceptions.ApplicationWsException;
+import net.roboconf.dm.rest.commons.json.JSonBindingUtils;
 import net.roboconf.dm.rest.services.internal.RestApplication;
 import net.roboconf.messaging.api.MessagingConstants;
 import net.roboconf.messaging.api.internal.client.test.TestClient;
@@ -315,6 +316,53 @@ public class ApplicationWsDelegateTest {
 	}
 
 
+	@Test
+	public void testFindInstances() throws Exception {
+
+		ApplicationWsDelegate delegate = this.client.getApplicationDelegate();
+		List<Instance> instances = delegate.findInstances( this.app.getName(), null, true, null, null, null, null, 0 );
+		Assert.assertEquals( InstanceHelpers.getAllInstances( this.app ).size(), instances.size());
+		Assert.assertEquals( "/mysql-vm", instances.get( 0 ).data.get( JSonBindingUtils.AT_INSTANCE_PATH ));
+
+		instances = delegate.findInstances( this.app.getName(), null, false, null, null, null, null, 0 );
+		Assert.assertEquals( this.app.getRootInstances().size(), instances.size());
+
+		instances = delegate.findInstances( this.app.getName(), null, true, null, "vm", "/tomcat", null, 0 );
+		Assert.assertEquals( 1, instances.size());
+		Assert.assertEquals( this.app.getTomcatVm().getName(), instances.get( 0 ).getName());
+
+		this.app.getMySql().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		instances = delegate.findInstances( this.app.getName(), null, true, InstanceStatus.DEPLOYED_STARTED, null, null, null, 0 );
+		Assert.assertEquals( 1, instances.size());
+		Assert.assertEquals( this.app.getMySql().getName(), instances.get( 0 ).getName());
+
+		// Pagination
+		instances = delegate.findInstances( this.app.getName(), null, true, null, null, null, null, 2 );
+		Assert.assertEquals( 2, instances.size());
+
+		instances = delegate.findInstances( this.app.getName(), null, true, null, null, null, "/mysql-vm/mysql-server", 2 );
+		Assert.assertEquals( 2, instances.size());
+		Assert.assertEquals( this.app.getTomcatVm().getName(), instances.get( 0 ).getName());
+
+		for( int pageSize = 0; pageSize < 7; pageSize ++ ) {
+			instances = delegate.findAllInstances( this.app.getName(), null, true, null, null, null, pageSize );
+			Assert.assertEquals( InstanceHelpers.getAllInstances( this.app ).size(), instances.size());
+		}
+	}
+
+
+	@Test( expected = ApplicationWsException.class )
+	public void testFindInstances_invalidApp() throws Exception {
+		this.client.getApplicationDelegate().findInstances( "oops", null, true, null, null, null, null, 0 );
+	}
+
+
+	@Test( expected = ApplicationWsException.class )
+	public void testFindInstances_invalidInstance() throws Exception {
+		this.client.getApplicationDelegate().findInstances( this.app.getName(), "/bip/bip", true, null, null, null, null, 0 );
+	}
+
+
 	@Test
 	public void testListAllComponents() throws Exception {
 